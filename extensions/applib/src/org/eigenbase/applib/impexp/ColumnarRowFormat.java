@@ -0,0 +1,311 @@
+/*
+// $Id$
+// Applib is a library of SQL-invocable routines for Eigenbase applications.
+// Copyright (C) 2010 The Eigenbase Project
+// Copyright (C) 2010 SQLstream, Inc.
+// Copyright (C) 2010 DynamoBI Corporation
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation; either version 2.1 of the License, or (at
+// your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+*/
+package org.eigenbase.applib.impexp;
+
+import java.io.*;
+
+import java.math.*;
+
+import java.sql.*;
+
+
+/**
+ * ColumnarRowFormat defines a binary format in which rows are exported and
+ * imported by WRITE_ROWS_TO_FILE, READ_ROWS_FROM_FILE and REMOTE_ROWS, as a
+ * faster and more compact alternative to serialized Java objects.
+ *
+ * <p>A stream starts with {@link #MAGIC}, a version, flags, and the name,
+ * JDBC type and display size of each column. Rows follow in blocks of up to
+ * {@link #DEFAULT_BLOCK_ROWS} rows. A block starts with its row count, and
+ * holds the values of each column in turn, so that a reader can skip the
+ * columns it does not need without decoding them. A block of zero rows ends
+ * the stream.
+ *
+ * <p>Within a block, the values of a column are preceded by a null bitmap,
+ * and encoded in the most compact of several encodings: numbers, dates and
+ * times as variable length integers, either plain, as deltas or as runs;
+ * strings, decimals and binary values either plain, as runs, or through a
+ * dictionary. If the stream is compressed, each column of a block is then
+ * deflated separately.
+ *
+ * @version $Id$
+ */
+public abstract class ColumnarRowFormat
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * First bytes of a stream in this format. They can never start a stream
+     * of serialized objects, or a GZIP stream.
+     */
+    public static final byte [] MAGIC = { 'L', 'C', 'R', 'F' };
+
+    public static final int VERSION = 1;
+
+    public static final int FLAG_COMPRESSED = 1;
+
+    public static final int DEFAULT_BLOCK_ROWS = 8192;
+
+    /**
+     * Names of the formats accepted by WRITE_ROWS_TO_FILE.
+     */
+    public static final String FORMAT_SERIALIZED = "SERIALIZED";
+    public static final String FORMAT_COLUMNAR = "COLUMNAR";
+
+    // representations of values within a block
+    static final int KIND_LONG = 0;
+    static final int KIND_DOUBLE = 1;
+    static final int KIND_FLOAT = 2;
+    static final int KIND_INT = 3;
+    static final int KIND_BOOLEAN = 4;
+    static final int KIND_DATE = 5;
+    static final int KIND_TIME = 6;
+    static final int KIND_TIMESTAMP = 7;
+    static final int KIND_DECIMAL = 8;
+    static final int KIND_STRING = 9;
+    static final int KIND_BINARY = 10;
+
+    // encodings of the values of a column within a block
+    static final int ENCODING_PLAIN = 0;
+    static final int ENCODING_RLE = 1;
+    static final int ENCODING_DELTA = 2;
+    static final int ENCODING_DICTIONARY = 3;
+
+    static final String CHARSET = "UTF-8";
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Returns whether a stream starts with {@link #MAGIC}, without consuming
+     * any of it.
+     *
+     * @param in stream, which must support mark and reset
+     */
+    public static boolean isColumnar(InputStream in)
+        throws IOException
+    {
+        assert (in.markSupported());
+        in.mark(MAGIC.length);
+        try {
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (in.read() != MAGIC[i]) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            in.reset();
+        }
+    }
+
+    /**
+     * Returns how values of a JDBC type are represented.
+     */
+    static int getKind(int sqlType)
+    {
+        switch (sqlType) {
+        case Types.TINYINT:
+        case Types.SMALLINT:
+        case Types.INTEGER:
+            return KIND_INT;
+        case Types.BIGINT:
+            return KIND_LONG;
+        case Types.REAL:
+            return KIND_FLOAT;
+        case Types.FLOAT:
+        case Types.DOUBLE:
+            return KIND_DOUBLE;
+        case Types.BIT:
+        case Types.BOOLEAN:
+            return KIND_BOOLEAN;
+        case Types.DATE:
+            return KIND_DATE;
+        case Types.TIME:
+            return KIND_TIME;
+        case Types.TIMESTAMP:
+            return KIND_TIMESTAMP;
+        case Types.DECIMAL:
+        case Types.NUMERIC:
+            return KIND_DECIMAL;
+        case Types.BINARY:
+        case Types.VARBINARY:
+        case Types.LONGVARBINARY:
+            return KIND_BINARY;
+        default:
+            return KIND_STRING;
+        }
+    }
+
+    /**
+     * Returns whether values of a kind are encoded as integers; the others
+     * are encoded as byte strings.
+     */
+    static boolean isIntegral(int kind)
+    {
+        return kind < KIND_DECIMAL;
+    }
+
+    /**
+     * Converts a value to the integer by which it is encoded.
+     */
+    static long toLong(int kind, Object value)
+    {
+        switch (kind) {
+        case KIND_BOOLEAN:
+            return ((Boolean) value).booleanValue() ? 1 : 0;
+        case KIND_DOUBLE:
+            return Double.doubleToLongBits(((Number) value).doubleValue());
+        case KIND_FLOAT:
+            return Float.floatToIntBits(((Number) value).floatValue());
+        case KIND_DATE:
+        case KIND_TIME:
+        case KIND_TIMESTAMP:
+            return ((java.util.Date) value).getTime();
+        default:
+            return ((Number) value).longValue();
+        }
+    }
+
+    /**
+     * Converts an encoded integer back to a value.
+     */
+    static Object fromLong(int kind, long value)
+    {
+        switch (kind) {
+        case KIND_BOOLEAN:
+            return Boolean.valueOf(value != 0);
+        case KIND_DOUBLE:
+            return Double.longBitsToDouble(value);
+        case KIND_FLOAT:
+            return Float.intBitsToFloat((int) value);
+        case KIND_DATE:
+            return new Date(value);
+        case KIND_TIME:
+            return new Time(value);
+        case KIND_TIMESTAMP:
+            return new Timestamp(value);
+        case KIND_INT:
+            return Integer.valueOf((int) value);
+        default:
+            return Long.valueOf(value);
+        }
+    }
+
+    /**
+     * Converts a value to the bytes by which it is encoded.
+     */
+    static byte [] toBytes(int kind, Object value)
+        throws IOException
+    {
+        if ((kind == KIND_BINARY) && (value instanceof byte [])) {
+            return (byte []) value;
+        }
+        return value.toString().getBytes(CHARSET);
+    }
+
+    /**
+     * Converts encoded bytes back to a value.
+     */
+    static Object fromBytes(int kind, byte [] value)
+        throws IOException
+    {
+        switch (kind) {
+        case KIND_BINARY:
+            return value;
+        case KIND_DECIMAL:
+            return new BigDecimal(new String(value, CHARSET));
+        default:
+            return new String(value, CHARSET);
+        }
+    }
+
+    /**
+     * Writes a signed integer in as few bytes as its magnitude needs.
+     */
+    static void writeVarLong(OutputStream out, long value)
+        throws IOException
+    {
+        // zigzag encoding maps small negative numbers to small numbers
+        long v = (value << 1) ^ (value >> 63);
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    static long readVarLong(InputStream in)
+        throws IOException
+    {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (v >>> 1) ^ -(v & 1);
+            }
+        }
+        throw new IOException("Malformed columnar row stream");
+    }
+
+    static void writeVarInt(OutputStream out, int value)
+        throws IOException
+    {
+        writeVarLong(out, value);
+    }
+
+    static int readVarInt(InputStream in)
+        throws IOException
+    {
+        long v = readVarLong(in);
+        if ((v < 0) || (v > Integer.MAX_VALUE)) {
+            throw new IOException("Malformed columnar row stream");
+        }
+        return (int) v;
+    }
+
+    static void readFully(InputStream in, byte [] buf)
+        throws IOException
+    {
+        new DataInputStream(in).readFully(buf);
+    }
+
+    static void skipFully(InputStream in, long n)
+        throws IOException
+    {
+        while (n > 0) {
+            long skipped = in.skip(n);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException();
+                }
+                skipped = 1;
+            }
+            n -= skipped;
+        }
+    }
+}
+
+// End ColumnarRowFormat.java
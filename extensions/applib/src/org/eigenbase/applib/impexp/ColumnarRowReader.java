@@ -0,0 +1,396 @@
+/*
+// $Id$
+// Applib is a library of SQL-invocable routines for Eigenbase applications.
+// Copyright (C) 2010 The Eigenbase Project
+// Copyright (C) 2010 SQLstream, Inc.
+// Copyright (C) 2010 DynamoBI Corporation
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation; either version 2.1 of the License, or (at
+// your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+*/
+package org.eigenbase.applib.impexp;
+
+import java.io.*;
+
+import java.util.*;
+import java.util.zip.*;
+
+
+/**
+ * ColumnarRowReader reads rows written in the {@link ColumnarRowFormat}. A
+ * reader may be restricted to a subset of the columns, in which case the
+ * other columns are skipped without being decompressed or decoded.
+ *
+ * @version $Id$
+ */
+public class ColumnarRowReader
+{
+    //~ Instance fields --------------------------------------------------------
+
+    private final DataInputStream in;
+    private final String [] names;
+    private final int [] sqlTypes;
+    private final int [] displaySizes;
+    private final int [] kinds;
+    private final boolean compressed;
+    private final Inflater inflater;
+
+    /**
+     * File column read for each column returned
+     */
+    private int [] projection;
+
+    /**
+     * Values of the current block, for each column returned
+     */
+    private Object [][] block;
+    private int nBlockRows;
+    private int iRow;
+    private boolean done;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a reader, and reads the header of the stream.
+     *
+     * @param in stream to read from
+     */
+    public ColumnarRowReader(InputStream in)
+        throws IOException
+    {
+        this.in = new DataInputStream(new BufferedInputStream(in));
+        for (int i = 0; i < ColumnarRowFormat.MAGIC.length; i++) {
+            if (this.in.read() != ColumnarRowFormat.MAGIC[i]) {
+                throw new IOException("Not a columnar row stream");
+            }
+        }
+        int version = this.in.read();
+        if (version != ColumnarRowFormat.VERSION) {
+            throw new IOException(
+                "Unsupported columnar row stream version " + version);
+        }
+        int flags = this.in.read();
+        compressed = (flags & ColumnarRowFormat.FLAG_COMPRESSED) != 0;
+        inflater = compressed ? new Inflater() : null;
+
+        int nColumns = ColumnarRowFormat.readVarInt(this.in);
+        names = new String[nColumns];
+        sqlTypes = new int[nColumns];
+        displaySizes = new int[nColumns];
+        kinds = new int[nColumns];
+        projection = new int[nColumns];
+        for (int i = 0; i < nColumns; i++) {
+            names[i] = this.in.readUTF();
+            sqlTypes[i] = (int) ColumnarRowFormat.readVarLong(this.in);
+            displaySizes[i] = ColumnarRowFormat.readVarInt(this.in);
+            kinds[i] = ColumnarRowFormat.getKind(sqlTypes[i]);
+            projection[i] = i;
+        }
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Returns the number of columns in the stream.
+     */
+    public int getColumnCount()
+    {
+        return names.length;
+    }
+
+    /**
+     * Returns the name of a column in the stream, counting from 0.
+     */
+    public String getColumnName(int i)
+    {
+        return names[i];
+    }
+
+    /**
+     * Returns the JDBC type of a column in the stream, counting from 0.
+     */
+    public int getColumnType(int i)
+    {
+        return sqlTypes[i];
+    }
+
+    /**
+     * Returns the display size of a column in the stream, counting from 0.
+     */
+    public int getColumnDisplaySize(int i)
+    {
+        return displaySizes[i];
+    }
+
+    /**
+     * Finds a column in the stream by name, ignoring case.
+     *
+     * @return index of the column, counting from 0, or -1 if not found
+     */
+    public int findColumn(String name)
+    {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Restricts the columns returned by {@link #getObject}. This must be
+     * called before the first row is read.
+     *
+     * @param columns index of the stream column returned for each column,
+     * counting from 0
+     */
+    public void project(int [] columns)
+    {
+        assert (block == null);
+        for (int column : columns) {
+            assert ((column >= 0) && (column < names.length));
+        }
+        projection = columns.clone();
+    }
+
+    /**
+     * Moves to the next row.
+     *
+     * @return false if there are no more rows
+     */
+    public boolean next()
+        throws IOException
+    {
+        iRow++;
+        while ((block == null) || (iRow >= nBlockRows)) {
+            if (done || !readBlock()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a value of the current row.
+     *
+     * @param i index of the column among those returned, counting from 0
+     */
+    public Object getObject(int i)
+    {
+        return block[i][iRow];
+    }
+
+    /**
+     * Closes the underlying stream.
+     */
+    public void close()
+        throws IOException
+    {
+        if (inflater != null) {
+            inflater.end();
+        }
+        in.close();
+    }
+
+    private boolean readBlock()
+        throws IOException
+    {
+        nBlockRows = ColumnarRowFormat.readVarInt(in);
+        iRow = 0;
+        if (nBlockRows == 0) {
+            done = true;
+            return false;
+        }
+        if (block == null) {
+            block = new Object[projection.length][];
+        }
+        for (int c = 0; c < names.length; c++) {
+            int rawLength = ColumnarRowFormat.readVarInt(in);
+            int storedLength = ColumnarRowFormat.readVarInt(in);
+            Object [] values = null;
+            for (int i = 0; i < projection.length; i++) {
+                if (projection[i] != c) {
+                    continue;
+                }
+                if (values == null) {
+                    byte [] stored = new byte[storedLength];
+                    ColumnarRowFormat.readFully(in, stored);
+                    byte [] raw =
+                        compressed ? inflate(stored, rawLength) : stored;
+                    values = decodeColumn(c, raw);
+                }
+                block[i] = values;
+            }
+            if (values == null) {
+                ColumnarRowFormat.skipFully(in, storedLength);
+            }
+        }
+        return true;
+    }
+
+    private byte [] inflate(byte [] stored, int rawLength)
+        throws IOException
+    {
+        inflater.reset();
+        inflater.setInput(stored);
+        byte [] raw = new byte[rawLength];
+        try {
+            int n = 0;
+            while (n < rawLength) {
+                int inflated = inflater.inflate(raw, n, rawLength - n);
+                if ((inflated == 0)
+                    && (inflater.finished() || inflater.needsInput()))
+                {
+                    throw new EOFException();
+                }
+                n += inflated;
+            }
+        } catch (DataFormatException ex) {
+            throw new IOException(ex.getMessage());
+        }
+        return raw;
+    }
+
+    private Object [] decodeColumn(int c, byte [] raw)
+        throws IOException
+    {
+        InputStream buf = new ByteArrayInputStream(raw);
+        boolean [] isNull = new boolean[nBlockRows];
+        int nValues = nBlockRows;
+        if (buf.read() == 1) {
+            byte [] nulls = new byte[(nBlockRows + 7) / 8];
+            ColumnarRowFormat.readFully(buf, nulls);
+            for (int r = 0; r < nBlockRows; r++) {
+                if ((nulls[r >> 3] & (1 << (r & 7))) != 0) {
+                    isNull[r] = true;
+                    nValues--;
+                }
+            }
+        }
+
+        int kind = kinds[c];
+        int encoding = buf.read();
+        Object [] nonNull;
+        if (ColumnarRowFormat.isIntegral(kind)) {
+            long [] longs = decodeLongs(encoding, nValues, buf);
+            nonNull = new Object[nValues];
+            for (int j = 0; j < nValues; j++) {
+                nonNull[j] = ColumnarRowFormat.fromLong(kind, longs[j]);
+            }
+        } else {
+            nonNull = decodeBytes(kind, encoding, nValues, buf);
+        }
+        if (nValues == nBlockRows) {
+            return nonNull;
+        }
+
+        Object [] values = new Object[nBlockRows];
+        int j = 0;
+        for (int r = 0; r < nBlockRows; r++) {
+            if (!isNull[r]) {
+                values[r] = nonNull[j++];
+            }
+        }
+        return values;
+    }
+
+    private static long [] decodeLongs(
+        int encoding,
+        int nValues,
+        InputStream buf)
+        throws IOException
+    {
+        long [] values = new long[nValues];
+        switch (encoding) {
+        case ColumnarRowFormat.ENCODING_PLAIN:
+            for (int i = 0; i < nValues; i++) {
+                values[i] = ColumnarRowFormat.readVarLong(buf);
+            }
+            break;
+        case ColumnarRowFormat.ENCODING_DELTA:
+            for (int i = 0; i < nValues; i++) {
+                long delta = ColumnarRowFormat.readVarLong(buf);
+                values[i] = (i == 0) ? delta : (values[i - 1] + delta);
+            }
+            break;
+        case ColumnarRowFormat.ENCODING_RLE:
+            for (int i = 0; i < nValues;) {
+                int run = ColumnarRowFormat.readVarInt(buf);
+                long value = ColumnarRowFormat.readVarLong(buf);
+                if (run > (nValues - i)) {
+                    throw new IOException("Malformed columnar row stream");
+                }
+                Arrays.fill(values, i, i + run, value);
+                i += run;
+            }
+            break;
+        default:
+            throw new IOException("Unknown column encoding " + encoding);
+        }
+        return values;
+    }
+
+    private static Object [] decodeBytes(
+        int kind,
+        int encoding,
+        int nValues,
+        InputStream buf)
+        throws IOException
+    {
+        Object [] values = new Object[nValues];
+        switch (encoding) {
+        case ColumnarRowFormat.ENCODING_PLAIN:
+            for (int i = 0; i < nValues; i++) {
+                values[i] = ColumnarRowFormat.fromBytes(kind, readBytes(buf));
+            }
+            break;
+        case ColumnarRowFormat.ENCODING_RLE:
+            for (int i = 0; i < nValues;) {
+                int run = ColumnarRowFormat.readVarInt(buf);
+                Object value =
+                    ColumnarRowFormat.fromBytes(kind, readBytes(buf));
+                if (run > (nValues - i)) {
+                    throw new IOException("Malformed columnar row stream");
+                }
+                Arrays.fill(values, i, i + run, value);
+                i += run;
+            }
+            break;
+        case ColumnarRowFormat.ENCODING_DICTIONARY:
+            Object [] dictionary =
+                new Object[ColumnarRowFormat.readVarInt(buf)];
+            for (int i = 0; i < dictionary.length; i++) {
+                dictionary[i] =
+                    ColumnarRowFormat.fromBytes(kind, readBytes(buf));
+            }
+            for (int i = 0; i < nValues; i++) {
+                values[i] = dictionary[ColumnarRowFormat.readVarInt(buf)];
+            }
+            break;
+        default:
+            throw new IOException("Unknown column encoding " + encoding);
+        }
+        return values;
+    }
+
+    private static byte [] readBytes(InputStream buf)
+        throws IOException
+    {
+        byte [] value = new byte[ColumnarRowFormat.readVarInt(buf)];
+        ColumnarRowFormat.readFully(buf, value);
+        return value;
+    }
+}
+
+// End ColumnarRowReader.java
@@ -0,0 +1,449 @@
+/*
+// $Id$
+// Applib is a library of SQL-invocable routines for Eigenbase applications.
+// Copyright (C) 2010 The Eigenbase Project
+// Copyright (C) 2010 SQLstream, Inc.
+// Copyright (C) 2010 DynamoBI Corporation
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation; either version 2.1 of the License, or (at
+// your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+*/
+package org.eigenbase.applib.impexp;
+
+import java.io.*;
+
+import java.nio.*;
+
+import java.sql.*;
+
+import java.util.*;
+import java.util.zip.*;
+
+
+/**
+ * ColumnarRowWriter writes rows in the {@link ColumnarRowFormat}. Rows are
+ * buffered until a block is full, and each column of the block is then
+ * encoded in whichever encoding is the most compact for its values.
+ *
+ * <p>Besides WRITE_ROWS_TO_FILE, remote applications may use this class to
+ * send rows to REMOTE_ROWS.
+ *
+ * @version $Id$
+ */
+public class ColumnarRowWriter
+{
+    //~ Instance fields --------------------------------------------------------
+
+    private final DataOutputStream out;
+    private final int [] kinds;
+    private final boolean compressed;
+    private final int blockRows;
+    private final Object [][] columns;
+    private final Deflater deflater;
+    private int nRows;
+    private long rowCount;
+    private boolean finished;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a writer, and writes the header of the stream.
+     *
+     * @param out stream to write to
+     * @param names column names
+     * @param sqlTypes JDBC types of the columns, from {@link Types}
+     * @param displaySizes display sizes of the columns
+     * @param compressed whether to deflate the columns of each block
+     * @param blockRows number of rows in a block
+     */
+    public ColumnarRowWriter(
+        OutputStream out,
+        String [] names,
+        int [] sqlTypes,
+        int [] displaySizes,
+        boolean compressed,
+        int blockRows)
+        throws IOException
+    {
+        assert (names.length == sqlTypes.length);
+        assert (names.length == displaySizes.length);
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        this.compressed = compressed;
+        this.blockRows = blockRows;
+        kinds = new int[names.length];
+        columns = new Object[names.length][blockRows];
+        deflater = compressed ? new Deflater(Deflater.BEST_SPEED) : null;
+
+        this.out.write(ColumnarRowFormat.MAGIC);
+        this.out.write(ColumnarRowFormat.VERSION);
+        this.out.write(compressed ? ColumnarRowFormat.FLAG_COMPRESSED : 0);
+        ColumnarRowFormat.writeVarInt(this.out, names.length);
+        for (int i = 0; i < names.length; i++) {
+            kinds[i] = ColumnarRowFormat.getKind(sqlTypes[i]);
+            this.out.writeUTF(names[i]);
+            ColumnarRowFormat.writeVarLong(this.out, sqlTypes[i]);
+            ColumnarRowFormat.writeVarInt(this.out, displaySizes[i]);
+        }
+    }
+
+    /**
+     * Creates a writer for the rows of a result set.
+     *
+     * @param out stream to write to
+     * @param metaData description of the rows
+     * @param compressed whether to deflate the columns of each block
+     */
+    public ColumnarRowWriter(
+        OutputStream out,
+        ResultSetMetaData metaData,
+        boolean compressed)
+        throws SQLException, IOException
+    {
+        this(
+            out,
+            getColumnNames(metaData),
+            getColumnTypes(metaData),
+            getColumnDisplaySizes(metaData),
+            compressed,
+            ColumnarRowFormat.DEFAULT_BLOCK_ROWS);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    private static String [] getColumnNames(ResultSetMetaData metaData)
+        throws SQLException
+    {
+        String [] names = new String[metaData.getColumnCount()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = metaData.getColumnName(i + 1);
+        }
+        return names;
+    }
+
+    private static int [] getColumnTypes(ResultSetMetaData metaData)
+        throws SQLException
+    {
+        int [] types = new int[metaData.getColumnCount()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = metaData.getColumnType(i + 1);
+        }
+        return types;
+    }
+
+    private static int [] getColumnDisplaySizes(ResultSetMetaData metaData)
+        throws SQLException
+    {
+        int [] sizes = new int[metaData.getColumnCount()];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = metaData.getColumnDisplaySize(i + 1);
+        }
+        return sizes;
+    }
+
+    /**
+     * Writes a row.
+     *
+     * @param row values of the row, one per column, which may be null
+     */
+    public void writeRow(Object [] row)
+        throws IOException
+    {
+        assert (row.length == columns.length);
+        for (int i = 0; i < row.length; i++) {
+            columns[i][nRows] = row[i];
+        }
+        nRows++;
+        rowCount++;
+        if (nRows == blockRows) {
+            writeBlock();
+        }
+    }
+
+    /**
+     * Writes the current row of a result set.
+     */
+    public void writeRow(ResultSet resultSet)
+        throws SQLException, IOException
+    {
+        for (int i = 0; i < columns.length; i++) {
+            columns[i][nRows] = resultSet.getObject(i + 1);
+        }
+        nRows++;
+        rowCount++;
+        if (nRows == blockRows) {
+            writeBlock();
+        }
+    }
+
+    /**
+     * Returns the number of rows written so far.
+     */
+    public long getRowCount()
+    {
+        return rowCount;
+    }
+
+    /**
+     * Writes the remaining rows and the end of the stream, and flushes the
+     * stream without closing it.
+     */
+    public void finish()
+        throws IOException
+    {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (nRows > 0) {
+            writeBlock();
+        }
+        ColumnarRowFormat.writeVarInt(out, 0);
+        out.flush();
+        if (deflater != null) {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Finishes the stream and closes it.
+     */
+    public void close()
+        throws IOException
+    {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeBlock()
+        throws IOException
+    {
+        ColumnarRowFormat.writeVarInt(out, nRows);
+        for (int i = 0; i < columns.length; i++) {
+            byte [] raw = encodeColumn(i);
+            byte [] stored = compressed ? deflate(raw) : raw;
+            ColumnarRowFormat.writeVarInt(out, raw.length);
+            ColumnarRowFormat.writeVarInt(out, stored.length);
+            out.write(stored);
+            Arrays.fill(columns[i], null);
+        }
+        nRows = 0;
+    }
+
+    private byte [] deflate(byte [] raw)
+    {
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(raw.length / 2);
+        byte [] chunk = new byte[8192];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(chunk);
+            buf.write(chunk, 0, n);
+        }
+        return buf.toByteArray();
+    }
+
+    /**
+     * Encodes the values of a column in the current block: a flag telling
+     * whether there are nulls, the null bitmap if there are, the encoding,
+     * and the non-null values.
+     */
+    private byte [] encodeColumn(int iColumn)
+        throws IOException
+    {
+        Object [] values = columns[iColumn];
+        int kind = kinds[iColumn];
+        byte [] nulls = new byte[(nRows + 7) / 8];
+        int nValues = 0;
+        for (int r = 0; r < nRows; r++) {
+            if (values[r] == null) {
+                nulls[r >> 3] |= (byte) (1 << (r & 7));
+            } else {
+                nValues++;
+            }
+        }
+
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        if (nValues < nRows) {
+            buf.write(1);
+            buf.write(nulls);
+        } else {
+            buf.write(0);
+        }
+        if (ColumnarRowFormat.isIntegral(kind)) {
+            long [] longs = new long[nValues];
+            int j = 0;
+            for (int r = 0; r < nRows; r++) {
+                if (values[r] != null) {
+                    longs[j++] = ColumnarRowFormat.toLong(kind, values[r]);
+                }
+            }
+            encodeLongs(longs, buf);
+        } else {
+            byte [][] bytes = new byte[nValues][];
+            int j = 0;
+            for (int r = 0; r < nRows; r++) {
+                if (values[r] != null) {
+                    bytes[j++] = ColumnarRowFormat.toBytes(kind, values[r]);
+                }
+            }
+            encodeBytes(bytes, buf);
+        }
+        return buf.toByteArray();
+    }
+
+    private void encodeLongs(long [] values, ByteArrayOutputStream buf)
+        throws IOException
+    {
+        ByteArrayOutputStream best = new ByteArrayOutputStream();
+        int bestEncoding = ColumnarRowFormat.ENCODING_PLAIN;
+        for (long v : values) {
+            ColumnarRowFormat.writeVarLong(best, v);
+        }
+
+        if (values.length > 1) {
+            ByteArrayOutputStream delta = new ByteArrayOutputStream();
+            ColumnarRowFormat.writeVarLong(delta, values[0]);
+            for (int i = 1; i < values.length; i++) {
+                ColumnarRowFormat.writeVarLong(
+                    delta,
+                    values[i] - values[i - 1]);
+            }
+            if (delta.size() < best.size()) {
+                best = delta;
+                bestEncoding = ColumnarRowFormat.ENCODING_DELTA;
+            }
+        }
+
+        if (countRuns(values) * 2 <= values.length) {
+            ByteArrayOutputStream rle = new ByteArrayOutputStream();
+            int i = 0;
+            while (i < values.length) {
+                int j = i + 1;
+                while ((j < values.length) && (values[j] == values[i])) {
+                    j++;
+                }
+                ColumnarRowFormat.writeVarInt(rle, j - i);
+                ColumnarRowFormat.writeVarLong(rle, values[i]);
+                i = j;
+            }
+            if (rle.size() < best.size()) {
+                best = rle;
+                bestEncoding = ColumnarRowFormat.ENCODING_RLE;
+            }
+        }
+
+        buf.write(bestEncoding);
+        best.writeTo(buf);
+    }
+
+    private void encodeBytes(byte [][] values, ByteArrayOutputStream buf)
+        throws IOException
+    {
+        ByteArrayOutputStream best = new ByteArrayOutputStream();
+        int bestEncoding = ColumnarRowFormat.ENCODING_PLAIN;
+        for (byte [] v : values) {
+            writeBytes(best, v);
+        }
+
+        if (countRuns(values) * 2 <= values.length) {
+            ByteArrayOutputStream rle = new ByteArrayOutputStream();
+            int i = 0;
+            while (i < values.length) {
+                int j = i + 1;
+                while ((j < values.length)
+                    && Arrays.equals(values[j], values[i]))
+                {
+                    j++;
+                }
+                ColumnarRowFormat.writeVarInt(rle, j - i);
+                writeBytes(rle, values[i]);
+                i = j;
+            }
+            if (rle.size() < best.size()) {
+                best = rle;
+                bestEncoding = ColumnarRowFormat.ENCODING_RLE;
+            }
+        }
+
+        // a dictionary only pays when values repeat
+        Map<ByteBuffer, Integer> dictionary =
+            new LinkedHashMap<ByteBuffer, Integer>();
+        int [] indexes = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            ByteBuffer key = ByteBuffer.wrap(values[i]);
+            Integer index = dictionary.get(key);
+            if (index == null) {
+                if (dictionary.size() * 2 > values.length) {
+                    dictionary = null;
+                    break;
+                }
+                index = dictionary.size();
+                dictionary.put(key, index);
+            }
+            indexes[i] = index;
+        }
+        if (dictionary != null) {
+            ByteArrayOutputStream dict = new ByteArrayOutputStream();
+            ColumnarRowFormat.writeVarInt(dict, dictionary.size());
+            for (ByteBuffer entry : dictionary.keySet()) {
+                writeBytes(dict, entry.array());
+            }
+            for (int index : indexes) {
+                ColumnarRowFormat.writeVarInt(dict, index);
+            }
+            if (dict.size() < best.size()) {
+                best = dict;
+                bestEncoding = ColumnarRowFormat.ENCODING_DICTIONARY;
+            }
+        }
+
+        buf.write(bestEncoding);
+        best.writeTo(buf);
+    }
+
+    private static void writeBytes(OutputStream out, byte [] value)
+        throws IOException
+    {
+        ColumnarRowFormat.writeVarInt(out, value.length);
+        out.write(value);
+    }
+
+    private static int countRuns(long [] values)
+    {
+        int nRuns = (values.length > 0) ? 1 : 0;
+        for (int i = 1; i < values.length; i++) {
+            if (values[i] != values[i - 1]) {
+                nRuns++;
+            }
+        }
+        return nRuns;
+    }
+
+    private static int countRuns(byte [][] values)
+    {
+        int nRuns = (values.length > 0) ? 1 : 0;
+        for (int i = 1; i < values.length; i++) {
+            if (!Arrays.equals(values[i], values[i - 1])) {
+                nRuns++;
+            }
+        }
+        return nRuns;
+    }
+}
+
+// End ColumnarRowWriter.java
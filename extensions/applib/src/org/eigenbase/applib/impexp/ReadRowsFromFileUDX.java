@@ -85,7 +85,17 @@ public class ReadRowsFromFileUDX
         PreparedStatement resultInserter)
         throws Exception
     {
-        InputStream fileIn = openFile(url);
+        InputStream fileIn = new BufferedInputStream(openFile(url));
+        if (ColumnarRowFormat.isColumnar(fileIn)) {
+            // the columnar format compresses blocks itself
+            ColumnarRowReader reader = new ColumnarRowReader(fileIn);
+            try {
+                insertColumnarRows(inputSet, reader, resultInserter);
+            } finally {
+                reader.close();
+            }
+            return;
+        }
 
         GZIPInputStream gzIn = null;
         ObjectInputStream objIn = null;
@@ -140,6 +150,75 @@ public class ReadRowsFromFileUDX
         fileIn.close();
     }
 
+    /**
+     * Inserts the rows read from a columnar stream. The columns of the cursor
+     * are matched by name with those of the stream, and the other columns of
+     * the stream are not read; if some names do not match, the columns are
+     * matched by position.
+     *
+     * @return number of rows inserted
+     */
+    protected static int insertColumnarRows(
+        ResultSet inputSet,
+        ColumnarRowReader reader,
+        PreparedStatement resultInserter)
+        throws Exception
+    {
+        ResultSetMetaData metaData = inputSet.getMetaData();
+        int columnCount = metaData.getColumnCount();
+        String [] names = new String[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            names[i] = metaData.getColumnName(i + 1);
+        }
+        projectColumns(names, reader);
+
+        int counter = 0;
+        try {
+            while (reader.next()) {
+                for (int i = 0; i < columnCount; i++) {
+                    resultInserter.setObject(i + 1, reader.getObject(i));
+                }
+                resultInserter.executeUpdate();
+                counter++;
+            }
+        } catch (Exception e) {
+            throw new Exception(
+                "Error: " + e.getMessage() + "\n" + counter
+                + " rows are inserted successfully.");
+        }
+        return counter;
+    }
+
+    /**
+     * Restricts a columnar reader to the columns of a cursor, matched by
+     * name, or by position if some names do not match.
+     *
+     * @param names names of the cursor's columns
+     * @param reader reader of a columnar stream
+     */
+    protected static void projectColumns(
+        String [] names,
+        ColumnarRowReader reader)
+        throws Exception
+    {
+        int [] projection = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            projection[i] = reader.findColumn(names[i]);
+            if (projection[i] < 0) {
+                if (names.length != reader.getColumnCount()) {
+                    throw new Exception(
+                        "Header Info was unmatched! Column " + names[i]
+                        + " was not found. Please check");
+                }
+                for (int j = 0; j < names.length; j++) {
+                    projection[j] = j;
+                }
+                break;
+            }
+        }
+        reader.project(projection);
+    }
+
     protected static boolean verifyHeaderInfo(
         List header_from_cursor,
         List header_from_file)
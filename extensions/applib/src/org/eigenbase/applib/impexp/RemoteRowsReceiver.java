@@ -0,0 +1,462 @@
+/*
+// $Id$
+// Applib is a library of SQL-invocable routines for Eigenbase applications.
+// Copyright (C) 2010 The Eigenbase Project
+// Copyright (C) 2010 SQLstream, Inc.
+// Copyright (C) 2010 DynamoBI Corporation
+//
+// This library is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by
+// the Free Software Foundation; either version 2.1 of the License, or (at
+// your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+*/
+package org.eigenbase.applib.impexp;
+
+import java.io.*;
+
+import java.net.*;
+
+import java.sql.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.*;
+import java.util.zip.*;
+
+import net.sf.farrago.trace.*;
+
+
+/**
+ * RemoteRowsReceiver receives rows for REMOTE_ROWS from several senders at
+ * once. It accepts a given number of connections on a port, and decodes the
+ * rows of each connection on a thread of its own, in either format that
+ * REMOTE_ROWS accepts. Decoded rows are handed in batches, through a bounded
+ * queue, to the thread executing the UDX, which inserts them into its output
+ * in the order in which the batches arrive.
+ *
+ * <p>When the receiver finishes, it traces, for each sender, the number of
+ * rows and bytes it sent and the rate at which it sent them, and how long it
+ * was held back by a full queue; and for the receiver, how long it waited
+ * for rows.
+ *
+ * @version $Id$
+ */
+class RemoteRowsReceiver
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final Logger tracer =
+        FarragoTrace.getClassTracer(RemoteRowsReceiver.class);
+
+    /**
+     * Number of rows decoded before they are handed to the receiver
+     */
+    static final int BATCH_ROWS = 1024;
+
+    /**
+     * Number of batches queued for each sender, beyond which senders wait
+     */
+    static final int QUEUED_BATCHES_PER_SENDER = 4;
+
+    private static final long POLL_MILLIS = 100;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final int port;
+    private final boolean is_compressed;
+    private final int nSenders;
+    private final String [] columnNames;
+    private final List headerFromCursor;
+    private final BlockingQueue<Batch> queue;
+    private final List<Sender> senders;
+    private ServerSocket serverSocket;
+    private volatile boolean cancelled;
+
+    /**
+     * First error raised by the acceptor or a sender. It is not queued, so
+     * that it reaches the receiving thread even when the queue is full.
+     */
+    private volatile Exception error;
+
+    // statistics of the receiving thread
+    private long rowCount;
+    private long waitNanos;
+
+    //~ Constructors -----------------------------------------------------------
+
+    RemoteRowsReceiver(
+        ResultSet inputSet,
+        int port,
+        boolean is_compressed,
+        int nSenders)
+        throws SQLException
+    {
+        this.port = port;
+        this.is_compressed = is_compressed;
+        this.nSenders = nSenders;
+
+        // the cursor is only described here, on the UDX's thread
+        ResultSetMetaData metaData = inputSet.getMetaData();
+        columnNames = new String[metaData.getColumnCount()];
+        for (int i = 0; i < columnNames.length; i++) {
+            columnNames[i] = metaData.getColumnName(i + 1);
+        }
+        headerFromCursor = RemoteRowsUDX.getHeaderInfoFromCursor(inputSet);
+
+        queue =
+            new ArrayBlockingQueue<Batch>(
+                nSenders * QUEUED_BATCHES_PER_SENDER);
+        senders = Collections.synchronizedList(new ArrayList<Sender>());
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Receives the rows of all senders, and inserts them.
+     */
+    void execute(PreparedStatement resultInserter)
+        throws Exception
+    {
+        serverSocket = new ServerSocket(port);
+        long startNanos = System.nanoTime();
+        try {
+            // accept connections while receiving rows from those already
+            // accepted
+            Thread acceptor =
+                new Thread("RemoteRowsUDX acceptor on port " + port) {
+                    public void run()
+                    {
+                        acceptSenders();
+                    }
+                };
+            acceptor.setDaemon(true);
+            acceptor.start();
+
+            int nFinished = 0;
+            while (nFinished < nSenders) {
+                long waitStart = System.nanoTime();
+                Batch batch = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                waitNanos += System.nanoTime() - waitStart;
+                if (error != null) {
+                    throw error;
+                }
+                if (batch == null) {
+                    continue;
+                }
+                for (Object [] row : batch.rows) {
+                    try {
+                        for (int i = 0; i < row.length; i++) {
+                            resultInserter.setObject(i + 1, row[i]);
+                        }
+                        resultInserter.executeUpdate();
+                    } catch (Exception e) {
+                        StringWriter writer = new StringWriter();
+                        e.printStackTrace(new PrintWriter(writer, true));
+                        throw new Exception(
+                            "Error: " + writer.toString() + "\n"
+                            + rowCount + " rows are inserted successfully.");
+                    }
+                    rowCount++;
+                }
+                if (batch.last) {
+                    nFinished++;
+                }
+            }
+        } finally {
+            cancel();
+            traceStatistics(System.nanoTime() - startNanos);
+        }
+    }
+
+    private void acceptSenders()
+    {
+        try {
+            for (int i = 0; i < nSenders; i++) {
+                Socket socket = serverSocket.accept();
+                Sender sender = new Sender(i, socket);
+                senders.add(sender);
+                if (cancelled) {
+                    socket.close();
+                    return;
+                }
+                Thread thread =
+                    new Thread(sender, "RemoteRowsUDX sender " + i);
+                thread.setDaemon(true);
+                thread.start();
+            }
+        } catch (Throwable ex) {
+            fail(ex);
+        }
+    }
+
+    /**
+     * Records an error of the acceptor or a sender, which ends all
+     * receiving. Errors raised once receiving has been cancelled, or after
+     * the first, are ignored.
+     */
+    private synchronized void fail(Throwable ex)
+    {
+        if (cancelled || (error != null)) {
+            return;
+        }
+        error = (ex instanceof Exception) ? (Exception) ex : new Exception(ex);
+    }
+
+    /**
+     * Stops accepting connections, and closes those accepted, which stops
+     * their threads.
+     */
+    private void cancel()
+    {
+        cancelled = true;
+        try {
+            serverSocket.close();
+        } catch (IOException ex) {
+            tracer.warning("could not close server socket: " + ex);
+        }
+        synchronized (senders) {
+            for (Sender sender : senders) {
+                sender.close();
+            }
+        }
+    }
+
+    private void traceStatistics(long elapsedNanos)
+    {
+        if (!tracer.isLoggable(Level.INFO)) {
+            return;
+        }
+        synchronized (senders) {
+            for (Sender sender : senders) {
+                long nanos =
+                    Math.max(sender.endNanos - sender.startNanos, 1);
+                tracer.info(
+                    "sender " + sender.id + " from "
+                    + sender.socket.getRemoteSocketAddress() + ": "
+                    + sender.rowCount + " rows, " + sender.in.getCount()
+                    + " bytes in " + (nanos / 1000000) + " ms ("
+                    + ((sender.rowCount * 1000000000L) / nanos)
+                    + " rows/sec, "
+                    + ((sender.in.getCount() * 1000000000L) / nanos)
+                    + " bytes/sec); held back " + sender.blockedCount
+                    + " times for " + (sender.blockedNanos / 1000000)
+                    + " ms by a full queue");
+            }
+        }
+        tracer.info(
+            "received " + rowCount + " rows from " + senders.size() + " of "
+            + nSenders + " senders in " + (elapsedNanos / 1000000)
+            + " ms (" + ((rowCount * 1000000000L)
+                / Math.max(elapsedNanos, 1))
+            + " rows/sec); waited " + (waitNanos / 1000000)
+            + " ms for rows");
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Batch of rows decoded from a sender. The last batch of a sender is
+     * marked.
+     */
+    private static class Batch
+    {
+        final List<Object []> rows;
+        final boolean last;
+
+        Batch(List<Object []> rows, boolean last)
+        {
+            this.rows = rows;
+            this.last = last;
+        }
+    }
+
+    /**
+     * Decodes the rows of one connection.
+     */
+    private class Sender
+        implements Runnable
+    {
+        final int id;
+        final Socket socket;
+        final CountingInputStream in;
+        long rowCount;
+        long startNanos;
+        long endNanos;
+        long blockedNanos;
+        int blockedCount;
+
+        Sender(int id, Socket socket)
+            throws IOException
+        {
+            this.id = id;
+            this.socket = socket;
+            in = new CountingInputStream(socket.getInputStream());
+            startNanos = endNanos = System.nanoTime();
+        }
+
+        public void run()
+        {
+            try {
+                InputStream sIn = new BufferedInputStream(in);
+                if (ColumnarRowFormat.isColumnar(sIn)) {
+                    decodeColumnar(sIn);
+                } else {
+                    decodeSerialized(sIn);
+                }
+                endNanos = System.nanoTime();
+            } catch (Throwable ex) {
+                endNanos = System.nanoTime();
+                fail(ex);
+            } finally {
+                close();
+            }
+        }
+
+        private void decodeColumnar(InputStream sIn)
+            throws Exception
+        {
+            ColumnarRowReader reader = new ColumnarRowReader(sIn);
+            ReadRowsFromFileUDX.projectColumns(columnNames, reader);
+            List<Object []> rows = new ArrayList<Object []>(BATCH_ROWS);
+            while (reader.next()) {
+                Object [] row = new Object[columnNames.length];
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = reader.getObject(i);
+                }
+                rows = add(rows, row);
+            }
+            put(new Batch(rows, true));
+        }
+
+        private void decodeSerialized(InputStream sIn)
+            throws Exception
+        {
+            ObjectInputStream objIn =
+                new ObjectInputStream(
+                    is_compressed ? new GZIPInputStream(sIn) : sIn);
+            boolean is_header = true;
+            List<Object []> rows = new ArrayList<Object []>(BATCH_ROWS);
+            while (true) {
+                List entity;
+                try {
+                    entity = (List) objIn.readObject();
+                } catch (EOFException ex) {
+                    break;
+                }
+                if (is_header) {
+                    RemoteRowsUDX.verifyHeaderInfo(
+                        headerFromCursor,
+                        (List) entity.get(1));
+                    is_header = false;
+                } else {
+                    rows = add(rows, entity.toArray());
+                }
+            }
+            put(new Batch(rows, true));
+        }
+
+        /**
+         * Adds a row to a batch, and hands the batch over if it is full.
+         *
+         * @return the batch to which the next row is to be added
+         */
+        private List<Object []> add(List<Object []> rows, Object [] row)
+            throws InterruptedException, IOException
+        {
+            rows.add(row);
+            rowCount++;
+            if (rows.size() < BATCH_ROWS) {
+                return rows;
+            }
+            put(new Batch(rows, false));
+            return new ArrayList<Object []>(BATCH_ROWS);
+        }
+
+        private void put(Batch batch)
+            throws InterruptedException, IOException
+        {
+            if (queue.offer(batch)) {
+                return;
+            }
+            long start = System.nanoTime();
+            blockedCount++;
+            try {
+                while (!queue.offer(batch, POLL_MILLIS, TimeUnit.MILLISECONDS))
+                {
+                    if (cancelled || (error != null)) {
+                        throw new InterruptedIOException();
+                    }
+                }
+            } finally {
+                blockedNanos += System.nanoTime() - start;
+            }
+        }
+
+        void close()
+        {
+            try {
+                socket.close();
+            } catch (IOException ex) {
+                tracer.warning("could not close socket: " + ex);
+            }
+        }
+    }
+
+    /**
+     * Counts the bytes read from a stream.
+     */
+    private static class CountingInputStream
+        extends FilterInputStream
+    {
+        private volatile long count;
+
+        CountingInputStream(InputStream in)
+        {
+            super(in);
+        }
+
+        public int read()
+            throws IOException
+        {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        public int read(byte [] b, int off, int len)
+            throws IOException
+        {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        public long skip(long n)
+            throws IOException
+        {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        long getCount()
+        {
+            return count;
+        }
+    }
+}
+
+// End RemoteRowsReceiver.java
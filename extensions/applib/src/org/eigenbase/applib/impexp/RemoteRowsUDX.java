@@ -59,7 +59,23 @@ public class RemoteRowsUDX
         try {
             socket = ss.accept();
 
-            InputStream sIn = socket.getInputStream();
+            InputStream sIn =
+                new BufferedInputStream(socket.getInputStream());
+            if (ColumnarRowFormat.isColumnar(sIn)) {
+                // the columnar format compresses blocks itself
+                ColumnarRowReader reader = new ColumnarRowReader(sIn);
+                try {
+                    ReadRowsFromFileUDX.insertColumnarRows(
+                        inputSet,
+                        reader,
+                        resultInserter);
+                } finally {
+                    reader.close();
+                }
+                socket.close();
+                ss.close();
+                return;
+            }
             GZIPInputStream gzIn = null;
             ObjectInputStream objIn = null;
 
@@ -127,6 +143,29 @@ public class RemoteRowsUDX
         ss.close();
     }
 
+    /**
+     * Receives rows from several senders at once, each on a connection of
+     * its own, and merges them into one output. The rows of each sender keep
+     * their order, but those of different senders are interleaved.
+     *
+     * @param senders number of connections to accept
+     */
+    public static void execute(
+        ResultSet inputSet,
+        int port,
+        boolean is_compressed,
+        int senders,
+        PreparedStatement resultInserter)
+        throws Exception
+    {
+        if (senders < 1) {
+            throw new Exception(
+                "Number of senders must be positive: " + senders);
+        }
+        new RemoteRowsReceiver(inputSet, port, is_compressed, senders)
+            .execute(resultInserter);
+    }
+
     protected static boolean verifyHeaderInfo(
         List header_from_cursor,
         List header_from_file) throws Exception
@@ -111,6 +111,43 @@ public class WriteRowsToFileUDX
         PreparedStatement resultInserter)
         throws Exception
     {
+        execute(
+            inputSet,
+            url,
+            is_compressed,
+            ColumnarRowFormat.FORMAT_SERIALIZED,
+            resultInserter);
+    }
+
+    /**
+     * Writes rows in the given format, either serialized Java objects or the
+     * {@link ColumnarRowFormat}. Both are read by READ_ROWS_FROM_FILE.
+     */
+    public static void execute(
+        ResultSet inputSet,
+        String url,
+        boolean is_compressed,
+        String format,
+        PreparedStatement resultInserter)
+        throws Exception
+    {
+        if ((format != null)
+            && format.trim().equalsIgnoreCase(
+                ColumnarRowFormat.FORMAT_COLUMNAR))
+        {
+            executeColumnar(inputSet, url, is_compressed, resultInserter);
+            return;
+        }
+        if ((format != null)
+            && !format.trim().equalsIgnoreCase(
+                ColumnarRowFormat.FORMAT_SERIALIZED))
+        {
+            throw new Exception(
+                "Unknown format " + format + ", please use ["
+                + ColumnarRowFormat.FORMAT_SERIALIZED + "] or ["
+                + ColumnarRowFormat.FORMAT_COLUMNAR + "]");
+        }
+
         int status = 0;
         String err_msg = "";
         int row_count = 0;
@@ -185,6 +222,33 @@ public class WriteRowsToFileUDX
         resultInserter.setString(2, err_msg);
         resultInserter.executeUpdate();
     }
+
+    private static void executeColumnar(
+        ResultSet inputSet,
+        String url,
+        boolean is_compressed,
+        PreparedStatement resultInserter)
+        throws Exception
+    {
+        ColumnarRowWriter writer =
+            new ColumnarRowWriter(
+                new FileOutputStream(openFile(url)),
+                inputSet.getMetaData(),
+                is_compressed);
+        try {
+            while (inputSet.next()) {
+                writer.writeRow(inputSet);
+            }
+        } finally {
+            writer.close();
+        }
+        resultInserter.setInt(1, 0);
+        resultInserter.setString(
+            2,
+            writer.getRowCount()
+            + " rows have been written in the specific file successfully!");
+        resultInserter.executeUpdate();
+    }
 }
 
 // End WriteRowsToFileUDX.java
@@ -0,0 +1,52 @@
+#!perl
+
+use DBI;
+use DBD::Pg qw(:pg_types);
+use Time::HiRes qw(time);
+
+### change settings to your host with pg2luciddb:
+my $dbname = "LOCALDB";
+my $host = "localhost";
+my $port = 9999;
+my $dbuser = "sa";
+my $dbpass = "";
+
+### number of executions per run:
+my $count = 10000;
+
+$dbh = DBI->connect("dbi:Pg:dbname=$dbname;host=$host;port=$port", $dbuser, $dbpass, {AutoCommit => 0, RaiseError => 1, PrintError => 0});
+
+print "Established connection to PG2LucidDB\n";
+
+my $SQL = "SELECT NAME, PRICE FROM PG2LUCIDDBTEST.SKU WHERE ID = ?";
+
+### run many small parameterized queries:
+sub run 
+{
+    my ($label, $serverPrepare) = @_;
+
+    my $sth = $dbh->prepare($SQL, {pg_server_prepare => $serverPrepare});
+
+    my $rows = 0;
+    my $start = time();
+    for (my $i = 0; $i < $count; $i++) 
+    {
+        $sth->execute(($i % 10) + 1);
+        while (my @array = $sth->fetchrow_array()) 
+        {
+            $rows++;
+        }
+    }
+    my $elapsed = time() - $start;
+    $sth->finish();
+
+    printf("%-22s %d queries, %d rows in %.2f s (%.0f queries/s)\n", $label, $count, $rows, $elapsed, $count / $elapsed);
+}
+
+### statement interpolated by the client and sent as a simple query:
+run("client side prepare", 0);
+
+### statement prepared once by the server, executed with Bind/Execute:
+run("server side prepare", 1);
+
+$dbh->disconnect();
@@ -35,8 +35,11 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.Reader;
 import java.io.StringReader;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.net.UnknownHostException;
 import java.sql.Connection;
 import java.sql.ParameterMetaData;
@@ -54,6 +57,14 @@ import java.util.Set;
 import java.net.InetAddress;
 import java.util.Properties;
 import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.log4j.Logger;
 import org.apache.log4j.PropertyConfigurator;
 import org.h2.util.NetUtils;
@@ -90,6 +101,23 @@ public class Server
     private String baseDir;
     private boolean ifExists;    
 
+    // connection multiplexing (if ioThreads > 0):
+    private ServerSocketChannel serverChannel;
+    private ServerSelector[] selectors;
+    private ThreadPoolExecutor executor;
+    private int nextSelector;
+    private Timer metricsTimer;
+
+    // metrics:
+    private final AtomicLong rejectedConnections = new AtomicLong();
+    private final AtomicLong totalRequests = new AtomicLong();
+    private final AtomicLong totalBytesRead = new AtomicLong();
+    private final AtomicLong totalBytesWritten = new AtomicLong();
+    private long lastMetricsTime = System.currentTimeMillis();
+    private long lastMetricsRequests;
+    private long lastMetricsBytesRead;
+    private long lastMetricsBytesWritten;
+
     // constructor:
     public Server(String[] args) 
     {
@@ -376,12 +404,71 @@ public class Server
             return;
         }
         
+        // log metrics periodically:
+        if (configuration.getMetricsLogInterval() > 0)
+        {
+            metricsTimer = new Timer("PG2LucidDB metrics", true);
+            metricsTimer.schedule(new TimerTask() 
+            {
+                public void run()
+                {
+                    logMetrics();
+                }
+            }, configuration.getMetricsLogInterval(), configuration.getMetricsLogInterval());
+        }
+
+        // multiplex connections over a few I/O threads:
+        if (configuration.getIoThreads() > 0)
+        {
+            try
+            {
+                startSelectors();
+            }
+            catch (IOException e)
+            {
+                logger.error("Can't start server: " + e.toString());
+                return;
+            }
+            listenMultiplexed();
+            return;
+        }
+
         // create server socket (no SSL support yet)
         serverSocket = NetUtils.createServerSocket(configuration.getServerPort(), false);
         // listen:
         listen();
     }
 
+    // open server channel, start selector & query threads:
+    private void startSelectors() throws IOException
+    {
+        serverChannel = ServerSocketChannel.open();
+        serverSocket = serverChannel.socket();
+        serverSocket.bind(new InetSocketAddress(configuration.getServerPort()));
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(
+            configuration.getQueryThreads(), configuration.getQueryThreads(),
+            60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory() 
+            {
+                public Thread newThread(Runnable r)
+                {
+                    Thread t = new Thread(r, "PG2LucidDB query thread " + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        executor.allowCoreThreadTimeOut(true);
+
+        selectors = new ServerSelector[configuration.getIoThreads()];
+        for (int i = 0; i < selectors.length; i++)
+        {
+            selectors[i] = new ServerSelector(this, "PG2LucidDB selector " + (i + 1));
+            selectors[i].start();
+        }
+    }
+
     // listen:
     public void listen() 
     {
@@ -394,20 +481,33 @@ public class Server
             while (!stop) 
             {
                 Socket s = serverSocket.accept();
-                if (!allow(s.getInetAddress().getHostAddress())) 
+                // a failure of one connection must not stop the server:
+                try
                 {
-                    logger.trace("Connection not allowed");
-                    s.close();
-                } 
-                else 
+                    if (!allow(s.getInetAddress().getHostAddress())) 
+                    {
+                        logger.trace("Connection not allowed");
+                        s.close();
+                    } 
+                    else if (!admit(s))
+                    {
+                        s.close();
+                    }
+                    else 
+                    {
+                        ServerThread c = new ServerThread(s, this);
+                        running.add(c);
+                        c.setProcessId(running.size());
+                        Thread thread = new Thread(c);
+                        thread.setName(threadName + " thread");
+                        c.setThread(thread);
+                        thread.start();
+                    }
+                }
+                catch (Exception e)
                 {
-                    ServerThread c = new ServerThread(s, this);
-                    running.add(c);
-                    c.setProcessId(running.size());
-                    Thread thread = new Thread(c);
-                    thread.setName(threadName + " thread");
-                    c.setThread(thread);
-                    thread.start();
+                    logger.warn("Exception accepting connection: " + e.toString());
+                    closeQuietly(s);
                 }
             }
         } 
@@ -420,6 +520,171 @@ public class Server
         }
     }
 
+    // listen, multiplexing accepted connections over the selectors:
+    private void listenMultiplexed() 
+    {
+        logger.info("Launching " + selectors.length + " selector(s) and " + configuration.getQueryThreads() + " query thread(s) with configuration: " + configuration.toString());        
+
+        try 
+        {
+            while (!stop) 
+            {
+                SocketChannel channel = serverChannel.accept();
+                Socket s = channel.socket();
+                // a failure of one connection must not stop the server:
+                try
+                {
+                    if (!allow(s.getInetAddress().getHostAddress())) 
+                    {
+                        logger.trace("Connection not allowed");
+                        s.close();
+                    } 
+                    else if (!admit(s))
+                    {
+                        s.close();
+                    }
+                    else 
+                    {
+                        channel.configureBlocking(false);
+                        ServerThread c = new ServerThread(s, this);
+                        running.add(c);
+                        c.setProcessId(running.size());
+                        // round robin; the counter may wrap around:
+                        int i = Math.abs(nextSelector++ % selectors.length);
+                        ServerSelector selector = selectors[i];
+                        selector.register(new ServerConnection(this, selector, channel, c));
+                    }
+                }
+                catch (Exception e)
+                {
+                    logger.warn("Exception accepting connection: " + e.toString());
+                    closeQuietly(s);
+                }
+            }
+        } 
+        catch (Exception e) 
+        {
+            if (!stop) 
+            {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // close a socket, ignoring errors:
+    private static void closeQuietly(Socket s)
+    {
+        try
+        {
+            s.close();
+        }
+        catch (IOException e)
+        {
+            logger.trace("Exception closing socket: " + e.toString());
+        }
+    }
+
+    // check the connection limit, telling the client if it is reached:
+    private boolean admit(Socket s) throws IOException
+    {
+        int maxConnections = configuration.getMaxConnections();
+        if (maxConnections <= 0 || running.size() < maxConnections)
+        {
+            return true;
+        }
+        rejectedConnections.incrementAndGet();
+        logger.debug("Connection rejected, " + running.size() + " connections open");
+
+        // send error response (too_many_connections):
+        ByteArrayOutputStream buff = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(buff);
+        data.write('S');
+        data.write("FATAL".getBytes());
+        data.write(0);
+        data.write('C');
+        data.write("53300".getBytes());
+        data.write(0);
+        data.write('M');
+        data.write("sorry, too many clients already".getBytes());
+        data.write(0);
+        data.write(0);
+        DataOutputStream out = new DataOutputStream(s.getOutputStream());
+        out.write('E');
+        out.writeInt(buff.size() + 4);
+        out.write(buff.toByteArray());
+        out.flush();
+        return false;
+    }
+
+    // run a request of a multiplexed connection:
+    void execute(Runnable task)
+    {
+        executor.execute(task);
+    }
+
+    // count a request of a multiplexed connection:
+    void addRequest()
+    {
+        totalRequests.incrementAndGet();
+    }
+
+    // count bytes read from a multiplexed connection:
+    void addBytesRead(long n)
+    {
+        totalBytesRead.addAndGet(n);
+    }
+
+    // count bytes written to a multiplexed connection:
+    void addBytesWritten(long n)
+    {
+        totalBytesWritten.addAndGet(n);
+    }
+
+    // log connection counts & throughput since last call:
+    synchronized void logMetrics()
+    {
+        long now = System.currentTimeMillis();
+        long elapsed = Math.max(1, now - lastMetricsTime);
+        long requests = totalRequests.get();
+        long bytesRead = totalBytesRead.get();
+        long bytesWritten = totalBytesWritten.get();
+
+        StringBuilder buff = new StringBuilder();
+        buff.append("Connections: ").append(running.size());
+        buff.append(", rejected: ").append(rejectedConnections.get());
+        if (selectors != null)
+        {
+            long buffered = 0;
+            for (ServerSelector selector : selectors)
+            {
+                buffered += selector.getBufferedBytes();
+            }
+            buff.append(", requests/s: ").append((requests - lastMetricsRequests) * 1000 / elapsed);
+            buff.append(", bytes read/s: ").append((bytesRead - lastMetricsBytesRead) * 1000 / elapsed);
+            buff.append(", bytes written/s: ").append((bytesWritten - lastMetricsBytesWritten) * 1000 / elapsed);
+            buff.append(", buffered bytes: ").append(buffered);
+            buff.append(", executing: ").append(executor.getActiveCount());
+            buff.append(", waiting: ").append(executor.getQueue().size());
+        }
+        logger.info(buff.toString());
+
+        if (selectors != null && logger.isDebugEnabled())
+        {
+            for (ServerSelector selector : selectors)
+            {
+                for (ServerConnection c : selector.getConnections())
+                {
+                    logger.debug(c.getMetrics());
+                }
+            }
+        }
+
+        lastMetricsTime = now;
+        lastMetricsRequests = requests;
+        lastMetricsBytesRead = bytesRead;
+        lastMetricsBytesWritten = bytesWritten;
+    }
+
     // stop:
     public void stop() 
     {
@@ -440,6 +705,10 @@ public class Server
                 }
                 serverSocket = null;
             }
+            if (metricsTimer != null)
+            {
+                metricsTimer.cancel();
+            }
         }
         // TODO server: using a boolean 'now' argument? a timeout?
         for (ServerThread c : New.arrayList(running)) 
@@ -459,6 +728,14 @@ public class Server
                 e.printStackTrace();
             }
         }
+        if (selectors != null)
+        {
+            for (ServerSelector selector : selectors)
+            {
+                selector.stop();
+            }
+            executor.shutdown();
+        }
     }
 
     // is running method:
@@ -0,0 +1,569 @@
+/*
+// $Id$
+// pg2luciddb is a PG emulator for LucidDB
+// Copyright (C) 2009 The Eigenbase Project
+// Copyright (C) 2009 SQLstream, Inc.
+// Copyright (C) 2009 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+package org.luciddb.pg2luciddb;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.LinkedList;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A client connection multiplexed by a {@link ServerSelector}.
+ *
+ * <p>The selector thread reads requests from the channel and splits them into
+ * protocol messages, which are processed in order by the {@link ServerThread}
+ * of the connection on one of the server's query threads. Responses are
+ * collected into chunks and written by the selector thread, or directly if
+ * the channel accepts them. While more than connectionMaxBufferedBytes of
+ * requests and responses are buffered, the connection is not read from and
+ * the query thread waits for the client to read its responses.
+ */
+class ServerConnection implements Runnable
+{
+    // get logger class:
+    private static final Logger logger = Logger.getLogger(ServerConnection.class);
+
+    // initial size of the read buffer:
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    // hand responses to the channel in chunks of this size:
+    private static final int WRITE_CHUNK_SIZE = 32768;
+
+    private final Server server;
+    private final ServerSelector selector;
+    private final SocketChannel channel;
+    private final ServerThread handler;
+    private final int maxBufferedBytes;
+    private final ResponseStream out = new ResponseStream();
+
+    // the following are used by the selector thread only:
+    private SelectionKey key;
+    private ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+    // the following are guarded by this:
+    private final LinkedList<Request> inbound = new LinkedList<Request>();
+    private final LinkedList<ByteBuffer> outbound = new LinkedList<ByteBuffer>();
+    private int bufferedBytes;
+    private int peakBufferedBytes;
+    // true while requests are queued or processed on a query thread:
+    private boolean busy;
+    // true once the connection should be closed after sending its responses:
+    private boolean closing;
+    private boolean closed;
+    private boolean handlerClosed;
+
+    // metrics:
+    private final long connectTime = System.currentTimeMillis();
+    private volatile long lastActivity = connectTime;
+    private volatile long bytesRead;
+    private volatile long bytesWritten;
+    private volatile long requests;
+    private volatile long busyNanos;
+
+    // continue reading (or close) once a query thread is done:
+    private final Runnable resumeTask = new Runnable() 
+    {
+        public void run()
+        {
+            resume();
+        }
+    };
+
+    // update interest in writing once responses are queued:
+    private final Runnable writeTask = new Runnable() 
+    {
+        public void run()
+        {
+            updateInterest();
+        }
+    };
+
+    // constructor:
+    ServerConnection(Server server, ServerSelector selector, SocketChannel channel, ServerThread handler)
+    {
+        this.server = server;
+        this.selector = selector;
+        this.channel = channel;
+        this.handler = handler;
+        this.maxBufferedBytes = server.configuration.getConnectionMaxBufferedBytes();
+        handler.setOutputStream(out);
+        handler.start();
+    }
+
+    // get channel:
+    SocketChannel getChannel()
+    {
+        return channel;
+    }
+
+    // set key (when registered with the selector):
+    void setKey(SelectionKey key)
+    {
+        this.key = key;
+    }
+
+    // check whether the connection has been idle for the specified period:
+    synchronized boolean isIdle(long now, int timeout)
+    {
+        return !busy && outbound.isEmpty() && now - lastActivity > timeout;
+    }
+
+    // get number of bytes buffered for the connection:
+    synchronized int getBufferedBytes()
+    {
+        return bufferedBytes;
+    }
+
+    // read requests from the channel (selector thread):
+    void read() throws IOException
+    {
+        int n = channel.read(readBuffer);
+        if (n < 0)
+        {
+            close();
+            return;
+        }
+        bytesRead += n;
+        server.addBytesRead(n);
+        lastActivity = System.currentTimeMillis();
+        decode();
+        updateInterest();
+    }
+
+    // split buffered input into messages (selector thread):
+    private void decode() throws IOException
+    {
+        readBuffer.flip();
+        int needed = 0;
+        while (true)
+        {
+            // until the startup message is processed it is not known whether
+            // the next message starts with its type:
+            boolean initDone = handler.isInitDone();
+            synchronized (this)
+            {
+                if ((!initDone && busy) || closing)
+                {
+                    break;
+                }
+            }
+            int headerSize = initDone ? 5 : 4;
+            if (readBuffer.remaining() < headerSize)
+            {
+                needed = headerSize;
+                break;
+            }
+            int pos = readBuffer.position();
+            int type = initDone ? readBuffer.get(pos) & 0xff : 0;
+            int len = readBuffer.getInt(pos + headerSize - 4);
+            if (len < 4)
+            {
+                throw new IOException("Invalid message length: " + len);
+            }
+            needed = headerSize - 4 + len;
+            if (readBuffer.remaining() < needed)
+            {
+                break;
+            }
+            readBuffer.position(pos + headerSize);
+            byte[] data = new byte[len - 4];
+            readBuffer.get(data);
+            enqueue(new Request(type, data));
+        }
+        readBuffer.compact();
+
+        // grow the buffer for large messages, shrink it back afterwards:
+        if (needed > readBuffer.capacity())
+        {
+            ByteBuffer b = ByteBuffer.allocate(needed);
+            readBuffer.flip();
+            b.put(readBuffer);
+            readBuffer = b;
+        }
+        else if (readBuffer.position() == 0 && readBuffer.capacity() > READ_BUFFER_SIZE)
+        {
+            readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        }
+    }
+
+    // queue a message, and hand the connection to a query thread if idle:
+    private void enqueue(Request r)
+    {
+        boolean submit;
+        synchronized (this)
+        {
+            inbound.add(r);
+            addBufferedBytes(r.data.length);
+            requests++;
+            submit = !busy;
+            busy = true;
+        }
+        server.addRequest();
+        if (submit)
+        {
+            server.execute(this);
+        }
+    }
+
+    // process queued messages (query thread):
+    public void run()
+    {
+        long start = System.nanoTime();
+        boolean stopped = false;
+        try
+        {
+            while (true)
+            {
+                Request r;
+                synchronized (this)
+                {
+                    r = inbound.poll();
+                    if (r != null)
+                    {
+                        bufferedBytes -= r.data.length;
+                    }
+                }
+                if (r == null)
+                {
+                    out.send();
+                    synchronized (this)
+                    {
+                        if (inbound.isEmpty())
+                        {
+                            busy = false;
+                            break;
+                        }
+                    }
+                    continue;
+                }
+
+                handler.process(r.type, r.data, r.data.length);
+                if (handler.isStopped())
+                {
+                    out.send();
+                    stopped = true;
+                    break;
+                }
+            }
+        }
+        catch (Exception e)
+        {
+            logger.warn("Exception processing request: " + e.toString(), e);
+            stopped = true;
+        }
+        finally
+        {
+            busyNanos += System.nanoTime() - start;
+        }
+
+        boolean closeHandler;
+        synchronized (this)
+        {
+            if (stopped)
+            {
+                closing = true;
+                busy = false;
+                inbound.clear();
+            }
+            closeHandler = closed;
+        }
+        // the connection was closed while the query thread was using it:
+        if (closeHandler)
+        {
+            closeHandler();
+        }
+        selector.execute(resumeTask);
+    }
+
+    // continue once a query thread is done (selector thread):
+    private void resume()
+    {
+        boolean done;
+        synchronized (this)
+        {
+            if (closed)
+            {
+                return;
+            }
+            done = closing && outbound.isEmpty();
+        }
+        if (done)
+        {
+            close();
+            return;
+        }
+        try
+        {
+            decode();
+            updateInterest();
+        }
+        catch (IOException e)
+        {
+            logger.trace("Exception reading request: " + e.toString());
+            close();
+        }
+    }
+
+    // write queued responses (selector thread):
+    void write() throws IOException
+    {
+        boolean done;
+        synchronized (this)
+        {
+            writeOutbound();
+            done = closing && outbound.isEmpty();
+        }
+        if (done)
+        {
+            close();
+        }
+        else
+        {
+            updateInterest();
+        }
+    }
+
+    // write as much of the queued responses as the channel accepts:
+    private void writeOutbound() throws IOException
+    {
+        while (!outbound.isEmpty())
+        {
+            ByteBuffer b = outbound.getFirst();
+            int n = channel.write(b);
+            bytesWritten += n;
+            server.addBytesWritten(n);
+            bufferedBytes -= n;
+            if (b.hasRemaining())
+            {
+                break;
+            }
+            outbound.removeFirst();
+        }
+        lastActivity = System.currentTimeMillis();
+        notifyAll();
+    }
+
+    // read unless too much is buffered, write while responses are queued
+    // (selector thread):
+    private void updateInterest()
+    {
+        if (key == null || !key.isValid())
+        {
+            return;
+        }
+        int ops = 0;
+        synchronized (this)
+        {
+            if (!closing && bufferedBytes < maxBufferedBytes && readBuffer.hasRemaining())
+            {
+                ops |= SelectionKey.OP_READ;
+            }
+            if (!outbound.isEmpty())
+            {
+                ops |= SelectionKey.OP_WRITE;
+            }
+        }
+        key.interestOps(ops);
+    }
+
+    // add to the count of buffered bytes:
+    private void addBufferedBytes(int n)
+    {
+        bufferedBytes += n;
+        if (bufferedBytes > peakBufferedBytes)
+        {
+            peakBufferedBytes = bufferedBytes;
+        }
+    }
+
+    // close the connection (selector thread):
+    void close()
+    {
+        boolean closeHandler;
+        synchronized (this)
+        {
+            if (closed)
+            {
+                return;
+            }
+            closed = true;
+            closing = true;
+            outbound.clear();
+            notifyAll();
+            // a query thread still using the connection closes the handler:
+            closeHandler = !busy;
+        }
+        if (key != null)
+        {
+            key.cancel();
+        }
+        try
+        {
+            channel.close();
+        }
+        catch (IOException e)
+        {
+            logger.trace("Exception closing channel: " + e.toString());
+        }
+        if (closeHandler)
+        {
+            closeHandler();
+        }
+        selector.remove(this);
+        logger.debug("Connection closed: " + getMetrics());
+    }
+
+    // close the JDBC connection of the client (once):
+    private void closeHandler()
+    {
+        synchronized (this)
+        {
+            if (handlerClosed)
+            {
+                return;
+            }
+            handlerClosed = true;
+        }
+        handler.close();
+    }
+
+    // get connection metrics:
+    synchronized String getMetrics()
+    {
+        long elapsed = Math.max(1, System.currentTimeMillis() - connectTime);
+        return channel.socket().getRemoteSocketAddress()
+            + " connected " + elapsed + " ms"
+            + ", requests " + requests
+            + ", bytes read " + bytesRead
+            + ", bytes written " + bytesWritten
+            + " (" + (bytesWritten * 1000 / elapsed) + " bytes/s)"
+            + ", busy " + (busyNanos / 1000000) + " ms"
+            + ", buffered " + bufferedBytes
+            + " bytes (peak " + peakBufferedBytes + ")";
+    }
+
+    /**
+     * A protocol message from the client.
+     */
+    private static class Request
+    {
+        /**
+         * The message type, 0 for startup messages.
+         */
+        final int type;
+
+        /**
+         * The message contents, without type & length.
+         */
+        final byte[] data;
+
+        Request(int type, byte[] data)
+        {
+            this.type = type;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Collects responses of a ServerThread into chunks for the channel.
+     */
+    private class ResponseStream extends OutputStream
+    {
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+        public void write(int b) throws IOException
+        {
+            pending.write(b);
+            if (pending.size() >= WRITE_CHUNK_SIZE)
+            {
+                send();
+            }
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            pending.write(b, off, len);
+            if (pending.size() >= WRITE_CHUNK_SIZE)
+            {
+                send();
+            }
+        }
+
+        public void flush()
+        {
+            // ServerThread flushes after each message; responses are sent
+            // once a chunk is full or all queued requests are processed
+        }
+
+        // queue pending responses for the channel:
+        void send() throws IOException
+        {
+            if (pending.size() == 0)
+            {
+                return;
+            }
+            ByteBuffer b = ByteBuffer.wrap(pending.toByteArray());
+            pending.reset();
+            boolean queued;
+            synchronized (ServerConnection.this)
+            {
+                // wait for the client to read responses before producing
+                // more of them:
+                while (!closed && !outbound.isEmpty() && bufferedBytes >= maxBufferedBytes)
+                {
+                    try
+                    {
+                        ServerConnection.this.wait();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        throw new InterruptedIOException();
+                    }
+                }
+                if (closed)
+                {
+                    throw new IOException("Connection closed");
+                }
+                outbound.add(b);
+                addBufferedBytes(b.remaining());
+
+                // write directly if nothing else is queued:
+                if (outbound.size() == 1)
+                {
+                    writeOutbound();
+                }
+                queued = !outbound.isEmpty();
+            }
+            if (queued)
+            {
+                selector.execute(writeTask);
+            }
+        }
+    }
+}
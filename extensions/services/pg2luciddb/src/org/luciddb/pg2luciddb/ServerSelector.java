@@ -0,0 +1,226 @@
+/*
+// $Id$
+// pg2luciddb is a PG emulator for LucidDB
+// Copyright (C) 2009 The Eigenbase Project
+// Copyright (C) 2009 SQLstream, Inc.
+// Copyright (C) 2009 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+package org.luciddb.pg2luciddb;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.log4j.Logger;
+
+/**
+ * One I/O thread multiplexing client connections with a {@link Selector}.
+ *
+ * <p>The thread reads requests and writes responses of its connections; the
+ * requests themselves are processed on the server's query threads (see
+ * {@link ServerConnection}). Other threads hand work to the selector thread
+ * with {@link #execute}, since interest in reading or writing a connection
+ * can only be changed safely by that thread.
+ */
+class ServerSelector implements Runnable
+{
+    // get logger class:
+    private static final Logger logger = Logger.getLogger(ServerSelector.class);
+
+    // check for idle connections at least this often (in miliseconds):
+    private static final int SELECT_TIMEOUT = 1000;
+
+    private final Server server;
+    private final Selector selector;
+    private final Thread thread;
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+    private final Set<ServerConnection> connections = Collections.synchronizedSet(new HashSet<ServerConnection>());
+    private volatile boolean stop;
+
+    // constructor:
+    ServerSelector(Server server, String name) throws IOException
+    {
+        this.server = server;
+        this.selector = Selector.open();
+        this.thread = new Thread(this, name);
+    }
+
+    // start the selector thread:
+    void start()
+    {
+        thread.start();
+    }
+
+    // stop the selector thread, closing its connections:
+    void stop()
+    {
+        stop = true;
+        selector.wakeup();
+        try
+        {
+            thread.join(1000);
+        }
+        catch (InterruptedException e)
+        {
+            logger.trace("Interrupted while stopping selector");
+        }
+    }
+
+    // run a task on the selector thread:
+    void execute(Runnable task)
+    {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    // start multiplexing a connection:
+    void register(final ServerConnection c)
+    {
+        connections.add(c);
+        execute(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    c.setKey(c.getChannel().register(selector, SelectionKey.OP_READ, c));
+                }
+                catch (IOException e)
+                {
+                    logger.trace("Exception registering connection: " + e.toString());
+                    c.close();
+                }
+            }
+        });
+    }
+
+    // forget a closed connection:
+    void remove(ServerConnection c)
+    {
+        connections.remove(c);
+    }
+
+    // get number of connections:
+    int getConnectionCount()
+    {
+        return connections.size();
+    }
+
+    // get total number of bytes buffered by the connections:
+    long getBufferedBytes()
+    {
+        long total = 0;
+        for (ServerConnection c : getConnections())
+        {
+            total += c.getBufferedBytes();
+        }
+        return total;
+    }
+
+    // get a snapshot of the connections:
+    List<ServerConnection> getConnections()
+    {
+        synchronized (connections)
+        {
+            return new ArrayList<ServerConnection>(connections);
+        }
+    }
+
+    // run thread:
+    public void run()
+    {
+        int idleTimeout = server.configuration.getConnectionCloseIdleTimeout();
+        long lastCheck = System.currentTimeMillis();
+        while (!stop)
+        {
+            try
+            {
+                selector.select(SELECT_TIMEOUT);
+
+                Runnable task;
+                while ((task = tasks.poll()) != null)
+                {
+                    task.run();
+                }
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext())
+                {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    ServerConnection c = (ServerConnection) key.attachment();
+                    try
+                    {
+                        if (key.isValid() && key.isReadable())
+                        {
+                            c.read();
+                        }
+                        if (key.isValid() && key.isWritable())
+                        {
+                            c.write();
+                        }
+                    }
+                    catch (IOException e)
+                    {
+                        logger.trace("Exception in connection: " + e.toString());
+                        c.close();
+                    }
+                }
+
+                // close connections which are idle, or closed by the server:
+                long now = System.currentTimeMillis();
+                if (now - lastCheck < SELECT_TIMEOUT)
+                {
+                    continue;
+                }
+                lastCheck = now;
+                for (ServerConnection c : getConnections())
+                {
+                    if (!c.getChannel().isOpen() || (idleTimeout > 0 && c.isIdle(now, idleTimeout)))
+                    {
+                        c.close();
+                    }
+                }
+            }
+            catch (Exception e)
+            {
+                logger.error("Exception in selector: " + e.toString());
+            }
+        }
+
+        for (ServerConnection c : getConnections())
+        {
+            c.close();
+        }
+        try
+        {
+            selector.close();
+        }
+        catch (IOException e)
+        {
+            logger.trace("Exception closing selector: " + e.toString());
+        }
+    }
+}
@@ -75,7 +75,9 @@ import java.security.MessageDigest;
 
 
 /**
- * One server thread is opened for each client.
+ * One server thread is opened for each client. When the server multiplexes
+ * connections, the messages of a client are processed by a
+ * {@link ServerConnection} instead.
  */
 public class ServerThread implements Runnable 
 {
@@ -83,7 +85,7 @@ public class ServerThread implements Runnable
     private Server server;
     private Socket socket;
     private Connection conn;
-    private boolean stop;
+    private volatile boolean stop;
     private DataInputStream dataInRaw;
     private DataInputStream dataIn;
     private OutputStream out;
@@ -91,7 +93,7 @@ public class ServerThread implements Runnable
     private ByteArrayOutputStream outBuffer;
     private DataOutputStream dataOut;
     private Thread thread;
-    private boolean initDone;
+    private volatile boolean initDone;
     private String userName;
     private String databaseName;
     private int processId;
@@ -117,6 +119,10 @@ public class ServerThread implements Runnable
     private static final String POSTGRES_DATE_INFINITY = "infinity";
     private static final String POSTGRES_DATE_MINUS_INFINITY = "-infinity";
 
+    // PostgreSQL binary dates count from 2000-01-01 (in UTC millis):
+    private static final long PG_EPOCH = 946684800000l;
+    private static final long MILLIS_PER_DAY = 86400000l;
+
     // regexp:
     private static final String SELECT_PGTYPE_PATTERN_STRING = "^(select.*\\s*from)\\s*(pg_type)(.*?)$";
     private static final String COLUMNS_Q_SEARCH_BY_IDS_1_STRING = "and\\s*c[.]oid\\s*=(\\d+)\\s*"; 
@@ -165,14 +171,7 @@ public class ServerThread implements Runnable
     {
         try 
         {
-            server.trace("Connect");
-
-            // generate salt & secret key:
-            salt = generateRandomString(4);      
-            Random random = new Random();
-            secretKey = random.nextInt();
-
-            logger.debug("Start serving client: " + socket.getRemoteSocketAddress());
+            start();
 
             // set tcp parameters:
             socket.setSoTimeout(server.configuration.getConnectionCloseIdleTimeout());
@@ -201,6 +200,38 @@ public class ServerThread implements Runnable
         }
     }
 
+    // start serving the client:
+    void start()
+    {
+        server.trace("Connect");
+
+        // generate salt & secret key:
+        salt = generateRandomString(4);      
+        Random random = new Random();
+        secretKey = random.nextInt();
+
+        logger.debug("Start serving client: " + socket.getRemoteSocketAddress());
+    }
+
+    // set stream for responses (when the socket is not used directly):
+    void setOutputStream(OutputStream out)
+    {
+        this.out = out;
+    }
+
+    // true once the startup message has been processed, messages are then
+    // prefixed with their type:
+    boolean isInitDone()
+    {
+        return initDone;
+    }
+
+    // true if the connection should be closed:
+    boolean isStopped()
+    {
+        return stop;
+    }
+
     // read string from input buffer:
     private String readString() throws IOException 
     {
@@ -274,6 +305,12 @@ public class ServerThread implements Runnable
         len -= 4;
         byte[] data = ByteUtils.newBytes(len);
         dataInRaw.readFully(data, 0, len);
+        process(x, data, len);
+    }
+
+    // process a message read from the client:
+    void process(int x, byte[] data, int len) throws IOException 
+    {
         dataIn = new DataInputStream(new ByteArrayInputStream(data, 0, len));
         switch (x) {
         // init state:
@@ -444,7 +481,6 @@ public class ServerThread implements Runnable
             // get number of parameters:
             int count = readShort();
             p.paramType = new int[count];
-            p.parameters = new String[count];
 
             // set parameters:
             for (int i = 0; i < count; i++) 
@@ -453,12 +489,15 @@ public class ServerThread implements Runnable
                 checkType(type);
                 p.paramType[i] = type;
             }
-            // try to prepare statement:
+            // a new statement with the same name (usually the unnamed one)
+            // replaces the old one, and its portals:
+            removePrepared(p.name);
+
+            // prepare the statement once and keep it until it is closed or
+            // replaced, so that Describe & Execute do not prepare it again:
             try 
             {
-                // right now - execute ALL statements:
-                PreparedStatement pst = conn.prepareStatement(p.sql);
-                pst.close();
+                p.prep = conn.prepareStatement(p.sql);
                 prepared.put(p.name, p);
                 sendParseComplete();
             } 
@@ -485,7 +524,7 @@ public class ServerThread implements Runnable
 
             portal.sql = prep.sql;
             portal.prepared = prep;
-            portals.put(portal.name, portal);
+            closePortal(portals.put(portal.name, portal));
 
             int formatCodeCount = readShort();
             int[] formatCodes = new int[formatCodeCount];
@@ -497,21 +536,22 @@ public class ServerThread implements Runnable
             }
 
             int paramCount = readShort();
-            // if parameters not set earlier:
-            if (portal.prepared.parameters == null || portal.prepared.parameters.length == 0)
-            {
-                portal.prepared.parameters = new String[paramCount];
-            }
+            portal.parameters = new Object[paramCount];
 
             // set parameters:
             for (int i = 0; i < paramCount; i++) 
             {
                 int paramLen = readInt();
+                // length -1 is a NULL value:
+                if (paramLen < 0)
+                {
+                    continue;
+                }
                 byte[] d2 = ByteUtils.newBytes(paramLen);
                 readFully(d2);
                 try 
                 {
-                    setParameter(portal.prepared, i, d2, formatCodes);
+                    setParameter(portal, i, d2, formatCodes);
                 } 
                 catch (SQLException e) 
                 {
@@ -565,10 +605,8 @@ public class ServerThread implements Runnable
                         // else:
                         else     
                         {
-                            PreparedStatement prep = conn.prepareStatement(p.sql);
-                            ResultSetMetaData meta = prep.getMetaData();
+                            ResultSetMetaData meta = p.prepared.prep.getMetaData();
                             sendRowDescription(meta);
-                            prep.close();
                         }
                     } 
                     catch (SQLException e) 
@@ -595,53 +633,99 @@ public class ServerThread implements Runnable
                 sendErrorResponse("Portal not found: " + name);
                 break;
             }
-            int maxRows = readShort();
+            // 0 means no limit:
+            int maxRows = readInt();
 
             try 
             {
-
-                PreparedStatement prep = conn.prepareStatement(p.sql);
-                // set parameters:
-                for (int i = 0; i < p.prepared.parameters.length; i++)
-                {
-                     prep.setString(i + 1, p.prepared.parameters[i]);
-                }                                
-          
-                logger.trace(p.sql);
-                prep.setMaxRows(maxRows);                
-                boolean result = prep.execute();
-                if (result) 
+                // a portal suspended by an earlier Execute continues where
+                // it stopped:
+                if (p.rs == null)
                 {
-                    try 
+                    PreparedStatement prep = p.prepared.prep;
+
+                    // only one portal of a statement can have rows pending:
+                    if (p.prepared.activePortal != null)
                     {
-                        ResultSet rs = prep.getResultSet();
-                        ResultSetMetaData meta = rs.getMetaData();
-                        sendRowDescription(meta);
-                        while (rs.next()) 
+                        closeResultSet(p.prepared.activePortal);
+                    }
+
+                    // set parameters:
+                    prep.clearParameters();
+                    for (int i = 0; i < p.parameters.length; i++)
+                    {
+                        if (p.parameters[i] == null)
                         {
-                            sendDataRow(rs);
+                            prep.setNull(i + 1, Types.VARCHAR);
                         }
-                        rs.close();
-                        sendCommandComplete(p.sql, 0);
-                    } 
-                    catch (SQLException e) 
+                        else
+                        {
+                            prep.setObject(i + 1, p.parameters[i]);
+                        }
+                    }                                
+          
+                    logger.trace(p.sql);
+                    boolean result = prep.execute();
+                    if (!result) 
                     {
-                        sendErrorResponse(e);
+                        sendCommandComplete(p.sql, prep.getUpdateCount());
+                        break;
                     }
-                } 
-                else 
-                {
-                    sendCommandComplete(p.sql, prep.getUpdateCount());
+
+                    p.rs = prep.getResultSet();
+                    p.prepared.activePortal = p;
+                    sendRowDescription(p.rs.getMetaData());
                 }
 
-                prep.close();
+                // stream at most maxRows rows, then suspend the portal:
+                int rows = 0;
+                while (maxRows <= 0 || rows < maxRows)
+                {
+                    if (!p.rs.next())
+                    {
+                        closeResultSet(p);
+                        sendCommandComplete(p.sql, 0);
+                        break;
+                    }
+                    sendDataRow(p.rs);
+                    rows++;
+                }
+                if (p.rs != null)
+                {
+                    sendPortalSuspended();
+                }
             } 
             catch (SQLException e) 
             {
+                closeResultSet(p);
                 sendErrorResponse(e);
             }
             break;
         }
+        // close prepared statement or portal:
+        case 'C':
+        {
+            char type = (char) readByte();
+            String name = readString();
+            logger.trace("Close");
+            if (type == 'S')
+            {
+                removePrepared(name);
+            }
+            else if (type == 'P')
+            {
+                closePortal(portals.remove(name));
+            }
+            else
+            {
+                logger.trace("expected S or P, got " + type);
+                sendErrorResponse("expected S or P");
+                break;
+            }
+            // closing a nonexistent statement or portal is not an error:
+            sendCloseComplete();
+            break;
+        }
         // sync query:
         case 'S': 
         {
@@ -1357,32 +1441,105 @@ public class ServerThread implements Runnable
     }
 
     // set parameter:
-    private void setParameter(Prepared prep, int i, byte[] d2, int[] formatCodes) throws SQLException 
+    private void setParameter(Portal portal, int i, byte[] d2, int[] formatCodes) throws SQLException 
     {
-        boolean text = (i >= formatCodes.length) || (formatCodes[i] == 0);
-        String s;
+        // a single format code applies to all parameters:
+        int formatCode;
+        if (formatCodes.length == 0)
+        {
+            formatCode = 0;
+        }
+        else if (formatCodes.length == 1)
+        {
+            formatCode = formatCodes[0];
+        }
+        else
+        {
+            formatCode = formatCodes[i];
+        }
+
+        int type = 0;
+        int[] paramType = portal.prepared.paramType;
+        if (paramType != null && i < paramType.length)
+        {
+            type = paramType[i];
+        }
+
+        Object value;
         try 
         {               
-            if (text) 
+            if (formatCode == 0) 
             {
-                s = new String(d2, getEncoding());
+                value = new String(d2, getEncoding());
             } 
             else 
             {
-                logger.trace("Binary format not supported");
-                s = new String(d2, getEncoding());
+                value = readBinaryParameter(type, d2);
             }
         } 
         catch (Exception e) 
         {
             logger.error("Exception during setting parameter: " + e.toString());
-            s = null;
+            value = null;
         }
 
         // set value:
-        prep.parameters[i] = s;
+        portal.parameters[i] = value;
     }
 
+    // read parameter sent in binary format, by PostgreSQL type OID:
+    private Object readBinaryParameter(int type, byte[] d2) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(d2));
+        switch (type)
+        {
+            // bool:
+            case 16:
+               return Boolean.valueOf(in.readByte() != 0);
+            // bytea:
+            case 17:
+               return d2;
+            // int8:
+            case 20:
+               return Long.valueOf(in.readLong());
+            // int2:
+            case 21:
+               return Short.valueOf(in.readShort());
+            // int4, oid:
+            case 23:
+            case 26:
+               return Integer.valueOf(in.readInt());
+            // float4:
+            case 700:
+               return Float.valueOf(in.readFloat());
+            // float8:
+            case 701:
+               return Double.valueOf(in.readDouble());
+            // date (days since 2000-01-01):
+            case 1082:
+               // local midnight of the date, in the offset of that date:
+               long dateMillis = PG_EPOCH + in.readInt() * MILLIS_PER_DAY;
+               return new java.sql.Date(
+                   dateMillis - getTimeZoneOffset(dateMillis));
+            // timestamp (seconds since 2000-01-01, since integer_datetimes is off):
+            case 1114:
+               long millis = PG_EPOCH + Math.round(in.readDouble() * 1000);
+               return new Timestamp(millis - getTimeZoneOffset(millis));
+            // text, bpchar, varchar & unknown types:
+            default:
+               if (type != 0 && type != 25 && type != 1042 && type != 1043)
+               {
+                   logger.trace("Binary format not supported for type " + type);
+               }
+               return new String(d2, getEncoding());
+        }
+    }
+
+    // get offset of the local time zone from UTC:
+    private static long getTimeZoneOffset(long millis)
+    {
+        return java.util.TimeZone.getDefault().getOffset(millis);
+    }
 
     // send error response:
     private void sendErrorResponse(SQLException e) throws IOException 
@@ -1422,16 +1579,7 @@ public class ServerThread implements Runnable
     {
         try 
         {
-            // prepare statement:
-            PreparedStatement prep = conn.prepareStatement(p.sql);
-
-            // set parameters:
-            for (int i = 0; i < p.parameters.length; i++)
-            {
-                 prep.setString(i + 1, p.parameters[i]);
-            }                                
-
-            ParameterMetaData meta = prep.getParameterMetaData();
+            ParameterMetaData meta = p.prep.getParameterMetaData();
             int count = meta.getParameterCount();
             startMessage('t');
             writeShort(count);
@@ -1450,8 +1598,6 @@ public class ServerThread implements Runnable
                 writeInt(type);
             }
             sendMessage();
-
-            prep.close();
         } 
         catch (SQLException e) 
         {
@@ -1644,12 +1790,91 @@ public class ServerThread implements Runnable
         sendMessage();
     }
 
+    // send close complete:
+    private void sendCloseComplete() throws IOException 
+    {
+        startMessage('3');
+        sendMessage();
+    }
+
+    // send portal suspended (more rows can be fetched with Execute):
+    private void sendPortalSuspended() throws IOException 
+    {
+        startMessage('s');
+        sendMessage();
+    }
+
+    // close prepared statement:
+    private void closePrepared(Prepared p)
+    {
+        if (p != null)
+        {
+            JdbcUtils.closeSilently(p.prep);
+            p.prep = null;
+            p.activePortal = null;
+        }
+    }
+
+    // remove and close a prepared statement (if any) and its portals:
+    private void removePrepared(String name)
+    {
+        Prepared p = prepared.remove(name);
+        if (p == null)
+        {
+            return;
+        }
+        Iterator<Portal> it = portals.values().iterator();
+        while (it.hasNext())
+        {
+            Portal portal = it.next();
+            if (portal.prepared == p)
+            {
+                closeResultSet(portal);
+                it.remove();
+            }
+        }
+        closePrepared(p);
+    }
+
+    // close portal result set (if any):
+    private void closeResultSet(Portal p)
+    {
+        if (p.rs != null)
+        {
+            JdbcUtils.closeSilently(p.rs);
+            p.rs = null;
+        }
+        if (p.prepared.activePortal == p)
+        {
+            p.prepared.activePortal = null;
+        }
+    }
+
+    // close portal:
+    private void closePortal(Portal p)
+    {
+        if (p != null)
+        {
+            closeResultSet(p);
+        }
+    }
+
     // close:
     void close() 
     {
         try 
         {
             stop = true;
+            for (Portal p : portals.values())
+            {
+                closePortal(p);
+            }
+            portals.clear();
+            for (Prepared p : prepared.values())
+            {
+                closePrepared(p);
+            }
+            prepared.clear();
             JdbcUtils.closeSilently(conn);
             if (socket != null) 
             {
@@ -1905,9 +2130,14 @@ public class ServerThread implements Runnable
         int[] paramType;
 
         /**
-         * Parameters
+         * The JDBC statement, kept open until the object is closed.
          */
-        String[] parameters;
+        PreparedStatement prep;
+
+        /**
+         * The portal whose rows are pending in the statement's result set.
+         */
+        Portal activePortal;
     }
 
     /**
@@ -1935,5 +2165,15 @@ public class ServerThread implements Runnable
          * Prepared
          */
         Prepared prepared;
+
+        /**
+         * The bound parameter values (null for SQL NULL).
+         */
+        Object[] parameters;
+
+        /**
+         * The rows still to be fetched, if the portal is suspended.
+         */
+        ResultSet rs;
     }
 }
@@ -56,6 +56,23 @@ public class Configuration
 
     // JDBC fetchsize hint:
     private int fetchSize;
+
+    // number of threads multiplexing client connections;
+    // zero means one blocking thread per connection:
+    private int ioThreads;
+
+    // number of threads executing client requests (if ioThreads > 0):
+    private int queryThreads;
+
+    // maximum number of client connections, zero means no limit:
+    private int maxConnections;
+
+    // stop reading from a client once that many bytes of its requests and
+    // responses are buffered (if ioThreads > 0):
+    private int connectionMaxBufferedBytes;
+
+    // log server metrics with this period (in miliseconds), zero means never:
+    private int metricsLogInterval;
    
     // list of hosts allowed to connect to us - null means any host, not null means only these ones
     private List<String> authorizedHosts = null;
@@ -103,6 +120,12 @@ public class Configuration
         connectionCloseIdleTimeout = Integer.parseInt(prop.getProperty("connectionCloseIdleTimeout", "0").trim());
         // get fetch size:
         fetchSize = Integer.parseInt(prop.getProperty("statementFetchSize", "0").trim());
+        // get connection handling settings:
+        ioThreads = Integer.parseInt(prop.getProperty("ioThreads", "0").trim());
+        queryThreads = Integer.parseInt(prop.getProperty("queryThreads", "16").trim());
+        maxConnections = Integer.parseInt(prop.getProperty("maxConnections", "0").trim());
+        connectionMaxBufferedBytes = Integer.parseInt(prop.getProperty("connectionMaxBufferedBytes", "1048576").trim());
+        metricsLogInterval = Integer.parseInt(prop.getProperty("metricsLogInterval", "0").trim());
         // database admin's username:
         databaseAdminUsername = prop.getProperty("databaseAdminUsername", "sa");
         // database admin's password:
@@ -239,6 +262,36 @@ public class Configuration
         return fetchSize;
     }
 
+    // get number of connection multiplexing threads:
+    public int getIoThreads() 
+    {
+        return ioThreads;
+    }
+
+    // get number of request execution threads:
+    public int getQueryThreads() 
+    {
+        return queryThreads;
+    }
+
+    // get maximum number of connections:
+    public int getMaxConnections() 
+    {
+        return maxConnections;
+    }
+
+    // get maximum number of buffered bytes per connection:
+    public int getConnectionMaxBufferedBytes() 
+    {
+        return connectionMaxBufferedBytes;
+    }
+
+    // get metrics logging interval:
+    public int getMetricsLogInterval() 
+    {
+        return metricsLogInterval;
+    }
+
     // get list of authorized hosts:
     public List<String> getAuthorizedHosts() 
     {
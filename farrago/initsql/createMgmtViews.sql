@@ -121,6 +121,19 @@ create or replace procedure flush_code_cache()
   external name
   'class net.sf.farrago.syslib.FarragoManagementUDR.flushCodeCache';
 
+-- hit/miss counts for code cache entries shared via literal normalization
+create or replace function code_cache_normalized_statements()
+returns table(
+    normalized_key varchar(65535), hit_count bigint, miss_count bigint)
+language java
+parameter style system defined java
+no sql
+external name
+'class net.sf.farrago.syslib.FarragoManagementUDR.codeCacheNormalizedStatements';
+
+create or replace view code_cache_normalized_statements_view as
+  select * from table(code_cache_normalized_statements());
+
 -- lets an administrator kill a running session
 create or replace procedure kill_session(in id bigint)
   language java
@@ -334,6 +347,41 @@ language java
 no sql
 external name 'class net.sf.farrago.syslib.FarragoStatsUDR.get_selectivity';
 
+-- lists the most common values of a column recorded by ANALYZE, with the
+-- estimated number of rows having each; nulls are listed as a null value
+create or replace function stat_get_most_common_values(
+    catalog_name varchar(2000),
+    schema_name varchar(2000),
+    table_name varchar(2000),
+    column_name varchar(2000))
+returns table(
+    column_value varchar(65535),
+    row_count bigint)
+language java
+parameter style system defined java
+no sql
+external name
+'class net.sf.farrago.syslib.FarragoStatsUDR.get_most_common_values';
+
+-- lists the column groups of a table analyzed by ANALYZE, with the estimated
+-- number of distinct combinations of their values and, for each pair of
+-- columns in a group, the degree to which one determines the other
+create or replace function stat_get_column_groups(
+    catalog_name varchar(2000),
+    schema_name varchar(2000),
+    table_name varchar(2000))
+returns table(
+    column_group varchar(65535),
+    distinct_count bigint,
+    determinant_column varchar(128),
+    dependent_column varchar(128),
+    dependency_degree double)
+language java
+parameter style system defined java
+no sql
+external name
+'class net.sf.farrago.syslib.FarragoStatsUDR.get_column_groups';
+
 -- Statistics views
 create or replace view page_counts_view as
     select
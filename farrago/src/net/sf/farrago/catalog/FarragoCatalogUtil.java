@@ -1533,6 +1533,62 @@ public abstract class FarragoCatalogUtil
         long rowsPerBar,
         long rowsLastBar,
         List<FemColumnHistogramBar> bars)
+    {
+        updateHistogram(
+            repos,
+            column,
+            distinctValues,
+            distinctValuesEstimated,
+            samplePercent,
+            sampleSize,
+            barCount,
+            rowsPerBar,
+            rowsLastBar,
+            bars,
+            null,
+            null,
+            null,
+            null);
+    }
+
+    /**
+     * Updates the histogram of a column, creating a new histogram record if
+     * the latest one is visible to a label.
+     *
+     * @param repos repository
+     * @param column the column
+     * @param distinctValues number of distinct values in the column
+     * @param distinctValuesEstimated whether distinctValues is an estimate
+     * @param samplePercent percentage of rows sampled
+     * @param sampleSize number of rows sampled
+     * @param barCount number of bars
+     * @param rowsPerBar number of sampled rows in each bar but the last
+     * @param rowsLastBar number of sampled rows in the last bar
+     * @param bars bars, which may include bars of the latest histogram
+     * @param nullCount number of sampled rows with null values, or null if
+     * not known
+     * @param mostCommonValues encoded {@link FarragoMostCommonValues}, or null
+     * @param distinctValueSketch encoded {@link FarragoDistinctValueSketch},
+     * or null
+     * @param analyzedRowCount number of rows, including deleted rows, stored
+     * in the table when it was analyzed, if the histogram can be maintained
+     * incrementally as rows are appended; otherwise null
+     */
+    public static void updateHistogram(
+        FarragoRepos repos,
+        FemAbstractColumn column,
+        Long distinctValues,
+        boolean distinctValuesEstimated,
+        float samplePercent,
+        long sampleSize,
+        int barCount,
+        long rowsPerBar,
+        long rowsLastBar,
+        List<FemColumnHistogramBar> bars,
+        Long nullCount,
+        String mostCommonValues,
+        String distinctValueSketch,
+        Long analyzedRowCount)
     {
         FemColumnHistogram histogram =
             getHistogramForUpdate(repos, column, true);
@@ -1543,6 +1599,10 @@ public abstract class FarragoCatalogUtil
         histogram.setPercentageSampled(samplePercent);
         histogram.setSampleSize(sampleSize);
         histogram.setBarCount(barCount);
+        histogram.setNullCount(nullCount);
+        histogram.setMostCommonValues(mostCommonValues);
+        histogram.setDistinctValueSketch(distinctValueSketch);
+        histogram.setAnalyzedRowCount(analyzedRowCount);
 
         // TODO: make row count an attribute of bars
         histogram.setRowsPerBar(rowsPerBar);
@@ -1625,6 +1685,55 @@ public abstract class FarragoCatalogUtil
         return histogram;
     }
 
+    /**
+     * Prevents the histograms of a table's columns from being maintained
+     * incrementally, so that the next ANALYZE recomputes them. Called when
+     * rows already reflected in the histograms are deleted or updated.
+     *
+     * @param repos repository
+     * @param table the table
+     */
+    public static void resetHistogramRowCounts(
+        FarragoRepos repos,
+        FemAbstractColumnSet table)
+    {
+        for (
+            FemAbstractColumn column
+            : Util.cast(table.getFeature(), FemAbstractColumn.class))
+        {
+            // histograms visible to a label are never maintained
+            // incrementally, so they need not be reset
+            FemColumnHistogram histogram =
+                getHistogramForUpdate(repos, column, false);
+            if ((histogram != null)
+                && (histogram.getAnalyzedRowCount() != null))
+            {
+                histogram.setAnalyzedRowCount(null);
+            }
+        }
+    }
+
+    /**
+     * Records the statistics of the column groups led by a column in the
+     * column's latest histogram, which must already have been updated.
+     *
+     * @param repos repository
+     * @param column the leading column of the groups
+     * @param columnGroupStatistics encoded {@link
+     * FarragoColumnGroupStatistics} list, or null if there are none
+     */
+    public static void updateColumnGroupStatistics(
+        FarragoRepos repos,
+        FemAbstractColumn column,
+        String columnGroupStatistics)
+    {
+        FemColumnHistogram histogram =
+            getHistogramForUpdate(repos, column, false);
+        if (histogram != null) {
+            histogram.setColumnGroupStatistics(columnGroupStatistics);
+        }
+    }
+
     /**
      * Updates system-maintained attributes of an object.
      *
@@ -0,0 +1,210 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.catalog;
+
+import java.util.*;
+
+import org.eigenbase.stat.*;
+
+
+/**
+ * FarragoColumnGroupStatistics records the joint distinct count of a group of
+ * columns analyzed together, and the degree to which each column of the group
+ * determines each other one.
+ *
+ * <p>The statistics of the groups led by a column are stored with that
+ * column's histogram, encoded by {@link #toString(List)}, so that they are
+ * versioned with the histograms for labels.
+ *
+ * @version $Id$
+ */
+public class FarragoColumnGroupStatistics
+    implements RelStatColumnGroupStatistics
+{
+    //~ Instance fields --------------------------------------------------------
+
+    private final int [] ordinals;
+
+    private final long distinctCount;
+
+    /**
+     * Dependency degrees; element [i * n + j] is the degree to which the i'th
+     * column of the group determines the j'th.
+     */
+    private final double [] degrees;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates statistics for a column group.
+     *
+     * @param ordinals ordinals of the columns, leading column first
+     * @param distinctCount number of distinct combinations of values
+     * @param degrees dependency degrees, row-major, such that element [i * n +
+     * j] is the degree to which the i'th column determines the j'th
+     */
+    public FarragoColumnGroupStatistics(
+        int [] ordinals,
+        long distinctCount,
+        double [] degrees)
+    {
+        assert (degrees.length == (ordinals.length * ordinals.length));
+        this.ordinals = ordinals;
+        this.distinctCount = distinctCount;
+        this.degrees = degrees;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Decodes a list of column group statistics previously encoded by {@link
+     * #toString(List)}.
+     *
+     * @param encoded encoded list; may be null
+     *
+     * @return list of column group statistics, empty if the string is null
+     */
+    public static List<FarragoColumnGroupStatistics> parseList(String encoded)
+    {
+        List<FarragoColumnGroupStatistics> list =
+            new ArrayList<FarragoColumnGroupStatistics>();
+        if ((encoded == null) || (encoded.length() == 0)) {
+            return list;
+        }
+        for (String group : encoded.split(";")) {
+            String [] parts = group.split("/");
+            String [] ordinalStrings = parts[0].split(",");
+            String [] degreeStrings = parts[2].split(",");
+            int [] ordinals = new int[ordinalStrings.length];
+            for (int i = 0; i < ordinals.length; i++) {
+                ordinals[i] = Integer.parseInt(ordinalStrings[i]);
+            }
+            double [] degrees = new double[degreeStrings.length];
+            for (int i = 0; i < degrees.length; i++) {
+                degrees[i] = Double.parseDouble(degreeStrings[i]);
+            }
+            list.add(
+                new FarragoColumnGroupStatistics(
+                    ordinals,
+                    Long.parseLong(parts[1]),
+                    degrees));
+        }
+        return list;
+    }
+
+    /**
+     * Encodes a list of column group statistics as a string. Groups are
+     * separated by semicolons; each is encoded as its column ordinals, its
+     * distinct count and its dependency degrees, separated by slashes.
+     *
+     * @param list list of column group statistics
+     *
+     * @return encoded list, or null if the list is empty
+     */
+    public static String toString(List<FarragoColumnGroupStatistics> list)
+    {
+        if (list.isEmpty()) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (FarragoColumnGroupStatistics group : list) {
+            if (sb.length() > 0) {
+                sb.append(';');
+            }
+            sb.append(group.toString());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the ordinal of the leading column of the group.
+     *
+     * @return column ordinal
+     */
+    public int getLeadingOrdinal()
+    {
+        return ordinals[0];
+    }
+
+    // implement RelStatColumnGroupStatistics
+    public BitSet getColumnOrdinals()
+    {
+        BitSet bitSet = new BitSet();
+        for (int ordinal : ordinals) {
+            bitSet.set(ordinal);
+        }
+        return bitSet;
+    }
+
+    // implement RelStatColumnGroupStatistics
+    public Double getDistinctCount()
+    {
+        return (double) distinctCount;
+    }
+
+    // implement RelStatColumnGroupStatistics
+    public double getDependencyDegree(int determinant, int dependent)
+    {
+        int i = indexOf(determinant);
+        int j = indexOf(dependent);
+        if ((i < 0) || (j < 0)) {
+            return 0.0;
+        }
+        return degrees[(i * ordinals.length) + j];
+    }
+
+    private int indexOf(int ordinal)
+    {
+        for (int i = 0; i < ordinals.length; i++) {
+            if (ordinals[i] == ordinal) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Encodes these statistics as described by {@link #toString(List)}.
+     *
+     * @return encoded statistics
+     */
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < ordinals.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(ordinals[i]);
+        }
+        sb.append('/').append(distinctCount).append('/');
+        for (int i = 0; i < degrees.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(degrees[i]);
+        }
+        return sb.toString();
+    }
+}
+
+// End FarragoColumnGroupStatistics.java
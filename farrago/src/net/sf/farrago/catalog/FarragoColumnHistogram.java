@@ -53,6 +53,13 @@ import org.eigenbase.util14.*;
  * (null,1)
  * </ul>
  *
+ * <p>Where the histogram records the number of null values and the most
+ * common values of the column (see {@link FarragoMostCommonValues}), a
+ * sequence of points, such as "col = 5" or "col in (1, 2)" or "col is null",
+ * is instead estimated from those: a common value matches the rows recorded
+ * for it, and any other value an even share of the remaining rows. This is
+ * much closer than the bars for skewed columns.
+ *
  * @author John Pham
  * @version $Id$
  */
@@ -147,6 +154,10 @@ public class FarragoColumnHistogram
             return;
         }
 
+        if (evaluatePoints()) {
+            return;
+        }
+
         barCount = histogram.getBarCount();
         bars = histogram.getBar();
         assert (bars.size() == barCount) : "invalid histogram bar count";
@@ -162,6 +173,80 @@ public class FarragoColumnHistogram
         readCoverages(coverages);
     }
 
+    /**
+     * Estimates the selectivity and cardinality of a sequence of points from
+     * the null count and most common values of the column.
+     *
+     * @return true if the estimate was made; false if the sequence contains
+     * ranges or the histogram does not record the most common values, in
+     * which case the bars must be read
+     */
+    private boolean evaluatePoints()
+    {
+        Long nullCount = histogram.getNullCount();
+        FarragoMostCommonValues mostCommonValues =
+            FarragoMostCommonValues.parse(histogram.getMostCommonValues());
+        long sampleSize = histogram.getSampleSize();
+        if ((nullCount == null)
+            || (mostCommonValues == null)
+            || (sampleSize <= 0))
+        {
+            return false;
+        }
+        for (SargInterval interval : sequence.getList()) {
+            if (!interval.isPoint()
+                || !checkEndpoint(interval.getLowerBound()))
+            {
+                return false;
+            }
+        }
+
+        // Rows with values other than null and the most common values are
+        // assumed to be spread evenly over the other distinct values.  The
+        // distinct value count includes null, if there are any.
+        long otherRows =
+            sampleSize - nullCount - mostCommonValues.getTotalRowCount();
+        long otherValues =
+            histogram.getDistinctValueCount() - mostCommonValues.size()
+            - ((nullCount > 0) ? 1 : 0);
+        double otherRowsPerValue = 0.0;
+        if ((otherRows > 0) && (otherValues > 0)) {
+            otherRowsPerValue = (double) otherRows / (double) otherValues;
+        }
+
+        List<String> commonValues = mostCommonValues.getValues();
+        double rows = 0.0;
+        double values = 0.0;
+        for (SargInterval interval : sequence.getList()) {
+            SargEndpoint point = interval.getLowerBound();
+            if (point.isNull()) {
+                if (nullCount > 0) {
+                    rows += nullCount;
+                    values += 1.0;
+                }
+                continue;
+            }
+            RexLiteral literal = (RexLiteral) point.getCoordinate();
+            Long commonRows = null;
+            for (String value : commonValues) {
+                if (compare(value, literal) == 0) {
+                    commonRows = mostCommonValues.getRowCount(value);
+                    break;
+                }
+            }
+            if (commonRows != null) {
+                rows += commonRows;
+                values += 1.0;
+            } else if (otherRowsPerValue > 0.0) {
+                rows += otherRowsPerValue;
+                values += 1.0;
+            }
+        }
+        selectivity = Math.min(1.0, rows / sampleSize);
+        cardinality = values;
+        return true;
+    }
+
     /**
      * Computes the histogram bar coverage of an ordered sequence of intervals.
      * Coverage can only be computed if the end points of each interval in the
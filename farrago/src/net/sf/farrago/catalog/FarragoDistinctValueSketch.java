@@ -0,0 +1,229 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.catalog;
+
+import org.eigenbase.util14.*;
+
+
+/**
+ * FarragoDistinctValueSketch is a HyperLogLog sketch of the distinct values
+ * of a column. It is stored with a column's histogram so that the distinct
+ * value count can be maintained as rows are appended to a table: the sketch
+ * of the new rows is merged into the stored sketch, and the growth of the
+ * merged estimate is the number of new distinct values.
+ *
+ * <p>Values are represented by the same strings as histogram bar starting
+ * values. Null values are not counted.
+ *
+ * @version $Id$
+ */
+public class FarragoDistinctValueSketch
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * Default number of bits of the hash used to select a register; the
+     * sketch has 2^precision registers, and a standard error of about
+     * 1.04/sqrt(2^precision), or 3% for the default.
+     */
+    public static final int DEFAULT_PRECISION = 10;
+
+    private static final int MIN_PRECISION = 4;
+
+    private static final int MAX_PRECISION = 16;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final int precision;
+
+    private final byte [] registers;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates an empty sketch with the default precision.
+     */
+    public FarragoDistinctValueSketch()
+    {
+        this(DEFAULT_PRECISION);
+    }
+
+    /**
+     * Creates an empty sketch.
+     *
+     * @param precision number of hash bits used to select a register
+     */
+    public FarragoDistinctValueSketch(int precision)
+    {
+        assert (precision >= MIN_PRECISION) && (precision <= MAX_PRECISION);
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Decodes a sketch previously encoded by {@link #toString()}.
+     *
+     * @param encoded encoded sketch
+     *
+     * @return sketch, or null if the string is null or not a sketch
+     */
+    public static FarragoDistinctValueSketch parse(String encoded)
+    {
+        if ((encoded == null)
+            || (encoded.length() == 0)
+            || ((encoded.length() % 2) != 0))
+        {
+            return null;
+        }
+        byte [] bytes = ConversionUtil.toByteArrayFromString(encoded, 16);
+        int precision = bytes[0];
+        if ((precision < MIN_PRECISION)
+            || (precision > MAX_PRECISION)
+            || (bytes.length != ((1 << precision) + 1)))
+        {
+            return null;
+        }
+        FarragoDistinctValueSketch sketch =
+            new FarragoDistinctValueSketch(precision);
+        System.arraycopy(bytes, 1, sketch.registers, 0, 1 << precision);
+        return sketch;
+    }
+
+    /**
+     * Adds a value to the sketch.
+     *
+     * @param value value, as represented in a histogram; null is ignored
+     */
+    public void add(String value)
+    {
+        if (value == null) {
+            return;
+        }
+        long hash = hash(value);
+        int index = (int) (hash >>> (64 - precision));
+
+        // the guard bit bounds the rank when the remaining bits are all zero
+        long rest = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    /**
+     * Merges another sketch into this one. Afterwards, this sketch estimates
+     * the number of distinct values added to either.
+     *
+     * @param other sketch with the same precision
+     */
+    public void merge(FarragoDistinctValueSketch other)
+    {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException(
+                "cannot merge sketches of precision " + precision + " and "
+                + other.precision);
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * Estimates the number of distinct values added to this sketch.
+     *
+     * @return estimated distinct value count
+     */
+    public long estimate()
+    {
+        int m = registers.length;
+        double sum = 0;
+        int zeroCount = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (double) (1L << register);
+            if (register == 0) {
+                zeroCount++;
+            }
+        }
+        double alpha;
+        switch (m) {
+        case 16:
+            alpha = 0.673;
+            break;
+        case 32:
+            alpha = 0.697;
+            break;
+        case 64:
+            alpha = 0.709;
+            break;
+        default:
+            alpha = 0.7213 / (1.0 + (1.079 / m));
+            break;
+        }
+        double estimate = (alpha * m * m) / sum;
+
+        // for small cardinalities, linear counting over the empty registers
+        // is more accurate
+        if ((estimate <= (2.5 * m)) && (zeroCount > 0)) {
+            estimate = m * Math.log((double) m / (double) zeroCount);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Encodes this sketch as a hex string: the precision, followed by the
+     * registers.
+     *
+     * @return encoded sketch
+     */
+    public String toString()
+    {
+        byte [] bytes = new byte[registers.length + 1];
+        bytes[0] = (byte) precision;
+        System.arraycopy(registers, 0, bytes, 1, registers.length);
+        return ConversionUtil.toStringFromByteArray(bytes, 16);
+    }
+
+    /**
+     * Computes a 64-bit hash of a value: FNV-1a over its characters, with a
+     * final avalanche step so that the high bits are well distributed.
+     */
+    private static long hash(String value)
+    {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= (h >>> 33);
+        h *= 0xff51afd7ed558ccdL;
+        h ^= (h >>> 33);
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= (h >>> 33);
+        return h;
+    }
+}
+
+// End FarragoDistinctValueSketch.java
@@ -0,0 +1,234 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.catalog;
+
+import java.util.*;
+
+
+/**
+ * FarragoMostCommonValues is the list of the most common non-null values of a
+ * column, and the number of sampled rows having each, which is stored with
+ * the column's histogram. Equi-depth histogram bars spread a heavily skewed
+ * value over several bars and cannot say how many rows it accounts for; the
+ * list records that exactly.
+ *
+ * <p>Values are represented by the same strings as histogram bar starting
+ * values. The list is built by offering each value with its row count; once
+ * the list is full, a value displaces the least common entry if it is more
+ * common. Offering a value which is already in the list adds to its count,
+ * which is how counts from newly appended rows are merged.
+ *
+ * @version $Id$
+ */
+public class FarragoMostCommonValues
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * Default number of values kept.
+     */
+    public static final int DEFAULT_CAPACITY = 25;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final int capacity;
+
+    private final Map<String, Long> rowCounts;
+
+    /**
+     * Least common entry, or null if it must be recomputed.
+     */
+    private String leastValue;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates an empty list with the default capacity.
+     */
+    public FarragoMostCommonValues()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty list.
+     *
+     * @param capacity maximum number of values kept
+     */
+    public FarragoMostCommonValues(int capacity)
+    {
+        assert (capacity > 0);
+        this.capacity = capacity;
+        this.rowCounts = new HashMap<String, Long>();
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Decodes a list previously encoded by {@link #toString()}.
+     *
+     * @param encoded encoded list
+     *
+     * @return list, or null if the string is null
+     */
+    public static FarragoMostCommonValues parse(String encoded)
+    {
+        if (encoded == null) {
+            return null;
+        }
+        FarragoMostCommonValues mcv = new FarragoMostCommonValues();
+        int pos = 0;
+        while (pos < encoded.length()) {
+            int countEnd = encoded.indexOf(':', pos);
+            int lengthEnd = encoded.indexOf(':', countEnd + 1);
+            long rowCount = Long.parseLong(encoded.substring(pos, countEnd));
+            int length =
+                Integer.parseInt(encoded.substring(countEnd + 1, lengthEnd));
+            pos = lengthEnd + 1 + length;
+            mcv.rowCounts.put(
+                encoded.substring(lengthEnd + 1, pos),
+                rowCount);
+        }
+        return mcv;
+    }
+
+    /**
+     * Offers a value.
+     *
+     * @param value non-null value
+     * @param rowCount number of rows having the value
+     */
+    public void add(String value, long rowCount)
+    {
+        assert (value != null);
+        if (rowCount <= 0) {
+            return;
+        }
+        Long count = rowCounts.get(value);
+        if (count != null) {
+            rowCounts.put(value, count + rowCount);
+            if (value.equals(leastValue)) {
+                leastValue = null;
+            }
+            return;
+        }
+        if (rowCounts.size() < capacity) {
+            rowCounts.put(value, rowCount);
+            leastValue = null;
+            return;
+        }
+        if (leastValue == null) {
+            findLeastValue();
+        }
+        if (rowCount > rowCounts.get(leastValue)) {
+            rowCounts.remove(leastValue);
+            rowCounts.put(value, rowCount);
+            leastValue = null;
+        }
+    }
+
+    private void findLeastValue()
+    {
+        long least = Long.MAX_VALUE;
+        for (Map.Entry<String, Long> entry : rowCounts.entrySet()) {
+            if (entry.getValue() < least) {
+                least = entry.getValue();
+                leastValue = entry.getKey();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of rows having a value.
+     *
+     * @param value value
+     *
+     * @return row count, or null if the value is not in the list
+     */
+    public Long getRowCount(String value)
+    {
+        return rowCounts.get(value);
+    }
+
+    /**
+     * Returns the number of rows having any value in the list.
+     *
+     * @return total row count
+     */
+    public long getTotalRowCount()
+    {
+        long total = 0;
+        for (Long count : rowCounts.values()) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Returns the values in the list, most common first.
+     *
+     * @return list of values
+     */
+    public List<String> getValues()
+    {
+        List<String> values = new ArrayList<String>(rowCounts.keySet());
+        Collections.sort(
+            values,
+            new Comparator<String>() {
+                public int compare(String v1, String v2)
+                {
+                    int c = rowCounts.get(v2).compareTo(rowCounts.get(v1));
+                    return (c != 0) ? c : v1.compareTo(v2);
+                }
+            });
+        return values;
+    }
+
+    /**
+     * Returns the number of values in the list.
+     *
+     * @return value count
+     */
+    public int size()
+    {
+        return rowCounts.size();
+    }
+
+    /**
+     * Encodes this list as a string: for each value, most common first, its
+     * row count, the length of the value and the value, separated by colons.
+     *
+     * @return encoded list
+     */
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        for (String value : getValues()) {
+            sb.append(rowCounts.get(value)).append(':')
+            .append(value.length()).append(':')
+            .append(value);
+        }
+        return sb.toString();
+    }
+}
+
+// End FarragoMostCommonValues.java
@@ -23,6 +23,8 @@ package net.sf.farrago.catalog;
 
 import java.sql.*;
 
+import java.util.concurrent.atomic.*;
+
 import javax.jmi.reflect.*;
 
 import net.sf.farrago.fem.sql2003.*;
@@ -39,12 +41,33 @@ import org.eigenbase.util.*;
  * (because that would be very slow.) Instead, an accessor reserves a large
  * cache of values which it quickly allocates.
  *
- * <p>The accessor synchronizes access so multiple clients can use the sequence
- * at the same time. However this requires clients to obtain an accessor from
- * the singleton method FarragoRepos.getSequenceAccessor()
+ * <p>Multiple clients can use the sequence at the same time. However this
+ * requires clients to obtain an accessor from the singleton method
+ * FarragoRepos.getSequenceAccessor()
+ *
+ * <p>{@link #getNext()} does not lock. Values are claimed from the current
+ * reservation with an atomic compare-and-set. Each thread claims a range of
+ * values at a time and allocates from it privately; a thread starts by
+ * claiming one value at a time, doubles its range whenever it loses a race
+ * with another thread, and halves it again when it wins without contention.
+ * So a single inserting stream sees exactly the values the catalog hands
+ * out, while parallel streams soon stop touching shared state on most rows.
+ * Only when a reservation is exhausted does a thread lock the accessor and
+ * go to the catalog; threads which exhaust it at the same time wait for that
+ * one catalog update rather than each making their own.
+ *
+ * <p>The size of a reservation adapts to the rate at which values are used.
+ * It starts at {@link #MIN_RESERVATION_SIZE} values; if a reservation is used
+ * up in less than {@link #RESERVATION_MILLIS} the next is twice as large, up
+ * to {@link #MAX_RESERVATION_SIZE}, and if it lasts much longer the next is
+ * half as large again. A busy sequence therefore updates the catalog about
+ * once per {@link #RESERVATION_MILLIS} however fast it is used.
  *
  * <p>To clean up properly after a statement is completed or the database is
  * shutdown, {@link #unreserve()} should be called to release unused values.
+ * Values which a thread has claimed but not yet used are not released; like
+ * the values of a reservation lost in a crash, they leave a gap in the
+ * sequence.
  *
  * <p>Due to the use of singleton sequence accessors, sequence accessors may
  * exist for a long time.
@@ -58,7 +81,10 @@ public class FarragoSequenceAccessor
     //~ Static fields/initializers ---------------------------------------------
 
     public static String NEXT_VALUE_METHOD_NAME = "getNext";
-    private static long MAX_RESERVATION_SIZE = 1000;
+    private static final long MIN_RESERVATION_SIZE = 1000;
+    private static final long MAX_RESERVATION_SIZE = 64000;
+    private static final long RESERVATION_MILLIS = 1000;
+    private static final int MAX_CLAIM_SIZE = 256;
 
     //~ Instance fields --------------------------------------------------------
 
@@ -69,8 +95,22 @@ public class FarragoSequenceAccessor
     private boolean cycle, ascending;
 
     private boolean reserved;
-    private Long nextReservedValue;
-    private long lastReservedValue;
+    private long reservationSize;
+    private long reservationTime;
+
+    /**
+     * Values reserved from the catalog, or null if none are reserved. Written
+     * only while holding the accessor's monitor.
+     */
+    private volatile Reservation reservation;
+
+    private final ThreadLocal<Claim> claims =
+        new ThreadLocal<Claim>() {
+            protected Claim initialValue()
+            {
+                return new Claim();
+            }
+        };
 
     //~ Constructors -----------------------------------------------------------
 
@@ -107,7 +147,8 @@ public class FarragoSequenceAccessor
         cycle = sequence.isCycle();
         ascending = (increment > 0);
         reserved = false;
-        nextReservedValue = null;
+        reservation = null;
+        reservationSize = MIN_RESERVATION_SIZE;
     }
 
     /**
@@ -132,22 +173,19 @@ public class FarragoSequenceAccessor
      *
      * @throws EigenbaseException if the sequence has no more values
      */
-    synchronized public long getNext()
+    public long getNext()
     {
-        if (nextReservedValue == null) {
-            reserve();
-            if (nextReservedValue == null) {
-                throw FarragoResource.instance().SequenceLimitExceeded.ex(
-                    getName());
-            }
+        Claim claim = claims.get();
+        if (claim.hasNext()) {
+            return claim.next();
         }
-        long ret = nextReservedValue;
-        if (ret != lastReservedValue) {
-            nextReservedValue += increment;
-        } else {
-            nextReservedValue = null;
+        for (;;) {
+            Reservation r = reservation;
+            if ((r != null) && claim.claim(r)) {
+                return claim.next();
+            }
+            reserve(r);
         }
-        return ret;
     }
 
     /**
@@ -175,66 +213,82 @@ public class FarragoSequenceAccessor
     }
 
     /**
-     * Reserves up to {@link #MAX_RESERVATION_SIZE} values in the sequence.
-     * Updates the baseValue of a sequence in the catalog sequence to the first
-     * valid unreserved value.
+     * Reserves more values in the sequence, unless another thread has already
+     * replaced the exhausted reservation. Updates the baseValue of a sequence
+     * in the catalog sequence to the first valid unreserved value.
      *
-     * <p>If the reservation was successful, then {@link #nextReservedValue}
-     * will be set to a non-null value.
+     * @param exhausted reservation which the caller found to have no values
+     * left, or null if there was none
+     *
+     * @throws EigenbaseException if the sequence has no more values
      */
-    synchronized private void reserve()
+    synchronized private void reserve(Reservation exhausted)
     {
-        // Do nothing if values remain in current reservation
-        if (nextReservedValue != null) {
+        // Do nothing if another thread has reserved since the caller looked
+        if (reservation != exhausted) {
             return;
         }
 
+        Reservation r;
         FarragoReposTxnContext txn = repos.newTxnContext();
         try {
             txn.beginWriteTxn();
-            reserveInternal();
+            r = reserveInternal(exhausted != null);
             txn.commit();
         } finally {
-            // REVIEW jvs 12-Jan-2007:  need to revert transient state
-            // in this class too?
             txn.rollback();
         }
+        if (r == null) {
+            throw FarragoResource.instance().SequenceLimitExceeded.ex(
+                getName());
+        }
+        reservation = r;
+        reserved = true;
     }
 
-    synchronized private void reserveInternal()
+    synchronized private Reservation reserveInternal(boolean refill)
     {
-        assert (nextReservedValue == null);
         FemSequenceGenerator sequence = getSequence();
         assert (sequence != null) : "sequence was null";
         if (sequence.isExpired()) {
-            return;
+            return null;
         }
 
+        long now = System.currentTimeMillis();
+        if (refill) {
+            long elapsed = now - reservationTime;
+            if (elapsed < RESERVATION_MILLIS) {
+                reservationSize =
+                    Math.min(reservationSize * 2, MAX_RESERVATION_SIZE);
+            } else if (elapsed > (4 * RESERVATION_MILLIS)) {
+                reservationSize =
+                    Math.max(reservationSize / 2, MIN_RESERVATION_SIZE);
+            }
+        }
+        reservationTime = now;
+
         // Find the number of values to reserve, for example:
         //     currentBase=0, 1, 2, ..., incrementCount
         long currentBase = sequence.getBaseValue();
         long diff = ascending ? (max - currentBase) : (min - currentBase);
         long incrementCount = diff / increment;
-        long reservation = Math.min(incrementCount + 1, MAX_RESERVATION_SIZE);
+        long count = Math.min(incrementCount + 1, reservationSize);
 
-        nextReservedValue = currentBase;
-        if (reservation == (incrementCount + 1)) {
+        if (count == (incrementCount + 1)) {
             // need to cycle
             if (cycle) {
                 long first = ascending ? min : max;
                 sequence.setBaseValue(first);
             } else {
-                long lastValid =
-                    nextReservedValue + (incrementCount * increment);
+                long lastValid = currentBase + (incrementCount * increment);
                 sequence.setBaseValue(lastValid);
                 sequence.setExpired(true);
             }
         } else {
-            long nextValid = nextReservedValue + (reservation * increment);
+            long nextValid = currentBase + (count * increment);
             sequence.setBaseValue(nextValid);
         }
-        lastReservedValue = nextReservedValue + ((reservation - 1) * increment);
-        reserved = true;
+        return new Reservation(currentBase, count, increment);
     }
 
     /**
@@ -249,14 +303,18 @@ public class FarragoSequenceAccessor
         try {
             txn.beginWriteTxn();
             FemSequenceGenerator sequence = getSequence();
+            Reservation r = reservation;
             if (sequence == null) {
                 // NOTE: sequence was deleted
-            } else if (nextReservedValue == null) {
+            } else if (r == null) {
                 // No values to deallocate
             } else {
-                sequence.setBaseValue(nextReservedValue);
-                nextReservedValue = null;
-                sequence.setExpired(false);
+                long used = r.retire();
+                if (used < r.count) {
+                    sequence.setBaseValue(r.getValue(used));
+                    sequence.setExpired(false);
+                }
+                reservation = null;
             }
             reserved = false;
             txn.commit();
@@ -291,6 +349,94 @@ public class FarragoSequenceAccessor
                 sequence.getColumn().getOwner());
         return tableName.toString();
     }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Values reserved from the catalog in one update. Threads claim values by
+     * advancing {@link #claimed}, the number of values claimed so far.
+     */
+    private static class Reservation
+    {
+        final long first;
+        final long count;
+        final long increment;
+        final AtomicLong claimed;
+        volatile boolean retired;
+
+        Reservation(long first, long count, long increment)
+        {
+            this.first = first;
+            this.count = count;
+            this.increment = increment;
+            this.claimed = new AtomicLong();
+        }
+
+        long getValue(long index)
+        {
+            return first + (index * increment);
+        }
+
+        /**
+         * Prevents further claims, and returns the number of values which had
+         * been claimed.
+         */
+        long retire()
+        {
+            retired = true;
+            return claimed.getAndSet(count);
+        }
+    }
+
+    /**
+     * Range of values claimed by one thread from a reservation.
+     */
+    private static class Claim
+    {
+        private Reservation reservation;
+        private long next;
+        private long end;
+        private int size = 1;
+
+        boolean hasNext()
+        {
+            return (next < end) && !reservation.retired;
+        }
+
+        long next()
+        {
+            return reservation.getValue(next++);
+        }
+
+        /**
+         * Claims the next range of values from a reservation, adapting the
+         * size of the range to the contention seen.
+         *
+         * @return false if the reservation has no values left
+         */
+        boolean claim(Reservation r)
+        {
+            boolean contended = false;
+            for (;;) {
+                long start = r.claimed.get();
+                if (start >= r.count) {
+                    return false;
+                }
+                long stop = Math.min(start + size, r.count);
+                if (r.claimed.compareAndSet(start, stop)) {
+                    if (!contended && (size > 1)) {
+                        size /= 2;
+                    }
+                    reservation = r;
+                    next = start;
+                    end = stop;
+                    return true;
+                }
+                contended = true;
+                size = Math.min(size * 2, MAX_CLAIM_SIZE);
+            }
+        }
+    }
 }
 
 // End FarragoSequenceAccessor.java
@@ -26,10 +26,12 @@ import java.sql.*;
 import java.util.*;
 
 import net.sf.farrago.cwm.core.*;
+import net.sf.farrago.fem.med.*;
 import net.sf.farrago.fem.sql2003.*;
 
 import org.eigenbase.sarg.*;
 import org.eigenbase.stat.*;
+import org.eigenbase.util.*;
 
 
 /**
@@ -47,6 +49,7 @@ public class FarragoTableStatistics
     private FarragoRepos repos;
     private FemAbstractColumnSet table;
     private Timestamp labelTimestamp;
+    private List<RelStatColumnGroupStatistics> columnGroups;
 
     //~ Constructors -----------------------------------------------------------
 
@@ -110,6 +113,27 @@ public class FarragoTableStatistics
         result.evaluate();
         return result;
     }
+
+    // implement RelStatSource
+    public List<RelStatColumnGroupStatistics> getColumnGroupStatistics()
+    {
+        if (columnGroups == null) {
+            columnGroups = new ArrayList<RelStatColumnGroupStatistics>();
+            for (
+                FemAbstractColumn column
+                : Util.cast(table.getFeature(), FemAbstractColumn.class))
+            {
+                FemColumnHistogram histogram =
+                    FarragoCatalogUtil.getHistogram(column, labelTimestamp);
+                if (histogram != null) {
+                    columnGroups.addAll(
+                        FarragoColumnGroupStatistics.parseList(
+                            histogram.getColumnGroupStatistics()));
+                }
+            }
+        }
+        return columnGroups;
+    }
 }
 
 // End FarragoTableStatistics.java
@@ -29,6 +29,7 @@ import java.io.*;
 import java.net.*;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.*;
 import java.util.logging.*;
 
@@ -48,6 +49,7 @@ import net.sf.farrago.fem.sql2003.*;
 import net.sf.farrago.fennel.*;
 import net.sf.farrago.ojrex.*;
 import net.sf.farrago.plugin.*;
+import net.sf.farrago.query.*;
 import net.sf.farrago.resource.*;
 import net.sf.farrago.session.*;
 import net.sf.farrago.util.*;
@@ -107,6 +109,21 @@ public class FarragoDatabase
      */
     private FarragoObjectCache codeCache;
 
+    /**
+     * Optional on-disk tier beneath codeCache, or null if disabled; see {@link
+     * FarragoProperties#persistCodeCache}.
+     */
+    private FarragoPersistentStmtCache persistentCodeCache;
+
+    /**
+     * Code cache hit/miss counters for normalized statements, keyed by
+     * normalized cache key. A statement's counter is removed when its entry
+     * is discarded from the code cache, so the map is bounded by the cache.
+     */
+    private final ConcurrentMap<String, NormalizedStmtCounter>
+        normalizedStmtCounters =
+            new ConcurrentHashMap<String, NormalizedStmtCounter>();
+
     /**
      * File containing trace configuration.
      */
@@ -225,7 +242,15 @@ public class FarragoDatabase
                     new FarragoObjectCache(
                         this,
                         codeCacheMaxBytes,
-                        new FarragoLruVictimPolicy());
+                        new FarragoClockVictimPolicy());
+
+                if (FarragoProperties.instance().persistCodeCache.get()) {
+                    persistentCodeCache =
+                        new FarragoPersistentStmtCache(
+                            new File(
+                                FarragoProperties.instance().getCatalogDir(),
+                                "codeCache"));
+                }
 
                 ojRexImplementorTable =
                     new FarragoOJRexImplementorTable(
@@ -303,6 +328,14 @@ public class FarragoDatabase
         return codeCache;
     }
 
+    /**
+     * @return the persistent tier of the code cache, or null if it is disabled
+     */
+    public FarragoPersistentStmtCache getPersistentCodeCache()
+    {
+        return persistentCodeCache;
+    }
+
     /**
      * Flushes unpinned entries from the cache cache for this database.
      */
@@ -315,6 +348,7 @@ public class FarragoDatabase
         long maxBytes = codeCache.getBytesMax();
         codeCache.setMaxBytes(0);
         codeCache.setMaxBytes(maxBytes);
+        normalizedStmtCounters.clear();
     }
 
     /**
@@ -1013,6 +1047,24 @@ public class FarragoDatabase
             return executableStmt;
         }
 
+        // Optionally replace plan-neutral literals with hidden dynamic
+        // parameters so that statements which differ only in those literals
+        // can share a cache entry.  This has to happen before validation.
+        final FarragoDbLiteralNormalizer normalizer;
+        final SqlNode stmtSqlNode;
+        if ((analyzedSql == null)
+            && FarragoDbLiteralNormalizer.isNormalizable(sqlNode)
+            && stmt.getSession().getSessionVariables().getBoolean(
+                FarragoDefaultSessionPersonality.CACHE_NORMALIZED_STATEMENTS))
+        {
+            normalizer =
+                new FarragoDbLiteralNormalizer(stmt.getFarragoTypeFactory());
+            stmtSqlNode = normalizer.normalize(sqlNode);
+        } else {
+            normalizer = null;
+            stmtSqlNode = sqlNode;
+        }
+
         // Use unparsed validated SQL as cache key.  This eliminates trivial
         // differences such as whitespace and implicit qualifiers.
         SqlValidator sqlValidator = stmt.getSqlValidator();
@@ -1033,7 +1085,7 @@ public class FarragoDatabase
                     sqlNode,
                     nameToTypeMap);
         } else {
-            validatedSqlNode = sqlValidator.validate(sqlNode);
+            validatedSqlNode = sqlValidator.validate(stmtSqlNode);
         }
 
         stmt.postValidate(validatedSqlNode);
@@ -1074,7 +1126,16 @@ public class FarragoDatabase
         if (labelCsn != null) {
             key += labelCsn;
         }
+        final boolean normalized =
+            (normalizer != null) && normalizer.hasHiddenParams();
+        if (normalized) {
+            key +=
+                ";params="
+                + FarragoDbLiteralNormalizer.getParamSignature(
+                    validatedSqlNode);
+        }
         final String stmtKey = key;
+        final boolean [] miss = { false };
 
         FarragoObjectCache.Entry cacheEntry;
         FarragoObjectCache.CachedObjectFactory stmtFactory =
@@ -1086,8 +1147,23 @@ public class FarragoDatabase
                     timingTracer.traceTime("code cache miss");
 
                     assert (key.equals(stmtKey));
+                    miss[0] = true;
                     FarragoSessionExecutableStmt executableStmt =
-                        stmt.prepare(validatedSqlNode, sqlNode);
+                        loadPersistentStmt(stmt, stmtKey);
+                    if (executableStmt == null) {
+                        executableStmt =
+                            stmt.prepare(validatedSqlNode, stmtSqlNode);
+                        if ((persistentCodeCache != null)
+                            && stmt.mayCacheImplementation())
+                        {
+                            persistentCodeCache.store(stmtKey, executableStmt);
+                        }
+                    } else {
+                        timingTracer.traceTime("persistent code cache hit");
+                    }
+                    if (normalized) {
+                        trackNormalizedStmt(stmtKey, executableStmt);
+                    }
                     long memUsage =
                         FarragoUtil.getStringMemoryUsage(sql.getSql())
                         + executableStmt.getMemoryUsage();
@@ -1119,6 +1195,89 @@ public class FarragoDatabase
         FarragoSessionExecutableStmt executableStmt =
             (FarragoSessionExecutableStmt) cacheEntry.getValue();
         owner.addAllocation(cacheEntry);
+        if (normalized) {
+            NormalizedStmtCounter counter =
+                normalizedStmtCounters.get(stmtKey);
+            // the counter is gone if the statement was not cached after all
+            if (counter != null) {
+                if (miss[0]) {
+                    counter.misses.incrementAndGet();
+                } else {
+                    counter.hits.incrementAndGet();
+                }
+            }
+            executableStmt =
+                new FarragoDbNormalizedStmt(
+                    executableStmt,
+                    stmt.getFarragoTypeFactory(),
+                    normalizer.getUserParamCount(),
+                    normalizer.getHiddenParamValues());
+        }
+        return executableStmt;
+    }
+
+    /**
+     * Starts counting code cache hits and misses for a normalized statement
+     * which has just been added to the code cache, until it is discarded.
+     *
+     * @param stmtKey code cache key
+     * @param executableStmt statement cached under stmtKey
+     */
+    private void trackNormalizedStmt(
+        final String stmtKey,
+        FarragoSessionExecutableStmt executableStmt)
+    {
+        final NormalizedStmtCounter counter = new NormalizedStmtCounter();
+        normalizedStmtCounters.put(stmtKey, counter);
+        executableStmt.addAllocation(
+            new FarragoAllocation() {
+                public void closeAllocation()
+                {
+                    // an entry which replaced ours keeps its own counter
+                    normalizedStmtCounters.remove(stmtKey, counter);
+                }
+            });
+    }
+
+    /**
+     * Returns the code cache hit and miss counters for statements whose cache
+     * keys were produced by literal normalization (see {@link
+     * FarragoDefaultSessionPersonality#CACHE_NORMALIZED_STATEMENTS}).
+     *
+     * @return map from normalized cache key to counters
+     */
+    public Map<String, NormalizedStmtCounter> getNormalizedStmtCounters()
+    {
+        return Collections.unmodifiableMap(normalizedStmtCounters);
+    }
+
+    /**
+     * Looks up a statement in the persistent tier of the code cache.
+     *
+     * @param stmt statement being prepared
+     * @param stmtKey code cache key
+     *
+     * @return saved statement, or null if none is available or it is stale
+     */
+    private FarragoSessionExecutableStmt loadPersistentStmt(
+        FarragoSessionPreparingStmt stmt,
+        String stmtKey)
+    {
+        if (persistentCodeCache == null) {
+            return null;
+        }
+        FarragoSessionExecutableStmt executableStmt =
+            persistentCodeCache.load(
+                stmtKey,
+                stmt.getFarragoTypeFactory(),
+                stmt.getSession().getPluginClassLoader());
+        if (executableStmt == null) {
+            return null;
+        }
+        if (isExecutableStmtStale(stmt.getRepos(), executableStmt)) {
+            persistentCodeCache.reject(stmtKey);
+            return null;
+        }
         return executableStmt;
     }
 
@@ -1169,6 +1328,9 @@ public class FarragoDatabase
             // when this parameter changes, we need to clear the code cache,
             // since cached plans may be based on the old setting
             codeCache.setMaxBytes(0);
+            if (persistentCodeCache != null) {
+                persistentCodeCache.discardAll();
+            }
 
             // this makes sure that we reset the cache to the correct size
             // below
@@ -1180,8 +1342,15 @@ public class FarragoDatabase
         }
 
         if (setCodeCacheSize) {
-            codeCache.setMaxBytes(
-                getCodeCacheMaxBytes(systemRepos.getCurrentConfig()));
+            long codeCacheMaxBytes =
+                getCodeCacheMaxBytes(systemRepos.getCurrentConfig());
+            codeCache.setMaxBytes(codeCacheMaxBytes);
+
+            // an explicit flush (see FarragoManagementUDR.flushCodeCache)
+            // applies to saved statements too
+            if ((codeCacheMaxBytes == 0) && (persistentCodeCache != null)) {
+                persistentCodeCache.discardAll();
+            }
         }
 
         // Prevent negative values.  Fennel uses an unsigned 32-bit int for
@@ -1424,6 +1593,22 @@ public class FarragoDatabase
             userRepos = systemRepos;
         }
     }
+
+    /**
+     * Code cache hit/miss counters for one normalized statement key.
+     */
+    public static class NormalizedStmtCounter
+    {
+        /**
+         * Number of prepares satisfied from the code cache.
+         */
+        public final AtomicLong hits = new AtomicLong();
+
+        /**
+         * Number of prepares which had to build a new executable statement.
+         */
+        public final AtomicLong misses = new AtomicLong();
+    }
 }
 
 // End FarragoDatabase.java
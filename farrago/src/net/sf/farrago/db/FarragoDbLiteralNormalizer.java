@@ -0,0 +1,354 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.db;
+
+import java.math.*;
+
+import java.util.*;
+
+import org.eigenbase.reltype.*;
+import org.eigenbase.sql.*;
+import org.eigenbase.sql.fun.*;
+import org.eigenbase.sql.parser.*;
+import org.eigenbase.sql.type.*;
+import org.eigenbase.sql.util.*;
+import org.eigenbase.util.*;
+
+
+/**
+ * FarragoDbLiteralNormalizer rewrites a parsed query so that plan-neutral
+ * numeric and character literals are replaced by hidden dynamic parameters.
+ * Statements which differ only in the values of such literals then unparse to
+ * the same text after validation, allowing them to share one entry in the
+ * code cache.
+ *
+ * <p>Each literal is replaced with <code>CAST(? AS t)</code>, where t is the
+ * type the validator would have derived for the literal itself, so the
+ * rewritten statement has exactly the same type semantics as the original.
+ * Hidden parameters are numbered after all of the parameters supplied by the
+ * user, so the user-visible parameter row type is unaffected.
+ *
+ * <p>Literals are only replaced where they cannot influence plan selection or
+ * validation:
+ *
+ * <ul>
+ * <li>A comparison, BETWEEN or IN predicate with a bare column reference as
+ * one of its operands is left untouched, since it is a candidate for sarg
+ * analysis (e.g. index selection in LcsIndexOptimizer) and selectivity
+ * estimation, both of which depend on the literal value.
+ * <li>The select list, GROUP BY, HAVING and WINDOW clauses of an aggregate
+ * or DISTINCT query are left untouched, since the validator matches those
+ * expressions against each other, and against ORDER BY, structurally. ORDER
+ * BY is never rewritten because it may contain ordinals.
+ * <li>Only operands of arithmetic, comparison and CASE expressions are
+ * candidates; function arguments, FETCH/OFFSET, window bounds and VALUES
+ * rows keep their literals.
+ * </ul>
+ *
+ * @version $Id$
+ */
+class FarragoDbLiteralNormalizer
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * Kinds of calls whose literal operands may be replaced.
+     */
+    private static final Set<SqlKind> normalizableParentKinds =
+        EnumSet.of(
+            SqlKind.PLUS,
+            SqlKind.MINUS,
+            SqlKind.TIMES,
+            SqlKind.DIVIDE,
+            SqlKind.PLUS_PREFIX,
+            SqlKind.MINUS_PREFIX,
+            SqlKind.EQUALS,
+            SqlKind.NOT_EQUALS,
+            SqlKind.LESS_THAN,
+            SqlKind.GREATER_THAN,
+            SqlKind.LESS_THAN_OR_EQUAL,
+            SqlKind.GREATER_THAN_OR_EQUAL,
+            SqlKind.BETWEEN,
+            SqlKind.IN,
+            SqlKind.CASE);
+
+    /**
+     * Kinds of calls which are candidates for sarg analysis when applied to a
+     * bare column reference.
+     */
+    private static final Set<SqlKind> sargableKinds =
+        EnumSet.of(
+            SqlKind.EQUALS,
+            SqlKind.NOT_EQUALS,
+            SqlKind.LESS_THAN,
+            SqlKind.GREATER_THAN,
+            SqlKind.LESS_THAN_OR_EQUAL,
+            SqlKind.GREATER_THAN_OR_EQUAL,
+            SqlKind.BETWEEN,
+            SqlKind.IN);
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final RelDataTypeFactory typeFactory;
+    private int nextParamIndex;
+    private int userParamCount;
+    private final List<Object> hiddenParamValues;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new normalizer.
+     *
+     * @param typeFactory factory used to derive literal types
+     */
+    FarragoDbLiteralNormalizer(RelDataTypeFactory typeFactory)
+    {
+        this.typeFactory = typeFactory;
+        hiddenParamValues = new ArrayList<Object>();
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Tests whether a parsed statement is eligible for normalization at all.
+     * Only queries are normalized; DML, CALL and EXPLAIN keep their literals.
+     *
+     * @param sqlNode parsed (unvalidated) statement
+     *
+     * @return true if {@link #normalize} may be applied
+     */
+    static boolean isNormalizable(SqlNode sqlNode)
+    {
+        return sqlNode.getKind().belongsTo(SqlKind.QUERY);
+    }
+
+    /**
+     * Replaces eligible literals in a parsed (unvalidated) query with hidden
+     * dynamic parameters. The tree is modified in place.
+     *
+     * @param sqlNode parsed query
+     *
+     * @return the rewritten query
+     */
+    SqlNode normalize(SqlNode sqlNode)
+    {
+        userParamCount = countDynamicParams(sqlNode);
+        nextParamIndex = userParamCount;
+        visit(sqlNode);
+        return sqlNode;
+    }
+
+    /**
+     * @return number of dynamic parameters supplied by the user
+     */
+    int getUserParamCount()
+    {
+        return userParamCount;
+    }
+
+    /**
+     * @return whether any literals were replaced
+     */
+    boolean hasHiddenParams()
+    {
+        return !hiddenParamValues.isEmpty();
+    }
+
+    /**
+     * @return values of the replaced literals, in hidden parameter order
+     */
+    List<Object> getHiddenParamValues()
+    {
+        return hiddenParamValues;
+    }
+
+    /**
+     * Computes a signature of the order in which parameter indexes appear in
+     * a statement. Two statements whose normalized text is the same but which
+     * interleave user and hidden parameters differently (for example <code>
+     * ? - 5</code> and <code>5 - ?</code>) unparse identically, so this
+     * signature must be part of the cache key.
+     *
+     * @param sqlNode statement (validated or not)
+     *
+     * @return parameter order signature
+     */
+    static String getParamSignature(SqlNode sqlNode)
+    {
+        final StringBuilder sb = new StringBuilder();
+        sqlNode.accept(
+            new SqlBasicVisitor<Void>() {
+                public Void visit(SqlDynamicParam param)
+                {
+                    if (sb.length() > 0) {
+                        sb.append(',');
+                    }
+                    sb.append(param.getIndex());
+                    return null;
+                }
+            });
+        return sb.toString();
+    }
+
+    private static int countDynamicParams(SqlNode sqlNode)
+    {
+        final int [] maxIndex = { -1 };
+        sqlNode.accept(
+            new SqlBasicVisitor<Void>() {
+                public Void visit(SqlDynamicParam param)
+                {
+                    maxIndex[0] = Math.max(maxIndex[0], param.getIndex());
+                    return null;
+                }
+            });
+        return maxIndex[0] + 1;
+    }
+
+    private void visit(SqlNode node)
+    {
+        if (node instanceof SqlNodeList) {
+            for (SqlNode child : (SqlNodeList) node) {
+                visit(child);
+            }
+        } else if (node instanceof SqlSelect) {
+            visitSelect((SqlSelect) node);
+        } else if (node.getKind() == SqlKind.ORDER_BY) {
+            // only the query; the order list is matched against its select
+            // list
+            visit(
+                ((SqlCall) node).getOperands()[
+                    SqlOrderByOperator.QUERY_OPERAND]);
+        } else if (node instanceof SqlCall) {
+            visitCall((SqlCall) node);
+        }
+    }
+
+    private void visitSelect(SqlSelect select)
+    {
+        visit(select.getFrom());
+        visit(select.getWhere());
+        if ((select.getGroup() == null) && !select.isDistinct()) {
+            visit(select.getSelectList());
+        }
+    }
+
+    private void visitCall(SqlCall call)
+    {
+        SqlKind kind = call.getKind();
+        SqlNode [] operands = call.getOperands();
+        if (isSargCandidate(call)) {
+            // Leave the literals alone, but still look inside any subqueries
+            // (e.g. the right-hand side of IN).
+            for (SqlNode operand : operands) {
+                if ((operand != null)
+                    && operand.getKind().belongsTo(SqlKind.QUERY))
+                {
+                    visit(operand);
+                }
+            }
+            return;
+        }
+        boolean normalizable = normalizableParentKinds.contains(kind);
+        for (int i = 0; i < operands.length; i++) {
+            SqlNode operand = operands[i];
+            if (operand == null) {
+                continue;
+            }
+            if (normalizable && isNormalizableLiteral(operand)) {
+                call.setOperand(i, replaceLiteral((SqlLiteral) operand));
+            } else if (normalizable && (operand instanceof SqlNodeList)) {
+                // IN value list, or WHEN/THEN lists of CASE
+                SqlNodeList list = (SqlNodeList) operand;
+                for (int j = 0; j < list.size(); j++) {
+                    SqlNode item = list.get(j);
+                    if (isNormalizableLiteral(item)) {
+                        list.set(j, replaceLiteral((SqlLiteral) item));
+                    } else {
+                        visit(item);
+                    }
+                }
+            } else {
+                visit(operand);
+            }
+        }
+    }
+
+    private boolean isSargCandidate(SqlCall call)
+    {
+        if (!sargableKinds.contains(call.getKind())) {
+            return false;
+        }
+        for (SqlNode operand : call.getOperands()) {
+            if (operand instanceof SqlIdentifier) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isNormalizableLiteral(SqlNode node)
+    {
+        if (node instanceof SqlNumericLiteral) {
+            return true;
+        }
+        if (node instanceof SqlCharStringLiteral) {
+            // Keep literals with an explicit character set or collation,
+            // since those participate in collation derivation.
+            NlsString nlsString = ((SqlCharStringLiteral) node).getNlsString();
+            return (nlsString.getCharsetName() == null)
+                && (nlsString.getCollation() == null);
+        }
+        return false;
+    }
+
+    private SqlNode replaceLiteral(SqlLiteral literal)
+    {
+        SqlParserPos pos = literal.getParserPosition();
+        RelDataType type = literal.createSqlType(typeFactory);
+        hiddenParamValues.add(getLiteralValue(literal, type));
+        SqlDynamicParam param = new SqlDynamicParam(nextParamIndex++, pos);
+        return SqlStdOperatorTable.castFunc.createCall(
+            pos,
+            param,
+            SqlTypeUtil.convertTypeToSpec(type));
+    }
+
+    private static Object getLiteralValue(SqlLiteral literal, RelDataType type)
+    {
+        if (literal instanceof SqlCharStringLiteral) {
+            return ((SqlCharStringLiteral) literal).getNlsString().getValue();
+        }
+        BigDecimal bd = (BigDecimal) literal.getValue();
+        switch (type.getSqlTypeName()) {
+        case INTEGER:
+        case BIGINT:
+            // go through Long to avoid losing precision in param scrubbing
+            return bd.longValue();
+        case DOUBLE:
+            return bd.doubleValue();
+        default:
+            return bd;
+        }
+    }
+}
+
+// End FarragoDbLiteralNormalizer.java
@@ -0,0 +1,225 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.db;
+
+import java.sql.*;
+
+import java.util.*;
+
+import net.sf.farrago.session.*;
+
+import org.eigenbase.rel.*;
+import org.eigenbase.relopt.*;
+import org.eigenbase.reltype.*;
+import org.eigenbase.util.*;
+
+
+/**
+ * FarragoDbNormalizedStmt is a per-statement view of a shared executable
+ * statement which was prepared from a query normalized by {@link
+ * FarragoDbLiteralNormalizer}. It hides the trailing parameters which stand in
+ * for literals from callers, and carries the literal values which must be
+ * bound to them at execution time.
+ *
+ * <p>The underlying executable statement is owned by its code cache entry, so
+ * closing this object has no effect.
+ *
+ * @version $Id$
+ */
+class FarragoDbNormalizedStmt
+    implements FarragoSessionExecutableStmt
+{
+    //~ Instance fields --------------------------------------------------------
+
+    private final FarragoSessionExecutableStmt executableStmt;
+    private final RelDataType userParamRowType;
+    private final List<Object> hiddenParamValues;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new FarragoDbNormalizedStmt.
+     *
+     * @param executableStmt shared statement with user and hidden parameters
+     * @param typeFactory factory for the user parameter row type
+     * @param userParamCount number of leading parameters supplied by the user
+     * @param hiddenParamValues literal values for the remaining parameters
+     */
+    FarragoDbNormalizedStmt(
+        FarragoSessionExecutableStmt executableStmt,
+        RelDataTypeFactory typeFactory,
+        int userParamCount,
+        List<Object> hiddenParamValues)
+    {
+        this.executableStmt = executableStmt;
+        this.hiddenParamValues = hiddenParamValues;
+
+        RelDataTypeField [] fields =
+            executableStmt.getDynamicParamRowType().getFields();
+        assert (fields.length == (userParamCount + hiddenParamValues.size()));
+        RelDataType [] types = new RelDataType[userParamCount];
+        String [] names = new String[userParamCount];
+        for (int i = 0; i < userParamCount; ++i) {
+            types[i] = fields[i].getType();
+            names[i] = fields[i].getName();
+        }
+        userParamRowType = typeFactory.createStructType(types, names);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Validates and converts the hidden parameter values in the same way as
+     * values bound by the user.
+     *
+     * @param paramDefFactory factory for parameter definitions
+     *
+     * @return scrubbed hidden parameter values
+     */
+    Object [] scrubHiddenParamValues(
+        FarragoSessionStmtParamDefFactory paramDefFactory)
+    {
+        RelDataTypeField [] fields =
+            executableStmt.getDynamicParamRowType().getFields();
+        int userParamCount = userParamRowType.getFieldCount();
+        Object [] values = new Object[hiddenParamValues.size()];
+        for (int i = 0; i < values.length; ++i) {
+            RelDataTypeField field = fields[userParamCount + i];
+            FarragoSessionStmtParamDef paramDef =
+                paramDefFactory.newParamDef(
+                    field.getName(),
+                    field.getType());
+            values[i] = paramDef.scrubValue(hiddenParamValues.get(i));
+        }
+        return values;
+    }
+
+    /**
+     * Combines values bound by the user with hidden parameter values into the
+     * array expected by the underlying statement.
+     *
+     * @param userValues values bound by the user
+     * @param hiddenValues values returned by {@link #scrubHiddenParamValues}
+     *
+     * @return combined values
+     */
+    static Object [] combineParamValues(
+        Object [] userValues,
+        Object [] hiddenValues)
+    {
+        Object [] values = new Object[userValues.length + hiddenValues.length];
+        System.arraycopy(userValues, 0, values, 0, userValues.length);
+        System.arraycopy(
+            hiddenValues,
+            0,
+            values,
+            userValues.length,
+            hiddenValues.length);
+        return values;
+    }
+
+    // implement FarragoSessionExecutableStmt
+    public ResultSet execute(FarragoSessionRuntimeContext runtimeContext)
+    {
+        return executableStmt.execute(runtimeContext);
+    }
+
+    // implement FarragoSessionExecutableStmt
+    public RelDataType getRowType()
+    {
+        return executableStmt.getRowType();
+    }
+
+    // implement FarragoSessionExecutableStmt
+    public List<List<String>> getFieldOrigins()
+    {
+        return executableStmt.getFieldOrigins();
+    }
+
+    // implement FarragoSessionExecutableStmt
+    public RelDataType getDynamicParamRowType()
+    {
+        return userParamRowType;
+    }
+
+    // implement FarragoSessionExecutableStmt
+    public boolean isDml()
+    {
+        return executableStmt.isDml();
+    }
+
+    // implement FarragoSessionExecutableStmt
+    public TableModificationRel.Operation getTableModOp()
+    {
+        return executableStmt.getTableModOp();
+    }
+
+    // implement FarragoSessionExecutableStmt
+    public long getMemoryUsage()
+    {
+        return executableStmt.getMemoryUsage();
+    }
+
+    // implement FarragoSessionExecutableStmt
+    public Set<String> getReferencedObjectIds()
+    {
+        return executableStmt.getReferencedObjectIds();
+    }
+
+    // implement FarragoSessionExecutableStmt
+    public String getReferencedObjectModTime(String mofid)
+    {
+        return executableStmt.getReferencedObjectModTime(mofid);
+    }
+
+    // implement FarragoSessionExecutableStmt
+    public TableAccessMap getTableAccessMap()
+    {
+        return executableStmt.getTableAccessMap();
+    }
+
+    // implement FarragoSessionExecutableStmt
+    public Map<String, RelDataType> getResultSetTypeMap()
+    {
+        return executableStmt.getResultSetTypeMap();
+    }
+
+    // implement FarragoSessionExecutableStmt
+    public Map<String, RelDataType> getIterCalcTypeMap()
+    {
+        return executableStmt.getIterCalcTypeMap();
+    }
+
+    // implement ClosableAllocationOwner
+    public void addAllocation(ClosableAllocation allocation)
+    {
+        executableStmt.addAllocation(allocation);
+    }
+
+    // implement ClosableAllocation
+    public void closeAllocation()
+    {
+        // the underlying statement belongs to its code cache entry
+    }
+}
+
+// End FarragoDbNormalizedStmt.java
@@ -22,6 +22,7 @@
 package net.sf.farrago.db;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.*;
 
 import net.sf.farrago.session.*;
@@ -52,7 +53,9 @@ public class FarragoDbNullTxnMgr
     public FarragoDbNullTxnMgr()
     {
         nextId = new AtomicLong(1);
-        listeners = new ArrayList<FarragoSessionTxnListener>();
+        // listeners may be added while other sessions' transactions are
+        // notifying them
+        listeners = new CopyOnWriteArrayList<FarragoSessionTxnListener>();
     }
 
     //~ Methods ----------------------------------------------------------------
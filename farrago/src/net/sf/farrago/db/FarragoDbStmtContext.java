@@ -64,11 +64,28 @@ public class FarragoDbStmtContext
     private final FarragoWarningQueue warningQueue;
     private boolean isExecDirect;
 
+    /**
+     * Values for hidden parameters introduced by literal normalization, or
+     * null if the prepared statement was not normalized.
+     */
+    private Object [] hiddenParamValues;
+
     /**
      * query timeout in seconds, default to 0.
      */
     private int queryTimeoutMillis = 0;
 
+    /**
+     * Maximum number of rows per prefetched page.
+     */
+    private int prefetchPageRows;
+
+    /**
+     * Maximum number of pages fetched ahead by a query's cursor; 0 disables
+     * prefetch.
+     */
+    private int prefetchPageCount;
+
     //~ Constructors -----------------------------------------------------------
 
     /**
@@ -144,6 +161,13 @@ public class FarragoDbStmtContext
             final RelDataType dynamicParamRowType =
                 executableStmt.getDynamicParamRowType();
             initDynamicParams(dynamicParamRowType);
+            if (executableStmt instanceof FarragoDbNormalizedStmt) {
+                hiddenParamValues =
+                    ((FarragoDbNormalizedStmt) executableStmt)
+                    .scrubHiddenParamValues(paramDefFactory);
+            } else {
+                hiddenParamValues = null;
+            }
         } else {
             // always zero for DDL
             updateCount = 0;
@@ -229,6 +253,25 @@ public class FarragoDbStmtContext
         return queryTimeoutMillis;
     }
 
+    // implement FarragoSessionStmtContext
+    public void setPrefetch(int pageRows, int pageCount)
+    {
+        prefetchPageRows = pageRows;
+        prefetchPageCount = pageCount;
+    }
+
+    // implement FarragoSessionStmtContext
+    public int getPrefetchPageRows()
+    {
+        return prefetchPageRows;
+    }
+
+    // implement FarragoSessionStmtContext
+    public int getPrefetchPageCount()
+    {
+        return prefetchPageCount;
+    }
+
     // implement FarragoSessionStmtContext
     public void execute()
     {
@@ -279,9 +322,20 @@ public class FarragoDbStmtContext
             params.warningQueue = warningQueue;
 
             params.isDml = isDml;
+            if (!isDml) {
+                params.prefetchPageRows = prefetchPageRows;
+                params.prefetchPageCount = prefetchPageCount;
+            }
             params.resultSetTypeMap = executableStmt.getResultSetTypeMap();
             params.iterCalcTypeMap = executableStmt.getIterCalcTypeMap();
-            params.dynamicParamValues = dynamicParamValues;
+            if (hiddenParamValues == null) {
+                params.dynamicParamValues = dynamicParamValues;
+            } else {
+                params.dynamicParamValues =
+                    FarragoDbNormalizedStmt.combineParamValues(
+                        dynamicParamValues,
+                        hiddenParamValues);
+            }
 
             // REVIEW zfong 3/21/08 - Should this time be set to a non-zero
             // value even if this isn't an internal statement?  Currently,
@@ -486,6 +540,7 @@ public class FarragoDbStmtContext
                 snapshotCsn = null;
             }
             executableStmt = null;
+            hiddenParamValues = null;
             isExecDirect = false;
 
             super.unprepare();
@@ -21,6 +21,8 @@
 */
 package net.sf.farrago.ddl;
 
+import java.math.*;
+
 import java.sql.*;
 
 import java.util.*;
@@ -61,10 +63,26 @@ import org.eigenbase.util14.*;
  * <li>The number of pages in each associated index
  * <li>A histogram of each column specified
  * <li>The number of distinct values for the column.
+ * <li>The number of null values, the most common values of the column and a
+ * sketch of its distinct values, all collected in the same pass as the
+ * histogram
+ * <li>For each column group specified, as in <code>FOR COLUMNS (a, (b, c,
+ * d))</code>, the number of distinct combinations of values of its columns
+ * and the degree to which each column determines each other one. They are
+ * stored with the histogram of the group's first column, and are always
+ * computed from a sample of at most {@link #MAX_COLUMN_GROUP_SAMPLE_SIZE}
+ * rows.
  * </ul>
  *
  * This implementation issues recursive SQL.
  *
+ * <p>If the personality supports {@link
+ * EigenbaseResource#PersonalitySupportsIncrementalStats}, each histogram
+ * records the LCS_RID bound of the rows it reflects. When statistics are next
+ * estimated, without an explicit sampling rate, the rows appended since then
+ * are read and merged into the histogram rather than sampling the whole table
+ * again. The personality resets the bound when analyzed rows are deleted.
+ *
  * @author John Pham, Stephan Zuercher
  * @version $Id$
  */
@@ -81,6 +99,16 @@ public class DdlAnalyzeStmt
 
     private final static long MIN_SAMPLE_SIZE = 5000L;
 
+    private final static int MAX_COLUMN_GROUP_SIZE = 8;
+
+    /**
+     * Maximum number of rows read to compute the statistics of a column group.
+     * The counts of each pair of values are held in memory to compute the
+     * dependency degrees, so larger tables are sampled even when computing
+     * statistics.
+     */
+    private final static long MAX_COLUMN_GROUP_SAMPLE_SIZE = 20000L;
+
     public static final String REPEATABLE_SEED = "test.estimateStatsSeed";
 
     //~ Instance fields --------------------------------------------------------
@@ -90,6 +118,7 @@ public class DdlAnalyzeStmt
     // ddl fields
     private CwmTable table;
     private List<CwmColumn> columnList;
+    private List<List<CwmColumn>> columnGroupList;
     private boolean estimate;
     private boolean computeRowCount;
     private SqlNumericLiteral samplePercent;
@@ -108,6 +137,30 @@ public class DdlAnalyzeStmt
     private FarragoRepos repos;
     private long statsRowCount;
     private LinkedHashMap<ColumnDetail, Histogram> histograms;
+    private List<List<ColumnDetail>> columnGroupDetails;
+    private List<FarragoColumnGroupStatistics> columnGroupStats;
+
+    /**
+     * Whether histograms can be maintained incrementally, because the
+     * personality supports {@link
+     * EigenbaseResource#PersonalitySupportsIncrementalStats}.
+     */
+    private boolean incremental;
+
+    /**
+     * If {@link #incremental}, one more than the largest LCS_RID in the table
+     * when it is analyzed; the statistics gathered reflect only rows with
+     * lesser LCS_RIDs. Null if the bound is not known, in which case the
+     * histograms will not be maintained incrementally.
+     */
+    private Long rowIdLimit;
+
+    /**
+     * Whether some histogram is being merged with the rows appended since it
+     * was computed. Only then is {@link #rowIdLimit} read from the table, and
+     * only then are distribution queries restricted to LCS_RIDs below it.
+     */
+    private boolean refresh;
 
     /**
      * BitSet of column ordinal values that are part of a unique or primary key
@@ -143,6 +196,18 @@ public class DdlAnalyzeStmt
         this.columnList = columnList;
     }
 
+    /**
+     * Sets the groups of columns whose correlation is to be analyzed. Each
+     * column of a group must also be in the list of columns to be analyzed.
+     *
+     * @param columnGroupList list of groups of {@link CwmColumn} repository
+     * objects
+     */
+    public void setColumnGroups(List<List<CwmColumn>> columnGroupList)
+    {
+        this.columnGroupList = columnGroupList;
+    }
+
     public void setEstimateOption(boolean estimate)
     {
         this.estimate = estimate;
@@ -206,6 +271,17 @@ public class DdlAnalyzeStmt
             }
         }
 
+        incremental = personalitySupportsIncrementalStats(ddlValidator);
+        if (incremental && (femTableRowCount != null)) {
+            // LCS_RIDs are allocated densely, and deleted rows keep theirs
+            // until the table is rebuilt, so the catalog's row counts bound
+            // the LCS_RIDs without reading the table.
+            long deletedRowCount =
+                (rowCountStats[1] == null) ? 0L
+                : rowCountStats[1].longValue();
+            rowIdLimit = femTableRowCount.longValue() + deletedRowCount;
+        }
+
         columnDetails = new ArrayList<ColumnDetail>();
         columnMap = new HashMap<FemAbstractColumn, ColumnDetail>();
         for (FemAbstractColumn column : femColumnList) {
@@ -213,10 +289,20 @@ public class DdlAnalyzeStmt
                 new ColumnDetail(
                     column,
                     FarragoCatalogUtil.getQualifiedName(column));
+            if (incremental) {
+                detail.priorHistogram = loadPriorHistogram(detail);
+            }
             columnDetails.add(detail);
             columnMap.put(column, detail);
         }
 
+        columnGroupDetails = new ArrayList<List<ColumnDetail>>();
+        if (columnGroupList != null) {
+            for (List<CwmColumn> columnGroup : columnGroupList) {
+                columnGroupDetails.add(getColumnGroupDetail(columnGroup));
+            }
+        }
+
         if (estimate) {
             singleUniqueCols = new BitSet();
             singleUniqueColsNullable = new BitSet();
@@ -261,6 +347,10 @@ public class DdlAnalyzeStmt
 
             timingTracer.traceTime("analyze: end rowcount");
 
+            // Histograms are only merged when the user leaves the sampling
+            // rate to us; the rate of the original histogram is reused.
+            boolean merge = incremental && estimate && (samplePercent == null);
+
             if (estimate) {
                 setSampleRepeatableSeed(ddlValidator);
 
@@ -280,12 +370,36 @@ public class DdlAnalyzeStmt
                 }
             }
 
+            if (merge && estimate && hasPriorHistogram()) {
+                // The catalog's row counts may be behind loads which
+                // committed since this statement began, so read the bound
+                // exactly.
+                rowIdLimit = computeRowIdLimit();
+                refresh = true;
+                timingTracer.traceTime("analyze: end row id limit");
+            }
+
             histograms = new LinkedHashMap<ColumnDetail, Histogram>();
             if (estimate) {
+                List<ColumnDetail> estimatedColumns = columnDetails;
+                if (refresh) {
+                    estimatedColumns = new ArrayList<ColumnDetail>();
+                    for (ColumnDetail column : columnDetails) {
+                        if (canMergeColumnStats(column)) {
+                            mergeColumnStats(histograms, column, rowCount);
+
+                            timingTracer.traceTime(
+                                "analyze: end merge column "
+                                + column.toString());
+                        } else {
+                            estimatedColumns.add(column);
+                        }
+                    }
+                }
                 if (rowCount == 0) {
-                    estimateEmptyTableStats(columnDetails, histograms);
+                    estimateEmptyTableStats(estimatedColumns, histograms);
                 } else {
-                    estimateStats(columnDetails, rowCount, histograms);
+                    estimateStats(estimatedColumns, rowCount, histograms);
                 }
             } else {
                 // Compute column histograms
@@ -297,6 +411,16 @@ public class DdlAnalyzeStmt
                 }
             }
 
+            // Compute the statistics of column groups
+            columnGroupStats = new ArrayList<FarragoColumnGroupStatistics>();
+            for (List<ColumnDetail> columnGroup : columnGroupDetails) {
+                columnGroupStats.add(
+                    computeColumnGroupStats(columnGroup, rowCount));
+
+                timingTracer.traceTime(
+                    "analyze: end column group " + columnGroup.toString());
+            }
+
             // Compute index page counts and optionally compute distinct value
             // counts.
             executeAnalyzeIndexes(
@@ -392,6 +516,84 @@ public class DdlAnalyzeStmt
             featureResource.PersonalityManagesRowCount);
     }
 
+    /**
+     * Returns true if the personality supports incremental maintenance of
+     * column statistics, and hence the LCS_RID function.
+     */
+    private boolean personalitySupportsIncrementalStats(
+        FarragoSessionDdlValidator ddlValidator)
+    {
+        FarragoSessionPersonality personality =
+            ddlValidator.getInvokingSession().getPersonality();
+
+        return personality.supportsFeature(
+            EigenbaseResource.instance().PersonalitySupportsIncrementalStats);
+    }
+
+    /**
+     * Reads the latest histogram of a column, if it can be maintained
+     * incrementally. Must be called within a repository transaction.
+     *
+     * @param column column being analyzed
+     *
+     * @return the histogram, or null if the column has no histogram or its
+     * histogram must be recomputed
+     */
+    private Histogram loadPriorHistogram(ColumnDetail column)
+    {
+        // A histogram visible to a label is never updated in place, and
+        // cannot be maintained incrementally.
+        FemColumnHistogram femHistogram =
+            FarragoCatalogUtil.getHistogramForUpdate(
+                repos,
+                column.getColumn(),
+                false);
+        if ((femHistogram == null)
+            || (femHistogram.getAnalyzedRowCount() == null)
+            || (femHistogram.getNullCount() == null)
+            || (femHistogram.getDistinctValueCount() == null))
+        {
+            return null;
+        }
+        FarragoMostCommonValues mostCommonValues =
+            FarragoMostCommonValues.parse(femHistogram.getMostCommonValues());
+        FarragoDistinctValueSketch sketch =
+            FarragoDistinctValueSketch.parse(
+                femHistogram.getDistinctValueSketch());
+        if ((mostCommonValues == null) || (sketch == null)) {
+            return null;
+        }
+
+        List<ColumnHistogramBar> bars = new ArrayList<ColumnHistogramBar>();
+        for (FemColumnHistogramBar femBar : femHistogram.getBar()) {
+            bars.add(
+                new ColumnHistogramBar(
+                    femBar.getStartingValue(),
+                    femBar.getValueCount()));
+        }
+        if (bars.size() != femHistogram.getBarCount()) {
+            return null;
+        }
+
+        Histogram histogram =
+            new Histogram(
+                column,
+                femHistogram.getDistinctValueCount(),
+                femHistogram.isDistinctValueCountEstimated(),
+                bars.size(),
+                femHistogram.getRowsPerBar(),
+                femHistogram.getRowsLastBar(),
+                femHistogram.getSampleSize(),
+                bars,
+                new ValueSummary(
+                    femHistogram.getNullCount(),
+                    mostCommonValues,
+                    sketch),
+                femHistogram.getPercentageSampled());
+        histogram.analyzedRowCount = femHistogram.getAnalyzedRowCount();
+        return histogram;
+    }
+
     /**
      * Retrieve the table's row count. Queries the table if {@link
      * #computeRowCount} is true, otherwise uses the value stored in {@link
@@ -448,6 +650,60 @@ public class DdlAnalyzeStmt
         return sql;
     }
 
+    /**
+     * Returns whether any column being analyzed has a histogram which can be
+     * maintained incrementally.
+     */
+    private boolean hasPriorHistogram()
+    {
+        for (ColumnDetail column : columnDetails) {
+            if (column.priorHistogram != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Executes a query against the table to compute {@link #rowIdLimit}.
+     *
+     * @return one more than the largest LCS_RID in the table, or 0 if the
+     * table is empty
+     *
+     * @throws SQLException if there's an error querying the table
+     */
+    private long computeRowIdLimit()
+        throws SQLException
+    {
+        writer.reset();
+        writer.print("select max(");
+        unparseRowId(columnDetails.get(0).identifier);
+        writer.print(") from ");
+        tableName.unparse(writer, 0, 0);
+        String sql = writer.toString();
+        stmtContext.prepare(sql, true);
+
+        stmtContext.execute();
+        ResultSet resultSet = stmtContext.getResultSet();
+        boolean gotRow = resultSet.next();
+        assert (gotRow);
+        long maxRowId = resultSet.getLong(1);
+        boolean empty = resultSet.wasNull();
+        resultSet.close();
+
+        return empty ? 0L : (maxRowId + 1);
+    }
+
+    /**
+     * Writes a call to the LCS_RID function for a column.
+     */
+    private void unparseRowId(SqlIdentifier columnName)
+    {
+        final Frame frame = writer.startFunCall("lcs_rid");
+        columnName.unparse(writer, 0, 0);
+        writer.endFunCall(frame);
+    }
+
     /**
      * Validate that the {@link RelDataType} of the current {@link #stmtContext}
      * matches a table row count query.
@@ -487,6 +743,15 @@ public class DdlAnalyzeStmt
         }
     }
 
+    /**
+     * Returns the percentage of rows sampled by the column distribution
+     * queries.
+     */
+    private float getSamplePercentage()
+    {
+        return estimate ? samplePercent.bigDecimalValue().floatValue() : 100.0f;
+    }
+
     /**
      * Choose an appropriate sampling percentage for a table with the given row
      * count. Sets {@link #samplePercent}.
@@ -569,7 +834,8 @@ public class DdlAnalyzeStmt
     {
         assert (estimate);
 
-        String sql = getColumnDistributionQuery(column.identifier);
+        String sql =
+            getColumnDistributionQuery(column.identifier, estimate, 0L);
         stmtContext.prepare(sql, true);
         checkColumnDistributionQuery();
 
@@ -627,8 +893,9 @@ public class DdlAnalyzeStmt
 
         long rowsPerBar = computeRowsPerHistogramBar(sampleSizeEstimate);
 
+        ValueSummary summary = new ValueSummary();
         List<ColumnHistogramBar> bars =
-            buildBars(resultSet, rowsPerBar, estimator);
+            buildBars(resultSet, rowsPerBar, estimator, summary);
 
         timingTracer.traceTime("analyze: -- end build bars");
 
@@ -675,7 +942,209 @@ public class DdlAnalyzeStmt
             rowsPerBar,
             rowsLastBar,
             sampleRowCount,
-            bars);
+            bars,
+            summary,
+            getSamplePercentage());
+    }
+
+    /**
+     * Returns whether the histogram of a column can be brought up to date by
+     * merging the rows appended since it was computed.
+     *
+     * @param column column being analyzed
+     */
+    private boolean canMergeColumnStats(ColumnDetail column)
+    {
+        return (column.priorHistogram != null)
+            && (rowIdLimit != null)
+            && (column.priorHistogram.analyzedRowCount <= rowIdLimit);
+    }
+
+    /**
+     * Brings the histogram of a column up to date by reading the rows
+     * appended to the table since it was computed, and merging them into it.
+     * The appended rows are read in full, but weighted by the sampling rate
+     * of the histogram.
+     *
+     * @param histograms map in which to store the merged Histogram
+     * @param column the column whose histogram is to be merged
+     * @param tableRowCount number of rows in the table
+     *
+     * @throws SQLException if there's an error executing the query
+     */
+    private void mergeColumnStats(
+        Map<ColumnDetail, Histogram> histograms,
+        ColumnDetail column,
+        long tableRowCount)
+        throws SQLException
+    {
+        Histogram prior = column.priorHistogram;
+        String sql =
+            getColumnDistributionQuery(
+                column.identifier,
+                false,
+                prior.analyzedRowCount);
+        stmtContext.prepare(sql, true);
+        checkColumnDistributionQuery();
+
+        timingTracer.traceTime("analyze: -- end prepare");
+
+        stmtContext.execute();
+        ResultSet resultSet = stmtContext.getResultSet();
+        Histogram columnHistogram =
+            mergeHistogram(prior, tableRowCount, resultSet);
+        histograms.put(column, columnHistogram);
+        resultSet.close();
+    }
+
+    /**
+     * Merges the distribution of appended rows into a histogram. The bars of
+     * the histogram and the classes of the new distribution are merged in
+     * order of value, and re-cut into bars of equal depth. Each old bar is
+     * treated as a single class starting at its starting value.
+     *
+     * @param prior the histogram
+     * @param tableRowCount number of rows in the table
+     * @param resultSet containing column data of the appended rows aggregated
+     * by value
+     *
+     * @return the merged Histogram
+     *
+     * @throws SQLException if there's an error reading the result set
+     */
+    private Histogram mergeHistogram(
+        Histogram prior,
+        long tableRowCount,
+        ResultSet resultSet)
+        throws SQLException
+    {
+        ColumnDetail column = prior.column;
+        double weight = prior.percentageSampled / 100.0;
+        long priorSketchEstimate = prior.summary.sketch.estimate();
+        long priorBarValues = 0;
+        for (ColumnHistogramBar bar : prior.bars) {
+            priorBarValues += bar.valueCount;
+        }
+
+        // Size the bars for the most rows that can have been appended.
+        long appendedRowEstimate =
+            Math.round(weight * (rowIdLimit - prior.analyzedRowCount));
+        long rowsPerBar =
+            computeRowsPerHistogramBar(prior.sampleSize + appendedRowEstimate);
+
+        BarBuilder builder = new BarBuilder(rowsPerBar);
+        ValueSummary summary = prior.summary;
+        Comparator<String> comparator = column.getValueComparator();
+        ListIterator<ColumnHistogramBar> priorBars =
+            prior.bars.listIterator();
+        long sampleRowCount = prior.sampleSize;
+        long appendedValues = 0;
+        double carry = 0.0;
+
+        while (resultSet.next()) {
+            String nextValue = getValue(resultSet, 1);
+            if (nextValue != null) {
+                appendedValues++;
+            }
+
+            // Weight the appended rows, carrying the fraction forward so that
+            // the total is not lost to rounding.
+            double weightedRows = (weight * resultSet.getLong(2)) + carry;
+            long nextRows = (long) weightedRows;
+            carry = weightedRows - nextRows;
+            sampleRowCount += nextRows;
+            summary.add(nextValue, nextRows);
+
+            // Add the old bars which start before the value, and combine
+            // those which start at the value with it.
+            long nextValueCount = 1;
+            boolean combined = false;
+            while (priorBars.hasNext()) {
+                int barOrdinal = priorBars.nextIndex();
+                ColumnHistogramBar bar = priorBars.next();
+                int c = comparator.compare(bar.startValue, nextValue);
+                if (c > 0) {
+                    priorBars.previous();
+                    break;
+                }
+                long barRows = prior.getBarRowCount(barOrdinal);
+                if (c < 0) {
+                    builder.add(bar.startValue, barRows, bar.valueCount);
+                } else {
+                    if (!combined) {
+                        nextValueCount = 0;
+                        combined = true;
+                    }
+                    nextRows += barRows;
+                    nextValueCount += bar.valueCount;
+                }
+            }
+            if (nextRows > 0) {
+                builder.add(nextValue, nextRows, nextValueCount);
+            }
+        }
+        while (priorBars.hasNext()) {
+            int barOrdinal = priorBars.nextIndex();
+            ColumnHistogramBar bar = priorBars.next();
+            builder.add(
+                bar.startValue,
+                prior.getBarRowCount(barOrdinal),
+                bar.valueCount);
+        }
+        List<ColumnHistogramBar> bars = builder.finish();
+
+        timingTracer.traceTime("analyze: -- end merge bars");
+
+        long rowsLastBar = 0;
+        if (!bars.isEmpty()) {
+            rowsLastBar = sampleRowCount - ((bars.size() - 1) * rowsPerBar);
+        }
+
+        // The sketch says how many of the appended values are new; the
+        // appended values cannot add more than that.
+        long newValues =
+            Math.max(0L, summary.sketch.estimate() - priorSketchEstimate);
+        newValues = Math.min(newValues, appendedValues);
+        long distinctValues =
+            Math.min(prior.distinctValues + newValues, tableRowCount);
+        boolean distinctValuesEstimated =
+            prior.distinctValuesEstimated || (appendedValues > 0);
+
+        // Appended values which are not the starting value of an old bar were
+        // counted as new values in the bars.  Scale the counts back so the
+        // bars keep the same proportion of the distinct values as before.
+        long barValues = 0;
+        for (ColumnHistogramBar bar : bars) {
+            barValues += bar.valueCount;
+        }
+        long targetBarValues =
+            (prior.distinctValues == 0) ? distinctValues
+            : Math.round(
+                (double) priorBarValues * distinctValues
+                / prior.distinctValues);
+        targetBarValues = Math.min(targetBarValues, distinctValues);
+        if (barValues > targetBarValues) {
+            double scale = (double) targetBarValues / barValues;
+            for (ColumnHistogramBar bar : bars) {
+                bar.valueCount = (long) (bar.valueCount * scale);
+            }
+        }
+
+        timingTracer.traceTime("analyze: -- end merge cardinality");
+
+        Histogram histogram =
+            new Histogram(
+                column,
+                distinctValues,
+                distinctValuesEstimated,
+                bars.size(),
+                rowsPerBar,
+                rowsLastBar,
+                sampleRowCount,
+                bars,
+                summary,
+                prior.percentageSampled);
+        return histogram;
     }
 
     /**
@@ -696,7 +1165,17 @@ public class DdlAnalyzeStmt
             // Set rowsPerBar and rowsLastBar to 1 to mimic the behavior
             // of computed stats against an empty table.
             Histogram columnHistogram =
-                new Histogram(column, 0L, false, bars.size(), 1, 1, 0L, bars);
+                new Histogram(
+                    column,
+                    0L,
+                    false,
+                    bars.size(),
+                    1,
+                    1,
+                    0L,
+                    bars,
+                    new ValueSummary(),
+                    getSamplePercentage());
 
             histograms.put(column, columnHistogram);
         }
@@ -720,7 +1199,8 @@ public class DdlAnalyzeStmt
     {
         assert (!estimate);
 
-        String sql = getColumnDistributionQuery(column.identifier);
+        String sql =
+            getColumnDistributionQuery(column.identifier, estimate, 0L);
         stmtContext.prepare(sql, true);
         checkColumnDistributionQuery();
 
@@ -758,7 +1238,9 @@ public class DdlAnalyzeStmt
         long rowsLastBar =
             computeRowsLastHistogramBar(tableRowCount, rowsPerBar);
 
-        List<ColumnHistogramBar> bars = buildBars(resultSet, rowsPerBar, null);
+        ValueSummary summary = new ValueSummary();
+        List<ColumnHistogramBar> bars =
+            buildBars(resultSet, rowsPerBar, null, summary);
 
         timingTracer.traceTime("analyze: -- end build bars");
 
@@ -777,15 +1259,270 @@ public class DdlAnalyzeStmt
             rowsPerBar,
             rowsLastBar,
             tableRowCount,
-            bars);
+            bars,
+            summary,
+            getSamplePercentage());
+    }
+
+    /**
+     * Looks up the details of the columns of a column group, which are also
+     * being analyzed individually.
+     *
+     * @param columnGroup columns of the group, leading column first
+     *
+     * @return column details
+     */
+    private List<ColumnDetail> getColumnGroupDetail(List<CwmColumn> columnGroup)
+    {
+        List<ColumnDetail> group = new ArrayList<ColumnDetail>();
+        for (CwmColumn column : columnGroup) {
+            ColumnDetail detail = columnMap.get(column);
+            assert (detail != null);
+            group.add(detail);
+        }
+        if ((group.size() < 2) || (group.size() > MAX_COLUMN_GROUP_SIZE)) {
+            throw FarragoResource.instance().ValidatorAnalyzeInvalidColumnGroup
+            .ex(
+                group.toString(),
+                tableName.toString(),
+                MAX_COLUMN_GROUP_SIZE);
+        }
+        return group;
+    }
+
+    /**
+     * Computes the statistics of a column group: the number of distinct
+     * combinations of values of its columns, and the degree to which each
+     * column determines each other one. Both come from a single query
+     * counting the rows with each combination of values.
+     *
+     * @param columnGroup columns of the group, leading column first
+     * @param tableRowCount number of rows in the table
+     *
+     * @return column group statistics
+     *
+     * @throws SQLException if there's an error executing the query
+     */
+    private FarragoColumnGroupStatistics computeColumnGroupStats(
+        List<ColumnDetail> columnGroup,
+        long tableRowCount)
+        throws SQLException
+    {
+        SqlNumericLiteral groupSamplePercent =
+            getColumnGroupSamplePercent(tableRowCount);
+        stmtContext.prepare(
+            getColumnGroupQuery(columnGroup, groupSamplePercent),
+            true);
+
+        timingTracer.traceTime("analyze: -- end prepare");
+
+        int n = columnGroup.size();
+
+        // for each pair of columns (i, j), the number of rows with each
+        // value of column j, for each value of column i
+        List<Map<String, Map<String, Long>>> pairCounts =
+            new ArrayList<Map<String, Map<String, Long>>>();
+        for (int k = 0; k < (n * n); k++) {
+            pairCounts.add(new HashMap<String, Map<String, Long>>());
+        }
+        FarragoCardinalityEstimator estimator =
+            new FarragoCardinalityEstimator(tableRowCount, false);
+        long combinationCount = 0;
+        long sampleRowCount = 0;
+        String [] values = new String[n];
+
+        stmtContext.execute();
+        ResultSet resultSet = stmtContext.getResultSet();
+        try {
+            while (resultSet.next()) {
+                for (int i = 0; i < n; i++) {
+                    values[i] = getValue(resultSet, i + 1);
+                }
+                long rowCount = resultSet.getLong(n + 1);
+                estimator.addSampleClass(rowCount, false);
+                combinationCount++;
+                sampleRowCount += rowCount;
+
+                for (int i = 0; i < n; i++) {
+                    for (int j = 0; j < n; j++) {
+                        if (i == j) {
+                            continue;
+                        }
+                        Map<String, Map<String, Long>> counts =
+                            pairCounts.get((i * n) + j);
+                        Map<String, Long> dependentCounts =
+                            counts.get(values[i]);
+                        if (dependentCounts == null) {
+                            dependentCounts = new HashMap<String, Long>();
+                            counts.put(values[i], dependentCounts);
+                        }
+                        Long count = dependentCounts.get(values[j]);
+                        dependentCounts.put(
+                            values[j],
+                            (count == null) ? rowCount : (count + rowCount));
+                    }
+                }
+            }
+        } finally {
+            resultSet.close();
+        }
+
+        timingTracer.traceTime("analyze: -- end read column group");
+
+        // The degree to which column i determines column j is the fraction
+        // of rows having the value of j most common for their value of i.
+        double [] degrees = new double[n * n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                if (i == j) {
+                    degrees[(i * n) + j] = 1.0;
+                    continue;
+                }
+                if (sampleRowCount == 0) {
+                    continue;
+                }
+                long determinedRowCount = 0;
+                for (
+                    Map<String, Long> dependentCounts
+                    : pairCounts.get((i * n) + j).values())
+                {
+                    determinedRowCount += Collections.max(
+                        dependentCounts.values());
+                }
+                degrees[(i * n) + j] =
+                    (double) determinedRowCount / (double) sampleRowCount;
+            }
+        }
+
+        long distinctCount = combinationCount;
+        if (groupSamplePercent != null) {
+            distinctCount = Math.min(estimator.estimate(), tableRowCount);
+        }
+
+        int [] ordinals = new int[n];
+        for (int i = 0; i < n; i++) {
+            ordinals[i] = columnGroup.get(i).ordinal;
+        }
+        return new FarragoColumnGroupStatistics(
+            ordinals,
+            distinctCount,
+            degrees);
+    }
+
+    /**
+     * Returns the sampling percentage for column group queries, or null if
+     * the whole table is to be read. Column groups are read from the same
+     * sample as columns, but no more than {@link
+     * #MAX_COLUMN_GROUP_SAMPLE_SIZE} rows are read.
+     *
+     * @param rowCount number of rows in the table
+     */
+    private SqlNumericLiteral getColumnGroupSamplePercent(long rowCount)
+    {
+        SqlNumericLiteral percent = estimate ? samplePercent : null;
+        if (rowCount <= MAX_COLUMN_GROUP_SAMPLE_SIZE) {
+            return percent;
+        }
+        BigDecimal maxPercent =
+            BigDecimal.valueOf(
+                100.0 * (double) MAX_COLUMN_GROUP_SAMPLE_SIZE
+                / (double) rowCount).round(new MathContext(2));
+        if ((percent != null)
+            && (percent.bigDecimalValue().compareTo(maxPercent) <= 0))
+        {
+            return percent;
+        }
+        return SqlNumericLiteral.createExactNumeric(
+            maxPercent.toPlainString(),
+            new SqlParserPos(0, 0));
+    }
+
+    /**
+     * Generates a query counting the rows with each combination of values of
+     * the columns of a column group.
+     *
+     * @param columnGroup columns of the group
+     * @param percent sampling percentage, or null to read the whole table
+     */
+    private String getColumnGroupQuery(
+        List<ColumnDetail> columnGroup,
+        SqlNumericLiteral percent)
+    {
+        writer.reset();
+
+        final Frame selectFrame = writer.startList(FrameTypeEnum.Select);
+        writer.sep("select");
+
+        final Frame selectListFrame =
+            writer.startList(FrameTypeEnum.SelectList);
+        for (ColumnDetail column : columnGroup) {
+            column.identifier.unparse(writer, 0, 0);
+            writer.sep(",");
+        }
+        final Frame countFuncFrame = writer.startFunCall("count");
+        writer.print("*");
+        writer.endFunCall(countFuncFrame);
+        writer.endList(selectListFrame);
+
+        writer.sep("from");
+        final Frame fromFrame = writer.startList(FrameTypeEnum.FromList);
+        tableName.unparse(writer, 0, 0);
+        if (percent != null) {
+            unparseTableSample(percent);
+        }
+        writer.endList(fromFrame);
+
+        writer.sep("group by");
+        final Frame groupByFrame = writer.startList(FrameTypeEnum.GroupByList);
+        for (int i = 0; i < columnGroup.size(); i++) {
+            if (i > 0) {
+                writer.sep(",");
+            }
+            columnGroup.get(i).identifier.unparse(writer, 0, 0);
+        }
+        writer.endList(groupByFrame);
+        writer.endList(selectFrame);
+
+        return writer.toString();
+    }
+
+    /**
+     * Writes a TABLESAMPLE clause, repeatable if a seed has been set.
+     *
+     * @param percent sampling percentage
+     */
+    private void unparseTableSample(SqlNumericLiteral percent)
+    {
+        // Use system sampling for performance.  Farrago will revert to
+        // Bernoulli sampling if system sampling is not available for
+        // this table.
+        Frame frame = writer.startFunCall("tablesample system");
+        percent.unparse(writer, 0, 0);
+        writer.endFunCall(frame);
+
+        if (sampleRepeatableSeed != null) {
+            frame = writer.startFunCall("repeatable");
+            writer.literal(sampleRepeatableSeed.toString());
+            writer.endFunCall(frame);
+        }
     }
 
     /**
-     * Generate a query to generate a columns distribution. If the {@link
-     * #estimate} flag is set, the query uses the TABLESAMPLE keyword to sample
-     * the column's data.
+     * Generate a query to generate a columns distribution. During a {@link
+     * #refresh}, the query reads only rows in the given range of LCS_RIDs.
+     * A personality may start its scan of the column at the least LCS_RID
+     * in the range, as LucidDB does, but the filter rules out answering the
+     * query from an index; so otherwise the query is left as it was.
+     *
+     * @param columnName name of column
+     * @param sample if true, the query uses the TABLESAMPLE keyword to sample
+     * the column's data
+     * @param fromRowId least LCS_RID to read, during a refresh
      */
-    private String getColumnDistributionQuery(SqlIdentifier columnName)
+    private String getColumnDistributionQuery(
+        SqlIdentifier columnName,
+        boolean sample,
+        long fromRowId)
     {
         writer.reset();
 
@@ -806,23 +1543,27 @@ public class DdlAnalyzeStmt
         final Frame fromFrame = writer.startList(FrameTypeEnum.FromList);
         tableName.unparse(writer, 0, 0);
 
-        if (estimate) {
-            // Use system sampling for performance.  Farrago will revert to
-            // Bernoulli sampling if system sampling is not available for
-            // this table.
-            Frame frame = writer.startFunCall("tablesample system");
-            samplePercent.unparse(writer, 0, 0);
-            writer.endFunCall(frame);
-
-            if (sampleRepeatableSeed != null) {
-                frame = writer.startFunCall("repeatable");
-                writer.literal(sampleRepeatableSeed.toString());
-                writer.endFunCall(frame);
-            }
+        if (sample) {
+            unparseTableSample(samplePercent);
         }
 
         writer.endList(fromFrame);
 
+        if (refresh) {
+            writer.sep("where");
+            final Frame whereFrame = writer.startList(FrameTypeEnum.WhereList);
+            if (fromRowId > 0) {
+                unparseRowId(columnName);
+                writer.sep(">=");
+                writer.literal(Long.toString(fromRowId));
+                writer.sep("and");
+            }
+            unparseRowId(columnName);
+            writer.sep("<");
+            writer.literal(rowIdLimit.toString());
+            writer.endList(whereFrame);
+        }
+
         writer.sep("group by");
         final Frame groupByFrame = writer.startList(FrameTypeEnum.GroupByList);
         columnName.unparse(writer, 0, 0);
@@ -908,6 +1649,7 @@ public class DdlAnalyzeStmt
      * @param rowsPerBar the number of rows per bar
      * @param estimator an estimator to populate with data from the result set;
      * may be null
+     * @param summary summary to populate with data from the result set
      *
      * @return a list of {@link ColumnHistogramBar} instances
      *
@@ -916,68 +1658,48 @@ public class DdlAnalyzeStmt
     private List<ColumnHistogramBar> buildBars(
         ResultSet resultSet,
         long rowsPerBar,
-        FarragoCardinalityEstimator estimator)
+        FarragoCardinalityEstimator estimator,
+        ValueSummary summary)
         throws SQLException
     {
-        List<ColumnHistogramBar> bars = new LinkedList<ColumnHistogramBar>();
-        boolean newBar = true;
-        String barStartValue = null;
-        long barValueCount = 0;
-        long barRowCount = 0;
+        BarBuilder builder = new BarBuilder(rowsPerBar);
 
         while (resultSet.next()) {
-            Object o = resultSet.getObject(1);
-            String nextValue;
-            if (o == null) {
-                nextValue = null;
-            } else if (o instanceof byte []) {
-                nextValue =
-                    ConversionUtil.toStringFromByteArray((byte []) o, 16);
-            } else {
-                nextValue = resultSet.getString(1);
-            }
+            String nextValue = getValue(resultSet, 1);
             long nextRows = resultSet.getLong(2);
 
             if (estimator != null) {
                 estimator.addSampleClass(nextRows, nextValue == null);
             }
-
-            if (newBar) {
-                barStartValue = nextValue;
-                barValueCount = 0;
-                barRowCount = 0;
-                newBar = false;
-            }
-            barValueCount++;
-            barRowCount += nextRows;
-
-            while (barRowCount >= rowsPerBar) {
-                ColumnHistogramBar bar =
-                    new ColumnHistogramBar(barStartValue, barValueCount);
-                bars.add(bar);
-
-                barRowCount -= rowsPerBar;
-                if (barRowCount > 0) {
-                    // the next bar starts with the current value
-                    barStartValue = nextValue;
-                    barValueCount = 0;
-                } else {
-                    newBar = true;
-                }
-            }
+            summary.add(nextValue, nextRows);
+            builder.add(nextValue, nextRows, 1);
         }
 
-        // build partial last bars
-        if (barRowCount > 0) {
-            bars.add(new ColumnHistogramBar(barStartValue, barValueCount));
-        }
+        return builder.finish();
+    }
 
-        if (bars.size() > MAX_HISTOGRAM_BAR_COUNT) {
-            throw FarragoResource.instance().ValidatorAnalyzeInvalidRowCount.ex(
-                tableName.toString());
+    /**
+     * Reads the value of the current row of a column distribution query, as
+     * it is represented in a histogram.
+     *
+     * @param resultSet column distribution query result set
+     * @param column 1-based index of the column in the result set
+     *
+     * @return value, or null
+     *
+     * @throws SQLException if there's an error reading the result set
+     */
+    private String getValue(ResultSet resultSet, int column)
+        throws SQLException
+    {
+        Object o = resultSet.getObject(column);
+        if (o == null) {
+            return null;
+        } else if (o instanceof byte []) {
+            return ConversionUtil.toStringFromByteArray((byte []) o, 16);
+        } else {
+            return resultSet.getString(column);
         }
-
-        return bars;
     }
 
     /**
@@ -1183,9 +1905,6 @@ public class DdlAnalyzeStmt
         Collection<Histogram> histograms,
         List<IndexDetail> indexDetails)
     {
-        final float rate =
-            estimate ? samplePercent.bigDecimalValue().floatValue() : 100.0f;
-
         FarragoCatalogUtil.updateRowCount(
             femTable,
             rowCount,
@@ -1194,6 +1913,14 @@ public class DdlAnalyzeStmt
             repos);
 
         for (Histogram histogram : histograms) {
+            // carry the column group statistics forward, since updating the
+            // histogram may create a new record
+            FemAbstractColumn column = histogram.column.getColumn();
+            String columnGroups =
+                getColumnGroupStatistics(
+                    FarragoCatalogUtil.getHistogram(column, null),
+                    histogram.column.ordinal);
+
             List<FemColumnHistogramBar> femBars =
                 new LinkedList<FemColumnHistogramBar>();
             buildFemBars(histogram, femBars);
@@ -1202,12 +1929,20 @@ public class DdlAnalyzeStmt
                 histogram.column.getColumn(),
                 histogram.distinctValues,
                 histogram.distinctValuesEstimated,
-                rate,
+                histogram.percentageSampled,
                 histogram.sampleSize,
                 histogram.barCount,
                 histogram.rowsPerBar,
                 histogram.rowsLastBar,
-                femBars);
+                femBars,
+                histogram.summary.nullCount,
+                histogram.summary.mostCommonValues.toString(),
+                histogram.summary.sketch.toString(),
+                rowIdLimit);
+            FarragoCatalogUtil.updateColumnGroupStatistics(
+                repos,
+                column,
+                columnGroups);
         }
 
         for (IndexDetail indexDetail : indexDetails) {
@@ -1218,6 +1953,40 @@ public class DdlAnalyzeStmt
         }
     }
 
+    /**
+     * Returns the encoded statistics of the column groups led by a column:
+     * those just computed, and any others previously computed.
+     *
+     * @param histogram the column's latest histogram, or null
+     * @param ordinal ordinal of the column
+     *
+     * @return encoded {@link FarragoColumnGroupStatistics} list, or null
+     */
+    private String getColumnGroupStatistics(
+        FemColumnHistogram histogram,
+        int ordinal)
+    {
+        List<FarragoColumnGroupStatistics> groups =
+            FarragoColumnGroupStatistics.parseList(
+                (histogram == null) ? null
+                : histogram.getColumnGroupStatistics());
+        for (FarragoColumnGroupStatistics groupStats : columnGroupStats) {
+            if (groupStats.getLeadingOrdinal() != ordinal) {
+                continue;
+            }
+            Iterator<FarragoColumnGroupStatistics> iter = groups.iterator();
+            while (iter.hasNext()) {
+                if (iter.next().getColumnOrdinals().equals(
+                        groupStats.getColumnOrdinals()))
+                {
+                    iter.remove();
+                }
+            }
+            groups.add(groupStats);
+        }
+        return FarragoColumnGroupStatistics.toString(groups);
+    }
+
     //~ Inner Classes ----------------------------------------------------------
 
     /**
@@ -1233,6 +2002,12 @@ public class DdlAnalyzeStmt
         long rowsLastBar;
         long sampleSize;
         List<ColumnHistogramBar> bars;
+        ValueSummary summary;
+        float percentageSampled;
+
+        // For a histogram read from the catalog, the bound on the LCS_RIDs
+        // of the rows it reflects.
+        long analyzedRowCount;
 
         Histogram(
             ColumnDetail column,
@@ -1242,7 +2017,9 @@ public class DdlAnalyzeStmt
             long rowsPerBar,
             long rowsLastBar,
             long sampleSize,
-            List<ColumnHistogramBar> bars)
+            List<ColumnHistogramBar> bars,
+            ValueSummary summary,
+            float percentageSampled)
         {
             this.column = column;
             this.distinctValues = distinctValues;
@@ -1252,6 +2029,13 @@ public class DdlAnalyzeStmt
             this.rowsLastBar = rowsLastBar;
             this.sampleSize = sampleSize;
             this.bars = bars;
+            this.summary = summary;
+            this.percentageSampled = percentageSampled;
+        }
+
+        long getBarRowCount(int ordinal)
+        {
+            return (ordinal == (barCount - 1)) ? rowsLastBar : rowsPerBar;
         }
     }
 
@@ -1270,6 +2054,152 @@ public class DdlAnalyzeStmt
         }
     }
 
+    /**
+     * Class used to cut a sequence of values, in order, into histogram bars of
+     * equal depth
+     */
+    private class BarBuilder
+    {
+        private final long rowsPerBar;
+        private final List<ColumnHistogramBar> bars;
+        private boolean newBar;
+        private String barStartValue;
+        private long barValueCount;
+        private long barRowCount;
+
+        BarBuilder(long rowsPerBar)
+        {
+            this.rowsPerBar = rowsPerBar;
+            this.bars = new LinkedList<ColumnHistogramBar>();
+            this.newBar = true;
+        }
+
+        /**
+         * Adds a class of rows, all with values no less than those added
+         * before.
+         *
+         * @param value least value of the class
+         * @param rowCount number of rows in the class
+         * @param valueCount number of distinct values in the class
+         */
+        void add(String value, long rowCount, long valueCount)
+        {
+            if (newBar) {
+                barStartValue = value;
+                barValueCount = 0;
+                barRowCount = 0;
+                newBar = false;
+            }
+            barValueCount += valueCount;
+            barRowCount += rowCount;
+
+            while (barRowCount >= rowsPerBar) {
+                ColumnHistogramBar bar =
+                    new ColumnHistogramBar(barStartValue, barValueCount);
+                bars.add(bar);
+
+                barRowCount -= rowsPerBar;
+                if (barRowCount > 0) {
+                    // the next bar starts with the current value
+                    barStartValue = value;
+                    barValueCount = 0;
+                } else {
+                    newBar = true;
+                }
+            }
+        }
+
+        /**
+         * Returns the bars, including a partial last bar.
+         */
+        List<ColumnHistogramBar> finish()
+        {
+            if (!newBar && (barRowCount > 0)) {
+                bars.add(new ColumnHistogramBar(barStartValue, barValueCount));
+            }
+
+            if (bars.size() > MAX_HISTOGRAM_BAR_COUNT) {
+                throw FarragoResource.instance()
+                    .ValidatorAnalyzeInvalidRowCount.ex(tableName.toString());
+            }
+
+            return bars;
+        }
+    }
+
+    /**
+     * Class used to summarize the values of a column other than by histogram
+     * bars: the number of null values, the most common values and a sketch of
+     * the distinct values
+     */
+    private class ValueSummary
+    {
+        long nullCount;
+        final FarragoMostCommonValues mostCommonValues;
+        final FarragoDistinctValueSketch sketch;
+
+        ValueSummary()
+        {
+            this(
+                0L,
+                new FarragoMostCommonValues(),
+                new FarragoDistinctValueSketch());
+        }
+
+        ValueSummary(
+            long nullCount,
+            FarragoMostCommonValues mostCommonValues,
+            FarragoDistinctValueSketch sketch)
+        {
+            this.nullCount = nullCount;
+            this.mostCommonValues = mostCommonValues;
+            this.sketch = sketch;
+        }
+
+        void add(String value, long rowCount)
+        {
+            if (value == null) {
+                nullCount += rowCount;
+            } else {
+                mostCommonValues.add(value, rowCount);
+                sketch.add(value);
+            }
+        }
+    }
+
+    /**
+     * Class used to compare values as they are represented in histograms, in
+     * the order of the column distribution query: nulls first, numbers by
+     * value, and other types as strings
+     */
+    private class ValueComparator
+        implements Comparator<String>
+    {
+        private final boolean numeric;
+
+        ValueComparator(boolean numeric)
+        {
+            this.numeric = numeric;
+        }
+
+        public int compare(String v1, String v2)
+        {
+            if (v1 == null) {
+                return (v2 == null) ? 0 : -1;
+            } else if (v2 == null) {
+                return 1;
+            }
+            if (numeric) {
+                try {
+                    return new BigDecimal(v1).compareTo(new BigDecimal(v2));
+                } catch (NumberFormatException e) {
+                    // e.g. NaN; fall back to comparing strings
+                }
+            }
+            return v1.compareTo(v2);
+        }
+    }
+
     /**
      * ColumnDetail stores details about a column being analyzed.
      */
@@ -1280,6 +2210,11 @@ public class DdlAnalyzeStmt
         private final String columnMofId;
         private final SqlIdentifier identifier;
         private final int ordinal;
+        private final boolean numeric;
+
+        // If the column's histogram can be maintained incrementally, the
+        // histogram as last computed.
+        private Histogram priorHistogram;
 
         private ColumnDetail(
             FemAbstractColumn column,
@@ -1291,6 +2226,12 @@ public class DdlAnalyzeStmt
             this.identifier = identifier;
 
             this.ordinal = column.getOrdinal();
+
+            SqlTypeName typeName =
+                SqlTypeName.get(column.getType().getName());
+            this.numeric =
+                (typeName != null)
+                && (typeName.getFamily() == SqlTypeFamily.NUMERIC);
         }
 
         public boolean equals(Object other)
@@ -1316,6 +2257,11 @@ public class DdlAnalyzeStmt
             column = null;
         }
 
+        public Comparator<String> getValueComparator()
+        {
+            return new ValueComparator(numeric);
+        }
+
         public FemAbstractColumn getColumn()
         {
             if (column == null) {
@@ -22,10 +22,13 @@
 */
 package net.sf.farrago.defimpl;
 
+import java.util.regex.*;
+
 import net.sf.farrago.fem.config.*;
 import net.sf.farrago.fennel.rel.*;
 import net.sf.farrago.query.*;
 import net.sf.farrago.session.*;
+import net.sf.farrago.util.*;
 
 import org.eigenbase.oj.rel.*;
 import org.eigenbase.rel.*;
@@ -65,6 +68,16 @@ public class FarragoDefaultPlanner
         // Yon Cassius has a lean and hungry look.
         ambitious = true;
 
+        // But he need not think so much.
+        FarragoProperties props = FarragoProperties.instance();
+        setConcurrency(props.plannerConcurrency.get());
+        setConcurrentRuleFilter(
+            Pattern.compile(props.plannerConcurrentRules.get()));
+        setTimeBudget(props.plannerTimeBudget.get());
+        setCostImprovementBudget(
+            props.plannerMinCostImprovement.get(),
+            props.plannerCostImprovementWindow.get());
+
         // Create a new CallingConvention trait definition that will store
         // the graph of possible conversions and handle the creation of
         // converters.
@@ -93,6 +93,15 @@ public class FarragoDefaultSessionPersonality
     public static final String CACHE_STATEMENTS = "cacheStatements";
     public static final String CACHE_STATEMENTS_DEFAULT = "true";
 
+    /**
+     * Whether plan-neutral literals in queries should be replaced with hidden
+     * dynamic parameters before looking up the code cache, so that queries
+     * differing only in those literals share a cached plan
+     */
+    public static final String CACHE_NORMALIZED_STATEMENTS =
+        "cacheNormalizedStatements";
+    public static final String CACHE_NORMALIZED_STATEMENTS_DEFAULT = "false";
+
     /**
      * Whether DDL validation should be done at prepare time
      */
@@ -149,6 +158,9 @@ public class FarragoDefaultSessionPersonality
         paramValidator.registerBoolParam(
             CACHE_STATEMENTS,
             false);
+        paramValidator.registerBoolParam(
+            CACHE_NORMALIZED_STATEMENTS,
+            false);
         paramValidator.registerBoolParam(
             VALIDATE_DDL_ON_PREPARE,
             false);
@@ -489,6 +501,9 @@ public class FarragoDefaultSessionPersonality
         variables.setDefault(
             CACHE_STATEMENTS,
             CACHE_STATEMENTS_DEFAULT);
+        variables.setDefault(
+            CACHE_NORMALIZED_STATEMENTS,
+            CACHE_NORMALIZED_STATEMENTS_DEFAULT);
         variables.setDefault(
             VALIDATE_DDL_ON_PREPARE,
             VALIDATE_DDL_ON_PREPARE_DEFAULT);
@@ -71,6 +71,32 @@ public interface FennelDbHandle
     public String getAccessorXmiForTupleDescriptorTraced(
         FemTupleDescriptor tupleDesc);
 
+    /**
+     * Constructs a FemTupleAccessor for a FemTupleDescriptor, reusing the
+     * result of an earlier call for an equivalent descriptor if possible. This
+     * shouldn't be called directly except from FennelRelUtil.
+     *
+     * @param callerFactory factory in whose Fennel package the accessor is to
+     * be created
+     * @param tupleDesc source FemTupleDescriptor
+     *
+     * @return new FemTupleAccessor
+     */
+    public FemTupleAccessor getAccessorForTupleDescriptor(
+        FarragoMetadataFactory callerFactory,
+        FemTupleDescriptor tupleDesc);
+
+    /**
+     * Gets the codec used for exchanging Fem object graphs (such as stream
+     * graph plans) in binary form rather than as XMI.
+     *
+     * @param callerFactory factory in whose Fennel package decoded objects are
+     * to be created
+     *
+     * @return codec
+     */
+    public FennelPlanCodec getPlanCodec(FarragoMetadataFactory callerFactory);
+
     /**
      * Executes a FemCmd object. If the command produces a resultHandle, it will
      * be set after successful execution.
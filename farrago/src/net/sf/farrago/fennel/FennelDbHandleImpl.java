@@ -56,11 +56,20 @@ public class FennelDbHandleImpl
     private static final Logger jhTracer =
         FarragoTrace.getFennelJavaHandleTracer();
 
+    /**
+     * Maximum number of tuple accessors remembered by {@link
+     * #getAccessorForTupleDescriptor}.
+     */
+    private static final int ACCESSOR_CACHE_SIZE = 256;
+
     //~ Instance fields --------------------------------------------------------
 
     private final FarragoMetadataFactory metadataFactory;
     private final FennelCmdExecutor cmdExecutor;
     private Map<RefPackage, Collection<RefBaseObject>> handleAssociationsMap;
+    private final Map<RefClass, List<RefBaseObject>> cmdHandleAssociationsMap;
+    private final Map<RefPackage, FennelPlanCodec> planCodecMap;
+    private final Map<String, String> accessorCache;
     private long dbHandle;
 
     //~ Constructors -----------------------------------------------------------
@@ -86,6 +95,17 @@ public class FennelDbHandleImpl
 
         handleAssociationsMap =
             new HashMap<RefPackage, Collection<RefBaseObject>>();
+        cmdHandleAssociationsMap =
+            new HashMap<RefClass, List<RefBaseObject>>();
+        planCodecMap = new HashMap<RefPackage, FennelPlanCodec>();
+        accessorCache =
+            new LinkedHashMap<String, String>(16, 0.75f, true) {
+                protected boolean removeEldestEntry(
+                    Map.Entry<String, String> eldest)
+                {
+                    return size() > ACCESSOR_CACHE_SIZE;
+                }
+            };
 
         executeCmd(cmd);
         dbHandle = cmd.getResultHandle().getLongHandle();
@@ -129,6 +149,46 @@ public class FennelDbHandleImpl
         return handleAssociations;
     }
 
+    /**
+     * Gets the subset of the handle associations (see {@link
+     * #getHandleAssociations}) which apply to a particular command class.
+     * Since every command of a given class uses the same associations, the
+     * result is computed once per class.
+     *
+     * @param cmd command
+     *
+     * @return list of alternating RefAssociation and AssociationEnd
+     */
+    private synchronized List<RefBaseObject> getCmdHandleAssociations(
+        FemCmd cmd)
+    {
+        RefClass cmdClass = cmd.refClass();
+        List<RefBaseObject> cmdHandleAssociations =
+            cmdHandleAssociationsMap.get(cmdClass);
+        if (cmdHandleAssociations != null) {
+            return cmdHandleAssociations;
+        }
+
+        cmdHandleAssociations = new ArrayList<RefBaseObject>();
+        Collection handleAssociations =
+            getHandleAssociations(cmd.refImmediatePackage());
+        Iterator assocIter = handleAssociations.iterator();
+        while (assocIter.hasNext()) {
+            RefAssociation refAssoc = (RefAssociation) assocIter.next();
+            AssociationEnd assocEnd = (AssociationEnd) assocIter.next();
+            if (cmd.refIsInstanceOf(
+                    assocEnd.getType(),
+                    true))
+            {
+                cmdHandleAssociations.add(refAssoc);
+                cmdHandleAssociations.add(assocEnd);
+            }
+        }
+
+        cmdHandleAssociationsMap.put(cmdClass, cmdHandleAssociations);
+        return cmdHandleAssociations;
+    }
+
     /**
      * @param callerFactory override for metadataFactory
      *
@@ -168,6 +228,49 @@ public class FennelDbHandleImpl
         return xmiOutput;
     }
 
+    // implement FennelDbHandle
+    public FemTupleAccessor getAccessorForTupleDescriptor(
+        FarragoMetadataFactory callerFactory,
+        FemTupleDescriptor tupleDesc)
+    {
+        FennelPlanCodec codec = getPlanCodec(callerFactory);
+        String key = codec.encode(tupleDesc);
+        String encodedAccessor;
+        synchronized (accessorCache) {
+            encodedAccessor = accessorCache.get(key);
+        }
+        if (encodedAccessor != null) {
+            return (FemTupleAccessor) codec.decode(encodedAccessor);
+        }
+
+        String xmiOutput = getAccessorXmiForTupleDescriptorTraced(tupleDesc);
+        Collection<RefBaseObject> c =
+            JmiObjUtil.importFromXmiString(
+                callerFactory.getFennelPackage().refOutermostPackage(),
+                xmiOutput);
+        assert (c.size() == 1);
+        FemTupleAccessor tupleAccessor =
+            (FemTupleAccessor) c.iterator().next();
+        encodedAccessor = codec.encode(tupleAccessor);
+        synchronized (accessorCache) {
+            accessorCache.put(key, encodedAccessor);
+        }
+        return tupleAccessor;
+    }
+
+    // implement FennelDbHandle
+    public synchronized FennelPlanCodec getPlanCodec(
+        FarragoMetadataFactory callerFactory)
+    {
+        RefPackage fennelPackage = callerFactory.getFennelPackage();
+        FennelPlanCodec codec = planCodecMap.get(fennelPackage);
+        if (codec == null) {
+            codec = new FennelPlanCodec(fennelPackage);
+            planCodecMap.put(fennelPackage, codec);
+        }
+        return codec;
+    }
+
     /**
      * Executes a FemCmd object. If the command produces a resultHandle, it will
      * be set after successful execution.
@@ -207,23 +310,16 @@ public class FennelDbHandleImpl
             exportList.add(cmd);
         }
 
-        // TODO:  hash on cmd class instead of iterating below Handles require
-        // special treatment.  For tracing, input handles have to be added to
-        // exportList explicitly since they aren't reachable via composition
-        // associations.  So walk the handleAssociations list and determine
+        // Handles require special treatment.  For tracing, input handles
+        // have to be added to exportList explicitly since they aren't
+        // reachable via composition associations.  So walk the handle
+        // associations which apply to this command's class and determine
         // which handles this command uses.
         RefPackage fennelPackage = cmd.refImmediatePackage();
-        Collection handleAssociations = getHandleAssociations(fennelPackage);
-        Iterator assocIter = handleAssociations.iterator();
+        Iterator assocIter = getCmdHandleAssociations(cmd).iterator();
         while (assocIter.hasNext()) {
             RefAssociation refAssoc = (RefAssociation) assocIter.next();
             AssociationEnd assocEnd = (AssociationEnd) assocIter.next();
-            if (!cmd.refIsInstanceOf(
-                    assocEnd.getType(),
-                    true))
-            {
-                continue;
-            }
             if (assocEnd.otherEnd().getName().equals("ResultHandle")) {
                 // Act like a factory, producing a result handle of the
                 // appropriate subclass.  But don't add it to the export list
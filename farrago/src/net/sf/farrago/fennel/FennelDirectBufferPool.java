@@ -0,0 +1,134 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.fennel;
+
+import java.nio.*;
+
+import java.util.*;
+
+
+/**
+ * FennelDirectBufferPool keeps direct buffers for {@link
+ * FennelStreamGraph#fetch(FennelStreamHandle, ByteBuffer)} so that they can
+ * be reused from one cursor to the next. Direct buffers are expensive to
+ * allocate, and their memory is only reclaimed when the garbage collector
+ * gets round to finalizing them, so allocating one per cursor would be
+ * wasteful.
+ *
+ * <p>All buffers are in native byte order.
+ *
+ * @version $Id$
+ */
+public class FennelDirectBufferPool
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * Maximum number of idle buffers retained by the shared pool.
+     */
+    private static final int MAX_FREE_BUFFERS = 16;
+
+    private static final FennelDirectBufferPool instance =
+        new FennelDirectBufferPool(MAX_FREE_BUFFERS);
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final int maxFreeBuffers;
+    private final LinkedList<ByteBuffer> freeList;
+    private int allocationCount;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a pool.
+     *
+     * @param maxFreeBuffers maximum number of idle buffers to retain; buffers
+     * released beyond this are left to the garbage collector
+     */
+    public FennelDirectBufferPool(int maxFreeBuffers)
+    {
+        this.maxFreeBuffers = maxFreeBuffers;
+        freeList = new LinkedList<ByteBuffer>();
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * @return the pool shared by all cursors
+     */
+    public static FennelDirectBufferPool instance()
+    {
+        return instance;
+    }
+
+    /**
+     * Obtains a cleared buffer, reusing an idle one of the right size if there
+     * is one.
+     *
+     * @param size capacity of buffer in bytes
+     *
+     * @return buffer
+     */
+    public synchronized ByteBuffer allocate(int size)
+    {
+        Iterator<ByteBuffer> iter = freeList.iterator();
+        while (iter.hasNext()) {
+            ByteBuffer buffer = iter.next();
+            if (buffer.capacity() == size) {
+                iter.remove();
+                buffer.clear();
+                return buffer;
+            }
+        }
+        ++allocationCount;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+        buffer.order(ByteOrder.nativeOrder());
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool. The caller must not use the buffer
+     * afterwards.
+     *
+     * @param buffer buffer obtained from {@link #allocate}
+     */
+    public synchronized void release(ByteBuffer buffer)
+    {
+        assert buffer.isDirect();
+        if (freeList.size() >= maxFreeBuffers) {
+            // discard the least recently released buffer
+            freeList.removeFirst();
+        }
+        freeList.addLast(buffer);
+    }
+
+    /**
+     * @return number of buffers allocated by this pool since it was created,
+     * as opposed to reused
+     */
+    public synchronized int getAllocationCount()
+    {
+        return allocationCount;
+    }
+}
+
+// End FennelDirectBufferPool.java
@@ -0,0 +1,733 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.fennel;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.jmi.model.*;
+import javax.jmi.reflect.*;
+
+import org.eigenbase.jmi.*;
+import org.eigenbase.util.*;
+
+
+/**
+ * FennelPlanCodec encodes graphs of Fem objects (stream graph definitions,
+ * tuple descriptors, tuple accessors and so on) in a compact binary form, as a
+ * cheaper alternative to XMI. Encoding and decoding walk the metamodel
+ * reflectively, so every class in the Fennel package is supported, but no XML
+ * is written or parsed; decoding in particular is far cheaper than an XMI
+ * import, which otherwise dominates the preparation of small stream graphs.
+ *
+ * <p>An encoded graph is represented as a String holding one byte per
+ * character, so that it can be used anywhere an XMI plan string is used (as a
+ * code cache key, in a persisted statement, and so on). {@link #isEncoded}
+ * distinguishes the two representations. XMI remains the format of choice for
+ * tracing and debugging.
+ *
+ * <p>The encoding is positional: each object is written as its class name
+ * (once per class per graph) followed by the values of all of its changeable
+ * instance-level attributes and references, in the order returned by {@link
+ * JmiObjUtil#getFeatures}, so the encoder and decoder must agree on the
+ * metamodel. An object reachable more than once is written the first time it
+ * is encountered and referenced by ordinal thereafter.
+ *
+ * <p>The header of an encoded graph records the length the graph would have
+ * as XMI (see {@link #getXmiLength}), so that estimates calibrated against
+ * XMI plans, such as the code cache's estimate of the memory used by a
+ * stream graph, apply equally to encoded plans. The length is estimated
+ * while encoding, from the XMI markup each object, attribute and reference
+ * would produce, rather than by writing the XMI.
+ *
+ * <p>Instances are safe for use by multiple threads.
+ *
+ * @version $Id$
+ */
+public class FennelPlanCodec
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * First character of every encoded graph. XMI always starts with '&lt;',
+     * so this is sufficient to tell the two apart.
+     */
+    private static final char MAGIC = '\u00fe';
+
+    private static final int VERSION = 2;
+
+    /**
+     * Offset of the estimated XMI length, an 8-byte fixed value, in an
+     * encoded graph
+     */
+    private static final int XMI_LENGTH_OFFSET = 2;
+
+    /**
+     * Length of the declaration, header and enclosing elements of an XMI
+     * document, apart from its content
+     */
+    private static final int XMI_DOCUMENT_LENGTH = 350;
+
+    /**
+     * Length of the namespace prefix of an element name in a Fennel plan
+     * exported as XMI; "FEMFennel:"
+     */
+    private static final int XMI_PREFIX_LENGTH = 10;
+
+    /**
+     * Length of the markup of an object in XMI, apart from its attributes and
+     * twice its qualified class name:
+     * <code>&lt; xmi.id = 'a12'&gt;</code> and <code>&lt;/&gt;</code> with
+     * their indentation and line breaks
+     */
+    private static final int XMI_OBJECT_LENGTH = 40;
+
+    /**
+     * Length of the markup of an attribute in XMI, apart from its name and
+     * value: <code> = ''</code> and a separating space or line break
+     */
+    private static final int XMI_ATTRIBUTE_LENGTH = 6;
+
+    /**
+     * Length of the markup of a reference in XMI, apart from twice its
+     * qualified name: <code>&lt;&gt;</code> and <code>&lt;/&gt;</code> with
+     * their indentation and line breaks
+     */
+    private static final int XMI_REFERENCE_LENGTH = 25;
+
+    /**
+     * Length of the markup of each object referred to by a reference in XMI,
+     * apart from its qualified class name:
+     * <code>&lt; xmi.idref = 'a12'/&gt;</code> with its indentation and line
+     * break
+     */
+    private static final int XMI_IDREF_LENGTH = 35;
+
+    private static final int TAG_NULL = 0;
+    private static final int TAG_FALSE = 1;
+    private static final int TAG_TRUE = 2;
+    private static final int TAG_INT = 3;
+    private static final int TAG_LONG = 4;
+    private static final int TAG_DOUBLE = 5;
+    private static final int TAG_FLOAT = 6;
+    private static final int TAG_STRING = 7;
+    private static final int TAG_ENUM = 8;
+    private static final int TAG_OBJECT = 9;
+    private static final int TAG_OBJECT_REF = 10;
+    private static final int TAG_COLLECTION = 11;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final Map<String, RefClass> refClassMap;
+
+    private final ConcurrentMap<RefClass, ClassInfo> classInfoMap;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new FennelPlanCodec.
+     *
+     * @param fennelPackage package in which decoded objects are to be created
+     */
+    public FennelPlanCodec(RefPackage fennelPackage)
+    {
+        refClassMap = new HashMap<String, RefClass>();
+        for (Object o : fennelPackage.refAllClasses()) {
+            RefClass refClass = (RefClass) o;
+            refClassMap.put(
+                JmiObjUtil.getMetaObjectName(refClass),
+                refClass);
+        }
+        classInfoMap = new ConcurrentHashMap<RefClass, ClassInfo>();
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Tests whether a plan string was produced by {@link #encode} (as opposed
+     * to being XMI).
+     *
+     * @param plan plan string
+     *
+     * @return true if plan is in binary form
+     */
+    public static boolean isEncoded(String plan)
+    {
+        return (plan.length() > 0) && (plan.charAt(0) == MAGIC);
+    }
+
+    /**
+     * Returns the length, in characters, which the graph encoded in a plan
+     * string would have as XMI. The length is an estimate, recorded when the
+     * graph was encoded.
+     *
+     * @param encoding encoded graph
+     *
+     * @return estimated length of the graph as XMI
+     */
+    public static long getXmiLength(String encoding)
+    {
+        assert isEncoded(encoding);
+        int version = encoding.charAt(1) & 0xFF;
+        if (version != VERSION) {
+            throw Util.newInternal(
+                "unsupported Fennel plan encoding version " + version);
+        }
+        long xmiLength = 0;
+        for (int i = 0; i < 8; ++i) {
+            xmiLength |=
+                ((long) (encoding.charAt(XMI_LENGTH_OFFSET + i) & 0xFF))
+                << (8 * i);
+        }
+        return xmiLength;
+    }
+
+    /**
+     * Encodes an object together with everything reachable from it.
+     *
+     * @param root object to encode
+     *
+     * @return encoded graph
+     */
+    public String encode(RefObject root)
+    {
+        Encoder encoder = new Encoder();
+        encoder.writeObject(root);
+        return encoder.finish();
+    }
+
+    /**
+     * Decodes a graph produced by {@link #encode}, creating new objects in
+     * this codec's package.
+     *
+     * @param encoding encoded graph
+     *
+     * @return new copy of the root object
+     */
+    public RefObject decode(String encoding)
+    {
+        Decoder decoder = new Decoder(encoding);
+        RefObject root = (RefObject) decoder.readValue(null, null);
+        decoder.linkReferences();
+        return root;
+    }
+
+    private ClassInfo getClassInfo(RefClass refClass)
+    {
+        ClassInfo classInfo = classInfoMap.get(refClass);
+        if (classInfo == null) {
+            // racing threads compute equivalent results, so it doesn't
+            // matter whose copy ends up in the map
+            classInfo = new ClassInfo(refClass);
+            classInfoMap.put(refClass, classInfo);
+        }
+        return classInfo;
+    }
+
+    private ClassInfo getClassInfo(String className)
+    {
+        RefClass refClass = refClassMap.get(className);
+        if (refClass == null) {
+            throw Util.newInternal(
+                "unknown class " + className + " in encoded Fennel plan");
+        }
+        return getClassInfo(refClass);
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Describes the features of a class in encoding order.
+     */
+    private static class ClassInfo
+    {
+        final RefClass refClass;
+        final String name;
+        final StructuralFeature [] features;
+        final boolean [] isOrderedMultiReference;
+
+        /**
+         * Length of the qualified name of each feature as an XMI element,
+         * for references, or of the name of each feature, for attributes
+         */
+        final int [] xmiFeatureNameLengths;
+
+        ClassInfo(RefClass refClass)
+        {
+            this.refClass = refClass;
+            name = JmiObjUtil.getMetaObjectName(refClass);
+            List<StructuralFeature> list = new ArrayList<StructuralFeature>();
+            for (
+                StructuralFeature feature
+                : JmiObjUtil.getFeatures(
+                    refClass,
+                    StructuralFeature.class,
+                    true))
+            {
+                if (!feature.isChangeable()) {
+                    continue;
+                }
+                if ((feature instanceof Attribute)
+                    && ((Attribute) feature).isDerived())
+                {
+                    continue;
+                }
+                list.add(feature);
+            }
+            features = list.toArray(new StructuralFeature[list.size()]);
+            isOrderedMultiReference = new boolean[features.length];
+            xmiFeatureNameLengths = new int[features.length];
+            for (int i = 0; i < features.length; ++i) {
+                MultiplicityType multiplicity = features[i].getMultiplicity();
+                isOrderedMultiReference[i] =
+                    (features[i] instanceof Reference)
+                    && (multiplicity.getUpper() != 1)
+                    && multiplicity.isOrdered();
+                xmiFeatureNameLengths[i] = features[i].getName().length();
+                if (features[i] instanceof Reference) {
+                    // e.g. FEMFennel:FemMergeStreamDef.inputFlow
+                    xmiFeatureNameLengths[i] +=
+                        XMI_PREFIX_LENGTH + name.length() + 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes one graph. Each byte occupies one character of the buffer.
+     */
+    private class Encoder
+    {
+        final StringBuilder buf;
+        final Map<RefObject, Integer> objectOrdinals;
+        final Map<RefClass, Integer> classOrdinals;
+
+        /**
+         * Estimated length of the objects written so far, as XMI
+         */
+        long xmiLength;
+
+        Encoder()
+        {
+            buf = new StringBuilder();
+            objectOrdinals = new IdentityHashMap<RefObject, Integer>();
+            classOrdinals = new HashMap<RefClass, Integer>();
+            buf.append(MAGIC);
+            writeByte(VERSION);
+
+            // placeholder for the XMI length, filled in by finish
+            writeFixed(0);
+            xmiLength = XMI_DOCUMENT_LENGTH;
+        }
+
+        /**
+         * Completes the graph once its root has been written.
+         *
+         * @return encoded graph
+         */
+        String finish()
+        {
+            long v = xmiLength;
+            for (int i = 0; i < 8; ++i) {
+                buf.setCharAt(XMI_LENGTH_OFFSET + i, (char) (v & 0xFF));
+                v >>>= 8;
+            }
+            return buf.toString();
+        }
+
+        void writeByte(int b)
+        {
+            buf.append((char) (b & 0xFF));
+        }
+
+        void writeUnsigned(long v)
+        {
+            while ((v & ~0x7FL) != 0) {
+                writeByte((int) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            writeByte((int) v);
+        }
+
+        void writeSigned(long v)
+        {
+            // zigzag, so that small negative values (e.g. -1 for "unset")
+            // stay small
+            writeUnsigned((v << 1) ^ (v >> 63));
+        }
+
+        void writeFixed(long v)
+        {
+            for (int i = 0; i < 8; ++i) {
+                writeByte((int) v);
+                v >>>= 8;
+            }
+        }
+
+        void writeString(String s)
+        {
+            int n = s.length();
+            writeUnsigned(n);
+            for (int i = 0; i < n; ++i) {
+                writeUnsigned(s.charAt(i));
+            }
+        }
+
+        void writeValue(Object value)
+        {
+            if (value == null) {
+                writeByte(TAG_NULL);
+            } else if (value instanceof RefObject) {
+                writeObject((RefObject) value);
+            } else if (value instanceof Collection) {
+                Collection<?> collection = (Collection<?>) value;
+                writeByte(TAG_COLLECTION);
+                writeUnsigned(collection.size());
+                for (Object o : collection) {
+                    writeValue(o);
+                }
+            } else if (value instanceof Boolean) {
+                writeByte(((Boolean) value) ? TAG_TRUE : TAG_FALSE);
+            } else if (value instanceof Integer) {
+                writeByte(TAG_INT);
+                writeSigned((Integer) value);
+            } else if (value instanceof Long) {
+                writeByte(TAG_LONG);
+                writeSigned((Long) value);
+            } else if (value instanceof Double) {
+                writeByte(TAG_DOUBLE);
+                writeFixed(Double.doubleToLongBits((Double) value));
+            } else if (value instanceof Float) {
+                writeByte(TAG_FLOAT);
+                writeFixed(Float.floatToIntBits((Float) value));
+            } else if (value instanceof String) {
+                writeByte(TAG_STRING);
+                writeString((String) value);
+            } else if (value instanceof RefEnum) {
+                writeByte(TAG_ENUM);
+                writeString(value.toString());
+            } else {
+                throw Util.newInternal(
+                    "cannot encode value of " + value.getClass());
+            }
+        }
+
+        void writeObject(RefObject obj)
+        {
+            Integer ordinal = objectOrdinals.get(obj);
+            if (ordinal != null) {
+                writeByte(TAG_OBJECT_REF);
+                writeUnsigned(ordinal);
+                return;
+            }
+            objectOrdinals.put(obj, objectOrdinals.size());
+
+            writeByte(TAG_OBJECT);
+            ClassInfo classInfo = getClassInfo(obj.refClass());
+            Integer classOrdinal = classOrdinals.get(classInfo.refClass);
+            if (classOrdinal == null) {
+                // first occurrence of this class:  define the next ordinal
+                int newOrdinal = classOrdinals.size();
+                classOrdinals.put(classInfo.refClass, newOrdinal);
+                writeUnsigned(newOrdinal);
+                writeString(classInfo.name);
+            } else {
+                writeUnsigned(classOrdinal);
+            }
+            xmiLength +=
+                XMI_OBJECT_LENGTH
+                + (2 * (XMI_PREFIX_LENGTH + classInfo.name.length()));
+            StructuralFeature [] features = classInfo.features;
+            for (int i = 0; i < features.length; ++i) {
+                Object value = obj.refGetValue(features[i]);
+                addXmiLength(classInfo, i, value);
+                writeValue(value);
+            }
+        }
+
+        /**
+         * Adds the estimated length of a feature value as XMI, not counting
+         * objects which it contains, to {@link #xmiLength}. Like XMI, the
+         * estimate leaves out null attributes and empty references.
+         */
+        void addXmiLength(ClassInfo classInfo, int iFeature, Object value)
+        {
+            if (value == null) {
+                return;
+            }
+            int nameLength = classInfo.xmiFeatureNameLengths[iFeature];
+            if (!(classInfo.features[iFeature] instanceof Reference)) {
+                if (value instanceof Collection) {
+                    for (Object o : (Collection<?>) value) {
+                        xmiLength +=
+                            XMI_ATTRIBUTE_LENGTH + nameLength
+                            + String.valueOf(o).length();
+                    }
+                } else {
+                    xmiLength +=
+                        XMI_ATTRIBUTE_LENGTH + nameLength
+                        + String.valueOf(value).length();
+                }
+                return;
+            }
+            Collection<?> targets =
+                (value instanceof Collection) ? (Collection<?>) value
+                : Collections.singleton(value);
+            if (targets.isEmpty()) {
+                return;
+            }
+            xmiLength += XMI_REFERENCE_LENGTH + (2 * nameLength);
+            for (Object target : targets) {
+                ClassInfo targetInfo =
+                    getClassInfo(((RefObject) target).refClass());
+                xmiLength +=
+                    XMI_IDREF_LENGTH + XMI_PREFIX_LENGTH
+                    + targetInfo.name.length();
+            }
+        }
+    }
+
+    /**
+     * Reads one graph. Attributes are set as objects are read, but references
+     * are only linked once all objects exist (see {@link #linkReferences}).
+     */
+    private class Decoder
+    {
+        final String buf;
+        int pos;
+        final List<RefObject> objects;
+        final List<ClassInfo> classes;
+        final List<PendingLink> orderedLinks;
+        final List<PendingLink> otherLinks;
+
+        Decoder(String buf)
+        {
+            this.buf = buf;
+            objects = new ArrayList<RefObject>();
+            classes = new ArrayList<ClassInfo>();
+            orderedLinks = new ArrayList<PendingLink>();
+            otherLinks = new ArrayList<PendingLink>();
+            if (!isEncoded(buf)) {
+                throw Util.newInternal("not an encoded Fennel plan");
+            }
+            pos = 1;
+            int version = readByte();
+            if (version != VERSION) {
+                throw Util.newInternal(
+                    "unsupported Fennel plan encoding version " + version);
+            }
+
+            // skip the XMI length
+            pos = XMI_LENGTH_OFFSET + 8;
+        }
+
+        int readByte()
+        {
+            return buf.charAt(pos++) & 0xFF;
+        }
+
+        long readUnsigned()
+        {
+            long v = 0;
+            for (int shift = 0;; shift += 7) {
+                int b = readByte();
+                v |= ((long) (b & 0x7F)) << shift;
+                if ((b & 0x80) == 0) {
+                    return v;
+                }
+            }
+        }
+
+        long readSigned()
+        {
+            long v = readUnsigned();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        long readFixed()
+        {
+            long v = 0;
+            for (int i = 0; i < 8; ++i) {
+                v |= ((long) readByte()) << (8 * i);
+            }
+            return v;
+        }
+
+        String readString()
+        {
+            int n = (int) readUnsigned();
+            char [] chars = new char[n];
+            for (int i = 0; i < n; ++i) {
+                chars[i] = (char) readUnsigned();
+            }
+            return new String(chars);
+        }
+
+        /**
+         * Reads a value.
+         *
+         * @param refClass class of the object being read
+         * @param attr attribute being read, used for resolving enumeration
+         * literals; null if the value cannot be an enumeration
+         *
+         * @return value read
+         */
+        Object readValue(RefClass refClass, Attribute attr)
+        {
+            int tag = readByte();
+            switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_FALSE:
+                return Boolean.FALSE;
+            case TAG_TRUE:
+                return Boolean.TRUE;
+            case TAG_INT:
+                return (int) readSigned();
+            case TAG_LONG:
+                return readSigned();
+            case TAG_DOUBLE:
+                return Double.longBitsToDouble(readFixed());
+            case TAG_FLOAT:
+                return Float.intBitsToFloat((int) readFixed());
+            case TAG_STRING:
+                return readString();
+            case TAG_ENUM:
+                String literal = readString();
+                assert (attr != null);
+                return refClass.refGetEnum(
+                    attr.getType(),
+                    literal);
+            case TAG_OBJECT:
+                return readObject();
+            case TAG_OBJECT_REF:
+                return objects.get((int) readUnsigned());
+            case TAG_COLLECTION:
+                int n = (int) readUnsigned();
+                List<Object> list = new ArrayList<Object>(n);
+                for (int i = 0; i < n; ++i) {
+                    list.add(readValue(refClass, attr));
+                }
+                return list;
+            default:
+                throw Util.newInternal(
+                    "invalid tag " + tag + " in encoded Fennel plan");
+            }
+        }
+
+        RefObject readObject()
+        {
+            int classOrdinal = (int) readUnsigned();
+            ClassInfo classInfo;
+            if (classOrdinal == classes.size()) {
+                classInfo = getClassInfo(readString());
+                classes.add(classInfo);
+            } else {
+                classInfo = classes.get(classOrdinal);
+            }
+            RefObject obj =
+                classInfo.refClass.refCreateInstance(Collections.EMPTY_LIST);
+            objects.add(obj);
+
+            StructuralFeature [] features = classInfo.features;
+            for (int i = 0; i < features.length; ++i) {
+                StructuralFeature feature = features[i];
+                if (feature instanceof Reference) {
+                    Object value = readValue(null, null);
+                    if (value != null) {
+                        PendingLink link =
+                            new PendingLink(obj, (Reference) feature, value);
+                        if (classInfo.isOrderedMultiReference[i]) {
+                            orderedLinks.add(link);
+                        } else {
+                            otherLinks.add(link);
+                        }
+                    }
+                    continue;
+                }
+                Attribute attr = (Attribute) feature;
+                Object value = readValue(classInfo.refClass, attr);
+                if (value == null) {
+                    continue;
+                }
+                if (value instanceof List) {
+                    Collection<Object> dst =
+                        (Collection<Object>) obj.refGetValue(attr);
+                    dst.addAll((List<Object>) value);
+                } else {
+                    obj.refSetValue(attr, value);
+                }
+            }
+            return obj;
+        }
+
+        /**
+         * Establishes all references read. Setting one end of an association
+         * may implicitly set the other, so links from ordered ends are made
+         * first (preserving their order), and links which already exist by
+         * the time they are reached are skipped.
+         */
+        void linkReferences()
+        {
+            for (PendingLink link : orderedLinks) {
+                link.apply();
+            }
+            for (PendingLink link : otherLinks) {
+                link.apply();
+            }
+        }
+    }
+
+    /**
+     * Reference value waiting to be set on a decoded object.
+     */
+    private static class PendingLink
+    {
+        final RefObject obj;
+        final Reference ref;
+        final Object value;
+
+        PendingLink(RefObject obj, Reference ref, Object value)
+        {
+            this.obj = obj;
+            this.ref = ref;
+            this.value = value;
+        }
+
+        void apply()
+        {
+            if (value instanceof List) {
+                Collection<Object> dst =
+                    (Collection<Object>) obj.refGetValue(ref);
+                for (Object target : (List<?>) value) {
+                    if (!dst.contains(target)) {
+                        dst.add(target);
+                    }
+                }
+            } else if (obj.refGetValue(ref) != value) {
+                obj.refSetValue(ref, value);
+            }
+        }
+    }
+}
+
+// End FennelPlanCodec.java
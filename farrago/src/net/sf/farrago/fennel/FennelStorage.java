@@ -22,6 +22,8 @@
 */
 package net.sf.farrago.fennel;
 
+import java.nio.*;
+
 import java.sql.*;
 
 import java.util.*;
@@ -157,6 +159,23 @@ public class FennelStorage
         byte [] byteArray)
         throws SQLException;
 
+    /**
+     * Fetches a buffer of rows from a stream into a direct buffer. This is
+     * the same as {@link #tupleStreamFetch}, except that the rows are copied
+     * straight into the buffer's memory rather than into a Java array.
+     *
+     * @param hStream handle to stream
+     * @param byteBuffer direct output buffer receives complete tuples,
+     * starting at offset 0 regardless of its position and limit
+     *
+     * @return number of bytes fetched (at least one tuple should always be
+     * fetched, so 0 indicates end of stream)
+     */
+    static native int tupleStreamFetchDirect(
+        long hStream,
+        ByteBuffer byteBuffer)
+        throws SQLException;
+
     /**
      * Fetches a buffer of rows from a stream. Specifically, the stream must be
      * a JavaTransformExecStream. If unpositioned, this fetches the first rows.
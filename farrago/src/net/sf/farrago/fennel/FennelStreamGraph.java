@@ -22,6 +22,8 @@
 */
 package net.sf.farrago.fennel;
 
+import java.nio.*;
+
 import java.sql.*;
 
 import java.util.*;
@@ -219,6 +221,32 @@ public class FennelStreamGraph
         }
     }
 
+    /**
+     * Fetches a buffer of rows from a stream into a direct buffer. If
+     * unpositioned, this fetches the first rows.
+     *
+     * @param streamHandle handle to stream from which to fetch
+     * @param byteBuffer direct output buffer receives complete tuples,
+     * starting at offset 0
+     *
+     * @return number of bytes fetched (at least one tuple should always be
+     * fetched if any are available, so 0 indicates end of stream)
+     */
+    public int fetch(
+        FennelStreamHandle streamHandle,
+        ByteBuffer byteBuffer)
+    {
+        assert byteBuffer.isDirect();
+        traceStreamHandle("fetch", streamHandle);
+        try {
+            return FennelStorage.tupleStreamFetchDirect(
+                streamHandle.getLongHandle(),
+                byteBuffer);
+        } catch (SQLException ex) {
+            throw fennelDbHandle.handleNativeException(ex);
+        }
+    }
+
     /**
      * Fetches a buffer of rows from a stream. If unpositioned, this fetches the
      * first rows.
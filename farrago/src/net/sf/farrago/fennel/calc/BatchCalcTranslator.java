@@ -0,0 +1,318 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.fennel.calc;
+
+import java.math.*;
+
+import java.util.*;
+
+import org.eigenbase.reltype.*;
+import org.eigenbase.rex.*;
+import org.eigenbase.sql.*;
+import org.eigenbase.sql.fun.*;
+import org.eigenbase.sql.type.*;
+
+
+/**
+ * BatchCalcTranslator converts a {@link RexProgram} into a program for the
+ * batch calculator in Fennel, which evaluates each expression over a batch of
+ * rows at a time rather than interpreting the whole program once per row.
+ *
+ * <p>Only programs over exact integer, approximate numeric and boolean values
+ * built from arithmetic (other than division), comparison, logical, IS, CASE
+ * and numeric CAST operators can be evaluated in batches; {@link
+ * #canTranslate} tells whether a program qualifies. Input fields of other
+ * types may be passed straight through to the output.
+ *
+ * <p>The batch program does not replace the scalar program produced by {@link
+ * RexToCalcTranslator}; it is prepended to it. Fennel falls back to the scalar
+ * program for any row whose evaluation in the batch would overflow, fail a
+ * narrowing cast, or assign null to a NOT NULL output, so that such rows raise
+ * exactly the same errors and warnings as before. The format is:
+ *
+ * <blockquote>
+ * <pre>#batchcalc
+ *input <i>field</i> <i>type</i>
+ *literal <i>type</i> <i>value</i>|null
+ *call <i>operator</i> <i>type</i> <i>operand</i>...
+ *project <i>expr</i>...
+ *condition <i>expr</i>
+ *scalar
+ *<i>scalar program</i></pre>
+ * </blockquote>
+ *
+ * with one <code>input</code>, <code>literal</code> or <code>call</code> line
+ * per expression of the RexProgram, in order, operands being the ordinals of
+ * earlier expressions. The <code>condition</code> line is present only if
+ * the program has a condition.
+ *
+ * @version $Id$
+ */
+public class BatchCalcTranslator
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * First line of every batch program.
+     */
+    public static final String PROGRAM_HEADER = "#batchcalc";
+
+    /**
+     * Line separating the batch program from the scalar program.
+     */
+    public static final String SCALAR_SEPARATOR = "scalar";
+
+    private static final Map<SqlOperator, String> operatorNames =
+        new HashMap<SqlOperator, String>();
+
+    static {
+        operatorNames.put(SqlStdOperatorTable.plusOperator, "add");
+        operatorNames.put(SqlStdOperatorTable.minusOperator, "sub");
+        operatorNames.put(SqlStdOperatorTable.multiplyOperator, "mul");
+        operatorNames.put(SqlStdOperatorTable.prefixMinusOperator, "neg");
+        operatorNames.put(SqlStdOperatorTable.prefixPlusOperator, "pos");
+        operatorNames.put(SqlStdOperatorTable.equalsOperator, "eq");
+        operatorNames.put(SqlStdOperatorTable.notEqualsOperator, "ne");
+        operatorNames.put(SqlStdOperatorTable.lessThanOperator, "lt");
+        operatorNames.put(SqlStdOperatorTable.lessThanOrEqualOperator, "le");
+        operatorNames.put(SqlStdOperatorTable.greaterThanOperator, "gt");
+        operatorNames.put(
+            SqlStdOperatorTable.greaterThanOrEqualOperator,
+            "ge");
+        operatorNames.put(SqlStdOperatorTable.andOperator, "and");
+        operatorNames.put(SqlStdOperatorTable.orOperator, "or");
+        operatorNames.put(SqlStdOperatorTable.notOperator, "not");
+        operatorNames.put(SqlStdOperatorTable.isNullOperator, "isnull");
+        operatorNames.put(SqlStdOperatorTable.isNotNullOperator, "isnotnull");
+        operatorNames.put(SqlStdOperatorTable.isTrueOperator, "istrue");
+        operatorNames.put(SqlStdOperatorTable.isNotTrueOperator, "isnottrue");
+        operatorNames.put(SqlStdOperatorTable.isFalseOperator, "isfalse");
+        operatorNames.put(
+            SqlStdOperatorTable.isNotFalseOperator,
+            "isnotfalse");
+        operatorNames.put(SqlStdOperatorTable.caseOperator, "case");
+        operatorNames.put(SqlStdOperatorTable.castFunc, "cast");
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Returns whether every expression of a program has a batch
+     * implementation.
+     *
+     * @param program program
+     *
+     * @return whether {@link #generateProgram} can translate the program
+     */
+    public boolean canTranslate(RexProgram program)
+    {
+        if (!program.getCorrelVariableNames().isEmpty()) {
+            return false;
+        }
+        List<RexNode> exprs = program.getExprList();
+
+        // Expressions of types without a batch representation are only
+        // allowed if they are input fields which are passed straight through
+        // to the output.
+        BitSet operands = new BitSet(exprs.size());
+        if (program.getCondition() != null) {
+            operands.set(program.getCondition().getIndex());
+        }
+        for (RexNode expr : exprs) {
+            if (expr instanceof RexCall) {
+                for (RexNode operand : ((RexCall) expr).getOperands()) {
+                    operands.set(((RexLocalRef) operand).getIndex());
+                }
+            }
+        }
+
+        for (int i = 0; i < exprs.size(); i++) {
+            RexNode expr = exprs.get(i);
+            String typeName = getTypeName(expr.getType());
+            if (expr instanceof RexInputRef) {
+                if ((typeName == null) && operands.get(i)) {
+                    return false;
+                }
+            } else if (expr instanceof RexLiteral) {
+                if (typeName == null) {
+                    return false;
+                }
+            } else if (expr instanceof RexCall) {
+                if ((typeName == null) || !canTranslateCall((RexCall) expr)) {
+                    return false;
+                }
+            } else {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean canTranslateCall(RexCall call)
+    {
+        String opName = operatorNames.get(call.getOperator());
+        if (opName == null) {
+            return false;
+        }
+        RelDataType type = call.getType();
+        if (!isApprox(type) && !isBoolean(type)) {
+            // conversions from approximate to exact values have rounding
+            // rules of their own; leave them to the scalar calculator
+            for (RexNode operand : call.getOperands()) {
+                if (isApprox(operand.getType())) {
+                    return false;
+                }
+            }
+        }
+        if (opName.equals("case") && (call.getOperands().length % 2 == 0)) {
+            // no ELSE operand
+            return false;
+        }
+        if (opName.equals("cast")) {
+            RelDataType operandType = call.getOperands()[0].getType();
+            if (isBoolean(type) != isBoolean(operandType)) {
+                return false;
+            }
+            if (operandType.isNullable() && !type.isNullable()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Generates a batch program.
+     *
+     * @param program program for which {@link #canTranslate} returned true
+     * @param scalarProgram the scalar program generated from the same
+     * RexProgram by {@link RexToCalcTranslator#generateProgram}
+     *
+     * @return batch program
+     */
+    public String generateProgram(RexProgram program, String scalarProgram)
+    {
+        assert canTranslate(program);
+        StringBuilder buf = new StringBuilder();
+        buf.append(PROGRAM_HEADER).append('\n');
+        for (RexNode expr : program.getExprList()) {
+            String typeName = getTypeName(expr.getType());
+            if (typeName == null) {
+                typeName = "other";
+            }
+            if (expr instanceof RexInputRef) {
+                int field = ((RexInputRef) expr).getIndex();
+                buf.append("input ").append(field);
+                buf.append(' ').append(typeName);
+            } else if (expr instanceof RexLiteral) {
+                buf.append("literal ").append(typeName);
+                buf.append(' ').append(getLiteralValue((RexLiteral) expr));
+            } else {
+                RexCall call = (RexCall) expr;
+                String opName = operatorNames.get(call.getOperator());
+                buf.append("call ").append(opName);
+                buf.append(' ').append(typeName);
+                for (RexNode operand : call.getOperands()) {
+                    buf.append(' ').append(((RexLocalRef) operand).getIndex());
+                }
+            }
+            buf.append('\n');
+        }
+        buf.append("project");
+        for (RexLocalRef ref : program.getProjectList()) {
+            buf.append(' ').append(ref.getIndex());
+        }
+        buf.append('\n');
+        if (program.getCondition() != null) {
+            buf.append("condition ");
+            buf.append(program.getCondition().getIndex()).append('\n');
+        }
+        buf.append(SCALAR_SEPARATOR).append('\n');
+        buf.append(scalarProgram);
+        return buf.toString();
+    }
+
+    /**
+     * Returns whether a calculator program is a batch program.
+     *
+     * @param program program
+     */
+    public static boolean isBatchProgram(String program)
+    {
+        return program.startsWith(PROGRAM_HEADER);
+    }
+
+    private static String getLiteralValue(RexLiteral literal)
+    {
+        Comparable value = literal.getValue();
+        if (value == null) {
+            return "null";
+        } else if (value instanceof Boolean) {
+            return ((Boolean) value).booleanValue() ? "1" : "0";
+        } else if (isApprox(literal.getType())) {
+            return Double.toString(((BigDecimal) value).doubleValue());
+        } else {
+            return Long.toString(((BigDecimal) value).longValueExact());
+        }
+    }
+
+    private static String getTypeName(RelDataType type)
+    {
+        SqlTypeName typeName = type.getSqlTypeName();
+        if (typeName == null) {
+            return null;
+        }
+        switch (typeName) {
+        case TINYINT:
+            return "tinyint";
+        case SMALLINT:
+            return "smallint";
+        case INTEGER:
+            return "integer";
+        case BIGINT:
+            return "bigint";
+        case REAL:
+            return "real";
+        case FLOAT:
+        case DOUBLE:
+            return "double";
+        case BOOLEAN:
+            return "boolean";
+        default:
+            return null;
+        }
+    }
+
+    private static boolean isApprox(RelDataType type)
+    {
+        SqlTypeName typeName = type.getSqlTypeName();
+        return (typeName == SqlTypeName.REAL)
+            || (typeName == SqlTypeName.FLOAT)
+            || (typeName == SqlTypeName.DOUBLE);
+    }
+
+    private static boolean isBoolean(RelDataType type)
+    {
+        return type.getSqlTypeName() == SqlTypeName.BOOLEAN;
+    }
+}
+
+// End BatchCalcTranslator.java
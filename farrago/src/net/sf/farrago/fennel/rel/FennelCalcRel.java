@@ -32,6 +32,7 @@ import org.eigenbase.rel.metadata.*;
 import org.eigenbase.relopt.*;
 import org.eigenbase.reltype.*;
 import org.eigenbase.rex.*;
+import org.eigenbase.sql.*;
 import org.eigenbase.util.*;
 
 
@@ -58,6 +59,12 @@ public class FennelCalcRel
 
     private final RexProgram program;
 
+    /**
+     * Whether the calculator should evaluate the program over batches of rows;
+     * see {@link BatchCalcTranslator}.
+     */
+    private final boolean batch;
+
     //~ Constructors -----------------------------------------------------------
 
     /**
@@ -74,6 +81,27 @@ public class FennelCalcRel
         RelNode child,
         RelDataType rowType,
         RexProgram program)
+    {
+        this(cluster, child, rowType, program, false);
+    }
+
+    /**
+     * Creates a new FennelCalcRel object.
+     *
+     * @param cluster RelOptCluster for this rel
+     * @param child rel producing rows to be Calced
+     * @param rowType Row type
+     * @param program Set of common expressions, projections, and optional
+     * filter, to be calculated by the calculator
+     * @param batch whether to evaluate the program over batches of rows; if
+     * true, {@link BatchCalcTranslator#canTranslate} must hold for the program
+     */
+    public FennelCalcRel(
+        RelOptCluster cluster,
+        RelNode child,
+        RelDataType rowType,
+        RexProgram program,
+        boolean batch)
     {
         super(
             cluster,
@@ -83,6 +111,7 @@ public class FennelCalcRel
         Util.pre(program != null, "program != null");
         this.program = program;
         this.rowType = rowType;
+        this.batch = batch;
         assert program.isValid(true);
         assert RelOptUtil.equal(
             "program's input type",
@@ -109,7 +138,8 @@ public class FennelCalcRel
                 getCluster(),
                 getChild().clone(),
                 rowType,
-                program);
+                program,
+                batch);
         clone.inheritTraitsFrom(this);
         return clone;
     }
@@ -122,9 +152,35 @@ public class FennelCalcRel
         return program;
     }
 
+    /**
+     * @return whether the program is evaluated over batches of rows
+     */
+    public boolean isBatch()
+    {
+        return batch;
+    }
+
     public void explain(RelOptPlanWriter pw)
     {
-        program.explainCalc(this, pw);
+        List<String> termList = new ArrayList<String>();
+        List<Object> valueList = new ArrayList<Object>();
+        termList.add("child");
+        program.collectExplainTerms(
+            "",
+            termList,
+            valueList,
+            pw.getDetailLevel());
+
+        // Batch evaluation does not change the result, so it only needs to
+        // distinguish the digest; otherwise the planner would merge a batch
+        // calculator with an equivalent row-at-a-time one.
+        if (batch
+            && (pw.getDetailLevel() == SqlExplainLevel.DIGEST_ATTRIBUTES))
+        {
+            termList.add("batch");
+            valueList.add(batch);
+        }
+        pw.explain(this, termList, valueList);
     }
 
     public double getRows()
@@ -206,10 +262,16 @@ public class FennelCalcRel
             new RexToCalcTranslator(
                 getCluster().getRexBuilder(),
                 this);
-        final String programString =
+        String programString =
             translator.generateProgram(
                 getChild().getRowType(),
                 getProgram());
+        if (batch) {
+            programString =
+                new BatchCalcTranslator().generateProgram(
+                    program,
+                    programString);
+        }
         calcStream.setProgram(programString);
         for (String dynamicParamIdStr : program.getCorrelVariableNames()) {
             final FemDynamicParamUse dynamicParamUse =
@@ -24,6 +24,7 @@ package net.sf.farrago.fennel.rel;
 import net.sf.farrago.fennel.calc.*;
 
 import net.sf.farrago.query.*;
+import net.sf.farrago.util.*;
 
 import org.eigenbase.rel.*;
 import org.eigenbase.rel.convert.*;
@@ -116,7 +117,22 @@ public class FennelCalcRule
             calc.getCluster(),
             fennelInput,
             calc.getRowType(),
-            calc.getProgram());
+            calc.getProgram(),
+            isBatch(calc.getProgram()));
+    }
+
+    /**
+     * Decides whether a program should be evaluated over batches of rows,
+     * which it can be if every operator in it has a batch implementation.
+     *
+     * @param program program
+     *
+     * @return whether to evaluate the program in batches
+     */
+    protected boolean isBatch(RexProgram program)
+    {
+        return FarragoProperties.instance().fennelBatchCalc.get()
+            && new BatchCalcTranslator().canTranslate(program);
     }
 }
 
@@ -30,8 +30,6 @@ import java.nio.*;
 
 import java.util.*;
 
-import javax.jmi.reflect.*;
-
 import net.sf.farrago.*;
 import net.sf.farrago.catalog.*;
 import net.sf.farrago.fem.fennel.*;
@@ -40,7 +38,6 @@ import net.sf.farrago.fennel.tuple.*;
 import net.sf.farrago.query.*;
 import net.sf.farrago.session.*;
 
-import org.eigenbase.jmi.*;
 import org.eigenbase.rel.*;
 import org.eigenbase.rel.metadata.*;
 import org.eigenbase.relopt.*;
@@ -79,24 +76,7 @@ public abstract class FennelRelUtil
         if (fennelDbHandle == null) {
             return tupleDescriptorToAccessor(repos, tupleDesc);
         }
-        String tupleAccessorXmiString =
-            fennelDbHandle.getAccessorXmiForTupleDescriptorTraced(tupleDesc);
-
-        // TODO: Move FarragoRepos.getTransientFarragoPackage up to the base
-        //   class, FarragoMetadataFactory (which is generated, by the way).
-        FarragoPackage transientFarragoPackage;
-        if (repos instanceof FarragoRepos) {
-            FarragoRepos farragoRepos = (FarragoRepos) repos;
-            transientFarragoPackage = farragoRepos.getTransientFarragoPackage();
-        } else {
-            transientFarragoPackage = repos.getRootPackage();
-        }
-        Collection<RefBaseObject> c =
-            JmiObjUtil.importFromXmiString(
-                transientFarragoPackage,
-                tupleAccessorXmiString);
-        assert (c.size() == 1);
-        return (FemTupleAccessor) c.iterator().next();
+        return fennelDbHandle.getAccessorForTupleDescriptor(repos, tupleDesc);
     }
 
     /**
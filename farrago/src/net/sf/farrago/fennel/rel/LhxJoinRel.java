@@ -25,12 +25,14 @@ import java.util.*;
 
 import net.sf.farrago.catalog.*;
 import net.sf.farrago.fem.fennel.*;
+import net.sf.farrago.fennel.*;
 import net.sf.farrago.query.*;
 
 import org.eigenbase.rel.*;
 import org.eigenbase.rel.metadata.*;
 import org.eigenbase.relopt.*;
 import org.eigenbase.reltype.*;
+import org.eigenbase.sql.*;
 import org.eigenbase.util.*;
 
 
@@ -83,6 +85,14 @@ public class LhxJoinRel
      */
     boolean isSetop;
 
+    /**
+     * Dynamic parameter through which a bloom filter over the build (right)
+     * keys is published to the scan feeding the left input, or null if the
+     * left input does not consume one. The filter is only built when the
+     * build input fits in memory.
+     */
+    private final FennelRelParamId runtimeFilterParamId;
+
     //~ Constructors -----------------------------------------------------------
 
     /**
@@ -106,6 +116,47 @@ public class LhxJoinRel
         List<String> fieldNameList,
         long numBuildRows,
         long cndBuildKey)
+    {
+        this(
+            cluster,
+            left,
+            right,
+            joinType,
+            isSetop,
+            leftKeys,
+            rightKeys,
+            filterNulls,
+            fieldNameList,
+            numBuildRows,
+            cndBuildKey,
+            null);
+    }
+
+    /**
+     * Creates a new LhxJoinRel object which publishes a runtime filter over
+     * its build keys.
+     *
+     * @param cluster RelOptCluster for this rel
+     * @param left left input
+     * @param right right input
+     * @param fieldNameList If not null, the row type will have these field
+     * names
+     * @param runtimeFilterParamId parameter the runtime filter is published
+     * through, or null for none
+     */
+    public LhxJoinRel(
+        RelOptCluster cluster,
+        RelNode left,
+        RelNode right,
+        LhxJoinRelType joinType,
+        boolean isSetop,
+        List<Integer> leftKeys,
+        List<Integer> rightKeys,
+        List<Integer> filterNulls,
+        List<String> fieldNameList,
+        long numBuildRows,
+        long cndBuildKey,
+        FennelRelParamId runtimeFilterParamId)
     {
         super(cluster, left, right);
         assert joinType != null;
@@ -151,6 +202,7 @@ public class LhxJoinRel
         }
         this.numBuildRows = numBuildRows;
         this.cndBuildKey = cndBuildKey;
+        this.runtimeFilterParamId = runtimeFilterParamId;
     }
 
     //~ Methods ----------------------------------------------------------------
@@ -170,7 +222,8 @@ public class LhxJoinRel
                 filterNulls,
                 RelOptUtil.getFieldNameList(rowType),
                 numBuildRows,
-                cndBuildKey);
+                cndBuildKey,
+                runtimeFilterParamId);
         clone.inheritTraitsFrom(this);
         return clone;
     }
@@ -206,35 +259,39 @@ public class LhxJoinRel
     // override RelNode
     public void explain(RelOptPlanWriter pw)
     {
-        if (!isSetop) {
-            if (filterNulls.size() == leftKeys.size()) {
-                pw.explain(
-                    this,
-                    new String[] {
-                        "left", "right", "leftKeys", "rightKeys", "joinType"
-                    },
-                    new Object[] { leftKeys, rightKeys, joinType });
-            } else {
-                // only print out filterNulls if not all key positions are
-                // included
-                pw.explain(
-                    this,
-                    new String[] {
-                        "left", "right", "leftKeys", "rightKeys", "filterNulls",
-                        "joinType"
-                    },
-                    new Object[] {
-                        leftKeys, rightKeys, filterNulls, joinType });
-            }
-        } else {
-            pw.explain(
-                this,
-                new String[] {
-                    "left", "right", "leftKeys", "rightKeys", "joinType",
-                    "setop"
-                },
-                new Object[] { leftKeys, rightKeys, joinType, isSetop });
+        List<String> termList = new ArrayList<String>();
+        List<Object> valueList = new ArrayList<Object>();
+        termList.add("left");
+        termList.add("right");
+        termList.add("leftKeys");
+        valueList.add(leftKeys);
+        termList.add("rightKeys");
+        valueList.add(rightKeys);
+        if (!isSetop && (filterNulls.size() != leftKeys.size())) {
+            // only print out filterNulls if not all key positions are
+            // included
+            termList.add("filterNulls");
+            valueList.add(filterNulls);
+        }
+        termList.add("joinType");
+        valueList.add(joinType);
+        if (isSetop) {
+            termList.add("setop");
+            valueList.add(isSetop);
+        }
+
+        // The runtime filter is decided after the join is chosen and does
+        // not change the result, so it only needs to distinguish the digest.
+        if ((runtimeFilterParamId != null)
+            && (pw.getDetailLevel() == SqlExplainLevel.DIGEST_ATTRIBUTES))
+        {
+            termList.add("runtimeFilter");
+            valueList.add(runtimeFilterParamId);
         }
+        pw.explain(
+            this,
+            termList.toArray(new String[termList.size()]),
+            valueList.toArray());
     }
 
     // implement RelNode
@@ -249,6 +306,12 @@ public class LhxJoinRel
         FarragoRepos repos = FennelRelUtil.getRepos(this);
         FemLhxJoinStreamDef streamDef = repos.newFemLhxJoinStreamDef();
 
+        // Translate the runtime filter parameter upfront so the translation
+        // is available to the scan that consumes it under the left input.
+        if (runtimeFilterParamId != null) {
+            implementor.translateParamId(runtimeFilterParamId);
+        }
+
         FemExecutionStreamDef leftInput =
             implementor.visitFennelChild((FennelRel) left, 0);
         implementor.addDataFlowFromProducerToConsumer(
@@ -333,6 +396,12 @@ public class LhxJoinRel
                 repos,
                 filterNulls));
 
+        streamDef.setRuntimeFilterParamId(
+            implementor.translateParamId(
+                runtimeFilterParamId,
+                streamDef,
+                FennelDynamicParamId.StreamType.PRODUCER).intValue());
+
         return streamDef;
     }
 
@@ -360,6 +429,31 @@ public class LhxJoinRel
     {
         return rightKeys;
     }
+
+    public List<Integer> getFilterNulls()
+    {
+        return filterNulls;
+    }
+
+    public boolean isSetop()
+    {
+        return isSetop;
+    }
+
+    public long getNumBuildRows()
+    {
+        return numBuildRows;
+    }
+
+    public long getCndBuildKey()
+    {
+        return cndBuildKey;
+    }
+
+    public FennelRelParamId getRuntimeFilterParamId()
+    {
+        return runtimeFilterParamId;
+    }
 }
 
 // End LhxJoinRel.java
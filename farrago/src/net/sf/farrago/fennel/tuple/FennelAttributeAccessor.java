@@ -142,6 +142,49 @@ public abstract class FennelAttributeAccessor
         return true;
     }
 
+    /**
+     * Tests if a field is present in a tuple image which starts at a given
+     * offset within a buffer, without slicing or repositioning the buffer.
+     *
+     * @param buf buffer containing the tuple image
+     * @param tupleOffset offset of the start of the tuple image in buf
+     */
+    public boolean isPresent(ByteBuffer buf, int tupleOffset)
+    {
+        if (nullBitNdx == Integer.MAX_VALUE) {
+            return true;
+        }
+        byte val = buf.get(tupleOffset + nullableBitOffset);
+        return (val & nullableBitMask) == 0;
+    }
+
+    /**
+     * Returns the offset within a buffer of the first byte of this
+     * attribute's value in a tuple image.
+     *
+     * @param buf buffer containing the tuple image
+     * @param tupleOffset offset of the start of the tuple image in buf
+     *
+     * @return offset of value in buf
+     */
+    public int getValueOffset(ByteBuffer buf, int tupleOffset)
+    {
+        return tupleOffset + fixedOffset;
+    }
+
+    /**
+     * Returns the number of bytes in this attribute's value in a tuple image.
+     *
+     * @param buf buffer containing the tuple image
+     * @param tupleOffset offset of the start of the tuple image in buf
+     *
+     * @return length of value in bytes
+     */
+    public int getValueLength(ByteBuffer buf, int tupleOffset)
+    {
+        return capacity;
+    }
+
     /**
      * sets the presence of a field in a tuple buffer.
      */
@@ -188,6 +231,26 @@ public abstract class FennelAttributeAccessor
 
     //~ Inner Classes ----------------------------------------------------------
 
+    /**
+     * base for the accessors of numeric and bit attributes, whose values can
+     * be read in place as a long.
+     */
+    public static abstract class FennelNumericAccessor
+        extends FennelAttributeAccessor
+    {
+        /**
+         * Reads the value of the attribute in place from a tuple image.
+         * Integer values are sign-extended; floating point values are
+         * returned as their raw bits, as in {@link FennelTupleDatum}.
+         *
+         * @param buf buffer containing the tuple image
+         * @param tupleOffset offset of the start of the tuple image in buf
+         *
+         * @return value
+         */
+        public abstract long getNumeric(ByteBuffer buf, int tupleOffset);
+    }
+
     /**
      * marshalls fixed-width byte arrays.
      */
@@ -239,7 +302,7 @@ public abstract class FennelAttributeAccessor
      * marshalls a numeric byte (signed or unsigned)
      */
     public static final class FennelByteAccessor
-        extends FennelAttributeAccessor
+        extends FennelNumericAccessor
     {
         public void marshalValueData(
             ByteBuffer pDestData,
@@ -266,13 +329,18 @@ public abstract class FennelAttributeAccessor
             tupleAccessor.getCurrentTupleBuf().position(fixedOffset);
             value.setByte(tupleAccessor.getCurrentTupleBuf().get());
         }
+
+        public long getNumeric(ByteBuffer buf, int tupleOffset)
+        {
+            return buf.get(tupleOffset + fixedOffset);
+        }
     }
 
     /**
      * marshalls a numeric short (signed or unsigned)
      */
     public static final class FennelShortAccessor
-        extends FennelAttributeAccessor
+        extends FennelNumericAccessor
     {
         public void marshalValueData(
             ByteBuffer pDestData,
@@ -300,13 +368,18 @@ public abstract class FennelAttributeAccessor
             value.setShort(
                 tupleAccessor.getCurrentTupleBuf().getShort(fixedOffset));
         }
+
+        public long getNumeric(ByteBuffer buf, int tupleOffset)
+        {
+            return buf.getShort(tupleOffset + fixedOffset);
+        }
     }
 
     /**
      * marshalls a numeric int (signed or unsigned)
      */
     public static class FennelIntAccessor
-        extends FennelAttributeAccessor
+        extends FennelNumericAccessor
     {
         public void marshalValueData(
             ByteBuffer pDestData,
@@ -334,13 +407,18 @@ public abstract class FennelAttributeAccessor
             value.setInt(
                 tupleAccessor.getCurrentTupleBuf().getInt(fixedOffset));
         }
+
+        public long getNumeric(ByteBuffer buf, int tupleOffset)
+        {
+            return buf.getInt(tupleOffset + fixedOffset);
+        }
     }
 
     /**
      * marshalls a numeric long (signed or unsigned)
      */
     public static final class FennelLongAccessor
-        extends FennelAttributeAccessor
+        extends FennelNumericAccessor
     {
         public void marshalValueData(
             ByteBuffer pDestData,
@@ -368,13 +446,18 @@ public abstract class FennelAttributeAccessor
             value.setLong(
                 tupleAccessor.getCurrentTupleBuf().getLong(fixedOffset));
         }
+
+        public long getNumeric(ByteBuffer buf, int tupleOffset)
+        {
+            return buf.getLong(tupleOffset + fixedOffset);
+        }
     }
 
     /**
      * marshalls a numeric bit
      */
     public static final class FennelBitAccessor
-        extends FennelAttributeAccessor
+        extends FennelNumericAccessor
     {
         public void marshalValueData(
             ByteBuffer pDestData,
@@ -409,6 +492,12 @@ public abstract class FennelAttributeAccessor
                 value.setBoolean(false);
             }
         }
+
+        public long getNumeric(ByteBuffer buf, int tupleOffset)
+        {
+            byte val = buf.get(tupleOffset + valueBitOffset);
+            return ((val & valueBitMask) != 0) ? 1L : 0L;
+        }
     }
 
     /**
@@ -484,6 +573,26 @@ public abstract class FennelAttributeAccessor
                     value.getLength());
             }
         }
+
+        public int getValueOffset(ByteBuffer buf, int tupleOffset)
+        {
+            if (fixedOffset != Integer.MAX_VALUE) {
+                return tupleOffset + fixedOffset;
+            }
+            return tupleOffset
+                + FennelTupleAccessor.readUnsignedShort(
+                    buf,
+                    tupleOffset + endIndirectOffset - 2);
+        }
+
+        public int getValueLength(ByteBuffer buf, int tupleOffset)
+        {
+            int endOffset =
+                FennelTupleAccessor.readUnsignedShort(
+                    buf,
+                    tupleOffset + endIndirectOffset);
+            return tupleOffset + endOffset - getValueOffset(buf, tupleOffset);
+        }
     }
 }
 
@@ -654,12 +654,27 @@ public final class FennelTupleAccessor
      * @return byte count
      */
     public int getBufferByteCount(ByteBuffer pBuf)
+    {
+        return getBufferByteCount(pBuf, 0);
+    }
+
+    /**
+     * Determines the number of bytes stored in a tuple image which starts at
+     * a given offset within a buffer, without slicing the buffer.
+     *
+     * @param pBuf buffer containing the tuple image
+     * @param tupleOffset offset of the start of the tuple image in pBuf
+     *
+     * @return byte count
+     */
+    public int getBufferByteCount(ByteBuffer pBuf, int tupleOffset)
     {
         if (lastVarEndIndirectOffset == Integer.MAX_VALUE) {
             // fixed-width tuple
             return maxStorage;
         }
-        int dataLen = readUnsignedShort(pBuf, lastVarEndIndirectOffset);
+        int dataLen =
+            readUnsignedShort(pBuf, tupleOffset + lastVarEndIndirectOffset);
         return alignRoundUp(dataLen);
     }
 
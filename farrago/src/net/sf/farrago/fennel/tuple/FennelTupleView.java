@@ -0,0 +1,222 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.fennel.tuple;
+
+import java.nio.*;
+
+
+/**
+ * FennelTupleView reads the attributes of a marshalled tuple in place, from
+ * the buffer which holds the tuple image, using the offsets precomputed by a
+ * {@link FennelTupleAccessor}. Unlike {@link FennelTupleAccessor#unmarshal},
+ * reading a numeric attribute or locating a variable-width one neither copies
+ * data nor slices the buffer, so a view can be pointed at each tuple of a
+ * buffer in turn without allocating anything.
+ *
+ * <p>When a caller needs every attribute as a {@link FennelTupleDatum}, {@link
+ * #getTupleData} unmarshals the current tuple the conventional way, at most
+ * once per tuple.
+ *
+ * <p>A view is only valid while the buffer still holds the tuple it was last
+ * positioned on. This class is JDK 1.4 compatible.
+ *
+ * @version $Id$
+ */
+public class FennelTupleView
+{
+    //~ Instance fields --------------------------------------------------------
+
+    private final FennelTupleAccessor tupleAccessor;
+    private final FennelAttributeAccessor [] attrAccessors;
+
+    /**
+     * The accessors of numeric and bit attributes, by attribute; null for
+     * other attributes
+     */
+    private final FennelAttributeAccessor.FennelNumericAccessor []
+        numericAccessors;
+
+    private final FennelTupleData tupleData;
+    private ByteBuffer buf;
+    private int tupleOffset;
+    private boolean unmarshalled;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a view for tuples of a given format. Tuple images are expected
+     * to be in native byte order.
+     *
+     * @param tupleDesc descriptor of the tuples to be read
+     */
+    public FennelTupleView(FennelTupleDescriptor tupleDesc)
+    {
+        tupleAccessor = new FennelTupleAccessor(true);
+        tupleAccessor.compute(tupleDesc);
+        attrAccessors = new FennelAttributeAccessor[tupleAccessor.size()];
+        numericAccessors =
+            new FennelAttributeAccessor.FennelNumericAccessor[
+                attrAccessors.length];
+        for (int i = 0; i < attrAccessors.length; ++i) {
+            attrAccessors[i] = tupleAccessor.getAttributeAccessor(i);
+            if (attrAccessors[i]
+                instanceof FennelAttributeAccessor.FennelNumericAccessor)
+            {
+                numericAccessors[i] =
+                    (FennelAttributeAccessor.FennelNumericAccessor)
+                    attrAccessors[i];
+            }
+        }
+        tupleData = new FennelTupleData(tupleDesc);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Positions this view on a tuple image.
+     *
+     * @param buf buffer containing the tuple image
+     * @param tupleOffset offset of the start of the tuple image in buf
+     */
+    public void setCurrentTuple(ByteBuffer buf, int tupleOffset)
+    {
+        this.buf = buf;
+        this.tupleOffset = tupleOffset;
+        unmarshalled = false;
+    }
+
+    /**
+     * @return number of bytes occupied by the current tuple image, including
+     * trailing alignment padding
+     */
+    public int getCurrentByteCount()
+    {
+        return tupleAccessor.getBufferByteCount(buf, tupleOffset);
+    }
+
+    /**
+     * @return number of attributes in each tuple
+     */
+    public int size()
+    {
+        return attrAccessors.length;
+    }
+
+    /**
+     * Tests whether an attribute of the current tuple is non-null.
+     *
+     * @param iAttr 0-based attribute index
+     */
+    public boolean isPresent(int iAttr)
+    {
+        return attrAccessors[iAttr].isPresent(buf, tupleOffset);
+    }
+
+    /**
+     * Reads a numeric or boolean attribute of the current tuple; see {@link
+     * FennelAttributeAccessor.FennelNumericAccessor#getNumeric}.
+     *
+     * @param iAttr 0-based attribute index
+     */
+    public long getNumeric(int iAttr)
+    {
+        assert numericAccessors[iAttr] != null : "attribute " + iAttr
+            + " is not numeric";
+        return numericAccessors[iAttr].getNumeric(buf, tupleOffset);
+    }
+
+    /**
+     * Reads a REAL attribute of the current tuple.
+     *
+     * @param iAttr 0-based attribute index
+     */
+    public float getFloat(int iAttr)
+    {
+        return Float.intBitsToFloat((int) getNumeric(iAttr));
+    }
+
+    /**
+     * Reads a DOUBLE attribute of the current tuple.
+     *
+     * @param iAttr 0-based attribute index
+     */
+    public double getDouble(int iAttr)
+    {
+        return Double.longBitsToDouble(getNumeric(iAttr));
+    }
+
+    /**
+     * Returns the number of bytes in an attribute of the current tuple.
+     *
+     * @param iAttr 0-based attribute index
+     */
+    public int getLength(int iAttr)
+    {
+        return attrAccessors[iAttr].getValueLength(buf, tupleOffset);
+    }
+
+    /**
+     * Copies the bytes of an attribute of the current tuple into an array.
+     *
+     * @param iAttr 0-based attribute index
+     * @param dest array to receive the bytes, which must have room for
+     * {@link #getLength} bytes starting at destOffset
+     * @param destOffset offset in dest of first byte
+     *
+     * @return number of bytes copied
+     */
+    public int getBytes(int iAttr, byte [] dest, int destOffset)
+    {
+        FennelAttributeAccessor attr = attrAccessors[iAttr];
+        int len = attr.getValueLength(buf, tupleOffset);
+        if (len > 0) {
+            int savedPosition = buf.position();
+            buf.position(attr.getValueOffset(buf, tupleOffset));
+            buf.get(dest, destOffset, len);
+            buf.position(savedPosition);
+        }
+        return len;
+    }
+
+    /**
+     * Returns the current tuple unmarshalled into datums. The tuple is
+     * unmarshalled on the first call after the view is positioned; later
+     * calls return the same data.
+     *
+     * @return tuple data, which is reused for subsequent tuples
+     */
+    public FennelTupleData getTupleData()
+    {
+        if (!unmarshalled) {
+            int savedPosition = buf.position();
+            buf.position(tupleOffset);
+            tupleAccessor.setCurrentTupleBuf(buf);
+            tupleAccessor.unmarshal(tupleData);
+            tupleAccessor.resetCurrentTupleBuf();
+            buf.position(savedPosition);
+            unmarshalled = true;
+        }
+        return tupleData;
+    }
+}
+
+// End FennelTupleView.java
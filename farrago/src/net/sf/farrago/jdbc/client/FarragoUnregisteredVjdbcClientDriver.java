@@ -71,6 +71,8 @@ public abstract class FarragoUnregisteredVjdbcClientDriver
         //  move any params from the URI to the properties
         Properties driverProps = applyDefaultConnectionProps(info);
         String driverUrl = parseConnectionParams(url, driverProps);
+        FarragoVjdbcColumnarProxyFactory proxyFactory =
+            FarragoVjdbcColumnarProxyFactory.newInstance(driverProps);
 
         Driver rmiDriver;
         try {
@@ -94,7 +96,9 @@ public abstract class FarragoUnregisteredVjdbcClientDriver
         // NOTE:  can't call DriverManager.connect here, because that
         // would deadlock in the case where client and server are
         // running in the same VM
-        return rmiDriver.connect(urlRmi, driverProps);
+        return FarragoVjdbcColumnarProxyFactory.install(
+            rmiDriver.connect(urlRmi, driverProps),
+            proxyFactory);
     }
 }
 
@@ -71,6 +71,8 @@ public class FarragoUnregisteredVjdbcHttpClientDriver
         //  move any params from the URI to the properties
         Properties driverProps = applyDefaultConnectionProps(info);
         String driverUrl = parseConnectionParams(url, driverProps);
+        FarragoVjdbcColumnarProxyFactory proxyFactory =
+            FarragoVjdbcColumnarProxyFactory.newInstance(driverProps);
 
         Driver httpDriver;
         try {
@@ -96,7 +98,9 @@ public class FarragoUnregisteredVjdbcHttpClientDriver
         // NOTE:  can't call DriverManager.connect here, because that
         // would deadlock in the case where client and server are
         // running in the same VM
-        return httpDriver.connect(urlHttp, driverProps);
+        return FarragoVjdbcColumnarProxyFactory.install(
+            httpDriver.connect(urlHttp, driverProps),
+            proxyFactory);
     }
 }
 
@@ -0,0 +1,927 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2006 The Eigenbase Project
+// Copyright (C) 2006 SQLstream, Inc.
+// Copyright (C) 2006 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.jdbc.client;
+
+import de.simplicit.vjdbc.serial.*;
+
+import java.io.*;
+
+import java.math.*;
+
+import java.sql.*;
+
+import java.util.*;
+
+
+/**
+ * FarragoVjdbcColumnarBatch is a batch of result set rows which a VJDBC
+ * server ships to the client column by column instead of as an array of row
+ * objects.
+ *
+ * <p>Each column is written with an encoding chosen from its type and from
+ * the values in the batch: integers and datetimes as zigzag deltas in
+ * variable-length bytes, decimals as scaled longs, floating-point values as
+ * raw bits, booleans as a bitmap, and character strings either inline or,
+ * when the batch repeats values, as a dictionary plus codes. Nulls are
+ * carried in a per-column bitmap which is omitted for columns without nulls.
+ * Datetime values are sent to millisecond precision, which is all Farrago
+ * stores. Columns of any other type fall back to Java serialization.
+ *
+ * <p>A batch is filled on the server from a {@link ResultSet} and decoded on
+ * the client into primitive arrays, so that {@link
+ * FarragoVjdbcColumnarResultSet} can read numeric columns without boxing.
+ *
+ * @version $Id$
+ */
+public class FarragoVjdbcColumnarBatch
+    implements Externalizable
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final long serialVersionUID = -6158233042617390184L;
+
+    private static final byte ENC_LONG = 0;
+    private static final byte ENC_BOOLEAN = 1;
+    private static final byte ENC_DOUBLE = 2;
+    private static final byte ENC_FLOAT = 3;
+    private static final byte ENC_DECIMAL = 4;
+    private static final byte ENC_STRING = 5;
+    private static final byte ENC_STRING_DICT = 6;
+    private static final byte ENC_BYTES = 7;
+    private static final byte ENC_OBJECT = 8;
+
+    private static final String UTF8 = "UTF-8";
+
+    //~ Instance fields --------------------------------------------------------
+
+    private SerialResultSetMetaData metaData;
+    private UIDEx cursor;
+    private boolean last;
+    private int rowCount;
+    private int [] columnTypes;
+    private byte [] encodings;
+    private int [] scales;
+
+    // for each column, exactly one of longs, doubles and objects is set,
+    // depending on the column's encoding; nulls is set only if the column
+    // has a null in this batch
+    private boolean [][] nulls;
+    private long [][] longs;
+    private double [][] doubles;
+    private Object [][] objects;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates an empty batch, to be filled by {@link #readExternal}.
+     */
+    public FarragoVjdbcColumnarBatch()
+    {
+    }
+
+    /**
+     * Creates a batch by reading up to <code>maxRows</code> rows from a result
+     * set.
+     *
+     * @param resultSet result set positioned before the first row to read
+     * @param maxRows maximum number of rows to read
+     * @param includeMetaData whether to send the result set's metadata with
+     * the batch; only the first batch of a cursor needs it
+     */
+    public FarragoVjdbcColumnarBatch(
+        ResultSet resultSet,
+        int maxRows,
+        boolean includeMetaData)
+        throws SQLException
+    {
+        ResultSetMetaData md = resultSet.getMetaData();
+        if (includeMetaData) {
+            metaData = new SerialResultSetMetaData(md);
+        }
+        int columnCount = md.getColumnCount();
+        allocate(columnCount);
+        for (int c = 0; c < columnCount; ++c) {
+            columnTypes[c] = md.getColumnType(c + 1);
+            encodings[c] = getEncoding(columnTypes[c]);
+            if (encodings[c] == ENC_DECIMAL) {
+                scales[c] = md.getScale(c + 1);
+            }
+            allocateColumn(c, maxRows);
+        }
+
+        while (rowCount < maxRows) {
+            if (!resultSet.next()) {
+                last = true;
+                break;
+            }
+            for (int c = 0; c < columnCount; ++c) {
+                readValue(resultSet, c);
+            }
+            ++rowCount;
+        }
+
+        for (int c = 0; c < columnCount; ++c) {
+            if (encodings[c] == ENC_DECIMAL) {
+                long [] unscaled = toUnscaled(objects[c], nulls[c], scales[c]);
+                if (unscaled == null) {
+                    encodings[c] = ENC_OBJECT;
+                } else {
+                    longs[c] = unscaled;
+                    objects[c] = null;
+                }
+            }
+        }
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * @return metadata of the result set, or null if this is not the first
+     * batch of its cursor
+     */
+    public ResultSetMetaData getMetaData()
+    {
+        return metaData;
+    }
+
+    /**
+     * @return identifier of the server-side cursor holding the remaining
+     * rows; set only on the first batch of a cursor, and only if the first
+     * batch is not also the last
+     */
+    public UIDEx getCursor()
+    {
+        return cursor;
+    }
+
+    /**
+     * Sets the identifier of the server-side cursor holding the rows after
+     * this first batch.
+     *
+     * @param cursor cursor identifier
+     */
+    public void setCursor(UIDEx cursor)
+    {
+        this.cursor = cursor;
+    }
+
+    /**
+     * @return whether this batch holds the last rows of the result set
+     */
+    public boolean isLast()
+    {
+        return last;
+    }
+
+    /**
+     * @return number of rows in this batch
+     */
+    public int getRowCount()
+    {
+        return rowCount;
+    }
+
+    /**
+     * Returns whether a column is an integer column, so that {@link #getLong}
+     * can be used to read it.
+     *
+     * @param column 0-based column ordinal
+     */
+    public boolean isIntegral(int column)
+    {
+        if (encodings[column] != ENC_LONG) {
+            return false;
+        }
+        switch (columnTypes[column]) {
+        case Types.TINYINT:
+        case Types.SMALLINT:
+        case Types.INTEGER:
+        case Types.BIGINT:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Returns whether a column is a floating-point column, so that {@link
+     * #getDouble} can be used to read it.
+     *
+     * @param column 0-based column ordinal
+     */
+    public boolean isApproximate(int column)
+    {
+        return doubles[column] != null;
+    }
+
+    /**
+     * Returns whether a value is null.
+     *
+     * @param row 0-based row ordinal
+     * @param column 0-based column ordinal
+     */
+    public boolean isNull(int row, int column)
+    {
+        return (nulls[column] != null) && nulls[column][row];
+    }
+
+    /**
+     * Returns a value of an integer column.
+     *
+     * @param row 0-based row ordinal
+     * @param column 0-based column ordinal
+     *
+     * @pre isIntegral(column)
+     */
+    public long getLong(int row, int column)
+    {
+        return longs[column][row];
+    }
+
+    /**
+     * Returns a value of a floating-point column.
+     *
+     * @param row 0-based row ordinal
+     * @param column 0-based column ordinal
+     *
+     * @pre isApproximate(column)
+     */
+    public double getDouble(int row, int column)
+    {
+        return doubles[column][row];
+    }
+
+    /**
+     * Returns a value as the object which {@link ResultSet#getObject} would
+     * return for the column's type.
+     *
+     * @param row 0-based row ordinal
+     * @param column 0-based column ordinal
+     *
+     * @return value, or null if the value is null
+     */
+    public Object getObject(int row, int column)
+    {
+        if (isNull(row, column)) {
+            return null;
+        }
+        switch (encodings[column]) {
+        case ENC_LONG:
+            long v = longs[column][row];
+            switch (columnTypes[column]) {
+            case Types.TINYINT:
+                return new Byte((byte) v);
+            case Types.SMALLINT:
+                return new Short((short) v);
+            case Types.INTEGER:
+                return new Integer((int) v);
+            case Types.DATE:
+                return new java.sql.Date(v);
+            case Types.TIME:
+                return new Time(v);
+            case Types.TIMESTAMP:
+                return new Timestamp(v);
+            default:
+                return new Long(v);
+            }
+        case ENC_BOOLEAN:
+            return (longs[column][row] != 0) ? Boolean.TRUE : Boolean.FALSE;
+        case ENC_DECIMAL:
+            return BigDecimal.valueOf(longs[column][row], scales[column]);
+        case ENC_FLOAT:
+            return new Float((float) doubles[column][row]);
+        case ENC_DOUBLE:
+            return new Double(doubles[column][row]);
+        default:
+            return objects[column][row];
+        }
+    }
+
+    private void allocate(int columnCount)
+    {
+        columnTypes = new int[columnCount];
+        encodings = new byte[columnCount];
+        scales = new int[columnCount];
+        nulls = new boolean[columnCount][];
+        longs = new long[columnCount][];
+        doubles = new double[columnCount][];
+        objects = new Object[columnCount][];
+    }
+
+    private void allocateColumn(int column, int size)
+    {
+        switch (encodings[column]) {
+        case ENC_LONG:
+        case ENC_BOOLEAN:
+            longs[column] = new long[size];
+            break;
+        case ENC_DOUBLE:
+        case ENC_FLOAT:
+            doubles[column] = new double[size];
+            break;
+        default:
+            // decimals are collected as objects and scaled once the batch
+            // is complete
+            objects[column] = new Object[size];
+            break;
+        }
+    }
+
+    private static byte getEncoding(int type)
+    {
+        switch (type) {
+        case Types.TINYINT:
+        case Types.SMALLINT:
+        case Types.INTEGER:
+        case Types.BIGINT:
+        case Types.DATE:
+        case Types.TIME:
+        case Types.TIMESTAMP:
+            return ENC_LONG;
+        case Types.BIT:
+        case Types.BOOLEAN:
+            return ENC_BOOLEAN;
+        case Types.REAL:
+            return ENC_FLOAT;
+        case Types.FLOAT:
+        case Types.DOUBLE:
+            return ENC_DOUBLE;
+        case Types.DECIMAL:
+        case Types.NUMERIC:
+            return ENC_DECIMAL;
+        case Types.CHAR:
+        case Types.VARCHAR:
+        case Types.LONGVARCHAR:
+            return ENC_STRING;
+        case Types.BINARY:
+        case Types.VARBINARY:
+        case Types.LONGVARBINARY:
+            return ENC_BYTES;
+        default:
+            return ENC_OBJECT;
+        }
+    }
+
+    private void readValue(ResultSet resultSet, int column)
+        throws SQLException
+    {
+        int ordinal = column + 1;
+        switch (encodings[column]) {
+        case ENC_LONG:
+            long v;
+            switch (columnTypes[column]) {
+            case Types.DATE:
+                java.sql.Date date = resultSet.getDate(ordinal);
+                v = (date == null) ? 0 : date.getTime();
+                break;
+            case Types.TIME:
+                Time time = resultSet.getTime(ordinal);
+                v = (time == null) ? 0 : time.getTime();
+                break;
+            case Types.TIMESTAMP:
+                Timestamp timestamp = resultSet.getTimestamp(ordinal);
+                v = (timestamp == null) ? 0 : timestamp.getTime();
+                break;
+            default:
+                v = resultSet.getLong(ordinal);
+                break;
+            }
+            longs[column][rowCount] = v;
+            break;
+        case ENC_BOOLEAN:
+            longs[column][rowCount] = resultSet.getBoolean(ordinal) ? 1 : 0;
+            break;
+        case ENC_FLOAT:
+            doubles[column][rowCount] = resultSet.getFloat(ordinal);
+            break;
+        case ENC_DOUBLE:
+            doubles[column][rowCount] = resultSet.getDouble(ordinal);
+            break;
+        case ENC_DECIMAL:
+            objects[column][rowCount] = resultSet.getBigDecimal(ordinal);
+            break;
+        case ENC_STRING:
+            objects[column][rowCount] = resultSet.getString(ordinal);
+            break;
+        case ENC_BYTES:
+            objects[column][rowCount] = resultSet.getBytes(ordinal);
+            break;
+        default:
+            objects[column][rowCount] = resultSet.getObject(ordinal);
+            break;
+        }
+        if (resultSet.wasNull()) {
+            if (nulls[column] == null) {
+                nulls[column] = new boolean[longestColumn(column)];
+            }
+            nulls[column][rowCount] = true;
+        }
+    }
+
+    private int longestColumn(int column)
+    {
+        if (longs[column] != null) {
+            return longs[column].length;
+        } else if (doubles[column] != null) {
+            return doubles[column].length;
+        } else {
+            return objects[column].length;
+        }
+    }
+
+    /**
+     * Converts decimal values to unscaled longs at a fixed scale.
+     *
+     * @return unscaled values, or null if some value does not fit in a long
+     * at the given scale
+     */
+    private long [] toUnscaled(Object [] values, boolean [] isNull, int scale)
+    {
+        long [] unscaled = new long[values.length];
+        for (int i = 0; i < rowCount; ++i) {
+            if ((isNull != null) && isNull[i]) {
+                continue;
+            }
+            BigInteger u;
+            try {
+                u = ((BigDecimal) values[i]).setScale(scale).unscaledValue();
+            } catch (ArithmeticException ex) {
+                return null;
+            }
+            if (u.bitLength() > 63) {
+                return null;
+            }
+            unscaled[i] = u.longValue();
+        }
+        return unscaled;
+    }
+
+    // implement Externalizable
+    public void writeExternal(ObjectOutput out)
+        throws IOException
+    {
+        out.writeObject(metaData);
+        out.writeObject(cursor);
+        out.writeBoolean(last);
+        out.writeInt(rowCount);
+        out.writeInt(columnTypes.length);
+        for (int c = 0; c < columnTypes.length; ++c) {
+            out.writeInt(columnTypes[c]);
+        }
+
+        // Encode everything except serialized objects into one buffer, so
+        // the stream sees a single block write instead of one call per
+        // value.
+        Encoder encoder = new Encoder();
+        for (int c = 0; c < columnTypes.length; ++c) {
+            writeColumn(encoder, c);
+        }
+        out.writeInt(encoder.size);
+        out.write(encoder.buf, 0, encoder.size);
+
+        for (int c = 0; c < columnTypes.length; ++c) {
+            if (encodings[c] == ENC_OBJECT) {
+                Object [] values = new Object[rowCount];
+                System.arraycopy(objects[c], 0, values, 0, rowCount);
+                out.writeObject(values);
+            }
+        }
+    }
+
+    private void writeColumn(Encoder encoder, int column)
+        throws IOException
+    {
+        byte encoding = encodings[column];
+        Map dictionary = null;
+        if (encoding == ENC_STRING) {
+            dictionary = buildDictionary(column);
+            if (dictionary != null) {
+                encoding = ENC_STRING_DICT;
+            }
+        }
+        encoder.writeByte(encoding);
+
+        boolean [] isNull = nulls[column];
+        if (isNull == null) {
+            encoder.writeByte(0);
+        } else {
+            encoder.writeByte(1);
+            encoder.writeBitmap(isNull, rowCount);
+        }
+
+        switch (encoding) {
+        case ENC_LONG:
+        case ENC_DECIMAL:
+            if (encoding == ENC_DECIMAL) {
+                encoder.writeVarLong(scales[column]);
+            }
+            long [] lv = longs[column];
+            long prev = 0;
+            for (int i = 0; i < rowCount; ++i) {
+                if ((isNull == null) || !isNull[i]) {
+                    encoder.writeZigzag(lv[i] - prev);
+                    prev = lv[i];
+                }
+            }
+            break;
+        case ENC_BOOLEAN:
+            long [] bv = longs[column];
+            boolean [] bits = new boolean[rowCount];
+            for (int i = 0; i < rowCount; ++i) {
+                bits[i] = bv[i] != 0;
+            }
+            encoder.writeBitmap(bits, rowCount);
+            break;
+        case ENC_FLOAT:
+            double [] fv = doubles[column];
+            for (int i = 0; i < rowCount; ++i) {
+                if ((isNull == null) || !isNull[i]) {
+                    encoder.writeInt(Float.floatToIntBits((float) fv[i]));
+                }
+            }
+            break;
+        case ENC_DOUBLE:
+            double [] dv = doubles[column];
+            for (int i = 0; i < rowCount; ++i) {
+                if ((isNull == null) || !isNull[i]) {
+                    encoder.writeLong(Double.doubleToLongBits(dv[i]));
+                }
+            }
+            break;
+        case ENC_STRING_DICT:
+            String [] entries = new String[dictionary.size()];
+            Iterator iter = dictionary.entrySet().iterator();
+            while (iter.hasNext()) {
+                Map.Entry entry = (Map.Entry) iter.next();
+                entries[((Integer) entry.getValue()).intValue()] =
+                    (String) entry.getKey();
+            }
+            encoder.writeVarLong(entries.length);
+            for (int i = 0; i < entries.length; ++i) {
+                encoder.writeBytes(entries[i].getBytes(UTF8));
+            }
+            for (int i = 0; i < rowCount; ++i) {
+                if ((isNull == null) || !isNull[i]) {
+                    Integer code = (Integer) dictionary.get(objects[column][i]);
+                    encoder.writeVarLong(code.intValue());
+                }
+            }
+            break;
+        case ENC_STRING:
+            for (int i = 0; i < rowCount; ++i) {
+                if ((isNull == null) || !isNull[i]) {
+                    String s = (String) objects[column][i];
+                    encoder.writeBytes(s.getBytes(UTF8));
+                }
+            }
+            break;
+        case ENC_BYTES:
+            for (int i = 0; i < rowCount; ++i) {
+                if ((isNull == null) || !isNull[i]) {
+                    encoder.writeBytes((byte []) objects[column][i]);
+                }
+            }
+            break;
+        default:
+            // written after the buffer
+            break;
+        }
+    }
+
+    /**
+     * Builds a dictionary for a string column if the column repeats values
+     * often enough for codes to be shorter than the strings.
+     *
+     * @return map from each distinct value to its code, or null if the column
+     * has too many distinct values
+     */
+    private Map buildDictionary(int column)
+    {
+        boolean [] isNull = nulls[column];
+        Object [] values = objects[column];
+        int nonNull = 0;
+        for (int i = 0; i < rowCount; ++i) {
+            if ((isNull == null) || !isNull[i]) {
+                ++nonNull;
+            }
+        }
+        int maxEntries = nonNull / 2;
+        Map dictionary = new HashMap();
+        for (int i = 0; i < rowCount; ++i) {
+            if ((isNull != null) && isNull[i]) {
+                continue;
+            }
+            if (!dictionary.containsKey(values[i])) {
+                if (dictionary.size() >= maxEntries) {
+                    return null;
+                }
+                dictionary.put(values[i], new Integer(dictionary.size()));
+            }
+        }
+        return dictionary;
+    }
+
+    // implement Externalizable
+    public void readExternal(ObjectInput in)
+        throws IOException, ClassNotFoundException
+    {
+        metaData = (SerialResultSetMetaData) in.readObject();
+        cursor = (UIDEx) in.readObject();
+        last = in.readBoolean();
+        rowCount = in.readInt();
+        int columnCount = in.readInt();
+        allocate(columnCount);
+        for (int c = 0; c < columnCount; ++c) {
+            columnTypes[c] = in.readInt();
+        }
+
+        byte [] buf = new byte[in.readInt()];
+        in.readFully(buf);
+        Decoder decoder = new Decoder(buf);
+        for (int c = 0; c < columnCount; ++c) {
+            readColumn(decoder, c);
+        }
+
+        for (int c = 0; c < columnCount; ++c) {
+            if (encodings[c] == ENC_OBJECT) {
+                objects[c] = (Object []) in.readObject();
+            }
+        }
+    }
+
+    private void readColumn(Decoder decoder, int column)
+        throws IOException
+    {
+        byte encoding = decoder.readByte();
+        encodings[column] =
+            (encoding == ENC_STRING_DICT) ? ENC_STRING : encoding;
+
+        boolean [] isNull = null;
+        if (decoder.readByte() != 0) {
+            isNull = decoder.readBitmap(rowCount);
+            nulls[column] = isNull;
+        }
+
+        switch (encoding) {
+        case ENC_LONG:
+        case ENC_DECIMAL:
+            if (encoding == ENC_DECIMAL) {
+                scales[column] = (int) decoder.readVarLong();
+            }
+            long [] lv = new long[rowCount];
+            long prev = 0;
+            for (int i = 0; i < rowCount; ++i) {
+                if ((isNull == null) || !isNull[i]) {
+                    prev += decoder.readZigzag();
+                    lv[i] = prev;
+                }
+            }
+            longs[column] = lv;
+            break;
+        case ENC_BOOLEAN:
+            boolean [] bits = decoder.readBitmap(rowCount);
+            long [] bv = new long[rowCount];
+            for (int i = 0; i < rowCount; ++i) {
+                bv[i] = bits[i] ? 1 : 0;
+            }
+            longs[column] = bv;
+            break;
+        case ENC_FLOAT:
+            double [] fv = new double[rowCount];
+            for (int i = 0; i < rowCount; ++i) {
+                if ((isNull == null) || !isNull[i]) {
+                    fv[i] = Float.intBitsToFloat(decoder.readInt());
+                }
+            }
+            doubles[column] = fv;
+            break;
+        case ENC_DOUBLE:
+            double [] dv = new double[rowCount];
+            for (int i = 0; i < rowCount; ++i) {
+                if ((isNull == null) || !isNull[i]) {
+                    dv[i] = Double.longBitsToDouble(decoder.readLong());
+                }
+            }
+            doubles[column] = dv;
+            break;
+        case ENC_STRING_DICT:
+            String [] entries = new String[(int) decoder.readVarLong()];
+            for (int i = 0; i < entries.length; ++i) {
+                entries[i] = decoder.readString();
+            }
+            Object [] codedValues = new Object[rowCount];
+            for (int i = 0; i < rowCount; ++i) {
+                if ((isNull == null) || !isNull[i]) {
+                    codedValues[i] = entries[(int) decoder.readVarLong()];
+                }
+            }
+            objects[column] = codedValues;
+            break;
+        case ENC_STRING:
+            Object [] sv = new Object[rowCount];
+            for (int i = 0; i < rowCount; ++i) {
+                if ((isNull == null) || !isNull[i]) {
+                    sv[i] = decoder.readString();
+                }
+            }
+            objects[column] = sv;
+            break;
+        case ENC_BYTES:
+            Object [] yv = new Object[rowCount];
+            for (int i = 0; i < rowCount; ++i) {
+                if ((isNull == null) || !isNull[i]) {
+                    yv[i] = decoder.readBytes();
+                }
+            }
+            objects[column] = yv;
+            break;
+        case ENC_OBJECT:
+            // read after the buffer
+            break;
+        default:
+            throw new StreamCorruptedException(
+                "unknown column encoding " + encoding);
+        }
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Growable byte buffer with the primitive writes used by the batch
+     * encodings.
+     */
+    private static class Encoder
+    {
+        byte [] buf = new byte[8192];
+        int size;
+
+        private void reserve(int n)
+        {
+            if ((size + n) > buf.length) {
+                byte [] newBuf = new byte[Math.max(buf.length * 2, size + n)];
+                System.arraycopy(buf, 0, newBuf, 0, size);
+                buf = newBuf;
+            }
+        }
+
+        void writeByte(int b)
+        {
+            reserve(1);
+            buf[size++] = (byte) b;
+        }
+
+        void writeInt(int v)
+        {
+            reserve(4);
+            buf[size++] = (byte) (v >>> 24);
+            buf[size++] = (byte) (v >>> 16);
+            buf[size++] = (byte) (v >>> 8);
+            buf[size++] = (byte) v;
+        }
+
+        void writeLong(long v)
+        {
+            writeInt((int) (v >>> 32));
+            writeInt((int) v);
+        }
+
+        void writeVarLong(long v)
+        {
+            reserve(10);
+            while ((v & ~0x7FL) != 0) {
+                buf[size++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[size++] = (byte) v;
+        }
+
+        void writeZigzag(long v)
+        {
+            writeVarLong((v << 1) ^ (v >> 63));
+        }
+
+        void writeBytes(byte [] b)
+        {
+            writeVarLong(b.length);
+            reserve(b.length);
+            System.arraycopy(b, 0, buf, size, b.length);
+            size += b.length;
+        }
+
+        void writeBitmap(boolean [] bits, int n)
+        {
+            reserve((n + 7) / 8);
+            for (int i = 0; i < n; i += 8) {
+                int b = 0;
+                for (int j = 0; (j < 8) && ((i + j) < n); ++j) {
+                    if (bits[i + j]) {
+                        b |= 1 << j;
+                    }
+                }
+                buf[size++] = (byte) b;
+            }
+        }
+    }
+
+    /**
+     * Reads the primitives written by {@link Encoder}.
+     */
+    private static class Decoder
+    {
+        final byte [] buf;
+        int pos;
+
+        Decoder(byte [] buf)
+        {
+            this.buf = buf;
+        }
+
+        byte readByte()
+        {
+            return buf[pos++];
+        }
+
+        int readInt()
+        {
+            int v =
+                ((buf[pos] & 0xFF) << 24) | ((buf[pos + 1] & 0xFF) << 16)
+                | ((buf[pos + 2] & 0xFF) << 8) | (buf[pos + 3] & 0xFF);
+            pos += 4;
+            return v;
+        }
+
+        long readLong()
+        {
+            long high = readInt();
+            long low = readInt() & 0xFFFFFFFFL;
+            return (high << 32) | low;
+        }
+
+        long readVarLong()
+        {
+            long v = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buf[pos++];
+                v |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return v;
+        }
+
+        long readZigzag()
+        {
+            long v = readVarLong();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        byte [] readBytes()
+        {
+            byte [] b = new byte[(int) readVarLong()];
+            System.arraycopy(buf, pos, b, 0, b.length);
+            pos += b.length;
+            return b;
+        }
+
+        String readString()
+            throws IOException
+        {
+            int len = (int) readVarLong();
+            String s = new String(buf, pos, len, UTF8);
+            pos += len;
+            return s;
+        }
+
+        boolean [] readBitmap(int n)
+        {
+            boolean [] bits = new boolean[n];
+            for (int i = 0; i < n; ++i) {
+                bits[i] = (buf[pos + (i >> 3)] & (1 << (i & 7))) != 0;
+            }
+            pos += (n + 7) / 8;
+            return bits;
+        }
+    }
+}
+
+// End FarragoVjdbcColumnarBatch.java
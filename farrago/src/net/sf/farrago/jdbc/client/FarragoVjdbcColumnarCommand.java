@@ -0,0 +1,270 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2006 The Eigenbase Project
+// Copyright (C) 2006 SQLstream, Inc.
+// Copyright (C) 2006 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.jdbc.client;
+
+import de.simplicit.vjdbc.command.*;
+import de.simplicit.vjdbc.serial.*;
+import de.simplicit.vjdbc.util.*;
+
+import java.io.*;
+
+import java.sql.*;
+
+
+/**
+ * FarragoVjdbcColumnarCommand is a VJDBC command which executes a query or
+ * reads from an open query on the server, returning rows as a {@link
+ * FarragoVjdbcColumnarBatch}.
+ *
+ * <p>Executing a query returns its first batch. If more rows remain, the
+ * server keeps the result set open as a cursor, registered with the VJDBC
+ * connection like any other server-side JDBC object, and the batch carries
+ * the cursor's identifier; the client then fetches each following batch
+ * with a command addressed to the cursor. The server closes the cursor as
+ * soon as it has sent the last batch, so a client which reads to the end
+ * never needs to close it explicitly.
+ *
+ * <p>Batches are wrapped in a {@link SerializableTransport}, so they are
+ * compressed according to the compression mode and threshold configured for
+ * the VJDBC connection, just as VJDBC's own row packets are.
+ *
+ * @version $Id$
+ */
+public class FarragoVjdbcColumnarCommand
+    implements Command
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final long serialVersionUID = 3304928571720496127L;
+
+    private static final int OP_EXECUTE = 0;
+    private static final int OP_FETCH = 1;
+    private static final int OP_CLOSE = 2;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private int op;
+    private String sql;
+    private Long cursorUid;
+    private int batchRows;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates an empty command, to be filled by {@link #readExternal}.
+     */
+    public FarragoVjdbcColumnarCommand()
+    {
+    }
+
+    private FarragoVjdbcColumnarCommand(
+        int op,
+        String sql,
+        Long cursorUid,
+        int batchRows)
+    {
+        this.op = op;
+        this.sql = sql;
+        this.cursorUid = cursorUid;
+        this.batchRows = batchRows;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Creates a command which executes a query on a server-side statement.
+     *
+     * @param sql query text
+     * @param batchRows maximum number of rows in each batch
+     */
+    public static FarragoVjdbcColumnarCommand newExecute(
+        String sql,
+        int batchRows)
+    {
+        return new FarragoVjdbcColumnarCommand(
+            OP_EXECUTE,
+            sql,
+            null,
+            batchRows);
+    }
+
+    /**
+     * Creates a command which fetches the next batch from a server-side
+     * cursor.
+     *
+     * @param cursor cursor identifier, from {@link
+     * FarragoVjdbcColumnarBatch#getCursor}
+     * @param batchRows maximum number of rows in the batch
+     */
+    public static FarragoVjdbcColumnarCommand newFetch(
+        UIDEx cursor,
+        int batchRows)
+    {
+        return new FarragoVjdbcColumnarCommand(
+            OP_FETCH,
+            null,
+            cursor.getUID(),
+            batchRows);
+    }
+
+    /**
+     * Creates a command which closes a server-side cursor before its last
+     * batch has been fetched.
+     *
+     * @param cursor cursor identifier
+     */
+    public static FarragoVjdbcColumnarCommand newClose(UIDEx cursor)
+    {
+        return new FarragoVjdbcColumnarCommand(
+            OP_CLOSE,
+            null,
+            cursor.getUID(),
+            0);
+    }
+
+    /**
+     * Sends a command and unwraps the batch it returns.
+     *
+     * @param sink command sink of the client connection
+     * @param uid identifier of the statement or cursor the command addresses
+     * @param command command to send
+     *
+     * @return batch returned by the server
+     */
+    public static FarragoVjdbcColumnarBatch process(
+        DecoratedCommandSink sink,
+        UIDEx uid,
+        FarragoVjdbcColumnarCommand command)
+        throws SQLException
+    {
+        Object result = sink.process(uid, command, true);
+        try {
+            return (FarragoVjdbcColumnarBatch)
+                ((SerializableTransport) result).getTransportee();
+        } catch (Exception ex) {
+            throw SQLExceptionHelper.wrap(ex);
+        }
+    }
+
+    // implement Command
+    public Object execute(Object target, ConnectionContext ctx)
+        throws SQLException
+    {
+        switch (op) {
+        case OP_EXECUTE:
+            ResultSet resultSet =
+                ((Statement) target).executeQuery(
+                    ctx.resolveOrCheckQuery(sql));
+            return fetch(resultSet, true, ctx);
+        case OP_FETCH:
+            return fetch(getCursor(target), false, ctx);
+        case OP_CLOSE:
+            ctx.removeJDBCObject(cursorUid);
+            getCursor(target).close();
+            return null;
+        default:
+            throw new SQLException("unknown columnar fetch operation " + op);
+        }
+    }
+
+    private ResultSet getCursor(Object target)
+        throws SQLException
+    {
+        if (!(target instanceof ResultSet)) {
+            throw new SQLException(
+                "columnar cursor " + cursorUid + " is closed");
+        }
+        return (ResultSet) target;
+    }
+
+    private Object fetch(
+        ResultSet resultSet,
+        boolean first,
+        ConnectionContext ctx)
+        throws SQLException
+    {
+        FarragoVjdbcColumnarBatch batch;
+        try {
+            batch = new FarragoVjdbcColumnarBatch(resultSet, batchRows, first);
+        } catch (SQLException ex) {
+            closeCursor(resultSet, first, ctx);
+            throw ex;
+        }
+        if (batch.isLast()) {
+            closeCursor(resultSet, first, ctx);
+        } else if (first) {
+            UIDEx cursor = new UIDEx();
+            ctx.addJDBCObject(cursor.getUID(), resultSet);
+            batch.setCursor(cursor);
+        }
+        return new SerializableTransport(
+            batch,
+            ctx.getCompressionMode(),
+            ctx.getCompressionThreshold());
+    }
+
+    private void closeCursor(
+        ResultSet resultSet,
+        boolean first,
+        ConnectionContext ctx)
+        throws SQLException
+    {
+        if (!first) {
+            ctx.removeJDBCObject(cursorUid);
+        }
+        resultSet.close();
+    }
+
+    // implement Externalizable
+    public void writeExternal(ObjectOutput out)
+        throws IOException
+    {
+        out.writeInt(op);
+        out.writeObject(sql);
+        out.writeObject(cursorUid);
+        out.writeInt(batchRows);
+    }
+
+    // implement Externalizable
+    public void readExternal(ObjectInput in)
+        throws IOException, ClassNotFoundException
+    {
+        op = in.readInt();
+        sql = (String) in.readObject();
+        cursorUid = (Long) in.readObject();
+        batchRows = in.readInt();
+    }
+
+    public String toString()
+    {
+        switch (op) {
+        case OP_EXECUTE:
+            return "FarragoVjdbcColumnarCommand: execute " + sql;
+        case OP_FETCH:
+            return "FarragoVjdbcColumnarCommand: fetch " + cursorUid;
+        default:
+            return "FarragoVjdbcColumnarCommand: close " + cursorUid;
+        }
+    }
+}
+
+// End FarragoVjdbcColumnarCommand.java
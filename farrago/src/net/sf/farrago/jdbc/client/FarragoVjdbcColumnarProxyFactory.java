@@ -0,0 +1,245 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2006 The Eigenbase Project
+// Copyright (C) 2006 SQLstream, Inc.
+// Copyright (C) 2006 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.jdbc.client;
+
+import de.simplicit.vjdbc.*;
+import de.simplicit.vjdbc.command.*;
+
+import java.lang.reflect.*;
+
+import java.sql.*;
+
+import java.util.*;
+
+
+/**
+ * FarragoVjdbcColumnarProxyFactory makes the statements of a VJDBC client
+ * connection fetch query results in columnar batches (see {@link
+ * FarragoVjdbcColumnarCommand}) instead of VJDBC's serialized row packets.
+ *
+ * <p>Columnar fetch is enabled by the connection property
+ * <code>columnarFetch=true</code>; <code>columnarFetchBatchRows</code> sets
+ * the number of rows per batch. The factory wraps each plain {@link
+ * Statement} the connection creates so that {@link Statement#executeQuery}
+ * returns a {@link FarragoVjdbcColumnarResultSet}. Prepared and callable
+ * statements, and results obtained through {@link Statement#execute}, keep
+ * using row packets.
+ *
+ * @version $Id$
+ */
+public class FarragoVjdbcColumnarProxyFactory
+    implements ProxyFactory
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * Connection property which enables columnar fetch.
+     */
+    public static final String PROP_COLUMNAR_FETCH = "columnarFetch";
+
+    /**
+     * Connection property which sets the number of rows per columnar batch.
+     */
+    public static final String PROP_COLUMNAR_FETCH_BATCH_ROWS =
+        "columnarFetchBatchRows";
+
+    private static final int DEFAULT_BATCH_ROWS = 4096;
+
+    private static final int MAX_BATCH_ROWS = 65536;
+
+    /**
+     * VJDBC keeps each object's command sink in a protected field with no
+     * accessor; null if it cannot be read, in which case columnar fetch is
+     * silently disabled.
+     */
+    private static final Field sinkField = findSinkField();
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final int batchRows;
+
+    //~ Constructors -----------------------------------------------------------
+
+    private FarragoVjdbcColumnarProxyFactory(int batchRows)
+    {
+        this.batchRows = batchRows;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Creates a factory if the connection properties enable columnar fetch.
+     * Removes the columnar fetch properties, since they are not understood by
+     * the server.
+     *
+     * @param props client connection properties
+     *
+     * @return new factory, or null if columnar fetch is not enabled
+     */
+    public static FarragoVjdbcColumnarProxyFactory newInstance(Properties props)
+        throws SQLException
+    {
+        String enabled = (String) props.remove(PROP_COLUMNAR_FETCH);
+        String batchRowsString =
+            (String) props.remove(PROP_COLUMNAR_FETCH_BATCH_ROWS);
+        if ((enabled == null)
+            || !enabled.equalsIgnoreCase("true")
+            || (sinkField == null))
+        {
+            return null;
+        }
+        int batchRows = DEFAULT_BATCH_ROWS;
+        if (batchRowsString != null) {
+            try {
+                batchRows = Integer.parseInt(batchRowsString);
+            } catch (NumberFormatException ex) {
+                throw new SQLException(
+                    "invalid " + PROP_COLUMNAR_FETCH_BATCH_ROWS + " '"
+                    + batchRowsString + "'");
+            }
+            batchRows = Math.max(1, Math.min(batchRows, MAX_BATCH_ROWS));
+        }
+        return new FarragoVjdbcColumnarProxyFactory(batchRows);
+    }
+
+    /**
+     * Installs a factory on a new VJDBC connection.
+     *
+     * @param connection connection returned by the VJDBC driver
+     * @param factory factory, or null if columnar fetch is not enabled
+     *
+     * @return the connection
+     */
+    public static Connection install(
+        Connection connection,
+        FarragoVjdbcColumnarProxyFactory factory)
+    {
+        if ((factory != null) && (connection instanceof VirtualConnection)) {
+            ((VirtualConnection) connection).setProxyFactory(factory);
+        }
+        return connection;
+    }
+
+    private static Field findSinkField()
+    {
+        try {
+            Field field = VirtualBase.class.getDeclaredField("_sink");
+            field.setAccessible(true);
+            return field;
+        } catch (Exception ex) {
+            return null;
+        }
+    }
+
+    // implement ProxyFactory
+    public Object makeJdbcObject(Object obj)
+        throws SQLException
+    {
+        // only plain statements; subclasses carry parameters which the
+        // columnar command does not send
+        if ((obj == null) || (obj.getClass() != VirtualStatement.class)) {
+            return obj;
+        }
+        VirtualStatement statement = (VirtualStatement) obj;
+        DecoratedCommandSink sink;
+        try {
+            sink = (DecoratedCommandSink) sinkField.get(statement);
+        } catch (IllegalAccessException ex) {
+            return obj;
+        }
+        StatementHandler handler = new StatementHandler(statement, sink);
+        Statement proxy =
+            (Statement) Proxy.newProxyInstance(
+                FarragoVjdbcColumnarProxyFactory.class.getClassLoader(),
+                new Class[] { Statement.class },
+                handler);
+        handler.proxy = proxy;
+        return proxy;
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Forwards statement calls to the VJDBC statement, except for queries
+     * executed with {@link Statement#executeQuery}, which it runs with a
+     * columnar command.
+     */
+    private class StatementHandler
+        implements InvocationHandler
+    {
+        private final VirtualStatement statement;
+        private final DecoratedCommandSink sink;
+        private Statement proxy;
+        private FarragoVjdbcColumnarResultSet resultSet;
+
+        StatementHandler(
+            VirtualStatement statement,
+            DecoratedCommandSink sink)
+        {
+            this.statement = statement;
+            this.sink = sink;
+        }
+
+        // implement InvocationHandler
+        public Object invoke(Object obj, Method method, Object [] args)
+            throws Throwable
+        {
+            String name = method.getName();
+            if (name.startsWith("execute") || name.equals("close")) {
+                // JDBC closes a statement's current result set when the
+                // statement executes again or is closed
+                if (resultSet != null) {
+                    resultSet.close();
+                    resultSet = null;
+                }
+                if (name.equals("executeQuery") && (args.length == 1)) {
+                    resultSet = executeQuery((String) args[0]);
+                    return resultSet;
+                }
+            } else if (name.equals("getResultSet") && (resultSet != null)) {
+                return resultSet;
+            }
+            try {
+                return method.invoke(statement, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getTargetException();
+            }
+        }
+
+        private FarragoVjdbcColumnarResultSet executeQuery(String sql)
+            throws SQLException
+        {
+            FarragoVjdbcColumnarBatch batch =
+                FarragoVjdbcColumnarCommand.process(
+                    sink,
+                    statement.getObjectUID(),
+                    FarragoVjdbcColumnarCommand.newExecute(sql, batchRows));
+            return new FarragoVjdbcColumnarResultSet(
+                proxy,
+                sink,
+                batch,
+                batchRows);
+        }
+    }
+}
+
+// End FarragoVjdbcColumnarProxyFactory.java
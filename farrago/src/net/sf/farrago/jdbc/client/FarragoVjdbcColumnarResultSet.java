@@ -0,0 +1,333 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2006 The Eigenbase Project
+// Copyright (C) 2006 SQLstream, Inc.
+// Copyright (C) 2006 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.jdbc.client;
+
+import de.simplicit.vjdbc.command.*;
+import de.simplicit.vjdbc.serial.*;
+import de.simplicit.vjdbc.util.*;
+
+import java.sql.*;
+
+import org.eigenbase.util14.*;
+
+
+/**
+ * FarragoVjdbcColumnarResultSet is the client side of a query whose rows are
+ * fetched in {@link FarragoVjdbcColumnarBatch columnar batches}.
+ *
+ * <p>While the application reads one batch, a background thread fetches the
+ * next one from the server, so that the network round trip and the server's
+ * work overlap with the client's. At most one batch is fetched ahead. The
+ * background thread is the only user of the server-side cursor once it has
+ * started; if the result set is closed before the last batch arrives, the
+ * thread closes the cursor when its current fetch completes.
+ *
+ * @version $Id$
+ */
+public class FarragoVjdbcColumnarResultSet
+    extends AbstractResultSet
+{
+    //~ Instance fields --------------------------------------------------------
+
+    private final Statement statement;
+    private final ResultSetMetaData metaData;
+    private final Prefetcher prefetcher;
+    private FarragoVjdbcColumnarBatch batch;
+    private int batchRow;
+    private int row;
+    private boolean closed;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a FarragoVjdbcColumnarResultSet.
+     *
+     * @param statement statement which executed the query
+     * @param sink command sink of the statement's connection
+     * @param firstBatch first batch of the result, returned by executing the
+     * query
+     * @param batchRows number of rows to request in each following batch
+     */
+    public FarragoVjdbcColumnarResultSet(
+        Statement statement,
+        DecoratedCommandSink sink,
+        FarragoVjdbcColumnarBatch firstBatch,
+        int batchRows)
+    {
+        this.statement = statement;
+        this.metaData = firstBatch.getMetaData();
+        this.batch = firstBatch;
+        this.batchRow = -1;
+        if (firstBatch.isLast()) {
+            prefetcher = null;
+        } else {
+            prefetcher =
+                new Prefetcher(sink, firstBatch.getCursor(), batchRows);
+            Thread thread = new Thread(prefetcher, "Farrago columnar fetch");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement ResultSet
+    public boolean next()
+        throws SQLException
+    {
+        if (closed) {
+            throw new SQLException("ResultSet closed");
+        }
+        while ((batchRow + 1) >= batch.getRowCount()) {
+            if (batch.isLast()) {
+                batchRow = batch.getRowCount();
+                return false;
+            }
+            batch = prefetcher.take();
+            batchRow = -1;
+        }
+        ++batchRow;
+        ++row;
+        return true;
+    }
+
+    // implement ResultSet
+    public void close()
+        throws SQLException
+    {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        batch = null;
+        if (prefetcher != null) {
+            prefetcher.stop();
+        }
+    }
+
+    // implement ResultSet
+    public boolean isClosed()
+        throws SQLException
+    {
+        return closed;
+    }
+
+    // implement ResultSet
+    public ResultSetMetaData getMetaData()
+        throws SQLException
+    {
+        return metaData;
+    }
+
+    // implement ResultSet
+    public Statement getStatement()
+        throws SQLException
+    {
+        return statement;
+    }
+
+    // implement ResultSet
+    public int getRow()
+        throws SQLException
+    {
+        return row;
+    }
+
+    // implement ResultSet
+    public boolean isBeforeFirst()
+        throws SQLException
+    {
+        return row == 0;
+    }
+
+    // implement AbstractResultSet
+    protected Object getRaw(int columnIndex)
+        throws SQLException
+    {
+        return batch.getObject(
+            checkRow(),
+            checkColumn(columnIndex));
+    }
+
+    // override AbstractResultSet: read integer columns without boxing
+    public int getInt(int columnIndex)
+        throws SQLException
+    {
+        int r = checkRow();
+        int c = checkColumn(columnIndex);
+        if (!batch.isIntegral(c)) {
+            return super.getInt(columnIndex);
+        }
+        wasNull = batch.isNull(r, c);
+        return (int) batch.getLong(r, c);
+    }
+
+    // override AbstractResultSet: read integer columns without boxing
+    public long getLong(int columnIndex)
+        throws SQLException
+    {
+        int r = checkRow();
+        int c = checkColumn(columnIndex);
+        if (!batch.isIntegral(c)) {
+            return super.getLong(columnIndex);
+        }
+        wasNull = batch.isNull(r, c);
+        return batch.getLong(r, c);
+    }
+
+    // override AbstractResultSet: read floating-point columns without boxing
+    public double getDouble(int columnIndex)
+        throws SQLException
+    {
+        int r = checkRow();
+        int c = checkColumn(columnIndex);
+        if (!batch.isApproximate(c)) {
+            return super.getDouble(columnIndex);
+        }
+        wasNull = batch.isNull(r, c);
+        return batch.getDouble(r, c);
+    }
+
+    private int checkRow()
+        throws SQLException
+    {
+        if (closed) {
+            throw new SQLException("ResultSet closed");
+        }
+        if ((batchRow < 0) || (batchRow >= batch.getRowCount())) {
+            throw new SQLException("ResultSet not positioned on a row");
+        }
+        return batchRow;
+    }
+
+    private int checkColumn(int columnIndex)
+        throws SQLException
+    {
+        if ((columnIndex < 1) || (columnIndex > metaData.getColumnCount())) {
+            throw new SQLException("invalid column index " + columnIndex);
+        }
+        return columnIndex - 1;
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Fetches batches from the server-side cursor one ahead of the consumer.
+     */
+    private static class Prefetcher
+        implements Runnable
+    {
+        private final DecoratedCommandSink sink;
+        private final UIDEx cursor;
+        private final int batchRows;
+
+        // guarded by this
+        private FarragoVjdbcColumnarBatch ready;
+        private SQLException error;
+        private boolean stopped;
+
+        Prefetcher(
+            DecoratedCommandSink sink,
+            UIDEx cursor,
+            int batchRows)
+        {
+            this.sink = sink;
+            this.cursor = cursor;
+            this.batchRows = batchRows;
+        }
+
+        // implement Runnable
+        public void run()
+        {
+            try {
+                for (;;) {
+                    synchronized (this) {
+                        while ((ready != null) && !stopped) {
+                            wait();
+                        }
+                        if (stopped) {
+                            break;
+                        }
+                    }
+                    FarragoVjdbcColumnarBatch next =
+                        FarragoVjdbcColumnarCommand.process(
+                            sink,
+                            cursor,
+                            FarragoVjdbcColumnarCommand.newFetch(
+                                cursor,
+                                batchRows));
+                    synchronized (this) {
+                        ready = next;
+                        notifyAll();
+                    }
+                    if (next.isLast()) {
+                        // the server has closed the cursor
+                        return;
+                    }
+                }
+                sink.process(
+                    cursor,
+                    FarragoVjdbcColumnarCommand.newClose(cursor),
+                    true);
+            } catch (Throwable ex) {
+                synchronized (this) {
+                    error = SQLExceptionHelper.wrap(ex);
+                    notifyAll();
+                }
+            }
+        }
+
+        /**
+         * Waits for the next batch.
+         */
+        synchronized FarragoVjdbcColumnarBatch take()
+            throws SQLException
+        {
+            try {
+                while ((ready == null) && (error == null)) {
+                    wait();
+                }
+            } catch (InterruptedException ex) {
+                throw SQLExceptionHelper.wrap(ex);
+            }
+            if (ready == null) {
+                throw error;
+            }
+            FarragoVjdbcColumnarBatch next = ready;
+            ready = null;
+            notifyAll();
+            return next;
+        }
+
+        /**
+         * Asks the thread to close the cursor and finish.
+         */
+        synchronized void stop()
+        {
+            stopped = true;
+            ready = null;
+            notifyAll();
+        }
+    }
+}
+
+// End FarragoVjdbcColumnarResultSet.java
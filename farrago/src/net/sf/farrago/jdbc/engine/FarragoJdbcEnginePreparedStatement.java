@@ -32,6 +32,7 @@ import java.sql.*;
 import java.sql.Date;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 import net.sf.farrago.session.*;
 
@@ -79,6 +80,25 @@ public abstract class FarragoJdbcEnginePreparedStatement
 
     //~ Methods ----------------------------------------------------------------
 
+    /**
+     * Executes this statement on a background thread, as {@link #execute()}
+     * would, and returns at once. See {@link
+     * FarragoJdbcEngineStatement#submit(String)} for how to use the result.
+     *
+     * @return future result of execute
+     */
+    public Future<Boolean> submit()
+    {
+        return submit(
+            new Callable<Boolean>() {
+                public Boolean call()
+                    throws SQLException
+                {
+                    return execute();
+                }
+            });
+    }
+
     // implement PreparedStatement
     public ResultSetMetaData getMetaData()
         throws SQLException
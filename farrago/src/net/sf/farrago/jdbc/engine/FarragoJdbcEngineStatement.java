@@ -24,6 +24,9 @@ package net.sf.farrago.jdbc.engine;
 
 import java.sql.*;
 
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
 import net.sf.farrago.jdbc.*;
 import net.sf.farrago.resource.*;
 import net.sf.farrago.session.*;
@@ -44,6 +47,16 @@ public class FarragoJdbcEngineStatement
     extends Unwrappable
     implements FarragoStatement
 {
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * Pool of threads which run statements submitted for background
+     * execution. Threads are daemons, so that a statement which never
+     * completes cannot prevent shutdown.
+     */
+    private static final ExecutorService executionPool =
+        Executors.newCachedThreadPool(new ExecutionThreadFactory());
+
     //~ Instance fields --------------------------------------------------------
 
     /**
@@ -306,6 +319,79 @@ public class FarragoJdbcEngineStatement
         return timeoutMillis / 1000;
     }
 
+    /**
+     * Enables or disables prefetch for queries subsequently executed by this
+     * statement. The result set of a prefetching query keeps fetching rows on
+     * a background thread while the application processes the rows it already
+     * has, buffering up to <code>pageCount</code> pages of <code>
+     * pageRows</code> rows each. Prefetch is disabled by default.
+     *
+     * @param pageRows maximum number of rows per page; must be positive if
+     * pageCount is
+     * @param pageCount maximum number of pages fetched ahead, or 0 to disable
+     * prefetch
+     */
+    public void setPrefetch(int pageRows, int pageCount)
+        throws SQLException
+    {
+        if ((pageRows < 0) || (pageCount < 0)) {
+            throw FarragoJdbcEngineDriver.newSqlException(
+                ERRMSG_REQ_NON_NEG + "pageRows=" + pageRows
+                + ", pageCount=" + pageCount);
+        }
+        if ((pageCount > 0) && (pageRows == 0)) {
+            throw FarragoJdbcEngineDriver.newSqlException(
+                "Prefetch requires a positive page size: pageRows=0");
+        }
+        stmtContext.setPrefetch(pageRows, pageCount);
+    }
+
+    /**
+     * Executes an SQL statement on a background thread, as {@link
+     * #execute(String)} would, and returns at once.
+     *
+     * <p>The returned future completes with the value that execute returns:
+     * true if the statement produced a result set, which is then available
+     * from {@link #getResultSet}, or false if it produced an update count.
+     * Use {@link Future#isDone} to poll for completion and {@link Future#get}
+     * to await it; an exception thrown by execute is reported as the cause of
+     * an {@link ExecutionException}. Canceling the future with <code>
+     * mayInterruptIfRunning</code> true also cancels the statement if it has
+     * started to execute.
+     *
+     * <p>Until the future completes, the only other methods which may be
+     * called on this statement are {@link #cancel} and {@link #close}.
+     *
+     * @param sql statement text
+     *
+     * @return future result of execute
+     */
+    public Future<Boolean> submit(final String sql)
+    {
+        return submit(
+            new Callable<Boolean>() {
+                public Boolean call()
+                    throws SQLException
+                {
+                    return execute(sql);
+                }
+            });
+    }
+
+    /**
+     * Runs an execution of this statement on a background thread.
+     *
+     * @param execution execution to run
+     *
+     * @return future result of the execution
+     */
+    protected Future<Boolean> submit(Callable<Boolean> execution)
+    {
+        Submission submission = new Submission(execution);
+        executionPool.execute(submission);
+        return submission;
+    }
+
     protected ResultSet openCursorResultSet()
     {
         ResultSet resultSet = stmtContext.getResultSet();
@@ -523,6 +609,64 @@ public class FarragoJdbcEngineStatement
     //
     // end JDBC 4 methods
     //
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Execution of this statement submitted to run in the background.
+     */
+    private class Submission
+        extends FutureTask<Boolean>
+    {
+        private volatile boolean started;
+
+        Submission(Callable<Boolean> execution)
+        {
+            super(execution);
+        }
+
+        // override FutureTask
+        public void run()
+        {
+            started = true;
+            super.run();
+        }
+
+        // override FutureTask
+        public boolean cancel(boolean mayInterruptIfRunning)
+        {
+            // Interrupting the thread would not stop the execution; cancel
+            // the statement instead.  If the execution has not started, the
+            // pool will not start it, and a cancel request would only be
+            // left pending for the statement's next execution.
+            boolean canceled = super.cancel(false);
+            if (canceled && mayInterruptIfRunning && started) {
+                try {
+                    FarragoJdbcEngineStatement.this.cancel();
+                } catch (SQLException ex) {
+                    // statement already closed; nothing left to cancel
+                }
+            }
+            return canceled;
+        }
+    }
+
+    private static class ExecutionThreadFactory
+        implements ThreadFactory
+    {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        public Thread newThread(Runnable r)
+        {
+            Thread thread =
+                new Thread(
+                    r,
+                    "FarragoJdbcEngineStatement execution "
+                    + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 }
 
 // End FarragoJdbcEngineStatement.java
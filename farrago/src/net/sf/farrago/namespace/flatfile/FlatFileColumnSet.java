@@ -55,6 +55,11 @@ class FlatFileColumnSet
 
     public static final String PROP_FILENAME = "FILENAME";
     public static final String PROP_LOG_FILENAME = "LOG_FILENAME";
+    public static final String PROP_FILE_PATTERN = "FILE_PATTERN";
+    public static final String PROP_SKIP_UNCHANGED_FILES =
+        "SKIP_UNCHANGED_FILES";
+
+    public static final String MANIFEST_FILE_EXTENSION = "loaded";
 
     private static final String TIMESTAMP_PREFIX = "_";
     private static final String TIMESTAMP_FORMAT = "yyyy-MM-dd_HH_mm_ss";
@@ -64,6 +69,8 @@ class FlatFileColumnSet
     FlatFileParams params;
     String filePath;
     String logFilePath;
+    FlatFileFileSet fileSet;
+    boolean skipUnchangedFiles;
     FlatFileParams.SchemaType schemaType;
     long numRows;
 
@@ -88,6 +95,15 @@ class FlatFileColumnSet
         logFilePath =
             makeLogFilePath(
                 tableProps.getProperty(PROP_LOG_FILENAME, null));
+        String pattern = tableProps.getProperty(PROP_FILE_PATTERN, null);
+        if (pattern != null) {
+            fileSet = new FlatFileFileSet(params, pattern);
+        }
+        skipUnchangedFiles =
+            MedAbstractBase.getBooleanProperty(
+                tableProps,
+                PROP_SKIP_UNCHANGED_FILES,
+                false);
         this.schemaType = schemaType;
     }
 
@@ -108,6 +124,58 @@ class FlatFileColumnSet
         return logFilePath;
     }
 
+    /**
+     * Returns whether the table reads the files matching a pattern, which
+     * may change from one statement to the next.
+     */
+    public boolean hasFilePattern()
+    {
+        return fileSet != null;
+    }
+
+    /**
+     * Returns the paths of the data files to be read. For a table with a
+     * file pattern, these are the files currently matching the pattern. If
+     * unchanged files are skipped and the files are read by an incremental
+     * load, the files recorded in the manifest in their current state are
+     * left out.
+     *
+     * @param load whether the files are read by an incremental load
+     */
+    public List<String> getFilePaths(boolean load)
+    {
+        if (fileSet == null) {
+            return Collections.singletonList(filePath);
+        }
+        List<File> files = fileSet.getFiles();
+        if (load && skipUnchangedFiles) {
+            files =
+                FlatFileFileSet.removeUnchanged(
+                    files,
+                    new File(getManifestFilePath()));
+        }
+        List<String> paths = new ArrayList<String>();
+        for (File file : files) {
+            paths.add(file.getPath());
+        }
+        return paths;
+    }
+
+    /**
+     * Returns the path of the manifest recording the files read, if
+     * unchanged files are skipped, or null otherwise. The manifest is kept in
+     * the log directory, and is named after the table's file name.
+     */
+    public String getManifestFilePath()
+    {
+        if (!skipUnchangedFiles) {
+            return null;
+        }
+        return params.getLogDirectory() + getFileRoot()
+            + FlatFileParams.FILE_EXTENSION_PREFIX
+            + MANIFEST_FILE_EXTENSION;
+    }
+
     // implement RelOptTable
     public double getRowCount()
     {
@@ -224,14 +292,7 @@ class FlatFileColumnSet
     {
         String name = logFilename;
         if (name == null) {
-            // NOTE: file path must be set before calling this function
-            Util.pre(filePath != null, "filePath != null");
-            File file = new File(filePath); // DIR/FILE.EXT
-            String root = file.getName(); // FILE.EXT
-            int dot = root.lastIndexOf(FlatFileParams.FILE_EXTENSION_PREFIX);
-            if (dot > 0) {
-                root = root.substring(0, dot); // FILE
-            }
+            String root = getFileRoot();
             SimpleDateFormat formatter = new SimpleDateFormat(TIMESTAMP_FORMAT);
             String timeStamp = formatter.format(new java.util.Date());
             name =
@@ -241,6 +302,23 @@ class FlatFileColumnSet
         }
         return params.getLogDirectory() + name;
     }
+
+    /**
+     * Returns the name of the table's file, without its directory and
+     * extension.
+     */
+    private String getFileRoot()
+    {
+        // NOTE: file path must be set before calling this function
+        Util.pre(filePath != null, "filePath != null");
+        File file = new File(filePath); // DIR/FILE.EXT
+        String root = file.getName(); // FILE.EXT
+        int dot = root.lastIndexOf(FlatFileParams.FILE_EXTENSION_PREFIX);
+        if (dot > 0) {
+            root = root.substring(0, dot); // FILE
+        }
+        return root;
+    }
 }
 
 // End FlatFileColumnSet.java
@@ -145,27 +145,51 @@ class FlatFileDataServer
             filename = getTableName(localName);
         }
 
-        String dataFilePath =
-            params.getDirectory() + filename
-            + params.getFileExtenstion();
-        File dataFile = new File(dataFilePath);
+        // A table with a file pattern reads all of the files matching it,
+        // while its control file is named after the table. Its columns are
+        // inferred from a sample of the files.
+        List<String> filenames = new ArrayList<String>();
+        long dataLength = 0;
+        String pattern =
+            tableProps.getProperty(FlatFileColumnSet.PROP_FILE_PATTERN);
+        if (pattern == null) {
+            filenames.add(filename);
+            dataLength =
+                new File(
+                    params.getDirectory() + filename
+                    + params.getFileExtenstion()).length();
+        } else {
+            FlatFileFileSet fileSet = new FlatFileFileSet(params, pattern);
+            List<File> files = fileSet.getFiles();
+            for (File file : FlatFileFileSet.getSampleFiles(files)) {
+                filenames.add(fileSet.getLocalName(file));
+            }
+            for (File file : files) {
+                dataLength += file.length();
+            }
+        }
+        List<String []> foreignNames = new ArrayList<String []>();
+        for (String name : filenames) {
+            foreignNames.add(
+                new String[] {
+                    this.getProperties().getProperty("NAME"),
+                    FlatFileParams.SchemaType.QUERY.getSchemaName(),
+                    name
+                });
+        }
 
         // Estimate number of rows in a file
         long numRows = -1;
         try {
-            if (schemaType == FlatFileParams.SchemaType.QUERY) {
-                String [] foreignName =
-                {
-                    this.getProperties().getProperty("NAME"),
-                    FlatFileParams.SchemaType.QUERY.getSchemaName(),
-                    filename
-                };
+            if ((schemaType == FlatFileParams.SchemaType.QUERY)
+                && !foreignNames.isEmpty())
+            {
                 if (params.getNumRowsScan() > 0) {
-                    long avgRowSize = sampleAndCreateBcp(foreignName, null);
+                    long avgRowSize = sampleAndCreateBcp(foreignNames, null);
 
                     // Estimated number of rows == file length / avg row length
                     if (avgRowSize > 0) {
-                        numRows = dataFile.length() / avgRowSize;
+                        numRows = dataLength / avgRowSize;
                     }
                 }
             }
@@ -177,7 +201,12 @@ class FlatFileDataServer
         if (rowType == null) {
             // scan control file/data file for metadata (Phase II)
             // check data file exists
-            if (!dataFile.exists()) {
+            if (filenames.isEmpty()
+                || ((pattern == null)
+                    && !new File(
+                        params.getDirectory() + filename
+                        + params.getFileExtenstion()).exists()))
+            {
                 return null;
             }
             String ctrlFilePath =
@@ -191,6 +220,7 @@ class FlatFileDataServer
                     schemaType,
                     localName,
                     filename,
+                    foreignNames,
                     bcpFile);
         }
         if (rowType == null) {
@@ -248,17 +278,13 @@ class FlatFileDataServer
         FlatFileParams.SchemaType schemaType,
         String [] localName,
         String filename,
+        List<String []> foreignNames,
         FlatFileBcpFile bcpFile)
         throws SQLException
     {
         List<RelDataType> fieldTypes = new ArrayList<RelDataType>();
         List<String> fieldNames = new ArrayList<String>();
-        String [] foreignName =
-        {
-            this.getProperties().getProperty("NAME"),
-            FlatFileParams.SchemaType.QUERY.getSchemaName(),
-            filename
-        };
+        String [] foreignName = foreignNames.get(0);
 
         // Cannot describe or sample a fixed position data file
         if (params.getFieldDelimiter() == 0) {
@@ -301,7 +327,7 @@ class FlatFileDataServer
         case QUERY:
             synchronized (FlatFileBcpFile.class) {
                 if (!bcpFile.exists()) {
-                    if (sampleAndCreateBcp(foreignName, bcpFile) == -1) {
+                    if (sampleAndCreateBcp(foreignNames, bcpFile) == -1) {
                         return null;
                     }
                 }
@@ -379,6 +405,28 @@ class FlatFileDataServer
         String [] localName,
         FlatFileBcpFile bcpFile)
         throws SQLException
+    {
+        return sampleAndCreateBcp(
+            Collections.singletonList(localName),
+            bcpFile);
+    }
+
+    /**
+     * Creates the given control file based on internal sample queries of
+     * several files, which are read as one table. The columns are those of
+     * the first file; files with a different number of columns are not
+     * sampled.
+     *
+     * @param localNames names of the files to sample
+     * @param bcpFile control file to create, or null to only sample
+     *
+     * @return average size of the rows sampled, or -1 if the files could not
+     * be sampled
+     */
+    public long sampleAndCreateBcp(
+        List<String []> localNames,
+        FlatFileBcpFile bcpFile)
+        throws SQLException
     {
         // Attempt to issue a loopback query into Farrago to
         // get sample data back
@@ -388,49 +436,68 @@ class FlatFileDataServer
             try {
                 connection = loopbackDataSource.getConnection();
                 Statement stmt = connection.createStatement();
-                String sql = getSampleQuery(localName);
-                ResultSet resultSet = stmt.executeQuery(sql);
-                ResultSetMetaData rsmeta = resultSet.getMetaData();
-
-                String [] cols = new String[rsmeta.getColumnCount()];
-                String [] numRows =
-                { Integer.toString(rsmeta.getColumnCount()) };
-
-                if (bcpFile != null) {
-                    if (!bcpFile.create()) { // write version
-                        throw FarragoResource.instance().FileWriteFailed.ex(
-                            bcpFile.fileName);
-                    }
-                    if (!bcpFile.write(numRows, null)) { // write numCols
-                        throw FarragoResource.instance().FileWriteFailed.ex(
-                            bcpFile.fileName);
-                    }
-                }
-                boolean skipNext = params.getWithHeader();
+                String [] cols = null;
                 long sumRows = 0;
                 long numRowsScan = 1;
-                while (resultSet.next()) {
-                    numRowsScan++;
-                    for (int j = 0; j < cols.length; j++) {
-                        cols[j] = resultSet.getString(j + 1);
-                    }
-                    for (String col : cols) {
-                        if (col != null) {
-                            sumRows += col.length();
+                for (String [] localName : localNames) {
+                    String sql = getSampleQuery(localName);
+                    ResultSet resultSet = stmt.executeQuery(sql);
+                    ResultSetMetaData rsmeta = resultSet.getMetaData();
+
+                    if (cols == null) {
+                        cols = new String[rsmeta.getColumnCount()];
+                        String [] numRows =
+                        { Integer.toString(rsmeta.getColumnCount()) };
+
+                        if (bcpFile != null) {
+                            if (!bcpFile.create()) { // write version
+                                throw FarragoResource.instance()
+                                .FileWriteFailed.ex(bcpFile.fileName);
+                            }
+                            // write numCols
+                            if (!bcpFile.write(numRows, null)) {
+                                throw FarragoResource.instance()
+                                .FileWriteFailed.ex(bcpFile.fileName);
+                            }
                         }
+                    } else if (cols.length != rsmeta.getColumnCount()) {
+                        tracer.warning(
+                            "not sampling " + getQualifiedName(localName)
+                            + ", whose columns differ from those of "
+                            + getQualifiedName(localNames.get(0)));
+                        resultSet.close();
+                        continue;
                     }
 
-                    // add one per column for delimiter size
-                    sumRows += cols.length;
+                    // each file has its own header
+                    boolean skipNext = params.getWithHeader();
+                    while (resultSet.next()) {
+                        numRowsScan++;
+                        for (int j = 0; j < cols.length; j++) {
+                            cols[j] = resultSet.getString(j + 1);
+                        }
+                        for (String col : cols) {
+                            if (col != null) {
+                                sumRows += col.length();
+                            }
+                        }
 
-                    if (bcpFile != null) {
-                        if (skipNext) {
-                            skipNext = false;
-                            bcpFile.update(cols, true);
-                        } else {
-                            bcpFile.update(cols, false);
+                        // add one per column for delimiter size
+                        sumRows += cols.length;
+
+                        if (bcpFile != null) {
+                            if (skipNext) {
+                                skipNext = false;
+                                bcpFile.update(cols, true);
+                            } else {
+                                bcpFile.update(cols, false);
+                            }
                         }
                     }
+                    resultSet.close();
+                }
+                if (cols == null) {
+                    return -1;
                 }
                 if (bcpFile != null) {
                     if (!bcpFile.write(cols, params)) {
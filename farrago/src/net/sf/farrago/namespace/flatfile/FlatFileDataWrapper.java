@@ -156,6 +156,23 @@ public class FlatFileDataWrapper
                 true,
                 BOOLEAN_CHOICES_DEFAULT_FALSE);
         }
+        infoMap.addPropInfo(
+            FlatFileParams.PROP_PARALLELISM,
+            true,
+            new String[] {
+                Integer.toString(FlatFileParams.DEFAULT_PARALLELISM)
+            });
+        if (FlatFileParams.DEFAULT_PRESERVE_ORDER) {
+            infoMap.addPropInfo(
+                FlatFileParams.PROP_PRESERVE_ORDER,
+                true,
+                BOOLEAN_CHOICES_DEFAULT_TRUE);
+        } else {
+            infoMap.addPropInfo(
+                FlatFileParams.PROP_PRESERVE_ORDER,
+                true,
+                BOOLEAN_CHOICES_DEFAULT_FALSE);
+        }
         infoMap.addPropInfo(
             FlatFileParams.PROP_DATE_FORMAT,
             false);
@@ -22,6 +22,8 @@
 */
 package net.sf.farrago.namespace.flatfile;
 
+import java.util.*;
+
 import net.sf.farrago.catalog.*;
 import net.sf.farrago.fem.fennel.*;
 import net.sf.farrago.fennel.rel.*;
@@ -110,7 +112,40 @@ public class FlatFileFennelRel
 
         FemFlatFileTupleStreamDef streamDef =
             repos.newFemFlatFileTupleStreamDef();
-        streamDef.setDataFilePath(columnSet.getFilePath());
+        FarragoPreparingStmt stmt = FennelRelUtil.getPreparingStmt(this);
+
+        // Only an incremental load, that is, a statement which copies the
+        // table's rows into another table, skips unchanged files and records
+        // the files it reads. Queries always read every file.
+        boolean load =
+            columnSet.hasFilePattern()
+            && (columnSet.getManifestFilePath() != null)
+            && (schemaType == FlatFileParams.SchemaType.QUERY_TEXT)
+            && isLoad(stmt);
+
+        // The files matching a pattern are listed when the statement is
+        // prepared, so the plan must not be reused by later statements.
+        // The paths are passed to Fennel one per line.
+        StringBuilder dataFilePaths = new StringBuilder();
+        for (String path : columnSet.getFilePaths(load)) {
+            if (dataFilePaths.length() > 0) {
+                dataFilePaths.append('\n');
+            }
+            dataFilePaths.append(path);
+        }
+        streamDef.setDataFilePath(dataFilePaths.toString());
+        if (columnSet.hasFilePattern()) {
+            stmt.disableStatementCaching();
+        }
+        if (load) {
+            // Fennel records the files in a pending manifest, which is
+            // only added to the table's manifest if the transaction commits
+            streamDef.setManifestFilePath(
+                FlatFileManifestListener.registerLoad(
+                    stmt.getSession(),
+                    Arrays.asList(columnSet.getQualifiedName()),
+                    columnSet.getManifestFilePath()));
+        }
         if (params.getWithLogging()) {
             streamDef.setErrorFilePath(columnSet.getLogFilePath());
         }
@@ -158,6 +193,8 @@ public class FlatFileFennelRel
         streamDef.setLenient(params.getLenient());
         streamDef.setTrim(params.getTrim());
         streamDef.setMapped(params.getMapped());
+        streamDef.setParallelism(Math.max(params.getParallelism(), 1));
+        streamDef.setPreserveOrder(params.getPreserveOrder());
         java.util.List<FemColumnName> columnNames = streamDef.getColumn();
         for (int i = 0; i < rowType.getFieldCount(); i++) {
             FemColumnName name = repos.newFemColumnName();
@@ -166,7 +203,6 @@ public class FlatFileFennelRel
         }
 
         // set the error record type to be a single text column
-        FarragoPreparingStmt stmt = FennelRelUtil.getPreparingStmt(this);
         RelDataTypeFactory typeFactory =
             stmt.getRelOptCluster().getTypeFactory();
         RelDataType errorText =
@@ -187,6 +223,24 @@ public class FlatFileFennelRel
         return streamDef;
     }
 
+    /**
+     * Returns whether a statement writes to a table, and so is a load of the
+     * rows it reads.
+     */
+    private static boolean isLoad(FarragoPreparingStmt stmt)
+    {
+        TableAccessMap accessMap = stmt.getTableAccessMap();
+        if (accessMap == null) {
+            return false;
+        }
+        for (List<String> table : accessMap.getTablesAccessed()) {
+            if (accessMap.isTableAccessedForWrite(table)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private String encodeChar(char c)
     {
         return (c == 0) ? "" : Character.toString(c);
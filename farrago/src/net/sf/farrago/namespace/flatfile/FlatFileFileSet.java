@@ -0,0 +1,255 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2009 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+// Portions Copyright (C) 2003 John V. Sichi
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.namespace.flatfile;
+
+import java.io.*;
+
+import java.util.*;
+import java.util.regex.*;
+
+import net.sf.farrago.resource.*;
+
+
+/**
+ * FlatFileFileSet is the set of data files read by a flatfile table whose
+ * FILE_PATTERN option names several files. The option is a comma separated
+ * list of file names, within the server's directory and without the server's
+ * file extension, which may contain the wildcards <code>*</code> and <code>
+ * ?</code> and character classes such as <code>[0-9]</code>. The files are
+ * read as one table, in the order of their names.
+ *
+ * <p>A file set also remembers, through a manifest, which files have already
+ * been loaded, so that an incremental load may skip files which have not
+ * changed since. A file is considered unchanged if its size and modification
+ * time are those recorded when it was last read, and it had not been
+ * modified in the second in which it was read; modification times are only
+ * kept to the second, so a file rewritten within that second could not be
+ * told apart. The manifest is only written when a load commits (see {@link
+ * FlatFileManifestListener}).
+ *
+ * @version $Id$
+ */
+class FlatFileFileSet
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    public static final String PATTERN_SEPARATOR = ",";
+
+    /**
+     * Number of files sampled to infer the columns of a table
+     */
+    public static final int MAX_SAMPLE_FILES = 3;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final FlatFileParams params;
+    private final String pattern;
+
+    //~ Constructors -----------------------------------------------------------
+
+    FlatFileFileSet(FlatFileParams params, String pattern)
+    {
+        this.params = params;
+        this.pattern = pattern;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Lists the data files which match the pattern, in order of their names.
+     * A file matched by more than one of the patterns is only listed once.
+     */
+    public List<File> getFiles()
+    {
+        String extension = params.getFileExtenstion();
+        List<Pattern> regexes = new ArrayList<Pattern>();
+        for (String glob : pattern.split(PATTERN_SEPARATOR)) {
+            glob = glob.trim();
+            if (glob.length() > 0) {
+                regexes.add(Pattern.compile(globToRegex(glob + extension)));
+            }
+        }
+
+        String directory = params.getDirectory();
+        File dir = new File(directory.equals("") ? "." : directory);
+        String [] names = dir.list();
+        if (names == null) {
+            throw FarragoResource.instance().InvalidDirectory.ex(directory);
+        }
+        Arrays.sort(names);
+
+        List<File> files = new ArrayList<File>();
+        for (String name : names) {
+            for (Pattern regex : regexes) {
+                if (regex.matcher(name).matches()) {
+                    File file = new File(directory + name);
+                    if (file.isFile()) {
+                        files.add(file);
+                    }
+                    break;
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Chooses the files from which to infer the columns of the table: the
+     * first, the last, and one in between.
+     */
+    public static List<File> getSampleFiles(List<File> files)
+    {
+        if (files.size() <= MAX_SAMPLE_FILES) {
+            return files;
+        }
+        List<File> samples = new ArrayList<File>();
+        for (int i = 0; i < MAX_SAMPLE_FILES; i++) {
+            samples.add(
+                files.get(i * (files.size() - 1) / (MAX_SAMPLE_FILES - 1)));
+        }
+        return samples;
+    }
+
+    /**
+     * Returns the name by which a data file is known to its server, that is,
+     * its name without the server's directory and file extension.
+     */
+    public String getLocalName(File file)
+    {
+        String name = file.getName();
+        String extension = params.getFileExtenstion();
+        if ((extension.length() > 0) && name.endsWith(extension)) {
+            name = name.substring(0, name.length() - extension.length());
+        }
+        return name;
+    }
+
+    /**
+     * Removes the files which have not changed since they were recorded in
+     * a manifest. A file is recorded by a line holding its size, its
+     * modification time in seconds, the time in seconds at which its state
+     * was taken, just before it was read, and its path; a file may be
+     * recorded several times, of which the last time counts. A file modified
+     * in the second in which its state was taken may have changed again
+     * within that second, so it is never considered unchanged.
+     *
+     * @param files data files
+     * @param manifest manifest file, which need not exist
+     *
+     * @return files which are not recorded in their current state
+     */
+    public static List<File> removeUnchanged(List<File> files, File manifest)
+    {
+        Map<String, String> recorded = new HashMap<String, String>();
+        if (manifest.exists()) {
+            try {
+                BufferedReader reader =
+                    new BufferedReader(new FileReader(manifest));
+                try {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        String [] fields = line.split(" ", 4);
+                        if (fields.length != 4) {
+                            continue;
+                        }
+                        try {
+                            if (Long.parseLong(fields[1])
+                                >= Long.parseLong(fields[2]))
+                            {
+                                // modified while it was being read
+                                recorded.remove(fields[3]);
+                                continue;
+                            }
+                        } catch (NumberFormatException ex) {
+                            continue;
+                        }
+                        recorded.put(
+                            fields[3],
+                            fields[0] + " " + fields[1]);
+                    }
+                } finally {
+                    reader.close();
+                }
+            } catch (IOException ex) {
+                throw FarragoResource.instance().FileNotFound.ex(
+                    manifest.getPath());
+            }
+        }
+
+        List<File> changed = new ArrayList<File>();
+        for (File file : files) {
+            String state =
+                file.length() + " " + (file.lastModified() / 1000);
+            if (!state.equals(recorded.get(file.getPath()))) {
+                changed.add(file);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Converts a file name pattern into a regular expression.
+     */
+    static String globToRegex(String glob)
+    {
+        StringBuilder sb = new StringBuilder();
+        boolean inClass = false;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (inClass) {
+                if (c == ']') {
+                    inClass = false;
+                } else if (c == '\\') {
+                    sb.append('\\');
+                }
+                sb.append(c);
+                continue;
+            }
+            switch (c) {
+            case '*':
+                sb.append(".*");
+                break;
+            case '?':
+                sb.append('.');
+                break;
+            case '[':
+                inClass = true;
+                sb.append(c);
+                if ((i + 1 < glob.length()) && (glob.charAt(i + 1) == '!')) {
+                    sb.append('^');
+                    i++;
+                }
+                break;
+            default:
+                sb.append(Pattern.quote(Character.toString(c)));
+            }
+        }
+        if (inClass) {
+            // an unterminated class matches itself
+            return Pattern.quote(glob);
+        }
+        return sb.toString();
+    }
+}
+
+// End FlatFileFileSet.java
@@ -0,0 +1,257 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2009 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.namespace.flatfile;
+
+import java.io.*;
+
+import java.util.*;
+import java.util.logging.*;
+
+import net.sf.farrago.session.*;
+import net.sf.farrago.trace.*;
+
+import org.eigenbase.relopt.*;
+
+
+/**
+ * FlatFileManifestListener keeps the manifests of flatfile tables which skip
+ * unchanged files (see {@link FlatFileFileSet#removeUnchanged}) in step with
+ * transactions.
+ *
+ * <p>An incremental load does not write the table's manifest itself. The
+ * Fennel stream which reads the files appends them to a pending manifest
+ * once it has read them all. There is one pending manifest per table and
+ * session, and since a session runs one transaction at a time, the pending
+ * manifest belongs to the session's current transaction. When the
+ * transaction commits, the listener appends the pending manifest to the
+ * table's manifest; when it rolls back, the listener discards it, so the
+ * files are read again by the next load.
+ *
+ * <p>There is one listener for each transaction manager, registered the
+ * first time a statement loading from such a table is prepared.
+ *
+ * @version $Id$
+ */
+class FlatFileManifestListener
+    implements FarragoSessionTxnListener
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final Logger tracer =
+        FarragoTrace.getClassTracer(FlatFileManifestListener.class);
+
+    private static final String PENDING_FILE_EXTENSION = "pending";
+
+    private static final Map<FarragoSessionTxnMgr, FlatFileManifestListener>
+        listeners =
+            new WeakHashMap<FarragoSessionTxnMgr, FlatFileManifestListener>();
+
+    //~ Instance fields --------------------------------------------------------
+
+    /**
+     * Manifest paths of the tables loaded incrementally, by qualified table
+     * name
+     */
+    private final Map<List<String>, String> manifests;
+
+    /**
+     * Sessions of the transactions in progress
+     */
+    private final Map<FarragoSessionTxnId, Long> txnSessions;
+
+    /**
+     * Pending manifests which may have been written by each transaction,
+     * with the manifests to which they belong
+     */
+    private final Map<FarragoSessionTxnId, Map<String, String>> txnPending;
+
+    //~ Constructors -----------------------------------------------------------
+
+    private FlatFileManifestListener()
+    {
+        manifests = new HashMap<List<String>, String>();
+        txnSessions = new HashMap<FarragoSessionTxnId, Long>();
+        txnPending = new HashMap<FarragoSessionTxnId, Map<String, String>>();
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Registers a statement, being prepared, which loads incrementally from
+     * a table.
+     *
+     * @param session session preparing the statement
+     * @param tableName qualified name of the table read
+     * @param manifestPath path of the table's manifest
+     *
+     * @return path of the pending manifest to which the statement is to
+     * write the files it reads
+     */
+    static String registerLoad(
+        FarragoSession session,
+        List<String> tableName,
+        String manifestPath)
+    {
+        FarragoSessionTxnMgr txnMgr = session.getTxnMgr();
+        FlatFileManifestListener listener;
+        synchronized (listeners) {
+            listener = listeners.get(txnMgr);
+            if (listener == null) {
+                listener = new FlatFileManifestListener();
+                txnMgr.addListener(listener);
+                listeners.put(txnMgr, listener);
+            }
+        }
+        long sessionId = session.getSessionInfo().getId();
+        listener.addTable(
+            tableName,
+            manifestPath,
+            session.getTxnId(false),
+            sessionId);
+        return getPendingPath(manifestPath, sessionId);
+    }
+
+    private static String getPendingPath(String manifestPath, long sessionId)
+    {
+        return manifestPath + FlatFileParams.FILE_EXTENSION_PREFIX + sessionId
+            + FlatFileParams.FILE_EXTENSION_PREFIX + PENDING_FILE_EXTENSION;
+    }
+
+    private synchronized void addTable(
+        List<String> tableName,
+        String manifestPath,
+        FarragoSessionTxnId txnId,
+        long sessionId)
+    {
+        if (manifests.put(tableName, manifestPath) == null) {
+            // pending manifests left by a previous run of the database
+            // belong to transactions which never committed
+            discardPending(manifestPath);
+        }
+
+        // the statement may be prepared within a transaction which began
+        // before this listener was registered
+        if (txnId != null) {
+            txnSessions.put(txnId, sessionId);
+        }
+    }
+
+    // implement FarragoSessionTxnListener
+    public synchronized void transactionBegun(
+        FarragoSession session,
+        FarragoSessionTxnId txnId)
+    {
+        txnSessions.put(txnId, session.getSessionInfo().getId());
+    }
+
+    // implement FarragoSessionTxnListener
+    public synchronized void tableAccessed(
+        FarragoSessionTxnId txnId,
+        List<String> localTableName,
+        TableAccessMap.Mode accessType)
+    {
+        String manifestPath = manifests.get(localTableName);
+        Long sessionId = txnSessions.get(txnId);
+        if ((manifestPath == null) || (sessionId == null)) {
+            return;
+        }
+        Map<String, String> pending = txnPending.get(txnId);
+        if (pending == null) {
+            pending = new HashMap<String, String>();
+            txnPending.put(txnId, pending);
+        }
+        pending.put(getPendingPath(manifestPath, sessionId), manifestPath);
+    }
+
+    // implement FarragoSessionTxnListener
+    public synchronized void transactionEnded(
+        FarragoSessionTxnId txnId,
+        FarragoSessionTxnEnd endType)
+    {
+        txnSessions.remove(txnId);
+        Map<String, String> pendingPaths = txnPending.remove(txnId);
+        if (pendingPaths == null) {
+            return;
+        }
+        for (Map.Entry<String, String> entry : pendingPaths.entrySet()) {
+            File pending = new File(entry.getKey());
+            if (!pending.exists()) {
+                // the table was only queried, or the load failed
+                continue;
+            }
+            if (endType == FarragoSessionTxnEnd.COMMIT) {
+                String manifestPath = entry.getValue();
+                try {
+                    append(pending, new File(manifestPath));
+                } catch (IOException ex) {
+                    // the files will be read again by the next load
+                    tracer.log(
+                        Level.WARNING,
+                        "could not update manifest " + manifestPath,
+                        ex);
+                }
+            }
+            pending.delete();
+        }
+    }
+
+    private static void append(File from, File to)
+        throws IOException
+    {
+        InputStream in = new FileInputStream(from);
+        try {
+            OutputStream out = new FileOutputStream(to, true);
+            try {
+                byte [] buf = new byte[4096];
+                int n;
+                while ((n = in.read(buf)) > 0) {
+                    out.write(buf, 0, n);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void discardPending(String manifestPath)
+    {
+        File manifest = new File(manifestPath);
+        File dir = manifest.getAbsoluteFile().getParentFile();
+        String [] names = (dir == null) ? null : dir.list();
+        if (names == null) {
+            return;
+        }
+        String prefix =
+            manifest.getName() + FlatFileParams.FILE_EXTENSION_PREFIX;
+        String suffix =
+            FlatFileParams.FILE_EXTENSION_PREFIX + PENDING_FILE_EXTENSION;
+        for (String name : names) {
+            if (name.startsWith(prefix) && name.endsWith(suffix)) {
+                new File(dir, name).delete();
+            }
+        }
+    }
+}
+
+// End FlatFileManifestListener.java
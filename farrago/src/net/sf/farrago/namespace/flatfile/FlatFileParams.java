@@ -73,6 +73,8 @@ class FlatFileParams
     public static final String PROP_LENIENT = "LENIENT";
     public static final String PROP_TRIM = "TRIM";
     public static final String PROP_MAPPED = "MAPPED";
+    public static final String PROP_PARALLELISM = "PARALLELISM";
+    public static final String PROP_PRESERVE_ORDER = "PRESERVE_ORDER";
 
     public static final String FILE_EXTENSION_PREFIX = ".";
     public static final String LOG_FILE_EXTENSION = "err";
@@ -89,6 +91,8 @@ class FlatFileParams
     protected static final boolean DEFAULT_LENIENT = true;
     protected static final boolean DEFAULT_TRIM = true;
     protected static final boolean DEFAULT_MAPPED = false;
+    protected static final int DEFAULT_PARALLELISM = 1;
+    protected static final boolean DEFAULT_PRESERVE_ORDER = true;
 
     //~ Enums ------------------------------------------------------------------
 
@@ -170,6 +174,8 @@ class FlatFileParams
     private boolean withHeader, withLogging;
     private int numRowsScan;
     private boolean lenient, trim, mapped;
+    private int parallelism;
+    private boolean preserveOrder;
     private String dateFormat, timeFormat, timestampFormat;
 
     //~ Constructors -----------------------------------------------------------
@@ -260,6 +266,16 @@ class FlatFileParams
                 props,
                 PROP_MAPPED,
                 DEFAULT_MAPPED);
+        parallelism =
+            getIntProperty(
+                props,
+                PROP_PARALLELISM,
+                DEFAULT_PARALLELISM);
+        preserveOrder =
+            getBooleanProperty(
+                props,
+                PROP_PRESERVE_ORDER,
+                DEFAULT_PRESERVE_ORDER);
         dateFormat =
             decodeDatetimeFormat(
                 props.getProperty(PROP_DATE_FORMAT));
@@ -486,6 +502,26 @@ class FlatFileParams
         return mapped;
     }
 
+    /**
+     * Returns the number of threads with which queries parse a file. When
+     * more than one, the file is memory mapped and split into chunks which
+     * are parsed concurrently.
+     */
+    public int getParallelism()
+    {
+        return parallelism;
+    }
+
+    /**
+     * Returns whether a parallel scan must return rows in file order. Rows
+     * of files without quote and escape characters may otherwise be
+     * returned as soon as their chunk is parsed.
+     */
+    public boolean getPreserveOrder()
+    {
+        return preserveOrder;
+    }
+
     /**
      * Lookup the type of a schema based upon it's schema name. The queryDefault
      * parameter allows the type to default to QUERY when the schema name is
@@ -197,8 +197,6 @@ public abstract class MedAbstractColumnMetadata
             return null;
         }
 
-        double population = 1.0;
-
         // if columns are part of a unique key, then just return the rowcount
         if (RelMdUtil.areColumnsDefinitelyUnique(rel, groupKey)) {
             return RelMetadataQuery.getRowCount(rel);
@@ -210,7 +208,9 @@ public abstract class MedAbstractColumnMetadata
             return null;
         }
 
-        // multiply by the cardinality of each column
+        // combine the cardinalities of the columns, taking into account any
+        // column groups covering them
+        Map<Integer, Double> colCards = new HashMap<Integer, Double>();
         for (
             int col = groupKey.nextSetBit(0);
             col >= 0;
@@ -231,8 +231,12 @@ public abstract class MedAbstractColumnMetadata
             if (colCard == null) {
                 return null;
             }
-            population *= colCard;
+            colCards.put(origCol, colCard);
         }
+        double population =
+            RelStatUtil.combineCardinalities(
+                tabStats.getColumnGroupStatistics(),
+                colCards);
 
         // cap the number of distinct values
         return RelMdUtil.numDistinctVals(
@@ -313,7 +317,7 @@ public abstract class MedAbstractColumnMetadata
 
         // loop through each column and determine the cardinality of the
         // column
-        Double distRowCount = 1.0;
+        Map<Integer, Double> colCards = new HashMap<Integer, Double>();
         for (
             int fieldNo = groupKey.nextSetBit(0);
             fieldNo >= 0;
@@ -346,9 +350,16 @@ public abstract class MedAbstractColumnMetadata
             if (colCard == null) {
                 return null;
             }
-            distRowCount = distRowCount * colCard;
+            colCards.put(origColno, colCard);
         }
 
+        // combine the cardinalities, taking into account any column groups
+        // covering the columns
+        Double distRowCount =
+            RelStatUtil.combineCardinalities(
+                tabStats.getColumnGroupStatistics(),
+                colCards);
+
         // reduce cardinality by the selectivity of the non-sargable
         // predicates (which includes any semijoin filters)
         distRowCount *= RelMdUtil.guessSelectivity(nonSargFilters);
@@ -55,6 +55,12 @@ public class MedJdbcColumnSet
     RelDataType srcRowType;
     RelDataType currRowType;
 
+    /**
+     * How scans of this table are split into concurrently read partitions,
+     * or null if they are not.
+     */
+    MedJdbcPartitioning partitioning;
+
     //~ Constructors -----------------------------------------------------------
 
     public MedJdbcColumnSet(
@@ -149,6 +149,15 @@ public class MedJdbcDataServer
         "DISABLE_CONNECTION_POOL";
     public static final String PROP_ASSUME_PUSHDOWN_VALID =
         "ASSUME_PUSHDOWN_VALID";
+    public static final String PROP_PARTITION_COLUMN = "PARTITION_COLUMN";
+    public static final String PROP_PARTITION_COUNT = "PARTITION_COUNT";
+    public static final String PROP_PARTITION_METHOD = "PARTITION_METHOD";
+    public static final String PROP_PARTITION_METHOD_MODULO = "MODULO";
+    public static final String PROP_PARTITION_METHOD_RANGE = "RANGE";
+    public static final String PROP_PARTITION_LOWER_BOUND =
+        "PARTITION_LOWER_BOUND";
+    public static final String PROP_PARTITION_UPPER_BOUND =
+        "PARTITION_UPPER_BOUND";
 
     // REVIEW jvs 19-June-2006:  What are these doing here?
     public static final String PROP_VERSION = "VERSION";
@@ -455,6 +464,15 @@ public class MedJdbcDataServer
         return catalogName;
     }
 
+    /**
+     * @return whether connection pooling is disabled, in which case all
+     * queries against this server at runtime share a single connection
+     */
+    public boolean isConnectionPoolDisabled()
+    {
+        return disableConnectionPool;
+    }
+
     private void initMetaData()
     {
         try {
@@ -889,6 +907,9 @@ public class MedJdbcDataServer
     public Object getRuntimeSupport(Object param)
         throws SQLException
     {
+        if (param instanceof String []) {
+            return getPartitionedRuntimeSupport((String []) param);
+        }
         String sql = (String) param;
 
         FarragoStatementAllocation stmtAlloc;
@@ -926,6 +947,52 @@ public class MedJdbcDataServer
         }
     }
 
+    /**
+     * Creates runtime support for a partitioned scan. Each partition is read
+     * over its own connection, even if connection pooling is {@link
+     * #PROP_DISABLE_CONNECTION_POOL disabled}, so that the partitions can be
+     * read concurrently.
+     *
+     * @param sqls query for each partition
+     *
+     * @return {@link MedJdbcPartitionedScan}
+     *
+     * @throws SQLException if there's an error obtaining a connection
+     */
+    private Object getPartitionedRuntimeSupport(String [] sqls)
+        throws SQLException
+    {
+        List<FarragoStatementAllocation> stmtAllocs =
+            new ArrayList<FarragoStatementAllocation>();
+        MedJdbcPartitionedScan scan = new MedJdbcPartitionedScan(stmtAllocs);
+        boolean success = false;
+        try {
+            for (String sql : sqls) {
+                Connection conn = newConnection();
+                Statement stmt;
+                try {
+                    stmt = conn.createStatement();
+                } catch (SQLException ex) {
+                    conn.close();
+                    throw ex;
+                }
+                FarragoStatementAllocation stmtAlloc =
+                    new FarragoStatementAllocation(conn, stmt);
+                stmtAllocs.add(stmtAlloc);
+                if (fetchSize != DEFAULT_FETCH_SIZE) {
+                    stmt.setFetchSize(fetchSize);
+                }
+                stmtAlloc.setSql(sql);
+            }
+            success = true;
+            return scan;
+        } finally {
+            if (!success) {
+                scan.closeAllocation();
+            }
+        }
+    }
+
     // implement FarragoMedDataServer
     public void registerRelMetadataProviders(ChainedRelMetadataProvider chain)
     {
@@ -970,6 +1037,13 @@ public class MedJdbcDataServer
             {
                 public RelNode convert(RelNode rel)
                 {
+                    if (FarragoProperties.instance().medJdbcDirectFennel
+                        .get())
+                    {
+                        return new ResultSetToFennelConverter(
+                            rel.getCluster(),
+                            rel);
+                    }
                     return new IteratorToFennelConverter(
                         rel.getCluster(),
                         new ResultSetToFarragoIteratorConverter(
@@ -382,15 +382,18 @@ public class MedJdbcNameDirectory
         RelDataType srcRowType,
         Properties foreignTableProps)
     {
-        return new MedJdbcColumnSet(
-            this,
-            foreignName,
-            localName,
-            select,
-            dialect,
-            rowType,
-            origRowType,
-            srcRowType);
+        MedJdbcColumnSet columnSet =
+            new MedJdbcColumnSet(
+                this,
+                foreignName,
+                localName,
+                select,
+                dialect,
+                rowType,
+                origRowType,
+                srcRowType);
+        columnSet.partitioning = MedJdbcPartitioning.create(foreignTableProps);
+        return columnSet;
     }
 
     /**
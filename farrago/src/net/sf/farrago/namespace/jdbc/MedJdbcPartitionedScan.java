@@ -0,0 +1,431 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.namespace.jdbc;
+
+import java.sql.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import net.sf.farrago.util.*;
+
+import org.eigenbase.runtime.*;
+import org.eigenbase.util14.*;
+
+
+/**
+ * MedJdbcPartitionedScan reads the partitions of a partitioned foreign table
+ * scan (see {@link MedJdbcPartitioning}) concurrently, and merges their rows
+ * into a single {@link ResultSet}.
+ *
+ * <p>Each partition is read by a worker thread, over its own connection, into
+ * a queue shared by all partitions; the caller reads rows from the queue in
+ * whatever order they arrive. Column values are copied out of the
+ * partition's ResultSet using the accessor appropriate to the column's JDBC
+ * type, so that the merged ResultSet returns the same values as a
+ * partition's ResultSet would have.
+ *
+ * @version $Id$
+ */
+public class MedJdbcPartitionedScan
+    implements FarragoAllocation,
+        ResultSetProvider
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * Number of rows which may be queued for each partition.
+     */
+    private static final int QUEUE_ROWS_PER_PARTITION = 1000;
+
+    /**
+     * Interval, in milliseconds, at which a blocked worker checks whether the
+     * scan has been closed.
+     */
+    private static final long CLOSE_POLL_MILLIS = 100;
+
+    /**
+     * Queued after the last row of each partition.
+     */
+    private static final Object [] END_OF_PARTITION = new Object[0];
+
+    /**
+     * Pool of worker threads shared by all scans. Threads are daemons, so that
+     * a foreign server which never responds cannot prevent shutdown.
+     */
+    private static final ExecutorService workerPool =
+        Executors.newCachedThreadPool(new WorkerThreadFactory());
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final List<FarragoStatementAllocation> stmtAllocs;
+
+    private BlockingQueue<Object []> queue;
+
+    private PartitionedResultSet resultSet;
+
+    private volatile boolean closed;
+
+    /**
+     * First exception thrown while reading a partition.
+     */
+    private volatile Throwable error;
+
+    /**
+     * Metadata of the first partition to be opened.
+     */
+    private ResultSetMetaData metaData;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a MedJdbcPartitionedScan.
+     *
+     * @param stmtAllocs allocation of the statement which reads each
+     * partition; the list may be populated after construction, but before
+     * {@link #getResultSet} is called
+     */
+    public MedJdbcPartitionedScan(List<FarragoStatementAllocation> stmtAllocs)
+    {
+        this.stmtAllocs = stmtAllocs;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement ResultSetProvider
+    public synchronized ResultSet getResultSet()
+        throws SQLException
+    {
+        if (resultSet == null) {
+            int partitionCount = stmtAllocs.size();
+            queue =
+                new ArrayBlockingQueue<Object []>(
+                    partitionCount * QUEUE_ROWS_PER_PARTITION);
+            resultSet = new PartitionedResultSet(partitionCount);
+            for (FarragoStatementAllocation stmtAlloc : stmtAllocs) {
+                workerPool.execute(new PartitionReader(stmtAlloc));
+            }
+        }
+        return resultSet;
+    }
+
+    // implement FarragoAllocation
+    public void closeAllocation()
+    {
+        boolean started;
+        synchronized (this) {
+            closed = true;
+            started = (resultSet != null);
+            notifyAll();
+        }
+        if (!started) {
+            for (FarragoStatementAllocation stmtAlloc : stmtAllocs) {
+                stmtAlloc.closeAllocation();
+            }
+            return;
+        }
+
+        // Workers close their own statements once they notice the scan is
+        // closed; cancel the statements in case they are waiting for the
+        // foreign server, and discard queued rows.
+        for (FarragoStatementAllocation stmtAlloc : stmtAllocs) {
+            try {
+                stmtAlloc.getStatement().cancel();
+            } catch (Throwable ex) {
+                // not all drivers support cancel; the worker will stop after
+                // its next row
+            }
+        }
+        queue.clear();
+    }
+
+    private synchronized void setMetaData(ResultSetMetaData metaData)
+    {
+        if (this.metaData == null) {
+            this.metaData = metaData;
+            notifyAll();
+        }
+    }
+
+    private synchronized ResultSetMetaData waitForMetaData()
+        throws SQLException
+    {
+        while ((metaData == null) && (error == null) && !closed) {
+            try {
+                wait();
+            } catch (InterruptedException ex) {
+                throw newError(ex);
+            }
+        }
+        if (metaData == null) {
+            throw newError(error);
+        }
+        return metaData;
+    }
+
+    private static SQLException newError(Throwable cause)
+    {
+        if (cause instanceof SQLException) {
+            return (SQLException) cause;
+        }
+        SQLException ex = new SQLException("partitioned scan failed");
+        ex.initCause(cause);
+        return ex;
+    }
+
+    /**
+     * Adds a row to the queue, waiting for room.
+     *
+     * @return false if the scan was closed while waiting
+     */
+    private boolean enqueue(Object [] row)
+        throws InterruptedException
+    {
+        while (!closed) {
+            if (queue.offer(row, CLOSE_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Reads the rows of one partition into the queue.
+     */
+    private class PartitionReader
+        implements Runnable
+    {
+        private final FarragoStatementAllocation stmtAlloc;
+
+        PartitionReader(FarragoStatementAllocation stmtAlloc)
+        {
+            this.stmtAlloc = stmtAlloc;
+        }
+
+        public void run()
+        {
+            try {
+                ResultSet rs = stmtAlloc.getResultSet();
+                ResultSetMetaData md = rs.getMetaData();
+                setMetaData(md);
+                int columnCount = md.getColumnCount();
+                int [] types = new int[columnCount];
+                for (int i = 0; i < columnCount; i++) {
+                    types[i] = md.getColumnType(i + 1);
+                }
+                while (!closed && rs.next()) {
+                    Object [] row = new Object[columnCount];
+                    for (int i = 0; i < columnCount; i++) {
+                        row[i] = getValue(rs, i + 1, types[i]);
+                    }
+                    if (!enqueue(row)) {
+                        break;
+                    }
+                }
+            } catch (Throwable ex) {
+                if (!closed && (error == null)) {
+                    error = ex;
+                }
+            } finally {
+                stmtAlloc.closeAllocation();
+                try {
+                    enqueue(END_OF_PARTITION);
+                } catch (InterruptedException ex) {
+                    // the scan is being shut down
+                }
+            }
+        }
+
+        private Object getValue(ResultSet rs, int column, int type)
+            throws SQLException
+        {
+            Object value;
+            switch (type) {
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+                value = rs.getString(column);
+                break;
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+                value = rs.getBytes(column);
+                break;
+            case Types.DATE:
+                value = rs.getDate(column);
+                break;
+            case Types.TIME:
+                value = rs.getTime(column);
+                break;
+            case Types.TIMESTAMP:
+                value = rs.getTimestamp(column);
+                break;
+            default:
+                value = rs.getObject(column);
+                break;
+            }
+            return rs.wasNull() ? null : value;
+        }
+    }
+
+    /**
+     * ResultSet which returns the rows of all partitions as they arrive.
+     */
+    private class PartitionedResultSet
+        extends AbstractResultSet
+    {
+        private int openPartitionCount;
+        private Object [] current;
+
+        PartitionedResultSet(int partitionCount)
+        {
+            this.openPartitionCount = partitionCount;
+        }
+
+        // implement ResultSet
+        public boolean next()
+            throws SQLException
+        {
+            current = null;
+            while (openPartitionCount > 0) {
+                Object [] row;
+                try {
+                    row = queue.poll(CLOSE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException ex) {
+                    throw newError(ex);
+                }
+                if (closed) {
+                    return false;
+                }
+                if (row == null) {
+                    continue;
+                }
+                if (row == END_OF_PARTITION) {
+                    --openPartitionCount;
+                    if (error != null) {
+                        throw newError(error);
+                    }
+                    continue;
+                }
+                current = row;
+                return true;
+            }
+            return false;
+        }
+
+        // implement ResultSet
+        public ResultSetMetaData getMetaData()
+            throws SQLException
+        {
+            return waitForMetaData();
+        }
+
+        // implement AbstractResultSet
+        protected Object getRaw(int columnIndex)
+            throws SQLException
+        {
+            if (current == null) {
+                throw new SQLException("no current row");
+            }
+            return current[columnIndex - 1];
+        }
+
+        // override AbstractResultSet, which does not accept JDBC datetimes
+        public java.sql.Date getDate(int columnIndex)
+            throws SQLException
+        {
+            Object o = getRaw(columnIndex);
+            if (o instanceof java.sql.Date) {
+                wasNull = false;
+                return (java.sql.Date) o;
+            } else if (o instanceof java.util.Date) {
+                wasNull = false;
+                return new java.sql.Date(((java.util.Date) o).getTime());
+            }
+            return super.getDate(columnIndex);
+        }
+
+        // override AbstractResultSet
+        public Time getTime(int columnIndex)
+            throws SQLException
+        {
+            Object o = getRaw(columnIndex);
+            if (o instanceof Time) {
+                wasNull = false;
+                return (Time) o;
+            } else if (o instanceof java.util.Date) {
+                wasNull = false;
+                return new Time(((java.util.Date) o).getTime());
+            }
+            return super.getTime(columnIndex);
+        }
+
+        // override AbstractResultSet
+        public Timestamp getTimestamp(int columnIndex)
+            throws SQLException
+        {
+            Object o = getRaw(columnIndex);
+            if (o instanceof Timestamp) {
+                wasNull = false;
+                return (Timestamp) o;
+            } else if (o instanceof java.util.Date) {
+                wasNull = false;
+                return new Timestamp(((java.util.Date) o).getTime());
+            }
+            return super.getTimestamp(columnIndex);
+        }
+
+        // override AbstractResultSet
+        public Object getObject(int columnIndex)
+            throws SQLException
+        {
+            Object o = getRaw(columnIndex);
+            wasNull = (o == null);
+            return o;
+        }
+    }
+
+    /**
+     * Creates the daemon threads of the shared worker pool.
+     */
+    private static class WorkerThreadFactory
+        implements ThreadFactory
+    {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        public Thread newThread(Runnable r)
+        {
+            Thread thread =
+                new Thread(
+                    r,
+                    "MedJdbcPartitionedScan worker "
+                    + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
+
+// End MedJdbcPartitionedScan.java
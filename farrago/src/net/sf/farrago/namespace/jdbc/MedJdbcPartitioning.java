@@ -0,0 +1,352 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.namespace.jdbc;
+
+import java.math.*;
+
+import java.util.*;
+
+import net.sf.farrago.plugin.*;
+import net.sf.farrago.resource.*;
+
+import org.eigenbase.sql.*;
+import org.eigenbase.sql.fun.*;
+import org.eigenbase.sql.parser.*;
+import org.eigenbase.sql.util.*;
+import org.eigenbase.util.*;
+
+
+/**
+ * MedJdbcPartitioning describes how a scan of a foreign JDBC table is split
+ * into partitions which are read concurrently, each over its own connection.
+ * It is configured by options of the foreign table:
+ *
+ * <ul>
+ * <li>{@link MedJdbcDataServer#PROP_PARTITION_COLUMN}: the foreign column,
+ * which must be of an exact numeric type, on which to partition</li>
+ * <li>{@link MedJdbcDataServer#PROP_PARTITION_COUNT}: the number of
+ * partitions</li>
+ * <li>{@link MedJdbcDataServer#PROP_PARTITION_METHOD}: either <code>
+ * MODULO</code> (the default), which assigns each row to the partition given
+ * by its value modulo the number of partitions, or <code>RANGE</code>, which
+ * splits the range between {@link
+ * MedJdbcDataServer#PROP_PARTITION_LOWER_BOUND} and {@link
+ * MedJdbcDataServer#PROP_PARTITION_UPPER_BOUND} into equal intervals. Values
+ * outside the range belong to the first or last partition.</li>
+ * </ul>
+ *
+ * <p>Rows whose partitioning column is null belong to the first partition.
+ * The foreign DBMS must support the <code>MOD</code> and <code>ABS</code>
+ * functions for modulo partitioning.
+ *
+ * @version $Id$
+ */
+public class MedJdbcPartitioning
+{
+    //~ Instance fields --------------------------------------------------------
+
+    private final String columnName;
+    private final int partitionCount;
+    private final boolean range;
+    private final long lowerBound;
+    private final long upperBound;
+
+    //~ Constructors -----------------------------------------------------------
+
+    private MedJdbcPartitioning(
+        String columnName,
+        int partitionCount,
+        boolean range,
+        long lowerBound,
+        long upperBound)
+    {
+        this.columnName = columnName;
+        this.partitionCount = partitionCount;
+        this.range = range;
+        this.lowerBound = lowerBound;
+        this.upperBound = upperBound;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Creates the partitioning described by the options of a foreign table.
+     *
+     * @param tableProps options of the foreign table, or null
+     *
+     * @return partitioning, or null if the table is not partitioned
+     */
+    public static MedJdbcPartitioning create(Properties tableProps)
+    {
+        if (tableProps == null) {
+            return null;
+        }
+        String columnName =
+            tableProps.getProperty(MedJdbcDataServer.PROP_PARTITION_COLUMN);
+        if (columnName == null) {
+            return null;
+        }
+        FarragoAbstractPluginBase.requireProperty(
+            tableProps,
+            MedJdbcDataServer.PROP_PARTITION_COUNT);
+        int partitionCount =
+            FarragoAbstractPluginBase.getIntProperty(
+                tableProps,
+                MedJdbcDataServer.PROP_PARTITION_COUNT,
+                1);
+        if (partitionCount < 1) {
+            throw FarragoResource.instance().PluginInvalidIntProp.ex(
+                Integer.toString(partitionCount),
+                MedJdbcDataServer.PROP_PARTITION_COUNT);
+        }
+
+        String method =
+            tableProps.getProperty(
+                MedJdbcDataServer.PROP_PARTITION_METHOD,
+                MedJdbcDataServer.PROP_PARTITION_METHOD_MODULO).toUpperCase();
+        if (method.equals(MedJdbcDataServer.PROP_PARTITION_METHOD_MODULO)) {
+            return new MedJdbcPartitioning(
+                columnName,
+                partitionCount,
+                false,
+                0,
+                0);
+        }
+        if (!method.equals(MedJdbcDataServer.PROP_PARTITION_METHOD_RANGE)) {
+            throw FarragoResource.instance().PluginInvalidStringProp.ex(
+                method,
+                MedJdbcDataServer.PROP_PARTITION_METHOD);
+        }
+        FarragoAbstractPluginBase.requireProperty(
+            tableProps,
+            MedJdbcDataServer.PROP_PARTITION_LOWER_BOUND);
+        FarragoAbstractPluginBase.requireProperty(
+            tableProps,
+            MedJdbcDataServer.PROP_PARTITION_UPPER_BOUND);
+        long lowerBound =
+            FarragoAbstractPluginBase.getLongProperty(
+                tableProps,
+                MedJdbcDataServer.PROP_PARTITION_LOWER_BOUND,
+                0);
+        long upperBound =
+            FarragoAbstractPluginBase.getLongProperty(
+                tableProps,
+                MedJdbcDataServer.PROP_PARTITION_UPPER_BOUND,
+                0);
+        if (upperBound <= lowerBound) {
+            throw FarragoResource.instance().PluginInvalidLongProp.ex(
+                Long.toString(upperBound),
+                MedJdbcDataServer.PROP_PARTITION_UPPER_BOUND);
+        }
+        return new MedJdbcPartitioning(
+            columnName,
+            partitionCount,
+            true,
+            lowerBound,
+            upperBound);
+    }
+
+    /**
+     * @return the number of partitions
+     */
+    public int getPartitionCount()
+    {
+        return partitionCount;
+    }
+
+    /**
+     * Generates the queries which read each partition of the rows returned by
+     * a query against the partitioned table. A query can only be split if it
+     * reads the table alone and its rows do not depend on each other: it
+     * must not join, aggregate, eliminate duplicates or sort.
+     *
+     * @param select query against the partitioned table
+     * @param dialect dialect of the foreign DBMS
+     *
+     * @return query text for each partition, or null if the query cannot be
+     * split
+     */
+    public String [] getPartitionQueries(SqlSelect select, SqlDialect dialect)
+    {
+        if ((partitionCount < 2) || !isPartitionable(select)) {
+            return null;
+        }
+        String [] queries = new String[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            SqlSelect partitionSelect =
+                (SqlSelect) select.clone(SqlParserPos.ZERO);
+            SqlNode condition = getPartitionCondition(i);
+            SqlNode where = select.getWhere();
+            if (where != null) {
+                condition =
+                    SqlStdOperatorTable.andOperator.createCall(
+                        SqlParserPos.ZERO,
+                        where,
+                        condition);
+            }
+            partitionSelect.setOperand(SqlSelect.WHERE_OPERAND, condition);
+            queries[i] =
+                MedJdbcNameDirectory.normalizeQueryString(
+                    partitionSelect.toSqlString(dialect)).getSql();
+        }
+        return queries;
+    }
+
+    private static boolean isPartitionable(SqlSelect select)
+    {
+        if (!(select.getFrom() instanceof SqlIdentifier)
+            || select.isDistinct()
+            || (select.getGroup() != null)
+            || (select.getHaving() != null)
+            || select.hasOrderBy()
+            || (select.getWindowList().size() > 0))
+        {
+            return false;
+        }
+
+        // an aggregate without GROUP BY returns a single row
+        SqlNodeList selectList = select.getSelectList();
+        if (selectList == null) {
+            return true;
+        }
+        try {
+            selectList.accept(
+                new SqlBasicVisitor<Void>() {
+                    public Void visit(SqlCall call)
+                    {
+                        if (call.getOperator().isAggregator()) {
+                            throw new Util.FoundOne(call);
+                        }
+                        return super.visit(call);
+                    }
+                });
+            return true;
+        } catch (Util.FoundOne e) {
+            Util.swallow(e, null);
+            return false;
+        }
+    }
+
+    /**
+     * Builds the condition selecting the rows of a partition.
+     *
+     * @param partition ordinal of the partition
+     *
+     * @return condition
+     */
+    private SqlNode getPartitionCondition(int partition)
+    {
+        SqlNode column = new SqlIdentifier(columnName, SqlParserPos.ZERO);
+        SqlNode condition;
+        if (range) {
+            SqlNode lower = null;
+            SqlNode upper = null;
+            if (partition > 0) {
+                lower =
+                    SqlStdOperatorTable.greaterThanOrEqualOperator.createCall(
+                        SqlParserPos.ZERO,
+                        column,
+                        makeLiteral(getRangeBoundary(partition)));
+            }
+            if (partition < (partitionCount - 1)) {
+                upper =
+                    SqlStdOperatorTable.lessThanOperator.createCall(
+                        SqlParserPos.ZERO,
+                        column,
+                        makeLiteral(getRangeBoundary(partition + 1)));
+            }
+            if (lower == null) {
+                condition = upper;
+            } else if (upper == null) {
+                condition = lower;
+            } else {
+                condition =
+                    SqlStdOperatorTable.andOperator.createCall(
+                        SqlParserPos.ZERO,
+                        lower,
+                        upper);
+            }
+        } else {
+            condition =
+                SqlStdOperatorTable.equalsOperator.createCall(
+                    SqlParserPos.ZERO,
+                    SqlStdOperatorTable.absFunc.createCall(
+                        SqlParserPos.ZERO,
+                        SqlStdOperatorTable.modFunc.createCall(
+                            SqlParserPos.ZERO,
+                            column,
+                            makeLiteral(partitionCount))),
+                    makeLiteral(partition));
+        }
+        if (partition == 0) {
+            condition =
+                SqlStdOperatorTable.orOperator.createCall(
+                    SqlParserPos.ZERO,
+                    condition,
+                    SqlStdOperatorTable.isNullOperator.createCall(
+                        SqlParserPos.ZERO,
+                        column));
+        }
+        return condition;
+    }
+
+    /**
+     * Computes the lower bound of a range partition, which is also the upper
+     * bound of the partition before it. The bounds are computed exactly,
+     * since the range of a BIGINT column may be wider than Long.MAX_VALUE.
+     *
+     * @param partition ordinal of the partition
+     *
+     * @return lower bound
+     */
+    private BigInteger getRangeBoundary(int partition)
+    {
+        // ceiling of the range divided by the number of partitions
+        BigInteger lowest = BigInteger.valueOf(lowerBound);
+        BigInteger count = BigInteger.valueOf(partitionCount);
+        BigInteger step =
+            BigInteger.valueOf(upperBound).subtract(lowest).add(count)
+            .subtract(BigInteger.ONE).divide(count);
+        return lowest.add(step.multiply(BigInteger.valueOf(partition)));
+    }
+
+    private static SqlNode makeLiteral(long value)
+    {
+        return makeLiteral(BigInteger.valueOf(value));
+    }
+
+    private static SqlNode makeLiteral(BigInteger value)
+    {
+        // negate the literal rather than the value; the magnitude of
+        // Long.MIN_VALUE is not a long
+        SqlNumericLiteral literal =
+            SqlLiteral.createExactNumeric(
+                value.abs().toString(),
+                SqlParserPos.ZERO);
+        if (value.signum() < 0) {
+            return SqlLiteral.createNegative(literal, SqlParserPos.ZERO);
+        }
+        return literal;
+    }
+}
+
+// End MedJdbcPartitioning.java
@@ -33,6 +33,7 @@ import org.eigenbase.oj.stmt.*;
 import org.eigenbase.rel.jdbc.*;
 import org.eigenbase.relopt.*;
 import org.eigenbase.reltype.*;
+import org.eigenbase.runtime.*;
 import org.eigenbase.sql.*;
 import org.eigenbase.sql.util.SqlString;
 import org.eigenbase.util.*;
@@ -100,6 +101,34 @@ public class MedJdbcQueryRel
         Variable connectionVariable =
             new Variable(OJPreparingStmt.connectionVariable);
 
+        String [] partitionSqls = null;
+        if ((columnSet != null) && (columnSet.partitioning != null)) {
+            partitionSqls =
+                columnSet.partitioning.getPartitionQueries(
+                    getSql(),
+                    getDialect());
+        }
+        if (partitionSqls != null) {
+            // Each partition is read concurrently by the scan which the
+            // server returns for an array of queries.
+            ExpressionList sqlList = new ExpressionList();
+            for (String partitionSql : partitionSqls) {
+                sqlList.add(Literal.makeLiteral(partitionSql));
+            }
+            return new CastExpression(
+                OJClass.forClass(ResultSetProvider.class),
+                new MethodCall(
+                    connectionVariable,
+                    "getDataServerRuntimeSupport",
+                    new ExpressionList(
+                        Literal.makeLiteral(
+                            server.getServerMofId()),
+                        new ArrayAllocationExpression(
+                            TypeName.forOJClass(OJSystem.STRING),
+                            new ExpressionList(null),
+                            new ArrayInitializer(sqlList)))));
+        }
+
         SqlString sql = MedJdbcNameDirectory.normalizeQueryString(queryString);
 
         Expression allocExpression =
@@ -132,6 +161,16 @@ public class MedJdbcQueryRel
         return clone;
     }
 
+    // override JdbcQuery
+    public Object getSharedConnectionKey()
+    {
+        // without a pool, the server hands every query its one connection
+        if ((server != null) && server.isConnectionPoolDisabled()) {
+            return server.getServerMofId();
+        }
+        return null;
+    }
+
     /**
      * @return the server accessed by this query
      */
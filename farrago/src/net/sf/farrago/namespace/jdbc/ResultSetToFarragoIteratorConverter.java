@@ -119,109 +119,22 @@ class ResultSetToFarragoIteratorConverter
         final RelDataType rowType = getRowType();
         OJClass rowClass = OJUtil.typeToOJClass(rowType, factory);
 
-        JavaRexBuilder javaRexBuilder =
-            (JavaRexBuilder) getCluster().getRexBuilder();
-
         MemberDeclarationList memberList = new MemberDeclarationList();
 
         RelDataTypeField [] fields = rowType.getFields();
         for (int i = 0; i < fields.length; ++i) {
-            RelDataTypeField field = fields[i];
-            RelDataType type = field.getType();
-            ExpressionList colPosExpList =
-                new ExpressionList(Literal.makeLiteral(i + 1));
-            Expression rhsExp;
-            if ((SqlTypeUtil.isJavaPrimitive(type)) && !type.isNullable()) {
-                // TODO:  make this official:  java.sql and java.nio
-                // use the same accessor names, happily,
-                // (except for boolean and tinyint, sadly)
-                String methodName =
-                    ReflectUtil.getByteBufferReadMethod(
-                        factory.getClassForPrimitive(type)).getName();
-                if (type.getSqlTypeName() == SqlTypeName.BOOLEAN) {
-                    methodName = "getBoolean";
-                }
-                if (type.getSqlTypeName() == SqlTypeName.TINYINT) {
-                    methodName = "getByte";
-                }
-                rhsExp =
-                    new MethodCall(castResultSet, methodName, colPosExpList);
-            } else {
-                String methodName;
-                if (SqlTypeUtil.inCharFamily(type)) {
-                    methodName = "getString";
-                } else if (type.getSqlTypeName() == SqlTypeName.TIMESTAMP) {
-                    methodName = "getTimestamp";
-                } else if (type.getSqlTypeName() == SqlTypeName.DATE) {
-                    methodName = "getDate";
-                } else if (type.getSqlTypeName() == SqlTypeName.TIME) {
-                    methodName = "getTime";
-                } else {
-                    methodName = "getObject";
-                }
-                rhsExp =
-                    new MethodCall(castResultSet, methodName, colPosExpList);
-            }
-
-            // cast to target type, or perhaps narrow the external data if
-            // it is of greater precision that Farrago supports
-            boolean narrow = false;
-            if ((type.getSqlTypeName() == SqlTypeName.DECIMAL)
-                && (type.getPrecision() >= SqlTypeName.MAX_NUMERIC_PRECISION))
-            {
-                narrow =
-                    stmt.getSession().getSessionVariables().getBoolean(
-                        FarragoDefaultSessionPersonality.SQUEEZE_JDBC_NUMERIC);
-            }
-            if (narrow) {
-                // allocate a high precision object as class data member
-                OJClass highPrecisionClazz =
-                    OJUtil.typeToOJClass(type, getCluster().getTypeFactory());
-                Variable varNarrow = implementor.newVariable();
-                memberList.add(
-                    new FieldDeclaration(
-                        new ModifierList(ModifierList.PRIVATE),
-                        TypeName.forOJClass(highPrecisionClazz),
-                        varNarrow.toString(),
-                        new AllocationExpression(
-                            highPrecisionClazz,
-                            new ExpressionList())));
-
-                methodBody.add(
-                    new ExpressionStatement(
-                        new MethodCall(
-                            varNarrow,
-                            EncodedSqlDecimal.NARROW_CAST_METHOD_NAME,
-                            new ExpressionList(rhsExp))));
-                rhsExp = varNarrow;
-                getCluster().getEnv().bindVariable(
-                    rhsExp.toString(),
-                    highPrecisionClazz);
-            }
-            RexNode rhs =
-                javaRexBuilder.makeJava(
-                    getCluster().getEnv(),
-                    rhsExp);
-            if (!narrow) {
-                rhs =
-                    javaRexBuilder.makeAbstractCast(
-                        field.getType(),
-                        rhs);
-            }
-
-            final RexToOJTranslator translator =
-                farragoImplementor.newStmtTranslator(
-                    this,
-                    methodBody,
-                    memberList);
-            translator.translateAssignment(
-                field,
+            translateColumn(
+                farragoImplementor,
+                this,
+                castResultSet,
+                i,
                 new FieldAccess(
                     varTuple,
                     Util.toJavaId(
-                        field.getName(),
+                        fields[i].getName(),
                         i)),
-                rhs);
+                methodBody,
+                memberList);
         }
 
         methodBody.add(new ReturnStatement(varTuple));
@@ -256,6 +169,126 @@ class ResultSetToFarragoIteratorConverter
                     childObj)),
             memberList);
     }
+
+    /**
+     * Generates code to read a column from the current row of a ResultSet,
+     * convert it to the type Farrago expects, and assign it to a value
+     * holder.
+     *
+     * @param implementor implementor
+     * @param rel relational expression whose row type describes the columns;
+     * the context for translation
+     * @param resultSetExp expression for the ResultSet
+     * @param i ordinal of the column, starting at 0
+     * @param lhs value holder to which the column value is assigned
+     * @param methodBody statement list to which code is added
+     * @param memberList member list to which any fields needed by the code
+     * are added
+     */
+    static void translateColumn(
+        FarragoRelImplementor implementor,
+        JavaRel rel,
+        Expression resultSetExp,
+        int i,
+        Expression lhs,
+        StatementList methodBody,
+        MemberDeclarationList memberList)
+    {
+        final FarragoPreparingStmt stmt = implementor.getPreparingStmt();
+        final FarragoTypeFactory factory = stmt.getFarragoTypeFactory();
+        JavaRexBuilder javaRexBuilder =
+            (JavaRexBuilder) rel.getCluster().getRexBuilder();
+
+        RelDataTypeField field = rel.getRowType().getFields()[i];
+        RelDataType type = field.getType();
+        ExpressionList colPosExpList =
+            new ExpressionList(Literal.makeLiteral(i + 1));
+        Expression rhsExp;
+        if ((SqlTypeUtil.isJavaPrimitive(type)) && !type.isNullable()) {
+            // TODO:  make this official:  java.sql and java.nio
+            // use the same accessor names, happily,
+            // (except for boolean and tinyint, sadly)
+            String methodName =
+                ReflectUtil.getByteBufferReadMethod(
+                    factory.getClassForPrimitive(type)).getName();
+            if (type.getSqlTypeName() == SqlTypeName.BOOLEAN) {
+                methodName = "getBoolean";
+            }
+            if (type.getSqlTypeName() == SqlTypeName.TINYINT) {
+                methodName = "getByte";
+            }
+            rhsExp =
+                new MethodCall(resultSetExp, methodName, colPosExpList);
+        } else {
+            String methodName;
+            if (SqlTypeUtil.inCharFamily(type)) {
+                methodName = "getString";
+            } else if (type.getSqlTypeName() == SqlTypeName.TIMESTAMP) {
+                methodName = "getTimestamp";
+            } else if (type.getSqlTypeName() == SqlTypeName.DATE) {
+                methodName = "getDate";
+            } else if (type.getSqlTypeName() == SqlTypeName.TIME) {
+                methodName = "getTime";
+            } else {
+                methodName = "getObject";
+            }
+            rhsExp =
+                new MethodCall(resultSetExp, methodName, colPosExpList);
+        }
+
+        // cast to target type, or perhaps narrow the external data if
+        // it is of greater precision that Farrago supports
+        boolean narrow = false;
+        if ((type.getSqlTypeName() == SqlTypeName.DECIMAL)
+            && (type.getPrecision() >= SqlTypeName.MAX_NUMERIC_PRECISION))
+        {
+            narrow =
+                stmt.getSession().getSessionVariables().getBoolean(
+                    FarragoDefaultSessionPersonality.SQUEEZE_JDBC_NUMERIC);
+        }
+        if (narrow) {
+            // allocate a high precision object as class data member
+            OJClass highPrecisionClazz =
+                OJUtil.typeToOJClass(type, rel.getCluster().getTypeFactory());
+            Variable varNarrow = implementor.newVariable();
+            memberList.add(
+                new FieldDeclaration(
+                    new ModifierList(ModifierList.PRIVATE),
+                    TypeName.forOJClass(highPrecisionClazz),
+                    varNarrow.toString(),
+                    new AllocationExpression(
+                        highPrecisionClazz,
+                        new ExpressionList())));
+
+            methodBody.add(
+                new ExpressionStatement(
+                    new MethodCall(
+                        varNarrow,
+                        EncodedSqlDecimal.NARROW_CAST_METHOD_NAME,
+                        new ExpressionList(rhsExp))));
+            rhsExp = varNarrow;
+            rel.getCluster().getEnv().bindVariable(
+                rhsExp.toString(),
+                highPrecisionClazz);
+        }
+        RexNode rhs =
+            javaRexBuilder.makeJava(
+                rel.getCluster().getEnv(),
+                rhsExp);
+        if (!narrow) {
+            rhs =
+                javaRexBuilder.makeAbstractCast(
+                    field.getType(),
+                    rhs);
+        }
+
+        final RexToOJTranslator translator =
+            implementor.newStmtTranslator(
+                rel,
+                methodBody,
+                memberList);
+        translator.translateAssignment(field, lhs, rhs);
+    }
 }
 
 // End ResultSetToFarragoIteratorConverter.java
@@ -0,0 +1,434 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.namespace.jdbc;
+
+import java.nio.*;
+
+import net.sf.farrago.fem.fennel.*;
+import net.sf.farrago.fennel.rel.*;
+import net.sf.farrago.query.*;
+import net.sf.farrago.runtime.*;
+import net.sf.farrago.type.*;
+import net.sf.farrago.type.runtime.*;
+
+import openjava.mop.*;
+
+import openjava.ptree.*;
+
+import org.eigenbase.oj.rel.*;
+import org.eigenbase.oj.util.*;
+import org.eigenbase.rel.*;
+import org.eigenbase.relopt.*;
+import org.eigenbase.reltype.*;
+import org.eigenbase.runtime.*;
+import org.eigenbase.sql.type.*;
+import org.eigenbase.util.*;
+
+
+/**
+ * ResultSetToFennelConverter is a ConverterRel from the RESULT_SET
+ * CallingConvention to the Fennel calling convention. It does the work of a
+ * {@link ResultSetToFarragoIteratorConverter} followed by an {@link
+ * IteratorToFennelConverter}, but marshals each row of the ResultSet
+ * straight into the Fennel tuple buffer.
+ *
+ * <p>Columns of primitive type are read with the primitive ResultSet
+ * accessors into local variables, and their null indicators come from
+ * {@link java.sql.ResultSet#wasNull}, so no value holder is needed for them.
+ * Other columns are converted into a value holder per column, as by {@link
+ * ResultSetToFarragoIteratorConverter}, and marshalled from there. No
+ * synthetic row object is allocated or filled. Rows are read from the
+ * ResultSet until the output buffer is full, so each call to the transform
+ * marshals a block of rows, fetched from the foreign server according to the
+ * server's FETCH_SIZE.
+ *
+ * @version $Id$
+ */
+class ResultSetToFennelConverter
+    extends IteratorToFennelConverter
+{
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new ResultSetToFennelConverter object.
+     *
+     * @param cluster RelOptCluster for this rel
+     * @param child input rel producing rows in ResultSet representation
+     */
+    public ResultSetToFennelConverter(
+        RelOptCluster cluster,
+        RelNode child)
+    {
+        super(cluster, child);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // override IteratorToFennelConverter
+    public ResultSetToFennelConverter clone()
+    {
+        ResultSetToFennelConverter clone =
+            new ResultSetToFennelConverter(
+                getCluster(),
+                getChild());
+        clone.inheritTraitsFrom(this);
+        return clone;
+    }
+
+    // override IteratorToFennelConverter
+    public Object implementFennelChild(FennelRelImplementor implementor)
+    {
+        if (getInputConvention().getOrdinal()
+            != CallingConvention.RESULT_SET_ORDINAL)
+        {
+            throw cannotImplement();
+        }
+
+        FarragoRelImplementor farragoRelImplementor =
+            (FarragoRelImplementor) implementor;
+
+        initJavaInvocation(farragoRelImplementor.getRelPathEntry());
+
+        FarragoPreparingStmt stmt = FennelRelUtil.getPreparingStmt(this);
+
+        String baseClassName =
+            "Transformer" + farragoRelImplementor.allocateTransform();
+
+        String transformClassName =
+            stmt.getEnvironment().getPackage() + "." + baseClassName;
+
+        setFarragoTransformClassName(transformClassName);
+
+        ResultSetRel child = (ResultSetRel) getChild();
+        Expression childObj =
+            farragoRelImplementor.visitJavaChild(this, 0, child);
+
+        // The iterator returns the ResultSet itself, positioned on each row in
+        // turn, for the tuple writer to read.
+        MemberDeclaration makeRowDecl =
+            new MethodDeclaration(
+                new ModifierList(ModifierList.PUBLIC),
+                TypeName.forOJClass(OJUtil.clazzObject),
+                "makeRow",
+                new ParameterList(),
+                new TypeName[] {
+                    TypeName.forOJClass(OJUtil.clazzSQLException)
+                },
+                new StatementList(
+                    new ReturnStatement(new Variable("resultSet"))));
+        Expression childExp =
+            new AllocationExpression(
+                stmt.getResultSetTupleIterTypeName(),
+                new ExpressionList(
+                    new CastExpression(
+                        OJUtil.typeNameForClass(ResultSetProvider.class),
+                        childObj)),
+                new MemberDeclarationList(makeRowDecl));
+
+        Expression newTupleWriterExp =
+            generateTupleWriter(stmt, farragoRelImplementor, child);
+
+        ClassDeclaration transformDecl =
+            generateTransformer(
+                stmt,
+                baseClassName,
+                farragoRelImplementor,
+                newTupleWriterExp,
+                childExp);
+
+        farragoRelImplementor.addTransform(this, transformDecl);
+
+        return Literal.constantNull();
+    }
+
+    /**
+     * Generates a {@link FennelResultSetTupleWriter} which marshals the
+     * current row of the child's ResultSet.
+     */
+    private Expression generateTupleWriter(
+        FarragoPreparingStmt stmt,
+        FarragoRelImplementor implementor,
+        ResultSetRel child)
+    {
+        FarragoTypeFactory factory = stmt.getFarragoTypeFactory();
+        RelDataType rowType = child.getRowType();
+
+        FemTupleDescriptor tupleDesc =
+            FennelRelUtil.createTupleDescriptorFromRowType(
+                stmt.getRepos(),
+                factory,
+                rowType);
+        FemTupleAccessor tupleAccessor =
+            FennelRelUtil.getAccessorForTupleDescriptor(
+                stmt.getRepos(),
+                stmt.getFennelDbHandle(),
+                tupleDesc);
+
+        StatementList methodBody = new StatementList();
+        MemberDeclarationList memberList = new MemberDeclarationList();
+
+        // Have to put in a dummy cast so that type inference will stop
+        // early; see ResultSetToFarragoIteratorConverter.
+        Expression castResultSet =
+            new CastExpression(
+                TypeName.forOJClass(OJUtil.clazzResultSet),
+                new Variable("resultSet"));
+
+        int bitFieldOffset = tupleAccessor.getBitFieldOffset();
+        if (bitFieldOffset != -1) {
+            // clear the bit fields; null indicators and boolean values are
+            // then set one bit at a time
+            int bitCount = 0;
+            for (
+                FemTupleAttrAccessor attrAccessor
+                : tupleAccessor.getAttrAccessor())
+            {
+                bitCount =
+                    Math.max(
+                        bitCount,
+                        Math.max(
+                            attrAccessor.getNullBitIndex(),
+                            attrAccessor.getBitValueIndex()) + 1);
+            }
+            methodBody.add(
+                new ExpressionStatement(
+                    new MethodCall(
+                        "clearBitFields",
+                        new ExpressionList(
+                            new FieldAccess("sliceBuffer"),
+                            Literal.makeLiteral(bitFieldOffset),
+                            Literal.makeLiteral((bitCount + 7) / 8)))));
+        }
+
+        RelDataTypeField [] fields = rowType.getFields();
+        assert (fields.length == tupleAccessor.getAttrAccessor().size());
+        boolean variableWidth = false;
+        int i = -1;
+        for (
+            FemTupleAttrAccessor attrAccessor : tupleAccessor.getAttrAccessor())
+        {
+            ++i;
+            RelDataType type = fields[i].getType();
+            if (isPrimitive(type)) {
+                generatePrimitiveMarshal(
+                    implementor,
+                    factory,
+                    castResultSet,
+                    i,
+                    type,
+                    attrAccessor,
+                    bitFieldOffset,
+                    methodBody);
+                continue;
+            }
+
+            // allocate a value holder as class data member, and convert the
+            // column into it
+            OJClass holderClass = OJUtil.typeToOJClass(type, factory);
+            Variable varHolder = implementor.newVariable();
+            VariableInitializer holderInit = null;
+            if (!holderClass.isPrimitive()) {
+                holderInit =
+                    new AllocationExpression(
+                        holderClass,
+                        new ExpressionList());
+            }
+            memberList.add(
+                new FieldDeclaration(
+                    new ModifierList(ModifierList.PRIVATE),
+                    TypeName.forOJClass(holderClass),
+                    varHolder.toString(),
+                    holderInit));
+            ResultSetToFarragoIteratorConverter.translateColumn(
+                implementor,
+                child,
+                castResultSet,
+                i,
+                varHolder,
+                methodBody,
+                memberList);
+
+            if (attrAccessor.getNullBitIndex() != -1) {
+                methodBody.add(
+                    new IfStatement(
+                        new MethodCall(
+                            new CastExpression(
+                                OJUtil.typeNameForClass(NullableValue.class),
+                                varHolder),
+                            "isNull",
+                            new ExpressionList()),
+                        new StatementList(
+                            generateSetBit(
+                                bitFieldOffset,
+                                attrAccessor.getNullBitIndex()))));
+            }
+            variableWidth |=
+                generateFieldMarshal(
+                    factory,
+                    type,
+                    attrAccessor,
+                    varHolder,
+                    methodBody);
+        }
+
+        if (!variableWidth) {
+            // no variable width fields, so set position to fixed end
+            methodBody.add(
+                new ExpressionStatement(
+                    new MethodCall(
+                        new FieldAccess("sliceBuffer"),
+                        "position",
+                        new ExpressionList(
+                            Literal.makeLiteral(
+                                tupleAccessor.getMinByteLength())))));
+        }
+
+        // method parameter list matches
+        // FennelResultSetTupleWriter.marshalRow
+        ParameterList paramList = new ParameterList();
+        paramList.add(
+            new Parameter(
+                new ModifierList(0),
+                OJUtil.typeNameForClass(ByteBuffer.class),
+                "sliceBuffer"));
+        paramList.add(
+            new Parameter(
+                new ModifierList(0),
+                TypeName.forOJClass(OJUtil.clazzResultSet),
+                "resultSet"));
+
+        memberList.add(
+            new MethodDeclaration(
+                new ModifierList(ModifierList.PROTECTED),
+                TypeName.forOJClass(OJSystem.VOID),
+                "marshalRow",
+                paramList,
+                new TypeName[] {
+                    TypeName.forOJClass(OJUtil.clazzSQLException)
+                },
+                methodBody));
+
+        return new AllocationExpression(
+            OJUtil.typeNameForClass(FennelResultSetTupleWriter.class),
+            new ExpressionList(),
+            memberList);
+    }
+
+    /**
+     * Returns whether a column is read with a primitive ResultSet accessor
+     * and marshalled from a local variable.
+     */
+    private static boolean isPrimitive(RelDataType type)
+    {
+        // DECIMAL, datetime and interval values are also marshalled as
+        // primitives, but need converting, so they go through a value holder
+        return SqlTypeUtil.isJavaPrimitive(type)
+            && (type.getSqlTypeName() != SqlTypeName.SYMBOL);
+    }
+
+    /**
+     * Generates code to read a column of primitive type from the ResultSet
+     * and marshal it, together with its null indicator.
+     */
+    private static void generatePrimitiveMarshal(
+        FarragoRelImplementor implementor,
+        FarragoTypeFactory factory,
+        Expression resultSetExp,
+        int i,
+        RelDataType type,
+        FemTupleAttrAccessor attrAccessor,
+        int bitFieldOffset,
+        StatementList methodBody)
+    {
+        Class primitiveClass = factory.getClassForPrimitive(type);
+
+        // java.sql and java.nio use the same accessor names, except for
+        // boolean and tinyint
+        String getterName;
+        if (type.getSqlTypeName() == SqlTypeName.BOOLEAN) {
+            getterName = "getBoolean";
+        } else if (type.getSqlTypeName() == SqlTypeName.TINYINT) {
+            getterName = "getByte";
+        } else {
+            getterName =
+                ReflectUtil.getByteBufferReadMethod(primitiveClass).getName();
+        }
+
+        Variable varValue = implementor.newVariable();
+        methodBody.add(
+            new VariableDeclaration(
+                OJUtil.typeNameForClass(primitiveClass),
+                varValue.toString(),
+                new MethodCall(
+                    resultSetExp,
+                    getterName,
+                    new ExpressionList(Literal.makeLiteral(i + 1)))));
+
+        if (attrAccessor.getBitValueIndex() != -1) {
+            // boolean values are bit fields
+            methodBody.add(
+                new IfStatement(
+                    varValue,
+                    new StatementList(
+                        generateSetBit(
+                            bitFieldOffset,
+                            attrAccessor.getBitValueIndex()))));
+        } else {
+            methodBody.add(
+                new ExpressionStatement(
+                    new MethodCall(
+                        new FieldAccess("sliceBuffer"),
+                        ReflectUtil.getByteBufferWriteMethod(primitiveClass)
+                            .getName(),
+                        new ExpressionList(
+                            Literal.makeLiteral(
+                                attrAccessor.getFixedOffset()),
+                            varValue))));
+        }
+
+        if (attrAccessor.getNullBitIndex() != -1) {
+            methodBody.add(
+                new IfStatement(
+                    new MethodCall(
+                        resultSetExp,
+                        "wasNull",
+                        new ExpressionList()),
+                    new StatementList(
+                        generateSetBit(
+                            bitFieldOffset,
+                            attrAccessor.getNullBitIndex()))));
+        }
+    }
+
+    private static Statement generateSetBit(int bitFieldOffset, int bitIndex)
+    {
+        return new ExpressionStatement(
+            new MethodCall(
+                "setBit",
+                new ExpressionList(
+                    new FieldAccess("sliceBuffer"),
+                    Literal.makeLiteral(bitFieldOffset),
+                    Literal.makeLiteral(bitIndex))));
+    }
+}
+
+// End ResultSetToFennelConverter.java
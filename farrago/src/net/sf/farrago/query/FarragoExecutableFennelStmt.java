@@ -126,9 +126,20 @@ class FarragoExecutableFennelStmt
             FennelTupleDescriptor tupleDesc =
                 FennelRelUtil.convertRowTypeToFennelTupleDesc(
                     rowType);
-            FennelTupleData tupleData = new FennelTupleData(tupleDesc);
-            FennelTupleReader tupleReader =
-                new FennelOnlyTupleReader(tupleDesc, tupleData);
+            // With direct fetch, the result set reads values in place from
+            // the fetch buffer; otherwise, each row is unmarshalled first.
+            boolean directFetch =
+                FarragoProperties.instance().fennelDirectFetch.get();
+            FennelTupleReader tupleReader;
+            if (directFetch) {
+                tupleReader =
+                    new FennelOnlyTupleReader(new FennelTupleView(tupleDesc));
+            } else {
+                tupleReader =
+                    new FennelOnlyTupleReader(
+                        tupleDesc,
+                        new FennelTupleData(tupleDesc));
+            }
             FennelStreamHandle streamHandle;
             int cachePageSize;
 
@@ -149,7 +160,11 @@ class FarragoExecutableFennelStmt
                     tupleReader,
                     runtimeContext.getFennelStreamGraph(),
                     streamHandle,
-                    cachePageSize);
+                    cachePageSize,
+                    directFetch);
+
+            // closing the iterator returns its buffer to the pool
+            runtimeContext.addAllocation(tupleIter);
             FennelOnlyResultSet resultSet =
                 new FennelOnlyResultSet(
                     tupleIter,
@@ -197,6 +212,32 @@ class FarragoExecutableFennelStmt
     {
         return resultSetTypeMap;
     }
+
+    /**
+     * @return XMI for the Fennel stream graph, or null if none
+     */
+    String getXmiFennelPlan()
+    {
+        return xmiFennelPlan;
+    }
+
+    /**
+     * @return name of the stream producing the result, or null if the result
+     * is produced by Java code
+     */
+    String getStreamName()
+    {
+        return streamName;
+    }
+
+    /**
+     * @return map from mofid to modification timestamp of every catalog
+     * object this statement depends on
+     */
+    Map<String, String> getReferencedObjectTimestampMap()
+    {
+        return referencedObjectTimestampMap;
+    }
 }
 
 // End FarragoExecutableFennelStmt.java
@@ -70,6 +70,13 @@ class FarragoExecutableJavaStmt
     private final Map<String, RelDataType> iterCalcTypeMap;
     private final int totalByteCodeSize;
 
+    /**
+     * Bytecode of the generated classes, kept only until the statement has
+     * been saved to the persistent code cache; null if the statement is not a
+     * candidate for that.
+     */
+    private Map<String, byte []> byteCodes;
+
     //~ Constructors -----------------------------------------------------------
 
     FarragoExecutableJavaStmt(
@@ -88,7 +95,8 @@ class FarragoExecutableJavaStmt
         TableAccessMap tableAccessMap,
         Map<String, RelDataType> resultSetTypeMap,
         Map<String, RelDataType> iterCalcTypeMap,
-        int totalByteCodeSize)
+        int totalByteCodeSize,
+        Map<String, byte []> byteCodes)
     {
         super(
             preparedRowType,
@@ -110,6 +118,7 @@ class FarragoExecutableJavaStmt
         this.resultSetTypeMap = resultSetTypeMap;
         this.iterCalcTypeMap = iterCalcTypeMap;
         this.totalByteCodeSize = totalByteCodeSize;
+        this.byteCodes = byteCodes;
     }
 
     //~ Methods ----------------------------------------------------------------
@@ -211,6 +220,33 @@ class FarragoExecutableJavaStmt
     {
         return iterCalcTypeMap;
     }
+
+    Class getRowClass()
+    {
+        return rowClass;
+    }
+
+    Method getStmtMethod()
+    {
+        return stmtMethod;
+    }
+
+    int getTotalByteCodeSize()
+    {
+        return totalByteCodeSize;
+    }
+
+    /**
+     * Returns the bytecode of the generated classes, and forgets it.
+     *
+     * @return map from class name to bytecode, or null if not available
+     */
+    Map<String, byte []> takeByteCodes()
+    {
+        Map<String, byte []> result = byteCodes;
+        byteCodes = null;
+        return result;
+    }
 }
 
 // End FarragoExecutableJavaStmt.java
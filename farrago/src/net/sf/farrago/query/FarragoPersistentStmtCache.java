@@ -0,0 +1,709 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.query;
+
+import java.io.*;
+
+import java.lang.reflect.*;
+
+import java.nio.charset.*;
+
+import java.security.*;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.logging.*;
+
+import net.sf.farrago.release.*;
+import net.sf.farrago.session.*;
+import net.sf.farrago.trace.*;
+
+import org.eigenbase.rel.*;
+import org.eigenbase.relopt.*;
+import org.eigenbase.reltype.*;
+import org.eigenbase.sql.*;
+import org.eigenbase.sql.type.*;
+
+
+/**
+ * FarragoPersistentStmtCache is an optional on-disk tier beneath the code
+ * cache. Executable statements are saved to files in a directory (normally
+ * under the catalog directory) as soon as they are prepared, so that after a
+ * restart they can be reloaded without being optimized or compiled again.
+ *
+ * <p>Only statements which can be reconstituted from their saved state alone
+ * are persisted: pure Fennel statements, and Java statements whose generated
+ * bytecode was retained during compilation and which do not depend on
+ * routine jars or separately compiled transforms. All row types involved must
+ * be built from basic SQL types. Anything else is simply not saved.
+ *
+ * <p>Entries are keyed by the same string as the in-memory code cache (the
+ * validated SQL text plus label and parameter qualifiers), and are stamped
+ * with the product version so that an upgrade invalidates them. The caller is
+ * responsible for checking a loaded statement against the current versions of
+ * the catalog objects it references, and for calling {@link #reject} if it is
+ * stale.
+ *
+ * <p>Failures to read or write an entry are traced and otherwise ignored;
+ * they never cause statement preparation to fail.
+ *
+ * @version $Id$
+ */
+public class FarragoPersistentStmtCache
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final Logger tracer =
+        FarragoTrace.getClassTracer(FarragoPersistentStmtCache.class);
+
+    /**
+     * Version of the file format; bump this when {@link StoredStmt}, or the
+     * encoding of the Fennel plans it holds, changes incompatibly.
+     */
+    private static final int FORMAT_VERSION = 2;
+
+    private static final String FILE_SUFFIX = ".stmt";
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final File dir;
+
+    private final String version;
+
+    private final AtomicLong nLoads;
+    private final AtomicLong nLoadNanos;
+    private final AtomicLong nMisses;
+    private final AtomicLong nRejects;
+    private final AtomicLong nStores;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a persistent statement cache, creating its directory if
+     * necessary.
+     *
+     * @param dir directory holding saved statements
+     */
+    public FarragoPersistentStmtCache(File dir)
+    {
+        this.dir = dir;
+        dir.mkdirs();
+        version =
+            FORMAT_VERSION + ":"
+            + FarragoReleaseProperties.instance().getVersionString();
+        nLoads = new AtomicLong();
+        nLoadNanos = new AtomicLong();
+        nMisses = new AtomicLong();
+        nRejects = new AtomicLong();
+        nStores = new AtomicLong();
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Loads a saved statement.
+     *
+     * @param key code cache key
+     * @param typeFactory factory for reconstituted types
+     * @param parentClassLoader class loader to use as parent for generated
+     * classes
+     *
+     * @return reconstituted statement, or null if none was saved (or it could
+     * not be read)
+     */
+    public FarragoSessionExecutableStmt load(
+        String key,
+        RelDataTypeFactory typeFactory,
+        ClassLoader parentClassLoader)
+    {
+        long startTime = System.nanoTime();
+        File file = getFile(key);
+        if (!file.exists()) {
+            nMisses.incrementAndGet();
+            return null;
+        }
+        FarragoSessionExecutableStmt executableStmt;
+        try {
+            StoredStmt storedStmt = read(file);
+            if (!key.equals(storedStmt.key)
+                || !version.equals(storedStmt.version))
+            {
+                // hash collision, or left over from another release
+                reject(key);
+                return null;
+            }
+            executableStmt =
+                storedStmt.toExecutableStmt(typeFactory, parentClassLoader);
+        } catch (Exception ex) {
+            tracer.log(
+                Level.WARNING,
+                "Failed to load saved statement from " + file,
+                ex);
+            reject(key);
+            return null;
+        }
+        nLoads.incrementAndGet();
+        nLoadNanos.addAndGet(System.nanoTime() - startTime);
+        if (tracer.isLoggable(Level.FINE)) {
+            tracer.fine("Loaded saved statement for key " + key);
+        }
+        return executableStmt;
+    }
+
+    /**
+     * Saves a newly prepared statement, if it is of a kind which can be
+     * saved.
+     *
+     * @param key code cache key
+     * @param executableStmt statement to save
+     *
+     * @return whether the statement was saved
+     */
+    public boolean store(
+        String key,
+        FarragoSessionExecutableStmt executableStmt)
+    {
+        StoredStmt storedStmt;
+        try {
+            storedStmt = StoredStmt.fromExecutableStmt(executableStmt);
+        } catch (RuntimeException ex) {
+            // e.g. a type whose precision can't be determined; just don't
+            // save it
+            tracer.log(Level.FINE, "Not saving statement for key " + key, ex);
+            return false;
+        }
+        if (storedStmt == null) {
+            return false;
+        }
+        storedStmt.key = key;
+        storedStmt.version = version;
+
+        // Write to a temporary file and rename it into place, so that a
+        // concurrent load never sees a partial entry.
+        File file = getFile(key);
+        File tmpFile = null;
+        try {
+            tmpFile = File.createTempFile("stmt", ".tmp", dir);
+            ObjectOutputStream out =
+                new ObjectOutputStream(
+                    new BufferedOutputStream(
+                        new FileOutputStream(tmpFile)));
+            try {
+                out.writeObject(storedStmt);
+            } finally {
+                out.close();
+            }
+            file.delete();
+            if (!tmpFile.renameTo(file)) {
+                throw new IOException("Failed to rename " + tmpFile);
+            }
+            tmpFile = null;
+        } catch (IOException ex) {
+            tracer.log(
+                Level.WARNING,
+                "Failed to save statement to " + file,
+                ex);
+            return false;
+        } finally {
+            if (tmpFile != null) {
+                tmpFile.delete();
+            }
+        }
+        nStores.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Discards a saved statement which turned out to be unusable, e.g.
+     * because a catalog object it references has since been modified.
+     *
+     * @param key code cache key
+     */
+    public void reject(String key)
+    {
+        nRejects.incrementAndGet();
+        getFile(key).delete();
+    }
+
+    /**
+     * Discards all saved statements.
+     */
+    public void discardAll()
+    {
+        File [] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.getName().endsWith(FILE_SUFFIX)) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * @return number of statements loaded instead of being prepared
+     */
+    public long getLoadCount()
+    {
+        return nLoads.get();
+    }
+
+    /**
+     * @return total time spent loading statements, in milliseconds
+     */
+    public long getLoadMillis()
+    {
+        return nLoadNanos.get() / 1000000L;
+    }
+
+    /**
+     * @return number of lookups which found no saved statement
+     */
+    public long getMissCount()
+    {
+        return nMisses.get();
+    }
+
+    /**
+     * @return number of saved statements discarded as unusable
+     */
+    public long getRejectCount()
+    {
+        return nRejects.get();
+    }
+
+    /**
+     * @return number of statements saved
+     */
+    public long getStoreCount()
+    {
+        return nStores.get();
+    }
+
+    private File getFile(String key)
+    {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new AssertionError(ex);
+        }
+        byte [] hash = digest.digest(key.getBytes(Charset.forName("UTF-8")));
+        StringBuilder sb = new StringBuilder();
+        for (byte b : hash) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        sb.append(FILE_SUFFIX);
+        return new File(dir, sb.toString());
+    }
+
+    private static StoredStmt read(File file)
+        throws IOException, ClassNotFoundException
+    {
+        ObjectInputStream in =
+            new ObjectInputStream(
+                new BufferedInputStream(
+                    new FileInputStream(file)));
+        try {
+            return (StoredStmt) in.readObject();
+        } finally {
+            in.close();
+        }
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Saved form of an executable statement.
+     */
+    private static class StoredStmt
+        implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        String key;
+        String version;
+
+        TypeDesc rowType;
+        List<List<String>> fieldOrigins;
+        TypeDesc dynamicParamRowType;
+        String xmiFennelPlan;
+        String streamName;
+        boolean isDml;
+        TableModificationRel.Operation tableModOp;
+        HashMap<String, String> referencedObjectTimestampMap;
+        HashMap<List<String>, TableAccessMap.Mode> tableAccessMap;
+        LinkedHashMap<String, TypeDesc> resultSetTypeMap;
+
+        // the rest are only set for Java statements
+        LinkedHashMap<String, TypeDesc> iterCalcTypeMap;
+        LinkedHashMap<String, byte []> byteCodes;
+        int totalByteCodeSize;
+        String rowClassName;
+        String stmtClassName;
+        String stmtMethodName;
+        String [] stmtMethodParamTypes;
+
+        /**
+         * Captures the state of an executable statement.
+         *
+         * @param executableStmt statement to capture
+         *
+         * @return captured state, or null if the statement can't be saved
+         */
+        static StoredStmt fromExecutableStmt(
+            FarragoSessionExecutableStmt executableStmt)
+        {
+            if (!(executableStmt instanceof FarragoExecutableFennelStmt)) {
+                return null;
+            }
+            FarragoExecutableFennelStmt fennelStmt =
+                (FarragoExecutableFennelStmt) executableStmt;
+            StoredStmt storedStmt = new StoredStmt();
+            if (fennelStmt instanceof FarragoExecutableJavaStmt) {
+                FarragoExecutableJavaStmt javaStmt =
+                    (FarragoExecutableJavaStmt) fennelStmt;
+                Map<String, byte []> byteCodes = javaStmt.takeByteCodes();
+                if (byteCodes == null) {
+                    return null;
+                }
+                storedStmt.byteCodes =
+                    new LinkedHashMap<String, byte []>(byteCodes);
+                storedStmt.totalByteCodeSize =
+                    javaStmt.getTotalByteCodeSize();
+                storedStmt.rowClassName = javaStmt.getRowClass().getName();
+                Method method = javaStmt.getStmtMethod();
+                storedStmt.stmtClassName =
+                    method.getDeclaringClass().getName();
+                storedStmt.stmtMethodName = method.getName();
+                Class [] paramTypes = method.getParameterTypes();
+                storedStmt.stmtMethodParamTypes = new String[paramTypes.length];
+                for (int i = 0; i < paramTypes.length; ++i) {
+                    storedStmt.stmtMethodParamTypes[i] =
+                        paramTypes[i].getName();
+                }
+                storedStmt.iterCalcTypeMap =
+                    TypeDesc.describeAll(javaStmt.getIterCalcTypeMap());
+                if (storedStmt.iterCalcTypeMap == null) {
+                    return null;
+                }
+            } else if (fennelStmt.getStreamName() == null) {
+                return null;
+            }
+
+            storedStmt.rowType = TypeDesc.describe(fennelStmt.getRowType());
+            storedStmt.dynamicParamRowType =
+                TypeDesc.describe(fennelStmt.getDynamicParamRowType());
+            storedStmt.resultSetTypeMap =
+                TypeDesc.describeAll(fennelStmt.getResultSetTypeMap());
+            if ((storedStmt.rowType == null)
+                || (storedStmt.dynamicParamRowType == null)
+                || (storedStmt.resultSetTypeMap == null))
+            {
+                return null;
+            }
+
+            List<List<String>> fieldOrigins = fennelStmt.getFieldOrigins();
+            if (fieldOrigins != null) {
+                storedStmt.fieldOrigins = new ArrayList<List<String>>();
+                for (List<String> origin : fieldOrigins) {
+                    storedStmt.fieldOrigins.add(
+                        (origin == null) ? null
+                        : new ArrayList<String>(origin));
+                }
+            }
+            storedStmt.xmiFennelPlan = fennelStmt.getXmiFennelPlan();
+            storedStmt.streamName = fennelStmt.getStreamName();
+            storedStmt.isDml = fennelStmt.isDml();
+            storedStmt.tableModOp = fennelStmt.getTableModOp();
+            storedStmt.referencedObjectTimestampMap =
+                new HashMap<String, String>(
+                    fennelStmt.getReferencedObjectTimestampMap());
+            TableAccessMap tableAccessMap = fennelStmt.getTableAccessMap();
+            storedStmt.tableAccessMap =
+                new HashMap<List<String>, TableAccessMap.Mode>();
+            for (List<String> table : tableAccessMap.getTablesAccessed()) {
+                storedStmt.tableAccessMap.put(
+                    new ArrayList<String>(table),
+                    tableAccessMap.getTableAccessMode(table));
+            }
+            return storedStmt;
+        }
+
+        /**
+         * Reconstitutes an executable statement from its saved state.
+         *
+         * @param typeFactory factory for reconstituted types
+         * @param parentClassLoader parent for generated classes
+         *
+         * @return new executable statement
+         */
+        FarragoSessionExecutableStmt toExecutableStmt(
+            RelDataTypeFactory typeFactory,
+            ClassLoader parentClassLoader)
+            throws Exception
+        {
+            RelDataType preparedRowType = rowType.toType(typeFactory);
+            RelDataType paramRowType = dynamicParamRowType.toType(typeFactory);
+            Map<String, RelDataType> resultSetTypes =
+                TypeDesc.toTypes(resultSetTypeMap, typeFactory);
+            TableAccessMap accessMap = new TableAccessMap(tableAccessMap);
+
+            if (byteCodes == null) {
+                return new FarragoExecutableFennelStmt(
+                    preparedRowType,
+                    fieldOrigins,
+                    paramRowType,
+                    xmiFennelPlan,
+                    streamName,
+                    isDml,
+                    tableModOp,
+                    referencedObjectTimestampMap,
+                    accessMap,
+                    resultSetTypes);
+            }
+
+            ClassLoader classLoader =
+                new ByteCodeClassLoader(byteCodes, parentClassLoader);
+            Class rowClass = Class.forName(rowClassName, true, classLoader);
+            Class stmtClass = Class.forName(stmtClassName, true, classLoader);
+            Method stmtMethod = null;
+            for (Method method : stmtClass.getMethods()) {
+                if (method.getName().equals(stmtMethodName)
+                    && matches(method.getParameterTypes()))
+                {
+                    stmtMethod = method;
+                    break;
+                }
+            }
+            if (stmtMethod == null) {
+                throw new NoSuchMethodException(
+                    stmtClassName + "." + stmtMethodName);
+            }
+            return new FarragoExecutableJavaStmt(
+                null,
+                rowClass,
+                classLoader,
+                preparedRowType,
+                fieldOrigins,
+                paramRowType,
+                stmtMethod,
+                Collections.<FarragoTransformDef>emptyList(),
+                xmiFennelPlan,
+                isDml,
+                tableModOp,
+                referencedObjectTimestampMap,
+                accessMap,
+                resultSetTypes,
+                TypeDesc.toTypes(iterCalcTypeMap, typeFactory),
+                totalByteCodeSize,
+                null);
+        }
+
+        private boolean matches(Class [] paramTypes)
+        {
+            if (paramTypes.length != stmtMethodParamTypes.length) {
+                return false;
+            }
+            for (int i = 0; i < paramTypes.length; ++i) {
+                if (!paramTypes[i].getName().equals(stmtMethodParamTypes[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Saved form of a type. Only record types and basic SQL types are
+     * supported; types are canonized again via a type factory when loaded.
+     */
+    private static class TypeDesc
+        implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Null for a record type.
+         */
+        SqlTypeName typeName;
+        boolean isNullable;
+        int precision;
+        int scale;
+        String charsetName;
+        String collationName;
+        SqlCollation.Coercibility coercibility;
+
+        /**
+         * Only set for a record type.
+         */
+        String [] fieldNames;
+        TypeDesc [] fieldTypes;
+
+        /**
+         * Describes a type.
+         *
+         * @param type type to describe
+         *
+         * @return description, or null if the type is not supported
+         */
+        static TypeDesc describe(RelDataType type)
+        {
+            TypeDesc desc = new TypeDesc();
+            if (type instanceof RelRecordType) {
+                RelDataTypeField [] fields = type.getFields();
+                desc.fieldNames = new String[fields.length];
+                desc.fieldTypes = new TypeDesc[fields.length];
+                for (int i = 0; i < fields.length; ++i) {
+                    desc.fieldNames[i] = fields[i].getName();
+                    desc.fieldTypes[i] = describe(fields[i].getType());
+                    if (desc.fieldTypes[i] == null) {
+                        return null;
+                    }
+                }
+                return desc;
+            }
+            if (!(type instanceof BasicSqlType)) {
+                return null;
+            }
+            desc.typeName = type.getSqlTypeName();
+            desc.isNullable = type.isNullable();
+            if (desc.typeName.allowsPrec()) {
+                desc.precision = type.getPrecision();
+            }
+            if (desc.typeName.allowsScale()) {
+                desc.scale = type.getScale();
+            }
+            if (type.getCharset() != null) {
+                desc.charsetName = type.getCharset().name();
+            }
+            SqlCollation collation = type.getCollation();
+            if (collation != null) {
+                desc.collationName = collation.getCollationName();
+                desc.coercibility = collation.getCoercibility();
+            } else if (desc.charsetName != null) {
+                return null;
+            }
+            return desc;
+        }
+
+        /**
+         * Describes the types in a map.
+         *
+         * @param typeMap map to describe
+         *
+         * @return descriptions, or null if any type is not supported
+         */
+        static LinkedHashMap<String, TypeDesc> describeAll(
+            Map<String, RelDataType> typeMap)
+        {
+            LinkedHashMap<String, TypeDesc> descMap =
+                new LinkedHashMap<String, TypeDesc>();
+            for (Map.Entry<String, RelDataType> entry : typeMap.entrySet()) {
+                TypeDesc desc = describe(entry.getValue());
+                if (desc == null) {
+                    return null;
+                }
+                descMap.put(entry.getKey(), desc);
+            }
+            return descMap;
+        }
+
+        static Map<String, RelDataType> toTypes(
+            Map<String, TypeDesc> descMap,
+            RelDataTypeFactory typeFactory)
+        {
+            Map<String, RelDataType> typeMap =
+                new HashMap<String, RelDataType>();
+            for (Map.Entry<String, TypeDesc> entry : descMap.entrySet()) {
+                typeMap.put(
+                    entry.getKey(),
+                    entry.getValue().toType(typeFactory));
+            }
+            return typeMap;
+        }
+
+        RelDataType toType(RelDataTypeFactory typeFactory)
+        {
+            if (typeName == null) {
+                RelDataType [] types = new RelDataType[fieldTypes.length];
+                for (int i = 0; i < types.length; ++i) {
+                    types[i] = fieldTypes[i].toType(typeFactory);
+                }
+                return typeFactory.createStructType(types, fieldNames);
+            }
+            RelDataType type;
+            if (typeName.allowsScale()) {
+                type = typeFactory.createSqlType(typeName, precision, scale);
+            } else if (typeName.allowsPrec()) {
+                type = typeFactory.createSqlType(typeName, precision);
+            } else {
+                type = typeFactory.createSqlType(typeName);
+            }
+            if (charsetName != null) {
+                type =
+                    typeFactory.createTypeWithCharsetAndCollation(
+                        type,
+                        Charset.forName(charsetName),
+                        new SqlCollation(collationName, coercibility));
+            }
+            return typeFactory.createTypeWithNullability(type, isNullable);
+        }
+    }
+
+    /**
+     * Class loader which defines generated classes from saved bytecode.
+     */
+    private static class ByteCodeClassLoader
+        extends ClassLoader
+    {
+        private final Map<String, byte []> byteCodes;
+
+        ByteCodeClassLoader(
+            Map<String, byte []> byteCodes,
+            ClassLoader parent)
+        {
+            super(parent);
+            this.byteCodes = new HashMap<String, byte []>();
+            for (Map.Entry<String, byte []> entry : byteCodes.entrySet()) {
+                this.byteCodes.put(
+                    entry.getKey().replace('/', '.'),
+                    entry.getValue());
+            }
+        }
+
+        // override ClassLoader
+        protected Class findClass(String name)
+            throws ClassNotFoundException
+        {
+            byte [] bytes = byteCodes.get(name);
+            if (bytes == null) {
+                throw new ClassNotFoundException(name);
+            }
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
+
+// End FarragoPersistentStmtCache.java
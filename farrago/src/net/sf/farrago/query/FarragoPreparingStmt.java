@@ -53,6 +53,7 @@ import openjava.mop.*;
 
 import openjava.ptree.*;
 
+import org.eigenbase.javac.*;
 import org.eigenbase.jmi.*;
 import org.eigenbase.oj.rel.*;
 import org.eigenbase.oj.stmt.*;
@@ -61,6 +62,7 @@ import org.eigenbase.rel.*;
 import org.eigenbase.rel.convert.*;
 import org.eigenbase.rel.metadata.*;
 import org.eigenbase.relopt.*;
+import org.eigenbase.relopt.volcano.*;
 import org.eigenbase.reltype.*;
 import org.eigenbase.rex.*;
 import org.eigenbase.sql.*;
@@ -149,6 +151,18 @@ public class FarragoPreparingStmt
     private FarragoSessionPlanner planner;
     private FarragoRelImplementor relImplementor;
 
+    /**
+     * Metrics of the Volcano planner's search for this statement's plan, or
+     * null if the statement was not planned by a Volcano planner.
+     */
+    private VolcanoPlannerMetrics plannerMetrics;
+
+    /**
+     * Cache of metadata query results, shared by every planner phase of this
+     * statement; null until {@link #finalizeRelMetadata} is called.
+     */
+    private CachingRelMetadataProvider relMetadataCache;
+
     //~ Constructors -----------------------------------------------------------
 
     /**
@@ -283,6 +297,18 @@ public class FarragoPreparingStmt
         return planner;
     }
 
+    /**
+     * Returns the planning time and the number of rules fired in each phase
+     * of planning this statement.
+     *
+     * @return planner metrics, or null if the statement has not been
+     * optimized by a Volcano planner
+     */
+    public VolcanoPlannerMetrics getPlannerMetrics()
+    {
+        return plannerMetrics;
+    }
+
     // implement FarragoSessionPreparingStmt
     public SqlOperatorTable getSqlOperatorTable()
     {
@@ -390,7 +416,7 @@ public class FarragoPreparingStmt
         return implementingArgs;
     }
 
-    protected TableAccessMap getTableAccessMap()
+    public TableAccessMap getTableAccessMap()
     {
         return tableAccessMap;
     }
@@ -597,10 +623,32 @@ public class FarragoPreparingStmt
                 Collection<FemExecutionStreamDef> streamDefs =
                     cmdPrepareStream.getStreamDefs();
                 streamDefs.addAll(streamDefSet);
-                xmiFennelPlan =
-                    JmiObjUtil.exportToXmiString(
-                        Collections.singleton(cmdPrepareStream));
-                streamGraphTracer.fine(xmiFennelPlan);
+                FennelDbHandle fennelDbHandle = getFennelDbHandle();
+                if ((fennelDbHandle == null)
+                    || FarragoProperties.instance().xmiFennelPlans.get())
+                {
+                    xmiFennelPlan =
+                        JmiObjUtil.exportToXmiString(
+                            Collections.singleton(cmdPrepareStream));
+                    streamGraphTracer.fine(xmiFennelPlan);
+                } else {
+                    xmiFennelPlan =
+                        fennelDbHandle.getPlanCodec(getRepos()).encode(
+                            cmdPrepareStream);
+                    if (streamGraphTracer.isLoggable(Level.FINE)) {
+                        // the binary plan is unreadable, so trace XMI
+                        // instead, together with how closely the length
+                        // recorded for memory estimates matches it
+                        String xmi =
+                            JmiObjUtil.exportToXmiString(
+                                Collections.singleton(cmdPrepareStream));
+                        streamGraphTracer.fine(xmi);
+                        streamGraphTracer.fine(
+                            "XMI length " + xmi.length() + ", estimated "
+                            + FennelPlanCodec.getXmiLength(xmiFennelPlan)
+                            + ", encoded length " + xmiFennelPlan.length());
+                    }
+                }
             }
 
             assert (tableAccessMap != null);
@@ -650,7 +698,8 @@ public class FarragoPreparingStmt
                         tableAccessMap,
                         resultSetTypeMap,
                         iterCalcTypeMap,
-                        javaCompiler.getTotalByteCodeSize());
+                        javaCompiler.getTotalByteCodeSize(),
+                        getPersistableByteCodes());
             } else {
                 executableStmt =
                     new FarragoExecutableFennelStmt(
@@ -877,6 +926,19 @@ public class FarragoPreparingStmt
         RelTraitSet desiredTraits = getDesiredRootTraitSet(rootRel);
 
         rootRel = super.optimize(rowType, rootRel);
+        RelOptPlanner delegate = planner.chooseDelegate();
+        if (delegate instanceof VolcanoPlanner) {
+            plannerMetrics = ((VolcanoPlanner) delegate).getMetrics();
+            if (dumpPlan && (plannerMetrics != null)) {
+                planDumpTracer.fine("Planner metrics: " + plannerMetrics);
+            }
+        }
+        if (dumpPlan && (relMetadataCache != null)) {
+            planDumpTracer.fine(
+                "Metadata calls: " + relMetadataCache.getCallCount()
+                + " (" + relMetadataCache.getHitCount() + " cached); "
+                + relMetadataCache.getCallCountString());
+        }
         if (dumpPlan) {
             planDumpTracer.fine(
                 RelOptUtil.dumpPlan(
@@ -956,6 +1018,7 @@ public class FarragoPreparingStmt
         // Add caching on top of all that.
         CachingRelMetadataProvider cacheProvider =
             new CachingRelMetadataProvider(relMetadataProvider, planner);
+        relMetadataCache = cacheProvider;
 
         // Put the planner at the head of its own chain before all the rest.
         // It's a bad idea to cache the planner's results.
@@ -1621,6 +1684,44 @@ public class FarragoPreparingStmt
         return getRepos().getCurrentConfig().getJavaCompilerClassName();
     }
 
+    // override OJPreparingStmt
+    protected JavaCompiler createCompiler()
+    {
+        JavaCompiler compiler = super.createCompiler();
+        if ((compiler instanceof JaninoCompiler)
+            && FarragoProperties.instance().persistCodeCache.get())
+        {
+            // keep the generated bytecode so that the statement can be saved
+            // to the persistent code cache
+            ((JaninoCompiler) compiler).setRetainByteCodes(true);
+        }
+        return compiler;
+    }
+
+    /**
+     * Returns the bytecode generated for this statement, if the statement can
+     * be reconstituted from it alone.
+     *
+     * @return map from class name to bytecode, or null if the statement
+     * depends on something else generated during preparation (routine jars
+     * or separately compiled transforms), or bytecode was not retained
+     */
+    private Map<String, byte []> getPersistableByteCodes()
+    {
+        if (!(javaCompiler instanceof JaninoCompiler)) {
+            return null;
+        }
+        Map<String, byte []> byteCodes =
+            ((JaninoCompiler) javaCompiler).takeByteCodes();
+        if (byteCodes.isEmpty()
+            || !jarUrlSet.isEmpty()
+            || !getTransformDefs().isEmpty())
+        {
+            return null;
+        }
+        return byteCodes;
+    }
+
     // override OJPreparingStmt
     protected boolean shouldSetConnectionInfo()
     {
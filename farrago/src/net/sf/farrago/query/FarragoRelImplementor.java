@@ -552,6 +552,16 @@ public class FarragoRelImplementor
         return preparingStmt.getConnectionVariable();
     }
 
+    // override JavaRelImplementor
+    public Expression getCancelFlagExpression()
+    {
+        // FarragoRuntimeContext.getCancelFlag()
+        return new MethodCall(
+            getConnectionVariable(),
+            "getCancelFlag",
+            new ExpressionList());
+    }
+
     // override JavaRelImplementor
     protected RexToOJTranslator newTranslator(RelNode rel)
     {
@@ -211,85 +211,13 @@ public class IteratorToFennelConverter
                     Util.toJavaId(
                         field.getName(),
                         i));
-            Class primitiveClass = factory.getClassForPrimitive(type);
-            if (primitiveClass != null) {
-                Method method =
-                    ReflectUtil.getByteBufferWriteMethod(primitiveClass);
-                String byteBufferAccessorName = method.getName();
-
-                // this field is marshalled to a fixed offset relative
-                // to the sliceBuffer start
-                fieldExp = factory.getValueAccessExpression(type, fieldExp);
-
-                // REVIEW:  skip write if field is null?
-                methodBody.add(
-                    new ExpressionStatement(
-                        new MethodCall(
-                            new FieldAccess("sliceBuffer"),
-                            byteBufferAccessorName,
-                            new ExpressionList(
-                                Literal.makeLiteral(
-                                    attrAccessor.getFixedOffset()),
-                                fieldExp))));
-            } else if (SqlTypeUtil.isBoundedVariableWidth(type)) {
-                variableWidth = true;
-                if (attrAccessor.getFixedOffset() != -1) {
-                    // first variable-width field:  position to the start of the
-                    // variable width data
-                    methodBody.add(
-                        new ExpressionStatement(
-                            new MethodCall(
-                                new FieldAccess("sliceBuffer"),
-                                "position",
-                                new ExpressionList(
-                                    Literal.makeLiteral(
-                                        attrAccessor.getFixedOffset())))));
-                } else {
-                    // use position set by previous variable-width field
-                }
-
-                // write data
-                methodBody.add(
-                    new ExpressionStatement(
-                        new MethodCall(
-                            fieldExp,
-                            "writeToBuffer",
-                            new ExpressionList(
-                                new FieldAccess("sliceBuffer")))));
-
-                // position after data has been written is the end
-                // offset for this field
-                Expression currPosExp =
-                    new CastExpression(
-                        OJSystem.SHORT,
-                        new MethodCall(
-                            new FieldAccess("sliceBuffer"),
-                            "position",
-                            new ExpressionList()));
-
-                // write the end indirect offset
-                methodBody.add(
-                    new ExpressionStatement(
-                        new MethodCall(
-                            new FieldAccess("sliceBuffer"),
-                            "putShort",
-                            new ExpressionList(
-                                Literal.makeLiteral(
-                                    attrAccessor.getEndIndirectOffset()),
-                                currPosExp))));
-            } else {
-                // fixed-width CHARACTER or BINARY
-                // TODO:  ensure that data is already blank/zero padded
-                methodBody.add(
-                    new ExpressionStatement(
-                        new MethodCall(
-                            fieldExp,
-                            "writeToBufferAbsolute",
-                            new ExpressionList(
-                                new FieldAccess("sliceBuffer"),
-                                Literal.makeLiteral(
-                                    attrAccessor.getFixedOffset())))));
-            }
+            variableWidth |=
+                generateFieldMarshal(
+                    factory,
+                    type,
+                    attrAccessor,
+                    fieldExp,
+                    methodBody);
         }
 
         if (!variableWidth) {
@@ -334,7 +262,108 @@ public class IteratorToFennelConverter
             new MemberDeclarationList(methodDecl));
     }
 
-    private static ClassDeclaration generateTransformer(
+    /**
+     * Generates code to marshal one field, other than a bit field, of a tuple
+     * into the ByteBuffer named <code>sliceBuffer</code>. Variable-width
+     * fields must be marshalled in order.
+     *
+     * @param factory type factory
+     * @param type type of the field
+     * @param attrAccessor accessor for the field within the tuple
+     * @param fieldExp expression for the field's value
+     * @param methodBody statement list to which the code is added
+     *
+     * @return whether the field is of variable width
+     */
+    public static boolean generateFieldMarshal(
+        FarragoTypeFactory factory,
+        RelDataType type,
+        FemTupleAttrAccessor attrAccessor,
+        Expression fieldExp,
+        StatementList methodBody)
+    {
+        Class primitiveClass = factory.getClassForPrimitive(type);
+        if (primitiveClass != null) {
+            Method method =
+                ReflectUtil.getByteBufferWriteMethod(primitiveClass);
+            String byteBufferAccessorName = method.getName();
+
+            // this field is marshalled to a fixed offset relative
+            // to the sliceBuffer start
+            fieldExp = factory.getValueAccessExpression(type, fieldExp);
+
+            // REVIEW:  skip write if field is null?
+            methodBody.add(
+                new ExpressionStatement(
+                    new MethodCall(
+                        new FieldAccess("sliceBuffer"),
+                        byteBufferAccessorName,
+                        new ExpressionList(
+                            Literal.makeLiteral(
+                                attrAccessor.getFixedOffset()),
+                            fieldExp))));
+        } else if (SqlTypeUtil.isBoundedVariableWidth(type)) {
+            if (attrAccessor.getFixedOffset() != -1) {
+                // first variable-width field:  position to the start of the
+                // variable width data
+                methodBody.add(
+                    new ExpressionStatement(
+                        new MethodCall(
+                            new FieldAccess("sliceBuffer"),
+                            "position",
+                            new ExpressionList(
+                                Literal.makeLiteral(
+                                    attrAccessor.getFixedOffset())))));
+            } else {
+                // use position set by previous variable-width field
+            }
+
+            // write data
+            methodBody.add(
+                new ExpressionStatement(
+                    new MethodCall(
+                        fieldExp,
+                        "writeToBuffer",
+                        new ExpressionList(
+                            new FieldAccess("sliceBuffer")))));
+
+            // position after data has been written is the end
+            // offset for this field
+            Expression currPosExp =
+                new CastExpression(
+                    OJSystem.SHORT,
+                    new MethodCall(
+                        new FieldAccess("sliceBuffer"),
+                        "position",
+                        new ExpressionList()));
+
+            // write the end indirect offset
+            methodBody.add(
+                new ExpressionStatement(
+                    new MethodCall(
+                        new FieldAccess("sliceBuffer"),
+                        "putShort",
+                        new ExpressionList(
+                            Literal.makeLiteral(
+                                attrAccessor.getEndIndirectOffset()),
+                            currPosExp))));
+        } else {
+            // fixed-width CHARACTER or BINARY
+            // TODO:  ensure that data is already blank/zero padded
+            methodBody.add(
+                new ExpressionStatement(
+                    new MethodCall(
+                        fieldExp,
+                        "writeToBufferAbsolute",
+                        new ExpressionList(
+                            new FieldAccess("sliceBuffer"),
+                            Literal.makeLiteral(
+                                attrAccessor.getFixedOffset())))));
+        }
+        return SqlTypeUtil.isBoundedVariableWidth(type);
+    }
+
+    protected static ClassDeclaration generateTransformer(
         FarragoPreparingStmt stmt,
         String className,
         FarragoRelImplementor implementor,
@@ -36,6 +36,7 @@ import net.sf.farrago.session.*;
 import net.sf.farrago.trace.*;
 import net.sf.farrago.type.*;
 import net.sf.farrago.type.runtime.*;
+import net.sf.farrago.util.*;
 
 import org.eigenbase.reltype.*;
 import org.eigenbase.runtime.*;
@@ -47,6 +48,16 @@ import org.eigenbase.util.*;
  * supports both the blocking interface {@link Iterator} and the non-blocking
  * {@link TupleIter}.
  *
+ * <p>The UDX runs in its own thread, and rows pass to the consumer through a
+ * queue. When the batch size (see {@link FarragoProperties#udxBatchSize}) is
+ * 1, each row is a separate queue entry. Otherwise, the UDX fills a page of
+ * row objects, and only whole pages go through the queue, which saves a lock
+ * handoff per row. So that rows are not held back while the UDX is waiting for
+ * its own input, the producer also hands over a partial page when it notices
+ * that the consumer is waiting, and a consumer which finds the queue empty may
+ * read rows which have been completed on the page still being filled. Pages
+ * are recycled once the consumer has moved past them.
+ *
  * @author John V. Sichi
  * @version $Id$
  */
@@ -58,13 +69,59 @@ public abstract class FarragoJavaUdxIterator
     //~ Static fields/initializers ---------------------------------------------
 
     private static final int QUEUE_ARRAY_SIZE = 100;
+
+    /**
+     * Number of full pages which may be queued in batch mode.
+     */
+    private static final int QUEUE_PAGE_COUNT = 4;
+
+    /**
+     * Maximum number of pages in batch mode: those in the queue, plus one
+     * being filled by the producer, plus one being read and one waiting to be
+     * read by the consumer.
+     */
+    private static final int MAX_PAGE_COUNT = QUEUE_PAGE_COUNT + 3;
     protected static final Logger tracer =
         FarragoTrace.getRuntimeContextTracer();
 
     //~ Instance fields --------------------------------------------------------
 
+    /**
+     * Circular array of row objects when rows are queued one at a time, or
+     * null in batch mode.
+     */
     private final FarragoSyntheticObject [] rowObjs;
 
+    private final Class rowClass;
+    private final int batchSize;
+
+    /**
+     * Pages released by the consumer, for re-use by the producer.
+     */
+    private final BlockingQueue<RowPage> freePages;
+
+    /**
+     * Page being filled by the producer.
+     */
+    private volatile RowPage fillPage;
+
+    /**
+     * Set by the consumer while it waits for the queue.
+     */
+    private volatile boolean consumerWaiting;
+
+    // producer state in batch mode
+    private FarragoSyntheticObject batchRow;
+    private int pageCount;
+    private long pageSeq;
+
+    // consumer state in batch mode
+    private RowPage readPage;
+    private boolean readPageQueued;
+    private int readPos;
+    private RowPage nextPage;
+    private boolean nextPageQueued;
+
     private final PreparedStatement resultInserter;
 
     // protected because needed by generated subclasses
@@ -74,7 +131,7 @@ public abstract class FarragoJavaUdxIterator
     private long defaultTimeout = Long.MAX_VALUE;
     private boolean timeoutAsUnderflow = true;
     private boolean didUnderflow = false;
-    private boolean stopThread;
+    private volatile boolean stopThread;
 
     private CountDownLatch latch;
     private final ParameterMetaData parameterMetaData;
@@ -88,23 +145,49 @@ public abstract class FarragoJavaUdxIterator
         Class rowClass,
         RelDataType rowType)
     {
-        super(new ArrayBlockingQueue(QUEUE_ARRAY_SIZE));
+        this(
+            runtimeContext,
+            rowClass,
+            rowType,
+            FarragoProperties.instance().udxBatchSize.get());
+    }
+
+    /**
+     * Creates a FarragoJavaUdxIterator with a given batch size.
+     *
+     * @param runtimeContext runtime context of the executing statement
+     * @param rowClass class of output rows
+     * @param rowType type of output rows
+     * @param batchSize number of rows to hand over at a time; 1 to queue rows
+     * individually
+     */
+    protected FarragoJavaUdxIterator(
+        FarragoSessionRuntimeContext runtimeContext,
+        Class rowClass,
+        RelDataType rowType,
+        int batchSize)
+    {
+        super(
+            new ArrayBlockingQueue(
+                (batchSize > 1) ? QUEUE_PAGE_COUNT : QUEUE_ARRAY_SIZE));
         this.runtimeContext = runtimeContext;
+        this.rowClass = rowClass;
+        this.batchSize = batchSize;
         runtimeContext.addAllocation(this);
 
         parameterMetaData = new FarragoParameterMetaData(rowType);
 
-        // NOTE jvs 16-Jan-2006: We construct a circular array with two extra
-        // slots:  one for the producer thread to write into, and one for the
-        // consumer thread to read from; this guarantees that we
-        // never recycle a row still accessible by the consumer.
-        rowObjs = new FarragoSyntheticObject[QUEUE_ARRAY_SIZE + 2];
-        try {
-            for (int i = 0; i < rowObjs.length; ++i) {
-                rowObjs[i] = (FarragoSyntheticObject) rowClass.newInstance();
-            }
-        } catch (Throwable ex) {
-            throw Util.newInternal(ex);
+        if (batchSize > 1) {
+            // pages are allocated on demand
+            rowObjs = null;
+            freePages = new ArrayBlockingQueue<RowPage>(MAX_PAGE_COUNT);
+        } else {
+            // NOTE jvs 16-Jan-2006: We construct a circular array with two
+            // extra slots:  one for the producer thread to write into, and
+            // one for the consumer thread to read from; this guarantees that
+            // we never recycle a row still accessible by the consumer.
+            rowObjs = newRows(QUEUE_ARRAY_SIZE + 2);
+            freePages = null;
         }
         iRow = 0;
         resultInserter =
@@ -119,6 +202,19 @@ public abstract class FarragoJavaUdxIterator
 
     //~ Methods ----------------------------------------------------------------
 
+    private FarragoSyntheticObject [] newRows(int n)
+    {
+        FarragoSyntheticObject [] rows = new FarragoSyntheticObject[n];
+        try {
+            for (int i = 0; i < rows.length; ++i) {
+                rows[i] = (FarragoSyntheticObject) rowClass.newInstance();
+            }
+        } catch (Throwable ex) {
+            throw Util.newInternal(ex);
+        }
+        return rows;
+    }
+
     // override QueueIterator
     public boolean hasNext()
     {
@@ -128,7 +224,15 @@ public abstract class FarragoJavaUdxIterator
             // including subclasses; also the Fennel plan needs to be loaded.
             startWithLatch();
         }
-        return super.hasNext();
+        if (rowObjs != null) {
+            return super.hasNext();
+        }
+        try {
+            return hasNextInBatch(-1);
+        } catch (QueueIterator.TimeoutException ex) {
+            // can't happen without a timeout
+            throw Util.newInternal(ex);
+        }
     }
 
     // override QueueIterator
@@ -138,7 +242,134 @@ public abstract class FarragoJavaUdxIterator
         if (latch == null) {
             startWithLatch();
         }
-        return super.hasNext(timeout);
+        if (rowObjs != null) {
+            return super.hasNext(timeout);
+        }
+        return hasNextInBatch(Math.max(timeout, 0));
+    }
+
+    // override QueueIterator
+    public Object next()
+    {
+        if (rowObjs != null) {
+            return super.next();
+        }
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return nextInBatch();
+    }
+
+    /**
+     * Implements {@link #hasNext} in batch mode.
+     *
+     * @param timeout milliseconds to wait, or -1 to wait indefinitely
+     */
+    private boolean hasNextInBatch(long timeout)
+        throws QueueIterator.TimeoutException
+    {
+        while (true) {
+            if ((nextPage != null)
+                || ((readPage != null) && (readPos < readPage.rowCount)))
+            {
+                return true;
+            }
+            if (next == null) {
+                next = queue.poll();
+            }
+            if (next == null) {
+                if (peekFillPage()) {
+                    return true;
+                }
+                consumerWaiting = true;
+                try {
+                    // check again, in case the producer added a row before
+                    // it could see that we are waiting
+                    if (peekFillPage()) {
+                        return true;
+                    }
+                    boolean more =
+                        (timeout < 0) ? super.hasNext()
+                        : super.hasNext(timeout);
+                    if (!more) {
+                        return false;
+                    }
+                } finally {
+                    consumerWaiting = false;
+                }
+            } else if (!super.hasNext()) {
+                // end of queue
+                return false;
+            }
+            RowPage page = (RowPage) next;
+            next = null;
+            acceptQueuedPage(page);
+        }
+    }
+
+    /**
+     * Looks for rows on the page being filled by the producer, if it is the
+     * next page to be read.
+     *
+     * @return whether rows are available
+     */
+    private boolean peekFillPage()
+    {
+        RowPage page = fillPage;
+        if (page == null) {
+            return false;
+        }
+        if (page == readPage) {
+            return readPos < page.rowCount;
+        }
+        long expectedSeq = (readPage == null) ? 0 : (readPage.seq + 1);
+        if ((page.seq != expectedSeq) || (page.rowCount == 0)) {
+            // an earlier page has yet to be dequeued, or there is nothing new
+            return false;
+        }
+        nextPage = page;
+        nextPageQueued = false;
+        return true;
+    }
+
+    /**
+     * Handles a page which has come through the queue. Part or all of it may
+     * already have been read via {@link #peekFillPage}.
+     */
+    private void acceptQueuedPage(RowPage page)
+    {
+        if (page == readPage) {
+            readPageQueued = true;
+        } else if (page == nextPage) {
+            nextPageQueued = true;
+        } else if ((readPage != null) && (page.seq < readPage.seq)) {
+            // already read past this page
+            freePages.add(page);
+        } else {
+            nextPage = page;
+            nextPageQueued = true;
+        }
+    }
+
+    /**
+     * Implements {@link #next} in batch mode, after {@link #hasNextInBatch}
+     * has returned true.
+     */
+    private Object nextInBatch()
+    {
+        if ((readPage == null) || (readPos >= readPage.rowCount)) {
+            // The caller is done with the previous row, so the page can be
+            // recycled, unless it has yet to come through the queue; in that
+            // case, acceptQueuedPage will recycle it on arrival.
+            if ((readPage != null) && readPageQueued) {
+                freePages.add(readPage);
+            }
+            readPage = nextPage;
+            readPageQueued = nextPageQueued;
+            readPos = 0;
+            nextPage = null;
+        }
+        return readPage.rows[readPos++];
     }
 
     // implement TupleIter
@@ -181,8 +412,18 @@ public abstract class FarragoJavaUdxIterator
     // override QueueIterator
     public void done(Throwable e)
     {
-        super.done(e);
-        onData();
+        try {
+            if (stopThread) {
+                // The consumer asked us to stop, and is not interested in how
+                // we finished; an end-of-queue marker could otherwise land
+                // in the queue after restart has cleared it.
+                return;
+            }
+            super.done(e);
+            onData();
+        } finally {
+            latch.countDown();
+        }
     }
 
     // override QueueIterator
@@ -239,26 +480,30 @@ public abstract class FarragoJavaUdxIterator
     {
         // Start a repository session in the event that the UDX accesses the
         // metadata repository -- the session is lightweight, so no problem
-        // if repository txn is never started
+        // if repository txn is never started.  (The latch is counted down
+        // by done, which ThreadIterator always calls after doWork.)
+
+        // sometimes sessions don't exist (don't ask why, if you don't know
+        // you will always have a session)
+        if (runtimeContext.getSession() != null) {
+            runtimeContext.getSession().getRepos().beginReposSession();
+        } else {
+            runtimeContext.getRepos().beginReposSession();
+        }
         try {
-            // sometimes sessions don't exist (don't ask why, if you don't know
-            // you will always have a session)
-            if (runtimeContext.getSession() != null) {
-                runtimeContext.getSession().getRepos().beginReposSession();
-            } else {
-                runtimeContext.getRepos().beginReposSession();
+            if (rowObjs == null) {
+                fillPage = takeFreePage();
             }
-            try {
-                executeUdx();
-            } finally {
-                if (runtimeContext.getSession() != null) {
-                    runtimeContext.getSession().getRepos().endReposSession();
-                } else {
-                    runtimeContext.getRepos().endReposSession();
-                }
+            executeUdx();
+            if ((rowObjs == null) && (fillPage.rowCount > 0)) {
+                offerPage(fillPage);
             }
         } finally {
-            latch.countDown();
+            if (runtimeContext.getSession() != null) {
+                runtimeContext.getSession().getRepos().endReposSession();
+            } else {
+                runtimeContext.getRepos().endReposSession();
+            }
         }
     }
 
@@ -270,9 +515,66 @@ public abstract class FarragoJavaUdxIterator
 
     public FarragoSyntheticObject getCurrentRow()
     {
+        if (rowObjs == null) {
+            return batchRow;
+        }
         return rowObjs[iRow];
     }
 
+    /**
+     * Gets a page for the producer to fill, waiting for the consumer to
+     * release one if the maximum number have been allocated.
+     */
+    private RowPage takeFreePage()
+    {
+        RowPage page = freePages.poll();
+        if ((page == null) && (pageCount < MAX_PAGE_COUNT)) {
+            page = new RowPage(newRows(batchSize));
+            ++pageCount;
+        }
+        try {
+            while (page == null) {
+                checkCancel();
+                page = freePages.poll(1000, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException ex) {
+            throw Util.newInternal(ex);
+        }
+        page.rowCount = 0;
+        page.seq = pageSeq++;
+        batchRow = page.rows[0];
+        return page;
+    }
+
+    /**
+     * Hands a page over to the consumer.
+     */
+    private void offerPage(RowPage page)
+    {
+        // see executeUpdate for why we time out
+        while (!offer(page, 1000)) {
+            checkCancel();
+        }
+    }
+
+    /**
+     * Completes the current row in batch mode.
+     */
+    private void addRowToPage()
+    {
+        RowPage page = fillPage;
+        int rowCount = page.rowCount + 1;
+
+        // publishes the row to a consumer peeking at this page
+        page.rowCount = rowCount;
+        if ((rowCount == batchSize) || consumerWaiting) {
+            offerPage(page);
+            fillPage = takeFreePage();
+        } else {
+            batchRow = page.rows[rowCount];
+        }
+    }
+
     // implement RestartableIterator
     public void restart()
     {
@@ -285,6 +587,14 @@ public abstract class FarragoJavaUdxIterator
 
         // Toss anything it was producing.
         queue.clear();
+        if (rowObjs == null) {
+            freePages.clear();
+            pageCount = 0;
+            pageSeq = 0;
+            fillPage = null;
+            readPage = null;
+            nextPage = null;
+        }
 
         // Input cursors are currently "throwaway", but this is still
         // needed so that we correctly invoke a restart on Fennel streams.
@@ -316,7 +626,11 @@ public abstract class FarragoJavaUdxIterator
         try {
             // Wait for it to die.  (TODO:  If we ever get ThreadIterator
             // to stop using daemons, change this to use thread.join instead.)
-            latch.await();
+            // Meanwhile, throw away whatever it queues, so that it can't
+            // block forever on a full queue.
+            while (!latch.await(100, TimeUnit.MILLISECONDS)) {
+                queue.clear();
+            }
         } catch (InterruptedException ex) {
             throw Util.newInternal(ex);
         }
@@ -345,6 +659,31 @@ public abstract class FarragoJavaUdxIterator
 
     //~ Inner Classes ----------------------------------------------------------
 
+    /**
+     * Page of rows handed from the producer to the consumer in batch mode.
+     */
+    private static class RowPage
+    {
+        final FarragoSyntheticObject [] rows;
+
+        /**
+         * Number of completed rows. Written only by the producer; volatile so
+         * that the consumer can read rows before the page is handed over.
+         */
+        volatile int rowCount;
+
+        /**
+         * Position of this page in the sequence of pages filled since the
+         * producer started.
+         */
+        long seq;
+
+        RowPage(FarragoSyntheticObject [] rows)
+        {
+            this.rows = rows;
+        }
+    }
+
     public class PreparedStatementInvocationHandler
         extends BarfingInvocationHandler
     {
@@ -373,6 +712,11 @@ public abstract class FarragoJavaUdxIterator
         {
             checkCancel();
 
+            if (rowObjs == null) {
+                addRowToPage();
+                return 1;
+            }
+
             // on a full pipe, timeout every second to check cancellation; we
             // have to do it this way because the iterator above us
             // may not get sucked dry when the cursor is closed, in which
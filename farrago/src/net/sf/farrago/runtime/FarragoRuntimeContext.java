@@ -114,7 +114,9 @@ public class FarragoRuntimeContext
     private final FarragoStreamFactoryProvider streamFactoryProvider;
     private final boolean isDml;
     private long currentTime;
-    private boolean isCanceled;
+    private final int prefetchPageRows;
+    private final int prefetchPageCount;
+    private final CancelFlag cancelFlag = new CancelFlag();
     protected boolean isClosed;
     private ClassLoader statementClassLoader;
     protected Map<String, RelDataType> resultSetTypeMap;
@@ -147,6 +149,8 @@ public class FarragoRuntimeContext
         resultSetTypeMap = params.resultSetTypeMap;
         stmtId = params.stmtId;
         currentTime = params.currentTime;
+        prefetchPageRows = params.prefetchPageRows;
+        prefetchPageCount = params.prefetchPageCount;
 
         if (params.warningQueue == null) {
             params.warningQueue = new FarragoWarningQueue();
@@ -181,6 +185,18 @@ public class FarragoRuntimeContext
         return warningQueue;
     }
 
+    // implement FarragoSessionRuntimeContext
+    public int getPrefetchPageRows()
+    {
+        return prefetchPageRows;
+    }
+
+    // implement FarragoSessionRuntimeContext
+    public int getPrefetchPageCount()
+    {
+        return prefetchPageCount;
+    }
+
     /**
      * Returns the stream graph.
      */
@@ -204,7 +220,7 @@ public class FarragoRuntimeContext
         }
         isClosed = true;
 
-        isCanceled = true;
+        cancelFlag.requestCancel();
 
         boolean streamGraphClosed = false;
 
@@ -630,8 +646,17 @@ public class FarragoRuntimeContext
                     assert (key.equals(xmiFennelPlan));
                     streamGraph = prepareStreamGraph(xmiFennelPlan);
 
-                    long memUsage =
-                        FarragoUtil.getFennelMemoryUsage(xmiFennelPlan);
+                    // the estimate is calibrated against the length of the
+                    // plan as XMI, which an encoded plan records
+                    long memUsage;
+                    if (FennelPlanCodec.isEncoded(xmiFennelPlan)) {
+                        memUsage =
+                            FarragoUtil.getFennelMemoryUsage(
+                                FennelPlanCodec.getXmiLength(xmiFennelPlan));
+                    } else {
+                        memUsage =
+                            FarragoUtil.getFennelMemoryUsage(xmiFennelPlan);
+                    }
                     entry.initialize(streamGraph, memUsage, true);
                 }
 
@@ -796,20 +821,29 @@ public class FarragoRuntimeContext
         FennelStreamGraph newStreamGraph = null;
         repos.beginReposSession();
         try {
-            Collection<RefBaseObject> collection =
-                JmiObjUtil.importFromXmiString(
-                    repos.getTransientFarragoPackage(),
-                    xmiFennelPlan);
-            assert (collection.size() == 1);
-            FemCmdPrepareExecutionStreamGraph cmd =
-                (FemCmdPrepareExecutionStreamGraph) collection.iterator()
-                .next();
+            FennelDbHandle fennelDbHandle =
+                fennelTxnContext.getFennelDbHandle();
+            FemCmdPrepareExecutionStreamGraph cmd;
+            if (FennelPlanCodec.isEncoded(xmiFennelPlan)) {
+                cmd =
+                    (FemCmdPrepareExecutionStreamGraph) fennelDbHandle
+                    .getPlanCodec(repos).decode(xmiFennelPlan);
+            } else {
+                Collection<RefBaseObject> collection =
+                    JmiObjUtil.importFromXmiString(
+                        repos.getTransientFarragoPackage(),
+                        xmiFennelPlan);
+                assert (collection.size() == 1);
+                cmd =
+                    (FemCmdPrepareExecutionStreamGraph) collection.iterator()
+                    .next();
+            }
 
             newStreamGraph = fennelTxnContext.newStreamGraph(streamOwner);
             streamFactoryProvider.registerStreamFactories(
                 newStreamGraph.getLongHandle());
             cmd.setStreamGraphHandle(newStreamGraph.getStreamGraphHandle());
-            fennelTxnContext.getFennelDbHandle().executeCmd(cmd);
+            fennelDbHandle.executeCmd(cmd);
             success = true;
             return newStreamGraph;
         } catch (RuntimeException e) {
@@ -954,13 +988,13 @@ public class FarragoRuntimeContext
     {
         synchronized (this) {
             // be sure only one thread tries to close the FennelStreamGraph
-            if (isCanceled) {
+            if (cancelFlag.isCancelRequested()) {
                 return;
             }
 
-            // set isCanceled before aborting streamGraph to ensure
+            // set cancelFlag before aborting streamGraph to ensure
             // that flag is set when ResultSet sees END_OF_DATA
-            isCanceled = true;
+            cancelFlag.requestCancel();
         }
 
         FennelStreamGraph streamGraphToAbort = streamGraph;
@@ -981,11 +1015,23 @@ public class FarragoRuntimeContext
     // implement FarragoSessionRuntimeContext
     public void checkCancel()
     {
-        if (isCanceled) {
+        if (cancelFlag.isCancelRequested()) {
             throw FarragoResource.instance().ExecutionAborted.ex();
         }
     }
 
+    /**
+     * Returns the flag which is set when this execution is canceled or
+     * closed. Generated code passes it to runtime classes, such as {@link
+     * CompoundParallelTupleIter}, which do work on their own threads.
+     *
+     * @return cancel flag for this execution
+     */
+    public CancelFlag getCancelFlag()
+    {
+        return cancelFlag;
+    }
+
     // implement FarragoSessionRuntimeContext
     public void setExecutionHandle(FennelExecutionHandle execHandle)
     {
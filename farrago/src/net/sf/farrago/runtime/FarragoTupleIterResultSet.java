@@ -25,6 +25,8 @@ package net.sf.farrago.runtime;
 import java.sql.*;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import java.util.logging.*;
 
 import net.sf.farrago.jdbc.*;
@@ -35,12 +37,27 @@ import net.sf.farrago.type.runtime.*;
 
 import org.eigenbase.reltype.*;
 import org.eigenbase.runtime.*;
+import org.eigenbase.util.*;
+import org.eigenbase.util14.*;
 
 
 /**
  * FarragoTupleIterResultSet is a refinement of TupleIterResultSet which exposes
  * Farrago datatype semantics.
  *
+ * <p>If the runtime context asks for prefetch (see {@link
+ * FarragoSessionRuntimeContext#getPrefetchPageCount}), the result set fetches
+ * from the underlying iterator on a background thread as soon as it is opened,
+ * so that the executing stream graph keeps producing rows while the
+ * application processes the ones it already has. Rows are copied into pages,
+ * since the iterator reuses its row objects, and at most the requested number
+ * of pages is fetched ahead. When the application catches up with the
+ * background thread, the thread hands over a partially filled page after each
+ * row, so that prefetch does not delay rows which are slow to produce. The
+ * query timeout applies to each wait for a page, and a cancel request stops
+ * both the background fetch and the application's next call to {@link
+ * #next}.
+ *
  * @author John V. Sichi, Stephan Zuercher
  * @version $Id$
  */
@@ -54,12 +71,35 @@ public class FarragoTupleIterResultSet
     private static final Logger jdbcTracer =
         FarragoTrace.getFarragoJdbcEngineDriverTracer();
 
+    /**
+     * Interval, in milliseconds, at which a cursor waiting for a prefetched
+     * page checks whether its execution has been canceled.
+     */
+    private static final long CANCEL_POLL_MILLIS = 100;
+
+    /**
+     * Pool of threads which run prefetching cursors. Threads are daemons, so
+     * that a cursor which is never closed cannot prevent shutdown.
+     */
+    private static final ExecutorService prefetchPool =
+        Executors.newCachedThreadPool(new PrefetchThreadFactory());
+
+    /**
+     * Page which marks the end of a prefetched result.
+     */
+    private static final Object [][] END_PAGE = new Object[0][];
+
     //~ Instance fields --------------------------------------------------------
 
     private FarragoSessionRuntimeContext runtimeContext;
     private final RelDataType rowType;
     private final List<List<String>> fieldOrigins;
 
+    /**
+     * Background fetch for this cursor, or null if it does not prefetch.
+     */
+    private Prefetcher prefetcher;
+
     //~ Constructors -----------------------------------------------------------
 
     /**
@@ -138,13 +178,40 @@ public class FarragoTupleIterResultSet
             // Immediately detach session.  Another thread (think RMI) may be
             // the one to call next, we'll re-attach this session then.
             runtimeContext.detachMdrSession();
+
+            if (runtimeContext.getPrefetchPageCount() > 0) {
+                prefetcher =
+                    new Prefetcher(
+                        runtimeContext,
+                        runtimeContext.getPrefetchPageRows(),
+                        runtimeContext.getPrefetchPageCount());
+                prefetchPool.execute(prefetcher);
+            }
         }
     }
 
+    // override TupleIterResultSet
+    public void setTimeout(long timeoutMillis)
+    {
+        if (prefetcher == null) {
+            super.setTimeout(timeoutMillis);
+            return;
+        }
+
+        // The prefetch thread already reads from the iterator in the
+        // background, so there is no need for another thread to time it;
+        // nextPrefetched applies the timeout while it waits for a page.
+        assert (timeoutMillis > 0);
+        this.timeoutMillis = timeoutMillis;
+    }
+
     // implement ResultSet
     public boolean next()
         throws SQLException
     {
+        if (prefetcher != null) {
+            return nextPrefetched();
+        }
         boolean detachMdrSession = false;
         try {
             if (tracer.isLoggable(Level.FINE)) {
@@ -202,6 +269,49 @@ public class FarragoTupleIterResultSet
         }
     }
 
+    /**
+     * Implements {@link #next} by taking the next row from the pages fetched
+     * in the background.
+     */
+    private boolean nextPrefetched()
+        throws SQLException
+    {
+        if ((maxRows > 0) && (row >= maxRows)) {
+            return false;
+        }
+        try {
+            if (tracer.isLoggable(Level.FINE)) {
+                tracer.fine(toString());
+            }
+            Object [] next;
+            try {
+                next = prefetcher.take(timeoutMillis);
+            } catch (QueueIterator.TimeoutException ex) {
+                throw new SqlTimeoutException();
+            }
+            if (next == null) {
+                Throwable error = prefetcher.getError();
+                if (error != null) {
+                    throw error;
+                }
+                if ((runtimeContext != null)
+                    && runtimeContext.getSession().isAutoCommit())
+                {
+                    // As in next, returning the last row of a cursor in
+                    // autocommit mode ends the transaction.
+                    close();
+                }
+                return false;
+            }
+            current = next;
+            row++;
+            return true;
+        } catch (Throwable ex) {
+            // trace exceptions as part of JDBC API
+            throw FarragoJdbcUtil.newSqlException(ex, jdbcTracer);
+        }
+    }
+
     // implement ResultSet
     public ResultSetMetaData getMetaData()
         throws SQLException
@@ -216,6 +326,11 @@ public class FarragoTupleIterResultSet
         if (tracer.isLoggable(Level.FINE)) {
             tracer.fine(toString());
         }
+        if (prefetcher != null) {
+            // The prefetch thread must have given up the MDR session before
+            // the runtime context is closed.
+            prefetcher.stop();
+        }
         FarragoSessionRuntimeContext allocationToClose = runtimeContext;
         if (allocationToClose != null) {
             // NOTE:  this may be called reentrantly for daemon stmts,
@@ -236,6 +351,12 @@ public class FarragoTupleIterResultSet
     // implement AbstractResultSet
     protected Object getRaw(int columnIndex)
     {
+        if (prefetcher != null) {
+            // current is a row copied by the prefetch thread
+            Object obj = ((Object []) current)[columnIndex - 1];
+            wasNull = (obj == null);
+            return obj;
+        }
         Object obj = super.getRaw(columnIndex);
         if (obj instanceof SpecialDataValue) {
             SpecialDataValue specialValue = (SpecialDataValue) obj;
@@ -250,6 +371,318 @@ public class FarragoTupleIterResultSet
         }
         return obj;
     }
+
+    /**
+     * Copies a column value out of a row which the iterator may reuse,
+     * converting it as {@link #getRaw} does.
+     *
+     * @param obj column value
+     *
+     * @return value which does not share state with the row
+     */
+    private static Object copyValue(Object obj)
+    {
+        if (obj instanceof SpecialDataValue) {
+            obj = ((SpecialDataValue) obj).getSpecialData();
+        } else if (obj instanceof DataValue) {
+            obj = ((DataValue) obj).getNullableData();
+        }
+        if (obj instanceof ZonelessDatetime) {
+            return ((ZonelessDatetime) obj).copy();
+        } else if (obj instanceof byte []) {
+            return ((byte []) obj).clone();
+        }
+        return obj;
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Fetches rows from the underlying iterator on a pooled thread and hands
+     * them to the consumer in pages, through a queue whose capacity bounds how
+     * far the fetch runs ahead.
+     *
+     * <p>Like {@link FarragoTupleIterResultSet#next}, the thread marks the
+     * cursor active and attaches the MDR session only while it fetches, so
+     * that a cancel request waits for at most one page, and the session is
+     * detached again before the consumer can close the runtime context.
+     */
+    private class Prefetcher
+        implements Runnable
+    {
+        private final FarragoSessionRuntimeContext context;
+        private final TupleIter tupleIter;
+        private final ColumnGetter columnGetter;
+        private final int columnCount;
+        private final int pageRows;
+        private final BlockingQueue<Object [][]> pages;
+        private final CountDownLatch finished;
+
+        /**
+         * Set when the consumer closes the cursor.
+         */
+        private volatile boolean stopped;
+
+        /**
+         * Set while the consumer is waiting for a page.
+         */
+        private volatile boolean consumerWaiting;
+
+        /**
+         * Exception which ended the fetch; reported after the rows fetched
+         * before it.
+         */
+        private volatile Throwable error;
+
+        // accessed only by the prefetch thread
+        private boolean endOfData;
+
+        // accessed only by the consumer
+        private Object [][] page;
+        private int pageRow;
+
+        Prefetcher(
+            FarragoSessionRuntimeContext context,
+            int pageRows,
+            int pageCount)
+        {
+            assert (pageRows > 0);
+            assert (pageCount > 0);
+            this.context = context;
+            this.tupleIter = getTupleIter();
+            this.columnGetter = getColumnGetter();
+            this.columnCount = rowType.getFieldCount();
+            this.pageRows = pageRows;
+            this.pages = new ArrayBlockingQueue<Object [][]>(pageCount);
+            this.finished = new CountDownLatch(1);
+        }
+
+        // implement Runnable
+        public void run()
+        {
+            try {
+                try {
+                    for (;;) {
+                        Object [][] next = fetchPage();
+                        if ((next == null) || !put(next)) {
+                            break;
+                        }
+                    }
+                } catch (Throwable ex) {
+                    error = ex;
+                }
+                put(END_PAGE);
+            } finally {
+                finished.countDown();
+            }
+        }
+
+        /**
+         * Fetches up to a page of rows.
+         *
+         * @return rows fetched, or null if there are no more rows or the
+         * consumer has closed the cursor
+         */
+        private Object [][] fetchPage()
+            throws SQLException
+        {
+            if (endOfData) {
+                return null;
+            }
+            Object [][] rows = new Object[pageRows][];
+            int n = 0;
+
+            // checks for a pending cancel
+            context.setCursorState(true);
+            try {
+                context.reattachMdrSession();
+                try {
+                    while ((n < pageRows) && !stopped) {
+                        Object next = tupleIter.fetchNext();
+                        if (next == TupleIter.NoDataReason.END_OF_DATA) {
+                            endOfData = true;
+                            break;
+                        } else if (next instanceof TupleIter.NoDataReason) {
+                            throw Util.newInternal(
+                                "unexpected " + next + " from " + tupleIter);
+                        }
+                        rows[n++] = copyRow(next);
+                        if (consumerWaiting && pages.isEmpty()) {
+                            // the consumer has caught up; don't make it wait
+                            // for a full page
+                            break;
+                        }
+                    }
+                } catch (Throwable ex) {
+                    // report a fetch which failed because of a cancel
+                    // request as such
+                    context.checkCancel();
+                    throw newFetchError(ex);
+                } finally {
+                    context.detachMdrSession();
+                }
+            } finally {
+                context.setCursorState(false);
+            }
+            if (endOfData) {
+                // an aborted stream graph also reports end of data
+                context.checkCancel();
+            }
+            if (n == 0) {
+                return null;
+            }
+            if (n < pageRows) {
+                Object [][] fullRows = rows;
+                rows = new Object[n][];
+                System.arraycopy(fullRows, 0, rows, 0, n);
+            }
+            return rows;
+        }
+
+        private Object [] copyRow(Object row)
+        {
+            Object [] values = new Object[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                values[i] = copyValue(columnGetter.get(row, i + 1));
+            }
+            return values;
+        }
+
+        /**
+         * Queues a page, waiting while the queue is full.
+         *
+         * @return false if the consumer closed the cursor first
+         */
+        private boolean put(Object [][] page)
+        {
+            try {
+                while (!stopped) {
+                    if (pages.offer(
+                            page,
+                            CANCEL_POLL_MILLIS,
+                            TimeUnit.MILLISECONDS))
+                    {
+                        return true;
+                    }
+                }
+            } catch (InterruptedException ex) {
+                // only happens if the pool is shut down; give up
+            }
+            return false;
+        }
+
+        /**
+         * Returns the next row, waiting for the prefetch thread if necessary.
+         *
+         * @param timeoutMillis maximum time to wait, or 0 to wait indefinitely
+         *
+         * @return next row, or null if there are no more rows; see {@link
+         * #getError} for whether the fetch failed
+         */
+        Object [] take(long timeoutMillis)
+            throws QueueIterator.TimeoutException
+        {
+            if (stopped) {
+                return null;
+            }
+            if ((page == null) || (pageRow == page.length)) {
+                if (page != END_PAGE) {
+                    page = waitForPage(timeoutMillis);
+                    pageRow = 0;
+                }
+                if (page == END_PAGE) {
+                    return null;
+                }
+            }
+            return page[pageRow++];
+        }
+
+        private Object [][] waitForPage(long timeoutMillis)
+            throws QueueIterator.TimeoutException
+        {
+            long endTime =
+                (timeoutMillis > 0)
+                ? (System.currentTimeMillis() + timeoutMillis)
+                : Long.MAX_VALUE;
+            consumerWaiting = true;
+            try {
+                for (;;) {
+                    context.checkCancel();
+                    long waitMillis =
+                        Math.min(
+                            CANCEL_POLL_MILLIS,
+                            endTime - System.currentTimeMillis());
+                    if (waitMillis <= 0) {
+                        throw new QueueIterator.TimeoutException();
+                    }
+                    Object [][] next =
+                        pages.poll(waitMillis, TimeUnit.MILLISECONDS);
+                    if (next != null) {
+                        return next;
+                    }
+                }
+            } catch (InterruptedException ex) {
+                throw Util.newInternal(ex);
+            } finally {
+                consumerWaiting = false;
+            }
+        }
+
+        /**
+         * @return exception which ended the fetch, or null if the fetch
+         * succeeded or the consumer closed the cursor
+         */
+        Throwable getError()
+        {
+            return stopped ? null : error;
+        }
+
+        /**
+         * Stops the prefetch thread and waits for it to finish. If the thread
+         * is still fetching, cancels the execution so that the fetch returns.
+         */
+        void stop()
+        {
+            if (stopped) {
+                return;
+            }
+            stopped = true;
+            page = null;
+            if (finished.getCount() > 0) {
+                context.cancel();
+            }
+            boolean interrupted = false;
+            for (;;) {
+                try {
+                    finished.await();
+                    break;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            pages.clear();
+        }
+    }
+
+    private static class PrefetchThreadFactory
+        implements ThreadFactory
+    {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        public Thread newThread(Runnable r)
+        {
+            Thread thread =
+                new Thread(
+                    r,
+                    "FarragoTupleIterResultSet prefetch "
+                    + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 }
 
 // End FarragoTupleIterResultSet.java
@@ -35,7 +35,8 @@ import org.eigenbase.runtime.*;
  *
  * <p>FennelAbstractTupleIter only deals with raw byte buffers; it is the
  * responsibility of the contained {@link FennelTupleReader} object to unmarshal
- * individual fields.
+ * individual fields. If the reader is a {@link FennelInPlaceTupleReader}, the
+ * buffer may be a direct buffer, in which case {@link #bufferAsArray} is null.
  *
  * <p>Neither does it actually populate the source buffer. This is the
  * responsibility of the {@link #populateBuffer()} method, which must be
@@ -59,6 +60,7 @@ public abstract class FennelAbstractTupleIter
     //~ Instance fields --------------------------------------------------------
 
     protected final FennelTupleReader tupleReader;
+    private final FennelInPlaceTupleReader inPlaceReader;
     protected ByteBuffer byteBuffer;
     protected byte [] bufferAsArray;
     private boolean endOfData;
@@ -73,6 +75,11 @@ public abstract class FennelAbstractTupleIter
     public FennelAbstractTupleIter(FennelTupleReader tupleReader)
     {
         this.tupleReader = tupleReader;
+        if (tupleReader instanceof FennelInPlaceTupleReader) {
+            inPlaceReader = (FennelInPlaceTupleReader) tupleReader;
+        } else {
+            inPlaceReader = null;
+        }
         this.endOfData = false;
     }
 
@@ -134,12 +141,23 @@ public abstract class FennelAbstractTupleIter
 
     private Object unmarshal()
     {
-        // REVIEW:  is slice allocation worth it?
-        ByteBuffer sliceBuffer = byteBuffer.slice();
-        sliceBuffer.order(byteBuffer.order());
-        Object obj =
-            tupleReader.unmarshalTuple(byteBuffer, bufferAsArray, sliceBuffer);
-        int newPosition = byteBuffer.position() + sliceBuffer.position();
+        Object obj;
+        int newPosition;
+        if (inPlaceReader != null) {
+            // no need to slice
+            obj = inPlaceReader.readTuple(byteBuffer);
+            newPosition = byteBuffer.position();
+        } else {
+            // REVIEW:  is slice allocation worth it?
+            ByteBuffer sliceBuffer = byteBuffer.slice();
+            sliceBuffer.order(byteBuffer.order());
+            obj =
+                tupleReader.unmarshalTuple(
+                    byteBuffer,
+                    bufferAsArray,
+                    sliceBuffer);
+            newPosition = byteBuffer.position() + sliceBuffer.position();
+        }
 
         // eat final alignment padding
         newPosition = tupleAligner.alignRoundUp(newPosition);
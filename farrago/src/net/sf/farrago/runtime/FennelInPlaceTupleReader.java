@@ -0,0 +1,54 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.runtime;
+
+import java.nio.*;
+
+
+/**
+ * FennelInPlaceTupleReader is a {@link FennelTupleReader} which can read a
+ * tuple at any offset within a buffer. {@link FennelAbstractTupleIter} calls
+ * it in preference to {@link #unmarshalTuple}, which saves slicing the buffer
+ * for every tuple; this also allows the buffer to be a direct buffer, which
+ * has no backing array.
+ *
+ * @version $Id$
+ */
+public interface FennelInPlaceTupleReader
+    extends FennelTupleReader
+{
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Reads one tuple.
+     *
+     * @param byteBuffer buffer containing marshalled tuple data; on entry, the
+     * buffer position is at beginning of tuple, and on return it should be at
+     * the end of tuple
+     *
+     * @return implementation-specific object from which the tuple's values
+     * can be read, valid until the buffer is refilled
+     */
+    Object readTuple(ByteBuffer byteBuffer);
+}
+
+// End FennelInPlaceTupleReader.java
@@ -40,12 +40,57 @@ import org.eigenbase.runtime.*;
  * FennelOnlyResultSet is a refinement of FarragoTupleIterResultSet, where the
  * result set consists of Fennel tuples.
  *
+ * <p>The rows may be either {@link FennelTupleData} or, when the iterator
+ * reads tuples in place, a {@link FennelTupleView}. In the latter case, the
+ * numeric, boolean and binary getters read values straight out of the fetch
+ * buffer, without creating an object for each value.
+ *
  * @author Zelaine Fong
  * @version $Id$
  */
 public class FennelOnlyResultSet
     extends FarragoTupleIterResultSet
 {
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * Columns which cannot be read in place.
+     */
+    private static final byte OTHER_COLUMN = 0;
+
+    /**
+     * Columns of type TINYINT, SMALLINT, INTEGER or BIGINT.
+     */
+    private static final byte EXACT_COLUMN = 1;
+
+    /**
+     * Columns of type REAL.
+     */
+    private static final byte REAL_COLUMN = 2;
+
+    /**
+     * Columns of type FLOAT or DOUBLE.
+     */
+    private static final byte DOUBLE_COLUMN = 3;
+
+    /**
+     * Columns of type BOOLEAN.
+     */
+    private static final byte BOOLEAN_COLUMN = 4;
+
+    /**
+     * Columns of type BINARY or VARBINARY.
+     */
+    private static final byte BINARY_COLUMN = 5;
+
+    //~ Instance fields --------------------------------------------------------
+
+    /**
+     * For each column, which kind of value it holds, as far as the in-place
+     * getters are concerned.
+     */
+    private final byte [] columnKinds;
+
     //~ Constructors -----------------------------------------------------------
 
     /**
@@ -71,6 +116,11 @@ public class FennelOnlyResultSet
             new FennelColumnGetter(
                 new FarragoResultSetMetaData(rowType, fieldOrigins),
                 rowType));
+        List<RelDataTypeField> fields = rowType.getFieldList();
+        columnKinds = new byte[fields.size()];
+        for (int i = 0; i < columnKinds.length; ++i) {
+            columnKinds[i] = getColumnKind(fields.get(i).getType());
+        }
         if (tracer.isLoggable(Level.FINE)) {
             tracer.fine(toString());
         }
@@ -78,6 +128,29 @@ public class FennelOnlyResultSet
 
     //~ Methods ----------------------------------------------------------------
 
+    private static byte getColumnKind(RelDataType type)
+    {
+        switch (type.getSqlTypeName()) {
+        case TINYINT:
+        case SMALLINT:
+        case INTEGER:
+        case BIGINT:
+            return EXACT_COLUMN;
+        case REAL:
+            return REAL_COLUMN;
+        case FLOAT:
+        case DOUBLE:
+            return DOUBLE_COLUMN;
+        case BOOLEAN:
+            return BOOLEAN_COLUMN;
+        case BINARY:
+        case VARBINARY:
+            return BINARY_COLUMN;
+        default:
+            return OTHER_COLUMN;
+        }
+    }
+
     // implement AbstractResultSet
     protected Object getRaw(int columnIndex)
     {
@@ -86,6 +159,167 @@ public class FennelOnlyResultSet
         return obj;
     }
 
+    /**
+     * Returns the view on the current row if it can be read in place and the
+     * given column is of one of the given kinds.
+     *
+     * @param columnIndex 1-based column ordinal
+     * @param kind1 column kind
+     * @param kind2 another column kind
+     *
+     * @return view on current row, or null if the caller should use the
+     * generic getter
+     */
+    private FennelTupleView getView(int columnIndex, byte kind1, byte kind2)
+    {
+        if (!(current instanceof FennelTupleView)
+            || (columnIndex < 1)
+            || (columnIndex > columnKinds.length))
+        {
+            return null;
+        }
+        byte kind = columnKinds[columnIndex - 1];
+        if ((kind != kind1) && (kind != kind2)) {
+            return null;
+        }
+        FennelTupleView view = (FennelTupleView) current;
+        wasNull = !view.isPresent(columnIndex - 1);
+        return view;
+    }
+
+    /**
+     * Reads the current value of an exact numeric column in place.
+     *
+     * @param view view on current row
+     * @param columnIndex 1-based column ordinal
+     *
+     * @return value, or 0 if null
+     */
+    private long getExact(FennelTupleView view, int columnIndex)
+    {
+        return wasNull ? 0 : view.getNumeric(columnIndex - 1);
+    }
+
+    // override AbstractResultSet
+    public byte getByte(int columnIndex)
+        throws SQLException
+    {
+        FennelTupleView view =
+            getView(columnIndex, EXACT_COLUMN, EXACT_COLUMN);
+        if (view == null) {
+            return super.getByte(columnIndex);
+        }
+        return (byte) getExact(view, columnIndex);
+    }
+
+    // override AbstractResultSet
+    public short getShort(int columnIndex)
+        throws SQLException
+    {
+        FennelTupleView view =
+            getView(columnIndex, EXACT_COLUMN, EXACT_COLUMN);
+        if (view == null) {
+            return super.getShort(columnIndex);
+        }
+        return (short) getExact(view, columnIndex);
+    }
+
+    // override AbstractResultSet
+    public int getInt(int columnIndex)
+        throws SQLException
+    {
+        FennelTupleView view =
+            getView(columnIndex, EXACT_COLUMN, EXACT_COLUMN);
+        if (view == null) {
+            return super.getInt(columnIndex);
+        }
+        return (int) getExact(view, columnIndex);
+    }
+
+    // override AbstractResultSet
+    public long getLong(int columnIndex)
+        throws SQLException
+    {
+        FennelTupleView view =
+            getView(columnIndex, EXACT_COLUMN, EXACT_COLUMN);
+        if (view == null) {
+            return super.getLong(columnIndex);
+        }
+        return getExact(view, columnIndex);
+    }
+
+    // override AbstractResultSet
+    public float getFloat(int columnIndex)
+        throws SQLException
+    {
+        if ((getView(columnIndex, EXACT_COLUMN, EXACT_COLUMN) == null)
+            && (getView(columnIndex, REAL_COLUMN, DOUBLE_COLUMN) == null))
+        {
+            return super.getFloat(columnIndex);
+        }
+        return (float) getDouble(columnIndex);
+    }
+
+    // override AbstractResultSet
+    public double getDouble(int columnIndex)
+        throws SQLException
+    {
+        FennelTupleView view =
+            getView(columnIndex, EXACT_COLUMN, EXACT_COLUMN);
+        if (view != null) {
+            return (double) getExact(view, columnIndex);
+        }
+        view = getView(columnIndex, REAL_COLUMN, DOUBLE_COLUMN);
+        if (view == null) {
+            return super.getDouble(columnIndex);
+        }
+        if (wasNull) {
+            return 0;
+        }
+        if (columnKinds[columnIndex - 1] == REAL_COLUMN) {
+            return view.getFloat(columnIndex - 1);
+        }
+        return view.getDouble(columnIndex - 1);
+    }
+
+    // override AbstractResultSet
+    public boolean getBoolean(int columnIndex)
+        throws SQLException
+    {
+        FennelTupleView view =
+            getView(columnIndex, BOOLEAN_COLUMN, BOOLEAN_COLUMN);
+        if (view == null) {
+            return super.getBoolean(columnIndex);
+        }
+        return !wasNull && (view.getNumeric(columnIndex - 1) != 0);
+    }
+
+    // override AbstractResultSet
+    public byte [] getBytes(int columnIndex)
+        throws SQLException
+    {
+        FennelTupleView view =
+            getView(columnIndex, BINARY_COLUMN, BINARY_COLUMN);
+        if (view == null) {
+            return super.getBytes(columnIndex);
+        }
+        if (wasNull) {
+            return null;
+        }
+        byte [] bytes = new byte[view.getLength(columnIndex - 1)];
+        view.getBytes(columnIndex - 1, bytes, 0);
+        return bytes;
+    }
+
+    // override FarragoTupleIterResultSet
+    public void close()
+        throws SQLException
+    {
+        // the fetch buffer may be reused once the iterator has been closed
+        current = null;
+        super.close();
+    }
+
     //~ Inner Classes ----------------------------------------------------------
 
     /**
@@ -122,11 +356,17 @@ public class FennelOnlyResultSet
             Object o,
             int columnIndex)
         {
+            FennelTupleData tupleData;
+            if (o instanceof FennelTupleView) {
+                tupleData = ((FennelTupleView) o).getTupleData();
+            } else {
+                tupleData = (FennelTupleData) o;
+            }
             try {
                 return FennelTupleResultSet.getRawColumnData(
                     columnIndex,
                     metaData,
-                    (FennelTupleData) o);
+                    tupleData);
             } catch (SQLException e) {
                 throw new RuntimeException(e);
             }
@@ -31,16 +31,22 @@ import net.sf.farrago.fennel.tuple.*;
  * FennelOnlyTupleReader implements the FennelTupleReader interface for reading
  * tuples from a query plan that can be executed exclusively in Fennel.
  *
+ * <p>It works in one of two modes. Given a {@link FennelTupleData}, it
+ * unmarshals each tuple into that data. Given a {@link FennelTupleView}, it
+ * leaves each tuple where it is in the buffer, and merely positions the view
+ * on it, so that callers can read individual values in place.
+ *
  * @author Zelaine Fong
  * @version $Id$
  */
 public class FennelOnlyTupleReader
-    implements FennelTupleReader
+    implements FennelInPlaceTupleReader
 {
     //~ Instance fields --------------------------------------------------------
 
     private final FennelTupleAccessor tupleAccessor;
     private final FennelTupleData tupleData;
+    private final FennelTupleView tupleView;
 
     //~ Constructors -----------------------------------------------------------
 
@@ -56,6 +62,17 @@ public class FennelOnlyTupleReader
         tupleAccessor = new FennelTupleAccessor(true);
         tupleAccessor.compute(tupleDesc);
         this.tupleData = tupleData;
+        this.tupleView = null;
+    }
+
+    /**
+     * @param tupleView view which will be positioned on each tuple read
+     */
+    public FennelOnlyTupleReader(FennelTupleView tupleView)
+    {
+        this.tupleAccessor = null;
+        this.tupleData = null;
+        this.tupleView = tupleView;
     }
 
     //~ Methods ----------------------------------------------------------------
@@ -66,12 +83,30 @@ public class FennelOnlyTupleReader
         byte [] byteArray,
         ByteBuffer sliceBuffer)
     {
+        if (tupleView != null) {
+            tupleView.setCurrentTuple(sliceBuffer, 0);
+            sliceBuffer.position(tupleView.getCurrentByteCount());
+            return tupleView;
+        }
         if (tupleAccessor.getCurrentTupleBuf() == null) {
             tupleAccessor.setCurrentTupleBuf(byteBuffer);
         }
         tupleAccessor.unmarshal(tupleData);
         return tupleData;
     }
+
+    // implement FennelInPlaceTupleReader
+    public Object readTuple(ByteBuffer byteBuffer)
+    {
+        if (tupleView != null) {
+            int tupleOffset = byteBuffer.position();
+            tupleView.setCurrentTuple(byteBuffer, tupleOffset);
+            byteBuffer.position(
+                tupleOffset + tupleView.getCurrentByteCount());
+            return tupleView;
+        }
+        return unmarshalTuple(byteBuffer, null, null);
+    }
 }
 
 // End FennelOnlyTupleReader.java
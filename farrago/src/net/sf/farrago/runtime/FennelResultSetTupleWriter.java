@@ -0,0 +1,105 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.runtime;
+
+import java.nio.*;
+
+import java.sql.*;
+
+
+/**
+ * FennelResultSetTupleWriter is the base class for generated tuple writers
+ * which marshal the current row of a JDBC {@link ResultSet} straight into a
+ * Fennel tuple, without first copying it into a synthetic row object.
+ *
+ * @version $Id$
+ */
+public abstract class FennelResultSetTupleWriter
+    extends FennelTupleWriter
+{
+    //~ Methods ----------------------------------------------------------------
+
+    // implement FennelTupleWriter
+    protected void marshalTupleOrThrow(
+        ByteBuffer sliceBuffer,
+        Object object)
+    {
+        try {
+            marshalRow(sliceBuffer, (ResultSet) object);
+        } catch (SQLException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Marshals the current row of a ResultSet, as for {@link
+     * #marshalTupleOrThrow}. The row may be marshalled more than once if it
+     * does not fit in the buffer the first time.
+     *
+     * @param sliceBuffer buffer to be filled with marshalled tuple data
+     * @param resultSet ResultSet positioned on the row to be marshalled
+     */
+    protected abstract void marshalRow(
+        ByteBuffer sliceBuffer,
+        ResultSet resultSet)
+        throws SQLException;
+
+    /**
+     * Clears the bit fields of a tuple, so that individual bits can then be
+     * set by {@link #setBit}.
+     *
+     * @param sliceBuffer buffer holding the tuple
+     * @param bitFieldByteOffset offset of the first byte of bit fields
+     * @param bitFieldByteCount number of bytes of bit fields
+     */
+    protected static void clearBitFields(
+        ByteBuffer sliceBuffer,
+        int bitFieldByteOffset,
+        int bitFieldByteCount)
+    {
+        for (int i = 0; i < bitFieldByteCount; ++i) {
+            sliceBuffer.put(bitFieldByteOffset + i, (byte) 0);
+        }
+    }
+
+    /**
+     * Sets one bit of the bit fields of a tuple. Bits are numbered from the
+     * least significant bit of the first byte, as by {@link
+     * net.sf.farrago.type.runtime.FarragoSyntheticObject#marshalBitFields}.
+     *
+     * @param sliceBuffer buffer holding the tuple
+     * @param bitFieldByteOffset offset of the first byte of bit fields
+     * @param bitIndex index of the bit to set
+     */
+    protected static void setBit(
+        ByteBuffer sliceBuffer,
+        int bitFieldByteOffset,
+        int bitIndex)
+    {
+        int offset = bitFieldByteOffset + (bitIndex >> 3);
+        sliceBuffer.put(
+            offset,
+            (byte) (sliceBuffer.get(offset) | (1 << (bitIndex & 7))));
+    }
+}
+
+// End FennelResultSetTupleWriter.java
@@ -36,6 +36,10 @@ import net.sf.farrago.fennel.*;
  *
  * <p>FennelTupleIter's implementation of {@link #populateBuffer()} blocks.
  *
+ * <p>If asked to, FennelTupleIter fetches into a direct buffer taken from
+ * {@link FennelDirectBufferPool}, which it returns to the pool when closed.
+ * This requires a {@link FennelInPlaceTupleReader}.
+ *
  * @author John V. Sichi, Stephan Zuercher
  * @version $Id$
  */
@@ -46,6 +50,7 @@ public class FennelTupleIter
 
     private final FennelStreamGraph streamGraph;
     private final FennelStreamHandle streamHandle;
+    private final boolean directBuffer;
 
     //~ Constructors -----------------------------------------------------------
 
@@ -63,17 +68,48 @@ public class FennelTupleIter
         FennelStreamGraph streamGraph,
         FennelStreamHandle streamHandle,
         int bufferSize)
+    {
+        this(tupleReader, streamGraph, streamHandle, bufferSize, false);
+    }
+
+    /**
+     * Creates a new FennelTupleIter object, optionally fetching into a direct
+     * buffer.
+     *
+     * @param tupleReader FennelTupleReader to use to interpret Fennel data;
+     * must be a FennelInPlaceTupleReader if directBuffer is true
+     * @param streamGraph underlying FennelStreamGraph
+     * @param streamHandle handle to underlying Fennel ExecStream that this
+     * TupleIter reads from
+     * @param bufferSize number of bytes in buffer used for fetching from Fennel
+     * @param directBuffer whether to fetch into a pooled direct buffer rather
+     * than a Java array
+     */
+    public FennelTupleIter(
+        FennelTupleReader tupleReader,
+        FennelStreamGraph streamGraph,
+        FennelStreamHandle streamHandle,
+        int bufferSize,
+        boolean directBuffer)
     {
         super(tupleReader);
         this.streamGraph = streamGraph;
         this.streamHandle = streamHandle;
+        this.directBuffer = directBuffer;
 
         // In this implementation of FennelAbstractTupleIter, byteBuffer and
         // bufferAsArray are effectively final. In other implementations, they
         // might be set by populateBuffer.
-        bufferAsArray = new byte[bufferSize];
-        byteBuffer = ByteBuffer.wrap(bufferAsArray);
-        byteBuffer.order(ByteOrder.nativeOrder());
+        if (directBuffer) {
+            assert tupleReader instanceof FennelInPlaceTupleReader;
+            bufferAsArray = null;
+            byteBuffer =
+                FennelDirectBufferPool.instance().allocate(bufferSize);
+        } else {
+            bufferAsArray = new byte[bufferSize];
+            byteBuffer = ByteBuffer.wrap(bufferAsArray);
+            byteBuffer.order(ByteOrder.nativeOrder());
+        }
         byteBuffer.clear();
         byteBuffer.limit(0);
     }
@@ -84,7 +120,9 @@ public class FennelTupleIter
     public void restart()
     {
         super.restart();
-        bufferAsArray = byteBuffer.array();
+        if (!directBuffer) {
+            bufferAsArray = byteBuffer.array();
+        }
         byteBuffer.clear();
         byteBuffer.limit(0);
         streamGraph.restart(streamHandle);
@@ -94,6 +132,10 @@ public class FennelTupleIter
     public void closeAllocation()
     {
         // REVIEW: SWZ: 2/23/2006: Deallocate byteBuffer here?
+        if (directBuffer && (byteBuffer != null)) {
+            FennelDirectBufferPool.instance().release(byteBuffer);
+            byteBuffer = null;
+        }
     }
 
     /**
@@ -105,6 +147,9 @@ public class FennelTupleIter
     protected int populateBuffer()
     {
         byteBuffer.clear();
+        if (directBuffer) {
+            return streamGraph.fetch(streamHandle, byteBuffer);
+        }
         return streamGraph.fetch(streamHandle, bufferAsArray);
     }
 }
@@ -45,7 +45,8 @@ public interface FarragoSessionRuntimeContext
      * Loads the Fennel portion of an execution plan (either creating a new XO
      * graph or reusing a cached instance).
      *
-     * @param xmiFennelPlan XMI representation of plan definition
+     * @param xmiFennelPlan plan definition, either as XMI or encoded by
+     * {@link net.sf.farrago.fennel.FennelPlanCodec}
      */
     public void loadFennelPlan(final String xmiFennelPlan);
 
@@ -184,6 +185,18 @@ public interface FarragoSessionRuntimeContext
      * @return queue of warnings posted to this runtime context
      */
     public FarragoWarningQueue getWarningQueue();
+
+    /**
+     * @return maximum number of rows per page fetched ahead by the top-level
+     * cursor
+     */
+    public int getPrefetchPageRows();
+
+    /**
+     * @return maximum number of pages fetched ahead by the top-level cursor,
+     * or 0 if it should not fetch ahead
+     */
+    public int getPrefetchPageCount();
 }
 
 // End FarragoSessionRuntimeContext.java
@@ -140,6 +140,17 @@ public class FarragoSessionRuntimeParams
      * indicates that no current time has yet been set for the statement.
      */
     public long currentTime;
+
+    /**
+     * Maximum number of rows per page fetched ahead by the top-level cursor.
+     */
+    public int prefetchPageRows;
+
+    /**
+     * Maximum number of pages fetched ahead by the top-level cursor, or 0 if
+     * it should not fetch ahead.
+     */
+    public int prefetchPageCount;
 }
 
 // End FarragoSessionRuntimeParams.java
@@ -221,6 +221,29 @@ public interface FarragoSessionStmtContext
 
     public int getQueryTimeout();
 
+    /**
+     * Enables or disables prefetch for queries subsequently executed by this
+     * context. While a prefetching cursor is open, a background thread keeps
+     * fetching rows into pages ahead of the application, up to the given
+     * number of pages.
+     *
+     * @param pageRows maximum number of rows per page
+     * @param pageCount maximum number of pages fetched ahead, or 0 to disable
+     * prefetch
+     */
+    public void setPrefetch(int pageRows, int pageCount);
+
+    /**
+     * @return maximum number of rows per prefetched page
+     */
+    public int getPrefetchPageRows();
+
+    /**
+     * @return maximum number of pages fetched ahead, or 0 if prefetch is
+     * disabled
+     */
+    public int getPrefetchPageCount();
+
     public String getSql();
 
     /**
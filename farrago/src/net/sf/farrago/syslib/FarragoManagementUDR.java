@@ -36,6 +36,7 @@ import net.sf.farrago.cwm.core.*;
 import net.sf.farrago.cwm.relational.*;
 import net.sf.farrago.db.*;
 import net.sf.farrago.defimpl.*;
+import net.sf.farrago.query.*;
 import net.sf.farrago.fem.sql2003.*;
 import net.sf.farrago.resource.*;
 import net.sf.farrago.runtime.*;
@@ -207,6 +208,21 @@ public abstract class FarragoManagementUDR
             new String[]{"Buffer Pool Statistics", "Write-Specific", "pages"});
         perf_counter_info.put(
             "JvmNanoTime", new String[]{"Miscellaneous", null, "ns"});
+        perf_counter_info.put(
+            "CodeCachePersistentLoads",
+            new String[]{"Code Cache", "Persistent", null});
+        perf_counter_info.put(
+            "CodeCachePersistentLoadTime",
+            new String[]{"Code Cache", "Persistent", "ms"});
+        perf_counter_info.put(
+            "CodeCachePersistentMisses",
+            new String[]{"Code Cache", "Persistent", null});
+        perf_counter_info.put(
+            "CodeCachePersistentRejects",
+            new String[]{"Code Cache", "Persistent", null});
+        perf_counter_info.put(
+            "CodeCachePersistentStores",
+            new String[]{"Code Cache", "Persistent", null});
     }
 
     //~ Methods ----------------------------------------------------------------
@@ -402,6 +418,30 @@ public abstract class FarragoManagementUDR
             + ((savedSetting == -1) ? "max" : Long.toString(savedSetting)));
     }
 
+    /**
+     * Populates a table of code cache hit and miss counts for statements
+     * prepared with literal normalization enabled.
+     *
+     * @param resultInserter
+     */
+    public static void codeCacheNormalizedStatements(
+        PreparedStatement resultInserter)
+        throws SQLException
+    {
+        FarragoSession callerSession = FarragoUdrRuntime.getSession();
+        FarragoDatabase db = ((FarragoDbSession) callerSession).getDatabase();
+        for (
+            Map.Entry<String, FarragoDatabase.NormalizedStmtCounter> entry
+            : db.getNormalizedStmtCounters().entrySet())
+        {
+            int i = 0;
+            resultInserter.setString(++i, entry.getKey());
+            resultInserter.setLong(++i, entry.getValue().hits.get());
+            resultInserter.setLong(++i, entry.getValue().misses.get());
+            resultInserter.executeUpdate();
+        }
+    }
+
     /**
      * Exports the catalog repository contents as an XMI file.
      *
@@ -612,6 +652,42 @@ public abstract class FarragoManagementUDR
             Long.toString(System.nanoTime()),
             "ns");
 
+        // Read values from the persistent code cache, if enabled
+        FarragoSession callerSession = FarragoUdrRuntime.getSession();
+        FarragoDatabase db = ((FarragoDbSession) callerSession).getDatabase();
+        FarragoPersistentStmtCache persistentCodeCache =
+            db.getPersistentCodeCache();
+        if (persistentCodeCache != null) {
+            Map<String, Long> codeCacheCounters =
+                new LinkedHashMap<String, Long>();
+            codeCacheCounters.put(
+                "CodeCachePersistentLoads",
+                persistentCodeCache.getLoadCount());
+            codeCacheCounters.put(
+                "CodeCachePersistentLoadTime",
+                persistentCodeCache.getLoadMillis());
+            codeCacheCounters.put(
+                "CodeCachePersistentMisses",
+                persistentCodeCache.getMissCount());
+            codeCacheCounters.put(
+                "CodeCachePersistentRejects",
+                persistentCodeCache.getRejectCount());
+            codeCacheCounters.put(
+                "CodeCachePersistentStores",
+                persistentCodeCache.getStoreCount());
+            for (Map.Entry<String, Long> entry : codeCacheCounters.entrySet()) {
+                String [] info = perf_counter_info.get(entry.getKey());
+                addSysInfo(
+                    resultInserter,
+                    info[0],
+                    info[1],
+                    "Farrago",
+                    entry.getKey(),
+                    entry.getValue().toString(),
+                    info[2]);
+            }
+        }
+
         // Read values from Fennel
         Map<String, String> perfCounters =
             NativeTrace.instance().getPerfCounters();
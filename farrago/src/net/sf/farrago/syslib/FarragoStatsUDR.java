@@ -23,6 +23,8 @@ package net.sf.farrago.syslib;
 
 import java.sql.*;
 
+import java.util.*;
+
 import net.sf.farrago.catalog.*;
 import net.sf.farrago.cwm.relational.*;
 import net.sf.farrago.fem.sql2003.*;
@@ -36,6 +38,7 @@ import org.eigenbase.rex.*;
 import org.eigenbase.sarg.*;
 import org.eigenbase.sql.type.*;
 import org.eigenbase.stat.*;
+import org.eigenbase.util.*;
 
 
 /**
@@ -225,6 +228,142 @@ public abstract class FarragoStatsUDR
         return -1.0;
     }
 
+    /**
+     * Lists the most common values of a column, as recorded by the latest
+     * ANALYZE visible to the session, with the number of rows estimated to
+     * have each. If the column has nulls, they are listed as a null value.
+     */
+    public static void get_most_common_values(
+        String catalog,
+        String schema,
+        String table,
+        String column,
+        PreparedStatement resultInserter)
+        throws SQLException
+    {
+        FemColumnHistogram histogram;
+        try {
+            FarragoSession sess = FarragoUdrRuntime.getSession();
+            FarragoRepos repos = sess.getRepos();
+            FemAbstractColumnSet columnSet =
+                FarragoStatsUtil.lookupColumnSet(
+                    sess,
+                    repos,
+                    catalog,
+                    schema,
+                    table);
+            FemAbstractColumn col =
+                FarragoStatsUtil.lookupColumn(columnSet, column);
+            histogram =
+                FarragoCatalogUtil.getHistogram(
+                    col,
+                    sess.getSessionLabelCreationTimestamp());
+        } catch (Throwable t) {
+            throw new SQLException(t.getMessage());
+        }
+        if (histogram == null) {
+            return;
+        }
+
+        // counts are of sampled rows
+        double scale = 100.0 / histogram.getPercentageSampled();
+        Long nullCount = histogram.getNullCount();
+        if ((nullCount != null) && (nullCount > 0)) {
+            resultInserter.setString(1, null);
+            resultInserter.setLong(2, Math.round(nullCount * scale));
+            resultInserter.executeUpdate();
+        }
+        FarragoMostCommonValues mcv =
+            FarragoMostCommonValues.parse(histogram.getMostCommonValues());
+        if (mcv == null) {
+            return;
+        }
+        for (String value : mcv.getValues()) {
+            resultInserter.setString(1, value);
+            resultInserter.setLong(
+                2,
+                Math.round(mcv.getRowCount(value) * scale));
+            resultInserter.executeUpdate();
+        }
+    }
+
+    /**
+     * Lists the column groups of a table, as recorded by the latest ANALYZE
+     * visible to the session. Each group is listed once for each ordered pair
+     * of its columns, with the degree to which the first determines the
+     * second.
+     */
+    public static void get_column_groups(
+        String catalog,
+        String schema,
+        String table,
+        PreparedStatement resultInserter)
+        throws SQLException
+    {
+        List<FemAbstractColumn> columns;
+        List<RelStatColumnGroupStatistics> groups;
+        try {
+            FarragoSession sess = FarragoUdrRuntime.getSession();
+            FarragoRepos repos = sess.getRepos();
+            FemAbstractColumnSet columnSet =
+                FarragoStatsUtil.lookupColumnSet(
+                    sess,
+                    repos,
+                    catalog,
+                    schema,
+                    table);
+            columns =
+                Util.cast(columnSet.getFeature(), FemAbstractColumn.class);
+            groups =
+                new FarragoTableStatistics(
+                    repos,
+                    columnSet,
+                    sess.getSessionLabelCreationTimestamp())
+                .getColumnGroupStatistics();
+        } catch (Throwable t) {
+            throw new SQLException(t.getMessage());
+        }
+        for (RelStatColumnGroupStatistics group : groups) {
+            BitSet ordinals = group.getColumnOrdinals();
+            StringBuilder names = new StringBuilder();
+            for (
+                int i = ordinals.nextSetBit(0);
+                i >= 0;
+                i = ordinals.nextSetBit(i + 1))
+            {
+                if (names.length() > 0) {
+                    names.append(", ");
+                }
+                names.append(columns.get(i).getName());
+            }
+            for (
+                int i = ordinals.nextSetBit(0);
+                i >= 0;
+                i = ordinals.nextSetBit(i + 1))
+            {
+                for (
+                    int j = ordinals.nextSetBit(0);
+                    j >= 0;
+                    j = ordinals.nextSetBit(j + 1))
+                {
+                    if (i == j) {
+                        continue;
+                    }
+                    resultInserter.setString(1, names.toString());
+                    resultInserter.setLong(
+                        2,
+                        Math.round(group.getDistinctCount()));
+                    resultInserter.setString(3, columns.get(i).getName());
+                    resultInserter.setString(4, columns.get(j).getName());
+                    resultInserter.setDouble(
+                        5,
+                        group.getDependencyDegree(i, j));
+                    resultInserter.executeUpdate();
+                }
+            }
+        }
+    }
+
     private static RelStatColumnStatistics getColumnStats(
         String catalog,
         String schema,
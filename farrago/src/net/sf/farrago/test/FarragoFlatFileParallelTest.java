@@ -0,0 +1,297 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.test;
+
+import java.io.*;
+
+import junit.framework.*;
+
+
+/**
+ * FarragoFlatFileParallelTest reads large flat files with the PARALLELISM
+ * option of the flat file wrapper, checking that a parallel scan returns the
+ * same rows, in the same order, as a sequential scan, and rejects the same
+ * rows. One quoted value, which spans several lines, is placed across the
+ * first guessed chunk boundary, so that the chunk after it must be parsed
+ * again. {@link
+ * net.sf.farrago.test.regression.FarragoFlatFileParallelBenchmarkTest}
+ * compares the speed of the two scans.
+ *
+ * @version $Id$
+ */
+public class FarragoFlatFileParallelTest
+    extends FarragoTestCase
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final String DIRECTORY = "testlog/flatfile_parallel/";
+
+    protected static final int ROW_COUNT = 300000;
+
+    /**
+     * Every row whose id is a multiple of this has an extra column.
+     */
+    private static final int BAD_ROW_INTERVAL = 10007;
+
+    /**
+     * Size of the chunks into which a parallel scan splits a file.
+     *
+     * <p>NOTE: keep this consistent with FLAT_FILE_PARALLEL_CHUNK_SIZE in
+     * fennel/flatfile/FlatFileParallelScan.h
+     */
+    private static final int CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private static final int SPANNING_LINES = 2000;
+
+    private static final String HEADER = "ID,NAME,AMOUNT";
+
+    private static final String CHECKSUM_COLUMNS =
+        "count(*), sum(id), sum(amount), sum(char_length(name)), "
+        + "min(name), max(name)";
+
+    //~ Instance fields --------------------------------------------------------
+
+    private long goodRowCount;
+
+    private long idSum;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new FarragoFlatFileParallelTest object.
+     *
+     * @param testName JUnit test name
+     */
+    public FarragoFlatFileParallelTest(String testName)
+        throws Exception
+    {
+        super(testName);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    public static Test suite()
+    {
+        return wrappedSuite(FarragoFlatFileParallelTest.class);
+    }
+
+    // implement TestCase
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+        new File(DIRECTORY).mkdirs();
+        writeFile("quoted", true);
+        writeFile("plain", false);
+
+        stmt.execute("create schema flatfile_parallel");
+        stmt.execute("set schema 'flatfile_parallel'");
+        stmt.execute("alter session set \"errorMax\" = 1000");
+        createServer("sequential_server", "", 1, true);
+        createServer("parallel_server", "", 4, true);
+        createServer(
+            "plain_server",
+            ", quote_char '', escape_char ''",
+            1,
+            true);
+        createServer(
+            "plain_parallel_server",
+            ", quote_char '', escape_char ''",
+            4,
+            false);
+        createTable("sequential_quoted", "sequential_server", "quoted");
+        createTable("parallel_quoted", "parallel_server", "quoted");
+        createTable("sequential_plain", "plain_server", "plain");
+        createTable("parallel_plain", "plain_parallel_server", "plain");
+    }
+
+    // implement TestCase
+    protected void tearDown()
+        throws Exception
+    {
+        try {
+            stmt.execute("alter session set \"errorMax\" = 0");
+            stmt.execute("drop schema flatfile_parallel cascade");
+            stmt.execute("drop server sequential_server cascade");
+            stmt.execute("drop server parallel_server cascade");
+            stmt.execute("drop server plain_server cascade");
+            stmt.execute("drop server plain_parallel_server cascade");
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    /**
+     * Tests that a parallel scan of a quoted file returns the rows of a
+     * sequential scan, in file order.
+     */
+    public void testQuoted()
+        throws Exception
+    {
+        String expected = queryRow("sequential_quoted");
+        assertTrue(
+            expected,
+            expected.startsWith(goodRowCount + ";" + idSum + ";"));
+        assertEquals(expected, queryRow("parallel_quoted"));
+        assertOrdered("parallel_quoted");
+    }
+
+    /**
+     * Tests that a parallel scan of an unquoted file, which need not preserve
+     * row order, returns the rows of a sequential scan.
+     */
+    public void testUnordered()
+        throws Exception
+    {
+        String expected = queryRow("sequential_plain");
+        assertTrue(
+            expected,
+            expected.startsWith(goodRowCount + ";" + idSum + ";"));
+        assertEquals(expected, queryRow("parallel_plain"));
+    }
+
+    private void createServer(
+        String name,
+        String options,
+        int parallelism,
+        boolean preserveOrder)
+        throws Exception
+    {
+        stmt.execute(
+            "create server " + name
+            + " foreign data wrapper sys_file_wrapper options("
+            + "directory '" + DIRECTORY + "', file_extension 'csv', "
+            + "with_header 'yes', lenient 'no', "
+            + "log_directory '" + DIRECTORY + "', "
+            + "parallelism '" + parallelism + "', "
+            + "preserve_order '" + (preserveOrder ? "yes" : "no") + "'"
+            + options + ")");
+    }
+
+    private void createTable(String name, String server, String file)
+        throws Exception
+    {
+        stmt.execute(
+            "create foreign table " + name + "("
+            + "id int not null, name varchar(20000), amount decimal(10, 2)) "
+            + "server " + server + " options (filename '" + file + "')");
+    }
+
+    /**
+     * Writes a file of ROW_COUNT rows with ascending ids, and computes the
+     * number of rows which are not rejected, and the sum of their ids.
+     */
+    private void writeFile(String name, boolean quoted)
+        throws Exception
+    {
+        Writer writer =
+            new BufferedWriter(new FileWriter(DIRECTORY + name + ".csv"));
+        try {
+            writer.write(HEADER + "\n");
+            long written = HEADER.length() + 1;
+            long boundary = written + CHUNK_SIZE;
+            boolean spanned = !quoted;
+            goodRowCount = 0;
+            idSum = 0;
+            for (int id = 1; id <= ROW_COUNT; id++) {
+                StringBuilder row = new StringBuilder();
+                row.append(id).append(',');
+                if (!spanned && (written > boundary - 10000)) {
+                    // a value with many row delimiters, one of which the
+                    // parallel scan mistakes for the start of a chunk
+                    row.append('"');
+                    for (int i = 0; i < SPANNING_LINES; i++) {
+                        row.append("line ").append(i % 10).append('\n');
+                    }
+                    row.append('"');
+                    spanned = true;
+                } else if (quoted && ((id % 3) == 0)) {
+                    row.append("\"name, ").append(id).append(
+                        "\nsecond \"\"line\"\"\"");
+                } else {
+                    row.append("name ").append(id);
+                }
+                row.append(',').append(id % 1000).append(".25");
+                if ((id % BAD_ROW_INTERVAL) == 0) {
+                    row.append(",extra");
+                } else {
+                    goodRowCount++;
+                    idSum += id;
+                }
+                row.append('\n');
+                writer.write(row.toString());
+                written += row.length();
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Scans a table.
+     *
+     * @param table name of the table
+     *
+     * @return values of the checksum columns, each followed by a semicolon
+     */
+    protected String queryRow(String table)
+        throws Exception
+    {
+        resultSet =
+            stmt.executeQuery(
+                "select " + CHECKSUM_COLUMNS + " from " + table);
+        try {
+            assertTrue(resultSet.next());
+            StringBuilder buf = new StringBuilder();
+            int columnCount = resultSet.getMetaData().getColumnCount();
+            for (int i = 1; i <= columnCount; i++) {
+                buf.append(resultSet.getString(i)).append(';');
+            }
+            return buf.toString();
+        } finally {
+            resultSet.close();
+            resultSet = null;
+        }
+    }
+
+    private void assertOrdered(String table)
+        throws Exception
+    {
+        resultSet = stmt.executeQuery("select id from " + table);
+        try {
+            int previous = 0;
+            long count = 0;
+            while (resultSet.next()) {
+                int id = resultSet.getInt(1);
+                assertTrue(id > previous);
+                previous = id;
+                count++;
+            }
+            assertEquals(goodRowCount, count);
+        } finally {
+            resultSet.close();
+            resultSet = null;
+        }
+    }
+}
+
+// End FarragoFlatFileParallelTest.java
@@ -0,0 +1,315 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.test;
+
+import java.io.*;
+
+import junit.framework.*;
+
+
+/**
+ * FarragoFlatFilePatternTest reads flat file tables whose FILE_PATTERN option
+ * binds them to several part files, sequentially and in parallel. It also
+ * tests that incremental loads skip unchanged files when SKIP_UNCHANGED_FILES
+ * is set, and that the columns of a pattern table are inferred from a sample
+ * of its files.
+ *
+ * @version $Id$
+ */
+public class FarragoFlatFilePatternTest
+    extends FarragoTestCase
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final String DIRECTORY = "testlog/flatfile_pattern/";
+
+    private static final int FILE_COUNT = 20;
+
+    private static final int ROWS_PER_FILE = 100;
+
+    private static final String HEADER = "ID,NAME,AMOUNT";
+
+    private static final String COLUMNS =
+        "(id int not null, name varchar(100), amount decimal(10, 2))";
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new FarragoFlatFilePatternTest object.
+     *
+     * @param testName JUnit test name
+     */
+    public FarragoFlatFilePatternTest(String testName)
+        throws Exception
+    {
+        super(testName);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    public static Test suite()
+    {
+        return wrappedSuite(FarragoFlatFilePatternTest.class);
+    }
+
+    // implement TestCase
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+        File dir = new File(DIRECTORY);
+        dir.mkdirs();
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        for (int i = 0; i < FILE_COUNT; i++) {
+            writeFile(i, 0);
+        }
+
+        // a file which does not match the pattern
+        Writer writer = new FileWriter(DIRECTORY + "other.csv");
+        try {
+            writer.write(HEADER + "\n-1,other,1.00\n");
+        } finally {
+            writer.close();
+        }
+
+        stmt.execute("create schema flatfile_pattern");
+        stmt.execute("set schema 'flatfile_pattern'");
+        createServer("pattern_server", 1);
+        createServer("pattern_parallel_server", 4);
+        stmt.execute(
+            "create foreign table parts " + COLUMNS
+            + " server pattern_server options (file_pattern 'part_*')");
+        stmt.execute(
+            "create foreign table parallel_parts " + COLUMNS
+            + " server pattern_parallel_server"
+            + " options (file_pattern 'part_*')");
+        stmt.execute(
+            "create foreign table incremental " + COLUMNS
+            + " server pattern_parallel_server options ("
+            + "file_pattern 'part_*', skip_unchanged_files 'yes')");
+        stmt.execute(
+            "create table dest(seq int generated always as identity "
+            + "primary key, id int not null, name varchar(100), "
+            + "amount decimal(10, 2))");
+        connection.commit();
+    }
+
+    // implement TestCase
+    protected void tearDown()
+        throws Exception
+    {
+        try {
+            stmt.execute("drop schema flatfile_pattern cascade");
+            stmt.execute("drop server pattern_server cascade");
+            stmt.execute("drop server pattern_parallel_server cascade");
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    /**
+     * Tests that a pattern table reads all of the matching files as one
+     * table, whether the files are read one after another or concurrently.
+     */
+    public void testPattern()
+        throws Exception
+    {
+        long rowCount = FILE_COUNT * ROWS_PER_FILE;
+        String expected = rowCount + ";" + (rowCount * (rowCount - 1) / 2);
+        assertEquals(expected, queryRow("parts"));
+        assertEquals(expected, queryRow("parallel_parts"));
+
+        // a new file is read by the next statement
+        writeFile(FILE_COUNT, 0);
+        rowCount += ROWS_PER_FILE;
+        assertEquals(
+            rowCount + ";" + (rowCount * (rowCount - 1) / 2),
+            queryRow("parallel_parts"));
+    }
+
+    /**
+     * Tests that incremental loads skip files which have not changed since
+     * they were last loaded, and that queries read every file.
+     */
+    public void testSkipUnchanged()
+        throws Exception
+    {
+        long rowCount = FILE_COUNT * ROWS_PER_FILE;
+        String expected = rowCount + ";" + (rowCount * (rowCount - 1) / 2);
+
+        // queries neither skip nor record files
+        assertEquals(expected, queryRow("incremental"));
+        assertEquals(expected, queryRow("incremental"));
+        connection.commit();
+
+        assertEquals(rowCount, load());
+        connection.commit();
+        assertEquals(0, load());
+        connection.commit();
+        assertEquals(expected, queryRow("incremental"));
+
+        // a changed file is read again, and a new file is read
+        writeFile(3, 1);
+        writeFile(FILE_COUNT, 0);
+        long first = 3 * ROWS_PER_FILE;
+        long next = FILE_COUNT * ROWS_PER_FILE;
+        assertEquals(2 * ROWS_PER_FILE + 1, load());
+        connection.commit();
+        assertEquals(0, load());
+        connection.commit();
+        assertEquals(
+            (rowCount + 2 * ROWS_PER_FILE + 1) + ";"
+            + (sum(0, rowCount) + sum(first, ROWS_PER_FILE + 1)
+                + sum(next, ROWS_PER_FILE)),
+            queryRow("dest"));
+
+        // a file modified no earlier than the second in which it was read
+        // might have been rewritten since without changing its modification
+        // time, so it is read by every load
+        File file = new File(getFileName(5) + ".csv");
+        assertTrue(file.setLastModified(System.currentTimeMillis() + 60000));
+        assertEquals(ROWS_PER_FILE, load());
+        connection.commit();
+        assertEquals(ROWS_PER_FILE, load());
+        connection.commit();
+    }
+
+    /**
+     * Tests that a load which is rolled back does not record the files it
+     * read, so that the next load reads them.
+     */
+    public void testSkipUnchangedRollback()
+        throws Exception
+    {
+        long rowCount = FILE_COUNT * ROWS_PER_FILE;
+        assertEquals(rowCount, load());
+        connection.rollback();
+        assertEquals("0;null", queryRow("dest"));
+
+        assertEquals(rowCount, load());
+        connection.commit();
+        assertEquals(
+            rowCount + ";" + (rowCount * (rowCount - 1) / 2),
+            queryRow("dest"));
+        assertEquals(0, load());
+        connection.commit();
+
+        // a changed file which is loaded and rolled back is still read
+        writeFile(7, 1);
+        assertEquals(ROWS_PER_FILE + 1, load());
+        connection.rollback();
+        assertEquals(ROWS_PER_FILE + 1, load());
+        connection.commit();
+        assertEquals(0, load());
+        connection.commit();
+    }
+
+    /**
+     * Tests that the columns of a pattern table are inferred from its files.
+     */
+    public void testInferColumns()
+        throws Exception
+    {
+        stmt.execute(
+            "create foreign table inferred server pattern_server"
+            + " options (file_pattern 'part_00*, part_01*')");
+        assertEquals(
+            (FILE_COUNT * ROWS_PER_FILE) + ";"
+            + sum(0, FILE_COUNT * ROWS_PER_FILE),
+            queryRow("inferred"));
+        assertTrue(new File(DIRECTORY + "INFERRED.bcp").exists());
+    }
+
+    private void createServer(String name, int parallelism)
+        throws Exception
+    {
+        stmt.execute(
+            "create server " + name
+            + " foreign data wrapper sys_file_wrapper options("
+            + "directory '" + DIRECTORY + "', file_extension 'csv', "
+            + "with_header 'yes', lenient 'no', "
+            + "log_directory '" + DIRECTORY + "', "
+            + "parallelism '" + parallelism + "')");
+    }
+
+    /**
+     * Writes part file i, whose ids follow those of the previous file, and
+     * which may have extra rows at its end. The file's modification time is
+     * set back a few seconds, so that loads do not see it as modified while
+     * they read it.
+     */
+    private void writeFile(int i, int extraRows)
+        throws Exception
+    {
+        String name = getFileName(i);
+        Writer writer = new BufferedWriter(new FileWriter(name + ".csv"));
+        try {
+            writer.write(HEADER + "\n");
+            long first = (long) i * ROWS_PER_FILE;
+            for (long id = first; id < first + ROWS_PER_FILE + extraRows;
+                id++)
+            {
+                writer.write(id + ",name " + id + "," + (id % 100) + ".25\n");
+            }
+        } finally {
+            writer.close();
+        }
+        new File(name + ".csv").setLastModified(
+            System.currentTimeMillis() - 10000);
+    }
+
+    private static String getFileName(int i)
+    {
+        return DIRECTORY + "part_" + (i < 10 ? "00" : "0") + i;
+    }
+
+    private int load()
+        throws Exception
+    {
+        return stmt.executeUpdate(
+            "insert into dest(id, name, amount) "
+            + "select id, name, amount from incremental");
+    }
+
+    private static long sum(long first, long count)
+    {
+        return count * first + (count * (count - 1) / 2);
+    }
+
+    private String queryRow(String table)
+        throws Exception
+    {
+        resultSet =
+            stmt.executeQuery("select count(*), sum(id) from " + table);
+        try {
+            assertTrue(resultSet.next());
+            return resultSet.getString(1) + ";" + resultSet.getString(2);
+        } finally {
+            resultSet.close();
+            resultSet = null;
+        }
+    }
+}
+
+// End FarragoFlatFilePatternTest.java
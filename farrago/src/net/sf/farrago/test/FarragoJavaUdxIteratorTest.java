@@ -0,0 +1,206 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.test;
+
+import junit.framework.*;
+
+import net.sf.farrago.runtime.*;
+import net.sf.farrago.util.*;
+
+
+/**
+ * FarragoJavaUdxIteratorTest tests the transfer of rows from a Java UDX to its
+ * consumer by {@link FarragoJavaUdxIterator}, with and without batching.
+ * {@link net.sf.farrago.test.regression.FarragoJavaUdxThroughputTest}
+ * compares their throughput.
+ *
+ * @version $Id$
+ */
+public class FarragoJavaUdxIteratorTest
+    extends FarragoTestCase
+{
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new FarragoJavaUdxIteratorTest object.
+     *
+     * @param testName JUnit test name
+     */
+    public FarragoJavaUdxIteratorTest(String testName)
+        throws Exception
+    {
+        super(testName);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    public static Test suite()
+    {
+        return wrappedSuite(FarragoJavaUdxIteratorTest.class);
+    }
+
+    // implement TestCase
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+        stmt.execute("create schema udxbatch");
+        stmt.execute(
+            "create function udxbatch.ramp(n int) returns table(i int) "
+            + "language java parameter style system defined java no sql "
+            + "external name 'class net.sf.farrago.test.FarragoTestUDR.ramp'");
+    }
+
+    // implement TestCase
+    protected void tearDown()
+        throws Exception
+    {
+        try {
+            stmt.execute("drop schema udxbatch cascade");
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    /**
+     * Tests that every row arrives exactly once, in order, for several batch
+     * sizes, including row counts which are not a multiple of the batch size.
+     */
+    public void testBatchSizes()
+        throws Exception
+    {
+        int [] batchSizes = { 1, 2, 7, 128 };
+        int [] rowCounts = { 0, 1, 7, 1000 };
+        for (int batchSize : batchSizes) {
+            for (int rowCount : rowCounts) {
+                checkRamp(batchSize, rowCount);
+            }
+        }
+    }
+
+    /**
+     * Tests that aggregation over a UDX, where rows are marshalled into Fennel
+     * rather than read by JDBC, gives the same result with and without
+     * batching.
+     */
+    public void testAggregate()
+        throws Exception
+    {
+        String sql =
+            "select count(*), sum(cast(i as bigint)) "
+            + "from table(udxbatch.ramp(100000))";
+        for (int batchSize : new int[] { 1, 128 }) {
+            int saved = setBatchSize(batchSize);
+            try {
+                resultSet = stmt.executeQuery(sql);
+                assertTrue(resultSet.next());
+                assertEquals(100000, resultSet.getInt(1));
+                assertEquals(4999950000L, resultSet.getLong(2));
+                assertFalse(resultSet.next());
+                resultSet.close();
+                resultSet = null;
+            } finally {
+                setBatchSize(saved);
+            }
+        }
+    }
+
+    /**
+     * Tests that closing a cursor before a batching UDX has finished stops
+     * the UDX.
+     */
+    public void testEarlyClose()
+        throws Exception
+    {
+        int saved = setBatchSize(16);
+        try {
+            resultSet =
+                stmt.executeQuery(
+                    "select * from table(udxbatch.ramp(100000))");
+            for (int i = 0; i < 100; ++i) {
+                assertTrue(resultSet.next());
+                assertEquals(i, resultSet.getInt(1));
+            }
+            resultSet.close();
+            resultSet = null;
+        } finally {
+            setBatchSize(saved);
+        }
+    }
+
+    private void checkRamp(int batchSize, int rowCount)
+        throws Exception
+    {
+        int saved = setBatchSize(batchSize);
+        try {
+            resultSet =
+                stmt.executeQuery(
+                    "select * from table(udxbatch.ramp(" + rowCount + "))");
+            for (int i = 0; i < rowCount; ++i) {
+                assertTrue(resultSet.next());
+                assertEquals(i, resultSet.getInt(1));
+            }
+            assertFalse(resultSet.next());
+            resultSet.close();
+            resultSet = null;
+        } finally {
+            setBatchSize(saved);
+        }
+    }
+
+    /**
+     * Reads every row of the RAMP UDX with a given batch size.
+     *
+     * @param batchSize number of rows the UDX queues at a time
+     * @param rowCount number of rows the UDX produces
+     *
+     * @return elapsed time in nanoseconds
+     */
+    protected long countRamp(int batchSize, int rowCount)
+        throws Exception
+    {
+        int saved = setBatchSize(batchSize);
+        try {
+            long start = System.nanoTime();
+            resultSet =
+                stmt.executeQuery(
+                    "select * from table(udxbatch.ramp(" + rowCount + "))");
+            int n = 0;
+            while (resultSet.next()) {
+                ++n;
+            }
+            resultSet.close();
+            resultSet = null;
+            assertEquals(rowCount, n);
+            return System.nanoTime() - start;
+        } finally {
+            setBatchSize(saved);
+        }
+    }
+
+    private int setBatchSize(int batchSize)
+    {
+        return FarragoProperties.instance().udxBatchSize.set(batchSize);
+    }
+}
+
+// End FarragoJavaUdxIteratorTest.java
@@ -33,6 +33,7 @@ import java.sql.*;
 import java.sql.Date;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.logging.*;
 import java.util.regex.*;
 
@@ -3577,6 +3578,180 @@ public class FarragoJdbcTest
         compareResultSet(refSet);
     }
 
+    /**
+     * Tests that queries return the same rows with prefetch enabled as
+     * without it.
+     */
+    public void testPrefetch()
+        throws Exception
+    {
+        // Prefetch is only available server-side.
+        if (!(stmt instanceof FarragoJdbcEngineStatement)) {
+            return;
+        }
+        FarragoJdbcEngineStatement engineStmt =
+            (FarragoJdbcEngineStatement) stmt;
+        String [] queries = {
+            "select * from sales.emps order by name",
+
+            // datetime values are mutable in the row objects which the
+            // prefetch thread copies
+            "select * from (values "
+            + "(date '2004-12-21', time '12:22:33', "
+            + "timestamp '2004-12-21 12:22:33'), "
+            + "(date '2005-01-01', time '01:02:03', "
+            + "timestamp '2005-01-01 01:02:03'), "
+            + "(date '2006-06-06', time '23:59:59', "
+            + "timestamp '2006-06-06 23:59:59')) as t(d, t, ts)"
+        };
+        try {
+            for (String sql : queries) {
+                engineStmt.setPrefetch(0, 0);
+                resultSet = stmt.executeQuery(sql);
+                List<String> expected = fetchAll();
+
+                // pages smaller than the result, one page ahead
+                engineStmt.setPrefetch(2, 1);
+                resultSet = stmt.executeQuery(sql);
+                assertEquals(expected, fetchAll());
+
+                // prefetch applies the query timeout itself
+                stmt.setQueryTimeout(10);
+                resultSet = stmt.executeQuery(sql);
+                assertEquals(expected, fetchAll());
+                stmt.setQueryTimeout(0);
+
+                stmt.setMaxRows(1);
+                resultSet = stmt.executeQuery(sql);
+                assertEquals(expected.subList(0, 1), fetchAll());
+                stmt.setMaxRows(0);
+            }
+        } finally {
+            engineStmt.setPrefetch(0, 0);
+        }
+
+        try {
+            engineStmt.setPrefetch(0, 1);
+            fail("expected error for empty prefetch page");
+        } catch (SQLException e) {
+            assertContains("pageRows=0", e.getMessage());
+        }
+    }
+
+    /**
+     * Tests closing and canceling a prefetching query before all of its rows
+     * have been read.
+     */
+    public void testPrefetchCancel()
+        throws Exception
+    {
+        // Prefetch is only available server-side.
+        if (!(stmt instanceof FarragoJdbcEngineStatement)) {
+            return;
+        }
+        FarragoJdbcEngineStatement engineStmt =
+            (FarragoJdbcEngineStatement) stmt;
+        quietlyDropSchema("cancel_test");
+        String sql = "create schema cancel_test";
+        stmt.execute(sql);
+        sql =
+            "create foreign table cancel_test.m(id int not null) "
+            + "server sys_mock_foreign_data_server "
+            + "options(executor_impl 'FENNEL', row_count '1000000000')";
+        stmt.execute(sql);
+        sql = "select * from cancel_test.m";
+        engineStmt.setPrefetch(100, 4);
+        try {
+            // closing must stop the prefetch thread although rows remain
+            resultSet = stmt.executeQuery(sql);
+            for (int i = 0; i < 1000; i++) {
+                assertTrue(resultSet.next());
+            }
+            resultSet.close();
+            resultSet = null;
+
+            executeAndCancel(sql, 2000);
+        } finally {
+            engineStmt.setPrefetch(0, 0);
+        }
+    }
+
+    /**
+     * Tests {@link FarragoJdbcEngineStatement#submit}.
+     */
+    public void testSubmit()
+        throws Exception
+    {
+        // Background execution is only available server-side.
+        if (!(stmt instanceof FarragoJdbcEngineStatement)) {
+            return;
+        }
+        FarragoJdbcEngineStatement engineStmt =
+            (FarragoJdbcEngineStatement) stmt;
+
+        // await a query
+        Future<Boolean> future =
+            engineStmt.submit("select name from sales.depts order by 1");
+        assertTrue(future.get(60, TimeUnit.SECONDS));
+        assertTrue(future.isDone());
+        resultSet = stmt.getResultSet();
+        compareResultLists(Arrays.asList("Accounts", "Marketing", "Sales"));
+
+        // poll a prepared query which prefetches
+        preparedStmt =
+            connection.prepareStatement(
+                "select name from sales.depts where deptno > ? order by 1");
+        preparedStmt.setInt(1, 10);
+        FarragoJdbcEnginePreparedStatement enginePreparedStmt =
+            (FarragoJdbcEnginePreparedStatement) preparedStmt;
+        enginePreparedStmt.setPrefetch(1, 2);
+        future = enginePreparedStmt.submit();
+        while (!future.isDone()) {
+            Thread.sleep(10);
+        }
+        assertTrue(future.get());
+        resultSet = preparedStmt.getResultSet();
+        compareResultLists(Arrays.asList("Accounts", "Marketing"));
+
+        // DML produces an update count
+        future = engineStmt.submit("delete from sales.temps");
+        assertFalse(future.get(60, TimeUnit.SECONDS));
+        assertEquals(0, stmt.getUpdateCount());
+
+        // errors are reported when the result is awaited
+        future = engineStmt.submit("select * from sales.no_such_table");
+        try {
+            future.get(60, TimeUnit.SECONDS);
+            fail("expected error for unknown table");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SQLException);
+            assertContains("NO_SUCH_TABLE", e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Reads the remaining rows of {@link #resultSet}, formatting each as a
+     * string.
+     */
+    private List<String> fetchAll()
+        throws SQLException
+    {
+        List<String> rows = new ArrayList<String>();
+        int columnCount = resultSet.getMetaData().getColumnCount();
+        while (resultSet.next()) {
+            StringBuilder buf = new StringBuilder();
+            for (int i = 1; i <= columnCount; i++) {
+                Object obj = resultSet.getObject(i);
+                if (obj instanceof byte []) {
+                    obj = Arrays.toString((byte []) obj);
+                }
+                buf.append(obj).append('|');
+            }
+            rows.add(buf.toString());
+        }
+        return rows;
+    }
+
     protected void quietlyDropSchema(String schemaName)
     {
        String sql = "drop schema "
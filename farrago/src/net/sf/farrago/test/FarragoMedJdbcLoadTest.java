@@ -0,0 +1,267 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.test;
+
+import junit.framework.*;
+
+import net.sf.farrago.util.*;
+
+
+/**
+ * FarragoMedJdbcLoadTest loads a LucidDB column-store table from a foreign
+ * JDBC table, checking that rows marshalled straight from the foreign
+ * ResultSet into Fennel (see {@link
+ * FarragoProperties#medJdbcDirectFennel}) load the same data as rows
+ * converted through synthetic row objects. The foreign server is a
+ * connection back to this Farrago instance. {@link
+ * net.sf.farrago.test.regression.FarragoMedJdbcLoadBenchmarkTest} measures
+ * the difference in speed.
+ *
+ * @version $Id$
+ */
+public class FarragoMedJdbcLoadTest
+    extends FarragoTestCase
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    protected static final int ROW_COUNT = 50000;
+
+    private static final String CHECKSUM_COLUMNS =
+        "count(*), count(i), sum(i), sum(b), sum(d), count(f), "
+        + "sum(case when f then 1 else 0 end), max(v), min(c), "
+        + "max(dt), sum(n), sum(t)";
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new FarragoMedJdbcLoadTest object.
+     *
+     * @param testName JUnit test name
+     */
+    public FarragoMedJdbcLoadTest(String testName)
+        throws Exception
+    {
+        super(testName);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    public static Test suite()
+    {
+        return wrappedSuite(FarragoMedJdbcLoadTest.class);
+    }
+
+    // implement TestCase
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+        stmt.execute("create schema jdbc_load");
+        stmt.execute("set schema 'jdbc_load'");
+        stmt.execute(
+            "create function ramp(n int) returns table(i int) "
+            + "language java parameter style system defined java no sql "
+            + "external name 'class net.sf.farrago.test.FarragoTestUDR.ramp'");
+
+        // source table, covering primitive columns with and without nulls
+        // and columns which need conversion
+        stmt.execute(
+            "create table src("
+            + "id int not null primary key, "
+            + "i int, "
+            + "b bigint not null, "
+            + "d double, "
+            + "f boolean, "
+            + "t tinyint, "
+            + "v varchar(20), "
+            + "c char(8), "
+            + "dt date, "
+            + "n decimal(10, 2))");
+        stmt.executeUpdate(
+            "insert into src select i, "
+            + "case when mod(i, 7) = 0 then null else i end, "
+            + "cast(i as bigint) * 1000, "
+            + "case when mod(i, 11) = 0 then null "
+            + "else cast(i as double) / 3 end, "
+            + "case when mod(i, 5) = 0 then null else mod(i, 2) = 0 end, "
+            + "cast(mod(i, 100) as tinyint), "
+            + "case when mod(i, 13) = 0 then null "
+            + "else 'row ' || cast(i as varchar(10)) end, "
+            + "cast(mod(i, 1000) as char(8)), "
+            + "date '2000-01-01', "
+            + "cast(i as decimal(10, 2)) / 4 "
+            + "from table(ramp(" + ROW_COUNT + "))");
+
+        // schema_name makes foreign table names unqualified, which prevents
+        // the loopback optimization from bypassing JDBC
+        stmt.execute(
+            "create server jdbc_load_server "
+            + "foreign data wrapper sys_jdbc options("
+            + "driver_class "
+            + "'net.sf.farrago.jdbc.engine.FarragoJdbcEngineDriver',"
+            + " url 'jdbc:farrago:', user_name 'sa',"
+            + " schema_name 'JDBC_LOAD', fetch_size '1000')");
+        stmt.execute(
+            "create foreign table foreign_src "
+            + "server jdbc_load_server options(table_name 'SRC')");
+
+        stmt.execute(
+            "alter session implementation set jar"
+            + " sys_boot.sys_boot.luciddb_plugin");
+        stmt.execute(
+            "create table dest("
+            + "id int not null, "
+            + "i int, "
+            + "b bigint not null, "
+            + "d double, "
+            + "f boolean, "
+            + "t tinyint, "
+            + "v varchar(20), "
+            + "c char(8), "
+            + "dt date, "
+            + "n decimal(10, 2))");
+    }
+
+    // implement TestCase
+    protected void tearDown()
+        throws Exception
+    {
+        try {
+            stmt.execute("alter session implementation set default");
+            stmt.execute("drop schema jdbc_load cascade");
+            stmt.execute("drop server jdbc_load_server cascade");
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    /**
+     * Tests that loading with and without direct marshalling loads the same
+     * rows as the source table holds.
+     */
+    public void testLoad()
+        throws Exception
+    {
+        String expected = queryRow("select " + CHECKSUM_COLUMNS + " from src");
+        for (int mode = 0; mode < 2; ++mode) {
+            boolean saved = setDirectFennel(mode == 1);
+            try {
+                stmt.executeUpdate("delete from dest");
+                assertEquals(
+                    ROW_COUNT,
+                    stmt.executeUpdate(
+                        "insert into dest select * from foreign_src"));
+                assertEquals(
+                    expected,
+                    queryRow("select " + CHECKSUM_COLUMNS + " from dest"));
+            } finally {
+                setDirectFennel(saved);
+            }
+        }
+    }
+
+    /**
+     * Tests that the load uses the direct converter only when it is enabled.
+     */
+    public void testPlan()
+        throws Exception
+    {
+        String sql =
+            "explain plan for insert into dest select * from foreign_src";
+        for (int mode = 0; mode < 2; ++mode) {
+            boolean saved = setDirectFennel(mode == 1);
+            try {
+                String plan = queryPlan(sql);
+                assertEquals(
+                    plan,
+                    mode == 1,
+                    plan.indexOf("ResultSetToFennelConverter") >= 0);
+            } finally {
+                setDirectFennel(saved);
+            }
+        }
+    }
+
+    /**
+     * Empties the destination table and loads it from the foreign table.
+     */
+    protected void load()
+        throws Exception
+    {
+        stmt.executeUpdate("truncate table dest");
+        assertEquals(
+            ROW_COUNT,
+            stmt.executeUpdate("insert into dest select * from foreign_src"));
+    }
+
+    private String queryRow(String sql)
+        throws Exception
+    {
+        resultSet = stmt.executeQuery(sql);
+        try {
+            assertTrue(resultSet.next());
+            StringBuilder buf = new StringBuilder();
+            int columnCount = resultSet.getMetaData().getColumnCount();
+            for (int i = 1; i <= columnCount; i++) {
+                buf.append(resultSet.getString(i)).append(';');
+            }
+            return buf.toString();
+        } finally {
+            resultSet.close();
+            resultSet = null;
+        }
+    }
+
+    private String queryPlan(String sql)
+        throws Exception
+    {
+        resultSet = stmt.executeQuery(sql);
+        try {
+            StringBuilder buf = new StringBuilder();
+            while (resultSet.next()) {
+                buf.append(resultSet.getString(1)).append('\n');
+            }
+            return buf.toString();
+        } finally {
+            resultSet.close();
+            resultSet = null;
+        }
+    }
+
+    /**
+     * Switches direct marshalling on or off. Since the choice is made when a
+     * statement is prepared, the code cache is flushed so that statements
+     * are prepared again.
+     */
+    protected boolean setDirectFennel(boolean direct)
+        throws Exception
+    {
+        boolean saved =
+            FarragoProperties.instance().medJdbcDirectFennel.set(direct);
+        if (saved != direct) {
+            stmt.execute("call sys_boot.mgmt.flush_code_cache()");
+        }
+        return saved;
+    }
+}
+
+// End FarragoMedJdbcLoadTest.java
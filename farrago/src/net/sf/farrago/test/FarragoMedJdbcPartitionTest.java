@@ -0,0 +1,222 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.test;
+
+import java.sql.*;
+
+import junit.framework.*;
+
+
+/**
+ * FarragoMedJdbcPartitionTest tests foreign JDBC tables whose scans are split
+ * into partitions which are read concurrently. The foreign server is a
+ * connection back to this Farrago instance, so no external database is
+ * needed.
+ *
+ * @version $Id$
+ */
+public class FarragoMedJdbcPartitionTest
+    extends FarragoTestCase
+{
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new FarragoMedJdbcPartitionTest object.
+     *
+     * @param testName JUnit test name
+     */
+    public FarragoMedJdbcPartitionTest(String testName)
+        throws Exception
+    {
+        super(testName);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    public static Test suite()
+    {
+        return wrappedSuite(FarragoMedJdbcPartitionTest.class);
+    }
+
+    // implement TestCase
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+        stmt.execute("create schema med_partition");
+        stmt.execute("set schema 'med_partition'");
+
+        // schema_name makes foreign table names unqualified, which prevents
+        // the loopback optimization from bypassing JDBC
+        stmt.execute(
+            "create server partition_server "
+            + "foreign data wrapper sys_jdbc options("
+            + "driver_class "
+            + "'net.sf.farrago.jdbc.engine.FarragoJdbcEngineDriver',"
+            + " url 'jdbc:farrago:', user_name 'sa', schema_name 'SALES',"
+            + " fetch_size '2')");
+        stmt.execute(
+            "create foreign table emps_modulo "
+            + "server partition_server options(table_name 'EMPS',"
+            + " partition_column 'EMPNO', partition_count '3')");
+        stmt.execute(
+            "create foreign table emps_range "
+            + "server partition_server options(table_name 'EMPS',"
+            + " partition_column 'EMPNO', partition_count '4',"
+            + " partition_method 'RANGE',"
+            + " partition_lower_bound '100', partition_upper_bound '120')");
+        stmt.execute(
+            "create foreign table emps_wide_range "
+            + "server partition_server options(table_name 'EMPS',"
+            + " partition_column 'EMPNO', partition_count '4',"
+            + " partition_method 'RANGE',"
+            + " partition_lower_bound '" + Long.MIN_VALUE + "',"
+            + " partition_upper_bound '" + Long.MAX_VALUE + "')");
+    }
+
+    // implement TestCase
+    protected void tearDown()
+        throws Exception
+    {
+        try {
+            stmt.execute("drop schema med_partition cascade");
+            stmt.execute("drop server partition_server cascade");
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    /**
+     * Tests that a modulo-partitioned scan returns the same rows as the
+     * table.
+     */
+    public void testModuloPartitions()
+        throws Exception
+    {
+        assertSameRows("emps_modulo", "");
+        assertSameRows("emps_modulo", " where deptno = 20");
+    }
+
+    /**
+     * Tests that a range-partitioned scan returns the same rows as the table,
+     * including rows outside the range bounds.
+     */
+    public void testRangePartitions()
+        throws Exception
+    {
+        assertSameRows("emps_range", "");
+        assertSameRows("emps_range", " where name > 'E'");
+    }
+
+    /**
+     * Tests a range partitioning whose range is wider than Long.MAX_VALUE.
+     */
+    public void testWideRangePartitions()
+        throws Exception
+    {
+        assertSameRows("emps_wide_range", "");
+    }
+
+    /**
+     * Tests that queries which cannot be partitioned still work.
+     */
+    public void testUnpartitionable()
+        throws Exception
+    {
+        resultSet =
+            stmt.executeQuery(
+                "select name from emps_modulo order by name");
+        resultSet.close();
+        resultSet =
+            stmt.executeQuery(
+                "select count(distinct deptno) from emps_modulo");
+        resultSet.close();
+    }
+
+    /**
+     * Tests that invalid partitioning options are rejected.
+     */
+    public void testInvalidOptions()
+        throws Exception
+    {
+        assertInvalid(
+            "partition_column 'EMPNO', partition_method 'HASH'");
+        assertInvalid(
+            "partition_column 'EMPNO', partition_count '0'");
+        assertInvalid(
+            "partition_column 'EMPNO', partition_method 'RANGE',"
+            + " partition_lower_bound '100'");
+    }
+
+    private void assertInvalid(String options)
+        throws Exception
+    {
+        try {
+            stmt.execute(
+                "create foreign table emps_invalid "
+                + "server partition_server options(table_name 'EMPS', "
+                + options + ")");
+            resultSet = stmt.executeQuery("select * from emps_invalid");
+            resultSet.close();
+            fail("expected error for options " + options);
+        } catch (SQLException ex) {
+            // expected
+        }
+        try {
+            stmt.execute("drop foreign table emps_invalid");
+        } catch (SQLException ex) {
+            // not created
+        }
+    }
+
+    private void assertSameRows(String table, String where)
+        throws Exception
+    {
+        String columns =
+            "count(*), sum(empno), sum(deptno), max(city), sum(age)";
+        String expected =
+            queryRow("select " + columns + " from sales.emps" + where);
+        String actual =
+            queryRow("select " + columns + " from " + table + where);
+        assertEquals(expected, actual);
+    }
+
+    private String queryRow(String sql)
+        throws Exception
+    {
+        resultSet = stmt.executeQuery(sql);
+        try {
+            assertTrue(resultSet.next());
+            StringBuilder buf = new StringBuilder();
+            int columnCount = resultSet.getMetaData().getColumnCount();
+            for (int i = 1; i <= columnCount; i++) {
+                buf.append(resultSet.getString(i)).append(';');
+            }
+            assertFalse(resultSet.next());
+            return buf.toString();
+        } finally {
+            resultSet.close();
+        }
+    }
+}
+
+// End FarragoMedJdbcPartitionTest.java
@@ -50,7 +50,6 @@ import org.eigenbase.util.*;
  * <li>test explicit discard
  * <li>test that discardAll forces new creations subsequently
  * <li>test with non-uniform numbers of tires
- * <li>test other victimization policies once they exist
  * </ul>
  *
  * @author John Sichi
@@ -335,9 +334,23 @@ public class FarragoObjectCacheTest
      * returned, causing old cars to be recycled for their tires.
      */
     public void testOneThreadVictimization()
+    {
+        runVictimization(new FarragoLruVictimPolicy());
+    }
+
+    /**
+     * Same as {@link #testOneThreadVictimization}, but using the clock victim
+     * policy.
+     */
+    public void testOneThreadVictimizationClock()
+    {
+        runVictimization(new FarragoClockVictimPolicy());
+    }
+
+    private void runVictimization(FarragoCacheVictimPolicy victimPolicy)
     {
         // Start a new agency which prohibits car sharing.
-        agency = new RentalCarAgency(true, MAX_TIRES);
+        agency = new RentalCarAgency(true, MAX_TIRES, victimPolicy);
         long tiresPrev = agency.getTiresInFleet();
         assertEquals(0, tiresPrev);
 
@@ -424,12 +437,37 @@ public class FarragoObjectCacheTest
         runMultipleThreads(false);
     }
 
+    /**
+     * Tests a multi-threaded scenario with objects pinned exclusively, using
+     * the clock victim policy.
+     */
+    public void testMultipleThreadsExclusiveClock()
+    {
+        runMultipleThreads(true, new FarragoClockVictimPolicy());
+    }
+
+    /**
+     * Tests a multi-threaded scenario with objects pinned as shared, using the
+     * clock victim policy.
+     */
+    public void testMultipleThreadsSharedClock()
+    {
+        runMultipleThreads(false, new FarragoClockVictimPolicy());
+    }
+
     private void runMultipleThreads(boolean exclusive)
+    {
+        runMultipleThreads(exclusive, new FarragoLruVictimPolicy());
+    }
+
+    private void runMultipleThreads(
+        boolean exclusive,
+        FarragoCacheVictimPolicy victimPolicy)
     {
         // Start a new agency with specified sharing mode.  Use a low limit for
         // number of tires in order to test cache victimization.  7 car
         // descriptions times 4 tires is 28 tires, so set limit to 25.
-        agency = new RentalCarAgency(exclusive, 25);
+        agency = new RentalCarAgency(exclusive, 25, victimPolicy);
 
         List<String> carDescriptions =
             Arrays.asList(
@@ -671,6 +709,21 @@ public class FarragoObjectCacheTest
          * any one time
          */
         RentalCarAgency(boolean exclusiveRentals, long maxTires)
+        {
+            this(exclusiveRentals, maxTires, new FarragoLruVictimPolicy());
+        }
+
+        /**
+         * Creates a new agency with a specific victim policy.
+         *
+         * @param exclusiveRentals see above
+         * @param maxTires see above
+         * @param victimPolicy policy for choosing cars to recycle
+         */
+        RentalCarAgency(
+            boolean exclusiveRentals,
+            long maxTires,
+            FarragoCacheVictimPolicy victimPolicy)
         {
             this.exclusiveRentals = exclusiveRentals;
             owner = new FarragoCompoundAllocation();
@@ -678,7 +731,7 @@ public class FarragoObjectCacheTest
                 new FarragoObjectCache(
                     owner,
                     maxTires,
-                    new FarragoLruVictimPolicy());
+                    victimPolicy);
             assertEquals(maxTires, fleet.getBytesMax());
         }
 
@@ -0,0 +1,330 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.test;
+
+import java.io.*;
+
+import java.sql.*;
+
+import java.util.*;
+
+import junit.extensions.*;
+
+import junit.framework.*;
+
+import net.sf.farrago.db.*;
+import net.sf.farrago.query.*;
+import net.sf.farrago.release.*;
+import net.sf.farrago.util.*;
+
+
+/**
+ * FarragoPersistentStmtCacheTest tests the on-disk tier beneath the code
+ * cache ({@link FarragoPersistentStmtCache}). The suite restarts the database
+ * with the tier enabled, and each test flushes the in-memory code cache
+ * before preparing a query, so that the query is looked up on disk.
+ *
+ * @version $Id$
+ */
+public class FarragoPersistentStmtCacheTest
+    extends FarragoTestCase
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final String QUERY = "select i from pcache.t order by i";
+
+    //~ Instance fields --------------------------------------------------------
+
+    private FarragoPersistentStmtCache cache;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new FarragoPersistentStmtCacheTest object.
+     *
+     * @param testName JUnit test name
+     */
+    public FarragoPersistentStmtCacheTest(String testName)
+        throws Exception
+    {
+        super(testName);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement TestCase
+    public static Test suite()
+    {
+        TestSetup wrapper =
+            new TestSetup(
+                new TestSuite(FarragoPersistentStmtCacheTest.class)) {
+                private String originalPersist;
+
+                protected void setUp()
+                    throws Exception
+                {
+                    // restart the database with the persistent tier enabled
+                    forceShutdown();
+                    FarragoProperties props = FarragoProperties.instance();
+                    originalPersist =
+                        props.getProperty(props.persistCodeCache.getPath());
+                    props.persistCodeCache.set(true);
+                    staticSetUp();
+                }
+
+                protected void tearDown()
+                    throws Exception
+                {
+                    staticTearDown();
+                    forceShutdown();
+                    FarragoProperties props = FarragoProperties.instance();
+                    if (originalPersist != null) {
+                        props.setProperty(
+                            props.persistCodeCache.getPath(),
+                            originalPersist);
+                    } else {
+                        props.remove(props.persistCodeCache.getPath());
+                    }
+                }
+            };
+        return wrapper;
+    }
+
+    // implement TestCase
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+        cache = getDatabase().getPersistentCodeCache();
+        assertNotNull(cache);
+        stmt.execute("create schema pcache");
+        stmt.execute("create table pcache.t(i int not null primary key)");
+        stmt.executeUpdate("insert into pcache.t values (3), (1), (2)");
+        connection.commit();
+        cache.discardAll();
+    }
+
+    // implement TestCase
+    protected void tearDown()
+        throws Exception
+    {
+        try {
+            if (cache != null) {
+                cache.discardAll();
+            }
+            stmt.execute("drop schema pcache cascade");
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    /**
+     * Tests that a statement saved when it is prepared is loaded in place of
+     * being prepared again, and still returns the right rows.
+     */
+    public void testRoundTrip()
+        throws Exception
+    {
+        long stores = cache.getStoreCount();
+        long loads = cache.getLoadCount();
+        long misses = cache.getMissCount();
+        checkQuery();
+        assertEquals(misses + 1, cache.getMissCount());
+        assertEquals(stores + 1, cache.getStoreCount());
+        assertEquals(loads, cache.getLoadCount());
+        assertEquals(1, getSavedFiles().length);
+
+        checkQuery();
+        assertEquals(loads + 1, cache.getLoadCount());
+        assertEquals(stores + 1, cache.getStoreCount());
+    }
+
+    /**
+     * Tests that a saved statement is rejected, and prepared again, once a
+     * table it references has been modified since it was saved.
+     */
+    public void testStaleTimestamp()
+        throws Exception
+    {
+        checkQuery();
+
+        // updates the table's modification timestamp, and gives its index
+        // new roots, so the saved plan would read the wrong pages
+        stmt.execute("alter table pcache.t rebuild");
+
+        long stores = cache.getStoreCount();
+        long loads = cache.getLoadCount();
+        long rejects = cache.getRejectCount();
+        checkQuery();
+        assertEquals(rejects + 1, cache.getRejectCount());
+        assertEquals(loads, cache.getLoadCount());
+        assertEquals(stores + 1, cache.getStoreCount());
+
+        // the statement saved afresh is usable
+        checkQuery();
+        assertEquals(loads + 1, cache.getLoadCount());
+    }
+
+    /**
+     * Tests that a statement saved by another release is rejected.
+     */
+    public void testVersionMismatch()
+        throws Exception
+    {
+        checkQuery();
+
+        // change the format version which prefixes the product version
+        File file = getSavedFile();
+        byte [] bytes = readFile(file);
+        byte [] version =
+            (":" + FarragoReleaseProperties.instance().getVersionString())
+            .getBytes("UTF-8");
+        int pos = indexOf(bytes, version);
+        assertTrue("version not found in " + file, pos > 0);
+        byte digit = bytes[pos - 1];
+        assertTrue(Character.isDigit((char) digit));
+        bytes[pos - 1] = (byte) ((digit == '9') ? '0' : (digit + 1));
+        writeFile(file, bytes);
+
+        long stores = cache.getStoreCount();
+        long loads = cache.getLoadCount();
+        long rejects = cache.getRejectCount();
+        checkQuery();
+        assertEquals(rejects + 1, cache.getRejectCount());
+        assertEquals(loads, cache.getLoadCount());
+        assertEquals(stores + 1, cache.getStoreCount());
+    }
+
+    /**
+     * Tests that an unreadable saved statement is discarded, and the
+     * statement prepared as if none had been saved.
+     */
+    public void testCorruptFile()
+        throws Exception
+    {
+        checkQuery();
+        File file = getSavedFile();
+        writeFile(file, "not a saved statement".getBytes("UTF-8"));
+
+        long stores = cache.getStoreCount();
+        long loads = cache.getLoadCount();
+        long rejects = cache.getRejectCount();
+        checkQuery();
+        assertEquals(rejects + 1, cache.getRejectCount());
+        assertEquals(loads, cache.getLoadCount());
+        assertEquals(stores + 1, cache.getStoreCount());
+
+        // the corrupt file was replaced
+        checkQuery();
+        assertEquals(loads + 1, cache.getLoadCount());
+    }
+
+    /**
+     * Flushes the in-memory code cache, then runs the test query and checks
+     * its result.
+     */
+    private void checkQuery()
+        throws Exception
+    {
+        getDatabase().flushCodeCache();
+        resultSet = stmt.executeQuery(QUERY);
+        List<Integer> list = new ArrayList<Integer>();
+        while (resultSet.next()) {
+            list.add(resultSet.getInt(1));
+        }
+        resultSet.close();
+        resultSet = null;
+        assertEquals(Arrays.asList(1, 2, 3), list);
+    }
+
+    private static FarragoDatabase getDatabase()
+    {
+        return ((FarragoDbSession) getSession()).getDatabase();
+    }
+
+    private static File [] getSavedFiles()
+    {
+        File dir =
+            new File(FarragoProperties.instance().getCatalogDir(), "codeCache");
+        File [] files =
+            dir.listFiles(
+                new FilenameFilter() {
+                    public boolean accept(File dir, String name)
+                    {
+                        return name.endsWith(".stmt");
+                    }
+                });
+        assertNotNull(files);
+        return files;
+    }
+
+    /**
+     * Returns the file of the only statement saved since the test began,
+     * namely the test query.
+     */
+    private static File getSavedFile()
+    {
+        File [] files = getSavedFiles();
+        assertEquals(1, files.length);
+        return files[0];
+    }
+
+    private static byte [] readFile(File file)
+        throws IOException
+    {
+        byte [] bytes = new byte[(int) file.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(bytes);
+        } finally {
+            in.close();
+        }
+        return bytes;
+    }
+
+    private static void writeFile(File file, byte [] bytes)
+        throws IOException
+    {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static int indexOf(byte [] bytes, byte [] target)
+    {
+        outer:
+        for (int i = 0; i <= (bytes.length - target.length); ++i) {
+            for (int j = 0; j < target.length; ++j) {
+                if (bytes[i + j] != target[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
+
+// End FarragoPersistentStmtCacheTest.java
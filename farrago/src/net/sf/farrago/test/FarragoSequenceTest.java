@@ -0,0 +1,321 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.test;
+
+import java.sql.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import junit.framework.*;
+
+import net.sf.farrago.catalog.*;
+import net.sf.farrago.fem.med.*;
+import net.sf.farrago.fem.sql2003.*;
+
+
+/**
+ * FarragoSequenceTest checks that identity values generated by several
+ * threads at once are distinct, both through {@link FarragoSequenceAccessor}
+ * directly and through parallel inserts into a table with an identity
+ * column. {@link net.sf.farrago.test.regression.FarragoSequenceScalingTest}
+ * measures how generation scales with the number of threads.
+ *
+ * @version $Id$
+ */
+public class FarragoSequenceTest
+    extends FarragoTestCase
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final int CONCURRENT_THREAD_COUNT = 4;
+
+    private static final int CONCURRENT_VALUE_COUNT = 10000;
+
+    private static final int CONCURRENT_ROW_COUNT = 1000;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new FarragoSequenceTest object.
+     *
+     * @param testName JUnit test name
+     */
+    public FarragoSequenceTest(String testName)
+        throws Exception
+    {
+        super(testName);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    public static Test suite()
+    {
+        return wrappedSuite(FarragoSequenceTest.class);
+    }
+
+    // implement TestCase
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+        stmt.execute("create schema seq_test");
+        stmt.execute("set schema 'seq_test'");
+        stmt.execute(
+            "create function ramp(n int) returns table(i int) "
+            + "language java parameter style system defined java no sql "
+            + "external name 'class net.sf.farrago.test.FarragoTestUDR.ramp'");
+        stmt.execute(
+            "create table ids("
+            + "id bigint generated always as identity primary key, "
+            + "n int)");
+    }
+
+    // implement TestCase
+    protected void tearDown()
+        throws Exception
+    {
+        try {
+            stmt.execute("drop schema seq_test cascade");
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    /**
+     * Tests that a single inserting stream gets consecutive values, as it
+     * did when the accessor serialized all callers.
+     */
+    public void testSerialInsert()
+        throws Exception
+    {
+        stmt.executeUpdate(
+            "insert into ids(n) select i from table(ramp(2500))");
+        stmt.executeUpdate("insert into ids(n) values (-1)");
+        resultSet =
+            stmt.executeQuery(
+                "select count(*), min(id), max(id) from ids");
+        assertTrue(resultSet.next());
+        assertEquals(2501, resultSet.getLong(1));
+        assertEquals(0, resultSet.getLong(2));
+        assertEquals(2500, resultSet.getLong(3));
+        resultSet.close();
+        resultSet = null;
+    }
+
+    /**
+     * Calls {@link FarragoSequenceAccessor#getNext} from several threads at
+     * once, checking that no value is handed out twice.
+     */
+    public void testConcurrentAccessor()
+        throws Exception
+    {
+        runAccessors(CONCURRENT_THREAD_COUNT, CONCURRENT_VALUE_COUNT);
+    }
+
+    /**
+     * Inserts into a table with an identity column from several connections
+     * at once, checking that every row gets a distinct value.
+     */
+    public void testConcurrentInsert()
+        throws Exception
+    {
+        runInserts(CONCURRENT_THREAD_COUNT, CONCURRENT_ROW_COUNT);
+        assertDistinctIds(CONCURRENT_THREAD_COUNT * CONCURRENT_ROW_COUNT);
+    }
+
+    /**
+     * Calls {@link FarragoSequenceAccessor#getNext} for the identity column
+     * of the test table from several threads at once, and checks that no
+     * value is handed out twice.
+     *
+     * @param threadCount number of threads
+     * @param valuesPerThread number of values generated by each thread
+     *
+     * @return elapsed time in milliseconds
+     */
+    protected long runAccessors(int threadCount, final int valuesPerThread)
+        throws Exception
+    {
+        final FarragoSequenceAccessor accessor =
+            repos.getSequenceAccessor(getSequenceMofId());
+        final long [][] values = new long[threadCount][];
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int i = 0; i < threadCount; ++i) {
+            final int thread = i;
+            tasks.add(
+                new Callable<Void>() {
+                    public Void call()
+                    {
+                        long [] v = new long[valuesPerThread];
+                        repos.beginReposSession();
+                        try {
+                            for (int j = 0; j < v.length; ++j) {
+                                v[j] = accessor.getNext();
+                            }
+                        } finally {
+                            repos.endReposSession();
+                        }
+                        values[thread] = v;
+                        return null;
+                    }
+                });
+        }
+        long millis = runAll(tasks);
+        assertDistinct(values);
+        return millis;
+    }
+
+    /**
+     * Inserts into the test table from several connections at once.
+     *
+     * @param threadCount number of connections
+     * @param rowsPerThread number of rows inserted by each connection
+     *
+     * @return elapsed time in milliseconds
+     */
+    protected long runInserts(int threadCount, final int rowsPerThread)
+        throws Exception
+    {
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int i = 0; i < threadCount; ++i) {
+            tasks.add(
+                new Callable<Void>() {
+                    public Void call()
+                        throws Exception
+                    {
+                        insert(rowsPerThread);
+                        return null;
+                    }
+                });
+        }
+        return runAll(tasks);
+    }
+
+    /**
+     * Checks that the test table has a given number of rows, each with a
+     * distinct identity value.
+     *
+     * @param rowCount expected number of rows
+     */
+    protected void assertDistinctIds(long rowCount)
+        throws Exception
+    {
+        resultSet =
+            stmt.executeQuery(
+                "select count(*), count(distinct id) from ids");
+        assertTrue(resultSet.next());
+        assertEquals(rowCount, resultSet.getLong(1));
+        assertEquals(rowCount, resultSet.getLong(2));
+        resultSet.close();
+        resultSet = null;
+    }
+
+    private void insert(int rowCount)
+        throws Exception
+    {
+        Connection insertConnection = newConnection();
+        try {
+            Statement insertStmt = insertConnection.createStatement();
+            insertStmt.execute("set schema 'seq_test'");
+            assertEquals(
+                rowCount,
+                insertStmt.executeUpdate(
+                    "insert into ids(n) select i from table(ramp("
+                    + rowCount + "))"));
+            insertStmt.close();
+            if (!insertConnection.getAutoCommit()) {
+                insertConnection.commit();
+            }
+        } finally {
+            insertConnection.close();
+        }
+    }
+
+    /**
+     * Runs tasks on threads of their own, all starting together.
+     *
+     * @return elapsed time in milliseconds
+     */
+    private long runAll(List<Callable<Void>> tasks)
+        throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+        try {
+            long start = System.nanoTime();
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+            return (System.nanoTime() - start) / 1000000;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void assertDistinct(long [][] values)
+    {
+        int n = 0;
+        for (long [] v : values) {
+            n += v.length;
+        }
+        long [] all = new long[n];
+        n = 0;
+        for (long [] v : values) {
+            System.arraycopy(v, 0, all, n, v.length);
+            n += v.length;
+        }
+        Arrays.sort(all);
+        for (int i = 1; i < all.length; ++i) {
+            if (all[i] == all[i - 1]) {
+                fail("value " + all[i] + " generated twice");
+            }
+        }
+    }
+
+    private String getSequenceMofId()
+    {
+        repos.beginReposSession();
+        repos.beginReposTxn(false);
+        try {
+            FemLocalSchema schema =
+                FarragoCatalogUtil.getSchemaByName(
+                    repos.getSelfAsCatalog(),
+                    "SEQ_TEST");
+            FemLocalTable table =
+                FarragoCatalogUtil.getModelElementByNameAndType(
+                    schema.getOwnedElement(),
+                    "IDS",
+                    FemLocalTable.class);
+            FemStoredColumn column =
+                FarragoCatalogUtil.getModelElementByNameAndType(
+                    table.getFeature(),
+                    "ID",
+                    FemStoredColumn.class);
+            return column.getSequence().refMofId();
+        } finally {
+            repos.endReposTxn(false);
+            repos.endReposSession();
+        }
+    }
+}
+
+// End FarragoSequenceTest.java
@@ -21,8 +21,13 @@
 */
 package net.sf.farrago.test;
 
+import java.sql.*;
+
+import java.util.*;
+
 import net.sf.farrago.jdbc.*;
 import net.sf.farrago.jdbc.client.*;
+import net.sf.farrago.jdbc.engine.*;
 import net.sf.farrago.server.*;
 
 
@@ -36,6 +41,35 @@ import net.sf.farrago.server.*;
 public class FarragoVjdbcServerTest
     extends FarragoServerTest
 {
+    //~ Static fields/initializers ---------------------------------------------
+
+    public static final int EXTRACT_ROW_COUNT = 50000;
+
+    // covers each columnar encoding, with and without nulls
+    public static final String EXTRACT_QUERY =
+        "select i, "
+        + "case when mod(i, 7) = 0 then null "
+        + "else cast(i as bigint) * 1000 end, "
+        + "cast(mod(i, 100) as smallint), "
+        + "case when mod(i, 11) = 0 then null "
+        + "else cast(i as double) / 3 end, "
+        + "cast(i as real) / 7, "
+        + "case when mod(i, 5) = 0 then null else mod(i, 2) = 0 end, "
+        + "'row ' || cast(i as varchar(10)), "
+        + "case when mod(i, 13) = 0 then null "
+        + "else cast(mod(i, 10) as varchar(10)) end, "
+        + "cast(i as decimal(10, 2)) / 4, "
+        + "date '2000-01-01', "
+        + "timestamp '2000-01-01 12:34:56', "
+        + "x'CAFE' "
+        + "from table(vjdbc_fetch.ramp(" + EXTRACT_ROW_COUNT + "))";
+
+    // columns of EXTRACT_QUERY which the columnar result set reads as longs
+    private static final int [] INTEGRAL_COLUMNS = { 1, 2, 3 };
+
+    // columns of EXTRACT_QUERY which can be read as doubles
+    private static final int [] NUMERIC_COLUMNS = { 1, 2, 3, 4, 5, 9 };
+
     //~ Constructors -----------------------------------------------------------
 
     /**
@@ -74,6 +108,203 @@ public class FarragoVjdbcServerTest
         // Bascially this is a bad method name since either it returns the
         // original exception or creates a whole new one and discards the old.
     }
+
+    /**
+     * Tests that a query fetched in columnar batches returns the same rows as
+     * the same query fetched in VJDBC row packets, both through getObject and
+     * through the typed getters, and that closing a statement part way
+     * through a columnar result leaves the connection usable.
+     */
+    public void testColumnarFetch()
+        throws Exception
+    {
+        if (isJRockit()) {
+            return;
+        }
+
+        FarragoAbstractServer server = newServer();
+        server.start(new FarragoJdbcEngineDriver());
+        try {
+            Connection rowConnection = connect(false);
+            Connection columnarConnection = connect(true);
+            try {
+                createRamp(rowConnection);
+                String expected = extract(rowConnection, false);
+                assertEquals(expected, extract(columnarConnection, true));
+                checkTypedGetters(rowConnection, columnarConnection);
+
+                Statement stmt = columnarConnection.createStatement();
+                ResultSet resultSet = stmt.executeQuery(EXTRACT_QUERY);
+                for (int i = 0; i < (EXTRACT_ROW_COUNT / 2); ++i) {
+                    assertTrue(resultSet.next());
+                }
+                stmt.close();
+                assertEquals(expected, extract(columnarConnection, true));
+            } finally {
+                try {
+                    rowConnection.createStatement().execute(
+                        "drop schema vjdbc_fetch cascade");
+                } finally {
+                    rowConnection.close();
+                    columnarConnection.close();
+                }
+            }
+        } finally {
+            server.stopHard();
+        }
+    }
+
+    private Connection connect(boolean columnar)
+        throws SQLException
+    {
+        // NOTE: can't call DriverManager.getConnection here, because that
+        // would deadlock
+        FarragoAbstractJdbcDriver clientDriver = newClientDriver();
+        Properties props = new Properties();
+        props.setProperty("user", "sa");
+        if (columnar) {
+            props.setProperty(
+                FarragoVjdbcColumnarProxyFactory.PROP_COLUMNAR_FETCH,
+                "true");
+        }
+        return clientDriver.connect(
+            clientDriver.getUrlPrefix() + "localhost",
+            props);
+    }
+
+    /**
+     * Creates the schema and ramp function used by {@link #EXTRACT_QUERY}.
+     */
+    public static void createRamp(Connection connection)
+        throws SQLException
+    {
+        Statement stmt = connection.createStatement();
+        try {
+            stmt.execute("create schema vjdbc_fetch");
+            stmt.execute(
+                "create function vjdbc_fetch.ramp(n int) "
+                + "returns table(i int) "
+                + "language java parameter style system defined java no sql "
+                + "external name "
+                + "'class net.sf.farrago.test.FarragoTestUDR.ramp'");
+        } finally {
+            stmt.close();
+        }
+    }
+
+    /**
+     * Reads every value of {@link #EXTRACT_QUERY}.
+     *
+     * @param connection connection to read through
+     * @param columnar whether the connection fetches columnar batches
+     *
+     * @return digest of the values read
+     */
+    public static String extract(Connection connection, boolean columnar)
+        throws SQLException
+    {
+        Statement stmt = connection.createStatement();
+        try {
+            ResultSet resultSet = stmt.executeQuery(EXTRACT_QUERY);
+            assertEquals(
+                columnar,
+                resultSet instanceof FarragoVjdbcColumnarResultSet);
+            int columnCount = resultSet.getMetaData().getColumnCount();
+            int rowCount = 0;
+            long hash = 0;
+            StringBuffer firstRows = new StringBuffer();
+            while (resultSet.next()) {
+                for (int i = 1; i <= columnCount; ++i) {
+                    Object value = resultSet.getObject(i);
+                    String s =
+                        (value instanceof byte [])
+                        ? Arrays.toString((byte []) value)
+                        : String.valueOf(value);
+                    hash = (hash * 31) + s.hashCode();
+                    if (rowCount < 20) {
+                        firstRows.append(s).append(';');
+                    }
+                }
+                ++rowCount;
+            }
+            return rowCount + " rows, hash " + hash + ": " + firstRows;
+        } finally {
+            stmt.close();
+        }
+    }
+
+    /**
+     * Reads {@link #EXTRACT_QUERY} through a connection fetching row packets
+     * and one fetching columnar batches at once, checking that getInt,
+     * getLong, getDouble and wasNull return the same on both. The columnar
+     * result set answers these from its batches without building the values
+     * getObject returns.
+     */
+    private void checkTypedGetters(
+        Connection rowConnection,
+        Connection columnarConnection)
+        throws SQLException
+    {
+        Statement rowStmt = rowConnection.createStatement();
+        Statement columnarStmt = columnarConnection.createStatement();
+        try {
+            ResultSet rowResultSet = rowStmt.executeQuery(EXTRACT_QUERY);
+            ResultSet columnarResultSet =
+                columnarStmt.executeQuery(EXTRACT_QUERY);
+            assertTrue(
+                columnarResultSet instanceof FarragoVjdbcColumnarResultSet);
+            int rowCount = 0;
+            int nullCount = 0;
+            while (rowResultSet.next()) {
+                assertTrue(columnarResultSet.next());
+                for (int i : INTEGRAL_COLUMNS) {
+                    String where = "row " + rowCount + ", column " + i;
+                    assertEquals(
+                        where,
+                        rowResultSet.getInt(i),
+                        columnarResultSet.getInt(i));
+                    assertEquals(
+                        where,
+                        rowResultSet.wasNull(),
+                        columnarResultSet.wasNull());
+                    assertEquals(
+                        where,
+                        rowResultSet.getLong(i),
+                        columnarResultSet.getLong(i));
+                    assertEquals(
+                        where,
+                        rowResultSet.wasNull(),
+                        columnarResultSet.wasNull());
+                }
+                for (int i : NUMERIC_COLUMNS) {
+                    String where = "row " + rowCount + ", column " + i;
+                    assertEquals(
+                        where,
+                        rowResultSet.getDouble(i),
+                        columnarResultSet.getDouble(i),
+                        0);
+                    assertEquals(
+                        where,
+                        rowResultSet.wasNull(),
+                        columnarResultSet.wasNull());
+                    if (columnarResultSet.wasNull()) {
+                        ++nullCount;
+                    }
+                }
+                ++rowCount;
+            }
+            assertFalse(columnarResultSet.next());
+            assertEquals(EXTRACT_ROW_COUNT, rowCount);
+
+            // columns 2 and 4 are null every 7th and 11th row
+            assertEquals(
+                (EXTRACT_ROW_COUNT + 6) / 7 + (EXTRACT_ROW_COUNT + 10) / 11,
+                nullCount);
+        } finally {
+            rowStmt.close();
+            columnarStmt.close();
+        }
+    }
 }
 
 // End FarragoVjdbcServerTest.java
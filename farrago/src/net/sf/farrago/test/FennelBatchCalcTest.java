@@ -0,0 +1,263 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.test;
+
+import java.sql.*;
+
+import java.util.*;
+
+import junit.framework.*;
+
+import net.sf.farrago.util.*;
+
+
+/**
+ * FennelBatchCalcTest checks that the Fennel calculator gives the same
+ * results, and raises the same errors, when it evaluates programs over
+ * batches of rows (see {@link net.sf.farrago.fennel.calc.BatchCalcTranslator})
+ * as when it evaluates them row by row. {@link
+ * net.sf.farrago.test.regression.FennelBatchCalcBenchmarkTest} measures the
+ * difference in speed.
+ *
+ * @version $Id$
+ */
+public class FennelBatchCalcTest
+    extends FarragoTestCase
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    protected static final int ROW_COUNT = 50000;
+
+    /**
+     * Queries over the test table, each with a different mix of filters,
+     * arithmetic and CASE expressions.
+     */
+    protected static final String [] QUERIES =
+    {
+        // filter only
+        "select id from batchcalc.t where i > 20000 and s < 0",
+
+        // filter with nulls and three-valued logic
+        "select id, f from batchcalc.t "
+        + "where (r > 1000 or f) and not (i between 100 and 200)",
+
+        // arithmetic projections over a filter
+        "select id, i * 3 - s, b + i, d * 2.5e0 + r, -i from batchcalc.t "
+        + "where d < 10000 or i is null",
+
+        // searched CASE
+        "select id, case when i < 1000 then 1 "
+        + "when i < 10000 then 2 else 3 end, "
+        + "case when f is true then d when f is false then -d end "
+        + "from batchcalc.t",
+
+        // CASE and casts in the condition
+        "select v, id from batchcalc.t "
+        + "where case when s > 0 then cast(s as bigint) * b else i end > 5000",
+
+        // operator without a batch implementation: scalar program only
+        "select id, i / 7 from batchcalc.t where i / 7 > 10",
+    };
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new FennelBatchCalcTest object.
+     *
+     * @param testName JUnit test name
+     */
+    public FennelBatchCalcTest(String testName)
+        throws Exception
+    {
+        super(testName);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    public static Test suite()
+    {
+        return wrappedSuite(FennelBatchCalcTest.class);
+    }
+
+    // implement TestCase
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+        stmt.execute(
+            "alter system set \"calcVirtualMachine\" = 'CALCVM_FENNEL'");
+        stmt.execute("create schema batchcalc");
+        stmt.execute(
+            "create function batchcalc.ramp(n int) returns table(i int) "
+            + "language java parameter style system defined java no sql "
+            + "external name 'class net.sf.farrago.test.FarragoTestUDR.ramp'");
+        stmt.execute(
+            "create table batchcalc.t("
+            + "id int not null primary key, "
+            + "i int, "
+            + "s smallint, "
+            + "b bigint, "
+            + "r real, "
+            + "d double, "
+            + "f boolean, "
+            + "v varchar(20))");
+        stmt.execute(
+            "insert into batchcalc.t "
+            + "select i, "
+            + "case when mod(i, 11) = 0 then null else i end, "
+            + "cast(mod(i, 30000) - 15000 as smallint), "
+            + "cast(i as bigint) * 3, "
+            + "cast(i as real) / 4, "
+            + "case when mod(i, 13) = 0 then null "
+            + "else cast(i as double) / 3 end, "
+            + "case when mod(i, 5) = 0 then null else mod(i, 2) = 0 end, "
+            + "'row ' || cast(i as varchar(10)) "
+            + "from table(batchcalc.ramp(" + ROW_COUNT + "))");
+    }
+
+    // implement TestCase
+    protected void tearDown()
+        throws Exception
+    {
+        try {
+            stmt.execute("drop schema batchcalc cascade");
+            stmt.execute(
+                "alter system set \"calcVirtualMachine\" = 'CALCVM_AUTO'");
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    /**
+     * Tests that each query returns the same rows with and without batch
+     * evaluation.
+     */
+    public void testResults()
+        throws Exception
+    {
+        for (String query : QUERIES) {
+            List<String> scalar = readAll(query, false);
+            List<String> batch = readAll(query, true);
+            assertEquals(query, scalar, batch);
+        }
+    }
+
+    /**
+     * Tests that rows which overflow in the batch are handed to the scalar
+     * calculator, which raises the usual error.
+     */
+    public void testOverflow()
+        throws Exception
+    {
+        String query = "select i * 100000 from batchcalc.t";
+        String scalarError = readError(query, false);
+        String batchError = readError(query, true);
+        assertNotNull(scalarError);
+        assertEquals(scalarError, batchError);
+
+        // only the rows which overflow go to the scalar calculator
+        query =
+            "select id, case when i < 20000 then i * 100000 end "
+            + "from batchcalc.t where i < 20000 or i is null";
+        assertEquals(readAll(query, false), readAll(query, true));
+    }
+
+    private List<String> readAll(String query, boolean batch)
+        throws Exception
+    {
+        boolean saved = setBatchCalc(batch);
+        try {
+            List<String> rows = new ArrayList<String>();
+            resultSet = stmt.executeQuery(query);
+            int n = resultSet.getMetaData().getColumnCount();
+            while (resultSet.next()) {
+                StringBuilder sb = new StringBuilder();
+                for (int i = 1; i <= n; ++i) {
+                    sb.append(resultSet.getString(i)).append(',');
+                }
+                rows.add(sb.toString());
+            }
+            resultSet.close();
+            resultSet = null;
+            Collections.sort(rows);
+            return rows;
+        } finally {
+            setBatchCalc(saved);
+        }
+    }
+
+    private String readError(String query, boolean batch)
+        throws Exception
+    {
+        boolean saved = setBatchCalc(batch);
+        try {
+            resultSet = stmt.executeQuery(query);
+            while (resultSet.next()) {
+                // the error is raised by the fetch which reaches the row
+            }
+            return null;
+        } catch (SQLException ex) {
+            return ex.getMessage();
+        } finally {
+            if (resultSet != null) {
+                resultSet.close();
+                resultSet = null;
+            }
+            setBatchCalc(saved);
+        }
+    }
+
+    /**
+     * Executes a query and reads all of its rows.
+     *
+     * @return number of rows
+     */
+    protected int countRows(String query)
+        throws Exception
+    {
+        resultSet = stmt.executeQuery(query);
+        int n = 0;
+        while (resultSet.next()) {
+            ++n;
+        }
+        resultSet.close();
+        resultSet = null;
+        return n;
+    }
+
+    /**
+     * Switches batch evaluation on or off. Since the choice is made when a
+     * statement is prepared, the code cache is flushed so that statements
+     * are prepared again.
+     */
+    protected boolean setBatchCalc(boolean batch)
+        throws Exception
+    {
+        boolean saved = FarragoProperties.instance().fennelBatchCalc.set(batch);
+        if (saved != batch) {
+            stmt.execute("call sys_boot.mgmt.flush_code_cache()");
+        }
+        return saved;
+    }
+}
+
+// End FennelBatchCalcTest.java
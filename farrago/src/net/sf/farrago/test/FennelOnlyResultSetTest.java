@@ -0,0 +1,287 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.test;
+
+import java.util.*;
+
+import junit.framework.*;
+
+import net.sf.farrago.fennel.*;
+import net.sf.farrago.runtime.*;
+import net.sf.farrago.util.*;
+
+
+/**
+ * FennelOnlyResultSetTest tests fetching the results of pure Fennel statements
+ * through {@link FennelOnlyResultSet}, with rows read in place from direct
+ * buffers and with rows unmarshalled into Java objects. {@link
+ * net.sf.farrago.test.regression.FennelOnlyResultSetBenchmarkTest} compares
+ * the throughput of the two.
+ *
+ * @version $Id$
+ */
+public class FennelOnlyResultSetTest
+    extends FarragoTestCase
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    protected static final int ROW_COUNT = 20000;
+
+    private static final String WIDE_QUERY =
+        "select * from directfetch.wide order by id";
+
+    //~ Instance fields --------------------------------------------------------
+
+    /**
+     * Number of bytes of column data read by {@link #extract} since this was
+     * last reset
+     */
+    protected long extractedByteCount;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new FennelOnlyResultSetTest object.
+     *
+     * @param testName JUnit test name
+     */
+    public FennelOnlyResultSetTest(String testName)
+        throws Exception
+    {
+        super(testName);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    public static Test suite()
+    {
+        return wrappedSuite(FennelOnlyResultSetTest.class);
+    }
+
+    // implement TestCase
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+        stmt.execute("create schema directfetch");
+        stmt.execute(
+            "create function directfetch.ramp(n int) returns table(i int) "
+            + "language java parameter style system defined java no sql "
+            + "external name 'class net.sf.farrago.test.FarragoTestUDR.ramp'");
+        stmt.execute(
+            "create table directfetch.wide("
+            + "id int not null primary key, "
+            + "t tinyint, "
+            + "s smallint, "
+            + "b bigint, "
+            + "r real, "
+            + "d double, "
+            + "f boolean, "
+            + "vb varbinary(8), "
+            + "v varchar(20))");
+        stmt.execute(
+            "insert into directfetch.wide "
+            + "select i, "
+            + "cast(mod(i, 100) - 50 as tinyint), "
+            + "cast(mod(i, 30000) - 15000 as smallint), "
+            + "cast(i as bigint) * 1000000007, "
+            + "case when mod(i, 7) = 0 then null "
+            + "else cast(i as real) / 4 end, "
+            + "cast(i as double) / 3, "
+            + "case when mod(i, 5) = 0 then null else mod(i, 2) = 0 end, "
+            + "case when mod(i, 3) = 0 then x'0102' else x'ff' end, "
+            + "'row ' || cast(i as varchar(10)) "
+            + "from table(directfetch.ramp(" + ROW_COUNT + "))");
+    }
+
+    // implement TestCase
+    protected void tearDown()
+        throws Exception
+    {
+        try {
+            stmt.execute("drop schema directfetch cascade");
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    /**
+     * Tests that every getter returns the same values, and sets wasNull the
+     * same way, whether rows are read in place or unmarshalled.
+     */
+    public void testGetters()
+        throws Exception
+    {
+        List<String> direct = readAll(true);
+        List<String> copied = readAll(false);
+        assertEquals(ROW_COUNT, direct.size());
+        assertEquals(copied, direct);
+    }
+
+    /**
+     * Tests that fetch buffers are reused from one cursor to the next.
+     */
+    public void testBufferPool()
+        throws Exception
+    {
+        FennelDirectBufferPool pool = FennelDirectBufferPool.instance();
+        countRows(true);
+        int allocationCount = pool.getAllocationCount();
+        countRows(true);
+        countRows(true);
+        assertEquals(allocationCount, pool.getAllocationCount());
+    }
+
+    /**
+     * Tests that the typed getters suited to each column's type read the
+     * same values in place as from unmarshalled rows.
+     */
+    public void testExtract()
+        throws Exception
+    {
+        extractedByteCount = 0;
+        long copied = extract(false);
+        long copiedByteCount = extractedByteCount;
+        extractedByteCount = 0;
+        assertEquals(copied, extract(true));
+        assertEquals(copiedByteCount, extractedByteCount);
+    }
+
+    private List<String> readAll(boolean direct)
+        throws Exception
+    {
+        boolean saved = setDirectFetch(direct);
+        try {
+            List<String> rows = new ArrayList<String>();
+            resultSet = stmt.executeQuery(WIDE_QUERY);
+            int n = resultSet.getMetaData().getColumnCount();
+            while (resultSet.next()) {
+                StringBuilder sb = new StringBuilder();
+                for (int i = 1; i <= n; ++i) {
+                    Object obj = resultSet.getObject(i);
+                    if (obj instanceof byte []) {
+                        obj = toHex((byte []) obj);
+                    }
+                    sb.append(obj).append(',');
+                    sb.append(resultSet.wasNull()).append(',');
+                    if (i < 8) {
+                        sb.append(resultSet.getByte(i)).append(',');
+                        sb.append(resultSet.getShort(i)).append(',');
+                        sb.append(resultSet.getInt(i)).append(',');
+                        sb.append(resultSet.getLong(i)).append(',');
+                        sb.append(resultSet.getFloat(i)).append(',');
+                        sb.append(resultSet.getDouble(i)).append(',');
+                        sb.append(resultSet.getBoolean(i)).append(',');
+                        sb.append(resultSet.wasNull()).append(',');
+                    } else if (i == 8) {
+                        sb.append(toHex(resultSet.getBytes(i))).append(',');
+                        sb.append(resultSet.wasNull()).append(',');
+                        sb.append(resultSet.getString(i)).append(',');
+                    } else {
+                        sb.append(resultSet.getString(i)).append(',');
+                    }
+                }
+                rows.add(sb.toString());
+            }
+            resultSet.close();
+            resultSet = null;
+            return rows;
+        } finally {
+            setDirectFetch(saved);
+        }
+    }
+
+    private int countRows(boolean direct)
+        throws Exception
+    {
+        boolean saved = setDirectFetch(direct);
+        try {
+            resultSet = stmt.executeQuery(WIDE_QUERY);
+            int n = 0;
+            while (resultSet.next()) {
+                ++n;
+            }
+            resultSet.close();
+            resultSet = null;
+            return n;
+        } finally {
+            setDirectFetch(saved);
+        }
+    }
+
+    /**
+     * Reads every column of every row with the getter suited to its type,
+     * adding the number of bytes of column data read to {@link
+     * #extractedByteCount}.
+     *
+     * @param direct whether rows are read in place
+     *
+     * @return checksum of the values read
+     */
+    protected long extract(boolean direct)
+        throws Exception
+    {
+        boolean saved = setDirectFetch(direct);
+        try {
+            long checksum = 0;
+            resultSet = stmt.executeQuery(WIDE_QUERY);
+            while (resultSet.next()) {
+                checksum += resultSet.getInt(1);
+                checksum += resultSet.getByte(2);
+                checksum += resultSet.getShort(3);
+                checksum += resultSet.getLong(4);
+                checksum += (long) resultSet.getFloat(5);
+                checksum += (long) resultSet.getDouble(6);
+                checksum += resultSet.getBoolean(7) ? 1 : 0;
+                byte [] bytes = resultSet.getBytes(8);
+                checksum += bytes[0];
+                extractedByteCount +=
+                    4 + 1 + 2 + 8 + 4 + 8 + 1 + bytes.length;
+            }
+            resultSet.close();
+            resultSet = null;
+            assertTrue(checksum != 0);
+            return checksum;
+        } finally {
+            setDirectFetch(saved);
+        }
+    }
+
+    private boolean setDirectFetch(boolean direct)
+    {
+        return FarragoProperties.instance().fennelDirectFetch.set(direct);
+    }
+
+    private static String toHex(byte [] bytes)
+    {
+        if (bytes == null) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(Integer.toHexString(b & 0xFF)).append(' ');
+        }
+        return sb.toString();
+    }
+}
+
+// End FennelOnlyResultSetTest.java
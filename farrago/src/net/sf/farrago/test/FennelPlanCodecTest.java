@@ -0,0 +1,297 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.test;
+
+import java.util.*;
+
+import junit.framework.*;
+
+import net.sf.farrago.db.*;
+import net.sf.farrago.fem.fennel.*;
+import net.sf.farrago.fennel.*;
+import net.sf.farrago.fennel.rel.*;
+import net.sf.farrago.fennel.tuple.*;
+import net.sf.farrago.util.*;
+
+import org.eigenbase.jmi.*;
+
+
+/**
+ * FennelPlanCodecTest tests {@link FennelPlanCodec}, and statement
+ * preparation and execution with binary and XMI stream graph plans. {@link
+ * net.sf.farrago.test.regression.FennelPlanCodecBenchmarkTest} compares
+ * their latency.
+ *
+ * @version $Id$
+ */
+public class FennelPlanCodecTest
+    extends FarragoTestCase
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * A point lookup against an FTRS table, for which plan transfer is a
+     * significant part of the total cost when nothing is cached.
+     */
+    private static final String LOOKUP_QUERY =
+        "select name from sales.emps where empno = 110";
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new FennelPlanCodecTest object.
+     *
+     * @param testName JUnit test name
+     */
+    public FennelPlanCodecTest(String testName)
+        throws Exception
+    {
+        super(testName);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    public static Test suite()
+    {
+        return wrappedSuite(FennelPlanCodecTest.class);
+    }
+
+    /**
+     * Tests that a small stream graph survives a round trip, including
+     * class-valued attributes and ordered references.
+     */
+    public void testRoundTrip()
+    {
+        repos.beginReposSession();
+        try {
+            FemMockTupleStreamDef producer1 = newMockStreamDef("P1", 10L);
+            FemMockTupleStreamDef producer2 = newMockStreamDef("P2", 20L);
+            FemMergeStreamDef consumer = repos.newFemMergeStreamDef();
+            consumer.setName("C");
+            consumer.setSequential(true);
+            addDataFlow(producer1, consumer, false);
+            addDataFlow(producer2, consumer, true);
+
+            FemCmdPrepareExecutionStreamGraph cmd =
+                repos.newFemCmdPrepareExecutionStreamGraph();
+            cmd.setDegreeOfParallelism(3);
+            cmd.getStreamDefs().add(consumer);
+            cmd.getStreamDefs().add(producer1);
+            cmd.getStreamDefs().add(producer2);
+
+            FennelPlanCodec codec =
+                new FennelPlanCodec(repos.getFennelPackage());
+            String encoding = codec.encode(cmd);
+            assertTrue(FennelPlanCodec.isEncoded(encoding));
+            String xmi =
+                JmiObjUtil.exportToXmiString(Collections.singleton(cmd));
+            assertFalse(FennelPlanCodec.isEncoded(xmi));
+            assertTrue(encoding.length() < xmi.length());
+
+            // the recorded XMI length, on which memory estimates are based,
+            // need only be close
+            long xmiLength = FennelPlanCodec.getXmiLength(encoding);
+            assertTrue(
+                "estimated " + xmiLength + ", actual " + xmi.length(),
+                (xmiLength > (xmi.length() / 2))
+                && (xmiLength < (xmi.length() * 2)));
+
+            FemCmdPrepareExecutionStreamGraph decoded =
+                (FemCmdPrepareExecutionStreamGraph) codec.decode(encoding);
+            assertNotSame(cmd, decoded);
+            assertEquals(3, decoded.getDegreeOfParallelism());
+            assertEquals(3, decoded.getStreamDefs().size());
+
+            FemMergeStreamDef decodedConsumer = null;
+            for (FemExecutionStreamDef streamDef : decoded.getStreamDefs()) {
+                if (streamDef.getName().equals("C")) {
+                    decodedConsumer = (FemMergeStreamDef) streamDef;
+                }
+            }
+            assertNotNull(decodedConsumer);
+            assertTrue(decodedConsumer.isSequential());
+
+            List<FemExecStreamDataFlow> inputFlows =
+                decodedConsumer.getInputFlow();
+            assertEquals(2, inputFlows.size());
+            checkProducer(inputFlows.get(0), "P1", 10L, false);
+            checkProducer(inputFlows.get(1), "P2", 20L, true);
+            assertSame(decodedConsumer, inputFlows.get(0).getConsumer());
+
+            // re-encoding the copy must give the same result
+            assertEquals(encoding, codec.encode(decoded));
+        } finally {
+            repos.endReposSession();
+        }
+    }
+
+    /**
+     * Tests that tuple accessors obtained through the accessor cache are the
+     * same as those computed by Fennel.
+     */
+    public void testTupleAccessorCache()
+    {
+        FennelDbHandle fennelDbHandle = getFennelDbHandle();
+        if (fennelDbHandle == null) {
+            return;
+        }
+        repos.beginReposSession();
+        try {
+            FemTupleDescriptor tupleDesc = repos.newFemTupleDescriptor();
+            addAttr(tupleDesc, FennelStandardTypeDescriptor.INT_64, true, 8);
+            addAttr(
+                tupleDesc,
+                FennelStandardTypeDescriptor.VARCHAR,
+                true,
+                100);
+            addAttr(tupleDesc, FennelStandardTypeDescriptor.BOOL, false, 1);
+
+            FemTupleAccessor accessor1 =
+                FennelRelUtil.getAccessorForTupleDescriptor(
+                    repos,
+                    fennelDbHandle,
+                    tupleDesc);
+            FemTupleAccessor accessor2 =
+                FennelRelUtil.getAccessorForTupleDescriptor(
+                    repos,
+                    fennelDbHandle,
+                    tupleDesc);
+            assertNotSame(accessor1, accessor2);
+            assertEquals(3, accessor2.getAttrAccessor().size());
+
+            FennelPlanCodec codec = fennelDbHandle.getPlanCodec(repos);
+            assertEquals(codec.encode(accessor1), codec.encode(accessor2));
+        } finally {
+            repos.endReposSession();
+        }
+    }
+
+    /**
+     * Tests that a query gives the same results with binary and XMI plans.
+     */
+    public void testXmiPlans()
+        throws Exception
+    {
+        List<String> binaryResult = runLookup(false);
+        List<String> xmiResult = runLookup(true);
+        assertEquals(1, binaryResult.size());
+        assertEquals(binaryResult, xmiResult);
+    }
+
+    /**
+     * Prepares and executes a point lookup with an empty code cache.
+     *
+     * @param xmi whether the stream graph plan is sent to Fennel as XMI
+     *
+     * @return names returned by the lookup
+     */
+    protected List<String> runLookup(boolean xmi)
+        throws Exception
+    {
+        FarragoProperties props = FarragoProperties.instance();
+        boolean saved = props.xmiFennelPlans.set(xmi);
+        try {
+            // empty the code cache so that the statement has to be prepared
+            // from scratch
+            FarragoObjectCache codeCache =
+                ((FarragoDbSession) getSession()).getDatabase().getCodeCache();
+            long savedBytesMax = codeCache.getBytesMax();
+            codeCache.setMaxBytes(0);
+            codeCache.setMaxBytes(savedBytesMax);
+
+            List<String> result = new ArrayList<String>();
+            resultSet = stmt.executeQuery(LOOKUP_QUERY);
+            while (resultSet.next()) {
+                result.add(resultSet.getString(1));
+            }
+            resultSet.close();
+            resultSet = null;
+            return result;
+        } finally {
+            props.xmiFennelPlans.set(saved);
+        }
+    }
+
+    private FennelDbHandle getFennelDbHandle()
+    {
+        return ((FarragoDbSession) getSession()).getDatabase()
+            .getFennelDbHandle();
+    }
+
+    private FemMockTupleStreamDef newMockStreamDef(String name, long rowCount)
+    {
+        FemMockTupleStreamDef streamDef = repos.newFemMockTupleStreamDef();
+        streamDef.setName(name);
+        streamDef.setRowCount(rowCount);
+        FemTupleDescriptor tupleDesc = repos.newFemTupleDescriptor();
+        addAttr(tupleDesc, FennelStandardTypeDescriptor.INT_32, false, 4);
+        streamDef.setOutputDesc(tupleDesc);
+        return streamDef;
+    }
+
+    private void addDataFlow(
+        FemExecutionStreamDef producer,
+        FemExecutionStreamDef consumer,
+        boolean implicit)
+    {
+        FemExecStreamDataFlow flow = repos.newFemExecStreamDataFlow();
+        flow.setImplicit(implicit);
+        producer.getOutputFlow().add(flow);
+        consumer.getInputFlow().add(flow);
+    }
+
+    private void addAttr(
+        FemTupleDescriptor tupleDesc,
+        FennelStandardTypeDescriptor type,
+        boolean isNullable,
+        int byteLength)
+    {
+        FemTupleAttrDescriptor attrDesc = repos.newFemTupleAttrDescriptor();
+        attrDesc.setTypeOrdinal(type.getOrdinal());
+        attrDesc.setNullable(isNullable);
+        attrDesc.setByteLength(byteLength);
+        tupleDesc.getAttrDescriptor().add(attrDesc);
+    }
+
+    private void checkProducer(
+        FemExecStreamDataFlow flow,
+        String name,
+        long rowCount,
+        boolean implicit)
+    {
+        assertEquals(implicit, flow.isImplicit());
+        FemMockTupleStreamDef producer =
+            (FemMockTupleStreamDef) flow.getProducer();
+        assertEquals(name, producer.getName());
+        assertEquals(rowCount, producer.getRowCount());
+        assertEquals(1, producer.getOutputFlow().size());
+        FemTupleDescriptor tupleDesc = producer.getOutputDesc();
+        assertEquals(1, tupleDesc.getAttrDescriptor().size());
+        FemTupleAttrDescriptor attrDesc = tupleDesc.getAttrDescriptor().get(0);
+        assertEquals(
+            FennelStandardTypeDescriptor.INT_32_ORDINAL,
+            attrDesc.getTypeOrdinal());
+        assertEquals(4, attrDesc.getByteLength());
+    }
+}
+
+// End FennelPlanCodecTest.java
@@ -0,0 +1,94 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.test.regression;
+
+import junit.framework.*;
+
+import net.sf.farrago.test.*;
+
+
+/**
+ * FarragoFlatFileParallelBenchmarkTest scans the quoted file of {@link
+ * FarragoFlatFileParallelTest} sequentially and with four threads, and
+ * traces how long each scan takes once the file is in the operating system's
+ * cache.
+ *
+ * @version $Id$
+ */
+public class FarragoFlatFileParallelBenchmarkTest
+    extends FarragoFlatFileParallelTest
+{
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new FarragoFlatFileParallelBenchmarkTest object.
+     *
+     * @param testName JUnit test name
+     */
+    public FarragoFlatFileParallelBenchmarkTest(String testName)
+        throws Exception
+    {
+        super(testName);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    public static Test suite()
+        throws Exception
+    {
+        // only the test declared here, not those inherited
+        TestSuite suite = new TestSuite();
+        suite.addTest(
+            new FarragoFlatFileParallelBenchmarkTest("testBenchmark"));
+        return wrappedSuite(suite);
+    }
+
+    public void testBenchmark()
+        throws Exception
+    {
+        long sequentialMillis = timeScan("sequential_quoted");
+        long parallelMillis = timeScan("parallel_quoted");
+        tracer.info(
+            "flat file scan: sequential " + sequentialMillis
+            + " ms, parallel " + parallelMillis + " ms for " + ROW_COUNT
+            + " rows");
+    }
+
+    /**
+     * Scans a table once to bring its file into the cache, then times a
+     * second scan.
+     *
+     * @param table name of the table
+     *
+     * @return elapsed time of the second scan, in milliseconds
+     */
+    private long timeScan(String table)
+        throws Exception
+    {
+        queryRow(table);
+        long start = System.nanoTime();
+        queryRow(table);
+        return (System.nanoTime() - start) / 1000000;
+    }
+}
+
+// End FarragoFlatFileParallelBenchmarkTest.java
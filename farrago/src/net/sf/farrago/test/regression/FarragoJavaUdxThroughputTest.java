@@ -0,0 +1,85 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.test.regression;
+
+import junit.framework.*;
+
+import net.sf.farrago.runtime.*;
+import net.sf.farrago.test.*;
+
+
+/**
+ * FarragoJavaUdxThroughputTest times a Java UDX producing a million rows,
+ * queued by {@link FarragoJavaUdxIterator} one at a time and in batches of
+ * 128. The times go to the test trace for comparison by hand; correctness of
+ * both modes is covered by {@link FarragoJavaUdxIteratorTest}.
+ *
+ * @version $Id$
+ */
+public class FarragoJavaUdxThroughputTest
+    extends FarragoJavaUdxIteratorTest
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final int BENCHMARK_ROWS = 1000000;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new FarragoJavaUdxThroughputTest object.
+     *
+     * @param testName JUnit test name
+     */
+    public FarragoJavaUdxThroughputTest(String testName)
+        throws Exception
+    {
+        super(testName);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    public static Test suite()
+        throws Exception
+    {
+        // only the test declared here, not those inherited
+        TestSuite suite = new TestSuite();
+        suite.addTest(new FarragoJavaUdxThroughputTest("testThroughput"));
+        return wrappedSuite(suite);
+    }
+
+    public void testThroughput()
+        throws Exception
+    {
+        // warm up both paths first
+        countRamp(1, BENCHMARK_ROWS);
+        countRamp(128, BENCHMARK_ROWS);
+
+        long rowNanos = countRamp(1, BENCHMARK_ROWS);
+        long batchNanos = countRamp(128, BENCHMARK_ROWS);
+        tracer.info(
+            "UDX producing " + BENCHMARK_ROWS + " rows: queued singly "
+            + (rowNanos / 1000000) + " ms, in batches of 128 "
+            + (batchNanos / 1000000) + " ms");
+    }
+}
+
+// End FarragoJavaUdxThroughputTest.java
@@ -0,0 +1,104 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.test.regression;
+
+import junit.framework.*;
+
+import net.sf.farrago.test.*;
+
+
+/**
+ * FarragoMedJdbcLoadBenchmarkTest reloads the column-store table of {@link
+ * FarragoMedJdbcLoadTest} from its foreign JDBC table several times, with
+ * rows converted through synthetic row objects and then marshalled straight
+ * into Fennel, and traces the total time of each.
+ *
+ * @version $Id$
+ */
+public class FarragoMedJdbcLoadBenchmarkTest
+    extends FarragoMedJdbcLoadTest
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final int BENCHMARK_PASSES = 3;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new FarragoMedJdbcLoadBenchmarkTest object.
+     *
+     * @param testName JUnit test name
+     */
+    public FarragoMedJdbcLoadBenchmarkTest(String testName)
+        throws Exception
+    {
+        super(testName);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    public static Test suite()
+        throws Exception
+    {
+        // only the test declared here, not those inherited
+        TestSuite suite = new TestSuite();
+        suite.addTest(new FarragoMedJdbcLoadBenchmarkTest("testBenchmark"));
+        return wrappedSuite(suite);
+    }
+
+    public void testBenchmark()
+        throws Exception
+    {
+        long syntheticMillis = timeLoads(false);
+        long directMillis = timeLoads(true);
+        tracer.info(
+            "JDBC load: synthetic rows " + syntheticMillis + " ms, direct "
+            + directMillis + " ms for " + (BENCHMARK_PASSES * ROW_COUNT)
+            + " rows");
+    }
+
+    /**
+     * Loads the table once to prepare the statement, then times several
+     * more loads.
+     *
+     * @param direct whether rows are marshalled straight into Fennel
+     *
+     * @return elapsed time of the timed loads, in milliseconds
+     */
+    private long timeLoads(boolean direct)
+        throws Exception
+    {
+        boolean saved = setDirectFennel(direct);
+        try {
+            load();
+            long start = System.nanoTime();
+            for (int i = 0; i < BENCHMARK_PASSES; ++i) {
+                load();
+            }
+            return (System.nanoTime() - start) / 1000000;
+        } finally {
+            setDirectFennel(saved);
+        }
+    }
+}
+
+// End FarragoMedJdbcLoadBenchmarkTest.java
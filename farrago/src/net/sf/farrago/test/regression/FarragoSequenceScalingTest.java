@@ -0,0 +1,111 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.test.regression;
+
+import junit.framework.*;
+
+import net.sf.farrago.catalog.*;
+import net.sf.farrago.test.*;
+
+
+/**
+ * FarragoSequenceScalingTest measures how the generation of identity values
+ * scales with the number of threads, both through {@link
+ * FarragoSequenceAccessor} directly and through parallel inserts into a
+ * table with an identity column. Timings are written to the test trace; the
+ * test only fails if a value is generated twice.
+ *
+ * @version $Id$
+ */
+public class FarragoSequenceScalingTest
+    extends FarragoSequenceTest
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final int [] THREAD_COUNTS = { 1, 2, 4, 8 };
+
+    private static final int VALUES_PER_THREAD = 200000;
+
+    private static final int ROWS_PER_THREAD = 20000;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new FarragoSequenceScalingTest object.
+     *
+     * @param testName JUnit test name
+     */
+    public FarragoSequenceScalingTest(String testName)
+        throws Exception
+    {
+        super(testName);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    public static Test suite()
+        throws Exception
+    {
+        // only the tests declared here, not those inherited
+        TestSuite suite = new TestSuite();
+        suite.addTest(new FarragoSequenceScalingTest("testAccessorScaling"));
+        suite.addTest(new FarragoSequenceScalingTest("testInsertScaling"));
+        return wrappedSuite(suite);
+    }
+
+    /**
+     * Calls {@link FarragoSequenceAccessor#getNext} from increasing numbers of
+     * threads.
+     */
+    public void testAccessorScaling()
+        throws Exception
+    {
+        for (int threadCount : THREAD_COUNTS) {
+            long millis = runAccessors(threadCount, VALUES_PER_THREAD);
+            tracer.info(
+                "Sequence accessor: " + threadCount + " threads, "
+                + (threadCount * VALUES_PER_THREAD) + " values in "
+                + millis + " ms");
+        }
+    }
+
+    /**
+     * Inserts into a table with an identity column from increasing numbers of
+     * connections at once.
+     */
+    public void testInsertScaling()
+        throws Exception
+    {
+        long rowCount = 0;
+        for (int threadCount : THREAD_COUNTS) {
+            long millis = runInserts(threadCount, ROWS_PER_THREAD);
+            rowCount += threadCount * ROWS_PER_THREAD;
+            tracer.info(
+                "Identity insert: " + threadCount + " connections, "
+                + (threadCount * ROWS_PER_THREAD) + " rows in " + millis
+                + " ms");
+            assertDistinctIds(rowCount);
+        }
+    }
+}
+
+// End FarragoSequenceScalingTest.java
@@ -0,0 +1,143 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2006 The Eigenbase Project
+// Copyright (C) 2006 SQLstream, Inc.
+// Copyright (C) 2006 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.test.regression;
+
+import java.sql.*;
+
+import java.util.*;
+import java.util.logging.*;
+
+import junit.framework.*;
+
+import net.sf.farrago.jdbc.client.*;
+import net.sf.farrago.jdbc.engine.*;
+import net.sf.farrago.server.*;
+import net.sf.farrago.test.*;
+import net.sf.farrago.trace.*;
+
+
+/**
+ * FarragoVjdbcFetchBenchmarkTest compares the time taken to extract rows over
+ * a loopback VJDBC RMI connection in row packets and in columnar batches.
+ * Timings are written to the test trace; the test only fails if a mode does
+ * not work at all. {@link FarragoVjdbcServerTest#testColumnarFetch} checks
+ * that both modes return the same values.
+ *
+ * @version $Id$
+ */
+public class FarragoVjdbcFetchBenchmarkTest
+    extends TestCase
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final Logger tracer = FarragoTrace.getTestTracer();
+
+    private static final int BENCHMARK_PASSES = 3;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Initializes a new FarragoVjdbcFetchBenchmarkTest.
+     *
+     * @param testCaseName JUnit test case name
+     */
+    public FarragoVjdbcFetchBenchmarkTest(String testCaseName)
+        throws Exception
+    {
+        super(testCaseName);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement TestCase
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        // the server starts an engine of its own
+        FarragoTestCase.forceShutdown();
+    }
+
+    public void testColumnarFetchBenchmark()
+        throws Exception
+    {
+        FarragoVjdbcServer server = new FarragoVjdbcServer();
+        server.setDefaultProtocol(FarragoVjdbcServer.ListeningProtocol.RMI);
+        server.start(new FarragoJdbcEngineDriver());
+        try {
+            Connection [] connections = { connect(false), connect(true) };
+            long [] millis = new long[2];
+            try {
+                FarragoVjdbcServerTest.createRamp(connections[0]);
+                for (int mode = 0; mode < 2; ++mode) {
+                    // warm up first
+                    FarragoVjdbcServerTest.extract(
+                        connections[mode],
+                        mode == 1);
+                    long start = System.nanoTime();
+                    for (int i = 0; i < BENCHMARK_PASSES; ++i) {
+                        FarragoVjdbcServerTest.extract(
+                            connections[mode],
+                            mode == 1);
+                    }
+                    millis[mode] = (System.nanoTime() - start) / 1000000;
+                }
+            } finally {
+                try {
+                    connections[0].createStatement().execute(
+                        "drop schema vjdbc_fetch cascade");
+                } finally {
+                    connections[0].close();
+                    connections[1].close();
+                }
+            }
+            tracer.info(
+                "VJDBC loopback extract: row packets " + millis[0]
+                + " ms, columnar batches " + millis[1] + " ms for "
+                + (BENCHMARK_PASSES * FarragoVjdbcServerTest.EXTRACT_ROW_COUNT)
+                + " rows");
+        } finally {
+            server.stopHard();
+        }
+    }
+
+    private Connection connect(boolean columnar)
+        throws SQLException
+    {
+        // NOTE: can't call DriverManager.getConnection here, because that
+        // would deadlock
+        FarragoVjdbcClientDriver clientDriver = new FarragoVjdbcClientDriver();
+        Properties props = new Properties();
+        props.setProperty("user", "sa");
+        if (columnar) {
+            props.setProperty(
+                FarragoVjdbcColumnarProxyFactory.PROP_COLUMNAR_FETCH,
+                "true");
+        }
+        return clientDriver.connect(
+            clientDriver.getUrlPrefix() + "localhost",
+            props);
+    }
+}
+
+// End FarragoVjdbcFetchBenchmarkTest.java
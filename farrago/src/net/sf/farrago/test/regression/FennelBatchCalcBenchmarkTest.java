@@ -0,0 +1,106 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.test.regression;
+
+import junit.framework.*;
+
+import net.sf.farrago.test.*;
+
+
+/**
+ * FennelBatchCalcBenchmarkTest times the queries of {@link
+ * FennelBatchCalcTest} with the Fennel calculator evaluating programs row by
+ * row and over batches of rows, and writes both times for each query to the
+ * test trace.
+ *
+ * @version $Id$
+ */
+public class FennelBatchCalcBenchmarkTest
+    extends FennelBatchCalcTest
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final int BENCHMARK_PASSES = 5;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new FennelBatchCalcBenchmarkTest object.
+     *
+     * @param testName JUnit test name
+     */
+    public FennelBatchCalcBenchmarkTest(String testName)
+        throws Exception
+    {
+        super(testName);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    public static Test suite()
+        throws Exception
+    {
+        // only the test declared here, not those inherited
+        TestSuite suite = new TestSuite();
+        suite.addTest(new FennelBatchCalcBenchmarkTest("testBenchmark"));
+        return wrappedSuite(suite);
+    }
+
+    public void testBenchmark()
+        throws Exception
+    {
+        for (String query : QUERIES) {
+            long scalarMillis = time(query, false);
+            long batchMillis = time(query, true);
+            tracer.info(
+                query + ": scalar " + scalarMillis + " ms, batch "
+                + batchMillis + " ms for " + (BENCHMARK_PASSES * ROW_COUNT)
+                + " rows");
+        }
+    }
+
+    /**
+     * Runs a query once to prepare it, then times several more executions.
+     *
+     * @param query query to time
+     * @param batch whether the calculator evaluates batches of rows
+     *
+     * @return elapsed time of the timed executions, in milliseconds
+     */
+    private long time(String query, boolean batch)
+        throws Exception
+    {
+        boolean saved = setBatchCalc(batch);
+        try {
+            countRows(query);
+            long start = System.nanoTime();
+            for (int i = 0; i < BENCHMARK_PASSES; ++i) {
+                countRows(query);
+            }
+            return (System.nanoTime() - start) / 1000000;
+        } finally {
+            setBatchCalc(saved);
+        }
+    }
+}
+
+// End FennelBatchCalcBenchmarkTest.java
@@ -0,0 +1,124 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.test.regression;
+
+import java.lang.management.*;
+
+import junit.framework.*;
+
+import net.sf.farrago.test.*;
+
+
+/**
+ * FennelOnlyResultSetBenchmarkTest reads the wide table of {@link
+ * FennelOnlyResultSetTest} repeatedly with typed getters, with rows read in
+ * place and with rows unmarshalled, and traces the throughput of each along
+ * with the garbage collections it caused.
+ *
+ * @version $Id$
+ */
+public class FennelOnlyResultSetBenchmarkTest
+    extends FennelOnlyResultSetTest
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final int BENCHMARK_PASSES = 10;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new FennelOnlyResultSetBenchmarkTest object.
+     *
+     * @param testName JUnit test name
+     */
+    public FennelOnlyResultSetBenchmarkTest(String testName)
+        throws Exception
+    {
+        super(testName);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    public static Test suite()
+        throws Exception
+    {
+        // only the test declared here, not those inherited
+        TestSuite suite = new TestSuite();
+        suite.addTest(new FennelOnlyResultSetBenchmarkTest("testWideExtract"));
+        return wrappedSuite(suite);
+    }
+
+    public void testWideExtract()
+        throws Exception
+    {
+        // warm up both paths first
+        extract(false);
+        extract(true);
+
+        for (boolean direct : new boolean[] { false, true }) {
+            long gcCount = getGcCount();
+            long gcMillis = getGcMillis();
+            extractedByteCount = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < BENCHMARK_PASSES; ++i) {
+                extract(direct);
+            }
+            long nanos = System.nanoTime() - start;
+            gcCount = getGcCount() - gcCount;
+            gcMillis = getGcMillis() - gcMillis;
+            double seconds = nanos / 1e9;
+            tracer.info(
+                (direct ? "in place: " : "unmarshalled: ")
+                + (BENCHMARK_PASSES * ROW_COUNT) + " rows, "
+                + extractedByteCount + " bytes in " + (nanos / 1000000)
+                + " ms ("
+                + (long) (extractedByteCount / seconds / (1024 * 1024))
+                + " MB/s); " + gcCount + " collections ("
+                + (long) (gcCount / seconds) + "/s) taking " + gcMillis
+                + " ms");
+        }
+    }
+
+    private static long getGcCount()
+    {
+        long count = 0;
+        for (GarbageCollectorMXBean gc
+            : ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long getGcMillis()
+    {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc
+            : ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+}
+
+// End FennelOnlyResultSetBenchmarkTest.java
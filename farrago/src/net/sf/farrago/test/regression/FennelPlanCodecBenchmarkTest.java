@@ -0,0 +1,95 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.test.regression;
+
+import junit.framework.*;
+
+import net.sf.farrago.test.*;
+
+
+/**
+ * FennelPlanCodecBenchmarkTest traces the latency of preparing and executing
+ * the point lookup of {@link FennelPlanCodecTest} with nothing in the code
+ * cache, when stream graph plans are sent to Fennel in binary form and as
+ * XMI.
+ *
+ * @version $Id$
+ */
+public class FennelPlanCodecBenchmarkTest
+    extends FennelPlanCodecTest
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final int BENCHMARK_ITERATIONS = 50;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new FennelPlanCodecBenchmarkTest object.
+     *
+     * @param testName JUnit test name
+     */
+    public FennelPlanCodecBenchmarkTest(String testName)
+        throws Exception
+    {
+        super(testName);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    public static Test suite()
+        throws Exception
+    {
+        // only the test declared here, not those inherited
+        TestSuite suite = new TestSuite();
+        suite.addTest(
+            new FennelPlanCodecBenchmarkTest("testPrepareExecuteLatency"));
+        return wrappedSuite(suite);
+    }
+
+    public void testPrepareExecuteLatency()
+        throws Exception
+    {
+        // warm up both paths first
+        runLookups(false);
+        runLookups(true);
+
+        long binaryNanos = runLookups(false);
+        long xmiNanos = runLookups(true);
+        tracer.info(
+            "prepare+execute of " + BENCHMARK_ITERATIONS
+            + " lookups: binary plans " + (binaryNanos / 1000000)
+            + " ms, XMI plans " + (xmiNanos / 1000000) + " ms");
+    }
+
+    private long runLookups(boolean xmi)
+        throws Exception
+    {
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ITERATIONS; ++i) {
+            runLookup(xmi);
+        }
+        return System.nanoTime() - start;
+    }
+}
+
+// End FennelPlanCodecBenchmarkTest.java
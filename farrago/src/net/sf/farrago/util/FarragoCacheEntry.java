@@ -22,6 +22,7 @@
 */
 package net.sf.farrago.util;
 
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.*;
 
 
@@ -36,16 +37,37 @@ public class FarragoCacheEntry
 {
     //~ Instance fields --------------------------------------------------------
 
-    // NOTE jvs 15-July-2004: entry attribute synchronization is fine-grained;
-    // pinCount is protected by FarragoObjectCache.mapKeyToEntry's monitor,
-    // while the others are protected by the entry's monitor.
+    // NOTE jvs 15-July-2004: entry attribute synchronization is fine-grained.
+    // pinCount is atomic; it is only incremented while holding the monitor of
+    // the FarragoObjectCache stripe which maps this entry's key, but may be
+    // decremented without any lock.  The remaining attributes are written
+    // only by the construction thread, and are published to waiters via
+    // constructionLatch.
     Object key;
-    Object value;
-    int pinCount;
+    volatile Object value;
+
+    /**
+     * Number of callers which currently have this entry pinned, or -1 once
+     * the entry has been claimed for discard (see {@link #tryClaim}).
+     */
+    final AtomicInteger pinCount;
     AtomicLong memoryUsage;
-    Thread constructionThread;
-    boolean isReusable;
-    boolean isInitialized;
+    volatile Thread constructionThread;
+    volatile boolean isReusable;
+    volatile boolean isInitialized;
+
+    /**
+     * Set if the attempt to construct this entry's value threw an exception;
+     * a failed entry is removed from the cache before its latch is released.
+     */
+    volatile boolean constructionFailed;
+
+    /**
+     * Released once construction of this entry's value has been attempted
+     * (successfully or not). Callers which find the entry under construction
+     * block on this rather than polling.
+     */
+    final CountDownLatch constructionLatch;
 
     /**
      * The cache this entry is associated with
@@ -62,6 +84,8 @@ public class FarragoCacheEntry
         // this is never even accessed until after initialize overwrites it
         isReusable = true;
         memoryUsage = new AtomicLong();
+        pinCount = new AtomicInteger();
+        constructionLatch = new CountDownLatch(1);
     }
 
     //~ Methods ----------------------------------------------------------------
@@ -94,10 +118,11 @@ public class FarragoCacheEntry
         long memoryUsage,
         boolean isReusable)
     {
-        // REVIEW jvs 15-Jun-2007: Order of initialization is important here
-        // due to access by unsynchronized code in FarragoObjectCache.  I'm not
-        // sure if that's safe on all architectures--could the lack of a read
-        // memory barrier cause the writes to get reordered?
+        // NOTE jvs 15-Jun-2007: Order of initialization is important here
+        // due to access by unsynchronized code in FarragoObjectCache, which
+        // tests value for null before reading the other attributes.  Since
+        // value is volatile and written last, the other writes are visible to
+        // any thread which sees a non-null value.
         this.isInitialized = true;
         this.isReusable = isReusable;
         this.memoryUsage.set(memoryUsage);
@@ -117,6 +142,71 @@ public class FarragoCacheEntry
             + ", pinCount=" + pinCount;
     }
 
+    /**
+     * Adds a pin to this entry unless it has already been claimed for discard.
+     *
+     * @param exclusive if true, only succeed if the entry is currently
+     * unpinned
+     *
+     * @return whether the pin was acquired
+     */
+    boolean tryAcquirePin(boolean exclusive)
+    {
+        for (;;) {
+            int n = pinCount.get();
+            if ((n < 0) || (exclusive && (n > 0))) {
+                return false;
+            }
+            if (pinCount.compareAndSet(n, n + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Removes a pin from this entry.
+     *
+     * @return pin count after release
+     */
+    int releasePin()
+    {
+        int n = pinCount.decrementAndGet();
+        assert (n >= 0) : this;
+        return n;
+    }
+
+    /**
+     * Claims an unpinned entry for discard. Once claimed, an entry can never
+     * be pinned again, so exactly one caller wins the right to remove it from
+     * the cache and close its value.
+     *
+     * @return whether this caller claimed the entry
+     */
+    boolean tryClaim()
+    {
+        return pinCount.compareAndSet(0, -1);
+    }
+
+    /**
+     * Waits for construction of this entry's value to be attempted.
+     */
+    void awaitConstruction()
+    {
+        boolean interrupted = false;
+        for (;;) {
+            try {
+                constructionLatch.await();
+                break;
+            } catch (InterruptedException ex) {
+                // keep waiting; the constructor is guaranteed to release us
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     /**
      * @return whether {@link #initialize} has been called yet
      */
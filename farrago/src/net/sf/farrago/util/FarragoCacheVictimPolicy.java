@@ -33,6 +33,10 @@ import java.util.*;
  * determine the order in which entries should be victimized from the cache,
  * when the cache becomes full.
  *
+ * <p>FarragoObjectCache synchronizes on the policy object around every call
+ * except {@link #accessEntry}, which is made without any cache lock held (once
+ * per cache hit) and must therefore be thread-safe on its own.
+ *
  * @author Zelaine Fong
  * @version $Id$
  */
@@ -70,7 +74,8 @@ public interface FarragoCacheVictimPolicy
 
     /**
      * Receives notification that an existing entry in the cache is being
-     * accessed.
+     * accessed. May be called concurrently with any other method, including
+     * for an entry which is being unregistered at the same time.
      *
      * @param entry entry being accessed
      */
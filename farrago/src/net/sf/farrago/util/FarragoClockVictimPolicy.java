@@ -0,0 +1,259 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+// Portions Copyright (C) 2003 John V. Sichi
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package net.sf.farrago.util;
+
+import java.util.*;
+
+
+/**
+ * FarragoClockVictimPolicy implements the CLOCK (second-chance) approximation
+ * of LRU for the FarragoObjectCache. Unlike {@link FarragoLruVictimPolicy}, an
+ * access only sets a per-entry reference bit, so cache hits never take a
+ * lock; the ordering work is deferred to victim selection, which only happens
+ * when the cache is over its size limit.
+ *
+ * <p>Entries sit on a ring swept by a clock hand. When a victim is needed, an
+ * entry whose reference bit is set has it cleared and is skipped (its second
+ * chance); an entry whose bit is clear is offered as a victim. Unregistered
+ * entries are removed from the ring lazily.
+ *
+ * <p>Except for {@link #accessEntry}, this class assumes that synchronization
+ * is handled by its caller.
+ *
+ * @version $Id$
+ */
+public class FarragoClockVictimPolicy
+    implements FarragoCacheVictimPolicy
+{
+    //~ Instance fields --------------------------------------------------------
+
+    /**
+     * Registered entries (plus any unregistered ones not yet purged), in
+     * clock order.
+     */
+    private final List<ClockEntry> ring;
+
+    /**
+     * Position of the clock hand in {@link #ring}.
+     */
+    private int hand;
+
+    /**
+     * Number of unregistered entries still on the ring.
+     */
+    private int nDead;
+
+    //~ Constructors -----------------------------------------------------------
+
+    public FarragoClockVictimPolicy()
+    {
+        ring = new ArrayList<ClockEntry>();
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement FarragoCacheVictimPolicy
+    public FarragoCacheEntry newEntry(FarragoObjectCache parentCache)
+    {
+        return new ClockEntry(parentCache);
+    }
+
+    // implement FarragoCacheVictimPolicy
+    public void registerEntry(FarragoCacheEntry entry)
+    {
+        ClockEntry clockEntry = (ClockEntry) entry;
+        assert (!clockEntry.isRegistered);
+        clockEntry.isRegistered = true;
+
+        // new entries start out unreferenced, so one which is never hit again
+        // is victimized on the first sweep which reaches it
+        clockEntry.isReferenced = false;
+        ring.add(clockEntry);
+    }
+
+    // implement FarragoCacheVictimPolicy
+    public void unregisterEntry(Iterator victimRange)
+    {
+        victimRange.remove();
+    }
+
+    // implement FarragoCacheVictimPolicy
+    public void unregisterEntry(FarragoCacheEntry entry)
+    {
+        ClockEntry clockEntry = (ClockEntry) entry;
+        assert (clockEntry.isRegistered);
+        markDead(clockEntry);
+    }
+
+    // implement FarragoCacheVictimPolicy
+    public void accessEntry(FarragoCacheEntry entry)
+    {
+        ((ClockEntry) entry).isReferenced = true;
+    }
+
+    // implement FarragoCacheVictimPolicy
+    public Iterator<FarragoCacheEntry> getVictimIterator()
+    {
+        purge();
+        return new VictimIterator();
+    }
+
+    // implement FarragoCacheVictimPolicy
+    public void clearCache()
+    {
+        for (ClockEntry entry : ring) {
+            entry.isRegistered = false;
+        }
+        ring.clear();
+        hand = 0;
+        nDead = 0;
+    }
+
+    private void markDead(ClockEntry entry)
+    {
+        entry.isRegistered = false;
+        ++nDead;
+
+        // keep the ring from filling up with garbage between sweeps
+        if (nDead > (ring.size() / 2)) {
+            purge();
+        }
+    }
+
+    /**
+     * Removes unregistered entries from the ring, keeping the hand on the same
+     * live entry.
+     */
+    private void purge()
+    {
+        if (nDead == 0) {
+            return;
+        }
+        int newHand = 0;
+        int j = 0;
+        for (int i = 0; i < ring.size(); ++i) {
+            ClockEntry entry = ring.get(i);
+            if (i == hand) {
+                newHand = j;
+            }
+            if (entry.isRegistered) {
+                ring.set(j++, entry);
+            }
+        }
+        ring.subList(j, ring.size()).clear();
+        hand = (newHand < j) ? newHand : 0;
+        nDead = 0;
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Cache entry with the state needed by the clock algorithm.
+     */
+    private static class ClockEntry
+        extends FarragoCacheEntry
+    {
+        /**
+         * Reference bit; set without synchronization on every access.
+         */
+        volatile boolean isReferenced;
+
+        /**
+         * Whether the entry is currently registered; synchronized by the
+         * caller of the policy.
+         */
+        boolean isRegistered;
+
+        ClockEntry(FarragoObjectCache parentCache)
+        {
+            super(parentCache);
+        }
+    }
+
+    /**
+     * Iterator which advances the clock hand, giving referenced entries a
+     * second chance. It visits each entry at most twice (once to clear its
+     * reference bit, once more to offer it), so a sweep terminates even if
+     * every entry is pinned.
+     */
+    private class VictimIterator
+        implements Iterator<FarragoCacheEntry>
+    {
+        private int nRemaining;
+        private ClockEntry next;
+        private ClockEntry last;
+
+        VictimIterator()
+        {
+            nRemaining = 2 * ring.size();
+        }
+
+        // implement Iterator
+        public boolean hasNext()
+        {
+            while ((next == null) && (nRemaining > 0) && !ring.isEmpty()) {
+                --nRemaining;
+                if (hand >= ring.size()) {
+                    hand = 0;
+                }
+                ClockEntry entry = ring.get(hand++);
+                if (!entry.isRegistered) {
+                    continue;
+                }
+                if (entry.isReferenced) {
+                    entry.isReferenced = false;
+                    continue;
+                }
+                next = entry;
+            }
+            return next != null;
+        }
+
+        // implement Iterator
+        public FarragoCacheEntry next()
+        {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = next;
+            next = null;
+            return last;
+        }
+
+        // implement Iterator
+        public void remove()
+        {
+            if (last == null) {
+                throw new IllegalStateException();
+            }
+
+            // defer the purge until the sweep is over, since it would move
+            // the hand out from under us
+            last.isRegistered = false;
+            ++nDead;
+            last = null;
+        }
+    }
+}
+
+// End FarragoClockVictimPolicy.java
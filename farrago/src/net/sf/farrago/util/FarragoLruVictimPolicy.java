@@ -29,7 +29,10 @@ import java.util.*;
  * FarragoLruVictimPolicy implements an LRU caching policy for the
  * FarragoObjectCache.
  *
- * <p>This class assumes that synchronization is handled by its caller.
+ * <p>Except for {@link #accessEntry}, this class assumes that synchronization
+ * is handled by its caller (via the policy's monitor). Since every cache hit
+ * reorders the list, accessEntry synchronizes on the same monitor itself; for
+ * heavily concurrent caches, {@link FarragoClockVictimPolicy} avoids this.
  *
  * @author Zelaine Fong
  * @version $Id$
@@ -80,12 +83,14 @@ public class FarragoLruVictimPolicy
     }
 
     // implement FarragoCacheVictimPolicy
-    public void accessEntry(FarragoCacheEntry entry)
+    public synchronized void accessEntry(FarragoCacheEntry entry)
     {
-        // remove the object from the list and add it to the end of the list
-        boolean rc = lruCacheOrder.remove(entry);
-        assert (rc);
-        lruCacheOrder.add(entry);
+        // remove the object from the list and add it to the end of the list;
+        // if it isn't there, it has been unregistered concurrently (e.g. due
+        // to a failed construction), so leave it out
+        if (lruCacheOrder.remove(entry)) {
+            lruCacheOrder.add(entry);
+        }
     }
 
     // implement FarragoCacheVictimPolicy
@@ -23,6 +23,7 @@
 package net.sf.farrago.util;
 
 import java.util.*;
+import java.util.concurrent.atomic.*;
 import java.util.logging.*;
 
 import net.sf.farrago.trace.*;
@@ -38,6 +39,12 @@ import org.eigenbase.util.*;
  * <p>Key objects must implement hashCode/equals properly since
  * FarragoObjectCache is based on a HashMap internally.
  *
+ * <p>The key space is partitioned into a number of stripes, each with its own
+ * map and monitor, so that sessions pinning unrelated keys do not contend with
+ * each other. Construction of a new entry happens outside of any lock; other
+ * callers which want the same entry block on a latch owned by the entry (in
+ * effect a shared future for the value) rather than polling it.
+ *
  * <p>See {@link net.sf.farrago.test.FarragoObjectCacheTest} for examples of
  * usage patterns.
  *
@@ -54,31 +61,44 @@ public class FarragoObjectCache
 
     private static final Logger tracer = FarragoTrace.getObjectCacheTracer();
 
+    /**
+     * Number of stripes used by the constructors which don't specify one.
+     */
+    public static final int DEFAULT_STRIPE_COUNT = 16;
+
     //~ Instance fields --------------------------------------------------------
 
     /**
-     * Map from cache key to EntryImpl. To avoid deadlock, synchronize on either
-     * map or entry but not both at once. See code comments in tryPin for more
-     * info on this.
+     * Maps from cache key to entry, one per stripe. Each map is synchronized
+     * via its own monitor. To avoid deadlock, a thread may acquire the victim
+     * policy monitor while holding a stripe monitor, but never the reverse,
+     * and never holds two stripe monitors at once.
+     */
+    private final MultiMap<Object, FarragoCacheEntry> [] stripes;
+
+    /**
+     * Mask applied to a spread key hash to select a stripe.
      */
-    protected MultiMap<Object, FarragoCacheEntry> mapKeyToEntry;
-    private long bytesMax;
+    private final int stripeMask;
+
+    private volatile long bytesMax;
 
     /**
-     * Number of bytes currently in use by cached objects. This and bytesMax are
-     * synchronized via mapKeyToEntry monitor.
+     * Number of bytes currently in use by cached objects.
      */
-    private long bytesUsed;
+    private final AtomicLong bytesUsed;
 
     /**
-     * Victimization policy for this cache
+     * Victimization policy for this cache. Except for {@link
+     * FarragoCacheVictimPolicy#accessEntry}, all calls to it are synchronized
+     * via its monitor.
      */
-    private FarragoCacheVictimPolicy victimPolicy;
+    private final FarragoCacheVictimPolicy victimPolicy;
 
     //~ Constructors -----------------------------------------------------------
 
     /**
-     * Creates an empty cache.
+     * Creates an empty cache with the default number of stripes.
      *
      * @param owner FarragoAllocationOwner for this cache, to make sure
      * everything gets discarded eventually
@@ -90,15 +110,59 @@ public class FarragoObjectCache
         long bytesMax,
         FarragoCacheVictimPolicy victimPolicy)
     {
-        mapKeyToEntry = new MultiMap<Object, FarragoCacheEntry>();
+        this(owner, bytesMax, victimPolicy, DEFAULT_STRIPE_COUNT);
+    }
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param owner FarragoAllocationOwner for this cache, to make sure
+     * everything gets discarded eventually
+     * @param bytesMax maximum number of bytes to cache
+     * @param victimPolicy victimization policy to use when the cache is full
+     * @param stripeCount number of independently locked partitions of the key
+     * space; rounded up to a power of two
+     */
+    public FarragoObjectCache(
+        FarragoAllocationOwner owner,
+        long bytesMax,
+        FarragoCacheVictimPolicy victimPolicy,
+        int stripeCount)
+    {
+        assert (stripeCount > 0);
+        int n = 1;
+        while (n < stripeCount) {
+            n <<= 1;
+        }
+        stripes = newStripes(n);
+        stripeMask = n - 1;
         owner.addAllocation(this);
         this.bytesMax = bytesMax;
-        bytesUsed = 0;
+        bytesUsed = new AtomicLong();
         this.victimPolicy = victimPolicy;
     }
 
     //~ Methods ----------------------------------------------------------------
 
+    @SuppressWarnings("unchecked")
+    private static MultiMap<Object, FarragoCacheEntry> [] newStripes(int n)
+    {
+        MultiMap<Object, FarragoCacheEntry> [] stripes = new MultiMap[n];
+        for (int i = 0; i < n; ++i) {
+            stripes[i] = new MultiMap<Object, FarragoCacheEntry>();
+        }
+        return stripes;
+    }
+
+    private MultiMap<Object, FarragoCacheEntry> getStripe(Object key)
+    {
+        // spread the high bits down, since stripeMask only keeps the low ones
+        int h = key.hashCode();
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return stripes[h & stripeMask];
+    }
+
     /**
      * Pins an entry in the cache. When the caller is done with it, the returned
      * entry must be unpinned, otherwise the entry can never be discarded from
@@ -133,12 +197,13 @@ public class FarragoObjectCache
             tracer.fine("Pinning key " + key.toString());
         }
 
-        // NOTE jvs 14-Jun-2007: Although it may appear that this loop burns
-        // 100% CPU, that's not the case.  There's a wait inside of tryPin; if
-        // a null entry is returned because the entry being waited for turned
-        // out not to be usable by us, then we retry from the top.  This loop
-        // implements that retry logic.  A pathological access pattern could
-        // lead to starvation.
+        // NOTE jvs 14-Jun-2007: A null return from tryPin means that the
+        // entry we waited for turned out not to be usable by us (failed or
+        // non-reusable).  A failed entry is removed from the map before its
+        // waiters are released, and a non-reusable one is never pinned by
+        // anyone else, so each retry either finds a different entry or
+        // creates (and constructs) its own; it never waits on the same entry
+        // twice.
         for (;;) {
             Entry entry = tryPin(key, factory, exclusive);
             if (entry != null) {
@@ -158,126 +223,73 @@ public class FarragoObjectCache
         Thread currentThread = Thread.currentThread();
 
         // Look up entry in map, or create a new one.  Either way, it comes
-        // back pinned.  Note that we both acquire and release map lock in here
-        // since construction work below may be time-consuming.
+        // back pinned.  Note that we both acquire and release the stripe lock
+        // in here since construction work below may be time-consuming.
         FarragoCacheEntry entry =
             findOrCreateEntry(currentThread, key, factory, exclusive);
 
-        boolean unpinEntry = false;
-        try {
-            synchronized (entry) {
-                for (;;) {
-                    if (entry.constructionThread == currentThread) {
-                        // we're responsible for construction
-                        boolean success = false;
-                        try {
-                            // NOTE jvs 14-Jun-2007: An important
-                            // synchronization issue here is that we don't know
-                            // what initializeEntry is going to do; in fact, it
-                            // is allowed to call back into pin or unpin in
-                            // order to build a top-level cached object
-                            // composed of several underlying cached objects.
-                            // This means that we may end up with the
-                            // lock sequence entry-then-map.  That's why
-                            // we don't allow locking of entries when a
-                            // lock on the map is held.
-                            factory.initializeEntry(key, entry);
-                            assert (entry.isInitialized());
-
-                            // TODO jvs 10-Jun-2007:  assert that
-                            // new value is not stale-on-arrival?  Maybe
-                            // only when trace is on?
-                            success = true;
-                            tracer.finer(
-                                "initialized new cache entry " + entry.getKey()
-                                + "=" + entry.getValue());
-                        } finally {
-                            // NOTE: an exception can leave a failed entry lying
-                            // around.  It would be nice to get rid of it
-                            // immediately, but it's tricky since someone else
-                            // may already be waiting for it.
-                            if (!success) {
-                                tracer.finer("entry initialization failed");
-
-                                // If unsuccessful, we're unwinding, so don't
-                                // leave failed entry pinned; can't unpin here
-                                // since we still hold entry lock.  This means
-                                // we'll actually leave a garbage entry lying
-                                // around in the cache, but that's OK; pin
-                                // requests know how to avoid it, and
-                                // eventually it will be discarded.
-                                unpinEntry = true;
-                            }
-
-                            // let others know that our attempt is complete
-                            // (though not necessarily successful)
-                            entry.constructionThread = null;
-                            entry.notifyAll();
-                        }
-
-                        // now we need to adjust memory usage, but can only do
-                        // that after releasing entry lock since map lock is
-                        // required
-                        break;
-                    }
-
-                    while (entry.constructionThread != null) {
-                        tracer.finer("waiting for entry initialization");
-
-                        // someone else is supposed to construct the object
-                        try {
-                            entry.wait();
-                        } catch (InterruptedException ex) {
-                            throw new AssertionError();
-                        }
-                    }
-
-                    if (entry.value != null) {
-                        if (!entry.isReusable()) {
-                            // Oops, we were waiting for something that
-                            // turned out not to be reusable.  We'll
-                            // have to retry from the top since the original
-                            // entry has already been returned as private
-                            // to the construction-initiating caller.
-                            unpinEntry = true;
-                            return null;
-                        }
-                        if (tracer.isLoggable(Level.FINE)) {
-                            tracer.fine(
-                                "returning entry with pin count = "
-                                + entry.pinCount);
-                        }
-
-                        // got it
-                        return entry;
-                    }
-
-                    // Someone else's attempt must have failed; we'll give it a
-                    // shot ourselves.  Most likely we'll fail too, but doing it
-                    // this way is easier than trying to replicate the original
-                    // exception.
-                    entry.constructionThread = currentThread;
-                }
+        if (entry.constructionThread != currentThread) {
+            // someone else is responsible for construction (or has already
+            // completed it)
+            if (entry.constructionLatch.getCount() > 0) {
+                tracer.finer("waiting for entry initialization");
+                entry.awaitConstruction();
             }
-        } finally {
-            if (unpinEntry) {
-                synchronized (mapKeyToEntry) {
-                    entry.pinCount--;
-                }
+            if (entry.constructionFailed || !entry.isReusable()) {
+                // Either the construction attempt failed (in which case the
+                // entry has already been removed from the map, and we'll give
+                // it a shot ourselves; most likely we'll fail too, but doing
+                // it this way is easier than trying to replicate the original
+                // exception), or we were waiting for something that turned
+                // out not to be reusable and has already been returned as
+                // private to the construction-initiating caller.  Either way,
+                // retry from the top.
+                entry.releasePin();
+                return null;
             }
+            if (tracer.isLoggable(Level.FINE)) {
+                tracer.fine(
+                    "returning entry with pin count = " + entry.pinCount);
+            }
+            return entry;
         }
 
-        // NOTE jvs 10-Jun-2007: We never get here with unpinEntry=true,
-        // because the only path above which sets it is one in which an
-        // exception gets thrown and not caught.  One related minor issue is
-        // that in the failed-initialization case, we don't bump up the memory
-        // usage at all, even though we leave behind the dead entry (with
-        // value=null) in the cache.  It's not large, and will get aged
-        // out eventually.
-        assert (!unpinEntry);
+        // we're responsible for construction
+        boolean success = false;
+        try {
+            // NOTE jvs 14-Jun-2007: An important synchronization issue here is
+            // that we don't know what initializeEntry is going to do; in fact,
+            // it is allowed to call back into pin or unpin in order to build a
+            // top-level cached object composed of several underlying cached
+            // objects.  That's why no lock is held while it runs.
+            factory.initializeEntry(key, entry);
+            assert (entry.isInitialized());
+
+            // TODO jvs 10-Jun-2007:  assert that
+            // new value is not stale-on-arrival?  Maybe
+            // only when trace is on?
+            success = true;
+            tracer.finer(
+                "initialized new cache entry " + entry.getKey()
+                + "=" + entry.getValue());
+        } finally {
+            if (!success) {
+                // Get rid of the failed entry before releasing anyone waiting
+                // for it, so that their retries don't find it again.
+                tracer.finer("entry initialization failed");
+                entry.constructionFailed = true;
+                removeFailedEntry(entry);
+                entry.releasePin();
+            }
+
+            // let others know that our attempt is complete
+            // (though not necessarily successful)
+            entry.constructionThread = null;
+            entry.constructionLatch.countDown();
+        }
 
         if (tracer.isLoggable(Level.FINE)) {
-            long cacheSize = bytesUsed + entry.memoryUsage.get();
+            long cacheSize = bytesUsed.get() + entry.memoryUsage.get();
             tracer.fine(
                 "returning new entry, pin count " + entry.pinCount
                 + ", size " + entry.memoryUsage.get() + ", cache size "
@@ -297,80 +309,78 @@ public class FarragoObjectCache
 
         List<FarragoCacheEntry> staleList = null;
 
-        synchronized (mapKeyToEntry) {
-            List<FarragoCacheEntry> candidateList = mapKeyToEntry.getMulti(key);
-            int nCandidates = candidateList.size();
-            Iterator<FarragoCacheEntry> iter = candidateList.iterator();
-            while (iter.hasNext()) {
-                entry = iter.next();
-                if (exclusive && (entry.pinCount != 0)) {
-                    // this one's already in use by someone else
-                    entry = null;
-                } else {
-                    // NOTE jvs 15-Jun-2007:  We can't synchronize on
-                    // entry here, so have to be careful in how we access it.
-                    Object value = entry.value;
-
-                    // REVIEW jvs 14-Jun-2007: If value is null, and pin-count
-                    // is 0, perhaps we could be a good citizen and discard it
-                    // as garbage in passing.
-                    if (value != null) {
-                        if (!entry.isReusable() || factory.isStale(value)) {
-                            if (entry.pinCount == 0) {
-                                tracer.finer(
-                                    "found stale+unpinned cache entry:  "
-                                    + "adding to discard list");
-                                if (staleList == null) {
-                                    staleList =
-                                        new ArrayList<FarragoCacheEntry>();
-                                }
-                                staleList.add(entry);
-                                if (nCandidates > 1) {
-                                    // NOTE jvs 10-Jun-2007: See comment with
-                                    // same date below for the reason behind
-                                    // this special case.
-                                    iter.remove();
-                                }
-                                victimPolicy.unregisterEntry(entry);
-                            } else {
-                                tracer.finer(
-                                    "found stale+pinned cache entry:  "
-                                    + "ignoring");
-                            }
-                            entry = null;
-                            continue;
+        MultiMap<Object, FarragoCacheEntry> stripe = getStripe(key);
+        synchronized (stripe) {
+            List<FarragoCacheEntry> candidateList = stripe.getMulti(key);
+            for (FarragoCacheEntry candidate : candidateList) {
+                // NOTE jvs 15-Jun-2007:  We don't synchronize on entries, so
+                // have to be careful in how we access them.  A null value
+                // means the entry is still under construction.
+                Object value = candidate.value;
+                if ((value != null)
+                    && (!candidate.isReusable() || factory.isStale(value)))
+                {
+                    if (candidate.tryClaim()) {
+                        tracer.finer(
+                            "found stale+unpinned cache entry:  "
+                            + "adding to discard list");
+                        if (staleList == null) {
+                            staleList = new ArrayList<FarragoCacheEntry>();
                         }
+                        staleList.add(candidate);
+                    } else {
+                        tracer.finer(
+                            "found stale+pinned cache entry:  "
+                            + "ignoring");
                     }
+                    continue;
+                }
 
+                // pin the entry so that it can't be discarded after the
+                // stripe lock is released below; this fails if it is already
+                // in use by someone else (exclusive), or if it has just been
+                // claimed by a concurrent discard
+                if (candidate.tryAcquirePin(exclusive)) {
                     tracer.finer("found cache entry");
-
-                    // pin the entry so that it can't be discarded after map
-                    // lock is released below
-                    entry.pinCount++;
-                    victimPolicy.accessEntry(entry);
+                    entry = candidate;
                     break;
                 }
             }
-            if ((staleList != null) && (nCandidates == staleList.size())) {
-                // NOTE jvs 10-Jun-2007: This special case is required because
-                // of the non-uniform return behavior of MultiMap (singleton
-                // entries are returned via an immutable list).
-                mapKeyToEntry.remove(key);
+            if (staleList != null) {
+                // NOTE jvs 10-Jun-2007: We can't remove via the candidate
+                // list because of the non-uniform return behavior of
+                // MultiMap (singleton entries are returned via an immutable
+                // list).
+                synchronized (victimPolicy) {
+                    for (FarragoCacheEntry stale : staleList) {
+                        stripe.removeMulti(key, stale);
+                        victimPolicy.unregisterEntry(stale);
+                    }
+                }
             }
             if (entry == null) {
                 // create a new entry and add it to the map
                 entry = victimPolicy.newEntry(this);
                 entry.key = key;
-                entry.pinCount = 1;
-                victimPolicy.registerEntry(entry);
+                entry.pinCount.set(1);
 
                 // let others know we're planning to construct it, so they
                 // shouldn't
                 entry.constructionThread = currentThread;
-                mapKeyToEntry.putMulti(key, entry);
+                stripe.putMulti(key, entry);
+                synchronized (victimPolicy) {
+                    victimPolicy.registerEntry(entry);
+                }
             }
         }
 
+        if (entry.constructionThread != currentThread) {
+            // NOTE: called outside of the stripe lock so that policies which
+            // reorder on access only contend with each other, not with
+            // lookups in other stripes
+            victimPolicy.accessEntry(entry);
+        }
+
         if (staleList != null) {
             // Put out the garbage.  We deferred this above due to
             // synchronization requirements.
@@ -382,48 +392,68 @@ public class FarragoObjectCache
         return entry;
     }
 
+    private void removeFailedEntry(FarragoCacheEntry entry)
+    {
+        MultiMap<Object, FarragoCacheEntry> stripe = getStripe(entry.key);
+        synchronized (stripe) {
+            stripe.removeMulti(entry.key, entry);
+            synchronized (victimPolicy) {
+                victimPolicy.unregisterEntry(entry);
+            }
+        }
+    }
+
     private void adjustMemoryUsage(long incBytes)
     {
+        long newBytesUsed = bytesUsed.addAndGet(incBytes);
         if (tracer.isLoggable(Level.FINER)) {
             tracer.finer(
-                "cache size before discards = " + bytesUsed
+                "cache size before discards = " + (newBytesUsed - incBytes)
                 + " increasing by " + incBytes);
         }
-        List<FarragoCacheEntry> discards;
 
-        synchronized (mapKeyToEntry) {
-            bytesUsed += incBytes;
-
-            long overdraft = bytesUsed - bytesMax;
+        long overdraft = newBytesUsed - bytesMax;
+        if (overdraft <= 0) {
+            // common case:  no need to touch the victim policy at all
+            return;
+        }
 
-            if (overdraft <= 0) {
-                return;
-            }
+        List<FarragoCacheEntry> discards = new ArrayList<FarragoCacheEntry>();
 
-            discards = new ArrayList<FarragoCacheEntry>();
+        synchronized (victimPolicy) {
+            // recompute now that we hold the lock, since a concurrent
+            // caller may already have freed up enough space
+            overdraft = bytesUsed.get() - bytesMax;
 
             // get an ordered list of potential cache victims and search
             // for unused entries
-            Iterator<FarragoCacheEntry> lruList =
+            Iterator<FarragoCacheEntry> victimIter =
                 victimPolicy.getVictimIterator();
-            while ((overdraft > 0) && lruList.hasNext()) {
-                FarragoCacheEntry entry = lruList.next();
-                if (entry.pinCount > 0) {
+            while ((overdraft > 0) && victimIter.hasNext()) {
+                FarragoCacheEntry entry = victimIter.next();
+                if (!entry.tryClaim()) {
                     continue;
                 }
-                victimPolicy.unregisterEntry(lruList);
-                mapKeyToEntry.removeMulti(entry.getKey(), entry);
+                victimPolicy.unregisterEntry(victimIter);
                 discards.add(entry);
                 overdraft -= entry.memoryUsage.get();
             }
         }
 
-        // release map lock since actual discard could be time-consuming
+        // Claimed entries can no longer be pinned, so it's safe to remove
+        // them from their stripes after releasing the victim policy lock.
+        // Release all locks before the actual discard since it could be
+        // time-consuming.
         for (FarragoCacheEntry discard : discards) {
+            MultiMap<Object, FarragoCacheEntry> stripe =
+                getStripe(discard.key);
+            synchronized (stripe) {
+                stripe.removeMulti(discard.key, discard);
+            }
             discardEntry(discard);
         }
         if (tracer.isLoggable(Level.FINER)) {
-            tracer.finer("cache size after discards = " + bytesUsed);
+            tracer.finer("cache size after discards = " + bytesUsed.get());
         }
 
         // REVIEW:  in some circumstances, we want to fail if overdraft is
@@ -437,10 +467,7 @@ public class FarragoObjectCache
      */
     public void setMaxBytes(long bytesMaxNew)
     {
-        synchronized (mapKeyToEntry) {
-            bytesMax = bytesMaxNew;
-        }
-
+        bytesMax = bytesMaxNew;
         adjustMemoryUsage(0);
     }
 
@@ -458,7 +485,7 @@ public class FarragoObjectCache
      */
     public long getBytesCached()
     {
-        return bytesUsed;
+        return bytesUsed.get();
     }
 
     /**
@@ -466,19 +493,18 @@ public class FarragoObjectCache
      * immediately nullify its reference to the entry, its key, its value, and
      * any sub-objects so that they can be garbage collected.
      *
+     * <p>Unpinning takes no locks unless the cache is over its size limit.
+     *
      * @param pinnedEntry pinned Entry
      */
     public void unpin(Entry pinnedEntry)
     {
         FarragoCacheEntry entry = (FarragoCacheEntry) pinnedEntry;
-        synchronized (mapKeyToEntry) {
-            if (tracer.isLoggable(Level.FINE)) {
-                tracer.fine("Unpinning key " + entry.key.toString());
-                tracer.fine("pin count before unpin = " + entry.pinCount);
-            }
-            assert (entry.pinCount > 0);
-            entry.pinCount--;
+        if (tracer.isLoggable(Level.FINE)) {
+            tracer.fine("Unpinning key " + entry.key.toString());
+            tracer.fine("pin count before unpin = " + entry.pinCount);
         }
+        entry.releasePin();
 
         // in case too much was pinned
         adjustMemoryUsage(0);
@@ -495,29 +521,29 @@ public class FarragoObjectCache
      */
     public void tryUnpin(String key)
     {
-        synchronized (mapKeyToEntry) {
-            List<FarragoCacheEntry> entryList = mapKeyToEntry.getMulti(key);
+        MultiMap<Object, FarragoCacheEntry> stripe = getStripe(key);
+        boolean discardKey = false;
+        synchronized (stripe) {
+            List<FarragoCacheEntry> entryList = stripe.getMulti(key);
             assert (entryList != null);
             tracer.fine("unpinning cache entries " + entryList);
 
-            Iterator<FarragoCacheEntry> it = entryList.iterator();
-
-            while (it.hasNext()) {
-                FarragoCacheEntry entry = it.next();
+            for (FarragoCacheEntry entry : entryList) {
                 tracer.finest(
                     "unpinning cache entry " + entry
                     + " with pin count " + entry.pinCount);
-                entry.pinCount--;
-
-                if (0 == entry.pinCount) {
+                if (0 == entry.releasePin()) {
                     if (entry.getValue() instanceof FarragoAllocation) {
                         ((FarragoAllocation) entry.getValue())
                         .closeAllocation();
                     }
-                    discard(key);
+                    discardKey = true;
                 }
             }
         }
+        if (discardKey) {
+            discard(key);
+        }
     }
 
     /**
@@ -533,12 +559,24 @@ public class FarragoObjectCache
      */
     public void discard(Object key)
     {
-        List<FarragoCacheEntry> list;
-        synchronized (mapKeyToEntry) {
-            list = mapKeyToEntry.getMulti(key);
-            mapKeyToEntry.remove(key);
-            for (FarragoCacheEntry entry : list) {
-                victimPolicy.unregisterEntry(entry);
+        List<FarragoCacheEntry> list = new ArrayList<FarragoCacheEntry>();
+        MultiMap<Object, FarragoCacheEntry> stripe = getStripe(key);
+        synchronized (stripe) {
+            for (FarragoCacheEntry entry : stripe.getMulti(key)) {
+                // entries already claimed by a concurrent eviction are that
+                // caller's responsibility
+                if (entry.tryClaim()) {
+                    list.add(entry);
+                } else {
+                    assert (entry.pinCount.get() < 0)
+                        : "expected pin-count=0 for entry " + entry;
+                }
+            }
+            stripe.remove(key);
+            synchronized (victimPolicy) {
+                for (FarragoCacheEntry entry : list) {
+                    victimPolicy.unregisterEntry(entry);
+                }
             }
         }
 
@@ -556,58 +594,76 @@ public class FarragoObjectCache
     public void discardAll()
     {
         tracer.fine("discarding all entries");
-        synchronized (mapKeyToEntry) {
-            Iterator<Map.Entry<Object, FarragoCacheEntry>> iter =
-                mapKeyToEntry.entryIterMulti();
-            while (iter.hasNext()) {
-                Map.Entry<Object, FarragoCacheEntry> mapEntry = iter.next();
-                FarragoCacheEntry entry = mapEntry.getValue();
-                discardEntry(entry);
+        List<FarragoCacheEntry> list = new ArrayList<FarragoCacheEntry>();
+        for (MultiMap<Object, FarragoCacheEntry> stripe : stripes) {
+            synchronized (stripe) {
+                Iterator<Map.Entry<Object, FarragoCacheEntry>> iter =
+                    stripe.entryIterMulti();
+                while (iter.hasNext()) {
+                    Map.Entry<Object, FarragoCacheEntry> mapEntry = iter.next();
+                    FarragoCacheEntry entry = mapEntry.getValue();
+                    if (entry.tryClaim()) {
+                        list.add(entry);
+                    } else {
+                        assert (entry.pinCount.get() < 0)
+                            : "expected pin-count=0 for entry " + entry;
+                    }
+                }
+                stripe.clear();
             }
-            mapKeyToEntry.clear();
+        }
+        synchronized (victimPolicy) {
             victimPolicy.clearCache();
         }
+
+        // closing a value may unpin entries it was composed from, so do it
+        // without holding any stripe lock
+        for (FarragoCacheEntry entry : list) {
+            discardEntry(entry);
+        }
     }
 
     private void discardEntry(FarragoCacheEntry entry)
     {
-        synchronized (entry) {
-            if (tracer.isLoggable(Level.FINE)) {
-                tracer.fine(
-                    "Discarding entry " + entry.key.toString()
-                    + ", size " + entry.memoryUsage.get());
-            }
+        if (tracer.isLoggable(Level.FINE)) {
+            tracer.fine(
+                "Discarding entry " + entry.key.toString()
+                + ", size " + entry.memoryUsage.get());
+        }
 
-            assert (entry.pinCount == 0) : "expected pin-count=0 for entry "
-                + entry;
-            assert (entry.constructionThread == null) : entry;
+        // caller must have claimed the entry
+        assert (entry.pinCount.get() < 0) : "expected claimed entry "
+            + entry;
+        assert (entry.constructionThread == null) : entry;
 
-            if (entry.value instanceof FarragoAllocation) {
-                ((FarragoAllocation) entry.value).closeAllocation();
-            }
+        if (entry.value instanceof FarragoAllocation) {
+            ((FarragoAllocation) entry.value).closeAllocation();
         }
 
-        synchronized (mapKeyToEntry) {
-            bytesUsed -= entry.memoryUsage.get();
-        }
+        bytesUsed.addAndGet(-entry.memoryUsage.get());
     }
 
     // implement FarragoAllocation
     public void closeAllocation()
     {
         discardAll();
-        assert (bytesUsed == 0);
+        assert (bytesUsed.get() == 0);
     }
 
     public void dumpCache()
     {
-        Iterator<Map.Entry<Object, FarragoCacheEntry>> it =
-            mapKeyToEntry.entryIterMulti();
-        while (it.hasNext()) {
-            Map.Entry<Object, FarragoCacheEntry> entry = it.next();
-            tracer.fine(
-                "objectCache[" + entry.getKey().getClass().getName()
-                + "," + entry.getKey() + "]=" + entry.getValue().getValue());
+        for (MultiMap<Object, FarragoCacheEntry> stripe : stripes) {
+            synchronized (stripe) {
+                Iterator<Map.Entry<Object, FarragoCacheEntry>> it =
+                    stripe.entryIterMulti();
+                while (it.hasNext()) {
+                    Map.Entry<Object, FarragoCacheEntry> entry = it.next();
+                    tracer.fine(
+                        "objectCache[" + entry.getKey().getClass().getName()
+                        + "," + entry.getKey() + "]="
+                        + entry.getValue().value);
+                }
+            }
         }
     }
 
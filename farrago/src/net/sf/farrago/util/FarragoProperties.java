@@ -88,6 +88,156 @@ public class FarragoProperties
             "net.sf.farrago.defaultSessionFactoryLibraryName",
             "class net.sf.farrago.defimpl.FarragoDefaultSessionFactory");
 
+    /**
+     * The boolean property "net.sf.farrago.codeCache.persist" enables the
+     * persistent tier of the code cache: prepared statements are saved under
+     * the catalog directory (see {@link #getCatalogDir}) so that after a
+     * restart they can be reloaded instead of being prepared and compiled
+     * again. Defaults to false.
+     */
+    public final BooleanProperty persistCodeCache =
+        new BooleanProperty(
+            this,
+            "net.sf.farrago.codeCache.persist",
+            false);
+
+    /**
+     * The boolean property "net.sf.farrago.fennel.xmiPlans" causes stream
+     * graph plans to be passed to Fennel as XMI rather than in the binary form
+     * produced by {@link net.sf.farrago.fennel.FennelPlanCodec}. XMI is
+     * slower to produce and much slower to read back, but is human-readable,
+     * which can help when debugging. Defaults to false.
+     */
+    public final BooleanProperty xmiFennelPlans =
+        new BooleanProperty(
+            this,
+            "net.sf.farrago.fennel.xmiPlans",
+            false);
+
+    /**
+     * The integer property "net.sf.farrago.runtime.udxBatchSize" specifies
+     * how many rows a Java UDX produces before they are handed to the consumer
+     * as a page, rather than one at a time (see {@link
+     * net.sf.farrago.runtime.FarragoJavaUdxIterator}). A value of 1 disables
+     * batching. Defaults to 128.
+     */
+    public final IntegerProperty udxBatchSize =
+        new IntegerProperty(
+            this,
+            "net.sf.farrago.runtime.udxBatchSize",
+            128,
+            1,
+            Integer.MAX_VALUE);
+
+    /**
+     * The boolean property "net.sf.farrago.fennel.directFetch" causes
+     * statements executed entirely in Fennel to fetch their results into
+     * pooled direct buffers, from which the result set reads column values in
+     * place. If false, rows are copied into a Java array and unmarshalled
+     * into objects. Defaults to true.
+     */
+    public final BooleanProperty fennelDirectFetch =
+        new BooleanProperty(
+            this,
+            "net.sf.farrago.fennel.directFetch",
+            true);
+
+    /**
+     * The boolean property "net.sf.farrago.fennel.batchCalc" causes Fennel
+     * calculator programs made up only of operators which have batch
+     * implementations to be evaluated over batches of rows, one expression at
+     * a time, rather than row by row (see {@link
+     * net.sf.farrago.fennel.calc.BatchCalcTranslator}). Defaults to true.
+     */
+    public final BooleanProperty fennelBatchCalc =
+        new BooleanProperty(
+            this,
+            "net.sf.farrago.fennel.batchCalc",
+            true);
+
+    /**
+     * The integer property "net.sf.farrago.planner.concurrency" specifies how
+     * many rule matches the default Volcano planner may fire at once, on
+     * worker threads, if their rules are accepted by {@link
+     * #plannerConcurrentRules}. Defaults to 1, which fires one at a time.
+     */
+    public final IntegerProperty plannerConcurrency =
+        new IntegerProperty(
+            this,
+            "net.sf.farrago.planner.concurrency",
+            1,
+            1,
+            Integer.MAX_VALUE);
+
+    /**
+     * The string property "net.sf.farrago.planner.concurrentRules" is a
+     * regular expression matching the descriptions of the rules which the
+     * default Volcano planner may fire concurrently (see {@link
+     * org.eigenbase.relopt.volcano.VolcanoPlanner#setConcurrentRuleFilter}).
+     * Defaults to the logical push-down rules.
+     */
+    public final StringProperty plannerConcurrentRules =
+        new StringProperty(
+            this,
+            "net.sf.farrago.planner.concurrentRules",
+            "Push.*");
+
+    /**
+     * The integer property "net.sf.farrago.planner.timeBudget" specifies how
+     * many milliseconds the default Volcano planner may spend preparing a
+     * statement before it settles for the best plan found so far. Planning
+     * always continues until some plan is found. Defaults to 0, meaning no
+     * limit.
+     */
+    public final IntegerProperty plannerTimeBudget =
+        new IntegerProperty(
+            this,
+            "net.sf.farrago.planner.timeBudget",
+            0,
+            0,
+            Integer.MAX_VALUE);
+
+    /**
+     * The integer property "net.sf.farrago.planner.costImprovementWindow"
+     * specifies how many rule matches the default Volcano planner may fire
+     * without reducing the cost of its best plan by {@link
+     * #plannerMinCostImprovement} before it settles for that plan. Defaults to
+     * 0, meaning no limit.
+     */
+    public final IntegerProperty plannerCostImprovementWindow =
+        new IntegerProperty(
+            this,
+            "net.sf.farrago.planner.costImprovementWindow",
+            0,
+            0,
+            Integer.MAX_VALUE);
+
+    /**
+     * The double property "net.sf.farrago.planner.minCostImprovement" is the
+     * fraction by which the cost of the best plan must fall within {@link
+     * #plannerCostImprovementWindow} rule matches for planning to continue.
+     * Defaults to 0.01.
+     */
+    public final DoubleProperty plannerMinCostImprovement =
+        new DoubleProperty(
+            this,
+            "net.sf.farrago.planner.minCostImprovement",
+            0.01,
+            0,
+            0.99);
+
+    /**
+     * The boolean property "net.sf.farrago.med.jdbc.directFennel" causes rows
+     * read from foreign JDBC servers into Fennel to be marshalled straight
+     * from the foreign ResultSet into Fennel tuples, rather than through a
+     * synthetic row object per row. Defaults to true.
+     */
+    public final BooleanProperty medJdbcDirectFennel =
+        new BooleanProperty(
+            this,
+            "net.sf.farrago.med.jdbc.directFennel",
+            true);
+
     /**
      * The string property "net.sf.farrago.test.jdbcDriverClass" specifies the
      * fully qualified name of the JDBC driver to use during testing. If not
@@ -66,7 +66,22 @@ public abstract class FarragoUtil
      */
     public static long getFennelMemoryUsage(String s)
     {
-        int xmiSize = FarragoUtil.getStringMemoryUsage(s);
+        return getFennelMemoryUsage((long) s.length());
+    }
+
+    /**
+     * Estimates the memory used by the Fennel portion of a query plan from
+     * the length of its XMI representation, as {@link
+     * #getFennelMemoryUsage(String)} does. Used for plans which are held in
+     * another form, but whose XMI length is known.
+     *
+     * @param xmiLength length of the XMI plan, in characters
+     *
+     * @return estimated memory usage
+     */
+    public static long getFennelMemoryUsage(long xmiLength)
+    {
+        long xmiSize = xmiLength * 2;
         return (long) ((double) xmiSize * 1.5);
     }
 
@@ -55,6 +55,12 @@ public class JaninoCompiler
     // REVIEW jvs 28-June-2004:  pool this instance?  Is it thread-safe?
     private AccountingClassLoader classLoader;
 
+    /**
+     * Bytecode generated so far, keyed by class name, or null if it is not
+     * being retained; see {@link #setRetainByteCodes}.
+     */
+    private Map<String, byte []> byteCodes;
+
     //~ Constructors -----------------------------------------------------------
 
     public JaninoCompiler()
@@ -95,7 +101,8 @@ public class JaninoCompiler
             new AccountingClassLoader(
                 parentClassLoader,
                 sourceFinder,
-                null);
+                null,
+                byteCodes);
         try {
             classLoader.loadClass(args.fullClassName);
         } catch (ClassNotFoundException ex) {
@@ -121,6 +128,41 @@ public class JaninoCompiler
         return classLoader.getTotalByteCodeSize();
     }
 
+    /**
+     * Requests that the bytecode of classes compiled from now on be retained,
+     * so that the caller can save it and define the classes again later
+     * without recompiling.
+     *
+     * @param retain whether to retain bytecode
+     */
+    public void setRetainByteCodes(boolean retain)
+    {
+        if (retain) {
+            if (byteCodes == null) {
+                byteCodes = new LinkedHashMap<String, byte []>();
+            }
+        } else {
+            byteCodes = null;
+        }
+    }
+
+    /**
+     * Returns the bytecode retained since the last call, and forgets it.
+     *
+     * @return map from class name to bytecode, in order of generation; empty
+     * unless {@link #setRetainByteCodes} was called before compilation
+     */
+    public Map<String, byte []> takeByteCodes()
+    {
+        if (byteCodes == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, byte []> result =
+            new LinkedHashMap<String, byte []>(byteCodes);
+        byteCodes.clear();
+        return result;
+    }
+
     //~ Inner Classes ----------------------------------------------------------
 
     private static class JaninoCompilerArgs
@@ -165,16 +207,19 @@ public class JaninoCompiler
         extends JavaSourceClassLoader
     {
         private int nBytes;
+        private final Map<String, byte []> byteCodes;
 
         public AccountingClassLoader(
             ClassLoader parentClassLoader,
             ResourceFinder sourceFinder,
-            String optionalCharacterEncoding)
+            String optionalCharacterEncoding,
+            Map<String, byte []> byteCodes)
         {
             super(
                 parentClassLoader,
                 sourceFinder,
                 optionalCharacterEncoding);
+            this.byteCodes = byteCodes;
         }
 
         int getTotalByteCodeSize()
@@ -199,6 +244,14 @@ public class JaninoCompiler
                 byte [] bytes = (byte []) obj;
                 nBytes += bytes.length;
             }
+            if (byteCodes != null) {
+                for (Object obj : map.entrySet()) {
+                    Map.Entry mapEntry = (Map.Entry) obj;
+                    byteCodes.put(
+                        (String) mapEntry.getKey(),
+                        (byte []) mapEntry.getValue());
+                }
+            }
             return map;
         }
     }
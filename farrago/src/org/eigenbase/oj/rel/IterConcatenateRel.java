@@ -22,19 +22,28 @@
 */
 package org.eigenbase.oj.rel;
 
+import java.util.*;
+
 import openjava.mop.*;
 
 import openjava.ptree.*;
 
 import org.eigenbase.oj.util.*;
 import org.eigenbase.rel.*;
+import org.eigenbase.rel.convert.*;
 import org.eigenbase.rel.metadata.*;
 import org.eigenbase.relopt.*;
+import org.eigenbase.runtime.*;
 
 
 /**
  * <code>IterConcatenateRel</code> concatenates several iterators. It is an
  * iterator implementation of {@link UnionRel}.
+ *
+ * <p>If all of the inputs are independent sources (see {@link #isParallel}),
+ * the generated code reads them concurrently using a {@link
+ * CompoundParallelTupleIter}; otherwise, it reads them one after another
+ * using a {@link CompoundTupleIter}.
  */
 public class IterConcatenateRel
     extends UnionRelBase
@@ -90,8 +99,56 @@ public class IterConcatenateRel
 
     protected OJClass getCompoundIteratorClass()
     {
-        return OJClass.forClass(
-            org.eigenbase.runtime.CompoundTupleIter.class);
+        if (isParallel()) {
+            return OJClass.forClass(CompoundParallelTupleIter.class);
+        }
+        return OJClass.forClass(CompoundTupleIter.class);
+    }
+
+    /**
+     * Returns whether the inputs of this relational expression should be read
+     * in parallel. This is the case if there is more than one input, and each
+     * input is an independent source which spends most of its time waiting on
+     * something other than this statement: a conversion from a {@link
+     * ResultSetRel} (for example, a query against a foreign server), or a
+     * table function without relational inputs. Two conversions from
+     * ResultSetRels which share a connection (see {@link
+     * ResultSetRel#getSharedConnectionKey}) are not independent, since a
+     * connection cannot safely be read from several threads at once.
+     *
+     * @return whether inputs should be read in parallel
+     */
+    public boolean isParallel()
+    {
+        if (inputs.length < 2) {
+            return false;
+        }
+        Set<Object> connectionKeys = new HashSet<Object>();
+        for (RelNode input : inputs) {
+            if (!isIndependentSource(input, connectionKeys)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isIndependentSource(
+        RelNode rel,
+        Set<Object> connectionKeys)
+    {
+        if (rel instanceof ConverterRel) {
+            RelNode [] children = rel.getInputs();
+            if ((children.length != 1)
+                || !(children[0] instanceof ResultSetRel))
+            {
+                return false;
+            }
+            Object key =
+                ((ResultSetRel) children[0]).getSharedConnectionKey();
+            return (key == null) || connectionKeys.add(key);
+        }
+        return (rel instanceof TableFunctionRelBase)
+            && (rel.getInputs().length == 0);
     }
 
     public ParseTree implement(JavaRelImplementor implementor)
@@ -99,10 +156,11 @@ public class IterConcatenateRel
         // Generate
         //   new CompoundTupleIter(
         //     new TupleIter[] {<<input0>>, ...})
-        // If any input is infinite, should instead generate
+        // or, if the inputs are independent sources,
         //   new CompoundParallelTupleIter(
-        //     new TupleIter[] {<<input0>>, ...})
-        // but there's no way to tell, so we can't.
+        //     new TupleIter[] {<<input0>>, ...}, <<cancelFlag>>)
+        // Infinite inputs would also need the parallel variant, but there's
+        // no way to tell.
 
         // REVIEW: mb 9-Sep-2005: add a predicate RelNode.isInfinite().
         ExpressionList exps = new ExpressionList();
@@ -111,13 +169,21 @@ public class IterConcatenateRel
                 implementor.visitJavaChild(this, i, (JavaRel) inputs[i]);
             exps.add(exp);
         }
-        return new AllocationExpression(
-            getCompoundIteratorClass(),
+        ExpressionList args =
             new ExpressionList(
                 new ArrayAllocationExpression(
                     OJUtil.clazzTupleIter,
                     new ExpressionList(null),
-                    new ArrayInitializer(exps))));
+                    new ArrayInitializer(exps)));
+        if (isParallel()) {
+            Expression cancelFlag = implementor.getCancelFlagExpression();
+            if (cancelFlag != null) {
+                args.add(cancelFlag);
+            }
+        }
+        return new AllocationExpression(
+            getCompoundIteratorClass(),
+            args);
     }
 }
 
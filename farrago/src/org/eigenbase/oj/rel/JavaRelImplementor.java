@@ -473,6 +473,18 @@ public class JavaRelImplementor
         throw Util.needToImplement("getConnectionVariable");
     }
 
+    /**
+     * Returns an expression which evaluates, in generated code, to the {@link
+     * org.eigenbase.util.CancelFlag} of the executing statement.
+     *
+     * @return cancel flag expression, or null if generated code has no access
+     * to one
+     */
+    public Expression getCancelFlagExpression()
+    {
+        return null;
+    }
+
     public void popStatementList(StatementList stmtList)
     {
         assert (stmtList == getStatementList());
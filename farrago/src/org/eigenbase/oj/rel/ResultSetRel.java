@@ -33,6 +33,18 @@ package org.eigenbase.oj.rel;
 public interface ResultSetRel
     extends JavaRel
 {
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Returns a key identifying the connection this relational expression
+     * reads from at runtime, if that connection may also be read by other
+     * relational expressions in the same statement. Expressions with equal
+     * keys must not be read concurrently.
+     *
+     * @return key of shared connection, or null if each execution of this
+     * expression gets a connection of its own
+     */
+    Object getSharedConnectionKey();
 }
 
 // End ResultSetRel.java
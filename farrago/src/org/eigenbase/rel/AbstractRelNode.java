@@ -44,11 +44,9 @@ public abstract class AbstractRelNode
 {
     //~ Static fields/initializers ---------------------------------------------
 
-    // TODO jvs 10-Oct-2003:  Make this thread safe.  Either synchronize, or
-    // keep this per-VolcanoPlanner.
-
     /**
-     * generator for {@link #id} values
+     * generator for {@link #id} values; guarded by the class, since rules may
+     * create relational expressions on several threads at once
      */
     static int nextId = 0;
     private static final Logger tracer = EigenbaseTrace.getPlannerTracer();
@@ -107,7 +105,7 @@ public abstract class AbstractRelNode
         assert (cluster != null);
         this.cluster = cluster;
         this.traits = traits;
-        this.id = nextId++;
+        this.id = allocateId();
         this.digest = getRelTypeName() + "#" + id;
         this.desc = digest;
         tracer.finest("new " + digest);
@@ -115,6 +113,25 @@ public abstract class AbstractRelNode
 
     //~ Methods ----------------------------------------------------------------
 
+    private static synchronized int allocateId()
+    {
+        return nextId++;
+    }
+
+    /**
+     * Gives this relational expression a new id. Planners which create
+     * expressions on several threads use this to number them in a
+     * deterministic order before registering them.
+     *
+     * @pre !getCluster().getPlanner().isRegistered(this)
+     */
+    public void reassignId()
+    {
+        this.id = allocateId();
+        this.digest = getRelTypeName() + "#" + id;
+        this.desc = digest;
+    }
+
     public abstract RelNode clone();
 
     public boolean isAccessTo(RelOptTable table)
@@ -183,6 +183,13 @@ public class JdbcQuery
         return queryString;
     }
 
+    // implement ResultSetRel
+    public Object getSharedConnectionKey()
+    {
+        // implement() opens a new connection each time
+        return null;
+    }
+
     public JdbcQuery clone()
     {
         JdbcQuery clone =
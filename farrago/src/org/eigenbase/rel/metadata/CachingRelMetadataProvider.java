@@ -32,6 +32,17 @@ import org.eigenbase.util.*;
  * CachingRelMetadataProvider implements the {@link RelMetadataProvider}
  * interface by caching results from an underlying provider.
  *
+ * <p>Results are keyed by the digest of the relational expression together
+ * with the query name and arguments, so that equivalent expressions share
+ * entries, and an entry outlives the planner phase, or the planner, which
+ * created it. Each entry records the metadata timestamp which the planner
+ * reported for the expression (see {@link
+ * RelOptPlanner#getRelMetadataTimestamp}); it is recomputed only if the
+ * timestamp has changed.
+ *
+ * <p>The provider counts the calls it receives, so that the volume of metadata
+ * queries made while preparing a statement can be traced.
+ *
  * @author John V. Sichi
  * @version $Id$
  */
@@ -40,12 +51,18 @@ public class CachingRelMetadataProvider
 {
     //~ Instance fields --------------------------------------------------------
 
-    private final Map<List, CacheEntry> cache;
+    private final Map<CacheKey, CacheEntry> cache;
 
     private final RelMetadataProvider underlyingProvider;
 
     private final RelOptPlanner planner;
 
+    /**
+     * Number of calls and cache hits for each metadata query name. Guarded by
+     * {@link #cache}.
+     */
+    private final Map<String, int []> callCounts;
+
     //~ Constructors -----------------------------------------------------------
 
     public CachingRelMetadataProvider(
@@ -55,7 +72,8 @@ public class CachingRelMetadataProvider
         this.underlyingProvider = underlyingProvider;
         this.planner = planner;
 
-        cache = new HashMap<List, CacheEntry>();
+        cache = new HashMap<CacheKey, CacheEntry>();
+        callCounts = new TreeMap<String, int []>();
     }
 
     //~ Methods ----------------------------------------------------------------
@@ -66,49 +84,137 @@ public class CachingRelMetadataProvider
         String metadataQueryName,
         Object [] args)
     {
-        // TODO jvs 30-Mar-2006: Use meta-metadata to decide which metadata
-        // query results can stay fresh until the next Ice Age.
-
-        // Compute hash key.
-        List<Object> hashKey;
-        if (args != null) {
-            hashKey = new ArrayList<Object>(args.length + 2);
-            hashKey.add(rel);
-            hashKey.add(metadataQueryName);
-            hashKey.addAll(Arrays.asList(args));
-        } else {
-            hashKey = Arrays.asList(rel, metadataQueryName);
-        }
-
+        CacheKey key = new CacheKey(rel.getDigest(), metadataQueryName, args);
         long timestamp = planner.getRelMetadataTimestamp(rel);
 
-        // Perform cache lookup.
-        CacheEntry entry = cache.get(hashKey);
-        if (entry != null) {
-            if (timestamp == entry.timestamp) {
+        // Perform cache lookup. The cache is shared by rules which a planner
+        // fires concurrently, but the underlying provider is not called with
+        // the lock held.
+        synchronized (cache) {
+            int [] counts = callCounts.get(metadataQueryName);
+            if (counts == null) {
+                counts = new int[2];
+                callCounts.put(metadataQueryName, counts);
+            }
+            ++counts[0];
+            CacheEntry entry = cache.get(key);
+            if ((entry != null) && (entry.timestamp == timestamp)) {
+                ++counts[1];
                 return entry.result;
-            } else {
-                // Cache results are stale.
             }
+
+            // Cache miss or stale.
         }
 
-        // Cache miss or stale.
         Object result =
             underlyingProvider.getRelMetadata(
                 rel,
                 metadataQueryName,
                 args);
         if (result != null) {
-            entry = new CacheEntry();
+            CacheEntry entry = new CacheEntry();
             entry.timestamp = timestamp;
             entry.result = result;
-            cache.put(hashKey, entry);
+            synchronized (cache) {
+                cache.put(key, entry);
+            }
         }
         return result;
     }
 
+    /**
+     * @return number of metadata calls received
+     */
+    public int getCallCount()
+    {
+        synchronized (cache) {
+            int n = 0;
+            for (int [] counts : callCounts.values()) {
+                n += counts[0];
+            }
+            return n;
+        }
+    }
+
+    /**
+     * @return number of metadata calls answered from the cache
+     */
+    public int getHitCount()
+    {
+        synchronized (cache) {
+            int n = 0;
+            for (int [] counts : callCounts.values()) {
+                n += counts[1];
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Describes the calls received for each metadata query, for tracing.
+     *
+     * @return description such as "getRowCount: 120 calls, 95 hits; ..."
+     */
+    public String getCallCountString()
+    {
+        StringBuilder buf = new StringBuilder();
+        synchronized (cache) {
+            for (Map.Entry<String, int []> entry : callCounts.entrySet()) {
+                if (buf.length() > 0) {
+                    buf.append("; ");
+                }
+                buf.append(entry.getKey()).append(": ");
+                buf.append(entry.getValue()[0]).append(" calls, ");
+                buf.append(entry.getValue()[1]).append(" hits");
+            }
+        }
+        return buf.toString();
+    }
+
     //~ Inner Classes ----------------------------------------------------------
 
+    /**
+     * Key of a cache entry: digest, query name and arguments.
+     */
+    private static class CacheKey
+    {
+        final String digest;
+
+        final String metadataQueryName;
+
+        final Object [] args;
+
+        final int hash;
+
+        CacheKey(String digest, String metadataQueryName, Object [] args)
+        {
+            this.digest = digest;
+            this.metadataQueryName = metadataQueryName;
+            this.args = args;
+            this.hash =
+                Util.hash(
+                    digest.hashCode() * 31 + metadataQueryName.hashCode(),
+                    Arrays.hashCode(args));
+        }
+
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey that = (CacheKey) obj;
+            return (hash == that.hash)
+                && digest.equals(that.digest)
+                && metadataQueryName.equals(that.metadataQueryName)
+                && Arrays.equals(args, that.args);
+        }
+    }
+
     private static class CacheEntry
     {
         long timestamp;
@@ -24,6 +24,7 @@ package org.eigenbase.rel.metadata;
 import java.lang.reflect.*;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 import org.eigenbase.rel.*;
 import org.eigenbase.util.*;
@@ -34,6 +35,14 @@ import org.eigenbase.util.*;
  * implementations of the {@link RelMetadataProvider} interface. For an example,
  * see {@link DefaultRelMetadataProvider}.
  *
+ * <p>The method which answers a query for a given class of relational
+ * expression is looked up once, and then invoked reflectively for each later
+ * query on an expression of that class. Handlers calling the methods
+ * directly are not generated (say with Janino), since after a few calls the
+ * JVM already replaces the reflective call with a generated accessor, while
+ * providers are created for each statement prepared, so generated handlers
+ * would have to be cached per provider class, for the life of the JVM.
+ *
  * <p>TODO jvs 28-Mar-2006: most of this should probably be refactored into
  * ReflectUtil.
  *
@@ -51,6 +60,13 @@ public abstract class ReflectiveRelMetadataProvider
     private final ReflectiveVisitDispatcher<ReflectiveRelMetadataProvider,
         RelNode> visitDispatcher;
 
+    /**
+     * For each metadata query name, the handler which answers it for each
+     * class of relational expression. Safe for use by several threads.
+     */
+    private final ConcurrentMap<String, ConcurrentMap<Class, Handler>>
+        handlerMap;
+
     //~ Constructors -----------------------------------------------------------
 
     /**
@@ -59,6 +75,8 @@ public abstract class ReflectiveRelMetadataProvider
     protected ReflectiveRelMetadataProvider()
     {
         parameterTypeMap = new HashMap<String, List<Class>>();
+        handlerMap =
+            new ConcurrentHashMap<String, ConcurrentMap<Class, Handler>>();
         visitDispatcher =
             ReflectUtil.createDispatcher(
                 ReflectiveRelMetadataProvider.class,
@@ -87,17 +105,7 @@ public abstract class ReflectiveRelMetadataProvider
         String metadataQueryName,
         Object [] args)
     {
-        List<Class> parameterTypes = parameterTypeMap.get(metadataQueryName);
-        if (parameterTypes == null) {
-            parameterTypes = Collections.emptyList();
-        }
-        Method method =
-            visitDispatcher.lookupVisitMethod(
-                getClass(),
-                rel.getClass(),
-                metadataQueryName,
-                parameterTypes);
-
+        Method method = getHandler(rel.getClass(), metadataQueryName).method;
         if (method == null) {
             return null;
         }
@@ -124,6 +132,63 @@ public abstract class ReflectiveRelMetadataProvider
             }
         }
     }
+
+    private Handler getHandler(Class relClass, String metadataQueryName)
+    {
+        ConcurrentMap<Class, Handler> classMap =
+            handlerMap.get(metadataQueryName);
+        if (classMap == null) {
+            classMap = new ConcurrentHashMap<Class, Handler>();
+            ConcurrentMap<Class, Handler> existing =
+                handlerMap.putIfAbsent(metadataQueryName, classMap);
+            if (existing != null) {
+                classMap = existing;
+            }
+        }
+        Handler handler = classMap.get(relClass);
+        if (handler == null) {
+            List<Class> parameterTypes =
+                parameterTypeMap.get(metadataQueryName);
+            if (parameterTypes == null) {
+                parameterTypes = Collections.emptyList();
+            }
+            Method method;
+
+            // The dispatcher caches lookups, but is not thread-safe.
+            synchronized (visitDispatcher) {
+                method =
+                    visitDispatcher.lookupVisitMethod(
+                        getClass(),
+                        relClass,
+                        metadataQueryName,
+                        parameterTypes);
+            }
+            if (method != null) {
+                // Skip access checks on each call.
+                method.setAccessible(true);
+            }
+            handler = new Handler(method);
+            classMap.put(relClass, handler);
+        }
+        return handler;
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Method which answers a metadata query for a class of relational
+     * expression. Wraps the method, which may be null, since a concurrent map
+     * cannot hold null values.
+     */
+    private static class Handler
+    {
+        final Method method;
+
+        Handler(Method method)
+        {
+            this.method = method;
+        }
+    }
 }
 
 // End ReflectiveRelMetadataProvider.java
@@ -27,7 +27,9 @@ import org.eigenbase.rel.*;
 import org.eigenbase.rel.rules.*;
 import org.eigenbase.relopt.*;
 import org.eigenbase.rex.*;
+import org.eigenbase.sarg.*;
 import org.eigenbase.sql.fun.*;
+import org.eigenbase.stat.*;
 import org.eigenbase.util14.*;
 
 
@@ -282,6 +284,69 @@ public class RelMdDistinctRowCount
             RelMetadataQuery.getRowCount(rel));
     }
 
+    public Double getDistinctRowCount(
+        TableAccessRelBase rel,
+        BitSet groupKey,
+        RexNode predicate)
+    {
+        RelStatSource tabStats = RelMetadataQuery.getStatistics(rel);
+        if ((tabStats == null) || groupKey.isEmpty()) {
+            return getDistinctRowCount((RelNode) rel, groupKey, predicate);
+        }
+
+        // restrict each key column by the sargable predicates on it, so
+        // that the histogram can count the values they select
+        Map<Integer, SargIntervalSequence> sargSeqMap =
+            new HashMap<Integer, SargIntervalSequence>();
+        if (predicate != null) {
+            SargFactory sargFactory =
+                new SargFactory(rel.getCluster().getRexBuilder());
+            SargRexAnalyzer rexAnalyzer = sargFactory.newRexAnalyzer();
+            for (SargBinding sargBinding : rexAnalyzer.analyzeAll(predicate)) {
+                SargIntervalSequence sargSeq =
+                    sargBinding.getExpr().evaluate();
+                if (!sargSeq.getList().isEmpty()) {
+                    sargSeqMap.put(
+                        sargBinding.getInputRef().getIndex(),
+                        sargSeq);
+                }
+            }
+        }
+
+        // combine the cardinalities of the key columns, which are assumed
+        // independent unless column groups relate them
+        Map<Integer, Double> cardinalities = new HashMap<Integer, Double>();
+        for (int col = groupKey.nextSetBit(0);
+            col >= 0;
+            col = groupKey.nextSetBit(col + 1))
+        {
+            RelStatColumnStatistics colStats =
+                tabStats.getColumnStatistics(col, sargSeqMap.get(col));
+            Double cardinality = null;
+            if (colStats != null) {
+                cardinality = colStats.getCardinality();
+            }
+            if (cardinality == null) {
+                return getDistinctRowCount((RelNode) rel, groupKey, predicate);
+            }
+            cardinalities.put(col, cardinality);
+        }
+        double distinctRowCount =
+            RelStatUtil.combineCardinalities(
+                tabStats.getColumnGroupStatistics(),
+                cardinalities);
+
+        // there cannot be more distinct values than selected rows
+        Double selectedRowCount =
+            NumberUtil.multiply(
+                RelMetadataQuery.getRowCount(rel),
+                RelMetadataQuery.getSelectivity(rel, predicate));
+        if (selectedRowCount == null) {
+            return distinctRowCount;
+        }
+        return RelMdUtil.numDistinctVals(distinctRowCount, selectedRowCount);
+    }
+
     // Catch-all rule when none of the others apply.
     public Double getDistinctRowCount(
         RelNode rel,
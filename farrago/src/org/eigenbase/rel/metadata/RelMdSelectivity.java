@@ -27,7 +27,9 @@ import org.eigenbase.rel.*;
 import org.eigenbase.rel.rules.*;
 import org.eigenbase.relopt.*;
 import org.eigenbase.rex.*;
+import org.eigenbase.sarg.*;
 import org.eigenbase.sql.fun.*;
+import org.eigenbase.stat.*;
 
 
 /**
@@ -193,6 +195,71 @@ public class RelMdSelectivity
         }
     }
 
+    public Double getSelectivity(TableAccessRelBase rel, RexNode predicate)
+    {
+        if (predicate == null) {
+            return 1.0;
+        }
+
+        // Without statistics there is nothing better than the guess the
+        // catch-all would make.
+        RelStatSource tabStats = RelMetadataQuery.getStatistics(rel);
+        if (tabStats == null) {
+            return RelMdUtil.guessSelectivity(predicate);
+        }
+
+        SargFactory sargFactory =
+            new SargFactory(rel.getCluster().getRexBuilder());
+        SargRexAnalyzer rexAnalyzer = sargFactory.newRexAnalyzer();
+        List<SargBinding> sargBindingList = rexAnalyzer.analyzeAll(predicate);
+
+        // Column histograms know about skewed values and nulls, so use them
+        // for the sargable predicates; guess the rest.  Equality predicates
+        // on columns in a column group are combined using the dependencies
+        // between the columns rather than assumed independent.
+        List<RelStatColumnGroupStatistics> columnGroups =
+            tabStats.getColumnGroupStatistics();
+        Map<Integer, Double> pointSels = new HashMap<Integer, Double>();
+        double selectivity = 1.0;
+        for (SargBinding sargBinding : sargBindingList) {
+            int ordinal = sargBinding.getInputRef().getIndex();
+            SargIntervalSequence sargSeq = sargBinding.getExpr().evaluate();
+            Double colSel = null;
+            if (sargSeq.getList().isEmpty()) {
+                colSel = 0.0;
+            } else {
+                RelStatColumnStatistics colStats =
+                    tabStats.getColumnStatistics(ordinal, sargSeq);
+                if (colStats != null) {
+                    colSel = colStats.getSelectivity();
+                }
+            }
+            if (colSel == null) {
+                // the column has not been analyzed
+                return RelMdUtil.guessSelectivity(predicate);
+            }
+            if (sargSeq.isPoint()
+                && !pointSels.containsKey(ordinal)
+                && RelStatUtil.isGrouped(columnGroups, ordinal))
+            {
+                pointSels.put(ordinal, colSel);
+            } else {
+                selectivity *= colSel;
+            }
+        }
+        selectivity *=
+            RelStatUtil.combineSelectivities(columnGroups, pointSels);
+        selectivity *=
+            RelMdUtil.guessSelectivity(rexAnalyzer.getNonSargFilterRexNode());
+
+        // selectivity must return at least one row
+        Double rowCount = tabStats.getRowCount();
+        if ((rowCount != null) && (rowCount >= 1.0)) {
+            selectivity = Math.max(selectivity, 1.0 / rowCount);
+        }
+        return selectivity;
+    }
+
     // Catch-all rule when none of the others apply.
     public Double getSelectivity(RelNode rel, RexNode predicate)
     {
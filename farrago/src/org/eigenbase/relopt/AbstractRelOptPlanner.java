@@ -22,6 +22,7 @@
 package org.eigenbase.relopt;
 
 import java.util.*;
+import java.util.concurrent.atomic.*;
 import java.util.logging.*;
 import java.util.regex.*;
 
@@ -49,6 +50,12 @@ public abstract class AbstractRelOptPlanner
      */
     private static final Pattern IntegerPattern = Pattern.compile("[0-9]+");
 
+    /**
+     * Generator for metadata timestamps. Shared by all planners, so that a
+     * timestamp identifies a single change, whichever planner made it.
+     */
+    private static final AtomicLong metadataTimestampGen = new AtomicLong();
+
     //~ Instance fields --------------------------------------------------------
 
     /**
@@ -189,7 +196,27 @@ public abstract class AbstractRelOptPlanner
     // implement RelOptPlanner
     public long getRelMetadataTimestamp(RelNode rel)
     {
-        return 0;
+        // The metadata of a relational expression depends only on its own
+        // attributes, which are reflected in its digest, and on its inputs.
+        // Planners which represent inputs by expressions of their own, such
+        // as equivalence classes, override this to give such an expression a
+        // new timestamp (see newRelMetadataTimestamp) whenever its metadata
+        // might change.
+        long timestamp = 0;
+        for (RelNode input : rel.getInputs()) {
+            timestamp = Math.max(timestamp, getRelMetadataTimestamp(input));
+        }
+        return timestamp;
+    }
+
+    /**
+     * Allocates a metadata timestamp, later than any allocated before.
+     *
+     * @return new timestamp
+     */
+    public static long newRelMetadataTimestamp()
+    {
+        return metadataTimestampGen.incrementAndGet();
     }
 
     public void setImportance(RelNode rel, double importance)
@@ -248,7 +248,9 @@ public interface RelOptPlanner
     /**
      * Gets a timestamp for a given rel's metadata. This timestamp is used by
      * {@link CachingRelMetadataProvider} to decide whether cached metadata has
-     * gone stale.
+     * gone stale. Cached metadata is shared between planners, so a planner
+     * must not return a timestamp which another planner might also return for
+     * a different state of an expression with the same digest.
      *
      * @param rel rel of interest
      *
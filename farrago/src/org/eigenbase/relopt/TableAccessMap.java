@@ -109,6 +109,19 @@ public class TableAccessMap
         accessMap.put(table, mode);
     }
 
+    /**
+     * Constructs a TableAccessMap from an explicit set of tables and modes,
+     * e.g. one previously obtained via {@link #getTablesAccessed} and {@link
+     * #getTableAccessMode}.
+     *
+     * @param accessMap map from fully qualified table name to access mode;
+     * copied
+     */
+    public TableAccessMap(Map<List<String>, Mode> accessMap)
+    {
+        this.accessMap = new HashMap<List<String>, Mode>(accessMap);
+    }
+
     //~ Methods ----------------------------------------------------------------
 
     /**
@@ -803,6 +803,7 @@ public class HepPlanner
             graph.removeEdge(parent, discardedVertex);
             graph.addEdge(parent, preservedVertex);
             updateVertex(parent, parentRel);
+            invalidateMetadata(parent);
         }
 
         // NOTE:  we don't actually do graph.removeVertex(discardedVertex),
@@ -839,6 +840,7 @@ public class HepPlanner
         }
         if (rel != vertex.getCurrentRel()) {
             vertex.replaceRel(rel);
+            invalidateMetadata(vertex);
         }
         notifyEquivalence(
             rel,
@@ -972,10 +974,33 @@ public class HepPlanner
     // implement RelOptPlanner
     public long getRelMetadataTimestamp(RelNode rel)
     {
-        // TODO jvs 20-Apr-2006: This is overly conservative.  Better would be
-        // to keep a timestamp per HepRelVertex, and update only affected
-        // vertices and all ancestors on each transformation.
-        return nTransformations;
+        // Each vertex keeps a timestamp, which is updated whenever it or a
+        // vertex below it is transformed; see invalidateMetadata.
+        if (rel instanceof HepRelVertex) {
+            return ((HepRelVertex) rel).timestamp;
+        }
+        return super.getRelMetadataTimestamp(rel);
+    }
+
+    /**
+     * Gives a vertex and all of its ancestors a new metadata timestamp, so
+     * that metadata cached for the expressions which use them is recomputed.
+     *
+     * @param vertex vertex whose implementation has changed
+     */
+    private void invalidateMetadata(HepRelVertex vertex)
+    {
+        long timestamp = newRelMetadataTimestamp();
+        Set<HepRelVertex> visited = new HashSet<HepRelVertex>();
+        List<HepRelVertex> pending = new ArrayList<HepRelVertex>();
+        pending.add(vertex);
+        while (!pending.isEmpty()) {
+            HepRelVertex v = pending.remove(pending.size() - 1);
+            if (visited.add(v)) {
+                v.timestamp = timestamp;
+                pending.addAll(Graphs.predecessorListOf(graph, v));
+            }
+        }
     }
 }
 
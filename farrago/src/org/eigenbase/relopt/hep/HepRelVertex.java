@@ -45,6 +45,12 @@ public class HepRelVertex
      */
     private RelNode currentRel;
 
+    /**
+     * Timestamp for metadata validity. Changes whenever the implementation of
+     * this vertex, or of any vertex below it, changes.
+     */
+    long timestamp;
+
     //~ Constructors -----------------------------------------------------------
 
     HepRelVertex(RelNode rel)
@@ -53,6 +59,7 @@ public class HepRelVertex
             rel.getCluster(),
             rel.getTraits());
         currentRel = rel;
+        timestamp = AbstractRelOptPlanner.newRelMetadataTimestamp();
     }
 
     //~ Methods ----------------------------------------------------------------
@@ -83,7 +83,8 @@ public class RelSubset
     boolean active;
 
     /**
-     * Timestamp for metadata validity
+     * Timestamp for metadata validity. Changes whenever the best expression
+     * in this subset, or in any subset below it, changes.
      */
     long timestamp;
 
@@ -106,6 +107,7 @@ public class RelSubset
         this.parents = new ArrayList<RelNode>();
         this.bestCost = VolcanoCost.INFINITY;
         this.boosted = false;
+        this.timestamp = AbstractRelOptPlanner.newRelMetadataTimestamp();
         recomputeDigest();
     }
 
@@ -293,8 +295,6 @@ public class RelSubset
         RelNode rel,
         Set<RelSubset> activeSet)
     {
-        ++timestamp;
-
         if (!activeSet.add(this)) {
             // This subset is already in the chain being propagated to. This
             // means that the graph is cyclic, and therefore the cost of this
@@ -313,6 +313,10 @@ public class RelSubset
 
                 bestCost = cost;
                 best = rel;
+                invalidateMetadata(
+                    planner,
+                    AbstractRelOptPlanner.newRelMetadataTimestamp(),
+                    new HashSet<RelSubset>());
 
                 // Lower cost means lower importance. Other nodes will change
                 // too, but we'll get to them later.
@@ -323,12 +327,48 @@ public class RelSubset
                         planner, parent, activeSet);
                 }
                 planner.checkForSatisfiedConverters(set, rel);
+            } else if (best == null) {
+                // Until the subset has a best expression, its metadata comes
+                // from whichever expression in the set can answer, so any
+                // new expression may change it.
+                long newTimestamp =
+                    AbstractRelOptPlanner.newRelMetadataTimestamp();
+                Set<RelSubset> visited = new HashSet<RelSubset>();
+                for (RelSubset subset : set.subsets) {
+                    subset.invalidateMetadata(planner, newTimestamp, visited);
+                }
             }
         } finally {
             activeSet.remove(this);
         }
     }
 
+    /**
+     * Gives this subset and every subset which uses it a new metadata
+     * timestamp, so that metadata cached for them, and for the expressions
+     * which use them, is recomputed.
+     *
+     * @param planner Planner
+     * @param timestamp New timestamp
+     * @param visited Subsets already given the new timestamp
+     */
+    void invalidateMetadata(
+        VolcanoPlanner planner,
+        long timestamp,
+        Set<RelSubset> visited)
+    {
+        if (!visited.add(this)) {
+            return;
+        }
+        this.timestamp = timestamp;
+        for (RelNode parent : parents) {
+            final RelSubset parentSubset = planner.getSubset(parent);
+            if (parentSubset != null) {
+                parentSubset.invalidateMetadata(planner, timestamp, visited);
+            }
+        }
+    }
+
     public void propagateBoostRemoval(VolcanoPlanner planner)
     {
         planner.ruleQueue.recompute(this);
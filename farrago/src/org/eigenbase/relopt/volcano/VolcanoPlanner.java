@@ -24,11 +24,17 @@ package org.eigenbase.relopt.volcano;
 import java.io.*;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import java.util.logging.*;
 import java.util.regex.*;
 
+import openjava.mop.*;
+
+import org.eigenbase.oj.*;
 import org.eigenbase.oj.rel.*;
 import org.eigenbase.oj.rex.*;
+import org.eigenbase.oj.util.*;
 import org.eigenbase.rel.*;
 import org.eigenbase.rel.convert.*;
 import org.eigenbase.rel.metadata.*;
@@ -48,6 +54,13 @@ public class VolcanoPlanner
 
     protected static final double CostImprovement = .5;
 
+    /**
+     * Pool of worker threads which fire rules concurrently, shared by all
+     * planners. Threads are daemons, so that they cannot prevent shutdown.
+     */
+    private static final ExecutorService ruleFiringPool =
+        Executors.newCachedThreadPool(new WorkerThreadFactory());
+
     //~ Instance fields --------------------------------------------------------
 
     protected RelSubset root;
@@ -161,6 +174,53 @@ public class VolcanoPlanner
      */
     private String originalRootString;
 
+    /**
+     * Maximum number of rule matches fired at once; 1 to fire one at a time.
+     */
+    private int concurrency = 1;
+
+    /**
+     * Pattern matching the descriptions of rules which may be fired
+     * concurrently, or null if none may.
+     */
+    private Pattern concurrentRuleFilter;
+
+    /**
+     * Planning time, in milliseconds, after which exploration stops once a
+     * finite plan has been found; 0 for no limit.
+     */
+    private long timeBudgetMillis;
+
+    /**
+     * Fraction by which the cost of the best plan must fall within {@link
+     * #costImprovementWindow} ticks for exploration to continue.
+     */
+    private double minCostImprovement;
+
+    /**
+     * Number of ticks allowed for each improvement of {@link
+     * #minCostImprovement}; 0 to keep exploring regardless of improvement.
+     */
+    private int costImprovementWindow;
+
+    /**
+     * Time at which the current call to {@link #findBestExp} started.
+     */
+    private long planningStartMillis;
+
+    /**
+     * Cost which the best plan must reach by {@link #improvementDeadlineTick}
+     * for exploration to continue, or null if there is no plan yet.
+     */
+    private RelOptCost improvementTargetCost;
+
+    private int improvementDeadlineTick;
+
+    /**
+     * Metrics of the most recent call to {@link #findBestExp}, or null.
+     */
+    private VolcanoPlannerMetrics metrics;
+
     //~ Constructors -----------------------------------------------------------
 
     /**
@@ -441,8 +501,13 @@ public class VolcanoPlanner
      */
     public RelNode findBestExp()
     {
+        metrics = new VolcanoPlannerMetrics();
+        planningStartMillis = System.currentTimeMillis();
+        improvementTargetCost = null;
+        boolean budgetExhausted = false;
         int cumulativeTicks = 0;
         for (VolcanoPlannerPhase phase : VolcanoPlannerPhase.values()) {
+            long phaseStartMillis = System.currentTimeMillis();
             setInitialImportance();
 
             RelOptCost targetCost = makeHugeCost();
@@ -451,7 +516,7 @@ public class VolcanoPlanner
             int splitCount = 0;
             int giveUpTick = Integer.MAX_VALUE;
 
-            while (true) {
+            while (!budgetExhausted) {
                 ++tick;
                 ++cumulativeTicks;
                 if (root.bestCost.isLe(targetCost)) {
@@ -489,6 +554,17 @@ public class VolcanoPlanner
                     injectImportanceBoost();
                 }
 
+                if (isBudgetExhausted(cumulativeTicks)) {
+                    budgetExhausted = true;
+                    metrics.setBudgetExhausted();
+                    if (tracer.isLoggable(Level.FINE)) {
+                        tracer.fine(
+                            "Planning budget exhausted; TICK = "
+                            + cumulativeTicks + "; COST = " + root.bestCost);
+                    }
+                    break;
+                }
+
                 if (!ruleQueue.hasNextMatch(phase)) {
                     break;
                 }
@@ -503,7 +579,38 @@ public class VolcanoPlanner
 
                 VolcanoRuleMatch match = ruleQueue.popMatch(phase);
                 assert match.getRule().matches(match);
-                match.onMatch();
+                if (!isConcurrent(match)) {
+                    fireMatch(match, phase);
+                } else {
+                    // Gather further matches which can be fired alongside
+                    // this one. The first match which cannot is fired on its
+                    // own afterwards.
+                    List<VolcanoRuleMatch> batch =
+                        new ArrayList<VolcanoRuleMatch>();
+                    batch.add(match);
+                    VolcanoRuleMatch serialMatch = null;
+                    while ((batch.size() < concurrency)
+                        && ruleQueue.hasNextMatch(phase))
+                    {
+                        VolcanoRuleMatch nextMatch = ruleQueue.popMatch(phase);
+                        assert nextMatch.getRule().matches(nextMatch);
+                        if (isConcurrent(nextMatch)) {
+                            batch.add(nextMatch);
+                        } else {
+                            serialMatch = nextMatch;
+                            break;
+                        }
+                    }
+                    fireConcurrently(batch, phase);
+                    int extraTicks = batch.size() - 1;
+                    if (serialMatch != null) {
+                        root = canonize(root);
+                        fireMatch(serialMatch, phase);
+                        ++extraTicks;
+                    }
+                    tick += extraTicks;
+                    cumulativeTicks += extraTicks;
+                }
 
                 // The root may have been merged with another
                 // subset. Find the new root subset.
@@ -511,6 +618,14 @@ public class VolcanoPlanner
             }
 
             ruleQueue.phaseCompleted(phase);
+            metrics.addPhaseMillis(
+                phase,
+                System.currentTimeMillis() - phaseStartMillis);
+        }
+        metrics.setPlanningMillis(
+            System.currentTimeMillis() - planningStartMillis);
+        if (tracer.isLoggable(Level.FINE)) {
+            tracer.fine("Planner metrics: " + metrics);
         }
         if (tracer.isLoggable(Level.FINER)) {
             StringWriter sw = new StringWriter();
@@ -522,6 +637,188 @@ public class VolcanoPlanner
         return root.buildCheapestPlan(this);
     }
 
+    /**
+     * Sets the maximum number of rule matches to fire at once. Consecutive
+     * matches from the rule queue of rules accepted by the filter given to
+     * {@link #setConcurrentRuleFilter} are fired on worker threads, and the
+     * expressions they produce are then registered one match at a time, in
+     * the order in which the matches left the queue, so that the plan chosen
+     * does not depend on thread scheduling.
+     *
+     * <p>Matches are never fired concurrently while a listener is set.
+     *
+     * @param concurrency number of matches; 1 fires matches one at a time
+     */
+    public void setConcurrency(int concurrency)
+    {
+        assert concurrency >= 1;
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Sets which rules may be fired concurrently. Such rules must only create
+     * relational expressions and pass them to {@link
+     * RelOptRuleCall#transformTo}: they must not register expressions, change
+     * traits or importances, or otherwise modify the planner, and must not
+     * depend on thread-local state other than OpenJava's declarer and type
+     * factory, which are passed on to the worker threads.
+     *
+     * @param filter pattern matched against rule descriptions, or null if no
+     * rule may be fired concurrently
+     */
+    public void setConcurrentRuleFilter(Pattern filter)
+    {
+        this.concurrentRuleFilter = filter;
+    }
+
+    /**
+     * Sets how long {@link #findBestExp} may spend looking for better plans.
+     * Until a finite plan has been found, planning continues regardless.
+     *
+     * @param millis planning time in milliseconds, or 0 for no limit
+     */
+    public void setTimeBudget(long millis)
+    {
+        assert millis >= 0;
+        this.timeBudgetMillis = millis;
+    }
+
+    /**
+     * Makes {@link #findBestExp} stop exploring when the cost of the best
+     * plan stops falling: once a finite plan has been found, its cost must
+     * fall by at least a given fraction within a given number of rule
+     * matches, or planning stops. Unlike {@link #impatient}, the window does
+     * not depend on how long it took to find the first plan, and applies to
+     * all remaining phases.
+     *
+     * @param minImprovement fraction of the cost, between 0 and 1
+     * @param tickWindow number of rule matches, or 0 for no limit
+     */
+    public void setCostImprovementBudget(double minImprovement, int tickWindow)
+    {
+        assert (minImprovement >= 0) && (minImprovement < 1);
+        assert tickWindow >= 0;
+        this.minCostImprovement = minImprovement;
+        this.costImprovementWindow = tickWindow;
+    }
+
+    /**
+     * Returns metrics of the most recent call to {@link #findBestExp}.
+     *
+     * @return metrics, or null if no plan has been sought yet
+     */
+    public VolcanoPlannerMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * Decides whether to stop exploring because the planning budget is
+     * exhausted. Never stops before a finite plan has been found.
+     */
+    private boolean isBudgetExhausted(int cumulativeTicks)
+    {
+        if (root.bestCost.isInfinite()) {
+            return false;
+        }
+        if ((timeBudgetMillis > 0)
+            && ((System.currentTimeMillis() - planningStartMillis)
+                > timeBudgetMillis))
+        {
+            return true;
+        }
+        if (costImprovementWindow > 0) {
+            if ((improvementTargetCost == null)
+                || root.bestCost.isLe(improvementTargetCost))
+            {
+                improvementTargetCost =
+                    root.bestCost.multiplyBy(1 - minCostImprovement);
+                improvementDeadlineTick =
+                    cumulativeTicks + costImprovementWindow;
+            } else if (cumulativeTicks > improvementDeadlineTick) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isConcurrent(VolcanoRuleMatch match)
+    {
+        return (concurrency > 1)
+            && (listener == null)
+            && (concurrentRuleFilter != null)
+            && concurrentRuleFilter.matcher(match.getRule().toString())
+            .matches();
+    }
+
+    private void fireMatch(VolcanoRuleMatch match, VolcanoPlannerPhase phase)
+    {
+        if (match.fire()) {
+            metrics.addRuleFired(phase, false);
+        }
+    }
+
+    /**
+     * Fires a batch of rule matches on worker threads, then registers what
+     * each produced, in order.
+     */
+    private void fireConcurrently(
+        List<VolcanoRuleMatch> batch,
+        VolcanoPlannerPhase phase)
+    {
+        checkCancel();
+        final OJClass declarer = OJUtil.threadDeclarers.get();
+        final OJTypeFactory typeFactory = OJUtil.threadTypeFactory();
+        List<VolcanoRuleMatch> fireable = new ArrayList<VolcanoRuleMatch>();
+        for (VolcanoRuleMatch match : batch) {
+            if (match.isFireable()) {
+                fireable.add(match);
+            }
+        }
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int i = 1; i < fireable.size(); i++) {
+            final VolcanoRuleMatch match = fireable.get(i);
+            futures.add(
+                ruleFiringPool.submit(
+                    new Runnable() {
+                        public void run()
+                        {
+                            OJUtil.threadDeclarers.set(declarer);
+                            OJUtil.setThreadTypeFactory(typeFactory);
+                            try {
+                                match.fireDeferred();
+                            } finally {
+                                OJUtil.threadDeclarers.set(null);
+                                OJUtil.setThreadTypeFactory(null);
+                            }
+                        }
+                    }));
+        }
+
+        // This thread fires the first match itself.
+        if (!fireable.isEmpty()) {
+            fireable.get(0).fireDeferred();
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                throw Util.newInternal(e, "Interrupted while firing rules");
+            } catch (ExecutionException e) {
+                throw Util.newInternal(
+                    e.getCause(),
+                    "Error while firing rules");
+            }
+        }
+
+        for (VolcanoRuleMatch match : fireable) {
+            if (match.registerDeferred()) {
+                metrics.addRuleFired(phase, true);
+            }
+            root = canonize(root);
+        }
+    }
+
     private void setInitialImportance()
     {
         RelVisitor visitor =
@@ -1437,12 +1734,10 @@ SUBSET_LOOP:
     // implement RelOptPlanner
     public long getRelMetadataTimestamp(RelNode rel)
     {
-        RelSubset subset = getSubset(rel);
-        if (subset == null) {
-            return 0;
-        } else {
-            return subset.timestamp;
+        if (rel instanceof RelSubset) {
+            return ((RelSubset) rel).timestamp;
         }
+        return super.getRelMetadataTimestamp(rel);
     }
 
     /**
@@ -1531,6 +1826,25 @@ SUBSET_LOOP:
             volcanoPlanner.ruleQueue.addMatch(match);
         }
     }
+
+    /**
+     * Creates the daemon threads of the shared rule firing pool.
+     */
+    private static class WorkerThreadFactory
+        implements ThreadFactory
+    {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        public Thread newThread(Runnable r)
+        {
+            Thread thread =
+                new Thread(
+                    r,
+                    "VolcanoPlanner worker " + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 }
 
 // End VolcanoPlanner.java
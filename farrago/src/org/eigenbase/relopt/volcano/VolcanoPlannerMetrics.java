@@ -0,0 +1,153 @@
+/*
+// $Id$
+// Package org.eigenbase is a class library of data management components.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2002 SQLstream, Inc.
+// Copyright (C) 2009 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package org.eigenbase.relopt.volcano;
+
+/**
+ * VolcanoPlannerMetrics records how much work a call to {@link
+ * VolcanoPlanner#findBestExp} did: how long each phase took, how many rule
+ * matches were fired in each phase and how many of those were fired
+ * concurrently, and whether the planning budget cut exploration short.
+ *
+ * @version $Id$
+ */
+public class VolcanoPlannerMetrics
+{
+    //~ Instance fields --------------------------------------------------------
+
+    private final long [] phaseMillis;
+
+    private final int [] phaseRuleCounts;
+
+    private final int [] phaseConcurrentRuleCounts;
+
+    private long planningMillis;
+
+    private boolean budgetExhausted;
+
+    //~ Constructors -----------------------------------------------------------
+
+    VolcanoPlannerMetrics()
+    {
+        int n = VolcanoPlannerPhase.values().length;
+        phaseMillis = new long[n];
+        phaseRuleCounts = new int[n];
+        phaseConcurrentRuleCounts = new int[n];
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    void addPhaseMillis(VolcanoPlannerPhase phase, long millis)
+    {
+        phaseMillis[phase.ordinal()] += millis;
+    }
+
+    void addRuleFired(VolcanoPlannerPhase phase, boolean concurrent)
+    {
+        ++phaseRuleCounts[phase.ordinal()];
+        if (concurrent) {
+            ++phaseConcurrentRuleCounts[phase.ordinal()];
+        }
+    }
+
+    void setPlanningMillis(long planningMillis)
+    {
+        this.planningMillis = planningMillis;
+    }
+
+    void setBudgetExhausted()
+    {
+        budgetExhausted = true;
+    }
+
+    /**
+     * @return time spent in a phase, in milliseconds
+     */
+    public long getPhaseMillis(VolcanoPlannerPhase phase)
+    {
+        return phaseMillis[phase.ordinal()];
+    }
+
+    /**
+     * @return number of rule matches fired in a phase
+     */
+    public int getRuleCount(VolcanoPlannerPhase phase)
+    {
+        return phaseRuleCounts[phase.ordinal()];
+    }
+
+    /**
+     * @return number of rule matches fired concurrently in a phase
+     */
+    public int getConcurrentRuleCount(VolcanoPlannerPhase phase)
+    {
+        return phaseConcurrentRuleCounts[phase.ordinal()];
+    }
+
+    /**
+     * @return number of rule matches fired in all phases
+     */
+    public int getRuleCount()
+    {
+        int n = 0;
+        for (int count : phaseRuleCounts) {
+            n += count;
+        }
+        return n;
+    }
+
+    /**
+     * @return total planning time, in milliseconds
+     */
+    public long getPlanningMillis()
+    {
+        return planningMillis;
+    }
+
+    /**
+     * @return whether exploration stopped because the planning budget was
+     * exhausted
+     */
+    public boolean isBudgetExhausted()
+    {
+        return budgetExhausted;
+    }
+
+    public String toString()
+    {
+        StringBuilder buf = new StringBuilder();
+        buf.append("planning time ").append(planningMillis).append(" ms");
+        for (VolcanoPlannerPhase phase : VolcanoPlannerPhase.values()) {
+            int i = phase.ordinal();
+            buf.append("; ").append(phase).append(": ");
+            buf.append(phaseRuleCounts[i]).append(" rules fired (");
+            buf.append(phaseConcurrentRuleCounts[i]);
+            buf.append(" concurrently) in ");
+            buf.append(phaseMillis[i]).append(" ms");
+        }
+        if (budgetExhausted) {
+            buf.append("; budget exhausted");
+        }
+        return buf.toString();
+    }
+}
+
+// End VolcanoPlannerMetrics.java
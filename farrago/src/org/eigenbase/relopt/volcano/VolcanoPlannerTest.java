@@ -22,6 +22,7 @@
 package org.eigenbase.relopt.volcano;
 
 import java.util.*;
+import java.util.regex.*;
 
 import junit.framework.*;
 
@@ -399,6 +400,94 @@ public class VolcanoPlannerTest
             null);
     }
 
+    /**
+     * Tests that rules accepted by the concurrent rule filter are fired on
+     * worker threads, and that the planner reports how many rules it fired.
+     */
+    public void testConcurrentRules()
+    {
+        VolcanoPlanner planner = new VolcanoPlanner();
+        planner.addRelTraitDef(CallingConventionTraitDef.instance);
+        planner.setConcurrency(4);
+        planner.setConcurrentRuleFilter(Pattern.compile("PhysLeafRule"));
+
+        planner.addRule(new PhysLeafRule());
+        planner.addRule(new GoodSingleRule());
+
+        NoneLeafRel leafRel =
+            new NoneLeafRel(
+                newCluster(planner),
+                "a");
+        NoneSingleRel singleRel =
+            new NoneSingleRel(
+                leafRel.getCluster(),
+                leafRel);
+        RelNode convertedRel =
+            planner.changeTraits(
+                singleRel,
+                new RelTraitSet(PHYS_CALLING_CONVENTION));
+        planner.setRoot(convertedRel);
+        RelNode result = planner.chooseDelegate().findBestExp();
+        assertTrue(result instanceof PhysSingleRel);
+        assertTrue(
+            ((PhysSingleRel) result).getChild() instanceof PhysLeafRel);
+
+        VolcanoPlannerMetrics metrics = planner.getMetrics();
+        assertEquals(
+            1,
+            metrics.getConcurrentRuleCount(VolcanoPlannerPhase.PRE_PROCESS));
+        assertEquals(
+            2,
+            metrics.getRuleCount(VolcanoPlannerPhase.PRE_PROCESS));
+        assertEquals(2, metrics.getRuleCount());
+        assertFalse(metrics.isBudgetExhausted());
+    }
+
+    /**
+     * Tests that an ambitious planner with a cost improvement budget still
+     * finds a plan, and stops once the budget is exhausted.
+     */
+    public void testCostImprovementBudget()
+    {
+        VolcanoPlanner planner = new VolcanoPlanner();
+        planner.ambitious = true;
+        planner.addRelTraitDef(CallingConventionTraitDef.instance);
+        planner.setCostImprovementBudget(0.5, 1);
+
+        planner.addRule(new PhysLeafRule());
+        planner.addRule(new GoodSingleRule());
+        planner.addRule(new RelabelLeafRule());
+
+        NoneLeafRel leafRel =
+            new NoneLeafRel(
+                newCluster(planner),
+                "a");
+        NoneSingleRel singleRel =
+            new NoneSingleRel(
+                leafRel.getCluster(),
+                leafRel);
+        RelNode convertedRel =
+            planner.changeTraits(
+                singleRel,
+                new RelTraitSet(PHYS_CALLING_CONVENTION));
+        planner.setRoot(convertedRel);
+        RelNode result = planner.chooseDelegate().findBestExp();
+        assertTrue(result instanceof PhysSingleRel);
+
+        // Relabeling never makes the plan cheaper, so the budget must stop
+        // exploration long before RelabelLeafRule runs out of labels, and no
+        // further rules are fired in any phase.
+        VolcanoPlannerMetrics metrics = planner.getMetrics();
+        assertTrue(metrics.isBudgetExhausted());
+        assertTrue(
+            metrics.getRuleCount(VolcanoPlannerPhase.OPTIMIZE)
+            < RelabelLeafRule.MAX_LABEL_LENGTH);
+        assertEquals(
+            0,
+            metrics.getRuleCount(VolcanoPlannerPhase.CLEANUP));
+        assertTrue(metrics.getPlanningMillis() >= 0);
+    }
+
     private void checkEvent(
         List<RelOptListener.RelEvent> eventList,
         int iEvent,
@@ -658,6 +747,41 @@ public class VolcanoPlannerTest
         }
     }
 
+    /**
+     * Rule which replaces a PhysLeafRel with an equivalent one whose label is
+     * one character longer, so that it keeps firing without ever making the
+     * plan cheaper.
+     */
+    private static class RelabelLeafRule
+        extends RelOptRule
+    {
+        static final int MAX_LABEL_LENGTH = 100;
+
+        RelabelLeafRule()
+        {
+            super(new RelOptRuleOperand(PhysLeafRel.class, ANY));
+        }
+
+        // implement RelOptRule
+        public CallingConvention getOutConvention()
+        {
+            return PHYS_CALLING_CONVENTION;
+        }
+
+        // implement RelOptRule
+        public void onMatch(RelOptRuleCall call)
+        {
+            PhysLeafRel leafRel = (PhysLeafRel) call.rels[0];
+            if (leafRel.getLabel().length() >= MAX_LABEL_LENGTH) {
+                return;
+            }
+            call.transformTo(
+                new PhysLeafRel(
+                    leafRel.getCluster(),
+                    leafRel.getLabel() + "'"));
+        }
+    }
+
     private static class GoodSingleRule
         extends RelOptRule
     {
@@ -48,6 +48,18 @@ public class VolcanoRuleCall
      */
     private List<RelNode> generatedRelList;
 
+    /**
+     * While the rule is being fired by {@link #fireDeferred}, the relational
+     * expressions passed to {@link #transformTo}, to be registered later by
+     * {@link #registerDeferred}; otherwise null.
+     */
+    private List<RelNode> deferredRels;
+
+    /**
+     * Error thrown by the rule during {@link #fireDeferred}, or null.
+     */
+    private Throwable deferredError;
+
     //~ Constructors -----------------------------------------------------------
 
     /**
@@ -91,6 +103,10 @@ public class VolcanoRuleCall
     // implement RelOptRuleCall
     public void transformTo(RelNode rel)
     {
+        if (deferredRels != null) {
+            deferredRels.add(rel);
+            return;
+        }
         if (tracer.isLoggable(Level.FINE)) {
             tracer.fine(
                 "Transform to: rel#" + rel.getId() + " via " + getRule());
@@ -154,54 +170,25 @@ public class VolcanoRuleCall
      * @pre getRule().matches(this)
      */
     protected void onMatch()
+    {
+        fire();
+    }
+
+    /**
+     * Fires the rule, unless {@link #isFireable} says that it can no longer
+     * be fired.
+     *
+     * @return whether the rule was fired
+     *
+     * @pre getRule().matches(this)
+     */
+    boolean fire()
     {
         assert getRule().matches(this);
         volcanoPlanner.checkCancel();
         try {
-            if (volcanoPlanner.isRuleExcluded(getRule())) {
-                if (tracer.isLoggable(Level.FINE)) {
-                    tracer.fine(
-                        "Rule [" + getRule() + "] not fired"
-                        + " due to exclusion filter");
-                }
-                return;
-            }
-
-            for (int i = 0; i < rels.length; i++) {
-                RelNode rel = rels[i];
-                RelSubset subset = volcanoPlanner.getSubset(rel);
-
-                if (subset == null) {
-                    if (tracer.isLoggable(Level.FINE)) {
-                        tracer.fine(
-                            "Rule [" + getRule() + "] not fired because"
-                            + " operand #" + i + " (" + rel
-                            + ") has no subset");
-                    }
-                    return;
-                }
-
-                if (subset.set.equivalentSet != null) {
-                    if (tracer.isLoggable(Level.FINE)) {
-                        tracer.fine(
-                            "Rule [" + getRule() + "] not fired because"
-                            + " operand #" + i + " (" + rel
-                            + ") belongs to obsolete set");
-                    }
-                    return;
-                }
-
-                final Double importance =
-                    volcanoPlanner.relImportances.get(rel);
-                if ((importance != null) && (importance == 0d)) {
-                    if (tracer.isLoggable(Level.FINE)) {
-                        tracer.fine(
-                            "Rule [" + getRule() + "] not fired because"
-                            + " operand #" + i + " (" + rel
-                            + ") has importance=0");
-                    }
-                    return;
-                }
+            if (!isFireable()) {
+                return false;
             }
 
             if (tracer.isLoggable(Level.FINE)) {
@@ -246,6 +233,7 @@ public class VolcanoRuleCall
                         false);
                 volcanoPlanner.listener.ruleAttempted(event);
             }
+            return true;
         } catch (Throwable e) {
             throw Util.newInternal(
                 e,
@@ -254,6 +242,128 @@ public class VolcanoRuleCall
         }
     }
 
+    /**
+     * Returns whether this rule call may still be fired: the rule is not
+     * excluded, and each operand is registered, belongs to a live set and
+     * has non-zero importance.
+     */
+    boolean isFireable()
+    {
+        if (volcanoPlanner.isRuleExcluded(getRule())) {
+            if (tracer.isLoggable(Level.FINE)) {
+                tracer.fine(
+                    "Rule [" + getRule() + "] not fired"
+                    + " due to exclusion filter");
+            }
+            return false;
+        }
+
+        for (int i = 0; i < rels.length; i++) {
+            RelNode rel = rels[i];
+            RelSubset subset = volcanoPlanner.getSubset(rel);
+
+            if (subset == null) {
+                if (tracer.isLoggable(Level.FINE)) {
+                    tracer.fine(
+                        "Rule [" + getRule() + "] not fired because"
+                        + " operand #" + i + " (" + rel
+                        + ") has no subset");
+                }
+                return false;
+            }
+
+            if (subset.set.equivalentSet != null) {
+                if (tracer.isLoggable(Level.FINE)) {
+                    tracer.fine(
+                        "Rule [" + getRule() + "] not fired because"
+                        + " operand #" + i + " (" + rel
+                        + ") belongs to obsolete set");
+                }
+                return false;
+            }
+
+            final Double importance = volcanoPlanner.relImportances.get(rel);
+            if ((importance != null) && (importance == 0d)) {
+                if (tracer.isLoggable(Level.FINE)) {
+                    tracer.fine(
+                        "Rule [" + getRule() + "] not fired because"
+                        + " operand #" + i + " (" + rel
+                        + ") has importance=0");
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Fires the rule without registering what it produces. Called on a worker
+     * thread while the planner's thread waits, so the rule may read, but must
+     * not modify, the state of the planner. Errors are kept until {@link
+     * #registerDeferred} is called.
+     *
+     * @pre isFireable()
+     */
+    void fireDeferred()
+    {
+        deferredRels = new ArrayList<RelNode>();
+        try {
+            getRule().onMatch(this);
+        } catch (Throwable e) {
+            deferredError = e;
+        }
+    }
+
+    /**
+     * Registers the relational expressions produced by {@link #fireDeferred},
+     * on the planner's thread. If an earlier rule call has meanwhile made an
+     * operand obsolete, the expressions are discarded.
+     *
+     * <p>Expressions are renumbered before they are registered, so that their
+     * ids, and hence the order in which the rule queue pops matches of equal
+     * importance, do not depend on how the worker threads were scheduled.
+     *
+     * @return whether this rule call counts as fired
+     */
+    boolean registerDeferred()
+    {
+        List<RelNode> list = deferredRels;
+        deferredRels = null;
+        if (deferredError != null) {
+            throw Util.newInternal(
+                deferredError,
+                "Error while applying rule "
+                + getRule() + ", args " + Arrays.asList(rels));
+        }
+        if (!isFireable()) {
+            return false;
+        }
+        if (tracer.isLoggable(Level.FINE)) {
+            tracer.fine(
+                "Applied rule [" + getRule() + "] to ["
+                + RelOptUtil.toString(rels) + "] concurrently; generated "
+                + list.size() + " successors");
+        }
+        for (RelNode rel : list) {
+            reassignIds(rel);
+            transformTo(rel);
+        }
+        return true;
+    }
+
+    private void reassignIds(RelNode rel)
+    {
+        if ((rel instanceof RelSubset) || volcanoPlanner.isRegistered(rel)) {
+            return;
+        }
+        if (rel instanceof AbstractRelNode) {
+            ((AbstractRelNode) rel).reassignId();
+        }
+        for (RelNode input : rel.getInputs()) {
+            reassignIds(input);
+        }
+    }
+
     /**
      * Applies this rule, with a given relexp in the first slot.
      *
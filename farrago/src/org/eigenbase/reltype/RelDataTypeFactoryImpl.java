@@ -261,9 +261,10 @@ public abstract class RelDataTypeFactoryImpl
 
     /**
      * Registers a type, or returns the existing type if it is already
-     * registered.
+     * registered. Synchronized because a planner may fire rules on several
+     * threads at once.
      */
-    protected RelDataType canonize(RelDataType type)
+    protected synchronized RelDataType canonize(RelDataType type)
     {
         RelDataType type2 = map.get(type);
         if (type2 != null) {
@@ -71,6 +71,15 @@ public abstract class AbstractIterResultSet
         }
     }
 
+    /**
+     * Returns the object which reads columns from the rows returned by the
+     * underlying iterator.
+     */
+    protected ColumnGetter getColumnGetter()
+    {
+        return columnGetter;
+    }
+
     /**
      * Sets the timeout that this AbstractIterResultSet will wait for a row from
      * the underlying iterator. Note that the timeout must be implemented in the
@@ -431,7 +440,7 @@ public abstract class AbstractIterResultSet
     public static class SqlTimeoutException
         extends SQLException
     {
-        SqlTimeoutException()
+        public SqlTimeoutException()
         {
             // SQLException(reason, SQLState, vendorCode)
             // REVIEW mb 19-Jul-05 Is there a standard SQLState?
@@ -23,23 +23,50 @@
 package org.eigenbase.runtime;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.logging.*;
 
 import org.eigenbase.test.*;
+import org.eigenbase.trace.*;
+import org.eigenbase.util.*;
 
 
 /**
  * <code>CompoundParallelTupleIter</code> creates one TupleIter out of several.
  * Unlike its serial counterpart {@link CompoundTupleIter}, it runs all its
- * inputs in parallel, in separate threads that it spawns. It outputs the next
- * element available from any of its inputs. Note that the order of output rows
- * is indeterminate, since it is unpredictable which input will arrive next.
+ * inputs in parallel, on worker threads borrowed from a shared pool. It
+ * outputs the next element available from any of its inputs. Note that the
+ * order of output rows is indeterminate, since it is unpredictable which input
+ * will arrive next.
  *
  * <p>The compound TupleIter is finished when all of its inputs are finished.
  * The set of input iterators is fixed at construction.
  *
+ * <p>Each input has a bounded queue of rows which have been fetched but not
+ * yet returned. A worker is only assigned to an input while its queue has
+ * room, and gives its thread back to the pool as soon as the queue fills up or
+ * the input reports {@link TupleIter.NoDataReason#UNDERFLOW}; so the number of
+ * threads in use is bounded by the number of inputs which can make progress,
+ * and idle threads pick up whichever input next has room.
+ *
+ * <p>Since an input may re-use the object it returns from {@link
+ * TupleIter#fetchNext}, by default each input's queue holds a single row, and
+ * the input is not asked for another row until the caller has asked this
+ * iterator for its next row. Even so, all inputs fetch concurrently with each
+ * other and with the caller. If the caller supplies a {@link TupleCopier},
+ * deeper queues are allowed, and rows are copied into objects which are
+ * recycled through a per-input pool once the caller has moved on.
+ *
+ * <p>If a {@link CancelFlag} is supplied and cancellation is requested, the
+ * workers stop fetching and this iterator reports {@link
+ * TupleIter.NoDataReason#END_OF_DATA}; as with other iterators, it is up to
+ * the consumer to check whether the end was caused by a cancel.
+ *
  * <p>This variant is needed when an input is infinite, since CompoundTupleIter
- * would hang. Extending this class to preserve order is problematic, given its
- * low level:
+ * would hang. It is also useful when the inputs are independent sources with
+ * high latency, such as queries against remote servers. Extending this class
+ * to preserve order is problematic, given its low level:
  *
  * <ul>
  * <li>items Are now synthetic {@link Object}s.</li>
@@ -57,18 +84,102 @@ import org.eigenbase.test.*;
 public class CompoundParallelTupleIter
     extends AbstractTupleIter
 {
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final Logger tracer =
+        EigenbaseTrace.getCompoundIteratorTracer();
+
+    /**
+     * Interval, in milliseconds, at which a waiting caller checks the cancel
+     * flag.
+     */
+    private static final long CANCEL_POLL_MILLIS = 100;
+
+    /**
+     * Pool of worker threads shared by all instances. Threads are daemons, so
+     * that an input which never returns cannot prevent shutdown.
+     */
+    private static final ExecutorService workerPool =
+        Executors.newCachedThreadPool(new WorkerThreadFactory());
+
     //~ Instance fields --------------------------------------------------------
 
-    final private TupleIter [] in;
-    final private boolean [] endOfData;
+    final private Input [] in;
+    final private CancelFlag cancelFlag;
+    final private TupleCopier copier;
+    final private List<MoreDataListener> listeners;
     private int i;
 
+    /**
+     * Input whose row was returned by the last call to {@link #fetchNext}, or
+     * null.
+     */
+    private Input current;
+
+    /**
+     * Row returned by the last call to {@link #fetchNext}.
+     */
+    private Object currentRow;
+
+    private long timeout;
+    private boolean timeoutAsUnderflow;
+
+    /**
+     * Whether workers should stop fetching; set while restarting or closing.
+     */
+    private boolean stopping;
+
+    /**
+     * First exception thrown by an input, to be rethrown to the caller.
+     */
+    private Throwable error;
+
     //~ Constructors -----------------------------------------------------------
 
     public CompoundParallelTupleIter(TupleIter [] tupleIters)
     {
-        this.in = tupleIters;
-        this.endOfData = new boolean[tupleIters.length];
+        this(tupleIters, null);
+    }
+
+    /**
+     * Creates a CompoundParallelTupleIter which does not copy rows.
+     *
+     * @param tupleIters inputs
+     * @param cancelFlag flag to check for cancellation, or null
+     */
+    public CompoundParallelTupleIter(
+        TupleIter [] tupleIters,
+        CancelFlag cancelFlag)
+    {
+        this(tupleIters, cancelFlag, null, 1);
+    }
+
+    /**
+     * Creates a CompoundParallelTupleIter.
+     *
+     * @param tupleIters inputs
+     * @param cancelFlag flag to check for cancellation, or null
+     * @param copier copies rows out of the inputs, or null if rows are to be
+     * handed over without copying
+     * @param queueDepth maximum number of rows to fetch ahead from each input;
+     * must be 1 if copier is null
+     */
+    public CompoundParallelTupleIter(
+        TupleIter [] tupleIters,
+        CancelFlag cancelFlag,
+        TupleCopier copier,
+        int queueDepth)
+    {
+        assert (queueDepth >= 1);
+        assert ((copier != null) || (queueDepth == 1));
+        this.cancelFlag = cancelFlag;
+        this.copier = copier;
+        this.in = new Input[tupleIters.length];
+        for (int index = 0; index < tupleIters.length; index++) {
+            in[index] = new Input(tupleIters[index], queueDepth);
+        }
+        this.listeners = new ArrayList<MoreDataListener>();
+        this.timeout = Long.MAX_VALUE;
         this.i = -1;
     }
 
@@ -76,56 +187,428 @@ public class CompoundParallelTupleIter
 
     public Object fetchNext()
     {
-        int endOfDataCount = 0;
+        final long start = System.currentTimeMillis();
+        synchronized (this) {
+            releaseCurrent();
 
-        final int N = in.length;
+            final int N = in.length;
+            while (true) {
+                if (error != null) {
+                    throw rethrow(error);
+                }
+                if (isCanceled()) {
+                    tracer.fine("canceled");
+                    return NoDataReason.END_OF_DATA;
+                }
 
-        for (int offset = 0; offset < N; offset++) {
-            if (++i >= N) {
-                i = 0;
-            }
+                int endOfDataCount = 0;
+                boolean pending = false;
+                for (int offset = 0; offset < N; offset++) {
+                    if (++i >= N) {
+                        i = 0;
+                    }
+                    Input input = in[i];
+                    if (!input.queue.isEmpty()) {
+                        current = input;
+                        currentRow = input.queue.removeFirst();
+                        if (copier == null) {
+                            // the input must not overwrite the row until
+                            // the caller asks for the next one
+                            input.outstanding = true;
+                        } else {
+                            // the queue has room again
+                            schedule(input);
+                        }
+                        return currentRow;
+                    }
+                    if (input.endOfData) {
+                        endOfDataCount++;
+                    } else if (input.running) {
+                        pending = true;
+                    } else if (!input.underflow) {
+                        schedule(input);
+                        pending = true;
+                    }
+                }
 
-            if (endOfData[i]) {
-                endOfDataCount++;
-            } else {
-                Object o = in[i].fetchNext();
+                if (endOfDataCount == N) {
+                    return NoDataReason.END_OF_DATA;
+                }
 
-                if (o == NoDataReason.END_OF_DATA) {
-                    endOfData[i] = true;
-                    endOfDataCount++;
-                } else if (o == NoDataReason.UNDERFLOW) {
-                    // Ignore this.
-                } else {
-                    return o;
+                if (!pending) {
+                    // Every unfinished input has reported underflow. Those
+                    // which will not notify us of more data are retried on
+                    // the next call.
+                    for (Input input : in) {
+                        if (!input.listening) {
+                            input.underflow = false;
+                        }
+                    }
+                    return NoDataReason.UNDERFLOW;
+                }
+
+                long wait = CANCEL_POLL_MILLIS;
+                if (timeout != Long.MAX_VALUE) {
+                    long remaining =
+                        timeout - (System.currentTimeMillis() - start);
+                    if (remaining <= 0) {
+                        if (timeoutAsUnderflow) {
+                            return NoDataReason.UNDERFLOW;
+                        }
+                        throw new TimeoutException();
+                    }
+                    wait = Math.min(wait, remaining);
+                } else if (cancelFlag == null) {
+                    wait = 0;
+                }
+                try {
+                    wait(wait);
+                } catch (InterruptedException ex) {
+                    throw Util.newInternal(ex);
                 }
             }
         }
+    }
 
-        if (endOfDataCount == N) {
-            return NoDataReason.END_OF_DATA;
+    public boolean setTimeout(long timeout, boolean asUnderflow)
+    {
+        synchronized (this) {
+            this.timeout = timeout;
+            this.timeoutAsUnderflow = asUnderflow;
         }
+        return true;
+    }
 
-        return NoDataReason.UNDERFLOW;
+    public boolean addListener(MoreDataListener c)
+    {
+        synchronized (listeners) {
+            listeners.add(c);
+        }
+        return true;
     }
 
     public void restart()
     {
-        for (int index = 0; index < in.length; index++) {
-            in[index].restart();
-            endOfData[index] = false;
+        synchronized (this) {
+            quiesce();
+            releaseCurrent();
+            for (Input input : in) {
+                if (copier != null) {
+                    input.freeList.addAll(input.queue);
+                }
+                input.queue.clear();
+                input.tupleIter.restart();
+                input.endOfData = false;
+                input.underflow = false;
+                input.outstanding = false;
+            }
+            error = null;
+            stopping = false;
+            i = -1;
+        }
+    }
+
+    public StringBuilder printStatus(StringBuilder b)
+    {
+        b.append("CompoundParallelTupleIter:");
+        for (Input input : in) {
+            b.append(" [");
+            if (input.endOfData) {
+                b.append("done");
+            } else if (input.underflow) {
+                b.append("underflow");
+            } else if (input.running) {
+                b.append("running");
+            } else {
+                b.append("idle");
+            }
+            b.append(' ').append(input.queue.size()).append(']');
         }
-        i = -1;
+        return b;
     }
 
     public void closeAllocation()
     {
+        synchronized (this) {
+            quiesce();
+            current = null;
+            currentRow = null;
+        }
         for (int index = 0; index < in.length; index++) {
-            in[index].closeAllocation();
+            in[index].tupleIter.closeAllocation();
         }
     }
 
+    /**
+     * Stops all workers, and waits for those which are in the middle of a
+     * fetch to finish it. Caller must hold this object's monitor.
+     */
+    private void quiesce()
+    {
+        stopping = true;
+        for (Input input : in) {
+            while (input.running) {
+                try {
+                    wait();
+                } catch (InterruptedException ex) {
+                    throw Util.newInternal(ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Tells the input whose row was returned last that the caller is done with
+     * it. Caller must hold this object's monitor.
+     */
+    private void releaseCurrent()
+    {
+        if (current == null) {
+            return;
+        }
+        if (copier == null) {
+            current.outstanding = false;
+        } else {
+            current.freeList.add(currentRow);
+        }
+        Input input = current;
+        current = null;
+        currentRow = null;
+        schedule(input);
+    }
+
+    /**
+     * Assigns a worker to an input if it is idle and has room for more rows.
+     * Caller must hold this object's monitor.
+     */
+    private void schedule(Input input)
+    {
+        if (input.running
+            || input.endOfData
+            || input.underflow
+            || stopping
+            || !input.hasRoom())
+        {
+            return;
+        }
+        input.running = true;
+        workerPool.execute(input);
+    }
+
+    private boolean isCanceled()
+    {
+        return (cancelFlag != null) && cancelFlag.isCancelRequested();
+    }
+
+    private void fireMoreData()
+    {
+        List<MoreDataListener> list;
+        synchronized (listeners) {
+            list = new ArrayList<MoreDataListener>(listeners);
+        }
+        for (MoreDataListener listener : list) {
+            listener.onMoreData();
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable ex)
+    {
+        if (ex instanceof RuntimeException) {
+            throw (RuntimeException) ex;
+        }
+        if (ex instanceof Error) {
+            throw (Error) ex;
+        }
+        throw Util.newInternal(ex);
+    }
+
     //~ Inner Classes ----------------------------------------------------------
 
+    /**
+     * Copies rows out of an input so that they can be queued while the input
+     * produces more.
+     */
+    public interface TupleCopier
+    {
+        /**
+         * Copies a row.
+         *
+         * @param row row returned by an input
+         * @param target recycled row to copy into, or null if a new row needs
+         * to be allocated
+         *
+         * @return the copy; usually target, if it is not null
+         */
+        public Object copy(Object row, Object target);
+    }
+
+    /**
+     * State of one input. When a worker is assigned to the input, it runs
+     * {@link #run} on a pooled thread. All fields are guarded by the monitor
+     * of the enclosing CompoundParallelTupleIter.
+     */
+    private class Input
+        implements Runnable,
+            MoreDataListener
+    {
+        final TupleIter tupleIter;
+        final int queueDepth;
+
+        /**
+         * Rows which have been fetched but not yet returned.
+         */
+        final LinkedList<Object> queue;
+
+        /**
+         * Copies which the caller has finished with, available for re-use.
+         */
+        final LinkedList<Object> freeList;
+
+        /**
+         * Whether a worker is assigned to this input.
+         */
+        boolean running;
+
+        /**
+         * Whether the caller holds a row which has not been copied, and which
+         * this input may therefore not overwrite yet.
+         */
+        boolean outstanding;
+
+        boolean endOfData;
+        boolean underflow;
+
+        /**
+         * Whether the input has accepted a request to tell us when more data
+         * is available after an underflow.
+         */
+        boolean listening;
+        boolean listenerRequested;
+
+        /**
+         * Whether the input said that more data is available while a worker
+         * was fetching from it.
+         */
+        boolean moreData;
+
+        Input(TupleIter tupleIter, int queueDepth)
+        {
+            this.tupleIter = tupleIter;
+            this.queueDepth = queueDepth;
+            this.queue = new LinkedList<Object>();
+            this.freeList = new LinkedList<Object>();
+        }
+
+        boolean hasRoom()
+        {
+            if (copier == null) {
+                return queue.isEmpty() && !outstanding;
+            }
+            return queue.size() < queueDepth;
+        }
+
+        // implement Runnable
+        public void run()
+        {
+            final CompoundParallelTupleIter outer =
+                CompoundParallelTupleIter.this;
+            while (true) {
+                Object target = null;
+                synchronized (outer) {
+                    if (stopping || isCanceled() || !hasRoom()) {
+                        running = false;
+                        outer.notifyAll();
+                        return;
+                    }
+                    if (copier != null) {
+                        target = freeList.poll();
+                    }
+                    moreData = false;
+                    if (!listenerRequested) {
+                        // Ask before the first fetch; asking after an
+                        // underflow could miss a notification.
+                        listenerRequested = true;
+                        listening = tupleIter.addListener(this);
+                    }
+                }
+
+                Object row;
+                try {
+                    row = tupleIter.fetchNext();
+                    if ((copier != null) && !(row instanceof NoDataReason)) {
+                        row = copier.copy(row, target);
+                    }
+                } catch (Throwable ex) {
+                    synchronized (outer) {
+                        if (error == null) {
+                            error = ex;
+                        }
+                        running = false;
+                        outer.notifyAll();
+                    }
+                    return;
+                }
+
+                synchronized (outer) {
+                    if (!(row instanceof NoDataReason)) {
+                        queue.addLast(row);
+                        outer.notifyAll();
+                        continue;
+                    }
+                    if (target != null) {
+                        freeList.add(target);
+                    }
+                    if (row == NoDataReason.END_OF_DATA) {
+                        tracer.fine("input finished: " + tupleIter);
+                        endOfData = true;
+                    } else if (moreData) {
+                        // data arrived during the fetch; try again
+                        continue;
+                    } else {
+                        underflow = true;
+                    }
+                    running = false;
+                    outer.notifyAll();
+                    return;
+                }
+            }
+        }
+
+        // implement MoreDataListener
+        public void onMoreData()
+        {
+            synchronized (CompoundParallelTupleIter.this) {
+                if (running) {
+                    moreData = true;
+                }
+                underflow = false;
+                schedule(this);
+                CompoundParallelTupleIter.this.notifyAll();
+            }
+            fireMoreData();
+        }
+    }
+
+    /**
+     * Creates the daemon threads of the shared worker pool.
+     */
+    private static class WorkerThreadFactory
+        implements ThreadFactory
+    {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        public Thread newThread(Runnable r)
+        {
+            Thread thread =
+                new Thread(
+                    r,
+                    "CompoundParallelTupleIter worker "
+                    + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
     public static class Test
         extends EigenbaseTestCase
     {
@@ -210,6 +693,278 @@ public class CompoundParallelTupleIter
                 tupleIter,
                 new String[] { "a", "b" });
         }
+
+        /**
+         * Tests that inputs are fetched concurrently: none of the inputs can
+         * return its first row until all of them have been asked for one.
+         */
+        public void testCompoundParallelConcurrent()
+        {
+            final int n = 4;
+            final CountDownLatch latch = new CountDownLatch(n);
+            TupleIter [] inputs = new TupleIter[n];
+            for (int k = 0; k < n; k++) {
+                final TupleIter base =
+                    makeTupleIter(new String[] { "x" + k, "y" + k });
+                inputs[k] =
+                    new AbstractTupleIter() {
+                        boolean first = true;
+
+                        public Object fetchNext()
+                        {
+                            if (first) {
+                                first = false;
+                                latch.countDown();
+                                try {
+                                    if (!latch.await(10, TimeUnit.SECONDS)) {
+                                        throw new RuntimeException(
+                                            "inputs not fetched in parallel");
+                                    }
+                                } catch (InterruptedException ex) {
+                                    throw new RuntimeException(ex);
+                                }
+                            }
+                            return base.fetchNext();
+                        }
+
+                        public void closeAllocation()
+                        {
+                        }
+                    };
+            }
+            assertEquals(
+                new CompoundParallelTupleIter(inputs),
+                new String[] {
+                    "x0", "x1", "x2", "x3", "y0", "y1", "y2", "y3"
+                });
+        }
+
+        /**
+         * Tests that an input which re-uses its row object does not overwrite
+         * a row before the caller has finished with it.
+         */
+        public void testCompoundParallelReusedRow()
+        {
+            List<Integer> expected = new ArrayList<Integer>();
+            TupleIter [] inputs = new TupleIter[3];
+            for (int k = 0; k < inputs.length; k++) {
+                inputs[k] = new CountingTupleIter(k * 1000, 100);
+                for (int v = 0; v < 100; v++) {
+                    expected.add(k * 1000 + v);
+                }
+            }
+            TupleIter tupleIter = new CompoundParallelTupleIter(inputs);
+            List<Integer> actual = drainCounters(tupleIter, false);
+            Collections.sort(actual);
+            assertEquals(expected, actual);
+            tupleIter.closeAllocation();
+        }
+
+        /**
+         * Tests deep queues with a copier, and that copies are recycled.
+         */
+        public void testCompoundParallelCopier()
+        {
+            final int queueDepth = 8;
+            final AtomicInteger allocations = new AtomicInteger();
+            TupleCopier copier =
+                new TupleCopier() {
+                    public Object copy(Object row, Object target)
+                    {
+                        if (target == null) {
+                            allocations.incrementAndGet();
+                            target = new int[1];
+                        }
+                        ((int []) target)[0] = ((int []) row)[0];
+                        return target;
+                    }
+                };
+            TupleIter [] inputs = new TupleIter[2];
+            List<Integer> expected = new ArrayList<Integer>();
+            for (int k = 0; k < inputs.length; k++) {
+                inputs[k] = new CountingTupleIter(k * 1000, 500);
+                for (int v = 0; v < 500; v++) {
+                    expected.add(k * 1000 + v);
+                }
+            }
+            TupleIter tupleIter =
+                new CompoundParallelTupleIter(
+                    inputs,
+                    null,
+                    copier,
+                    queueDepth);
+            List<Integer> actual = drainCounters(tupleIter, false);
+            Collections.sort(actual);
+            assertEquals(expected, actual);
+
+            // queue, plus one held by the caller, plus one being filled
+            assertTrue(
+                allocations.get() <= (inputs.length * (queueDepth + 2)));
+
+            tupleIter.restart();
+            assertEquals(1000, drainCounters(tupleIter, false).size());
+            tupleIter.closeAllocation();
+        }
+
+        /**
+         * Tests that underflow from an input is passed on, and that the input
+         * is retried afterwards.
+         */
+        public void testCompoundParallelUnderflow()
+        {
+            final TupleIter base = makeTupleIter(new String[] { "a", "b" });
+            TupleIter underflowing =
+                new AbstractTupleIter() {
+                    int calls;
+
+                    public Object fetchNext()
+                    {
+                        if ((++calls % 2) == 1) {
+                            return NoDataReason.UNDERFLOW;
+                        }
+                        return base.fetchNext();
+                    }
+
+                    public void closeAllocation()
+                    {
+                    }
+                };
+            TupleIter tupleIter =
+                new CompoundParallelTupleIter(
+                    new TupleIter[] {
+                        underflowing,
+                        makeTupleIter(new String[] { "c" })
+                    });
+
+            int underflowCount = 0;
+            List<Object> actual = new ArrayList<Object>();
+            while (true) {
+                Object o = tupleIter.fetchNext();
+                if (o == NoDataReason.END_OF_DATA) {
+                    break;
+                } else if (o == NoDataReason.UNDERFLOW) {
+                    underflowCount++;
+                } else {
+                    actual.add(o);
+                }
+            }
+            Collections.sort((List) actual);
+            assertEquals(Arrays.asList("a", "b", "c"), actual);
+            assertTrue(underflowCount > 0);
+        }
+
+        /**
+         * Tests that a cancel request stops an infinite input.
+         */
+        public void testCompoundParallelCancel()
+        {
+            CancelFlag cancelFlag = new CancelFlag();
+            TupleIter tupleIter =
+                new CompoundParallelTupleIter(
+                    new TupleIter[] {
+                        new CountingTupleIter(0, Integer.MAX_VALUE),
+                        makeTupleIter(new String[] { "a" })
+                    },
+                    cancelFlag);
+            for (int k = 0; k < 10; k++) {
+                assertFalse(tupleIter.fetchNext() instanceof NoDataReason);
+            }
+            cancelFlag.requestCancel();
+            assertSame(NoDataReason.END_OF_DATA, tupleIter.fetchNext());
+            tupleIter.closeAllocation();
+        }
+
+        /**
+         * Tests that an exception thrown by an input is rethrown to the
+         * caller.
+         */
+        public void testCompoundParallelError()
+        {
+            TupleIter failing =
+                new AbstractTupleIter() {
+                    public Object fetchNext()
+                    {
+                        throw new IllegalStateException("input failed");
+                    }
+
+                    public void closeAllocation()
+                    {
+                    }
+                };
+            TupleIter tupleIter =
+                new CompoundParallelTupleIter(
+                    new TupleIter[] {
+                        failing,
+                        new CountingTupleIter(0, Integer.MAX_VALUE)
+                    });
+            try {
+                drainCounters(tupleIter, true);
+                fail("expected exception");
+            } catch (IllegalStateException ex) {
+                assertEquals("input failed", ex.getMessage());
+            }
+            tupleIter.closeAllocation();
+        }
+
+        private static List<Integer> drainCounters(
+            TupleIter tupleIter,
+            boolean ignoreOthers)
+        {
+            List<Integer> list = new ArrayList<Integer>();
+            while (true) {
+                Object o = tupleIter.fetchNext();
+                if (o == NoDataReason.END_OF_DATA) {
+                    return list;
+                } else if (o == NoDataReason.UNDERFLOW) {
+                    continue;
+                } else if (o instanceof int []) {
+                    // give the inputs a chance to overwrite the row if they
+                    // are (wrongly) going to
+                    int value = ((int []) o)[0];
+                    Thread.yield();
+                    assertEquals(value, ((int []) o)[0]);
+                    list.add(value);
+                } else if (!ignoreOthers) {
+                    fail("unexpected row " + o);
+                }
+            }
+        }
+
+        /**
+         * Returns consecutive integers, re-using the same row object.
+         */
+        private static class CountingTupleIter
+            extends AbstractTupleIter
+        {
+            private final int start;
+            private final int count;
+            private final int [] row = new int[1];
+            private int next;
+
+            CountingTupleIter(int start, int count)
+            {
+                this.start = start;
+                this.count = count;
+            }
+
+            public Object fetchNext()
+            {
+                if (next >= count) {
+                    return NoDataReason.END_OF_DATA;
+                }
+                row[0] = start + next++;
+                return row;
+            }
+
+            public void restart()
+            {
+                next = 0;
+            }
+
+            public void closeAllocation()
+            {
+            }
+        }
     }
 }
 
@@ -54,6 +54,14 @@ public class TupleIterResultSet
 
     //~ Methods ----------------------------------------------------------------
 
+    /**
+     * Returns the iterator which this result set reads from.
+     */
+    protected TupleIter getTupleIter()
+    {
+        return tupleIter;
+    }
+
     /**
      * Sets the timeout that this TupleIterResultSet will wait for a row from
      * the underlying iterator.
@@ -0,0 +1,72 @@
+/*
+// $Id$
+// Package org.eigenbase is a class library of data management components.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package org.eigenbase.stat;
+
+import java.util.*;
+
+
+/**
+ * Statistics about a group of columns of a relational expression whose values
+ * are correlated, such as the country, state and city of an address.
+ * Statistics of the individual columns alone lead to estimates which assume
+ * the columns are independent; these correct for that.
+ *
+ * @version $Id$
+ */
+public interface RelStatColumnGroupStatistics
+{
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Returns the ordinals of the columns in the group.
+     *
+     * @return column ordinals
+     */
+    public BitSet getColumnOrdinals();
+
+    /**
+     * Estimates the number of distinct combinations of values of the columns
+     * in the group.
+     *
+     * @return an estimated count, or null if no reliable estimate can be
+     * determined
+     */
+    public Double getDistinctCount();
+
+    /**
+     * Returns the degree to which the value of one column of the group
+     * determines the value of another: the fraction of rows whose value of
+     * the dependent column is the one most commonly found with their value of
+     * the determining column. The degree is 1.0 if there is a functional
+     * dependency, and close to 0.0 if the columns are independent and the
+     * dependent column has many values.
+     *
+     * @param determinant ordinal of the determining column
+     * @param dependent ordinal of the dependent column
+     *
+     * @return dependency degree from 0.0 to 1.0; 0.0 if either column is not
+     * in the group
+     */
+    public double getDependencyDegree(int determinant, int dependent);
+}
+
+// End RelStatColumnGroupStatistics.java
@@ -21,6 +21,8 @@
 */
 package org.eigenbase.stat;
 
+import java.util.*;
+
 import org.eigenbase.rel.*;
 import org.eigenbase.sarg.*;
 
@@ -56,6 +58,14 @@ public interface RelStatSource
     RelStatColumnStatistics getColumnStatistics(
         int ordinal,
         SargIntervalSequence predicate);
+
+    /**
+     * Returns statistics pertaining to groups of correlated columns, for
+     * those groups which have been analyzed together.
+     *
+     * @return list of column group statistics, empty if there are none
+     */
+    List<RelStatColumnGroupStatistics> getColumnGroupStatistics();
 }
 
 // End RelStatSource.java
@@ -0,0 +1,213 @@
+/*
+// $Id$
+// Package org.eigenbase is a class library of data management components.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package org.eigenbase.stat;
+
+import java.util.*;
+
+
+/**
+ * Static utilities for combining the statistics of individual columns, taking
+ * into account any {@link RelStatColumnGroupStatistics} covering them.
+ *
+ * @version $Id$
+ */
+public abstract class RelStatUtil
+{
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Returns whether a column belongs to any of a list of column groups.
+     *
+     * @param groups column group statistics
+     * @param ordinal column ordinal
+     *
+     * @return whether the column is in a group
+     */
+    public static boolean isGrouped(
+        List<RelStatColumnGroupStatistics> groups,
+        int ordinal)
+    {
+        for (RelStatColumnGroupStatistics group : groups) {
+            if (group.getColumnOrdinals().get(ordinal)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Combines the selectivities of equality predicates on several columns.
+     *
+     * <p>Where one column determines another to degree <i>f</i>, the
+     * probability that a row satisfying the predicate on the determining
+     * column also satisfies that on the dependent column is taken to be
+     * <i>f</i> + (1 - <i>f</i>) &times; <i>s</i>, where <i>s</i> is the
+     * selectivity of the predicate on the dependent column alone. The
+     * strongest dependencies are applied first, each dependent column being
+     * used only once; the selectivities of the columns left over are
+     * multiplied as if they were independent. Thus with predicates on
+     * country, state and city, where city determines state and state
+     * determines country, the combined selectivity is that of the city.
+     *
+     * @param groups column group statistics
+     * @param selectivities selectivity of the equality predicate on each
+     * column, keyed by column ordinal
+     *
+     * @return combined selectivity
+     */
+    public static double combineSelectivities(
+        List<RelStatColumnGroupStatistics> groups,
+        Map<Integer, Double> selectivities)
+    {
+        return combine(groups, selectivities, 1.0);
+    }
+
+    /**
+     * Estimates the number of distinct combinations of values of several
+     * columns.
+     *
+     * <p>Where all of the columns of a group are present, the number of
+     * distinct combinations of their values is at most the distinct count of
+     * the group. The cardinalities of the other columns are combined using
+     * their dependency degrees: a column determined to degree <i>f</i> by
+     * another multiplies the count by <i>f</i> + (1 - <i>f</i>) &times;
+     * <i>c</i>, where <i>c</i> is its cardinality.
+     *
+     * @param groups column group statistics
+     * @param cardinalities number of distinct values of each column, keyed by
+     * column ordinal
+     *
+     * @return estimated number of distinct combinations
+     */
+    public static double combineCardinalities(
+        List<RelStatColumnGroupStatistics> groups,
+        Map<Integer, Double> cardinalities)
+    {
+        Map<Integer, Double> remaining =
+            new HashMap<Integer, Double>(cardinalities);
+        double distinctCount = 1.0;
+
+        // use the largest groups wholly contained in the columns first
+        List<RelStatColumnGroupStatistics> sortedGroups =
+            new ArrayList<RelStatColumnGroupStatistics>(groups);
+        Collections.sort(
+            sortedGroups,
+            new Comparator<RelStatColumnGroupStatistics>() {
+                public int compare(
+                    RelStatColumnGroupStatistics g1,
+                    RelStatColumnGroupStatistics g2)
+                {
+                    return g2.getColumnOrdinals().cardinality()
+                        - g1.getColumnOrdinals().cardinality();
+                }
+            });
+        for (RelStatColumnGroupStatistics group : sortedGroups) {
+            BitSet ordinals = group.getColumnOrdinals();
+            Double groupCount = group.getDistinctCount();
+            if ((groupCount == null) || !containsAll(remaining, ordinals)) {
+                continue;
+            }
+            double product = 1.0;
+            for (
+                int ordinal = ordinals.nextSetBit(0);
+                ordinal >= 0;
+                ordinal = ordinals.nextSetBit(ordinal + 1))
+            {
+                product *= remaining.remove(ordinal);
+            }
+            distinctCount *= Math.min(product, groupCount);
+        }
+        return combine(groups, remaining, distinctCount);
+    }
+
+    private static boolean containsAll(
+        Map<Integer, Double> values,
+        BitSet ordinals)
+    {
+        for (
+            int ordinal = ordinals.nextSetBit(0);
+            ordinal >= 0;
+            ordinal = ordinals.nextSetBit(ordinal + 1))
+        {
+            if (!values.containsKey(ordinal)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Multiplies a set of per-column factors, discounting those of columns
+     * determined by others, as described by {@link #combineSelectivities}.
+     */
+    private static double combine(
+        List<RelStatColumnGroupStatistics> groups,
+        Map<Integer, Double> factors,
+        double initial)
+    {
+        Map<Integer, Double> remaining = new HashMap<Integer, Double>(factors);
+        double result = initial;
+        while (remaining.size() > 1) {
+            int bestDependent = -1;
+            double bestDegree = 0.0;
+            for (int determinant : remaining.keySet()) {
+                for (int dependent : remaining.keySet()) {
+                    if (dependent == determinant) {
+                        continue;
+                    }
+                    double degree =
+                        getDependencyDegree(groups, determinant, dependent);
+                    if (degree > bestDegree) {
+                        bestDegree = degree;
+                        bestDependent = dependent;
+                    }
+                }
+            }
+            if (bestDependent < 0) {
+                break;
+            }
+            double factor = remaining.remove(bestDependent);
+            result *= bestDegree + ((1.0 - bestDegree) * factor);
+        }
+        for (double factor : remaining.values()) {
+            result *= factor;
+        }
+        return result;
+    }
+
+    private static double getDependencyDegree(
+        List<RelStatColumnGroupStatistics> groups,
+        int determinant,
+        int dependent)
+    {
+        double degree = 0.0;
+        for (RelStatColumnGroupStatistics group : groups) {
+            degree =
+                Math.max(
+                    degree,
+                    group.getDependencyDegree(determinant, dependent));
+        }
+        return degree;
+    }
+}
+
+// End RelStatUtil.java
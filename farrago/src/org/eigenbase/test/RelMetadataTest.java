@@ -455,6 +455,30 @@ public class RelMetadataTest
             EMP_SIZE);
     }
 
+    /**
+     * Tests that a repeated metadata query is answered from the cache.
+     */
+    public void testRowCountCached()
+    {
+        RelNode rel =
+            tester.convertSqlToRel(
+                "select * from emp inner join dept "
+                + "on emp.deptno = dept.deptno");
+        CachingRelMetadataProvider provider =
+            new CachingRelMetadataProvider(
+                new DefaultRelMetadataProvider(),
+                rel.getCluster().getPlanner());
+        rel.getCluster().setMetadataProvider(provider);
+        Double first = RelMetadataQuery.getRowCount(rel);
+        int callCount = provider.getCallCount();
+        int hitCount = provider.getHitCount();
+        assertTrue(callCount > 1);
+        Double second = RelMetadataQuery.getRowCount(rel);
+        assertEquals(first, second);
+        assertEquals(callCount + 1, provider.getCallCount());
+        assertEquals(hitCount + 1, provider.getHitCount());
+    }
+
     private void checkFilterSelectivity(
         String sql,
         double expected)
@@ -31,7 +31,7 @@ public class CancelFlag
 {
     //~ Instance fields --------------------------------------------------------
 
-    private boolean cancelRequested;
+    private volatile boolean cancelRequested;
 
     //~ Methods ----------------------------------------------------------------
 
@@ -80,6 +80,14 @@ public class ZonelessDate
         return new Date(getJdbcDate(DateTimeUtil.defaultZone));
     }
 
+    // implement ZonelessDatetime
+    public ZonelessDatetime copy()
+    {
+        ZonelessDate copy = new ZonelessDate();
+        copy.internalTime = internalTime;
+        return copy;
+    }
+
     /**
      * Converts this ZonelessDate to a java.sql.Date and formats it via the
      * {@link java.sql.Date#toString() toString()} method of that class.
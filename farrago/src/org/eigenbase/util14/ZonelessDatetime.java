@@ -186,6 +186,13 @@ public abstract class ZonelessDatetime
      */
     public abstract Object toJdbcObject();
 
+    /**
+     * Returns a new datetime with the same value as this one. The copy shares
+     * no workspace with this datetime, so it may be used by another thread
+     * while this one is reused.
+     */
+    public abstract ZonelessDatetime copy();
+
     /**
      * Gets a temporary Calendar set to the specified time zone. The same
      * Calendar is returned on subsequent calls.
@@ -96,6 +96,14 @@ public class ZonelessTime
         return new Time(getJdbcTime(DateTimeUtil.defaultZone));
     }
 
+    // implement ZonelessDatetime
+    public ZonelessDatetime copy()
+    {
+        ZonelessTime copy = new ZonelessTime(precision);
+        copy.internalTime = internalTime;
+        return copy;
+    }
+
     /**
      * Override ZonelessDatetime.
      *
@@ -80,6 +80,14 @@ public class ZonelessTimestamp
         return new Timestamp(getJdbcTimestamp(DateTimeUtil.defaultZone));
     }
 
+    // implement ZonelessDatetime
+    public ZonelessDatetime copy()
+    {
+        ZonelessTimestamp copy = new ZonelessTimestamp(precision);
+        copy.internalTime = internalTime;
+        return copy;
+    }
+
     /**
      * Converts this ZonelessTimestamp to a java.sql.Timestamp and formats it
      * via the {@link java.sql.Timestamp#toString() toString()} method of that
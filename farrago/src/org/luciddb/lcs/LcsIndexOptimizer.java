@@ -1359,6 +1359,11 @@ public class LcsIndexOptimizer
     /**
      * Calculate the combined selectivity of a set of sargable filters.
      *
+     * <p>Point filters on columns covered by column group statistics are
+     * combined using the dependencies between the columns. Other filters are
+     * assumed to be somewhat correlated, and are discounted by {@link
+     * #ColumnCorrelationFactor}.
+     *
      * @param filterSet set of filters
      * @param tabStat stat for underlying table these filters are based on
      *
@@ -1370,6 +1375,14 @@ public class LcsIndexOptimizer
     {
         Double combinedSelectivity = 1.0;
 
+        List<RelStatColumnGroupStatistics> columnGroups =
+            Collections.emptyList();
+        if (tabStat != null) {
+            columnGroups = tabStat.getColumnGroupStatistics();
+        }
+        Map<Integer, Double> pointSelectivities =
+            new HashMap<Integer, Double>();
+
         for (SargColumnFilter filter : filterSet) {
             Double filterSelectivity = filter.getSelectivity(tabStat);
 
@@ -1377,7 +1390,11 @@ public class LcsIndexOptimizer
                 return null;
             }
 
-            if (filterSelectivity > ColumnCorrelationFactor) {
+            if (filter.isPoint()
+                && RelStatUtil.isGrouped(columnGroups, filter.columnPos))
+            {
+                pointSelectivities.put(filter.columnPos, filterSelectivity);
+            } else if (filterSelectivity > ColumnCorrelationFactor) {
                 filterSelectivity = 1.0;
             } else {
                 filterSelectivity /= ColumnCorrelationFactor;
@@ -1385,9 +1402,44 @@ public class LcsIndexOptimizer
             }
         }
 
+        combinedSelectivity *=
+            RelStatUtil.combineSelectivities(
+                columnGroups,
+                pointSelectivities);
+
         return combinedSelectivity;
     }
 
+    /**
+     * Calculate the selectivity of a set of sargable filters on the rows
+     * already selected by another set of filters. Where the filters are on
+     * correlated columns, this can be much higher than the selectivity of
+     * the filters alone.
+     *
+     * @param filterSet set of filters
+     * @param givenFilterSet filters already applied
+     *
+     * @return conditional selectivity or null if selectivity stat is not
+     * available
+     */
+    private Double getConditionalSelectivity(
+        Set<SargColumnFilter> filterSet,
+        Set<SargColumnFilter> givenFilterSet)
+    {
+        Set<SargColumnFilter> allFilterSet =
+            new HashSet<SargColumnFilter>(givenFilterSet);
+        allFilterSet.addAll(filterSet);
+        Double givenSelectivity = getCombinedSelectivity(givenFilterSet);
+        Double allSelectivity = getCombinedSelectivity(allFilterSet);
+        if ((givenSelectivity == null) || (allSelectivity == null)) {
+            return null;
+        }
+        if (givenSelectivity <= 0.0) {
+            return getCombinedSelectivity(filterSet);
+        }
+        return Math.min(1.0, allSelectivity / givenSelectivity);
+    }
+
     /**
      * Calculate the combined selectivity of a set of sargable filters.
      *
@@ -1439,7 +1491,10 @@ public class LcsIndexOptimizer
 
         // Index search returns some rows.
         // They will be filtered by the residual filters.
-        residualFilterSelectivity = getCombinedSelectivity(residualFilterSet);
+        residualFilterSelectivity =
+            getConditionalSelectivity(
+                residualFilterSet,
+                indexSearchFilterSet);
 
         if (residualFilterSelectivity == null) {
             return null;
@@ -2350,7 +2405,8 @@ public class LcsIndexOptimizer
             HashSet<SargColumnFilter> difference =
                 new HashSet<SargColumnFilter>(filterList);
             difference.removeAll(mappedFilterSet);
-            effectiveSelectivity = getCombinedSelectivity(difference);
+            effectiveSelectivity =
+                getConditionalSelectivity(difference, mappedFilterSet);
         }
     }
 
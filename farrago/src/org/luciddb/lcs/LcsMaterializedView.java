@@ -0,0 +1,861 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package org.luciddb.lcs;
+
+import java.math.*;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+import net.sf.farrago.resource.*;
+
+import org.eigenbase.reltype.*;
+import org.eigenbase.rex.*;
+import org.eigenbase.sql.*;
+import org.eigenbase.sql.fun.*;
+import org.eigenbase.sql.parser.*;
+import org.eigenbase.sql.type.*;
+import org.eigenbase.util.*;
+
+
+/**
+ * LcsMaterializedView describes a materialized aggregate view: a column-store
+ * table which holds the result of an aggregate query over a single base
+ * table, and which {@link LcsMaterializedViewRule} substitutes for that query
+ * or for any query whose grouping and predicates it subsumes.
+ *
+ * <p>The defining query must have the form
+ *
+ * <blockquote>
+ * <pre>SELECT <i>item</i>, ...
+ *FROM <i>table</i> [[AS] <i>alias</i>]
+ *[WHERE <i>predicate</i> AND ...]
+ *GROUP BY <i>column</i>, ...</pre>
+ * </blockquote>
+ *
+ * where each select item is a grouping column, COUNT(*), or COUNT, SUM, MIN
+ * or MAX of a column of the base table, and each predicate compares a column
+ * with a numeric, character or boolean literal, or tests a column for null.
+ * Keeping to this form is what allows the view to be maintained
+ * incrementally when rows are appended to the base table; see {@link
+ * #getMergeStatement}.
+ *
+ * <p>Instances also hold the counters reported by the
+ * <code>SYS_ROOT.MATERIALIZED_VIEWS</code> function. They are kept by {@link
+ * LcsMaterializedViewRegistry} for as long as the view exists, so the
+ * counters cover the life of the server rather than of a statement.
+ *
+ * @version $Id$
+ */
+public class LcsMaterializedView
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final Map<SqlOperator, SqlOperator> reversedOperators =
+        new HashMap<SqlOperator, SqlOperator>();
+
+    static {
+        reversedOperators.put(
+            SqlStdOperatorTable.equalsOperator,
+            SqlStdOperatorTable.equalsOperator);
+        reversedOperators.put(
+            SqlStdOperatorTable.notEqualsOperator,
+            SqlStdOperatorTable.notEqualsOperator);
+        reversedOperators.put(
+            SqlStdOperatorTable.lessThanOperator,
+            SqlStdOperatorTable.greaterThanOperator);
+        reversedOperators.put(
+            SqlStdOperatorTable.greaterThanOperator,
+            SqlStdOperatorTable.lessThanOperator);
+        reversedOperators.put(
+            SqlStdOperatorTable.lessThanOrEqualOperator,
+            SqlStdOperatorTable.greaterThanOrEqualOperator);
+        reversedOperators.put(
+            SqlStdOperatorTable.greaterThanOrEqualOperator,
+            SqlStdOperatorTable.lessThanOrEqualOperator);
+    }
+
+    private static final List<String> aggregateNames =
+        Arrays.asList("COUNT", "SUM", "MIN", "MAX");
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final String mofId;
+
+    private final List<String> tableName;
+
+    private final List<String> baseTableName;
+
+    private final String fromSql;
+
+    private final List<String> selectSqls;
+
+    private final List<String> groupSqls;
+
+    private final List<String> predicateSqls;
+
+    private final String query;
+
+    /**
+     * Grouping columns of the base table, in GROUP BY order.
+     */
+    private final List<String> groupColumns;
+
+    /**
+     * Description of each column of the view, in select list order.
+     */
+    private final List<Column> columns;
+
+    private final List<Predicate> predicates;
+
+    private final AtomicLong rewriteCount = new AtomicLong();
+
+    private final AtomicLong staleSkipCount = new AtomicLong();
+
+    private final AtomicLong staleCount = new AtomicLong();
+
+    private final AtomicLong incrementalRefreshCount = new AtomicLong();
+
+    private final AtomicLong fullRefreshCount = new AtomicLong();
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a LcsMaterializedView by parsing its defining query.
+     *
+     * @param mofId MOFID of the table holding the view's rows, or null if
+     * the table has not been created yet
+     * @param tableName qualified name of the table holding the view's rows
+     * @param query defining query
+     * @param defaultCatalogName catalog used to qualify the base table name
+     * @param defaultSchemaName schema used to qualify the base table name
+     */
+    public LcsMaterializedView(
+        String mofId,
+        List<String> tableName,
+        String query,
+        String defaultCatalogName,
+        String defaultSchemaName)
+    {
+        this.mofId = mofId;
+        this.tableName = Collections.unmodifiableList(tableName);
+
+        SqlNode node;
+        try {
+            node = new SqlParser(query).parseQuery();
+        } catch (SqlParseException ex) {
+            throw unsupported(ex.getMessage());
+        }
+        if (!(node instanceof SqlSelect)) {
+            throw unsupported("query must be a single SELECT");
+        }
+        SqlSelect select = (SqlSelect) node;
+        if (select.isDistinct()
+            || (select.getHaving() != null)
+            || select.hasOrderBy()
+            || ((select.getWindowList() != null)
+                && (select.getWindowList().size() > 0)))
+        {
+            throw unsupported(
+                "DISTINCT, HAVING, ORDER BY and WINDOW are not allowed");
+        }
+
+        // FROM: a single table, optionally with an alias
+        SqlNode from = select.getFrom();
+        String alias = null;
+        if (from.getKind() == SqlKind.AS) {
+            SqlNode [] operands = ((SqlCall) from).getOperands();
+            from = operands[0];
+            alias = ((SqlIdentifier) operands[1]).getSimple();
+        }
+        if (!(from instanceof SqlIdentifier)) {
+            throw unsupported("FROM must name a single table");
+        }
+        String [] names = ((SqlIdentifier) from).names;
+        List<String> baseName = new ArrayList<String>();
+        if (names.length < 3) {
+            if (defaultCatalogName == null) {
+                throw unsupported("base table name must be qualified");
+            }
+            baseName.add(defaultCatalogName);
+        }
+        if (names.length < 2) {
+            if (defaultSchemaName == null) {
+                throw unsupported("base table name must be qualified");
+            }
+            baseName.add(defaultSchemaName);
+        }
+        baseName.addAll(Arrays.asList(names));
+        if (baseName.size() != 3) {
+            throw unsupported("invalid base table name");
+        }
+        baseTableName = Collections.unmodifiableList(baseName);
+
+        SqlDialect dialect = SqlDialect.EIGENBASE;
+        StringBuilder buf = new StringBuilder();
+        for (String name : baseTableName) {
+            if (buf.length() > 0) {
+                buf.append('.');
+            }
+            buf.append(dialect.quoteIdentifier(name));
+        }
+        if (alias != null) {
+            buf.append(" AS ").append(dialect.quoteIdentifier(alias));
+        }
+        fromSql = buf.toString();
+
+        // GROUP BY: columns only
+        groupColumns = new ArrayList<String>();
+        groupSqls = new ArrayList<String>();
+        SqlNodeList groupList = select.getGroup();
+        if ((groupList == null) || (groupList.size() == 0)) {
+            throw unsupported("GROUP BY is required");
+        }
+        for (SqlNode group : groupList) {
+            groupColumns.add(getColumnName(group, alias));
+            groupSqls.add(group.toSqlString(dialect).getSql());
+        }
+
+        // SELECT: grouping columns and simple aggregates
+        columns = new ArrayList<Column>();
+        selectSqls = new ArrayList<String>();
+        for (SqlNode item : select.getSelectList()) {
+            selectSqls.add(item.toSqlString(dialect).getSql());
+            if (item.getKind() == SqlKind.AS) {
+                item = ((SqlCall) item).getOperands()[0];
+            }
+            columns.add(getColumn(item, alias));
+        }
+        if (columns.size() == 0) {
+            throw unsupported("empty select list");
+        }
+
+        // WHERE: a conjunction of simple predicates
+        predicates = new ArrayList<Predicate>();
+        predicateSqls = new ArrayList<String>();
+        List<SqlNode> conjuncts = new ArrayList<SqlNode>();
+        decomposeConjunction(select.getWhere(), conjuncts);
+        for (SqlNode conjunct : conjuncts) {
+            predicates.add(getPredicate(conjunct, alias));
+            predicateSqls.add(conjunct.toSqlString(dialect).getSql());
+        }
+
+        this.query = getLoadQuery(null, -1, -1);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    private static EigenbaseException unsupported(String reason)
+    {
+        return FarragoResource.instance().MaterializedViewUnsupported.ex(
+            reason);
+    }
+
+    private String getColumnName(SqlNode node, String alias)
+    {
+        if (node instanceof SqlIdentifier) {
+            SqlIdentifier id = (SqlIdentifier) node;
+            if (id.isSimple()) {
+                return id.getSimple();
+            }
+            if ((id.names.length == 2) && id.names[0].equals(alias)) {
+                return id.names[1];
+            }
+        }
+        throw unsupported(
+            "expected a column of the base table: " + node.toString());
+    }
+
+    private Column getColumn(SqlNode item, String alias)
+    {
+        if (item instanceof SqlIdentifier) {
+            String name = getColumnName(item, alias);
+            if (!groupColumns.contains(name)) {
+                throw unsupported("column " + name + " is not grouped");
+            }
+            return new Column(null, name);
+        }
+        if (item instanceof SqlCall) {
+            SqlCall call = (SqlCall) item;
+            String aggName = call.getOperator().getName().toUpperCase();
+            SqlNode [] operands = call.getOperands();
+            if (aggregateNames.contains(aggName)
+                && (call.getFunctionQuantifier() == null)
+                && (operands.length == 1))
+            {
+                if ((operands[0] instanceof SqlIdentifier)
+                    && ((SqlIdentifier) operands[0]).isStar())
+                {
+                    if (aggName.equals("COUNT")) {
+                        return new Column(aggName, null);
+                    }
+                } else {
+                    return new Column(
+                        aggName,
+                        getColumnName(operands[0], alias));
+                }
+            }
+        }
+        throw unsupported(
+            "select item must be a grouping column or COUNT, SUM, MIN or "
+            + "MAX of a column: " + item.toString());
+    }
+
+    private static void decomposeConjunction(
+        SqlNode node,
+        List<SqlNode> conjuncts)
+    {
+        if (node == null) {
+            return;
+        }
+        if (node.getKind() == SqlKind.AND) {
+            for (SqlNode operand : ((SqlCall) node).getOperands()) {
+                decomposeConjunction(operand, conjuncts);
+            }
+        } else {
+            conjuncts.add(node);
+        }
+    }
+
+    private Predicate getPredicate(SqlNode node, String alias)
+    {
+        if (node instanceof SqlCall) {
+            SqlCall call = (SqlCall) node;
+            SqlOperator op = call.getOperator();
+            SqlNode [] operands = call.getOperands();
+            if ((op == SqlStdOperatorTable.isNullOperator)
+                || (op == SqlStdOperatorTable.isNotNullOperator))
+            {
+                return new Predicate(
+                    getColumnName(operands[0], alias),
+                    op,
+                    null);
+            }
+            if (reversedOperators.containsKey(op)) {
+                if (operands[1] instanceof SqlIdentifier) {
+                    operands = new SqlNode[] { operands[1], operands[0] };
+                    op = reversedOperators.get(op);
+                }
+                Comparable value = getLiteralValue(operands[1]);
+                if (value != null) {
+                    return new Predicate(
+                        getColumnName(operands[0], alias),
+                        op,
+                        value);
+                }
+            }
+        }
+        throw unsupported(
+            "predicate must compare a column with a literal: "
+            + node.toString());
+    }
+
+    private static Comparable getLiteralValue(SqlNode node)
+    {
+        boolean negate = false;
+        if (node.getKind() == SqlKind.MINUS_PREFIX) {
+            negate = true;
+            node = ((SqlCall) node).getOperands()[0];
+        }
+        if (!(node instanceof SqlLiteral)) {
+            return null;
+        }
+        Comparable value = normalizeValue(((SqlLiteral) node).getValue());
+        if (negate) {
+            if (!(value instanceof BigDecimal)) {
+                return null;
+            }
+            value = ((BigDecimal) value).negate();
+        }
+        return value;
+    }
+
+    private static Comparable normalizeValue(Object value)
+    {
+        if (value instanceof NlsString) {
+            return ((NlsString) value).getValue();
+        }
+        if ((value instanceof BigDecimal)
+            || (value instanceof Boolean)
+            || (value instanceof String))
+        {
+            return (Comparable) value;
+        }
+        return null;
+    }
+
+    /**
+     * @return MOFID of the table holding the view's rows
+     */
+    public String getMofId()
+    {
+        return mofId;
+    }
+
+    /**
+     * @return qualified name of the table holding the view's rows
+     */
+    public List<String> getTableName()
+    {
+        return tableName;
+    }
+
+    /**
+     * @return qualified name of the base table
+     */
+    public List<String> getBaseTableName()
+    {
+        return baseTableName;
+    }
+
+    /**
+     * @return defining query, with the base table name fully qualified
+     */
+    public String getQuery()
+    {
+        return query;
+    }
+
+    /**
+     * @return number of columns of the view
+     */
+    public int getColumnCount()
+    {
+        return columns.size();
+    }
+
+    /**
+     * @return whether the view groups by exactly the given base columns
+     */
+    public boolean isGroupedBy(Set<String> columnNames)
+    {
+        return new HashSet<String>(groupColumns).equals(columnNames);
+    }
+
+    /**
+     * Finds the column of the view which holds a grouping column of the base
+     * table.
+     *
+     * @param baseColumn name of base table column
+     *
+     * @return 0-based ordinal of view column, or -1 if the view does not
+     * group by the column
+     */
+    public int findGroupColumn(String baseColumn)
+    {
+        for (int i = 0; i < columns.size(); ++i) {
+            Column column = columns.get(i);
+            if ((column.aggName == null)
+                && column.baseColumn.equals(baseColumn))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the column of the view which holds an aggregate.
+     *
+     * @param aggName name of aggregate function: COUNT, SUM, MIN or MAX
+     * @param baseColumn name of the base table column aggregated, or null
+     * for COUNT(*)
+     *
+     * @return 0-based ordinal of view column, or -1 if the view does not
+     * compute the aggregate
+     */
+    public int findAggregate(String aggName, String baseColumn)
+    {
+        for (int i = 0; i < columns.size(); ++i) {
+            Column column = columns.get(i);
+            if (aggName.equals(column.aggName)
+                && Util.equal(baseColumn, column.baseColumn))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return predicates of the defining query
+     */
+    public List<Predicate> getPredicates()
+    {
+        return Collections.unmodifiableList(predicates);
+    }
+
+    /**
+     * Returns the defining query, restricted to base table rows whose LCS
+     * row ids lie in a given range.
+     *
+     * @param ridColumn a column of the base table, used as the argument to
+     * LCS_RID, or null to return the query without restriction
+     * @param fromRid lowest row id to include, or -1 for no lower bound
+     * @param toRid row id above the highest to include, or -1 for no upper
+     * bound
+     *
+     * @return query text
+     */
+    public String getLoadQuery(String ridColumn, long fromRid, long toRid)
+    {
+        List<String> conditions = new ArrayList<String>(predicateSqls);
+        if (ridColumn != null) {
+            String rid =
+                "LCS_RID("
+                + SqlDialect.EIGENBASE.quoteIdentifier(ridColumn) + ")";
+            if (fromRid >= 0) {
+                conditions.add(rid + " >= " + fromRid);
+            }
+            if (toRid >= 0) {
+                conditions.add(rid + " < " + toRid);
+            }
+        }
+        StringBuilder buf = new StringBuilder();
+        buf.append("SELECT ");
+        appendList(buf, selectSqls, ", ");
+        buf.append(" FROM ").append(fromSql);
+        if (!conditions.isEmpty()) {
+            buf.append(" WHERE ");
+            appendList(buf, conditions, " AND ");
+        }
+        buf.append(" GROUP BY ");
+        appendList(buf, groupSqls, ", ");
+        return buf.toString();
+    }
+
+    private static void appendList(
+        StringBuilder buf,
+        List<String> list,
+        String separator)
+    {
+        for (int i = 0; i < list.size(); ++i) {
+            if (i > 0) {
+                buf.append(separator);
+            }
+            buf.append(list.get(i));
+        }
+    }
+
+    /**
+     * Returns a MERGE statement which folds the result of the defining query
+     * over newly appended base table rows into the view. Rows for new groups
+     * are inserted; counts and sums of existing groups are added to, and
+     * minima and maxima are compared.
+     *
+     * @param columnNames names of the view's columns
+     * @param nullable whether each of the view's columns is nullable
+     * @param deltaQuery defining query restricted to the appended rows, as
+     * returned by {@link #getLoadQuery}
+     *
+     * @return MERGE statement text
+     */
+    public String getMergeStatement(
+        List<String> columnNames,
+        boolean [] nullable,
+        String deltaQuery)
+    {
+        assert columnNames.size() == columns.size();
+        SqlDialect dialect = SqlDialect.EIGENBASE;
+        StringBuilder target = new StringBuilder();
+        for (String name : tableName) {
+            if (target.length() > 0) {
+                target.append('.');
+            }
+            target.append(dialect.quoteIdentifier(name));
+        }
+
+        List<String> onConditions = new ArrayList<String>();
+        List<String> updates = new ArrayList<String>();
+        List<String> inserts = new ArrayList<String>();
+        List<String> quotedNames = new ArrayList<String>();
+        for (int i = 0; i < columns.size(); ++i) {
+            Column column = columns.get(i);
+            String name = dialect.quoteIdentifier(columnNames.get(i));
+            String t = "\"T\"." + name;
+            String d = "\"D\"." + name;
+            quotedNames.add(name);
+            inserts.add(d);
+            if (column.aggName == null) {
+                onConditions.add(
+                    t + (nullable[i] ? " IS NOT DISTINCT FROM " : " = ") + d);
+            } else if (column.aggName.equals("COUNT")) {
+                updates.add(name + " = " + t + " + " + d);
+            } else if (column.aggName.equals("SUM")) {
+                updates.add(
+                    name + " = CASE WHEN " + t + " IS NULL THEN " + d
+                    + " WHEN " + d + " IS NULL THEN " + t
+                    + " ELSE " + t + " + " + d + " END");
+            } else {
+                String op = column.aggName.equals("MIN") ? " < " : " > ";
+                updates.add(
+                    name + " = CASE WHEN " + t + " IS NULL OR " + d + op + t
+                    + " THEN " + d + " ELSE " + t + " END");
+            }
+        }
+
+        StringBuilder buf = new StringBuilder();
+        buf.append("MERGE INTO ").append(target).append(" AS \"T\" USING (");
+        buf.append(deltaQuery).append(") AS \"D\" ON ");
+        appendList(buf, onConditions, " AND ");
+        if (!updates.isEmpty()) {
+            buf.append(" WHEN MATCHED THEN UPDATE SET ");
+            appendList(buf, updates, ", ");
+        }
+        buf.append(" WHEN NOT MATCHED THEN INSERT (");
+        appendList(buf, quotedNames, ", ");
+        buf.append(") VALUES (");
+        appendList(buf, inserts, ", ");
+        buf.append(")");
+        return buf.toString();
+    }
+
+    /**
+     * Records that a query was rewritten to read from this view.
+     */
+    void addRewrite()
+    {
+        rewriteCount.incrementAndGet();
+    }
+
+    /**
+     * Records that a query could have been rewritten to read from this view
+     * but was not, because the view was stale.
+     */
+    void addStaleSkip()
+    {
+        staleSkipCount.incrementAndGet();
+    }
+
+    /**
+     * Records that a modification of the base table made this view stale.
+     */
+    void addStale()
+    {
+        staleCount.incrementAndGet();
+    }
+
+    /**
+     * Records a refresh of this view.
+     *
+     * @param incremental whether the refresh was incremental
+     */
+    void addRefresh(boolean incremental)
+    {
+        if (incremental) {
+            incrementalRefreshCount.incrementAndGet();
+        } else {
+            fullRefreshCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return number of queries rewritten to read from this view
+     */
+    public long getRewriteCount()
+    {
+        return rewriteCount.get();
+    }
+
+    /**
+     * @return number of queries which were not rewritten to read from this
+     * view because it was stale
+     */
+    public long getStaleSkipCount()
+    {
+        return staleSkipCount.get();
+    }
+
+    /**
+     * @return number of times a modification of the base table made this
+     * view stale
+     */
+    public long getStaleCount()
+    {
+        return staleCount.get();
+    }
+
+    /**
+     * @return number of incremental refreshes
+     */
+    public long getIncrementalRefreshCount()
+    {
+        return incrementalRefreshCount.get();
+    }
+
+    /**
+     * @return number of full refreshes
+     */
+    public long getFullRefreshCount()
+    {
+        return fullRefreshCount.get();
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Column of a materialized view: either a grouping column or an
+     * aggregate.
+     */
+    private static class Column
+    {
+        /**
+         * COUNT, SUM, MIN or MAX, or null for a grouping column.
+         */
+        final String aggName;
+
+        /**
+         * Name of base column, or null for COUNT(*).
+         */
+        final String baseColumn;
+
+        Column(String aggName, String baseColumn)
+        {
+            this.aggName = aggName;
+            this.baseColumn = baseColumn;
+        }
+    }
+
+    /**
+     * Predicate of the defining query: a comparison of a column with a
+     * literal, or a test of a column for null.
+     */
+    public static class Predicate
+    {
+        private final String column;
+
+        private final SqlOperator op;
+
+        private final Comparable value;
+
+        Predicate(String column, SqlOperator op, Comparable value)
+        {
+            this.column = column;
+            this.op = op;
+            this.value = value;
+        }
+
+        /**
+         * Returns whether a condition of a query is equivalent to this
+         * predicate.
+         *
+         * @param condition conjunct of a filter condition
+         * @param fields fields of the base table scan the condition applies
+         * to
+         *
+         * @return whether the condition is equivalent
+         */
+        public boolean matches(RexNode condition, RelDataTypeField [] fields)
+        {
+            if (!(condition instanceof RexCall)) {
+                return false;
+            }
+            RexCall call = (RexCall) condition;
+            SqlOperator callOp = call.getOperator();
+            RexNode [] operands = call.getOperands();
+            if (value == null) {
+                return (callOp == op)
+                    && (operands.length == 1)
+                    && column.equals(getFieldName(operands[0], fields));
+            }
+            if (!reversedOperators.containsKey(callOp)
+                || (operands.length != 2))
+            {
+                return false;
+            }
+            if (getFieldName(operands[0], fields) == null) {
+                operands = new RexNode[] { operands[1], operands[0] };
+                callOp = reversedOperators.get(callOp);
+            }
+            if ((callOp != op)
+                || !column.equals(getFieldName(operands[0], fields)))
+            {
+                return false;
+            }
+            Comparable literalValue = getLiteralValue(operands[1]);
+            if ((literalValue instanceof BigDecimal)
+                && (value instanceof BigDecimal))
+            {
+                return ((BigDecimal) literalValue).compareTo(
+                    (BigDecimal) value) == 0;
+            }
+            return value.equals(literalValue);
+        }
+
+        private static String getFieldName(
+            RexNode node,
+            RelDataTypeField [] fields)
+        {
+            // Comparisons between numeric columns and literals of a wider
+            // type come with a cast on the column, which doesn't change the
+            // meaning of the comparison.
+            if ((node instanceof RexCall)
+                && (((RexCall) node).getOperator()
+                    == SqlStdOperatorTable.castFunc))
+            {
+                RexNode operand = ((RexCall) node).getOperands()[0];
+                if (SqlTypeUtil.isNumeric(node.getType())
+                    && SqlTypeUtil.isNumeric(operand.getType()))
+                {
+                    node = operand;
+                }
+            }
+            if (node instanceof RexInputRef) {
+                return fields[((RexInputRef) node).getIndex()].getName();
+            }
+            return null;
+        }
+
+        private static Comparable getLiteralValue(RexNode node)
+        {
+            boolean negate = false;
+            if ((node instanceof RexCall)
+                && (((RexCall) node).getOperator()
+                    == SqlStdOperatorTable.prefixMinusOperator))
+            {
+                negate = true;
+                node = ((RexCall) node).getOperands()[0];
+            }
+            if ((node instanceof RexCall)
+                && (((RexCall) node).getOperator()
+                    == SqlStdOperatorTable.castFunc))
+            {
+                // literals are cast to the type of the column they are
+                // compared with
+                node = ((RexCall) node).getOperands()[0];
+            }
+            if (!(node instanceof RexLiteral)) {
+                return null;
+            }
+            Comparable value = normalizeValue(((RexLiteral) node).getValue());
+            if (negate) {
+                if (!(value instanceof BigDecimal)) {
+                    return null;
+                }
+                value = ((BigDecimal) value).negate();
+            }
+            return value;
+        }
+    }
+}
+
+// End LcsMaterializedView.java
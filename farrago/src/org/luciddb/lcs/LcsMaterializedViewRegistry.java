@@ -0,0 +1,393 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package org.luciddb.lcs;
+
+import java.util.*;
+
+import net.sf.farrago.catalog.*;
+import net.sf.farrago.fem.med.*;
+
+
+/**
+ * LcsMaterializedViewRegistry keeps track of the materialized views defined
+ * over each column-store table.
+ *
+ * <p>A materialized view is a local table whose storage options record its
+ * defining query ({@link #QUERY_OPTION}), whether its contents reflect the
+ * base table ({@link #STATE_OPTION}), and the LCS row id of the first base
+ * table row not yet reflected in it ({@link #RID_OPTION}). The catalog is
+ * therefore the authority on which views exist and whether they are fresh;
+ * the registry only indexes views by base table. There is one index per
+ * repository, built by scanning the catalog the first time it is needed, so
+ * that a database which is shut down and reloaded starts afresh.
+ *
+ * <p>Callers must hold a repository transaction: a write transaction for
+ * methods which change the state of a view, a read transaction otherwise.
+ *
+ * @version $Id$
+ */
+public abstract class LcsMaterializedViewRegistry
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * Storage option holding the defining query of a materialized view.
+     */
+    public static final String QUERY_OPTION = "MATERIALIZED_QUERY";
+
+    /**
+     * Storage option holding the {@link State} of a materialized view.
+     */
+    public static final String STATE_OPTION = "MATERIALIZED_STATE";
+
+    /**
+     * Storage option holding the LCS row id of the first base table row not
+     * yet reflected in a materialized view.
+     */
+    public static final String RID_OPTION = "MATERIALIZED_RID";
+
+    /**
+     * View indexes by repository.
+     */
+    private static final Map<FarragoRepos, ViewIndex> indexes =
+        new WeakHashMap<FarragoRepos, ViewIndex>();
+
+    //~ Enums ------------------------------------------------------------------
+
+    /**
+     * State of a materialized view.
+     */
+    public enum State
+    {
+        /**
+         * The view reflects the current contents of its base table, and may
+         * be substituted for queries.
+         */
+        FRESH,
+
+        /**
+         * Rows have been appended to the base table since the view was last
+         * refreshed, but none have been updated or deleted; the view can be
+         * brought up to date incrementally.
+         */
+        APPENDED,
+
+        /**
+         * Rows of the base table have been updated or deleted since the view
+         * was last refreshed; the view must be recomputed.
+         */
+        STALE
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    private static ViewIndex load(FarragoRepos repos)
+    {
+        ViewIndex index = indexes.get(repos);
+        if (index != null) {
+            return index;
+        }
+        index = new ViewIndex();
+        for (FemLocalTable table : repos.allOfClass(FemLocalTable.class)) {
+            String query = getOption(table, QUERY_OPTION);
+            if (query != null) {
+                index.add(
+                    new LcsMaterializedView(
+                        table.refMofId(),
+                        Arrays.asList(
+                            FarragoCatalogUtil.getQualifiedName(table).names),
+                        query,
+                        null,
+                        null));
+            }
+        }
+        indexes.put(repos, index);
+        return index;
+    }
+
+    /**
+     * Registers a newly created materialized view.
+     *
+     * @param repos repository
+     * @param view view, whose table has been created with the storage options
+     * described above
+     */
+    public static synchronized void register(
+        FarragoRepos repos,
+        LcsMaterializedView view)
+    {
+        load(repos).add(view);
+    }
+
+    /**
+     * Returns the materialized views defined over a base table. Views whose
+     * tables have been dropped are forgotten.
+     *
+     * @param repos repository
+     * @param baseTableName qualified name of base table
+     *
+     * @return list of views, possibly empty
+     */
+    public static synchronized List<LcsMaterializedView> getViews(
+        FarragoRepos repos,
+        List<String> baseTableName)
+    {
+        ViewIndex index = load(repos);
+        Set<String> mofIds = index.baseTableViews.get(baseTableName);
+        if (mofIds == null) {
+            return Collections.emptyList();
+        }
+        List<LcsMaterializedView> list = new ArrayList<LcsMaterializedView>();
+        Iterator<String> iter = mofIds.iterator();
+        while (iter.hasNext()) {
+            String mofId = iter.next();
+            if (getTable(repos, mofId) == null) {
+                iter.remove();
+                index.views.remove(mofId);
+            } else {
+                list.add(index.views.get(mofId));
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Returns all materialized views.
+     *
+     * @param repos repository
+     *
+     * @return list of views
+     */
+    public static synchronized List<LcsMaterializedView> getAllViews(
+        FarragoRepos repos)
+    {
+        ViewIndex index = load(repos);
+        List<LcsMaterializedView> list = new ArrayList<LcsMaterializedView>();
+        for (List<String> baseTableName
+            : new ArrayList<List<String>>(index.baseTableViews.keySet()))
+        {
+            list.addAll(getViews(repos, baseTableName));
+        }
+        return list;
+    }
+
+    /**
+     * Returns the materialized view whose rows a table holds.
+     *
+     * @param repos repository
+     * @param table table
+     *
+     * @return view, or null if the table is not a materialized view
+     */
+    public static synchronized LcsMaterializedView getView(
+        FarragoRepos repos,
+        FemLocalTable table)
+    {
+        return load(repos).views.get(table.refMofId());
+    }
+
+    /**
+     * Returns the table holding the rows of a materialized view.
+     *
+     * @param repos repository
+     * @param view view
+     *
+     * @return table, or null if the table has been dropped
+     */
+    public static FemLocalTable getTable(
+        FarragoRepos repos,
+        LcsMaterializedView view)
+    {
+        return getTable(repos, view.getMofId());
+    }
+
+    private static FemLocalTable getTable(FarragoRepos repos, String mofId)
+    {
+        Object obj = repos.getMdrRepos().getByMofId(mofId);
+        if (obj instanceof FemLocalTable) {
+            return (FemLocalTable) obj;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the state of a materialized view.
+     *
+     * @param table table holding the view's rows
+     *
+     * @return state
+     */
+    public static State getState(FemLocalTable table)
+    {
+        String state = getOption(table, STATE_OPTION);
+        if (state == null) {
+            return State.STALE;
+        }
+        return State.valueOf(state);
+    }
+
+    /**
+     * Sets the state of a materialized view. Requires a write transaction.
+     *
+     * @param repos repository
+     * @param table table holding the view's rows
+     * @param state new state
+     */
+    public static void setState(
+        FarragoRepos repos,
+        FemLocalTable table,
+        State state)
+    {
+        setOption(repos, table, STATE_OPTION, state.name());
+    }
+
+    /**
+     * Returns the LCS row id of the first base table row not yet reflected in
+     * a materialized view.
+     *
+     * @param table table holding the view's rows
+     *
+     * @return row id
+     */
+    public static long getRid(FemLocalTable table)
+    {
+        String rid = getOption(table, RID_OPTION);
+        return (rid == null) ? 0 : Long.parseLong(rid);
+    }
+
+    /**
+     * Sets the LCS row id of the first base table row not yet reflected in a
+     * materialized view. Requires a write transaction.
+     *
+     * @param repos repository
+     * @param table table holding the view's rows
+     * @param rid row id
+     */
+    public static void setRid(
+        FarragoRepos repos,
+        FemLocalTable table,
+        long rid)
+    {
+        setOption(repos, table, RID_OPTION, Long.toString(rid));
+    }
+
+    /**
+     * Downgrades the state of the materialized views over a table which has
+     * just been modified. Requires a write transaction.
+     *
+     * <p>Appending rows leaves a view which was fresh in the {@link
+     * State#APPENDED} state; any other modification makes it {@link
+     * State#STALE}.
+     *
+     * @param repos repository
+     * @param table modified table
+     * @param appendOnly whether the modification only inserted rows
+     */
+    public static void onBaseTableModified(
+        FarragoRepos repos,
+        FemAbstractColumnSet table,
+        boolean appendOnly)
+    {
+        List<String> baseTableName =
+            Arrays.asList(FarragoCatalogUtil.getQualifiedName(table).names);
+        for (LcsMaterializedView view : getViews(repos, baseTableName)) {
+            FemLocalTable viewTable = getTable(repos, view);
+            if (viewTable == null) {
+                continue;
+            }
+            State state = getState(viewTable);
+            if (state == State.STALE) {
+                continue;
+            }
+            if (state == State.FRESH) {
+                view.addStale();
+            }
+            setState(
+                repos,
+                viewTable,
+                appendOnly ? State.APPENDED : State.STALE);
+        }
+    }
+
+    private static String getOption(
+        FemElementWithStorageOptions element,
+        String name)
+    {
+        for (FemStorageOption option : element.getStorageOptions()) {
+            if (option.getName().equals(name)) {
+                return option.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static void setOption(
+        FarragoRepos repos,
+        FemElementWithStorageOptions element,
+        String name,
+        String value)
+    {
+        for (FemStorageOption option : element.getStorageOptions()) {
+            if (option.getName().equals(name)) {
+                option.setValue(value);
+                return;
+            }
+        }
+        FemStorageOption option = repos.newFemStorageOption();
+        option.setName(name);
+        option.setValue(value);
+        element.getStorageOptions().add(option);
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Index of the materialized views in one repository.
+     */
+    private static class ViewIndex
+    {
+        /**
+         * Views by MOFID of the table holding their rows.
+         */
+        final Map<String, LcsMaterializedView> views =
+            new HashMap<String, LcsMaterializedView>();
+
+        /**
+         * MOFIDs of views by qualified name of base table.
+         */
+        final Map<List<String>, Set<String>> baseTableViews =
+            new HashMap<List<String>, Set<String>>();
+
+        void add(LcsMaterializedView view)
+        {
+            views.put(view.getMofId(), view);
+            Set<String> mofIds = baseTableViews.get(view.getBaseTableName());
+            if (mofIds == null) {
+                mofIds = new HashSet<String>();
+                baseTableViews.put(view.getBaseTableName(), mofIds);
+            }
+            mofIds.add(view.getMofId());
+        }
+    }
+}
+
+// End LcsMaterializedViewRegistry.java
@@ -0,0 +1,454 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package org.luciddb.lcs;
+
+import org.luciddb.session.*;
+
+import java.util.*;
+
+import net.sf.farrago.catalog.*;
+import net.sf.farrago.fem.med.*;
+import net.sf.farrago.query.*;
+
+import org.eigenbase.rel.*;
+import org.eigenbase.relopt.*;
+import org.eigenbase.reltype.*;
+import org.eigenbase.rex.*;
+import org.eigenbase.sql.fun.*;
+
+
+/**
+ * LcsMaterializedViewRule rewrites an aggregate over a column-store table to
+ * read from a fresh {@link LcsMaterializedView} over that table instead.
+ *
+ * <p>A view can answer a query if it groups by every column the query groups
+ * by, computes every aggregate the query computes, and each of its predicates
+ * is also a conjunct of the query's filter. Conjuncts of the query which are
+ * not predicates of the view remain as a filter on the view, and so may only
+ * reference grouping columns of the view. If the view groups by more columns
+ * than the query, its rows are aggregated again: counts are summed, and sums,
+ * minima and maxima are combined by the same aggregate.
+ *
+ * <p>The rule runs in the HEP program, after filters have been pushed down
+ * and projects pulled up, so that the aggregate sits directly on a project
+ * and/or filter over the row scan.
+ *
+ * @version $Id$
+ */
+public class LcsMaterializedViewRule
+    extends RelOptRule
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    public final static LcsMaterializedViewRule instanceProjectFilter =
+        new LcsMaterializedViewRule(
+            new RelOptRuleOperand(
+                AggregateRel.class,
+                new RelOptRuleOperand(
+                    ProjectRel.class,
+                    new RelOptRuleOperand(
+                        FilterRel.class,
+                        new RelOptRuleOperand(
+                            LcsRowScanRel.class)))),
+            "project filter");
+
+    public final static LcsMaterializedViewRule instanceProject =
+        new LcsMaterializedViewRule(
+            new RelOptRuleOperand(
+                AggregateRel.class,
+                new RelOptRuleOperand(
+                    ProjectRel.class,
+                    new RelOptRuleOperand(
+                        LcsRowScanRel.class))),
+            "project");
+
+    public final static LcsMaterializedViewRule instanceFilter =
+        new LcsMaterializedViewRule(
+            new RelOptRuleOperand(
+                AggregateRel.class,
+                new RelOptRuleOperand(
+                    FilterRel.class,
+                    new RelOptRuleOperand(
+                        LcsRowScanRel.class))),
+            "filter");
+
+    public final static LcsMaterializedViewRule instanceRowScan =
+        new LcsMaterializedViewRule(
+            new RelOptRuleOperand(
+                AggregateRel.class,
+                new RelOptRuleOperand(
+                    LcsRowScanRel.class)),
+            "row scan");
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates an LcsMaterializedViewRule.
+     *
+     * @param operand Root operand, must not be null
+     *
+     * @param id Description of rule
+     */
+    public LcsMaterializedViewRule(
+        RelOptRuleOperand operand,
+        String id)
+    {
+        super(operand, "LcsMaterializedViewRule: " + id);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement RelOptRule
+    public void onMatch(RelOptRuleCall call)
+    {
+        AggregateRel aggRel = (AggregateRel) call.rels[0];
+        ProjectRel project = null;
+        FilterRel filter = null;
+        LcsRowScanRel rowScan = null;
+        for (int i = 1; i < call.rels.length; i++) {
+            if (call.rels[i] instanceof ProjectRel) {
+                project = (ProjectRel) call.rels[i];
+            } else if (call.rels[i] instanceof FilterRel) {
+                filter = (FilterRel) call.rels[i];
+            } else {
+                rowScan = (LcsRowScanRel) call.rels[i];
+            }
+        }
+
+        // only plain scans of the whole table
+        if ((rowScan.getInputs().length > 0)
+            || (rowScan.projectedColumns != null)
+            || (rowScan.residualColumns.length > 0)
+            || aggRel.containsDistinctCall())
+        {
+            return;
+        }
+
+        // views always reflect the latest data, not a label
+        FarragoPreparingStmt stmt = rowScan.lcsTable.getPreparingStmt();
+        if (stmt.getSession().getSessionLabelCreationTimestamp() != null) {
+            return;
+        }
+
+        FarragoRepos repos = stmt.getRepos();
+        List<LcsMaterializedView> views =
+            LcsMaterializedViewRegistry.getViews(
+                repos,
+                Arrays.asList(rowScan.lcsTable.getQualifiedName()));
+        if (views.isEmpty()) {
+            return;
+        }
+
+        // map each input field of the aggregate to a column of the table
+        RelDataTypeField [] scanFields = rowScan.getRowType().getFields();
+        int [] inputMap;
+        if (project == null) {
+            inputMap = new int[scanFields.length];
+            for (int i = 0; i < inputMap.length; i++) {
+                inputMap[i] = i;
+            }
+        } else {
+            RexNode [] exprs = project.getProjectExps();
+            inputMap = new int[exprs.length];
+            for (int i = 0; i < exprs.length; i++) {
+                if (exprs[i] instanceof RexInputRef) {
+                    inputMap[i] = ((RexInputRef) exprs[i]).getIndex();
+                } else {
+                    inputMap[i] = -1;
+                }
+            }
+        }
+
+        int groupCount = aggRel.getGroupCount();
+        String [] groupColumns = new String[groupCount];
+        for (int i = 0; i < groupCount; i++) {
+            if (inputMap[i] < 0) {
+                return;
+            }
+            groupColumns[i] = scanFields[inputMap[i]].getName();
+        }
+        List<AggregateCall> aggCalls = aggRel.getAggCallList();
+        String [] aggColumns = new String[aggCalls.size()];
+        for (int i = 0; i < aggCalls.size(); i++) {
+            AggregateCall aggCall = aggCalls.get(i);
+            String aggName = aggCall.getAggregation().getName();
+            List<Integer> args = aggCall.getArgList();
+            if (args.size() == 0) {
+                if (!aggName.equals("COUNT")) {
+                    return;
+                }
+            } else if ((args.size() == 1) && (inputMap[args.get(0)] >= 0)) {
+                aggColumns[i] = scanFields[inputMap[args.get(0)]].getName();
+            } else {
+                return;
+            }
+        }
+
+        List<RexNode> conjuncts = new ArrayList<RexNode>();
+        if (filter != null) {
+            RelOptUtil.decomposeConjunction(filter.getCondition(), conjuncts);
+        }
+
+        // Pick the smallest fresh view which can answer the query. Whether a
+        // view is fresh changes without the statement being invalidated, so
+        // if any view could be used, the plan must not be cached.
+        LcsMaterializedView bestView = null;
+        FemLocalTable bestTable = null;
+        List<RexNode> bestResidual = null;
+        long bestRowCount = Long.MAX_VALUE;
+        for (LcsMaterializedView view : views) {
+            List<RexNode> residual =
+                matchView(
+                    view,
+                    groupColumns,
+                    aggCalls,
+                    aggColumns,
+                    conjuncts,
+                    scanFields);
+            if (residual == null) {
+                continue;
+            }
+            stmt.disableStatementCaching();
+            FemLocalTable table =
+                LcsMaterializedViewRegistry.getTable(repos, view);
+            if (LcsMaterializedViewRegistry.getState(table)
+                != LcsMaterializedViewRegistry.State.FRESH)
+            {
+                view.addStaleSkip();
+                continue;
+            }
+            Long [] rowCounts = new Long[2];
+            FarragoCatalogUtil.getRowCounts(table, null, rowCounts);
+            if (rowCounts[0] < bestRowCount) {
+                bestView = view;
+                bestTable = table;
+                bestResidual = residual;
+                bestRowCount = rowCounts[0];
+            }
+        }
+        if (bestView == null) {
+            return;
+        }
+
+        RelNode viewRel =
+            createViewRel(
+                aggRel,
+                stmt,
+                rowScan.connection,
+                bestView,
+                bestTable,
+                bestResidual,
+                groupColumns,
+                aggColumns,
+                scanFields);
+        if (viewRel == null) {
+            return;
+        }
+        call.transformTo(viewRel);
+        bestView.addRewrite();
+    }
+
+    /**
+     * Determines whether a view can answer an aggregate query.
+     *
+     * @return the conjuncts of the query which the view's predicates do not
+     * account for, or null if the view cannot answer the query
+     */
+    private List<RexNode> matchView(
+        LcsMaterializedView view,
+        String [] groupColumns,
+        List<AggregateCall> aggCalls,
+        String [] aggColumns,
+        List<RexNode> conjuncts,
+        RelDataTypeField [] scanFields)
+    {
+        // An aggregate without GROUP BY returns a row even over no rows,
+        // whereas aggregating the rows of an empty view returns none.
+        if (groupColumns.length == 0) {
+            return null;
+        }
+        for (String column : groupColumns) {
+            if (view.findGroupColumn(column) < 0) {
+                return null;
+            }
+        }
+        for (int i = 0; i < aggCalls.size(); i++) {
+            String aggName = aggCalls.get(i).getAggregation().getName();
+            if (view.findAggregate(aggName, aggColumns[i]) < 0) {
+                return null;
+            }
+        }
+
+        List<RexNode> residual = new ArrayList<RexNode>(conjuncts);
+        for (LcsMaterializedView.Predicate predicate : view.getPredicates()) {
+            boolean found = false;
+            Iterator<RexNode> iter = residual.iterator();
+            while (iter.hasNext()) {
+                if (predicate.matches(iter.next(), scanFields)) {
+                    iter.remove();
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return null;
+            }
+        }
+
+        // the remaining conjuncts must be evaluable over the view's rows,
+        // and LCS_RID means something else there
+        for (RexNode conjunct : residual) {
+            if (RexUtil.findOperatorCall(
+                    LucidDbOperatorTable.lcsRidFunc,
+                    conjunct) != null)
+            {
+                return null;
+            }
+            BitSet refs = new BitSet();
+            conjunct.accept(new RelOptUtil.InputFinder(refs));
+            for (int i = refs.nextSetBit(0); i >= 0;
+                i = refs.nextSetBit(i + 1))
+            {
+                if (view.findGroupColumn(scanFields[i].getName()) < 0) {
+                    return null;
+                }
+            }
+        }
+        return residual;
+    }
+
+    private RelNode createViewRel(
+        AggregateRel aggRel,
+        FarragoPreparingStmt stmt,
+        RelOptConnection connection,
+        LcsMaterializedView view,
+        FemLocalTable table,
+        List<RexNode> residual,
+        String [] groupColumns,
+        String [] aggColumns,
+        RelDataTypeField [] scanFields)
+    {
+        RelOptCluster cluster = aggRel.getCluster();
+        RexBuilder rexBuilder = cluster.getRexBuilder();
+        RelOptTable viewTable =
+            stmt.loadColumnSet(FarragoCatalogUtil.getQualifiedName(table));
+        if (viewTable == null) {
+            return null;
+        }
+        RelNode rel = viewTable.toRel(cluster, connection);
+        RelDataTypeField [] viewFields = rel.getRowType().getFields();
+        if (viewFields.length != view.getColumnCount()) {
+            return null;
+        }
+
+        if (!residual.isEmpty()) {
+            int [] adjustments = new int[scanFields.length];
+            for (int i = 0; i < scanFields.length; i++) {
+                int iView = view.findGroupColumn(scanFields[i].getName());
+                if (iView >= 0) {
+                    adjustments[i] = iView - i;
+                }
+            }
+            RelOptUtil.RexInputConverter converter =
+                new RelOptUtil.RexInputConverter(
+                    rexBuilder,
+                    scanFields,
+                    viewFields,
+                    adjustments);
+            List<RexNode> conditions = new ArrayList<RexNode>();
+            for (RexNode conjunct : residual) {
+                conditions.add(conjunct.accept(converter));
+            }
+            rel =
+                new FilterRel(
+                    cluster,
+                    rel,
+                    RexUtil.andRexNodeList(rexBuilder, conditions));
+        }
+
+        // project the grouping columns followed by the aggregates
+        List<AggregateCall> aggCalls = aggRel.getAggCallList();
+        List<RexNode> exprs = new ArrayList<RexNode>();
+        List<String> fieldNames = new ArrayList<String>();
+        Set<String> groupColumnSet = new HashSet<String>();
+        for (String column : groupColumns) {
+            int iView = view.findGroupColumn(column);
+            exprs.add(
+                rexBuilder.makeInputRef(viewFields[iView].getType(), iView));
+            fieldNames.add(viewFields[iView].getName());
+            groupColumnSet.add(column);
+        }
+        for (int i = 0; i < aggCalls.size(); i++) {
+            int iView =
+                view.findAggregate(
+                    aggCalls.get(i).getAggregation().getName(),
+                    aggColumns[i]);
+            exprs.add(
+                rexBuilder.makeInputRef(viewFields[iView].getType(), iView));
+            fieldNames.add(viewFields[iView].getName());
+        }
+        rel = CalcRel.createProject(rel, exprs, fieldNames);
+
+        if ((groupColumnSet.size() != groupColumns.length)
+            || !view.isGroupedBy(groupColumnSet))
+        {
+            // the view is finer-grained than the query; roll it up
+            RelDataTypeFactory typeFactory = cluster.getTypeFactory();
+            List<AggregateCall> newCalls = new ArrayList<AggregateCall>();
+            int iInput = groupColumns.length;
+            for (AggregateCall aggCall : aggCalls) {
+                Aggregation aggFun;
+                RelDataType aggType;
+                if (aggCall.getAggregation().getName().equals("COUNT")) {
+                    aggType =
+                        typeFactory.createTypeWithNullability(
+                            aggCall.getType(),
+                            true);
+                    aggFun = new SqlSumAggFunction(aggType);
+                } else {
+                    aggFun = aggCall.getAggregation();
+                    aggType = aggCall.getType();
+                }
+                newCalls.add(
+                    new AggregateCall(
+                        aggFun,
+                        false,
+                        Collections.singletonList(iInput),
+                        aggType,
+                        aggCall.getName()));
+                ++iInput;
+            }
+            rel =
+                new AggregateRel(
+                    cluster,
+                    rel,
+                    groupColumns.length,
+                    newCalls);
+        }
+
+        // COUNTs rolled up by SUM are nullable, and the view's columns may
+        // differ from the query's in nullability; cast back.
+        return RelOptUtil.createCastRel(rel, aggRel.getRowType(), true);
+    }
+}
+
+// End LcsMaterializedViewRule.java
@@ -0,0 +1,434 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package org.luciddb.lcs;
+
+import java.sql.*;
+
+import java.util.*;
+import java.util.logging.*;
+
+import net.sf.farrago.catalog.*;
+import net.sf.farrago.fem.med.*;
+import net.sf.farrago.resource.*;
+import net.sf.farrago.runtime.*;
+import net.sf.farrago.session.*;
+import net.sf.farrago.trace.*;
+
+import org.eigenbase.sql.*;
+import org.eigenbase.sql.parser.*;
+
+
+/**
+ * LcsMaterializedViewUDR implements the system procedures which create and
+ * refresh materialized aggregate views (see {@link LcsMaterializedView}), and
+ * the system function which reports on them.
+ *
+ * <p>A refresh of a view whose base table has only had rows appended to it
+ * aggregates just the appended rows, identified by their LCS row ids, and
+ * merges the result into the view. Any other modification of the base table
+ * forces the view to be recomputed from scratch.
+ *
+ * @version $Id$
+ */
+public abstract class LcsMaterializedViewUDR
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final Logger tracer =
+        FarragoTrace.getClassTracer(LcsMaterializedViewUDR.class);
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Creates a materialized view and populates it.
+     *
+     * @param schemaName schema in which to create the view's table, or null
+     * for the session's default schema
+     * @param viewName name of the view's table
+     * @param query defining query; see {@link LcsMaterializedView} for the
+     * forms allowed
+     */
+    public static void createMaterializedView(
+        String schemaName,
+        String viewName,
+        String query)
+        throws SQLException
+    {
+        FarragoSession session = FarragoUdrRuntime.getSession();
+        FarragoSessionVariables vars = session.getSessionVariables();
+        if (schemaName == null) {
+            schemaName = vars.schemaName;
+        }
+        LcsMaterializedView view =
+            new LcsMaterializedView(
+                null,
+                Arrays.asList(vars.catalogName, schemaName, viewName),
+                query,
+                vars.catalogName,
+                vars.schemaName);
+
+        Connection conn =
+            DriverManager.getConnection("jdbc:default:connection");
+        try {
+            // create the table from the shape of the query's result
+            SqlDialect dialect = SqlDialect.EIGENBASE;
+            StringBuilder ddl = new StringBuilder();
+            ddl.append("create table ");
+            ddl.append(quoteName(view.getTableName())).append(" (");
+            PreparedStatement ps = conn.prepareStatement(view.getQuery());
+            try {
+                ResultSetMetaData rsmd = ps.getMetaData();
+                for (int i = 1; i <= rsmd.getColumnCount(); i++) {
+                    if (i > 1) {
+                        ddl.append(", ");
+                    }
+                    ddl.append(dialect.quoteIdentifier(rsmd.getColumnName(i)));
+                    ddl.append(' ').append(rsmd.getColumnTypeName(i));
+                    int type = rsmd.getColumnType(i);
+                    if ((type == Types.VARBINARY)
+                        || (type == Types.BINARY)
+                        || (type == Types.CHAR)
+                        || (type == Types.VARCHAR))
+                    {
+                        ddl.append('(').append(rsmd.getPrecision(i));
+                        ddl.append(')');
+                    } else if (type == Types.DECIMAL) {
+                        ddl.append('(').append(rsmd.getPrecision(i));
+                        ddl.append(',').append(rsmd.getScale(i)).append(')');
+                    }
+                    if (rsmd.isNullable(i) == ResultSetMetaData.columnNoNulls) {
+                        ddl.append(" not null");
+                    }
+                }
+            } finally {
+                ps.close();
+            }
+            ddl.append(") options (");
+            ddl.append(LcsMaterializedViewRegistry.QUERY_OPTION).append(' ');
+            ddl.append(dialect.quoteStringLiteral(view.getQuery()));
+            ddl.append(", ");
+            ddl.append(LcsMaterializedViewRegistry.STATE_OPTION).append(' ');
+            ddl.append(
+                dialect.quoteStringLiteral(
+                    LcsMaterializedViewRegistry.State.STALE.name()));
+            ddl.append(")");
+            tracer.fine(ddl.toString());
+            execute(conn, ddl.toString());
+
+            FarragoRepos repos = session.getRepos();
+            FarragoReposTxnContext txn = repos.newTxnContext(true);
+            try {
+                txn.beginReadTxn();
+                FemLocalTable table = findTable(session, view.getTableName());
+                view =
+                    new LcsMaterializedView(
+                        table.refMofId(),
+                        view.getTableName(),
+                        view.getQuery(),
+                        null,
+                        null);
+                txn.commit();
+            } finally {
+                txn.rollback();
+            }
+            LcsMaterializedViewRegistry.register(repos, view);
+
+            refresh(conn, view, false);
+        } finally {
+            conn.close();
+        }
+    }
+
+    /**
+     * Brings a materialized view up to date with its base table.
+     *
+     * @param schemaName schema containing the view's table, or null for the
+     * session's default schema
+     * @param viewName name of the view's table
+     */
+    public static void refreshMaterializedView(
+        String schemaName,
+        String viewName)
+        throws SQLException
+    {
+        FarragoSession session = FarragoUdrRuntime.getSession();
+        FarragoSessionVariables vars = session.getSessionVariables();
+        if (schemaName == null) {
+            schemaName = vars.schemaName;
+        }
+        List<String> tableName =
+            Arrays.asList(vars.catalogName, schemaName, viewName);
+
+        FarragoRepos repos = session.getRepos();
+        LcsMaterializedView view;
+        LcsMaterializedViewRegistry.State state;
+        FarragoReposTxnContext txn = repos.newTxnContext(true);
+        try {
+            txn.beginReadTxn();
+            FemLocalTable table = findTable(session, tableName);
+            view = LcsMaterializedViewRegistry.getView(repos, table);
+            if (view == null) {
+                throw FarragoResource.instance().MaterializedViewUnknown.ex(
+                    repos.getLocalizedObjectName(table));
+            }
+            state = LcsMaterializedViewRegistry.getState(table);
+            txn.commit();
+        } finally {
+            txn.rollback();
+        }
+
+        if (state == LcsMaterializedViewRegistry.State.FRESH) {
+            return;
+        }
+        Connection conn =
+            DriverManager.getConnection("jdbc:default:connection");
+        try {
+            refresh(
+                conn,
+                view,
+                state == LcsMaterializedViewRegistry.State.APPENDED);
+        } finally {
+            conn.close();
+        }
+    }
+
+    /**
+     * Lists materialized views, with their state and usage counters.
+     *
+     * @param resultInserter inserts result rows
+     */
+    public static void materializedViews(PreparedStatement resultInserter)
+        throws SQLException
+    {
+        FarragoRepos repos = FarragoUdrRuntime.getRepos();
+        FarragoReposTxnContext txn = repos.newTxnContext(true);
+        try {
+            txn.beginReadTxn();
+            for (LcsMaterializedView view
+                : LcsMaterializedViewRegistry.getAllViews(repos))
+            {
+                FemLocalTable table =
+                    LcsMaterializedViewRegistry.getTable(repos, view);
+                if (table == null) {
+                    continue;
+                }
+                Long [] rowCounts = new Long[2];
+                FarragoCatalogUtil.getRowCounts(table, null, rowCounts);
+                int i = 0;
+                for (String name : view.getTableName()) {
+                    resultInserter.setString(++i, name);
+                }
+                resultInserter.setString(
+                    ++i,
+                    quoteName(view.getBaseTableName()));
+                resultInserter.setString(
+                    ++i,
+                    LcsMaterializedViewRegistry.getState(table).name());
+                resultInserter.setLong(++i, rowCounts[0]);
+                resultInserter.setLong(++i, view.getRewriteCount());
+                resultInserter.setLong(++i, view.getStaleSkipCount());
+                resultInserter.setLong(++i, view.getStaleCount());
+                resultInserter.setLong(
+                    ++i,
+                    view.getIncrementalRefreshCount());
+                resultInserter.setLong(++i, view.getFullRefreshCount());
+                resultInserter.executeUpdate();
+            }
+            txn.commit();
+        } finally {
+            txn.rollback();
+        }
+    }
+
+    /**
+     * Reflects the base table rows which a view does not yet reflect, or all
+     * of them, and marks the view fresh if the base table did not change
+     * meanwhile.
+     *
+     * @param conn connection
+     * @param view view
+     * @param incremental if true, merge the result of the defining query over
+     * newly appended rows into the view; if false, recompute the view
+     */
+    private static void refresh(
+        Connection conn,
+        LcsMaterializedView view,
+        boolean incremental)
+        throws SQLException
+    {
+        FarragoSession session = FarragoUdrRuntime.getSession();
+        FarragoRepos repos = session.getRepos();
+        String baseTableName = quoteName(view.getBaseTableName());
+
+        // LCS_RID needs a column of the base table to apply to; any will do
+        String ridColumn;
+        PreparedStatement ps =
+            conn.prepareStatement("select * from " + baseTableName);
+        try {
+            ridColumn = ps.getMetaData().getColumnName(1);
+        } finally {
+            ps.close();
+        }
+
+        long fromRid;
+        Long [] oldRowCounts = new Long[2];
+        FarragoReposTxnContext txn = repos.newTxnContext(true);
+        try {
+            txn.beginReadTxn();
+            FemLocalTable table =
+                LcsMaterializedViewRegistry.getTable(repos, view);
+            fromRid = incremental ? LcsMaterializedViewRegistry.getRid(table)
+                : 0;
+            FarragoCatalogUtil.getRowCounts(
+                findBaseTable(session, view),
+                null,
+                oldRowCounts);
+            txn.commit();
+        } finally {
+            txn.rollback();
+        }
+
+        // rows appended from now on are left for the next refresh
+        long toRid = 0;
+        Statement stmt = conn.createStatement();
+        try {
+            ResultSet rs =
+                stmt.executeQuery(
+                    "select max(lcs_rid("
+                    + SqlDialect.EIGENBASE.quoteIdentifier(ridColumn)
+                    + ")) from " + baseTableName);
+            if (rs.next()) {
+                long maxRid = rs.getLong(1);
+                if (!rs.wasNull()) {
+                    toRid = maxRid + 1;
+                }
+            }
+            rs.close();
+        } finally {
+            stmt.close();
+        }
+
+        String loadQuery = view.getLoadQuery(ridColumn, fromRid, toRid);
+        String dml;
+        if (incremental) {
+            List<String> columnNames = new ArrayList<String>();
+            ps = conn.prepareStatement(
+                "select * from " + quoteName(view.getTableName()));
+            boolean [] nullable;
+            try {
+                ResultSetMetaData rsmd = ps.getMetaData();
+                nullable = new boolean[rsmd.getColumnCount()];
+                for (int i = 1; i <= rsmd.getColumnCount(); i++) {
+                    columnNames.add(rsmd.getColumnName(i));
+                    nullable[i - 1] =
+                        rsmd.isNullable(i) != ResultSetMetaData.columnNoNulls;
+                }
+            } finally {
+                ps.close();
+            }
+            dml = view.getMergeStatement(columnNames, nullable, loadQuery);
+        } else {
+            execute(
+                conn,
+                "truncate table " + quoteName(view.getTableName()));
+            dml =
+                "insert into " + quoteName(view.getTableName()) + " "
+                + loadQuery;
+        }
+        tracer.fine(dml);
+        execute(conn, dml);
+        view.addRefresh(incremental);
+
+        txn = repos.newTxnContext(true);
+        try {
+            txn.beginWriteTxn();
+            FemLocalTable table =
+                LcsMaterializedViewRegistry.getTable(repos, view);
+            Long [] newRowCounts = new Long[2];
+            FarragoCatalogUtil.getRowCounts(
+                findBaseTable(session, view),
+                null,
+                newRowCounts);
+
+            // If the base table was modified while the view was being
+            // loaded, we can't tell which of its rows the view reflects.
+            LcsMaterializedViewRegistry.setState(
+                repos,
+                table,
+                Arrays.equals(oldRowCounts, newRowCounts)
+                ? LcsMaterializedViewRegistry.State.FRESH
+                : LcsMaterializedViewRegistry.State.STALE);
+            LcsMaterializedViewRegistry.setRid(repos, table, toRid);
+            txn.commit();
+        } finally {
+            txn.rollback();
+        }
+    }
+
+    private static FemLocalTable findTable(
+        FarragoSession session,
+        List<String> tableName)
+    {
+        FarragoSessionStmtValidator stmtValidator = session.newStmtValidator();
+        try {
+            return stmtValidator.findSchemaObject(
+                new SqlIdentifier(
+                    tableName.toArray(new String[tableName.size()]),
+                    SqlParserPos.ZERO),
+                FemLocalTable.class);
+        } finally {
+            stmtValidator.closeAllocation();
+        }
+    }
+
+    private static FemLocalTable findBaseTable(
+        FarragoSession session,
+        LcsMaterializedView view)
+    {
+        return findTable(session, view.getBaseTableName());
+    }
+
+    private static String quoteName(List<String> names)
+    {
+        StringBuilder buf = new StringBuilder();
+        for (String name : names) {
+            if (buf.length() > 0) {
+                buf.append('.');
+            }
+            buf.append(SqlDialect.EIGENBASE.quoteIdentifier(name));
+        }
+        return buf.toString();
+    }
+
+    private static void execute(Connection conn, String sql)
+        throws SQLException
+    {
+        Statement stmt = conn.createStatement();
+        try {
+            stmt.execute(sql);
+        } finally {
+            stmt.close();
+        }
+    }
+}
+
+// End LcsMaterializedViewUDR.java
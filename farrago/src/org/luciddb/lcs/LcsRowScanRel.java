@@ -24,6 +24,7 @@ package org.luciddb.lcs;
 import java.util.*;
 
 import net.sf.farrago.fem.med.*;
+import net.sf.farrago.query.*;
 
 import org.eigenbase.rel.*;
 import org.eigenbase.relopt.*;
@@ -78,6 +79,102 @@ public class LcsRowScanRel
             inputSelectivity);
     }
 
+    /**
+     * Creates a new LcsRowScanRel object which skips rows failing a runtime
+     * filter published by a hash join.
+     *
+     * @param cluster RelOptCluster for this rel
+     * @param children children inputs into the row scan
+     * @param lcsTable table being scanned
+     * @param clusteredIndexes clusters to use for table access
+     * @param connection connection
+     * @param projectedColumns array of 0-based table-relative column ordinals,
+     * or null to project all columns
+     * @param isFullScan true if doing a full scan of the table
+     * @param resCols residual filter columns
+     * @param inputSelectivity estimate of input selectivity
+     * @param runtimeFilterParamId parameter the runtime filter is read from,
+     * or null for none
+     * @param runtimeFilterKeys output ordinals of the columns the runtime
+     * filter tests, or null for none
+     */
+    public LcsRowScanRel(
+        RelOptCluster cluster,
+        RelNode [] children,
+        LcsTable lcsTable,
+        List<FemLocalIndex> clusteredIndexes,
+        RelOptConnection connection,
+        Integer [] projectedColumns,
+        boolean isFullScan,
+        Integer [] resCols,
+        double inputSelectivity,
+        FennelRelParamId runtimeFilterParamId,
+        Integer [] runtimeFilterKeys)
+    {
+        super(
+            cluster,
+            children,
+            lcsTable,
+            clusteredIndexes,
+            connection,
+            projectedColumns,
+            isFullScan,
+            resCols,
+            inputSelectivity,
+            runtimeFilterParamId,
+            runtimeFilterKeys);
+    }
+
+    /**
+     * Creates a new LcsRowScanRel object which skips rows failing a runtime
+     * filter, and which, if it is a full scan, starts at a given LCS_RID.
+     *
+     * @param cluster RelOptCluster for this rel
+     * @param children children inputs into the row scan
+     * @param lcsTable table being scanned
+     * @param clusteredIndexes clusters to use for table access
+     * @param connection connection
+     * @param projectedColumns array of 0-based table-relative column ordinals,
+     * or null to project all columns
+     * @param isFullScan true if doing a full scan of the table
+     * @param resCols residual filter columns
+     * @param inputSelectivity estimate of input selectivity
+     * @param runtimeFilterParamId parameter the runtime filter is read from,
+     * or null for none
+     * @param runtimeFilterKeys output ordinals of the columns the runtime
+     * filter tests, or null for none
+     * @param startRid least LCS_RID to read, or 0 to read from the start of
+     * the table
+     */
+    public LcsRowScanRel(
+        RelOptCluster cluster,
+        RelNode [] children,
+        LcsTable lcsTable,
+        List<FemLocalIndex> clusteredIndexes,
+        RelOptConnection connection,
+        Integer [] projectedColumns,
+        boolean isFullScan,
+        Integer [] resCols,
+        double inputSelectivity,
+        FennelRelParamId runtimeFilterParamId,
+        Integer [] runtimeFilterKeys,
+        long startRid)
+    {
+        super(
+            cluster,
+            children,
+            lcsTable,
+            clusteredIndexes,
+            connection,
+            projectedColumns,
+            isFullScan,
+            resCols,
+            inputSelectivity,
+            runtimeFilterParamId,
+            runtimeFilterKeys,
+            startRid);
+    }
+
     //~ Methods ----------------------------------------------------------------
 
     // implement RelNode
@@ -93,7 +190,10 @@ public class LcsRowScanRel
                 projectedColumns,
                 isFullScan,
                 residualColumns,
-                inputSelectivity);
+                inputSelectivity,
+                runtimeFilterParamId,
+                runtimeFilterKeys,
+                startRid);
         clone.inheritTraitsFrom(this);
         return clone;
     }
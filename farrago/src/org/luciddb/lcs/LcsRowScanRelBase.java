@@ -28,6 +28,7 @@ import java.util.*;
 import net.sf.farrago.fem.fennel.*;
 import net.sf.farrago.fem.med.*;
 import net.sf.farrago.fem.sql2003.*;
+import net.sf.farrago.fennel.*;
 import net.sf.farrago.fennel.rel.*;
 import net.sf.farrago.query.*;
 
@@ -88,6 +89,26 @@ public abstract class LcsRowScanRelBase
      */
     double inputSelectivity;
 
+    /**
+     * Dynamic parameter through which a hash join consuming this scan as its
+     * probe input publishes a bloom filter over its build keys, or null if
+     * there is none.
+     */
+    final FennelRelParamId runtimeFilterParamId;
+
+    /**
+     * 0-based output ordinals of the columns tested against the runtime
+     * filter, in the order of the join's build keys; null if there is no
+     * runtime filter.
+     */
+    final Integer [] runtimeFilterKeys;
+
+    /**
+     * For a full scan, the least LCS_RID of the rows to read; rows with
+     * lesser LCS_RIDs are skipped without being read. 0 to read all rows.
+     */
+    final long startRid;
+
     //~ Constructors -----------------------------------------------------------
 
     /**
@@ -115,6 +136,105 @@ public abstract class LcsRowScanRelBase
         boolean isFullScan,
         Integer [] resCols,
         double inputSelectivity)
+    {
+        this(
+            cluster,
+            children,
+            lcsTable,
+            clusteredIndexes,
+            connection,
+            projectedColumns,
+            isFullScan,
+            resCols,
+            inputSelectivity,
+            null,
+            null,
+            0);
+    }
+
+    /**
+     * Creates a new LcsRowScanRel object which skips rows failing a runtime
+     * filter published by a hash join.
+     *
+     * @param cluster RelOptCluster for this rel
+     * @param children children inputs into the row scan
+     * @param lcsTable table being scanned
+     * @param clusteredIndexes list of clusters to use for table access, in
+     * the order in which the clusters are to be scanned
+     * @param connection connection
+     * @param projectedColumns array of 0-based table-relative column ordinals,
+     * or null to project all columns
+     * @param isFullScan true if doing a full scan of the table
+     * @param resCols residual filter columns (0-length array if none)
+     * @param inputSelectivity estimate of input selectivity
+     * @param runtimeFilterParamId parameter the runtime filter is read from,
+     * or null for none
+     * @param runtimeFilterKeys output ordinals of the columns the runtime
+     * filter tests, or null for none
+     */
+    public LcsRowScanRelBase(
+        RelOptCluster cluster,
+        RelNode [] children,
+        LcsTable lcsTable,
+        List<FemLocalIndex> clusteredIndexes,
+        RelOptConnection connection,
+        Integer [] projectedColumns,
+        boolean isFullScan,
+        Integer [] resCols,
+        double inputSelectivity,
+        FennelRelParamId runtimeFilterParamId,
+        Integer [] runtimeFilterKeys)
+    {
+        this(
+            cluster,
+            children,
+            lcsTable,
+            clusteredIndexes,
+            connection,
+            projectedColumns,
+            isFullScan,
+            resCols,
+            inputSelectivity,
+            runtimeFilterParamId,
+            runtimeFilterKeys,
+            0);
+    }
+
+    /**
+     * Creates a new LcsRowScanRel object which skips rows failing a runtime
+     * filter, and which, if it is a full scan, starts at a given LCS_RID.
+     *
+     * @param cluster RelOptCluster for this rel
+     * @param children children inputs into the row scan
+     * @param lcsTable table being scanned
+     * @param clusteredIndexes list of clusters to use for table access, in
+     * the order in which the clusters are to be scanned
+     * @param connection connection
+     * @param projectedColumns array of 0-based table-relative column ordinals,
+     * or null to project all columns
+     * @param isFullScan true if doing a full scan of the table
+     * @param resCols residual filter columns (0-length array if none)
+     * @param inputSelectivity estimate of input selectivity
+     * @param runtimeFilterParamId parameter the runtime filter is read from,
+     * or null for none
+     * @param runtimeFilterKeys output ordinals of the columns the runtime
+     * filter tests, or null for none
+     * @param startRid least LCS_RID to read, or 0 to read from the start of
+     * the table; must be 0 unless isFullScan
+     */
+    public LcsRowScanRelBase(
+        RelOptCluster cluster,
+        RelNode [] children,
+        LcsTable lcsTable,
+        List<FemLocalIndex> clusteredIndexes,
+        RelOptConnection connection,
+        Integer [] projectedColumns,
+        boolean isFullScan,
+        Integer [] resCols,
+        double inputSelectivity,
+        FennelRelParamId runtimeFilterParamId,
+        Integer [] runtimeFilterKeys,
+        long startRid)
     {
         super(cluster, children);
         this.lcsTable = lcsTable;
@@ -128,6 +248,13 @@ public abstract class LcsRowScanRelBase
             == FennelRelUtil.getPreparingStmt(this));
 
         this.inputSelectivity = inputSelectivity;
+
+        assert ((runtimeFilterParamId == null) == (runtimeFilterKeys == null));
+        this.runtimeFilterParamId = runtimeFilterParamId;
+        this.runtimeFilterKeys = runtimeFilterKeys;
+
+        assert ((startRid == 0) || isFullScan);
+        this.startRid = startRid;
     }
 
     //~ Methods ----------------------------------------------------------------
@@ -261,8 +388,14 @@ public abstract class LcsRowScanRelBase
         // mode. Can't resolve this comment until FRG-8 is completed.
 
         int nExtraTerms = hasResidualFilters() ? 1 : 0;
+        if (startRid > 0) {
+            ++nExtraTerms;
+        }
         if (pw.getDetailLevel() == SqlExplainLevel.DIGEST_ATTRIBUTES) {
             ++nExtraTerms;
+            if (hasRuntimeFilter()) {
+                ++nExtraTerms;
+            }
         }
         int nSubclassTerms = (subclassTerms != null) ? subclassTerms.length : 0;
         Object [] objects = new Object[3 + nExtraTerms + nSubclassTerms];
@@ -283,10 +416,23 @@ public abstract class LcsRowScanRelBase
             objects[iExtraTerm] = Arrays.asList(residualColumns);
             ++iExtraTerm;
         }
+        if (startRid > 0) {
+            nameList[inputs.length + iExtraTerm] = "start rid";
+            objects[iExtraTerm] = startRid;
+            ++iExtraTerm;
+        }
         if (pw.getDetailLevel() == SqlExplainLevel.DIGEST_ATTRIBUTES) {
             nameList[inputs.length + iExtraTerm] = "isFullScan";
             objects[iExtraTerm] = isFullScan;
             ++iExtraTerm;
+            if (hasRuntimeFilter()) {
+                nameList[inputs.length + iExtraTerm] = "runtimeFilter";
+                objects[iExtraTerm] =
+                    Arrays.asList(
+                        runtimeFilterParamId,
+                        Arrays.asList(runtimeFilterKeys));
+                ++iExtraTerm;
+            }
         }
         if (subclassTerms != null) {
             for (int i = 0; i < subclassTerms.length; i++) {
@@ -344,6 +490,20 @@ public abstract class LcsRowScanRelBase
         // Sampling is disabled by default.
         scanStream.setSamplingMode(TableSamplingModeEnum.SAMPLING_OFF);
 
+        scanStream.setStartRid(startRid);
+
+        if (hasRuntimeFilter()) {
+            scanStream.setRuntimeFilterParamId(
+                implementor.translateParamId(
+                    runtimeFilterParamId,
+                    scanStream,
+                    FennelDynamicParamId.StreamType.CONSUMER).intValue());
+            scanStream.setRuntimeFilterKeyProj(
+                FennelRelUtil.createTupleProjection(
+                    FennelRelUtil.getRepos(this),
+                    runtimeFilterKeys));
+        }
+
         for (int i = 0; i < inputs.length; i++) {
             FemExecutionStreamDef inputStream =
                 implementor.visitFennelChild((FennelRel) inputs[i], i);
@@ -525,6 +685,26 @@ public abstract class LcsRowScanRelBase
     {
         return isFullScan;
     }
+
+    public boolean hasRuntimeFilter()
+    {
+        return (runtimeFilterParamId != null);
+    }
+
+    public FennelRelParamId getRuntimeFilterParamId()
+    {
+        return runtimeFilterParamId;
+    }
+
+    public Integer [] getRuntimeFilterKeys()
+    {
+        return runtimeFilterKeys;
+    }
+
+    public long getStartRid()
+    {
+        return startRid;
+    }
 }
 
 // End LcsRowScanRelBase.java
@@ -0,0 +1,252 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2010 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package org.luciddb.lcs;
+
+import java.util.*;
+
+import net.sf.farrago.fennel.rel.*;
+import net.sf.farrago.query.*;
+
+import org.eigenbase.rel.*;
+import org.eigenbase.relopt.*;
+import org.eigenbase.reltype.*;
+import org.eigenbase.rex.*;
+import org.eigenbase.sql.type.*;
+
+
+/**
+ * LcsRuntimeFilterRule pushes a runtime filter from a hash join into the row
+ * scan that produces the join's probe (left) input.
+ *
+ * <p>{@link org.luciddb.optimizer.LoptSemiJoinOptimizer} decides at plan
+ * time, from estimated selectivities, whether a bitmap semijoin is
+ * worthwhile. This rule covers the joins it leaves alone, or misjudges
+ * because of stale statistics: once
+ * the join has read its build input into memory, it publishes a bloom filter
+ * over the build keys, and the scan drops rows that cannot match before
+ * reading their remaining clusters. The scan stops applying the filter if
+ * it eliminates too few of the rows it tests, and the filter is never
+ * published if the build input has to be partitioned, so a bad choice here
+ * costs little. Since the filter only drops rows that cannot join, the plan
+ * returns the same rows whether or not the filter is ever applied.
+ *
+ * <p>The rule only applies when none of the probe rows which fail to match
+ * are returned, when null keys do not match, and when each probe key is a
+ * column of the scan (possibly through a projection) with the same type as
+ * the corresponding build key, so that both sides hash identical values.
+ *
+ * @version $Id$
+ */
+public class LcsRuntimeFilterRule
+    extends RelOptRule
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    public final static LcsRuntimeFilterRule instanceRowScan =
+        new LcsRuntimeFilterRule(
+            new RelOptRuleOperand(
+                LhxJoinRel.class,
+                new RelOptRuleOperand(LcsRowScanRel.class, ANY),
+                new RelOptRuleOperand(RelNode.class, ANY)),
+            "row scan");
+
+    public final static LcsRuntimeFilterRule instanceProject =
+        new LcsRuntimeFilterRule(
+            new RelOptRuleOperand(
+                LhxJoinRel.class,
+                new RelOptRuleOperand(
+                    ProjectRel.class,
+                    new RelOptRuleOperand(LcsRowScanRel.class, ANY)),
+                new RelOptRuleOperand(RelNode.class, ANY)),
+            "project");
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates an LcsRuntimeFilterRule.
+     *
+     * @param operand Root operand, must not be null
+     *
+     * @param id Description of rule
+     */
+    public LcsRuntimeFilterRule(
+        RelOptRuleOperand operand,
+        String id)
+    {
+        super(operand, "LcsRuntimeFilterRule: " + id);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement RelOptRule
+    public CallingConvention getOutConvention()
+    {
+        return FennelRel.FENNEL_EXEC_CONVENTION;
+    }
+
+    // implement RelOptRule
+    public void onMatch(RelOptRuleCall call)
+    {
+        LhxJoinRel joinRel = (LhxJoinRel) call.rels[0];
+        ProjectRel projRel = null;
+        LcsRowScanRel rowScan;
+        if (call.rels[1] instanceof ProjectRel) {
+            projRel = (ProjectRel) call.rels[1];
+            rowScan = (LcsRowScanRel) call.rels[2];
+        } else {
+            rowScan = (LcsRowScanRel) call.rels[1];
+        }
+
+        if ((joinRel.getRuntimeFilterParamId() != null)
+            || rowScan.hasRuntimeFilter()
+            || !isFilterableJoin(joinRel))
+        {
+            return;
+        }
+
+        Integer [] runtimeFilterKeys =
+            getRuntimeFilterKeys(joinRel, projRel, rowScan);
+        if (runtimeFilterKeys == null) {
+            return;
+        }
+
+        FennelRelParamId runtimeFilterParamId =
+            FennelRelUtil.getRelImplementor(joinRel).allocateRelParamId();
+
+        RelNode newLeft =
+            new LcsRowScanRel(
+                rowScan.getCluster(),
+                rowScan.getInputs(),
+                rowScan.lcsTable,
+                rowScan.clusteredIndexes,
+                rowScan.getConnection(),
+                rowScan.projectedColumns,
+                rowScan.isFullScan,
+                rowScan.residualColumns,
+                rowScan.inputSelectivity,
+                runtimeFilterParamId,
+                runtimeFilterKeys,
+                rowScan.startRid);
+        if (projRel != null) {
+            newLeft =
+                CalcRel.createProject(
+                    newLeft,
+                    projRel.getProjectExps(),
+                    RelOptUtil.getFieldNames(projRel.getRowType()));
+        }
+
+        LhxJoinRel newJoinRel =
+            new LhxJoinRel(
+                joinRel.getCluster(),
+                newLeft,
+                joinRel.getRight(),
+                joinRel.getJoinType(),
+                joinRel.isSetop(),
+                joinRel.getLeftKeys(),
+                joinRel.getRightKeys(),
+                joinRel.getFilterNulls(),
+                RelOptUtil.getFieldNameList(joinRel.getRowType()),
+                joinRel.getNumBuildRows(),
+                joinRel.getCndBuildKey(),
+                runtimeFilterParamId);
+
+        call.transformTo(newJoinRel);
+    }
+
+    /**
+     * Determines whether a hash join can drop probe rows whose keys are
+     * missing from its build input.
+     *
+     * @param joinRel the hash join
+     *
+     * @return true if no probe row failing to match is returned and null keys
+     * never match
+     */
+    private boolean isFilterableJoin(LhxJoinRel joinRel)
+    {
+        LhxJoinRelType joinType = joinRel.getJoinType();
+        if ((joinType == LhxJoinRelType.LEFT)
+            || (joinType == LhxJoinRelType.FULL))
+        {
+            return false;
+        }
+        return !joinRel.isSetop()
+            && (joinRel.getFilterNulls().size()
+                == joinRel.getLeftKeys().size());
+    }
+
+    /**
+     * Maps the left keys of a hash join to the columns of the row scan that
+     * produces them.
+     *
+     * @param joinRel the hash join
+     * @param projRel projection between the row scan and the join, or null
+     * @param rowScan the row scan
+     *
+     * @return output ordinals of the row scan corresponding to the left keys,
+     * or null if some key is not a real column of the scan or does not have
+     * the same type as its build key
+     */
+    private Integer [] getRuntimeFilterKeys(
+        LhxJoinRel joinRel,
+        ProjectRel projRel,
+        LcsRowScanRel rowScan)
+    {
+        List<Integer> leftKeys = joinRel.getLeftKeys();
+        List<Integer> rightKeys = joinRel.getRightKeys();
+        RelDataTypeField [] leftFields =
+            joinRel.getLeft().getRowType().getFields();
+        RelDataTypeField [] rightFields =
+            joinRel.getRight().getRowType().getFields();
+        RelDataTypeFactory typeFactory = joinRel.getCluster().getTypeFactory();
+
+        Integer [] runtimeFilterKeys = new Integer[leftKeys.size()];
+        for (int i = 0; i < leftKeys.size(); i++) {
+            int leftKey = leftKeys.get(i);
+            if (!SqlTypeUtil.equalSansNullability(
+                    typeFactory,
+                    leftFields[leftKey].getType(),
+                    rightFields[rightKeys.get(i)].getType()))
+            {
+                return null;
+            }
+
+            int scanKey = leftKey;
+            if (projRel != null) {
+                RexNode expr = projRel.getProjectExps()[leftKey];
+                if (!(expr instanceof RexInputRef)) {
+                    return null;
+                }
+                scanKey = ((RexInputRef) expr).getIndex();
+            }
+
+            // the rid column is not read from a cluster
+            if (rowScan.getColumnForFieldAccess(scanKey) == null) {
+                return null;
+            }
+            runtimeFilterKeys[i] = scanKey;
+        }
+        return runtimeFilterKeys;
+    }
+}
+
+// End LcsRuntimeFilterRule.java
@@ -0,0 +1,198 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2010 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package org.luciddb.lcs;
+
+import java.math.*;
+
+import java.util.*;
+
+import org.luciddb.session.*;
+
+import org.eigenbase.rel.*;
+import org.eigenbase.relopt.*;
+import org.eigenbase.rex.*;
+
+
+/**
+ * LcsStartRidRule starts a full row scan at the least LCS_RID which a filter
+ * above it accepts, so that a query restricted to rows appended after a given
+ * point, such as an incremental refresh of a materialized view or an
+ * incremental ANALYZE, reads only those rows rather than the whole table.
+ *
+ * <p>The rule recognizes conjuncts of the form <code>$k &gt;= literal</code>
+ * or <code>$k &gt; literal</code> (or the same with the operands swapped),
+ * where <code>$k</code> is the LCS_RID column projected by the scan. The
+ * filter is left in place, so the rule changes only how many rows are read,
+ * not which rows are returned.
+ *
+ * @version $Id$
+ */
+public class LcsStartRidRule
+    extends RelOptRule
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    public static final LcsStartRidRule instance = new LcsStartRidRule();
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a LcsStartRidRule.
+     */
+    private LcsStartRidRule()
+    {
+        super(
+            new RelOptRuleOperand(
+                FilterRel.class,
+                new RelOptRuleOperand(LcsRowScanRel.class, ANY)));
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement RelOptRule
+    public void onMatch(RelOptRuleCall call)
+    {
+        FilterRel filterRel = (FilterRel) call.rels[0];
+        LcsRowScanRel rowScan = (LcsRowScanRel) call.rels[1];
+
+        // once a start rid has been set, the rule has already fired
+        if (!rowScan.isFullScan || (rowScan.getStartRid() > 0)) {
+            return;
+        }
+
+        Integer [] proj = rowScan.projectedColumns;
+        if (proj == null) {
+            return;
+        }
+        int ridOrdinal = -1;
+        for (int i = 0; i < proj.length; i++) {
+            if (LucidDbSpecialOperators.isLcsRidColumnId(proj[i])) {
+                ridOrdinal = i;
+                break;
+            }
+        }
+        if (ridOrdinal < 0) {
+            return;
+        }
+
+        List<RexNode> conjuncts = new ArrayList<RexNode>();
+        RelOptUtil.decomposeConjunction(filterRel.getCondition(), conjuncts);
+        long startRid = 0;
+        for (RexNode conjunct : conjuncts) {
+            startRid = Math.max(startRid, getStartRid(conjunct, ridOrdinal));
+        }
+        if (startRid == 0) {
+            return;
+        }
+
+        LcsRowScanRel newRowScan =
+            new LcsRowScanRel(
+                rowScan.getCluster(),
+                rowScan.getInputs(),
+                rowScan.lcsTable,
+                rowScan.clusteredIndexes,
+                rowScan.getConnection(),
+                proj,
+                true,
+                rowScan.residualColumns,
+                rowScan.inputSelectivity,
+                rowScan.runtimeFilterParamId,
+                rowScan.runtimeFilterKeys,
+                startRid);
+        call.transformTo(
+            new FilterRel(
+                filterRel.getCluster(),
+                newRowScan,
+                filterRel.getCondition()));
+    }
+
+    /**
+     * Returns the least LCS_RID which a conjunct accepts.
+     *
+     * @param conjunct conjunct of the filter condition
+     * @param ridOrdinal ordinal of the LCS_RID column in the scan's output
+     *
+     * @return least LCS_RID accepted, or 0 if the conjunct does not bound
+     * LCS_RID from below
+     */
+    private static long getStartRid(RexNode conjunct, int ridOrdinal)
+    {
+        if (!(conjunct instanceof RexCall)) {
+            return 0;
+        }
+        RexCall call = (RexCall) conjunct;
+        RexNode [] operands = call.getOperands();
+        if (operands.length != 2) {
+            return 0;
+        }
+        RexNode bound;
+        boolean inclusive;
+        if (isRidRef(operands[0], ridOrdinal)) {
+            bound = operands[1];
+            if (call.isA(RexKind.GreaterThanOrEqual)) {
+                inclusive = true;
+            } else if (call.isA(RexKind.GreaterThan)) {
+                inclusive = false;
+            } else {
+                return 0;
+            }
+        } else if (isRidRef(operands[1], ridOrdinal)) {
+            bound = operands[0];
+            if (call.isA(RexKind.LessThanOrEqual)) {
+                inclusive = true;
+            } else if (call.isA(RexKind.LessThan)) {
+                inclusive = false;
+            } else {
+                return 0;
+            }
+        } else {
+            return 0;
+        }
+        if (!(bound instanceof RexLiteral)) {
+            return 0;
+        }
+        Comparable value = ((RexLiteral) bound).getValue();
+        if (!(value instanceof BigDecimal)) {
+            return 0;
+        }
+        BigDecimal decimal = (BigDecimal) value;
+        BigDecimal start =
+            inclusive ? decimal.setScale(0, RoundingMode.CEILING)
+            : decimal.setScale(0, RoundingMode.FLOOR).add(BigDecimal.ONE);
+        if (start.signum() <= 0) {
+            return 0;
+        }
+        if (start.compareTo(BigDecimal.valueOf(Long.MAX_VALUE)) > 0) {
+            // no row can qualify; leave that for the filter to discover
+            return 0;
+        }
+        return start.longValue();
+    }
+
+    private static boolean isRidRef(RexNode node, int ridOrdinal)
+    {
+        return (node instanceof RexInputRef)
+            && (((RexInputRef) node).getIndex() == ridOrdinal);
+    }
+}
+
+// End LcsStartRidRule.java
@@ -530,8 +530,16 @@ public class LoptMetadataProvider
         // flattening.
 
         // if the column has sargable predicates, compute the
-        // selectivity based on those predicates
+        // selectivity based on those predicates; equality predicates on
+        // columns in a column group are combined using the dependencies
+        // between the columns
         if (col2SeqMap != null) {
+            List<RelStatColumnGroupStatistics> columnGroups =
+                Collections.emptyList();
+            if (tabStats != null) {
+                columnGroups = tabStats.getColumnGroupStatistics();
+            }
+            Map<Integer, Double> pointSels = new HashMap<Integer, Double>();
             Set<CwmColumn> cols = col2SeqMap.keySet();
             for (CwmColumn col : cols) {
                 SargIntervalSequence sargSeq = col2SeqMap.get(col);
@@ -549,11 +557,17 @@ public class LoptMetadataProvider
                         // if no stats are available for this column, then
                         // just use a guess
                         selectivity *= 0.1;
+                    } else if (sargSeq.isPoint()
+                        && RelStatUtil.isGrouped(columnGroups, colno))
+                    {
+                        pointSels.put(colno, colSel);
                     } else {
                         selectivity *= colSel;
                     }
                 }
             }
+            selectivity *=
+                RelStatUtil.combineSelectivities(columnGroups, pointSels);
         }
 
         // compute the selectivity of the non-sargable predicates; if
@@ -0,0 +1,237 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package org.luciddb.optimizer.test;
+
+import java.sql.*;
+
+import java.util.*;
+
+import junit.framework.*;
+
+import net.sf.farrago.catalog.*;
+
+import org.eigenbase.stat.*;
+
+
+/**
+ * LcsColumnGroupStatisticsTest tests the column group statistics which
+ * ANALYZE collects for groups of correlated columns, and how they are used to
+ * combine the statistics of the individual columns.
+ *
+ * @version $Id$
+ */
+public class LcsColumnGroupStatisticsTest
+    extends LcsStatisticsTestCase
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final double EPSILON = 1.0e-5;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new LcsColumnGroupStatisticsTest object.
+     *
+     * @param testName JUnit test name
+     */
+    public LcsColumnGroupStatisticsTest(String testName)
+        throws Exception
+    {
+        super(testName, "lcs_group_stats");
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    public static Test suite()
+    {
+        return wrappedSuite(LcsColumnGroupStatisticsTest.class);
+    }
+
+    // override LcsStatisticsTestCase
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        // 1000 cities spread evenly over 10000 rows; each state has 10
+        // cities and each country 25 states
+        stmt.execute(
+            "create table geo(country int, state int, city int, n int)");
+        stmt.executeUpdate(
+            "insert into geo select "
+            + "mod(n, 1000) / 250, mod(n, 1000) / 10, mod(n, 1000), n "
+            + "from (select a.d * 1000 + b.d * 100 + c.d * 10 + e.d as n "
+            + "from digits a, digits b, digits c, digits e)");
+    }
+
+    /**
+     * Tests that selectivities and cardinalities of dependent columns are not
+     * multiplied as if the columns were independent.
+     */
+    public void testCombine()
+    {
+        // country (0), state (1) and city (2): each city determines its
+        // state and country, and each state its country
+        List<RelStatColumnGroupStatistics> groups =
+            new ArrayList<RelStatColumnGroupStatistics>();
+        groups.add(
+            new FarragoColumnGroupStatistics(
+                new int[] { 0, 1, 2 },
+                1000,
+                new double[] {
+                    1.0, 0.04, 0.004,
+                    1.0, 1.0, 0.1,
+                    1.0, 1.0, 1.0
+                }));
+
+        Map<Integer, Double> selectivities = new HashMap<Integer, Double>();
+        selectivities.put(0, 0.25);
+        selectivities.put(1, 0.01);
+        selectivities.put(2, 0.001);
+        assertEquals(
+            0.001,
+            RelStatUtil.combineSelectivities(groups, selectivities),
+            EPSILON);
+
+        // a column outside the group is independent
+        selectivities.remove(2);
+        selectivities.put(3, 0.5);
+        assertEquals(
+            0.005,
+            RelStatUtil.combineSelectivities(groups, selectivities),
+            EPSILON);
+
+        Map<Integer, Double> cardinalities = new HashMap<Integer, Double>();
+        cardinalities.put(0, 4.0);
+        cardinalities.put(1, 100.0);
+        assertEquals(
+            100.0,
+            RelStatUtil.combineCardinalities(groups, cardinalities),
+            EPSILON);
+        cardinalities.put(2, 1000.0);
+        assertEquals(
+            1000.0,
+            RelStatUtil.combineCardinalities(groups, cardinalities),
+            EPSILON);
+
+        // without groups, the columns are independent
+        assertEquals(
+            400000.0,
+            RelStatUtil.combineCardinalities(
+                Collections.<RelStatColumnGroupStatistics>emptyList(),
+                cardinalities),
+            EPSILON);
+        assertFalse(RelStatUtil.isGrouped(groups, 3));
+    }
+
+    /**
+     * Tests that encoding column group statistics preserves them.
+     */
+    public void testEncoding()
+    {
+        List<FarragoColumnGroupStatistics> list =
+            new ArrayList<FarragoColumnGroupStatistics>();
+        assertNull(FarragoColumnGroupStatistics.toString(list));
+        assertTrue(FarragoColumnGroupStatistics.parseList(null).isEmpty());
+
+        list.add(
+            new FarragoColumnGroupStatistics(
+                new int[] { 3, 1 },
+                42,
+                new double[] { 1.0, 0.5, 0.25, 1.0 }));
+        list.add(
+            new FarragoColumnGroupStatistics(
+                new int[] { 3, 4, 5 },
+                7,
+                new double[] { 1, 0, 0, 0, 1, 0, 0, 0.75, 1 }));
+        String encoded = FarragoColumnGroupStatistics.toString(list);
+        List<FarragoColumnGroupStatistics> copy =
+            FarragoColumnGroupStatistics.parseList(encoded);
+        assertEquals(encoded, FarragoColumnGroupStatistics.toString(copy));
+        assertEquals(2, copy.size());
+        assertEquals(3, copy.get(0).getLeadingOrdinal());
+        assertEquals(42.0, copy.get(0).getDistinctCount(), EPSILON);
+        assertEquals(0.5, copy.get(0).getDependencyDegree(3, 1), EPSILON);
+        assertEquals(0.25, copy.get(0).getDependencyDegree(1, 3), EPSILON);
+        assertEquals(0.75, copy.get(1).getDependencyDegree(5, 4), EPSILON);
+        assertEquals(0.0, copy.get(1).getDependencyDegree(5, 1), EPSILON);
+    }
+
+    /**
+     * Tests that ANALYZE computes the statistics of a column group, and keeps
+     * them when the group's columns are later analyzed without it.
+     */
+    public void testAnalyzeColumnGroup()
+        throws Exception
+    {
+        stmt.execute(
+            "analyze table geo compute statistics for columns "
+            + "(n, (country, state, city))");
+
+        Map<String, Double> degrees = getDependencyDegrees();
+        assertEquals(6, degrees.size());
+        assertEquals(1.0, degrees.get("CITY->STATE"), EPSILON);
+        assertEquals(1.0, degrees.get("CITY->COUNTRY"), EPSILON);
+        assertEquals(1.0, degrees.get("STATE->COUNTRY"), EPSILON);
+        assertEquals(0.1, degrees.get("STATE->CITY"), EPSILON);
+        assertEquals(0.04, degrees.get("COUNTRY->STATE"), EPSILON);
+
+        // the group is led by country, whose histogram carries it
+        stmt.execute(
+            "analyze table geo compute statistics for columns (country)");
+        assertEquals(6, getDependencyDegrees().size());
+
+        try {
+            stmt.execute(
+                "analyze table geo compute statistics for columns ((city))");
+            fail("expected error");
+        } catch (SQLException ex) {
+            // expected
+        }
+    }
+
+    private Map<String, Double> getDependencyDegrees()
+        throws Exception
+    {
+        Map<String, Double> degrees = new HashMap<String, Double>();
+        resultSet =
+            stmt.executeQuery(
+                "select * from table(sys_boot.mgmt.stat_get_column_groups("
+                + "'LOCALDB', 'LCS_GROUP_STATS', 'GEO'))");
+        try {
+            while (resultSet.next()) {
+                assertEquals(
+                    "COUNTRY, STATE, CITY",
+                    resultSet.getString(1));
+                assertEquals(1000, resultSet.getLong(2));
+                degrees.put(
+                    resultSet.getString(3) + "->" + resultSet.getString(4),
+                    resultSet.getDouble(5));
+            }
+        } finally {
+            resultSet.close();
+        }
+        return degrees;
+    }
+}
+
+// End LcsColumnGroupStatisticsTest.java
@@ -0,0 +1,280 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package org.luciddb.optimizer.test;
+
+import java.util.*;
+
+import junit.framework.*;
+
+import net.sf.farrago.catalog.*;
+
+
+/**
+ * LcsColumnStatisticsTest tests the most common values and distinct value
+ * sketches which ANALYZE records with column histograms, and their
+ * incremental maintenance as rows are appended to a LucidDB table.
+ *
+ * @version $Id$
+ */
+public class LcsColumnStatisticsTest
+    extends LcsStatisticsTestCase
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * Query producing the integers 0 to 9999.
+     */
+    private static final String NUMBERS =
+        "select a.d * 1000 + b.d * 100 + c.d * 10 + e.d as n "
+        + "from digits a, digits b, digits c, digits e";
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new LcsColumnStatisticsTest object.
+     *
+     * @param testName JUnit test name
+     */
+    public LcsColumnStatisticsTest(String testName)
+        throws Exception
+    {
+        super(testName, "lcs_stats");
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    public static Test suite()
+    {
+        return wrappedSuite(LcsColumnStatisticsTest.class);
+    }
+
+    // override LcsStatisticsTestCase
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        // half of the rows have k = 0; the others are spread evenly over
+        // 250 values between 1 and 500
+        stmt.execute("create table t(n int, k int)");
+        stmt.executeUpdate(
+            "insert into t select n, "
+            + "case when mod(n, 10) < 5 then 0 else mod(n, 500) + 1 end "
+            + "from (" + NUMBERS + ")");
+    }
+
+    /**
+     * Tests the accuracy of the distinct value sketch, and that merging and
+     * encoding sketches preserves it.
+     */
+    public void testDistinctValueSketch()
+    {
+        FarragoDistinctValueSketch sketch1 = new FarragoDistinctValueSketch();
+        FarragoDistinctValueSketch sketch2 = new FarragoDistinctValueSketch();
+        for (int i = 0; i < 20000; i++) {
+            sketch1.add(String.valueOf(i));
+            sketch1.add(String.valueOf(i));
+            sketch2.add(String.valueOf(i + 10000));
+        }
+        sketch1.add(null);
+        assertEstimate(20000, sketch1.estimate(), 0.1);
+        assertEstimate(20000, sketch2.estimate(), 0.1);
+
+        sketch1.merge(sketch2);
+        assertEstimate(30000, sketch1.estimate(), 0.1);
+
+        FarragoDistinctValueSketch copy =
+            FarragoDistinctValueSketch.parse(sketch1.toString());
+        assertEquals(sketch1.estimate(), copy.estimate());
+        assertEquals(sketch1.toString(), copy.toString());
+
+        FarragoDistinctValueSketch small = new FarragoDistinctValueSketch();
+        for (int i = 0; i < 10; i++) {
+            small.add("value " + i);
+        }
+        assertEstimate(10, small.estimate(), 0.1);
+
+        assertNull(FarragoDistinctValueSketch.parse(null));
+        assertNull(FarragoDistinctValueSketch.parse(""));
+        assertNull(FarragoDistinctValueSketch.parse("0a0"));
+    }
+
+    /**
+     * Tests that the most common values list keeps the most common values,
+     * and that encoding preserves it.
+     */
+    public void testMostCommonValues()
+    {
+        FarragoMostCommonValues mcv = new FarragoMostCommonValues(3);
+        mcv.add("a", 10);
+        mcv.add("b:c", 5);
+        mcv.add("d", 1);
+        mcv.add("e", 2);
+        mcv.add("f", 0);
+        mcv.add("a", 3);
+        assertEquals(Arrays.asList("a", "b:c", "e"), mcv.getValues());
+        assertEquals(Long.valueOf(13), mcv.getRowCount("a"));
+        assertNull(mcv.getRowCount("d"));
+        assertEquals(20, mcv.getTotalRowCount());
+
+        // not more common than the least common value
+        mcv.add("g", 2);
+        assertNull(mcv.getRowCount("g"));
+
+        FarragoMostCommonValues copy =
+            FarragoMostCommonValues.parse(mcv.toString());
+        assertEquals(mcv.getValues(), copy.getValues());
+        assertEquals(Long.valueOf(5), copy.getRowCount("b:c"));
+        assertEquals(mcv.toString(), copy.toString());
+        assertEquals(0, FarragoMostCommonValues.parse("").size());
+    }
+
+    /**
+     * Tests that the selectivity of a skewed value comes from the most common
+     * values list rather than being averaged over the histogram bars.
+     */
+    public void testSkewedSelectivity()
+        throws Exception
+    {
+        stmt.execute("analyze table t compute statistics for all columns");
+
+        assertEquals(0.5, getSelectivity("0"), 0.001);
+        assertEquals(20.0 / 10000.0, getSelectivity("7"), 0.001);
+        assertEquals(1.0, getCardinality("0"), 0.001);
+
+        Map<String, Long> mcv = getMostCommonValues();
+        assertEquals(Long.valueOf(5000), mcv.get("0"));
+        assertEquals(
+            FarragoMostCommonValues.DEFAULT_CAPACITY,
+            mcv.size());
+        assertEquals(251, getDistinctValueCount());
+    }
+
+    /**
+     * Tests that estimating statistics after rows have been appended merges
+     * the new rows into the existing statistics.
+     */
+    public void testIncrementalAnalyze()
+        throws Exception
+    {
+        stmt.execute("analyze table t estimate statistics for all columns");
+        long distinctValues = getDistinctValueCount();
+        assertEstimate(251, distinctValues, 0.1);
+        assertNull(getMostCommonValues().get("1000"));
+
+        // append 5000 rows with k = 1000, and 5000 rows with 500 new values
+        stmt.executeUpdate(
+            "insert into t select n + 10000, "
+            + "case when mod(n, 2) = 0 then 1000 else mod(n, 1000) + 2000 end "
+            + "from (" + NUMBERS + ")");
+        stmt.execute("analyze table t estimate statistics for all columns");
+
+        Long rowCount = getMostCommonValues().get("1000");
+        assertNotNull(rowCount);
+        assertEstimate(5000, rowCount, 0.2);
+        assertEstimate(
+            distinctValues + 501,
+            getDistinctValueCount(),
+            0.1);
+        assertEquals(0.25, getSelectivity("1000"), 0.05);
+
+        // a delete invalidates the statistics for merging, so the next
+        // estimate samples the whole table again
+        stmt.executeUpdate("delete from t where k = 1000");
+        stmt.execute("analyze table t estimate statistics for all columns");
+        assertNull(getMostCommonValues().get("1000"));
+    }
+
+    private static void assertEstimate(
+        long expected,
+        long actual,
+        double tolerance)
+    {
+        assertTrue(
+            "expected about " + expected + " but was " + actual,
+            Math.abs(actual - expected) <= (expected * tolerance));
+    }
+
+    private double getSelectivity(String expression)
+        throws Exception
+    {
+        return queryDouble(
+            "values sys_boot.mgmt.stat_get_selectivity("
+            + "'LOCALDB', 'LCS_STATS', 'T', 'K', '" + expression + "')");
+    }
+
+    private double getCardinality(String expression)
+        throws Exception
+    {
+        return queryDouble(
+            "values sys_boot.mgmt.stat_get_cardinality("
+            + "'LOCALDB', 'LCS_STATS', 'T', 'K', '" + expression + "')");
+    }
+
+    private double queryDouble(String sql)
+        throws Exception
+    {
+        resultSet = stmt.executeQuery(sql);
+        try {
+            assertTrue(resultSet.next());
+            return resultSet.getDouble(1);
+        } finally {
+            resultSet.close();
+        }
+    }
+
+    private long getDistinctValueCount()
+        throws Exception
+    {
+        resultSet =
+            stmt.executeQuery(
+                "select distinct_value_count from sys_root.dba_column_stats "
+                + "where schema_name = 'LCS_STATS' and table_name = 'T' "
+                + "and column_name = 'K'");
+        try {
+            assertTrue(resultSet.next());
+            return resultSet.getLong(1);
+        } finally {
+            resultSet.close();
+        }
+    }
+
+    private Map<String, Long> getMostCommonValues()
+        throws Exception
+    {
+        Map<String, Long> mcv = new HashMap<String, Long>();
+        resultSet =
+            stmt.executeQuery(
+                "select * from table(sys_boot.mgmt.stat_get_most_common_values("
+                + "'LOCALDB', 'LCS_STATS', 'T', 'K'))");
+        try {
+            while (resultSet.next()) {
+                mcv.put(resultSet.getString(1), resultSet.getLong(2));
+            }
+        } finally {
+            resultSet.close();
+        }
+        return mcv;
+    }
+}
+
+// End LcsColumnStatisticsTest.java
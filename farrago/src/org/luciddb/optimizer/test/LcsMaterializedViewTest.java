@@ -0,0 +1,287 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package org.luciddb.optimizer.test;
+
+import java.util.*;
+
+import junit.framework.*;
+
+import net.sf.farrago.test.*;
+
+
+/**
+ * LcsMaterializedViewTest tests the rewriting of aggregate queries to read
+ * from materialized views ({@link org.luciddb.lcs.LcsMaterializedViewRule}),
+ * and the incremental and full refresh of those views.
+ *
+ * @version $Id$
+ */
+public class LcsMaterializedViewTest
+    extends FarragoTestCase
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final String VIEW_QUERY =
+        "select deptno, gender, count(*) as c, sum(sal) as s, "
+        + "min(sal) as lo, max(sal) as hi "
+        + "from emps where city = 'SF' group by deptno, gender";
+
+    private static final String [] QUERIES =
+    {
+        // same grouping as the view
+        "select deptno, gender, count(*), sum(sal), max(sal) "
+        + "from emps where city = 'SF' group by deptno, gender",
+
+        // coarser grouping: rolled up from the view
+        "select deptno, count(*), sum(sal), min(sal) "
+        + "from emps where city = 'SF' group by deptno",
+
+        // extra predicate on a grouping column
+        "select gender, count(*), max(sal) "
+        + "from emps where 'SF' = city and deptno > 10 group by gender",
+    };
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new LcsMaterializedViewTest object.
+     *
+     * @param testName JUnit test name
+     */
+    public LcsMaterializedViewTest(String testName)
+        throws Exception
+    {
+        super(testName);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    public static Test suite()
+    {
+        return wrappedSuite(LcsMaterializedViewTest.class);
+    }
+
+    // implement TestCase
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+        stmt.execute("create schema lcs_mv");
+        stmt.execute("set schema 'lcs_mv'");
+        stmt.execute(
+            "alter session implementation set jar"
+            + " sys_boot.sys_boot.luciddb_plugin");
+        stmt.execute(
+            "create procedure create_mv(s varchar(128), v varchar(128), "
+            + "q varchar(65535)) language java parameter style java "
+            + "modifies sql data external name "
+            + "'class org.luciddb.lcs.LcsMaterializedViewUDR"
+            + ".createMaterializedView'");
+        stmt.execute(
+            "create procedure refresh_mv(s varchar(128), v varchar(128)) "
+            + "language java parameter style java modifies sql data "
+            + "external name 'class org.luciddb.lcs.LcsMaterializedViewUDR"
+            + ".refreshMaterializedView'");
+        stmt.execute(
+            "create function mvs() returns table("
+            + "catalog_name varchar(128), schema_name varchar(128), "
+            + "view_name varchar(128), base_table_name varchar(65535), "
+            + "state varchar(128), row_count bigint, rewrite_count bigint, "
+            + "stale_skip_count bigint, stale_count bigint, "
+            + "incremental_refresh_count bigint, "
+            + "full_refresh_count bigint) "
+            + "language java parameter style system defined java no sql "
+            + "external name 'class org.luciddb.lcs.LcsMaterializedViewUDR"
+            + ".materializedViews'");
+        stmt.execute(
+            "create table emps("
+            + "empno int not null, deptno int, gender char(1), "
+            + "city varchar(20), sal int)");
+        insertEmps(0, 200);
+    }
+
+    // implement TestCase
+    protected void tearDown()
+        throws Exception
+    {
+        try {
+            stmt.execute("alter session implementation set default");
+            stmt.execute("drop schema lcs_mv cascade");
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    private void insertEmps(int from, int to)
+        throws Exception
+    {
+        for (int i = from; i < to; ++i) {
+            stmt.executeUpdate(
+                "insert into emps values (" + i + ", "
+                + (10 * (i % 4)) + ", "
+                + ((i % 3 == 0) ? "null" : ((i % 2 == 0) ? "'F'" : "'M'"))
+                + ", "
+                + ((i % 5 == 0) ? "'LA'" : "'SF'") + ", "
+                + ((i % 7 == 0) ? "null" : String.valueOf(1000 + i))
+                + ")");
+        }
+    }
+
+    /**
+     * Tests that queries answerable from a fresh view are rewritten to read
+     * from it, and return the same rows as before.
+     */
+    public void testRewrite()
+        throws Exception
+    {
+        List<List<String>> expected = readQueries();
+        createView();
+        assertEquals(expected, readQueries());
+        for (String query : QUERIES) {
+            assertTrue(query, explain(query).contains("EMPS_MV"));
+        }
+        assertEquals(
+            String.valueOf(QUERIES.length),
+            readViewState().get(6));
+
+        // not answerable: different predicate, or a non-grouping column
+        // in the residual filter
+        assertFalse(
+            explain(
+                "select deptno, count(*) from emps where city = 'LA' "
+                + "group by deptno").contains("EMPS_MV"));
+        assertFalse(
+            explain(
+                "select deptno, count(*) from emps "
+                + "where city = 'SF' and sal > 1100 group by deptno")
+            .contains("EMPS_MV"));
+    }
+
+    /**
+     * Tests that appending rows to the base table stops the view from being
+     * used until an incremental refresh catches it up.
+     */
+    public void testIncrementalRefresh()
+        throws Exception
+    {
+        createView();
+        insertEmps(200, 260);
+        assertEquals("APPENDED", readViewState().get(4));
+        assertFalse(explain(QUERIES[0]).contains("EMPS_MV"));
+        List<List<String>> expected = readQueries();
+
+        stmt.execute("call refresh_mv('LCS_MV', 'EMPS_MV')");
+        List<String> state = readViewState();
+        assertEquals("FRESH", state.get(4));
+        assertEquals("1", state.get(9));
+        assertEquals("1", state.get(10));
+        assertTrue(explain(QUERIES[0]).contains("EMPS_MV"));
+        assertEquals(expected, readQueries());
+    }
+
+    /**
+     * Tests that deleting rows from the base table makes the view stale, and
+     * that a refresh recomputes it.
+     */
+    public void testFullRefresh()
+        throws Exception
+    {
+        createView();
+        stmt.executeUpdate("delete from emps where empno < 20");
+        assertEquals("STALE", readViewState().get(4));
+        List<List<String>> expected = readQueries();
+
+        stmt.execute("call refresh_mv('LCS_MV', 'EMPS_MV')");
+        List<String> state = readViewState();
+        assertEquals("FRESH", state.get(4));
+        assertEquals("0", state.get(9));
+        assertEquals("2", state.get(10));
+        assertEquals(expected, readQueries());
+    }
+
+    private void createView()
+        throws Exception
+    {
+        stmt.execute(
+            "call create_mv('LCS_MV', 'EMPS_MV', '"
+            + VIEW_QUERY.replace("'", "''") + "')");
+        assertEquals("FRESH", readViewState().get(4));
+    }
+
+    private List<String> readViewState()
+        throws Exception
+    {
+        resultSet =
+            stmt.executeQuery(
+                "select * from table(mvs()) where view_name = 'EMPS_MV'");
+        try {
+            assertTrue(resultSet.next());
+            List<String> row = new ArrayList<String>();
+            int n = resultSet.getMetaData().getColumnCount();
+            for (int i = 1; i <= n; ++i) {
+                row.add(resultSet.getString(i));
+            }
+            return row;
+        } finally {
+            resultSet.close();
+            resultSet = null;
+        }
+    }
+
+    private List<List<String>> readQueries()
+        throws Exception
+    {
+        List<List<String>> results = new ArrayList<List<String>>();
+        for (String query : QUERIES) {
+            List<String> rows = new ArrayList<String>();
+            resultSet = stmt.executeQuery(query);
+            int n = resultSet.getMetaData().getColumnCount();
+            while (resultSet.next()) {
+                StringBuilder sb = new StringBuilder();
+                for (int i = 1; i <= n; ++i) {
+                    sb.append(resultSet.getString(i)).append(',');
+                }
+                rows.add(sb.toString());
+            }
+            resultSet.close();
+            resultSet = null;
+            Collections.sort(rows);
+            results.add(rows);
+        }
+        return results;
+    }
+
+    private String explain(String query)
+        throws Exception
+    {
+        StringBuilder sb = new StringBuilder();
+        resultSet = stmt.executeQuery("explain plan for " + query);
+        while (resultSet.next()) {
+            sb.append(resultSet.getString(1)).append('\n');
+        }
+        resultSet.close();
+        resultSet = null;
+        return sb.toString();
+    }
+}
+
+// End LcsMaterializedViewTest.java
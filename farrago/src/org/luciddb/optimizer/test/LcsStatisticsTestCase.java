@@ -0,0 +1,88 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2005 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package org.luciddb.optimizer.test;
+
+import net.sf.farrago.test.*;
+
+import org.luciddb.test.*;
+
+
+/**
+ * LcsStatisticsTestCase is an abstract base for tests of the statistics
+ * which ANALYZE collects on LucidDB tables. Each test runs in a schema of its
+ * own, with the LucidDB personality, and starts with a table named DIGITS
+ * (see {@link LucidDbTestCase#createDigits}) from which subclasses generate
+ * the rows of the tables they analyze.
+ *
+ * @version $Id$
+ */
+public abstract class LcsStatisticsTestCase
+    extends FarragoTestCase
+{
+    //~ Instance fields --------------------------------------------------------
+
+    private final String schemaName;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a new LcsStatisticsTestCase object.
+     *
+     * @param testName JUnit test name
+     * @param schemaName name of the schema created for each test
+     */
+    protected LcsStatisticsTestCase(String testName, String schemaName)
+        throws Exception
+    {
+        super(testName);
+        this.schemaName = schemaName;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement TestCase
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+        stmt.execute("create schema " + schemaName);
+        stmt.execute("set schema '" + schemaName + "'");
+        stmt.execute(
+            "alter session implementation set jar"
+            + " sys_boot.sys_boot.luciddb_plugin");
+        LucidDbTestCase.createDigits(stmt, "digits");
+    }
+
+    // implement TestCase
+    protected void tearDown()
+        throws Exception
+    {
+        try {
+            stmt.execute("alter session implementation set default");
+            stmt.execute("drop schema " + schemaName + " cascade");
+        } finally {
+            super.tearDown();
+        }
+    }
+}
+
+// End LcsStatisticsTestCase.java
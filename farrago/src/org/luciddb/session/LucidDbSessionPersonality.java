@@ -209,6 +209,12 @@ public class LucidDbSessionPersonality
             return true;
         }
 
+        // LucidDB appends rows in LCS_RID order, so ANALYZE can merge
+        // statistics for just the rows appended since it last ran
+        if (feature == featureResource.PersonalitySupportsIncrementalStats) {
+            return true;
+        }
+
         return super.supportsFeature(feature);
     }
 
@@ -362,6 +368,15 @@ public class LucidDbSessionPersonality
         builder.addRuleInstance(new MergeProjectRule(true));
         builder.addGroupEnd();
 
+        // Answer aggregates from materialized views while they still sit
+        // directly on a filtered scan of their base table
+        builder.addGroupBegin();
+        builder.addRuleInstance(LcsMaterializedViewRule.instanceProjectFilter);
+        builder.addRuleInstance(LcsMaterializedViewRule.instanceProject);
+        builder.addRuleInstance(LcsMaterializedViewRule.instanceFilter);
+        builder.addRuleInstance(LcsMaterializedViewRule.instanceRowScan);
+        builder.addGroupEnd();
+
         // Push the projects back down
         applyPushDownProjectRules(builder);
 
@@ -608,6 +623,17 @@ public class LucidDbSessionPersonality
         builder.addRuleInstance(LcsAddDeletionScanRule.instanceAnyInput);
         builder.addRuleInstance(LcsAddDeletionScanRule.instanceNoInputs);
 
+        // Let hash joins filter the row scans on their probe side once their
+        // build inputs are known.  Like the deletion scan rules, this must
+        // only be applied after the row scans have been finalized.
+        builder.addRuleInstance(LcsRuntimeFilterRule.instanceRowScan);
+        builder.addRuleInstance(LcsRuntimeFilterRule.instanceProject);
+
+        // Start full row scans at the least LCS_RID their filters accept.
+        // This too needs the row scans to have been finalized, and must be
+        // applied before the filters are converted to calcs.
+        builder.addRuleInstance(LcsStartRidRule.instance);
+
         // Prefer hash aggregation over the standard Fennel aggregation.
         // Apply aggregation rules before the calc rules below so we can
         // call metadata queries on logical RelNodes.
@@ -1015,6 +1041,21 @@ public class LucidDbSessionPersonality
                 currRowCount,
                 currDeletedRowCount,
                 database.getUserRepos());
+
+            // materialized views over the table no longer reflect it; if
+            // rows were only appended, they can catch up incrementally
+            if ((affectedRowCount > 0) || (deletedRowCount > 0)) {
+                LcsMaterializedViewRegistry.onBaseTableModified(
+                    repos,
+                    columnSet,
+                    (tableModOp != TableModificationRel.Operation.DELETE)
+                    && (deletedRowCount == 0));
+            }
+
+            // nor do column histograms, once analyzed rows are deleted
+            if (deletedRowCount > 0) {
+                FarragoCatalogUtil.resetHistogramRowCounts(repos, columnSet);
+            }
             txn.commit();
         } finally {
             txn.rollback();
@@ -1028,6 +1069,13 @@ public class LucidDbSessionPersonality
     public void resetRowCounts(FemAbstractColumnSet table)
     {
         FarragoCatalogUtil.resetRowCounts(table, database.getUserRepos());
+        FarragoCatalogUtil.resetHistogramRowCounts(
+            database.getUserRepos(),
+            table);
+        LcsMaterializedViewRegistry.onBaseTableModified(
+            database.getUserRepos(),
+            table,
+            false);
     }
 
     //  implement FarragoSessionPersonality
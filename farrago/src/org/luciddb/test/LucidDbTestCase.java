@@ -0,0 +1,140 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2006 The Eigenbase Project
+// Copyright (C) 2010 SQLstream, Inc.
+// Copyright (C) 2006 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package org.luciddb.test;
+
+import java.sql.*;
+
+import net.sf.farrago.test.*;
+import net.sf.farrago.util.*;
+
+import org.eigenbase.util.property.*;
+
+
+/**
+ * LucidDbTestCase is an abstract base for JUnit tests which run against a
+ * LucidDB catalog through the LucidDB session factory, rather than the
+ * Farrago catalog and session factory used by {@link FarragoTestCase}. Each
+ * test gets a new connection, which is closed when the test ends, and the
+ * catalog is cleaned up without dropping LucidDB's own schemas such as
+ * APPLIB.
+ *
+ * @version $Id$
+ */
+public abstract class LucidDbTestCase
+    extends FarragoTestCase
+{
+    //~ Constructors -----------------------------------------------------------
+
+    protected LucidDbTestCase(String testName)
+        throws Exception
+    {
+        super(testName);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // override FarragoTestCase
+    protected void setUp()
+        throws Exception
+    {
+        // Set the properties so the LucidDB session factory and LucidDB data
+        // files are used.  The LucidDB data files need to be used; otherwise,
+        // we won't use versioned data segment pages.
+        //
+        // REVIEW zfong 7/11/08 - Is there a better way of doing this?
+        FarragoProperties farragoPropInstance = FarragoProperties.instance();
+        StringProperty sessionFactory =
+            farragoPropInstance.defaultSessionFactoryLibraryName;
+        System.setProperty(
+            sessionFactory.getPath(),
+            "class:org.luciddb.session.LucidDbSessionFactory");
+        String homeDirString = farragoPropInstance.homeDir.get(true);
+        String catalogDir = homeDirString + "/../luciddb/catalog";
+        farragoPropInstance.catalogDir.set(catalogDir);
+
+        // Create a new connection so we're sure we have the right session
+        // factory and db
+        if (connection != null) {
+            connection.close();
+        }
+
+        connection = newConnection();
+        repos = getSession().getRepos();
+        saveParameters();
+
+        runCleanup();
+        super.setUp();
+    }
+
+    public static void runCleanup()
+        throws Exception
+    {
+        // Use the special LucidDB cleanup factory to avoid dropping schemas
+        // like APPLIB
+        FarragoTestCase.CleanupFactory.setFactory(new LucidDbCleanupFactory());
+        FarragoTestCase.runCleanup();
+    }
+
+    // override FarragoTestCase
+    protected void tearDown()
+        throws Exception
+    {
+        // Close the connection created by this test.
+        if (connection != null) {
+            connection.close();
+            connection = null;
+        }
+    }
+
+    /**
+     * Creates a table of the digits 0 to 9, in a column named D. Cross joins
+     * of the table with itself generate the rows of larger test tables.
+     *
+     * @param stmt statement to execute the DDL and DML with
+     * @param tableName name of the table, qualified if need be
+     */
+    public static void createDigits(Statement stmt, String tableName)
+        throws SQLException
+    {
+        stmt.execute("create table " + tableName + "(d int)");
+        stmt.executeUpdate(
+            "insert into " + tableName + " values "
+            + "(0), (1), (2), (3), (4), (5), (6), (7), (8), (9)");
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Cleanup factory that uses LucidDbTestCleanup
+     */
+    private static class LucidDbCleanupFactory
+        extends FarragoTestCase.CleanupFactory
+    {
+        public Cleanup newCleanup(String name)
+            throws Exception
+        {
+            return new LucidDbTestCleanup(connection);
+        }
+    }
+}
+
+// End LucidDbTestCase.java
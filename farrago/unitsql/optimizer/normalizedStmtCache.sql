@@ -0,0 +1,52 @@
+-- $Id$
+-- Test sharing of code cache entries via literal normalization
+
+!set outputformat csv
+
+create schema ncache;
+set schema 'ncache';
+
+create table t (i int not null primary key, j int, v varchar(10));
+
+insert into t values (1, 10, 'a'), (2, 20, 'b'), (3, 30, 'c');
+
+alter session set "cacheNormalizedStatements" = true;
+
+-- these two differ only in plan-neutral literals, so they should share
+-- one cache entry
+select i, j * 2 as k from t where j + 1 > 15 order by i;
+
+select i, j * 3 as k from t where j + 1 > 25 order by i;
+
+-- literals in the CASE branches are normalized; the one compared
+-- against column v is kept since it is a sarg candidate
+select i, case when v = 'a' then 'x' else 'yy' end as w from t order by i;
+
+-- sargable predicates keep their literals, so these are cached normally
+select i from t where i = 2;
+
+select i from t where i = 3;
+
+-- ORDER BY is left alone, and so are the select list and GROUP BY of an
+-- aggregate or DISTINCT query, which ORDER BY has to match; the literals
+-- in WHERE are still normalized
+select j + 1 as k, count(*) as c from t where j * 2 > 10
+group by j + 1 order by j + 1;
+
+select distinct j + 1 as k from t where j * 2 > 10 order by j + 1;
+
+-- verify hit/miss counts
+select hit_count, miss_count
+from sys_boot.mgmt.code_cache_normalized_statements_view
+where normalized_key like '%NCACHE%'
+order by 1, 2;
+
+alter session set "cacheNormalizedStatements" = false;
+
+-- with normalization off, nothing more gets counted
+select i, j * 4 as k from t where j + 1 > 15 order by i;
+
+select hit_count, miss_count
+from sys_boot.mgmt.code_cache_normalized_statements_view
+where normalized_key like '%NCACHE%'
+order by 1, 2;
@@ -0,0 +1,78 @@
+-- $Id$
+-- Test runtime filters pushed from hash joins into column store scans:
+-- each join must return the same rows with and without LcsRuntimeFilterRule
+
+create schema rtf;
+set schema 'rtf';
+
+create function ramp(n int)
+returns table(i int)
+language java
+parameter style system defined java
+no sql
+external name 'class net.sf.farrago.test.FarragoTestUDR.ramp';
+
+alter session implementation set jar sys_boot.sys_boot.luciddb_plugin;
+
+-- the join key has a cluster of its own, so the scan can skip the other
+-- cluster for rows the filter eliminates
+create table fact(k int, v int, w varchar(10))
+    server sys_column_store_data_server
+    create clustered index i_k on fact(k)
+    create clustered index i_v_w on fact(v, w);
+
+-- a few keys, so the filter eliminates nearly every row
+create table few(k int, name varchar(10))
+    server sys_column_store_data_server;
+
+-- all but every 20th key, so the scan drops the filter after sampling
+create table most(k int, name varchar(10))
+    server sys_column_store_data_server;
+
+create table joined_with(k int, v int, w varchar(10), name varchar(10))
+    server sys_column_store_data_server;
+
+create table joined_without(k int, v int, w varchar(10), name varchar(10))
+    server sys_column_store_data_server;
+
+insert into fact
+    select i, i * 2, 'v' || cast(i as varchar(10)) from table(ramp(20000));
+insert into few values
+    (5, 'a'), (5000, 'b'), (10005, 'c'), (19995, 'd'), (20005, 'e'),
+    (null, 'f');
+insert into most
+    select i, 'n' || cast(i as varchar(10)) from table(ramp(20000))
+    where mod(i, 20) <> 0;
+
+analyze table fact compute statistics for all columns;
+analyze table few compute statistics for all columns;
+analyze table most compute statistics for all columns;
+
+!set outputformat csv
+
+-- with the runtime filter
+select f.k, f.v, f.w, d.name from fact f, few d where f.k = d.k
+order by f.k;
+insert into joined_with
+    select f.k, f.v, f.w, d.name from fact f, most d where f.k = d.k;
+
+-- without the runtime filter
+call sys_boot.mgmt.set_opt_rule_desc_exclusion_filter(
+    'LcsRuntimeFilterRule.*');
+select f.k, f.v, f.w, d.name from fact f, few d where f.k = d.k
+order by f.k;
+insert into joined_without
+    select f.k, f.v, f.w, d.name from fact f, most d where f.k = d.k;
+call sys_boot.mgmt.set_opt_rule_desc_exclusion_filter(null);
+
+-- both joins return the same rows
+select count(*) from joined_with;
+select count(*) from joined_without;
+select count(*) from
+    (select * from joined_with except select * from joined_without);
+select count(*) from
+    (select * from joined_without except select * from joined_with);
+
+-- Clean up
+!set outputformat table
+drop schema rtf cascade;
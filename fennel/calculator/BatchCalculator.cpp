@@ -0,0 +1,702 @@
+/*
+// $Id$
+// Fennel is a library of data storage and processing components.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2009 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+#include "fennel/common/CommonPreamble.h"
+#include "fennel/calculator/BatchCalculator.h"
+
+#include <sstream>
+#include <stdlib.h>
+
+FENNEL_BEGIN_CPPFILE("$Id$");
+
+static const char BATCH_PROGRAM_HEADER[] = "#batchcalc";
+
+static const char SCALAR_SEPARATOR[] = "\nscalar\n";
+
+static const int64_t BIGINT_MIN = -0x7fffffffffffffffLL - 1;
+
+BatchCalculator::BatchCalculator(uint capacityInit)
+{
+    capacity = capacityInit;
+    iCondition = -1;
+    nRows = 0;
+}
+
+bool BatchCalculator::isBatchProgram(std::string const &program)
+{
+    return program.compare(
+        0, sizeof(BATCH_PROGRAM_HEADER) - 1, BATCH_PROGRAM_HEADER) == 0;
+}
+
+BatchCalculator::ValueType BatchCalculator::parseType(
+    std::string const &name)
+{
+    if (name == "tinyint") {
+        return TYPE_TINYINT;
+    } else if (name == "smallint") {
+        return TYPE_SMALLINT;
+    } else if (name == "integer") {
+        return TYPE_INTEGER;
+    } else if (name == "bigint") {
+        return TYPE_BIGINT;
+    } else if (name == "real") {
+        return TYPE_REAL;
+    } else if (name == "double") {
+        return TYPE_DOUBLE;
+    } else if (name == "boolean") {
+        return TYPE_BOOLEAN;
+    } else {
+        permAssert(name == "other");
+        return TYPE_OTHER;
+    }
+}
+
+BatchCalculator::Operator BatchCalculator::parseOperator(
+    std::string const &name)
+{
+    static const char *names[] = {
+        "add", "sub", "mul", "neg", "pos",
+        "eq", "ne", "lt", "le", "gt", "ge",
+        "and", "or", "not",
+        "isnull", "isnotnull", "istrue", "isnottrue",
+        "isfalse", "isnotfalse",
+        "case", "cast"
+    };
+    for (uint i = 0; i < sizeof(names) / sizeof(names[0]); ++i) {
+        if (name == names[i]) {
+            return static_cast<Operator>(i);
+        }
+    }
+    permAssert(false);
+    return OP_ADD;
+}
+
+std::string BatchCalculator::assemble(std::string const &program)
+{
+    assert(isBatchProgram(program));
+    std::string::size_type separator = program.find(SCALAR_SEPARATOR);
+    permAssert(separator != std::string::npos);
+
+    std::istringstream lines(program.substr(0, separator));
+    std::string line;
+    std::getline(lines, line);
+    while (std::getline(lines, line)) {
+        std::istringstream words(line);
+        std::string keyword;
+        words >> keyword;
+        if (keyword == "project") {
+            uint iExpr;
+            while (words >> iExpr) {
+                assert(iExpr < exprs.size());
+                projects.push_back(iExpr);
+            }
+            continue;
+        } else if (keyword == "condition") {
+            words >> iCondition;
+            assert(iCondition >= 0 && uint(iCondition) < exprs.size());
+            continue;
+        }
+
+        Expr expr;
+        expr.iField = 0;
+        expr.op = OP_POS;
+        expr.literalNull = false;
+        expr.literalExact = 0;
+        expr.literalApprox = 0;
+        std::string word;
+        if (keyword == "input") {
+            expr.kind = EXPR_INPUT;
+            words >> expr.iField >> word;
+            expr.type = parseType(word);
+        } else if (keyword == "literal") {
+            expr.kind = EXPR_LITERAL;
+            words >> word;
+            expr.type = parseType(word);
+            words >> word;
+            if (word == "null") {
+                expr.literalNull = true;
+            } else if (isApprox(expr.type)) {
+                expr.literalApprox = strtod(word.c_str(), NULL);
+            } else {
+                std::istringstream value(word);
+                value >> expr.literalExact;
+            }
+        } else {
+            permAssert(keyword == "call");
+            expr.kind = EXPR_CALL;
+            words >> word;
+            expr.op = parseOperator(word);
+            words >> word;
+            expr.type = parseType(word);
+            uint iOperand;
+            while (words >> iOperand) {
+                assert(iOperand < exprs.size());
+                expr.operands.push_back(iOperand);
+            }
+            assert(!expr.operands.empty());
+        }
+        exprs.push_back(expr);
+    }
+
+    exactValues.resize(exprs.size() * capacity);
+    approxValues.resize(exprs.size() * capacity);
+    nullFlags.resize(exprs.size() * capacity);
+    scalarFlags.resize(capacity);
+    approxScratch.resize(2 * capacity);
+
+    return program.substr(separator + sizeof(SCALAR_SEPARATOR) - 1);
+}
+
+void BatchCalculator::bindOutput(TupleDescriptor const &outputDesc)
+{
+    assert(outputDesc.size() == projects.size());
+    outputNullable.clear();
+    for (uint i = 0; i < outputDesc.size(); ++i) {
+        outputNullable.push_back(outputDesc[i].isNullable);
+    }
+    outputValues.resize(outputDesc.size());
+}
+
+inline int64_t *BatchCalculator::getExact(uint iExpr)
+{
+    return &(exactValues[iExpr * capacity]);
+}
+
+inline double *BatchCalculator::getApprox(uint iExpr)
+{
+    return &(approxValues[iExpr * capacity]);
+}
+
+inline uint8_t *BatchCalculator::getNulls(uint iExpr)
+{
+    return &(nullFlags[iExpr * capacity]);
+}
+
+inline bool BatchCalculator::isApprox(ValueType type) const
+{
+    return (type == TYPE_REAL) || (type == TYPE_DOUBLE);
+}
+
+void BatchCalculator::clear()
+{
+    nRows = 0;
+}
+
+void BatchCalculator::addRow(TupleData const &inputData)
+{
+    assert(nRows < capacity);
+    uint iRow = nRows++;
+    scalarFlags[iRow] = 0;
+    for (uint i = 0; i < exprs.size(); ++i) {
+        Expr const &expr = exprs[i];
+        if (expr.kind != EXPR_INPUT) {
+            // inputs always precede everything else
+            break;
+        }
+        PConstBuffer pData = inputData[expr.iField].pData;
+        int64_t &exact = getExact(i)[iRow];
+        double &approx = getApprox(i)[iRow];
+        getNulls(i)[iRow] = (pData == NULL);
+        if (!pData) {
+            exact = 0;
+            approx = 0;
+            continue;
+        }
+        switch (expr.type) {
+        case TYPE_TINYINT:
+            exact = *reinterpret_cast<int8_t const *>(pData);
+            break;
+        case TYPE_SMALLINT:
+            exact = *reinterpret_cast<int16_t const *>(pData);
+            break;
+        case TYPE_INTEGER:
+            exact = *reinterpret_cast<int32_t const *>(pData);
+            break;
+        case TYPE_BIGINT:
+            exact = *reinterpret_cast<int64_t const *>(pData);
+            break;
+        case TYPE_BOOLEAN:
+            exact = *reinterpret_cast<bool const *>(pData) ? 1 : 0;
+            break;
+        case TYPE_REAL:
+            approx = *reinterpret_cast<float const *>(pData);
+            break;
+        case TYPE_DOUBLE:
+            approx = *reinterpret_cast<double const *>(pData);
+            break;
+        case TYPE_OTHER:
+            // only ever passed through to the output
+            break;
+        }
+    }
+}
+
+void BatchCalculator::exec()
+{
+    for (uint i = 0; i < exprs.size(); ++i) {
+        evaluate(i);
+    }
+
+    // Nulls which would be assigned to NOT NULL outputs raise an error in
+    // the scalar calculator.
+    uint8_t *flags = &(scalarFlags[0]);
+    for (uint k = 0; k < projects.size(); ++k) {
+        if (outputNullable[k]) {
+            continue;
+        }
+        uint8_t const *nulls = getNulls(projects[k]);
+        for (uint i = 0; i < nRows; ++i) {
+            flags[i] |= nulls[i];
+        }
+    }
+}
+
+BatchCalculator::RowStatus BatchCalculator::getRowStatus(uint iRow) const
+{
+    assert(iRow < nRows);
+    if (scalarFlags[iRow]) {
+        return ROW_SCALAR;
+    }
+    if (iCondition >= 0) {
+        uint offset = iCondition * capacity + iRow;
+        if (nullFlags[offset] || !exactValues[offset]) {
+            return ROW_SKIP;
+        }
+    }
+    return ROW_OUTPUT;
+}
+
+void BatchCalculator::getRow(
+    uint iRow, TupleData const &inputData, TupleData &outputData)
+{
+    assert(iRow < nRows);
+    for (uint k = 0; k < projects.size(); ++k) {
+        uint iExpr = projects[k];
+        Expr const &expr = exprs[iExpr];
+        TupleDatum &datum = outputData[k];
+        if (expr.kind == EXPR_INPUT) {
+            datum = inputData[expr.iField];
+            continue;
+        }
+        if (getNulls(iExpr)[iRow]) {
+            datum.pData = NULL;
+            continue;
+        }
+        OutputValue &value = outputValues[k];
+        int64_t exact = getExact(iExpr)[iRow];
+        switch (expr.type) {
+        case TYPE_TINYINT:
+            value.i8 = static_cast<int8_t>(exact);
+            datum.cbData = sizeof(value.i8);
+            break;
+        case TYPE_SMALLINT:
+            value.i16 = static_cast<int16_t>(exact);
+            datum.cbData = sizeof(value.i16);
+            break;
+        case TYPE_INTEGER:
+            value.i32 = static_cast<int32_t>(exact);
+            datum.cbData = sizeof(value.i32);
+            break;
+        case TYPE_BIGINT:
+            value.i64 = exact;
+            datum.cbData = sizeof(value.i64);
+            break;
+        case TYPE_BOOLEAN:
+            value.b = (exact != 0);
+            datum.cbData = sizeof(value.b);
+            break;
+        case TYPE_REAL:
+            value.r = static_cast<float>(getApprox(iExpr)[iRow]);
+            datum.cbData = sizeof(value.r);
+            break;
+        case TYPE_DOUBLE:
+            value.d = getApprox(iExpr)[iRow];
+            datum.cbData = sizeof(value.d);
+            break;
+        case TYPE_OTHER:
+            permAssert(false);
+        }
+        datum.pData = reinterpret_cast<PConstBuffer>(&value);
+    }
+}
+
+double const *BatchCalculator::getApproxOperand(uint iExpr, uint iScratch)
+{
+    if (isApprox(exprs[iExpr].type)) {
+        return getApprox(iExpr);
+    }
+    double *converted = &(approxScratch[iScratch * capacity]);
+    int64_t const *exact = getExact(iExpr);
+    for (uint i = 0; i < nRows; ++i) {
+        converted[i] = static_cast<double>(exact[i]);
+    }
+    return converted;
+}
+
+void BatchCalculator::flagOutOfRange(uint iExpr)
+{
+    int64_t lo, hi;
+    switch (exprs[iExpr].type) {
+    case TYPE_TINYINT:
+        lo = -0x80;
+        hi = 0x7f;
+        break;
+    case TYPE_SMALLINT:
+        lo = -0x8000;
+        hi = 0x7fff;
+        break;
+    case TYPE_INTEGER:
+        lo = -0x7fffffffLL - 1;
+        hi = 0x7fffffffLL;
+        break;
+    default:
+        return;
+    }
+    int64_t const *values = getExact(iExpr);
+    uint8_t const *nulls = getNulls(iExpr);
+    uint8_t *flags = &(scalarFlags[0]);
+    for (uint i = 0; i < nRows; ++i) {
+        flags[i] |= ((values[i] < lo) | (values[i] > hi)) & !nulls[i];
+    }
+}
+
+void BatchCalculator::roundReal(uint iExpr)
+{
+    double *values = getApprox(iExpr);
+    uint8_t const *nulls = getNulls(iExpr);
+    uint8_t *flags = &(scalarFlags[0]);
+    bool real = (exprs[iExpr].type == TYPE_REAL);
+    for (uint i = 0; i < nRows; ++i) {
+        if (real) {
+            values[i] = static_cast<float>(values[i]);
+        }
+        // x - x is non-zero (NaN) only for infinities and NaNs, which the
+        // scalar calculator reports as errors
+        flags[i] |= ((values[i] - values[i]) != 0) & !nulls[i];
+    }
+}
+
+void BatchCalculator::evaluate(uint iExpr)
+{
+    Expr const &expr = exprs[iExpr];
+    switch (expr.kind) {
+    case EXPR_INPUT:
+        // loaded by addRow
+        return;
+    case EXPR_LITERAL:
+        {
+            int64_t *exact = getExact(iExpr);
+            double *approx = getApprox(iExpr);
+            uint8_t *nulls = getNulls(iExpr);
+            for (uint i = 0; i < nRows; ++i) {
+                exact[i] = expr.literalExact;
+                approx[i] = expr.literalApprox;
+                nulls[i] = expr.literalNull;
+            }
+        }
+        return;
+    case EXPR_CALL:
+        break;
+    }
+
+    switch (expr.op) {
+    case OP_ADD:
+    case OP_SUB:
+    case OP_MUL:
+    case OP_NEG:
+    case OP_POS:
+    case OP_CAST:
+        evaluateArithmetic(expr, iExpr);
+        break;
+    case OP_EQ:
+    case OP_NE:
+    case OP_LT:
+    case OP_LE:
+    case OP_GT:
+    case OP_GE:
+        evaluateComparison(expr, iExpr);
+        break;
+    case OP_CASE:
+        evaluateCase(expr, iExpr);
+        break;
+    default:
+        evaluateLogical(expr, iExpr);
+        break;
+    }
+}
+
+void BatchCalculator::evaluateArithmetic(Expr const &expr, uint iExpr)
+{
+    uint iLeft = expr.operands[0];
+    uint iRight = expr.operands[expr.operands.size() - 1];
+    uint8_t *nulls = getNulls(iExpr);
+    uint8_t const *leftNulls = getNulls(iLeft);
+    uint8_t const *rightNulls = getNulls(iRight);
+    for (uint i = 0; i < nRows; ++i) {
+        nulls[i] = leftNulls[i] | rightNulls[i];
+    }
+
+    if (isApprox(expr.type)) {
+        double *r = getApprox(iExpr);
+        double const *a = getApproxOperand(iLeft, 0);
+        double const *b = getApproxOperand(iRight, 1);
+        switch (expr.op) {
+        case OP_ADD:
+            for (uint i = 0; i < nRows; ++i) {
+                r[i] = a[i] + b[i];
+            }
+            break;
+        case OP_SUB:
+            for (uint i = 0; i < nRows; ++i) {
+                r[i] = a[i] - b[i];
+            }
+            break;
+        case OP_MUL:
+            for (uint i = 0; i < nRows; ++i) {
+                r[i] = a[i] * b[i];
+            }
+            break;
+        case OP_NEG:
+            for (uint i = 0; i < nRows; ++i) {
+                r[i] = -a[i];
+            }
+            break;
+        default:
+            for (uint i = 0; i < nRows; ++i) {
+                r[i] = a[i];
+            }
+            break;
+        }
+        roundReal(iExpr);
+        return;
+    }
+
+    // Exact arithmetic is done in 64 bits with wraparound; rows which
+    // overflowed are flagged, and so are rows whose result does not fit the
+    // narrower result type.
+    int64_t *r = getExact(iExpr);
+    int64_t const *a = getExact(iLeft);
+    int64_t const *b = getExact(iRight);
+    uint8_t *flags = &(scalarFlags[0]);
+    switch (expr.op) {
+    case OP_ADD:
+        for (uint i = 0; i < nRows; ++i) {
+            r[i] = static_cast<int64_t>(
+                static_cast<uint64_t>(a[i]) + static_cast<uint64_t>(b[i]));
+            flags[i] |= (((a[i] ^ r[i]) & (b[i] ^ r[i])) < 0) & !nulls[i];
+        }
+        break;
+    case OP_SUB:
+        for (uint i = 0; i < nRows; ++i) {
+            r[i] = static_cast<int64_t>(
+                static_cast<uint64_t>(a[i]) - static_cast<uint64_t>(b[i]));
+            flags[i] |= (((a[i] ^ b[i]) & (a[i] ^ r[i])) < 0) & !nulls[i];
+        }
+        break;
+    case OP_MUL:
+        for (uint i = 0; i < nRows; ++i) {
+            int64_t x = a[i];
+            int64_t y = b[i];
+            r[i] = static_cast<int64_t>(
+                static_cast<uint64_t>(x) * static_cast<uint64_t>(y));
+            bool overflow =
+                (x != 0)
+                && (((x == -1) && (y == BIGINT_MIN)) || (r[i] / x != y));
+            flags[i] |= overflow & !nulls[i];
+        }
+        break;
+    case OP_NEG:
+        for (uint i = 0; i < nRows; ++i) {
+            r[i] = static_cast<int64_t>(0 - static_cast<uint64_t>(a[i]));
+            flags[i] |= (a[i] == BIGINT_MIN) & !nulls[i];
+        }
+        break;
+    default:
+        for (uint i = 0; i < nRows; ++i) {
+            r[i] = a[i];
+        }
+        break;
+    }
+    flagOutOfRange(iExpr);
+}
+
+void BatchCalculator::evaluateComparison(Expr const &expr, uint iExpr)
+{
+    uint iLeft = expr.operands[0];
+    uint iRight = expr.operands[1];
+    int64_t *r = getExact(iExpr);
+    uint8_t *nulls = getNulls(iExpr);
+    uint8_t const *leftNulls = getNulls(iLeft);
+    uint8_t const *rightNulls = getNulls(iRight);
+    for (uint i = 0; i < nRows; ++i) {
+        nulls[i] = leftNulls[i] | rightNulls[i];
+    }
+
+#define BATCH_COMPARE(a, b) \
+    switch (expr.op) { \
+    case OP_EQ: \
+        for (uint i = 0; i < nRows; ++i) { r[i] = (a[i] == b[i]); } \
+        break; \
+    case OP_NE: \
+        for (uint i = 0; i < nRows; ++i) { r[i] = (a[i] != b[i]); } \
+        break; \
+    case OP_LT: \
+        for (uint i = 0; i < nRows; ++i) { r[i] = (a[i] < b[i]); } \
+        break; \
+    case OP_LE: \
+        for (uint i = 0; i < nRows; ++i) { r[i] = (a[i] <= b[i]); } \
+        break; \
+    case OP_GT: \
+        for (uint i = 0; i < nRows; ++i) { r[i] = (a[i] > b[i]); } \
+        break; \
+    default: \
+        for (uint i = 0; i < nRows; ++i) { r[i] = (a[i] >= b[i]); } \
+        break; \
+    }
+
+    if (isApprox(exprs[iLeft].type) || isApprox(exprs[iRight].type)) {
+        double const *a = getApproxOperand(iLeft, 0);
+        double const *b = getApproxOperand(iRight, 1);
+        BATCH_COMPARE(a, b);
+    } else {
+        int64_t const *a = getExact(iLeft);
+        int64_t const *b = getExact(iRight);
+        BATCH_COMPARE(a, b);
+    }
+
+#undef BATCH_COMPARE
+}
+
+void BatchCalculator::evaluateLogical(Expr const &expr, uint iExpr)
+{
+    int64_t *r = getExact(iExpr);
+    uint8_t *nulls = getNulls(iExpr);
+    int64_t const *a = getExact(expr.operands[0]);
+    uint8_t const *aNulls = getNulls(expr.operands[0]);
+    switch (expr.op) {
+    case OP_AND:
+        // false if any operand is false, otherwise null if any is null
+        for (uint i = 0; i < nRows; ++i) {
+            r[i] = 1;
+            nulls[i] = 0;
+        }
+        for (uint k = 0; k < expr.operands.size(); ++k) {
+            int64_t const *v = getExact(expr.operands[k]);
+            uint8_t const *n = getNulls(expr.operands[k]);
+            for (uint i = 0; i < nRows; ++i) {
+                r[i] &= n[i] | (v[i] != 0);
+                nulls[i] |= n[i];
+            }
+        }
+        for (uint i = 0; i < nRows; ++i) {
+            nulls[i] &= (r[i] != 0);
+        }
+        break;
+    case OP_OR:
+        // true if any operand is true, otherwise null if any is null
+        for (uint i = 0; i < nRows; ++i) {
+            r[i] = 0;
+            nulls[i] = 0;
+        }
+        for (uint k = 0; k < expr.operands.size(); ++k) {
+            int64_t const *v = getExact(expr.operands[k]);
+            uint8_t const *n = getNulls(expr.operands[k]);
+            for (uint i = 0; i < nRows; ++i) {
+                r[i] |= !n[i] & (v[i] != 0);
+                nulls[i] |= n[i];
+            }
+        }
+        for (uint i = 0; i < nRows; ++i) {
+            nulls[i] &= (r[i] == 0);
+        }
+        break;
+    case OP_NOT:
+        for (uint i = 0; i < nRows; ++i) {
+            r[i] = (a[i] == 0);
+            nulls[i] = aNulls[i];
+        }
+        break;
+    case OP_IS_NULL:
+    case OP_IS_NOT_NULL:
+        {
+            int64_t isNull = (expr.op == OP_IS_NULL);
+            for (uint i = 0; i < nRows; ++i) {
+                r[i] = (aNulls[i] != 0) == isNull;
+                nulls[i] = 0;
+            }
+        }
+        break;
+    default:
+        {
+            // IS [NOT] TRUE and IS [NOT] FALSE
+            bool value = (expr.op == OP_IS_TRUE || expr.op == OP_IS_NOT_TRUE);
+            bool negate =
+                (expr.op == OP_IS_NOT_TRUE || expr.op == OP_IS_NOT_FALSE);
+            for (uint i = 0; i < nRows; ++i) {
+                bool matches = !aNulls[i] && ((a[i] != 0) == value);
+                r[i] = (matches != negate);
+                nulls[i] = 0;
+            }
+        }
+        break;
+    }
+}
+
+void BatchCalculator::evaluateCase(Expr const &expr, uint iExpr)
+{
+    // operands are condition, value pairs followed by the ELSE value
+    uint nOperands = expr.operands.size();
+    assert(nOperands % 2 == 1);
+    bool approx = isApprox(expr.type);
+    int64_t *r = getExact(iExpr);
+    double *rApprox = getApprox(iExpr);
+    uint8_t *nulls = getNulls(iExpr);
+    for (uint i = 0; i < nRows; ++i) {
+        uint k = 0;
+        for (; k + 1 < nOperands; k += 2) {
+            uint offset = expr.operands[k] * capacity + i;
+            if (!nullFlags[offset] && exactValues[offset]) {
+                break;
+            }
+        }
+        uint iValue = (k + 1 < nOperands) ? expr.operands[k + 1]
+            : expr.operands[nOperands - 1];
+        uint offset = iValue * capacity + i;
+        nulls[i] = nullFlags[offset];
+        if (!approx) {
+            r[i] = exactValues[offset];
+        } else if (isApprox(exprs[iValue].type)) {
+            rApprox[i] = approxValues[offset];
+        } else {
+            rApprox[i] = static_cast<double>(exactValues[offset]);
+        }
+    }
+    if (approx) {
+        roundReal(iExpr);
+    } else {
+        flagOutOfRange(iExpr);
+    }
+}
+
+FENNEL_END_CPPFILE("$Id$");
+
+// End BatchCalculator.cpp
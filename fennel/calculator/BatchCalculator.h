@@ -0,0 +1,285 @@
+/*
+// $Id$
+// Fennel is a library of data storage and processing components.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2005 SQLstream, Inc.
+// Copyright (C) 2009 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+#ifndef Fennel_BatchCalculator_Included
+#define Fennel_BatchCalculator_Included
+
+#include "fennel/tuple/TupleData.h"
+#include "fennel/tuple/TupleDescriptor.h"
+
+#include <vector>
+#include <string>
+
+FENNEL_BEGIN_NAMESPACE
+
+/**
+ * BatchCalculator evaluates a calculator program over a batch of rows at a
+ * time. Each expression of the program is evaluated for every row of the
+ * batch before the next expression is started, so that the interpretive
+ * overhead of dispatching on the operator is paid once per batch rather than
+ * once per row, and the inner loops are simple enough for the compiler to
+ * pipeline.
+ *
+ * <p>A batch program is generated by Farrago's BatchCalcTranslator from the
+ * same expressions as a scalar program, and carries the scalar program after
+ * it. Only exact integer, approximate numeric and boolean values are
+ * supported. Rather than reproduce the scalar calculator's error handling,
+ * the batch calculator marks any row which would overflow, fail a narrowing
+ * cast or assign null to a NOT NULL output as needing the scalar calculator;
+ * the caller runs the scalar program for such rows.
+ *
+ * @version $Id$
+ */
+class FENNEL_CALCULATOR_EXPORT BatchCalculator
+{
+public:
+    /**
+     * What the caller should do with a row once the batch has been evaluated.
+     */
+    enum RowStatus {
+        /**
+         * Row is rejected by the filter condition.
+         */
+        ROW_SKIP,
+
+        /**
+         * Row passes; read its output with getRow().
+         */
+        ROW_OUTPUT,
+
+        /**
+         * Row must be evaluated by the scalar calculator instead.
+         */
+        ROW_SCALAR
+    };
+
+private:
+    enum ValueType {
+        TYPE_TINYINT,
+        TYPE_SMALLINT,
+        TYPE_INTEGER,
+        TYPE_BIGINT,
+        TYPE_REAL,
+        TYPE_DOUBLE,
+        TYPE_BOOLEAN,
+        TYPE_OTHER
+    };
+
+    enum ExprKind {
+        EXPR_INPUT,
+        EXPR_LITERAL,
+        EXPR_CALL
+    };
+
+    enum Operator {
+        OP_ADD, OP_SUB, OP_MUL, OP_NEG, OP_POS,
+        OP_EQ, OP_NE, OP_LT, OP_LE, OP_GT, OP_GE,
+        OP_AND, OP_OR, OP_NOT,
+        OP_IS_NULL, OP_IS_NOT_NULL, OP_IS_TRUE, OP_IS_NOT_TRUE,
+        OP_IS_FALSE, OP_IS_NOT_FALSE,
+        OP_CASE, OP_CAST
+    };
+
+    struct Expr
+    {
+        ExprKind kind;
+        ValueType type;
+        Operator op;
+        uint iField;
+        std::vector<uint> operands;
+        bool literalNull;
+        int64_t literalExact;
+        double literalApprox;
+    };
+
+    /**
+     * Program expressions, in order of evaluation.
+     */
+    std::vector<Expr> exprs;
+
+    /**
+     * Ordinal of expression computing each output field.
+     */
+    std::vector<uint> projects;
+
+    /**
+     * Ordinal of the filter condition expression, or -1 if none.
+     */
+    int iCondition;
+
+    /**
+     * Maximum number of rows in a batch.
+     */
+    uint capacity;
+
+    /**
+     * Number of rows in the current batch.
+     */
+    uint nRows;
+
+    /**
+     * Exact and boolean values, capacity per expression.
+     */
+    std::vector<int64_t> exactValues;
+
+    /**
+     * Approximate values, capacity per expression.
+     */
+    std::vector<double> approxValues;
+
+    /**
+     * Null indicators, capacity per expression.
+     */
+    std::vector<uint8_t> nullFlags;
+
+    /**
+     * Per-row flag set when the row must be evaluated by the scalar
+     * calculator.
+     */
+    std::vector<uint8_t> scalarFlags;
+
+    /**
+     * Scratch space for approximate operands converted from exact ones.
+     */
+    std::vector<double> approxScratch;
+
+    /**
+     * Whether each output field is nullable.
+     */
+    std::vector<bool> outputNullable;
+
+    union OutputValue
+    {
+        int8_t i8;
+        int16_t i16;
+        int32_t i32;
+        int64_t i64;
+        float r;
+        double d;
+        bool b;
+    };
+
+    /**
+     * Storage for computed values of the output row being read.
+     */
+    std::vector<OutputValue> outputValues;
+
+    inline int64_t *getExact(uint iExpr);
+    inline double *getApprox(uint iExpr);
+    inline uint8_t *getNulls(uint iExpr);
+    inline bool isApprox(ValueType type) const;
+
+    double const *getApproxOperand(uint iExpr, uint iScratch);
+    void flagOutOfRange(uint iExpr);
+    void roundReal(uint iExpr);
+    void evaluate(uint iExpr);
+    void evaluateArithmetic(Expr const &expr, uint iExpr);
+    void evaluateComparison(Expr const &expr, uint iExpr);
+    void evaluateLogical(Expr const &expr, uint iExpr);
+    void evaluateCase(Expr const &expr, uint iExpr);
+
+    static ValueType parseType(std::string const &name);
+    static Operator parseOperator(std::string const &name);
+
+public:
+    /**
+     * Creates a BatchCalculator.
+     *
+     * @param capacity maximum number of rows in a batch
+     */
+    explicit BatchCalculator(uint capacity);
+
+    /**
+     * Tests whether a calculator program is a batch program.
+     *
+     * @param program program text
+     *
+     * @return true if program must be assembled by a BatchCalculator
+     */
+    static bool isBatchProgram(std::string const &program);
+
+    /**
+     * Reads the batch part of a batch program.
+     *
+     * @param program program text
+     *
+     * @return the scalar program which follows the batch part, to be
+     * assembled by a Calculator
+     */
+    std::string assemble(std::string const &program);
+
+    /**
+     * Prepares to produce output rows of a given shape.
+     *
+     * @param outputDesc descriptor of output rows
+     */
+    void bindOutput(TupleDescriptor const &outputDesc);
+
+    /**
+     * @return maximum number of rows in a batch
+     */
+    uint getCapacity() const
+    {
+        return capacity;
+    }
+
+    /**
+     * Discards the current batch.
+     */
+    void clear();
+
+    /**
+     * Adds a row to the current batch.
+     *
+     * @param inputData input row, which must remain valid until the batch
+     * has been read
+     */
+    void addRow(TupleData const &inputData);
+
+    /**
+     * Evaluates the program over every row of the current batch.
+     */
+    void exec();
+
+    /**
+     * Returns the status of a row of the evaluated batch.
+     *
+     * @param iRow 0-based row ordinal
+     */
+    RowStatus getRowStatus(uint iRow) const;
+
+    /**
+     * Reads an output row of the evaluated batch. The output data is only
+     * valid until the next call.
+     *
+     * @param iRow 0-based row ordinal of a row whose status is ROW_OUTPUT
+     * @param inputData the input row passed to addRow
+     * @param outputData receives the output row
+     */
+    void getRow(uint iRow, TupleData const &inputData, TupleData &outputData);
+};
+
+FENNEL_END_NAMESPACE
+
+#endif
+
+// End BatchCalculator.h
@@ -29,6 +29,11 @@
 
 FENNEL_BEGIN_CPPFILE("$Id$");
 
+/**
+ * Maximum number of rows evaluated together by a BatchCalculator.
+ */
+static const uint BATCH_CAPACITY = 1024;
+
 void CalcExecStream::prepare(CalcExecStreamParams const &params)
 {
     ConduitExecStream::prepare(params);
@@ -43,7 +48,15 @@ void CalcExecStream::prepare(CalcExecStreamParams const &params)
             pCalc->initTraceSource(getSharedTraceTarget(), "calc");
         }
 
-        pCalc->assemble(params.program.c_str());
+        std::string scalarProgram = params.program;
+        if (BatchCalculator::isBatchProgram(params.program)) {
+            pBatchCalc.reset(new BatchCalculator(BATCH_CAPACITY));
+            scalarProgram = pBatchCalc->assemble(params.program);
+        } else {
+            pBatchCalc.reset();
+        }
+
+        pCalc->assemble(scalarProgram.c_str());
 
         if (params.isFilter) {
             pFilterDatum = &((*(pCalc->getStatusRegister()))[0]);
@@ -100,6 +113,20 @@ void CalcExecStream::prepare(CalcExecStreamParams const &params)
         // bind calculator to tuple data (tuple data may later change)
         pCalc->bind(&inputData,&outputData);
 
+        if (pBatchCalc) {
+            batchInputAccessor.compute(
+                inputDesc, pInAccessor->getTupleFormat());
+            batchInputData.resize(pBatchCalc->getCapacity());
+            for (uint i = 0; i < batchInputData.size(); ++i) {
+                batchInputData[i].compute(inputDesc);
+            }
+            batchRowEnds.resize(pBatchCalc->getCapacity());
+            batchOutputData.compute(outputDesc);
+            pBatchCalc->bindOutput(outputDesc);
+        }
+        nBatchRows = 0;
+        iBatchRow = 0;
+
         // Set calculator to return immediately on exception as a
         // workaround.  Prevents indeterminate results from an instruction
         // that throws an exception from causing non-deterministic
@@ -121,6 +148,44 @@ void CalcExecStream::open(bool restart)
     if (pCalc != NULL) {
         pCalc->zeroStatusRegister();
     }
+
+    // Discard any batch in progress
+    if (pBatchCalc) {
+        pBatchCalc->clear();
+    }
+    nBatchRows = 0;
+    iBatchRow = 0;
+}
+
+bool CalcExecStream::calculateRow()
+{
+    try {
+        pCalc->exec();
+    } catch (FennelExcn e) {
+        FENNEL_TRACE(
+            TRACE_SEVERE,
+            "error executing calculator: " << e.getMessage());
+        throw e;
+    }
+    if (! pCalc->mWarnings.empty()) {
+        // calculator failed to produce a row
+        // REVIEW: Do we need to distinguish errors from warnings here?
+        // TODO: notify scheduler (interface TBD)
+        //  which can warn user or produce other side effects.
+        FENNEL_TRACE(
+            TRACE_WARNING, "calculator error " << pCalc->warnings());
+        if (stopOnCalcError) {
+            throw CalcExcn(pCalc->warnings(), inputDesc, inputData);
+        }
+        return false;
+    } else if (pFilterDatum) {
+        bool filterDiscard =
+            *reinterpret_cast<bool const *>(pFilterDatum->pData);
+        if (filterDiscard) {
+            return false;
+        }
+    }
+    return true;
 }
 
 ExecStreamResult CalcExecStream::execute(ExecStreamQuantum const &quantum)
@@ -130,6 +195,10 @@ ExecStreamResult CalcExecStream::execute(ExecStreamQuantum const &quantum)
         return rc;
     }
 
+    if (pBatchCalc) {
+        return executeBatch(quantum);
+    }
+
 #define TRACE_RETURN \
     FENNEL_TRACE(TRACE_FINE, "read " << nRead << " rows, wrote " << nWritten)
 
@@ -145,33 +214,7 @@ ExecStreamResult CalcExecStream::execute(ExecStreamQuantum const &quantum)
 
             FENNEL_TRACE(TRACE_FINER, "input row " << nRead);
             pInAccessor->unmarshalTuple(inputData);
-            try {
-                pCalc->exec();
-            } catch (FennelExcn e) {
-                FENNEL_TRACE(
-                    TRACE_SEVERE,
-                    "error executing calculator: " << e.getMessage());
-                throw e;
-            }
-            bool skip = false;
-            if (! pCalc->mWarnings.empty()) {
-                // calculator failed to produce a row
-                // REVIEW: Do we need to distinguish errors from warnings here?
-                // TODO: notify scheduler (interface TBD)
-                //  which can warn user or produce other side effects.
-                FENNEL_TRACE(
-                    TRACE_WARNING, "calculator error " << pCalc->warnings());
-                if (stopOnCalcError) {
-                    throw CalcExcn(pCalc->warnings(), inputDesc, inputData);
-                }
-                skip = true;
-            } else if (pFilterDatum) {
-                bool filterDiscard =
-                    *reinterpret_cast<bool const *>(pFilterDatum->pData);
-                if (filterDiscard) {
-                    skip = true;
-                }
-            }
+            bool skip = !calculateRow();
             if (skip) {
                 FENNEL_TRACE(TRACE_FINER, "skip row " << nRead);
                 pInAccessor->consumeTuple();
@@ -197,6 +240,83 @@ ExecStreamResult CalcExecStream::execute(ExecStreamQuantum const &quantum)
 #undef TRACE_RETURN
 }
 
+ExecStreamResult CalcExecStream::executeBatch(
+    ExecStreamQuantum const &quantum)
+{
+#define TRACE_RETURN \
+    FENNEL_TRACE(TRACE_FINE, "read " << nRead << " rows, wrote " << nWritten)
+
+    uint nRead = 0;
+    uint nWritten = 0;
+    while (nRead < quantum.nTuplesMax) {
+        if (iBatchRow == nBatchRows) {
+            // Evaluate the next batch from the rows available in the input
+            // buffer.  They are not consumed until each has been processed,
+            // so that they stay put, and so that a batch can be resumed after
+            // the output buffer overflows.
+            if (!pInAccessor->demandData()) {
+                TRACE_RETURN;
+                return EXECRC_BUF_UNDERFLOW;
+            }
+            PConstBuffer pRow = pInAccessor->getConsumptionStart();
+            PConstBuffer pEnd = pInAccessor->getConsumptionEnd();
+            pBatchCalc->clear();
+            nBatchRows = 0;
+            while (pRow < pEnd && nBatchRows < pBatchCalc->getCapacity()) {
+                batchInputAccessor.setCurrentTupleBuf(pRow);
+                batchInputAccessor.unmarshal(batchInputData[nBatchRows]);
+                pRow += batchInputAccessor.getCurrentByteCount();
+                batchRowEnds[nBatchRows] = pRow;
+                pBatchCalc->addRow(batchInputData[nBatchRows]);
+                ++nBatchRows;
+            }
+            batchInputAccessor.resetCurrentTupleBuf();
+            FENNEL_TRACE(TRACE_FINER, "batch of " << nBatchRows << " rows");
+            pBatchCalc->exec();
+            iBatchRow = 0;
+        }
+
+        while (iBatchRow < nBatchRows && nRead < quantum.nTuplesMax) {
+            TupleData const &rowData = batchInputData[iBatchRow];
+            TupleData *pOutputData = &batchOutputData;
+            bool skip = false;
+            switch (pBatchCalc->getRowStatus(iBatchRow)) {
+            case BatchCalculator::ROW_SKIP:
+                skip = true;
+                break;
+            case BatchCalculator::ROW_OUTPUT:
+                pBatchCalc->getRow(iBatchRow, rowData, batchOutputData);
+                break;
+            case BatchCalculator::ROW_SCALAR:
+                // let the scalar calculator compute the row, and raise any
+                // errors exactly as it would have without batching
+                for (uint i = 0; i < inputData.size(); ++i) {
+                    inputData[i] = rowData[i];
+                }
+                skip = !calculateRow();
+                pOutputData = &outputData;
+                break;
+            }
+            if (!skip) {
+                PConstBuffer bufferEnd = pOutAccessor->getConsumptionEnd();
+                if (!pOutAccessor->produceTuple(*pOutputData)) {
+                    TRACE_RETURN;
+                    return EXECRC_BUF_OVERFLOW;
+                }
+                lastInBuffer = bufferEnd;
+                ++nWritten;
+            }
+            pInAccessor->consumeData(batchRowEnds[iBatchRow]);
+            ++iBatchRow;
+            ++nRead;
+        }
+    }
+    TRACE_RETURN;
+    return EXECRC_QUANTUM_EXPIRED;
+
+#undef TRACE_RETURN
+}
+
 FENNEL_END_CPPFILE("$Id$");
 
 // End CalcExecStream.cpp
@@ -26,9 +26,12 @@
 
 #include "fennel/exec/ConduitExecStream.h"
 #include "fennel/calculator/CalcCommon.h"
+#include "fennel/calculator/BatchCalculator.h"
 #include "fennel/tuple/TupleAccessor.h"
 #include "fennel/tuple/TupleData.h"
 
+#include <boost/scoped_ptr.hpp>
+
 FENNEL_BEGIN_NAMESPACE
 
 /**
@@ -76,6 +79,42 @@ class FENNEL_CALCULATOR_EXPORT CalcExecStream
      */
     SharedCalculator pCalc;
 
+    /**
+     * If the program is a batch program, the BatchCalculator which evaluates
+     * it; pCalc then only evaluates rows which the batch calculator cannot.
+     */
+    boost::scoped_ptr<BatchCalculator> pBatchCalc;
+
+    /**
+     * Accessor for walking the input rows of a batch in place.
+     */
+    TupleAccessor batchInputAccessor;
+
+    /**
+     * Input rows of the current batch, which point into the input buffer;
+     * the rows are not consumed until they have been processed.
+     */
+    std::vector<TupleData> batchInputData;
+
+    /**
+     * End of each input row of the current batch in the input buffer.
+     */
+    std::vector<PConstBuffer> batchRowEnds;
+
+    /**
+     * TupleData for output rows computed by the batch calculator.
+     */
+    TupleData batchOutputData;
+
+    /**
+     * Number of rows in the current batch.
+     */
+    uint nBatchRows;
+
+    /**
+     * Ordinal of the next row of the current batch to be processed.
+     */
+    uint iBatchRow;
 
     /**
      * If this stream filters tuples, pFilterDatum refers to the boolean
@@ -96,6 +135,19 @@ protected:
      */
     PConstBuffer lastInBuffer;
 
+    /**
+     * Runs the scalar calculator on the current contents of inputData.
+     *
+     * @return whether the row should be output, as opposed to being
+     * filtered out or skipped because of a calculator error
+     */
+    bool calculateRow();
+
+    /**
+     * Implements execute() for batch programs.
+     */
+    ExecStreamResult executeBatch(ExecStreamQuantum const &quantum);
+
 public:
     virtual void prepare(CalcExecStreamParams const &params);
     virtual void open(bool restart);
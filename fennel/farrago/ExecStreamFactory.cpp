@@ -199,6 +199,16 @@ void ExecStreamFactory::readLcsRowScanStreamParams(
     CmdInterpreter::readTupleProjection(
         params.residualFilterCols,
         streamDef.getResidualFilterColumns());
+
+    params.runtimeFilterParamId =
+        readDynamicParamId(streamDef.getRuntimeFilterParamId());
+    if (opaqueToInt(params.runtimeFilterParamId) > 0) {
+        CmdInterpreter::readTupleProjection(
+            params.runtimeFilterKeyProj,
+            streamDef.getRuntimeFilterKeyProj());
+    }
+
+    params.startRid = LcsRid(streamDef.getStartRid());
 }
 
 void ExecStreamFactory::visit(ProxyBufferingTupleStreamDef &streamDef)
@@ -598,9 +608,23 @@ void ExecStreamFactory::visit(ProxyFlatFileTupleStreamDef &streamDef)
     FlatFileExecStreamParams params;
     readTupleStreamParams(params, streamDef);
 
-    assert(streamDef.getDataFilePath().size() > 0);
-    params.dataFilePath = streamDef.getDataFilePath();
+    // several data files are separated by newlines; there may be none
+    // when a pattern matches no files
+    std::string dataFilePaths = streamDef.getDataFilePath();
+    std::string::size_type start = 0;
+    while (start < dataFilePaths.size()) {
+        std::string::size_type end = dataFilePaths.find('\n', start);
+        if (end == std::string::npos) {
+            end = dataFilePaths.size();
+        }
+        if (end > start) {
+            params.dataFilePaths.push_back(
+                dataFilePaths.substr(start, end - start));
+        }
+        start = end + 1;
+    }
     params.errorFilePath = streamDef.getErrorFilePath();
+    params.manifestFilePath = streamDef.getManifestFilePath();
     params.fieldDelim = readCharParam(streamDef.getFieldDelimiter());
     params.rowDelim = readCharParam(streamDef.getRowDelimiter());
     params.quoteChar = readCharParam(streamDef.getQuoteCharacter());
@@ -609,6 +633,8 @@ void ExecStreamFactory::visit(ProxyFlatFileTupleStreamDef &streamDef)
     params.lenient = streamDef.isLenient();
     params.trim = streamDef.isTrim();
     params.mapped = streamDef.isMapped();
+    params.parallelism = streamDef.getParallelism();
+    params.preserveOrder = streamDef.isPreserveOrder();
     readColumnList(streamDef, params.columnNames);
 
     params.numRowsScan = streamDef.getNumRowsScan();
@@ -675,6 +701,9 @@ void ExecStreamFactory::visit(ProxyLhxJoinStreamDef &streamDef)
     params.cndKeys = streamDef.getCndBuildKeys();
     params.numRows = streamDef.getNumBuildRows();
 
+    params.runtimeFilterParamId =
+        readDynamicParamId(streamDef.getRuntimeFilterParamId());
+
     embryo.init(new LhxJoinExecStream(), params);
 }
 
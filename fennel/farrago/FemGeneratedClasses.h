@@ -880,10 +880,16 @@ bool isHasHeader();
 static jmethodID meth_isHasHeader;
 bool isLenient();
 static jmethodID meth_isLenient;
+std::string getManifestFilePath();
+static jmethodID meth_getManifestFilePath;
 bool isMapped();
 static jmethodID meth_isMapped;
 int32_t getNumRowsScan();
 static jmethodID meth_getNumRowsScan;
+int32_t getParallelism();
+static jmethodID meth_getParallelism;
+bool isPreserveOrder();
+static jmethodID meth_isPreserveOrder;
 std::string getQuoteCharacter();
 static jmethodID meth_getQuoteCharacter;
 std::string getRowDelimiter();
@@ -1042,6 +1048,10 @@ SharedProxyTupleProjection getOutputProj();
 static jmethodID meth_getOutputProj;
 SharedProxyTupleProjection getResidualFilterColumns();
 static jmethodID meth_getResidualFilterColumns;
+SharedProxyTupleProjection getRuntimeFilterKeyProj();
+static jmethodID meth_getRuntimeFilterKeyProj;
+int32_t getRuntimeFilterParamId();
+static jmethodID meth_getRuntimeFilterParamId;
 int32_t getSamplingClumps();
 static jmethodID meth_getSamplingClumps;
 TableSamplingMode getSamplingMode();
@@ -1054,6 +1064,8 @@ bool isSamplingRepeatable();
 static jmethodID meth_isSamplingRepeatable;
 int64_t getSamplingRowCount();
 static jmethodID meth_getSamplingRowCount;
+int64_t getStartRid();
+static jmethodID meth_getStartRid;
 };
 
 class FENNEL_FARRAGO_EXPORT ProxyLbmGeneratorStreamDef
@@ -1194,6 +1206,8 @@ SharedProxyTupleProjection getRightKeyProj();
 static jmethodID meth_getRightKeyProj;
 bool isRightOuter();
 static jmethodID meth_isRightOuter;
+int32_t getRuntimeFilterParamId();
+static jmethodID meth_getRuntimeFilterParamId;
 bool isSetopAll();
 static jmethodID meth_isSetopAll;
 bool isSetopDistinct();
@@ -92,8 +92,11 @@ jmethodID ProxyFlatFileTupleStreamDef::meth_getEscapeCharacter = 0;
 jmethodID ProxyFlatFileTupleStreamDef::meth_getFieldDelimiter = 0;
 jmethodID ProxyFlatFileTupleStreamDef::meth_isHasHeader = 0;
 jmethodID ProxyFlatFileTupleStreamDef::meth_isLenient = 0;
+jmethodID ProxyFlatFileTupleStreamDef::meth_getManifestFilePath = 0;
 jmethodID ProxyFlatFileTupleStreamDef::meth_isMapped = 0;
 jmethodID ProxyFlatFileTupleStreamDef::meth_getNumRowsScan = 0;
+jmethodID ProxyFlatFileTupleStreamDef::meth_getParallelism = 0;
+jmethodID ProxyFlatFileTupleStreamDef::meth_isPreserveOrder = 0;
 jmethodID ProxyFlatFileTupleStreamDef::meth_getQuoteCharacter = 0;
 jmethodID ProxyFlatFileTupleStreamDef::meth_getRowDelimiter = 0;
 jmethodID ProxyFlatFileTupleStreamDef::meth_getSubstituteCharacter = 0;
@@ -155,12 +158,15 @@ jmethodID ProxyLcsRowScanStreamDef::meth_isFullScan = 0;
 jmethodID ProxyLcsRowScanStreamDef::meth_isHasExtraFilter = 0;
 jmethodID ProxyLcsRowScanStreamDef::meth_getOutputProj = 0;
 jmethodID ProxyLcsRowScanStreamDef::meth_getResidualFilterColumns = 0;
+jmethodID ProxyLcsRowScanStreamDef::meth_getRuntimeFilterKeyProj = 0;
+jmethodID ProxyLcsRowScanStreamDef::meth_getRuntimeFilterParamId = 0;
 jmethodID ProxyLcsRowScanStreamDef::meth_getSamplingClumps = 0;
 jmethodID ProxyLcsRowScanStreamDef::meth_getSamplingMode = 0;
 jmethodID ProxyLcsRowScanStreamDef::meth_getSamplingRate = 0;
 jmethodID ProxyLcsRowScanStreamDef::meth_getSamplingRepeatableSeed = 0;
 jmethodID ProxyLcsRowScanStreamDef::meth_isSamplingRepeatable = 0;
 jmethodID ProxyLcsRowScanStreamDef::meth_getSamplingRowCount = 0;
+jmethodID ProxyLcsRowScanStreamDef::meth_getStartRid = 0;
 jmethodID ProxyLhxAggStreamDef::meth_getCndGroupByKeys = 0;
 jmethodID ProxyLhxAggStreamDef::meth_getNumRows = 0;
 jmethodID ProxyLhxJoinStreamDef::meth_getCndBuildKeys = 0;
@@ -172,6 +178,7 @@ jmethodID ProxyLhxJoinStreamDef::meth_getNumBuildRows = 0;
 jmethodID ProxyLhxJoinStreamDef::meth_isRightInner = 0;
 jmethodID ProxyLhxJoinStreamDef::meth_getRightKeyProj = 0;
 jmethodID ProxyLhxJoinStreamDef::meth_isRightOuter = 0;
+jmethodID ProxyLhxJoinStreamDef::meth_getRuntimeFilterParamId = 0;
 jmethodID ProxyLhxJoinStreamDef::meth_isSetopAll = 0;
 jmethodID ProxyLhxJoinStreamDef::meth_isSetopDistinct = 0;
 jmethodID ProxyMergeStreamDef::meth_isPrePullInputs = 0;
@@ -471,8 +478,11 @@ ProxyFlatFileTupleStreamDef::meth_getEscapeCharacter = pEnv->GetMethodID(jClass,
 ProxyFlatFileTupleStreamDef::meth_getFieldDelimiter = pEnv->GetMethodID(jClass,"getFieldDelimiter","()Ljava/lang/String;");
 ProxyFlatFileTupleStreamDef::meth_isHasHeader = pEnv->GetMethodID(jClass,"isHasHeader","()Z");
 ProxyFlatFileTupleStreamDef::meth_isLenient = pEnv->GetMethodID(jClass,"isLenient","()Z");
+ProxyFlatFileTupleStreamDef::meth_getManifestFilePath = pEnv->GetMethodID(jClass,"getManifestFilePath","()Ljava/lang/String;");
 ProxyFlatFileTupleStreamDef::meth_isMapped = pEnv->GetMethodID(jClass,"isMapped","()Z");
 ProxyFlatFileTupleStreamDef::meth_getNumRowsScan = pEnv->GetMethodID(jClass,"getNumRowsScan","()I");
+ProxyFlatFileTupleStreamDef::meth_getParallelism = pEnv->GetMethodID(jClass,"getParallelism","()I");
+ProxyFlatFileTupleStreamDef::meth_isPreserveOrder = pEnv->GetMethodID(jClass,"isPreserveOrder","()Z");
 ProxyFlatFileTupleStreamDef::meth_getQuoteCharacter = pEnv->GetMethodID(jClass,"getQuoteCharacter","()Ljava/lang/String;");
 ProxyFlatFileTupleStreamDef::meth_getRowDelimiter = pEnv->GetMethodID(jClass,"getRowDelimiter","()Ljava/lang/String;");
 ProxyFlatFileTupleStreamDef::meth_getSubstituteCharacter = pEnv->GetMethodID(jClass,"getSubstituteCharacter","()Ljava/lang/String;");
@@ -618,12 +628,15 @@ ProxyLcsRowScanStreamDef::meth_isFullScan = pEnv->GetMethodID(jClass,"isFullScan
 ProxyLcsRowScanStreamDef::meth_isHasExtraFilter = pEnv->GetMethodID(jClass,"isHasExtraFilter","()Z");
 ProxyLcsRowScanStreamDef::meth_getOutputProj = pEnv->GetMethodID(jClass,"getOutputProj","()Lnet/sf/farrago/fem/fennel/FemTupleProjection;");
 ProxyLcsRowScanStreamDef::meth_getResidualFilterColumns = pEnv->GetMethodID(jClass,"getResidualFilterColumns","()Lnet/sf/farrago/fem/fennel/FemTupleProjection;");
+ProxyLcsRowScanStreamDef::meth_getRuntimeFilterKeyProj = pEnv->GetMethodID(jClass,"getRuntimeFilterKeyProj","()Lnet/sf/farrago/fem/fennel/FemTupleProjection;");
+ProxyLcsRowScanStreamDef::meth_getRuntimeFilterParamId = pEnv->GetMethodID(jClass,"getRuntimeFilterParamId","()I");
 ProxyLcsRowScanStreamDef::meth_getSamplingClumps = pEnv->GetMethodID(jClass,"getSamplingClumps","()I");
 ProxyLcsRowScanStreamDef::meth_getSamplingMode = pEnv->GetMethodID(jClass,"getSamplingMode","()Lnet/sf/farrago/fem/fennel/TableSamplingMode;");
 ProxyLcsRowScanStreamDef::meth_getSamplingRate = pEnv->GetMethodID(jClass,"getSamplingRate","()F");
 ProxyLcsRowScanStreamDef::meth_getSamplingRepeatableSeed = pEnv->GetMethodID(jClass,"getSamplingRepeatableSeed","()I");
 ProxyLcsRowScanStreamDef::meth_isSamplingRepeatable = pEnv->GetMethodID(jClass,"isSamplingRepeatable","()Z");
 ProxyLcsRowScanStreamDef::meth_getSamplingRowCount = pEnv->GetMethodID(jClass,"getSamplingRowCount","()J");
+ProxyLcsRowScanStreamDef::meth_getStartRid = pEnv->GetMethodID(jClass,"getStartRid","()J");
 
 jClass = pEnv->FindClass("net/sf/farrago/fem/fennel/FemLhxAggStreamDef");
 visitTbl.addMethod(jClass,JniProxyVisitTable<FemVisitor>::SharedVisitorMethod(new JniProxyVisitTable<FemVisitor>::VisitorMethodImpl<ProxyLhxAggStreamDef>));
@@ -641,6 +654,7 @@ ProxyLhxJoinStreamDef::meth_getNumBuildRows = pEnv->GetMethodID(jClass,"getNumBu
 ProxyLhxJoinStreamDef::meth_isRightInner = pEnv->GetMethodID(jClass,"isRightInner","()Z");
 ProxyLhxJoinStreamDef::meth_getRightKeyProj = pEnv->GetMethodID(jClass,"getRightKeyProj","()Lnet/sf/farrago/fem/fennel/FemTupleProjection;");
 ProxyLhxJoinStreamDef::meth_isRightOuter = pEnv->GetMethodID(jClass,"isRightOuter","()Z");
+ProxyLhxJoinStreamDef::meth_getRuntimeFilterParamId = pEnv->GetMethodID(jClass,"getRuntimeFilterParamId","()I");
 ProxyLhxJoinStreamDef::meth_isSetopAll = pEnv->GetMethodID(jClass,"isSetopAll","()Z");
 ProxyLhxJoinStreamDef::meth_isSetopDistinct = pEnv->GetMethodID(jClass,"isSetopDistinct","()Z");
 
@@ -1386,6 +1400,11 @@ bool ProxyFlatFileTupleStreamDef::isLenient()
 return pEnv->CallBooleanMethod(jObject,meth_isLenient);
 }
 
+std::string ProxyFlatFileTupleStreamDef::getManifestFilePath()
+{
+return constructString(pEnv->CallObjectMethod(jObject,meth_getManifestFilePath));
+}
+
 bool ProxyFlatFileTupleStreamDef::isMapped()
 {
 return pEnv->CallBooleanMethod(jObject,meth_isMapped);
@@ -1396,6 +1415,16 @@ int32_t ProxyFlatFileTupleStreamDef::getNumRowsScan()
 return pEnv->CallIntMethod(jObject,meth_getNumRowsScan);
 }
 
+int32_t ProxyFlatFileTupleStreamDef::getParallelism()
+{
+return pEnv->CallIntMethod(jObject,meth_getParallelism);
+}
+
+bool ProxyFlatFileTupleStreamDef::isPreserveOrder()
+{
+return pEnv->CallBooleanMethod(jObject,meth_isPreserveOrder);
+}
+
 std::string ProxyFlatFileTupleStreamDef::getQuoteCharacter()
 {
 return constructString(pEnv->CallObjectMethod(jObject,meth_getQuoteCharacter));
@@ -1782,6 +1811,20 @@ if (!p->jObject) p.reset();
 return p;
 }
 
+SharedProxyTupleProjection ProxyLcsRowScanStreamDef::getRuntimeFilterKeyProj()
+{
+SharedProxyTupleProjection p;
+p->pEnv = pEnv;
+p->jObject = pEnv->CallObjectMethod(jObject,meth_getRuntimeFilterKeyProj);
+if (!p->jObject) p.reset();
+return p;
+}
+
+int32_t ProxyLcsRowScanStreamDef::getRuntimeFilterParamId()
+{
+return pEnv->CallIntMethod(jObject,meth_getRuntimeFilterParamId);
+}
+
 int32_t ProxyLcsRowScanStreamDef::getSamplingClumps()
 {
 return pEnv->CallIntMethod(jObject,meth_getSamplingClumps);
@@ -1813,6 +1856,11 @@ int64_t ProxyLcsRowScanStreamDef::getSamplingRowCount()
 return pEnv->CallLongMethod(jObject,meth_getSamplingRowCount);
 }
 
+int64_t ProxyLcsRowScanStreamDef::getStartRid()
+{
+return pEnv->CallLongMethod(jObject,meth_getStartRid);
+}
+
 int64_t ProxyLhxAggStreamDef::getCndGroupByKeys()
 {
 return pEnv->CallLongMethod(jObject,meth_getCndGroupByKeys);
@@ -1880,6 +1928,11 @@ bool ProxyLhxJoinStreamDef::isRightOuter()
 return pEnv->CallBooleanMethod(jObject,meth_isRightOuter);
 }
 
+int32_t ProxyLhxJoinStreamDef::getRuntimeFilterParamId()
+{
+return pEnv->CallIntMethod(jObject,meth_getRuntimeFilterParamId);
+}
+
 bool ProxyLhxJoinStreamDef::isSetopAll()
 {
 return pEnv->CallBooleanMethod(jObject,meth_isSetopAll);
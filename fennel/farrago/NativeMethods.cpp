@@ -142,6 +142,38 @@ Java_net_sf_farrago_fennel_FennelStorage_tupleStreamFetch(
     }
 }
 
+extern "C" JNIEXPORT jint JNICALL
+Java_net_sf_farrago_fennel_FennelStorage_tupleStreamFetchDirect(
+    JNIEnv *pEnvInit, jclass, jlong hStream, jobject byteBuffer)
+{
+    JniEnvRef pEnv(pEnvInit);
+    try {
+        ExecStream &stream =
+            CmdInterpreter::getExecStreamFromLong(hStream);
+        ExecStreamScheduler *scheduler = stream.getGraph().getScheduler();
+        assert(scheduler);
+        ExecStreamBufAccessor &bufAccessor = scheduler->readStream(stream);
+        if (bufAccessor.getState() == EXECBUF_EOS) {
+            return 0;
+        }
+        assert(bufAccessor.isConsumptionPossible());
+        PBuffer pDest =
+            static_cast<PBuffer>(pEnv->GetDirectBufferAddress(byteBuffer));
+        assert(pDest);
+        uint cbLimit = uint(pEnv->GetDirectBufferCapacity(byteBuffer));
+        uint cbActual = bufAccessor.getConsumptionAvailableBounded(cbLimit);
+        assert(cbActual);
+        PConstBuffer pBuffer = bufAccessor.getConsumptionStart();
+        assert(cbLimit >= cbActual);
+        memcpy(pDest, pBuffer, cbActual);
+        bufAccessor.consumeData(pBuffer + cbActual);
+        return cbActual;
+    } catch (std::exception &ex) {
+        pEnv.handleExcn(ex);
+        return 0;
+    }
+}
+
 extern "C" JNIEXPORT jint JNICALL
 Java_net_sf_farrago_fennel_FennelStorage_tupleStreamTransformFetch(
     JNIEnv *pEnvInit, jclass, jlong hStream, jint inputOrdinal,
@@ -85,6 +85,14 @@ JNIEXPORT void JNICALL Java_net_sf_farrago_fennel_FennelStorage_tupleStreamGraph
 JNIEXPORT jint JNICALL Java_net_sf_farrago_fennel_FennelStorage_tupleStreamFetch
   (JNIEnv *, jclass, jlong, jbyteArray);
 
+/*
+ * Class:     net_sf_farrago_fennel_FennelStorage
+ * Method:    tupleStreamFetchDirect
+ * Signature: (JLjava/nio/ByteBuffer;)I
+ */
+JNIEXPORT jint JNICALL Java_net_sf_farrago_fennel_FennelStorage_tupleStreamFetchDirect
+  (JNIEnv *, jclass, jlong, jobject);
+
 /*
  * Class:     net_sf_farrago_fennel_FennelStorage
  * Method:    tupleStreamTransformFetch
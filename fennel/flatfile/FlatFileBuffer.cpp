@@ -148,6 +148,11 @@ void FlatFileBuffer::setReadPtr(char *ptr)
     pCurrent = ptr;
 }
 
+FileSize FlatFileBuffer::getReadOffset()
+{
+    return filePosition - (getEndPtr() - getReadPtr());
+}
+
 FENNEL_END_CPPFILE("$Id$");
 
 // End FlatFileBuffer.cpp
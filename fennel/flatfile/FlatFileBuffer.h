@@ -154,6 +154,11 @@ public:
      * Consumes buffer contents up to pointer
      */
     void setReadPtr(char *ptr);
+
+    /**
+     * Returns the offset into the file of the current read pointer
+     */
+    FileSize getReadOffset();
 };
 
 FENNEL_END_NAMESPACE
@@ -55,10 +55,12 @@ struct FlatFileExecStreamParams : public SingleOutputExecStreamParams
     // TODO: Codepage support
 
     /**
-     * Path to the flat file containing tuples to be read. This path follows
-     * conventions of the operating system.
+     * Paths to the flat files containing tuples to be read. These paths
+     * follow conventions of the operating system. The files are read as
+     * one, in this order, unless they are read in parallel without
+     * preserving order. If there are several, each has its own header.
      */
-    std::string dataFilePath;
+    std::vector<std::string> dataFilePaths;
 
     /**
      * Path to the error log used for writing errors encountered while
@@ -67,6 +69,15 @@ struct FlatFileExecStreamParams : public SingleOutputExecStreamParams
      */
     std::string errorFilePath;
 
+    /**
+     * Path to a manifest to which the size and modification time of the
+     * data files are appended once they have all been read. Farrago passes
+     * a pending manifest, which it only adds to the table's manifest when
+     * the transaction commits. If this value is empty, then no manifest is
+     * kept.
+     */
+    std::string manifestFilePath;
+
     /**
      * Delimiter used to separate fields in a row. This value is typically
      * ',' (comma) or '\\t' (tab) or zero, which signifies no delimiter.
@@ -154,9 +165,26 @@ struct FlatFileExecStreamParams : public SingleOutputExecStreamParams
      */
     std::vector<std::string> columnNames;
 
+    /**
+     * Number of threads used to parse a file. If greater than one, the file
+     * is memory mapped and split into chunks at row boundaries, which are
+     * parsed concurrently. Only applies to queries, not to describe or
+     * sample scans.
+     */
+    uint parallelism;
+
+    /**
+     * Whether a parallel scan must return rows in the order in which they
+     * appear in the file. Rows can only be returned out of order when the
+     * file is unquoted, since otherwise the row boundaries of a chunk are
+     * not known until the preceding chunk has been parsed.
+     */
+    bool preserveOrder;
+
     explicit FlatFileExecStreamParams()
     {
         errorFilePath = "";
+        manifestFilePath = "";
         fieldDelim = ',';
         rowDelim = '\n';
         quoteChar = '"';
@@ -164,6 +192,8 @@ struct FlatFileExecStreamParams : public SingleOutputExecStreamParams
         header = true;
         numRowsScan = 0;
         mode = FLATFILE_MODE_QUERY;
+        parallelism = 1;
+        preserveOrder = true;
     }
 };
 
@@ -29,6 +29,11 @@
 
 #include "fennel/flatfile/FlatFileExecStreamImpl.h"
 
+#include <sys/types.h>
+#include <sys/stat.h>
+#include <time.h>
+#include <fstream>
+
 FENNEL_BEGIN_CPPFILE("$Id$");
 
 FlatFileExecStream *FlatFileExecStream::newFlatFileExecStream()
@@ -46,11 +51,14 @@ void FlatFileExecStreamImpl::prepare(
     SingleOutputExecStream::prepare(params);
 
     header = params.header;
-    dataFilePath = params.dataFilePath;
+    dataFilePaths = params.dataFilePaths;
+    manifestFilePath = params.manifestFilePath;
     lenient = params.lenient;
     trim = params.trim;
     mapped = params.mapped;
     columnNames = params.columnNames;
+    parallelism = params.parallelism;
+    preserveOrder = params.preserveOrder;
 
     dataTuple.compute(pOutAccessor->getTupleDesc());
 
@@ -60,9 +68,6 @@ void FlatFileExecStreamImpl::prepare(
     mode = params.mode;
     rowDesc = readTupleDescriptor(pOutAccessor->getTupleDesc());
     rowDesc.setLenient(lenient);
-    pBuffer.reset(
-        new FlatFileBuffer(params.dataFilePath),
-        ClosableObjectDestructor());
     pParser.reset(
         new FlatFileParser(
             params.fieldDelim,
@@ -73,6 +78,21 @@ void FlatFileExecStreamImpl::prepare(
 
     numRowsScan = params.numRowsScan;
     textDesc = params.outputTupleDesc;
+
+    // only queries are parsed in parallel, since describe and sample
+    // scans only read the first few rows
+    if (parallelism > 1
+        && (mode == FLATFILE_MODE_QUERY || mode == FLATFILE_MODE_QUERY_TEXT)
+        && numRowsScan == 0
+        && FlatFileParallelScan::isSupported())
+    {
+        pParallelScan.reset(
+            new FlatFileParallelScan(
+                pParser,
+                trim,
+                parallelism,
+                preserveOrder));
+    }
 }
 
 void FlatFileExecStreamImpl::getResourceRequirements(
@@ -93,84 +113,139 @@ void FlatFileExecStreamImpl::open(bool restart)
 
     if (!restart) {
         bufferLock.allocatePage();
-        uint cbPageSize = bufferLock.getPage().getCache().getPageSize();
+        cbBufferStorage = bufferLock.getPage().getCache().getPageSize();
         pBufferStorage = bufferLock.getPage().getWritableData();
-        pBuffer->setStorage((char*)pBufferStorage, cbPageSize);
     }
-    pBuffer->open();
-    pBuffer->read();
-    next = pBuffer->getReadPtr();
     isRowPending = false;
     nRowsOutput = nRowErrors = 0;
     lastResult.reset();
+    cbRead = 0;
+    startTime = boost::posix_time::microsec_clock::universal_time();
+
+    // record the state of the files before any of them is read, so that
+    // a file changed while it is read is read again next time; the time at
+    // which the state was taken lets Farrago tell whether a file could have
+    // changed again within the second of its modification time
+    dataFileSizes.clear();
+    dataFileTimes.clear();
+    stateTime = ::time(NULL);
+    if (manifestFilePath.size() > 0) {
+        for (uint i = 0; i < dataFilePaths.size(); i++) {
+            struct stat fileStat;
+            if (::stat(dataFilePaths[i].c_str(), &fileStat)) {
+                throw FennelExcn(
+                    FennelResource::instance().readDataFailed(
+                        dataFilePaths[i]));
+            }
+            dataFileSizes.push_back(fileStat.st_size);
+            dataFileTimes.push_back(fileStat.st_mtime);
+        }
+    }
 
-    if (header) {
-        FlatFileRowDescriptor headerDesc;
-        for (uint i = 0; i < rowDesc.size(); i++) {
-            headerDesc.push_back(
-                FlatFileColumnDescriptor(
-                    FLAT_FILE_MAX_COLUMN_NAME_LEN));
+    // a parallel scan maps the files and parses the rows after their
+    // headers, which are still read through the buffer; rows are limited
+    // to the buffer size, as they are when they are read sequentially
+    pChunk = NULL;
+    done = dataFilePaths.empty();
+    if (pParallelScan) {
+        pParallelScan->close();
+        for (uint i = 0; i < dataFilePaths.size(); i++) {
+            openFile(i);
+            pParallelScan->addFile(
+                dataFilePath, pBuffer->getReadOffset(), rowDesc);
+            pBuffer->close();
         }
-        headerDesc.setLenient(lenient);
-        if (mapped) {
-            headerDesc.setUnbounded();
+        pParallelScan->open(cbBufferStorage);
+    } else if (!done) {
+        openFile(0);
+    }
+}
+
+void FlatFileExecStreamImpl::openFile(uint i)
+{
+    if (pBuffer) {
+        pBuffer->close();
+    }
+    iFile = i;
+    dataFilePath = dataFilePaths[i];
+    pBuffer.reset(
+        new FlatFileBuffer(dataFilePath),
+        ClosableObjectDestructor());
+    pBuffer->setStorage((char*)pBufferStorage, cbBufferStorage);
+    pBuffer->open();
+    pBuffer->read();
+    next = pBuffer->getReadPtr();
+    if (header) {
+        readHeader();
+    }
+}
+
+void FlatFileExecStreamImpl::readHeader()
+{
+    FlatFileRowDescriptor headerDesc;
+    for (uint i = 0; i < rowDesc.size(); i++) {
+        headerDesc.push_back(
+            FlatFileColumnDescriptor(
+                FLAT_FILE_MAX_COLUMN_NAME_LEN));
+    }
+    headerDesc.setLenient(lenient);
+    if (mapped) {
+        headerDesc.setUnbounded();
+    }
+    pParser->scanRow(
+        pBuffer->getReadPtr(), pBuffer->getSize(), headerDesc, lastResult);
+    pBuffer->setReadPtr(lastResult.next);
+    if (lastResult.status != FlatFileRowParseResult::NO_STATUS) {
+        logError(lastResult);
+        try {
+            checkRowDelimiter();
+        } catch (FennelExcn e) {
+            reason = e.getMessage();
         }
-        pParser->scanRow(
-            pBuffer->getReadPtr(), pBuffer->getSize(), headerDesc, lastResult);
-        pBuffer->setReadPtr(lastResult.next);
-        if (lastResult.status != FlatFileRowParseResult::NO_STATUS) {
-            logError(lastResult);
-            try {
-                checkRowDelimiter();
-            } catch (FennelExcn e) {
-                reason = e.getMessage();
-            }
+        throw FennelExcn(
+            FennelResource::instance().flatfileNoHeader(
+                dataFilePath, reason));
+    }
+
+    // Generate mapping from text file columns to output columns.
+    // Match names in the header with output field names. Names in
+    // the header are always trimmed. Each file has its own header, so
+    // the mapping may differ from file to file.
+    if (mapped) {
+        if (! lenient) {
             throw FennelExcn(
-                FennelResource::instance().flatfileNoHeader(
-                    dataFilePath, reason));
+                FennelResource::instance()
+                .flatfileMappedRequiresLenient());
         }
 
-        // Generate mapping from text file columns to output columns.
-        // Match names in the header with output field names. Names in
-        // the header are always trimmed.
-        if (mapped) {
-            if (! lenient) {
-                throw FennelExcn(
-                    FennelResource::instance()
-                    .flatfileMappedRequiresLenient());
-            }
+        pParser->stripQuoting(lastResult, true);
+        uint nFields = lastResult.getReadCount();
+        int found = 0;
 
-            pParser->stripQuoting(lastResult, true);
-            uint nFields = lastResult.getReadCount();
-            int found = 0;
-
-            VectorOfUint columnMap;
-            columnMap.resize(nFields);
-            for (uint i = 0; i < nFields; i++) {
-                char *n = lastResult.getColumn(i);
-                if (n == NULL) {
-                    columnMap[i] = MAXU;
-                } else {
-                    std::string name(
-                        n,
-                        lastResult.getColumnSize(i));
-                    columnMap[i] = findField(name);
-                    if (!isMAXU(columnMap[i])) {
-                        found++;
-                    }
+        VectorOfUint columnMap;
+        columnMap.resize(nFields);
+        for (uint i = 0; i < nFields; i++) {
+            char *n = lastResult.getColumn(i);
+            if (n == NULL) {
+                columnMap[i] = MAXU;
+            } else {
+                std::string name(
+                    n,
+                    lastResult.getColumnSize(i));
+                columnMap[i] = findField(name);
+                if (!isMAXU(columnMap[i])) {
+                    found++;
                 }
             }
-            if (found == 0) {
-                throw FennelExcn(
-                    FennelResource::instance().flatfileNoMappedColumns(
-                        std::string(" "),
-                        std::string(" ")));
-            }
-            rowDesc.setMap(columnMap);
         }
+        if (found == 0) {
+            throw FennelExcn(
+                FennelResource::instance().flatfileNoMappedColumns(
+                    std::string(" "),
+                    std::string(" ")));
+        }
+        rowDesc.setMap(columnMap);
     }
-
-    done = false;
 }
 
 ExecStreamResult FlatFileExecStreamImpl::execute(
@@ -198,12 +273,27 @@ ExecStreamResult FlatFileExecStreamImpl::execute(
                 break;
             }
 
-            if ((numRowsScan > 0 && numRowsScan == nRowsOutput)
-                || pBuffer->isDone())
-            {
+            if (pParallelScan) {
+                if (!readParallelRow()) {
+                    done = true;
+                    break;
+                }
+                nTuples++;
+                continue;
+            }
+
+            if (numRowsScan > 0 && numRowsScan == nRowsOutput) {
                 done = true;
                 break;
             }
+            if (pBuffer->isDone()) {
+                if (iFile + 1 == dataFilePaths.size()) {
+                    done = true;
+                    break;
+                }
+                openFile(iFile + 1);
+                continue;
+            }
             pParser->scanRow(
                 pBuffer->getReadPtr(), pBuffer->getSize(), rowDesc, lastResult);
             nTuples++;
@@ -221,10 +311,12 @@ ExecStreamResult FlatFileExecStreamImpl::execute(
             case FlatFileRowParseResult::TOO_MANY_COLUMNS:
                 logError(lastResult);
                 nRowErrors++;
+                cbRead += lastResult.next - pBuffer->getReadPtr();
                 pBuffer->setReadPtr(lastResult.next);
                 continue;
             case FlatFileRowParseResult::NO_STATUS:
                 handleTuple(lastResult, dataTuple);
+                cbRead += lastResult.next - pBuffer->getReadPtr();
                 pBuffer->setReadPtr(lastResult.next);
                 break;
             default:
@@ -248,6 +340,8 @@ ExecStreamResult FlatFileExecStreamImpl::execute(
 
         // close stream if no more rows are available
         if (done) {
+            traceThroughput();
+            writeManifest();
             pOutAccessor->markEOS();
             return EXECRC_EOS;
         }
@@ -428,6 +522,87 @@ void FlatFileExecStreamImpl::checkRowDelimiter()
     }
 }
 
+bool FlatFileExecStreamImpl::readParallelRow()
+{
+    while (pChunk == NULL || pChunk->iNextRow == pChunk->rows.size()) {
+        pChunk = pParallelScan->readChunk();
+        if (pChunk == NULL) {
+            return false;
+        }
+    }
+
+    FlatFileChunkRow &row = pChunk->rows[pChunk->iNextRow++];
+    cbRead += row.next - row.current;
+    if (row.status != FlatFileRowParseResult::NO_STATUS) {
+        // errors are logged here rather than by the parsing threads, so
+        // that they are posted from the stream's thread in file order
+        lastResult.status = row.status;
+        lastResult.current = row.current;
+        lastResult.next = row.next;
+        logError(lastResult);
+        nRowErrors++;
+        return true;
+    }
+
+    for (uint i = 0; i < row.nColumns; i++) {
+        uint iColumn = row.iFirstColumn + i;
+        uint offset = pChunk->columnOffsets[iColumn];
+        if (isMAXU(offset)) {
+            dataTuple[i].pData = NULL;
+            dataTuple[i].cbData = 0;
+            continue;
+        }
+        dataTuple[i].pData = (PConstBuffer) &(pChunk->arena[offset]);
+        // quietly truncate long columns
+        dataTuple[i].cbData =
+            std::min(pChunk->columnSizes[iColumn], textDesc[i].cbStorage);
+    }
+    isRowPending = true;
+    return true;
+}
+
+void FlatFileExecStreamImpl::traceThroughput()
+{
+    boost::posix_time::time_duration elapsed =
+        boost::posix_time::microsec_clock::universal_time() - startTime;
+    double seconds = elapsed.total_microseconds() / 1000000.0;
+    if (seconds <= 0) {
+        seconds = 1.0e-6;
+    }
+    FENNEL_TRACE(
+        TRACE_FINE,
+        "read " << nRowsOutput << " rows, " << nRowErrors
+        << " rejected rows and " << cbRead << " bytes from "
+        << dataFilePath << " in " << seconds << " seconds ("
+        << uint64_t(nRowsOutput / seconds) << " rows/sec, "
+        << uint64_t(cbRead / seconds) << " bytes/sec)");
+    if (pParallelScan) {
+        FENNEL_TRACE(
+            TRACE_FINE,
+            "parsed on " << parallelism << " threads, with "
+            << pParallelScan->getReparsedCount()
+            << " chunks parsed again after a quoted row delimiter");
+    }
+}
+
+void FlatFileExecStreamImpl::writeManifest()
+{
+    if (manifestFilePath.size() == 0) {
+        return;
+    }
+    std::ofstream manifest(
+        manifestFilePath.c_str(),
+        std::ios::out | std::ios::app);
+    for (uint i = 0; i < dataFilePaths.size(); i++) {
+        manifest << dataFileSizes[i] << " " << dataFileTimes[i] << " "
+                 << stateTime << " " << dataFilePaths[i] << std::endl;
+    }
+    if (!manifest) {
+        throw FennelExcn(
+            FennelResource::instance().writeLogFailed(manifestFilePath));
+    }
+}
+
 void FlatFileExecStreamImpl::closeImpl()
 {
     releaseResources();
@@ -439,6 +614,10 @@ void FlatFileExecStreamImpl::releaseResources()
     if (pBuffer) {
         pBuffer->close();
     }
+    if (pParallelScan) {
+        pParallelScan->close();
+    }
+    pChunk = NULL;
 }
 
 FENNEL_END_CPPFILE("$Id$");
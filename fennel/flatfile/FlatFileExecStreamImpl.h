@@ -26,12 +26,14 @@
 
 #include "fennel/flatfile/FlatFileBuffer.h"
 #include "fennel/flatfile/FlatFileExecStream.h"
+#include "fennel/flatfile/FlatFileParallelScan.h"
 #include "fennel/flatfile/FlatFileParser.h"
 #include "fennel/segment/SegmentAccessor.h"
 #include "fennel/segment/SegPageLock.h"
 #include "fennel/tuple/TupleData.h"
 
 #include <boost/scoped_ptr.hpp>
+#include <boost/date_time/posix_time/posix_time.hpp>
 
 FENNEL_BEGIN_NAMESPACE
 
@@ -58,16 +60,20 @@ class FENNEL_FLATFILE_EXPORT FlatFileExecStreamImpl
     static const uint MAX_ROW_ERROR_TEXT_WIDTH;
 
     // parameters
-    std::string dataFilePath;
+    std::vector<std::string> dataFilePaths;
+    std::string manifestFilePath;
     bool header;
     bool lenient;
     bool trim;
     bool mapped;
     std::vector<std::string> columnNames;
+    uint parallelism;
+    bool preserveOrder;
 
     FlatFileRowDescriptor rowDesc;
     SharedFlatFileBuffer pBuffer;
     PBuffer pBufferStorage;
+    uint cbBufferStorage;
     char *next;
     SharedFlatFileParser pParser;
     FlatFileRowParseResult lastResult;
@@ -75,6 +81,18 @@ class FENNEL_FLATFILE_EXPORT FlatFileExecStreamImpl
     TupleData textTuple, dataTuple;
     bool isRowPending;
 
+    // the file being read, and the sizes and modification times of all
+    // files, as they were at stateTime, when the stream was opened
+    uint iFile;
+    std::string dataFilePath;
+    std::vector<FileSize> dataFileSizes;
+    std::vector<time_t> dataFileTimes;
+    time_t stateTime;
+
+    // for parallel scans
+    boost::scoped_ptr<FlatFileParallelScan> pParallelScan;
+    FlatFileChunk *pChunk;
+
     // for sampling/describe mode
     FlatFileMode mode;
     int numRowsScan;
@@ -91,6 +109,10 @@ class FENNEL_FLATFILE_EXPORT FlatFileExecStreamImpl
     TupleDescriptor errorDesc;
     TupleData errorTuple;
 
+    // throughput metrics
+    FileSize cbRead;
+    boost::posix_time::ptime startTime;
+
     // implement ExecStream
     virtual void closeImpl();
 
@@ -99,6 +121,27 @@ class FENNEL_FLATFILE_EXPORT FlatFileExecStreamImpl
      */
     void releaseResources();
 
+    /**
+     * Opens a data file for reading through the buffer, and reads its
+     * header, if any.
+     *
+     * @param i index of the file in the list of data files
+     */
+    void openFile(uint i);
+
+    /**
+     * Reads the header of the current file, and maps its columns to the
+     * output columns when the file is mapped.
+     */
+    void readHeader();
+
+    /**
+     * Appends the size, modification time, time at which they were taken
+     * and path of each data file to the manifest, if any, once all of the
+     * files have been read.
+     */
+    void writeManifest();
+
     /**
      * Finds an output column by its name and returns the column's index.
      * Performs a case insensitive comparison and uses the first matching
@@ -159,6 +202,20 @@ class FENNEL_FLATFILE_EXPORT FlatFileExecStreamImpl
      */
     void checkRowDelimiter();
 
+    /**
+     * Reads the next row from a parallel scan. A row without errors is
+     * made pending for output, while a row with errors is logged.
+     *
+     * @return false if there are no more rows
+     */
+    bool readParallelRow();
+
+    /**
+     * Traces the number of rows and bytes read since the stream was
+     * opened, and the rates at which they were read.
+     */
+    void traceThroughput();
+
 public:
     // implement ExecStream
     virtual void prepare(FlatFileExecStreamParams const &params);
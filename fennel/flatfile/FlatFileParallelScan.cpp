@@ -0,0 +1,389 @@
+/*
+// $Id$
+// Fennel is a library of data storage and processing components.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2009 SQLstream, Inc.
+// Copyright (C) 2004 Dynamo BI Corporation
+// Portions Copyright (C) 2004 John V. Sichi
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+#include "fennel/common/CommonPreamble.h"
+#include "fennel/common/FennelResource.h"
+#include "fennel/common/FennelExcn.h"
+#include "fennel/flatfile/FlatFileParallelScan.h"
+
+#include <sys/types.h>
+#include <sys/stat.h>
+#include <fcntl.h>
+#include <algorithm>
+
+#ifdef HAVE_MMAP
+#include <sys/mman.h>
+#endif
+
+FENNEL_BEGIN_CPPFILE("$Id$");
+
+FlatFileChunk::FlatFileChunk(
+    FlatFileMappedFile *pFileInit,
+    bool firstInit,
+    char *pStartInit,
+    char *pLimitInit)
+{
+    pFile = pFileInit;
+    first = firstInit;
+    pStart = pStartInit;
+    pLimit = pLimitInit;
+    pEnd = pStartInit;
+    iNextRow = 0;
+    parsed = false;
+}
+
+void FlatFileChunk::clear()
+{
+    rows.clear();
+    columnOffsets.clear();
+    columnSizes.clear();
+    arena.clear();
+    iNextRow = 0;
+}
+
+void FlatFileChunkTask::execute()
+{
+    scan.executeTask(pChunk);
+}
+
+FlatFileParallelScan::FlatFileParallelScan(
+    SharedFlatFileParser pParserInit,
+    bool trimInit,
+    uint parallelismInit,
+    bool preserveOrder)
+{
+    pParser = pParserInit;
+    trim = trimInit;
+    parallelism = parallelismInit;
+    this->preserveOrder = preserveOrder;
+    ordered = true;
+    maxRowSize = 0;
+    iNextSubmit = iNextChunk = nInFlight = 0;
+    pExpectedStart = NULL;
+    nReparsed = 0;
+    cancelled = false;
+}
+
+FlatFileParallelScan::~FlatFileParallelScan()
+{
+    close();
+}
+
+bool FlatFileParallelScan::isSupported()
+{
+#ifdef HAVE_MMAP
+    return true;
+#else
+    return false;
+#endif
+}
+
+void FlatFileParallelScan::addFile(
+    const std::string &path,
+    FileSize offset,
+    const FlatFileRowDescriptor &rowDesc)
+{
+    FlatFileMappedFile file;
+    file.path = path;
+    file.offset = offset;
+    file.rowDesc = rowDesc;
+    file.pData = NULL;
+    file.cbData = 0;
+    files.push_back(file);
+}
+
+void FlatFileParallelScan::open(uint maxRowSizeInit)
+{
+    maxRowSize = maxRowSizeInit;
+    cancelled = false;
+    nReparsed = 0;
+
+    // the files are no longer added to, so chunks may point into the list
+    for (uint i = 0; i < files.size(); i++) {
+        mapFile(files[i]);
+        splitFile(files[i]);
+    }
+    pExpectedStart = NULL;
+
+    // a file without quote and escape characters cannot misplace a
+    // boundary, so only then can its chunks be returned in any order
+    ordered = preserveOrder || !pParser->isUnquoted();
+
+    threadPool.start(parallelism);
+    submitChunks();
+}
+
+void FlatFileParallelScan::mapFile(FlatFileMappedFile &file)
+{
+#ifdef HAVE_MMAP
+    // the mapping outlives the descriptor, so that hundreds of files do
+    // not hold as many descriptors open
+    int fd = ::open(file.path.c_str(), O_RDONLY);
+    struct stat fileStat;
+    if (fd == -1 || ::fstat(fd, &fileStat)) {
+        if (fd != -1) {
+            ::close(fd);
+        }
+        throw FennelExcn(
+            FennelResource::instance().readDataFailed(file.path));
+    }
+    file.cbData = fileStat.st_size;
+    if (file.cbData > 0) {
+        void *v = ::mmap(NULL, file.cbData, PROT_READ, MAP_PRIVATE, fd, 0);
+        if (v == MAP_FAILED) {
+            ::close(fd);
+            file.cbData = 0;
+            throw FennelExcn(
+                FennelResource::instance().readDataFailed(file.path));
+        }
+        file.pData = static_cast<char *>(v);
+#ifdef MADV_SEQUENTIAL
+        ::madvise(v, file.cbData, MADV_SEQUENTIAL);
+#endif
+    }
+    ::close(fd);
+#else
+    permAssert(false);
+#endif
+}
+
+void FlatFileParallelScan::splitFile(FlatFileMappedFile &file)
+{
+    // Guess the chunk boundaries. A boundary follows the first row
+    // delimiter found after a multiple of the chunk size; when none is
+    // found before the next multiple, the chunks are merged.
+    char *pFileEnd = file.pData + file.cbData;
+    std::vector<char *> starts;
+    char *pStart = file.pData + std::min(file.offset, file.cbData);
+    starts.push_back(pStart);
+    while (FileSize(pFileEnd - pStart) > FLAT_FILE_PARALLEL_CHUNK_SIZE) {
+        char *pNominal = pStart + FLAT_FILE_PARALLEL_CHUNK_SIZE;
+        uint cbSearch = FLAT_FILE_PARALLEL_CHUNK_SIZE;
+        if (FileSize(pFileEnd - pNominal) < cbSearch) {
+            cbSearch = pFileEnd - pNominal;
+        }
+        char *pFound = const_cast<char *>(
+            pParser->findRowStart(pNominal, cbSearch));
+        if (pFound == pFileEnd) {
+            break;
+        }
+        if (pFound < pNominal + cbSearch) {
+            starts.push_back(pFound);
+            pStart = pFound;
+        } else {
+            pStart = pNominal;
+        }
+    }
+    for (uint i = 0; i < starts.size(); i++) {
+        char *pLimit = (i + 1 < starts.size()) ? starts[i + 1] : pFileEnd;
+        chunks.push_back(
+            SharedFlatFileChunk(
+                new FlatFileChunk(&file, i == 0, starts[i], pLimit)));
+    }
+}
+
+void FlatFileParallelScan::submitChunks()
+{
+    // keep two chunks per thread, so that a thread can start on a new
+    // chunk while the previous one is returned
+    while (iNextSubmit < chunks.size() && nInFlight < 2 * parallelism) {
+        FlatFileChunkTask task(*this, chunks[iNextSubmit]);
+        threadPool.submitTask(task);
+        iNextSubmit++;
+        nInFlight++;
+    }
+}
+
+void FlatFileParallelScan::executeTask(SharedFlatFileChunk pChunk)
+{
+    try {
+        parseChunk(*pChunk, pChunk->pStart);
+    } catch (std::exception &ex) {
+        pChunk->error = ex.what();
+    } catch (...) {
+        pChunk->error =
+            FennelResource::instance().readDataFailed(pChunk->pFile->path);
+    }
+    StrictMutexGuard guard(mutex);
+    pChunk->parsed = true;
+    if (!ordered) {
+        parsedChunks.push_back(pChunk);
+    }
+    chunkParsed.notify_all();
+}
+
+void FlatFileParallelScan::parseChunk(FlatFileChunk &chunk, char *pStart)
+{
+    chunk.clear();
+    chunk.pStart = pStart;
+
+    FlatFileMappedFile &file = *chunk.pFile;
+    char *pFileEnd = file.pData + file.cbData;
+    char *p = pStart;
+    FlatFileRowParseResult result;
+    while (p < chunk.pLimit) {
+        // tasks left in the queue by an early close should return quickly
+        if (cancelled) {
+            break;
+        }
+
+        // the sequential scan cannot read a row larger than its buffer,
+        // so neither does the parallel scan, which also bounds the work
+        // spent on a chunk that starts within a quoted value
+        uint cbAvailable = maxRowSize;
+        if (FileSize(pFileEnd - p) < cbAvailable) {
+            cbAvailable = pFileEnd - p;
+        }
+        pParser->scanRow(p, cbAvailable, file.rowDesc, result);
+        if (result.status == FlatFileRowParseResult::INCOMPLETE_COLUMN
+            && p + cbAvailable < pFileEnd)
+        {
+            result.status = FlatFileRowParseResult::ROW_TOO_LARGE;
+        }
+
+        FlatFileChunkRow row;
+        row.status = result.status;
+        row.current = result.current;
+        row.next = result.next;
+        row.iFirstColumn = chunk.columnOffsets.size();
+        row.nColumns = 0;
+        if (row.status == FlatFileRowParseResult::NO_STATUS) {
+            row.nColumns = result.getReadCount();
+            for (uint i = 0; i < row.nColumns; i++) {
+                char *value = result.getColumn(i);
+                if (value == NULL) {
+                    chunk.columnOffsets.push_back(MAXU);
+                    chunk.columnSizes.push_back(0);
+                    continue;
+                }
+                uint cbRaw = result.getRawColumnSize(i);
+                uint offset = chunk.arena.size();
+                chunk.arena.insert(chunk.arena.end(), value, value + cbRaw);
+                chunk.columnOffsets.push_back(offset);
+                chunk.columnSizes.push_back(
+                    pParser->stripQuoting(&chunk.arena[offset], cbRaw, trim));
+            }
+        }
+        chunk.rows.push_back(row);
+        p = result.next;
+    }
+    chunk.pEnd = p;
+}
+
+SharedFlatFileChunk FlatFileParallelScan::waitForChunk(
+    SharedFlatFileChunk pChunk)
+{
+    StrictMutexGuard guard(mutex);
+    if (pChunk) {
+        while (!pChunk->parsed) {
+            chunkParsed.wait(guard);
+        }
+    } else {
+        while (parsedChunks.empty()) {
+            chunkParsed.wait(guard);
+        }
+        pChunk = parsedChunks.front();
+        parsedChunks.pop_front();
+    }
+    return pChunk;
+}
+
+FlatFileChunk *FlatFileParallelScan::readChunk()
+{
+    if (pCurrentChunk) {
+        pCurrentChunk.reset();
+        nInFlight--;
+        submitChunks();
+    }
+    if (iNextChunk == chunks.size()) {
+        return NULL;
+    }
+
+    SharedFlatFileChunk pChunk;
+    if (ordered) {
+        pChunk = waitForChunk(chunks[iNextChunk]);
+    } else {
+        pChunk = waitForChunk(SharedFlatFileChunk());
+    }
+    if (pChunk->error.size() > 0) {
+        throw FennelExcn(pChunk->error);
+    }
+    if (pChunk->first) {
+        // the first row of each file starts where its header ends
+        pExpectedStart = pChunk->pStart;
+    }
+    if (ordered && pChunk->pStart != pExpectedStart) {
+        // The previous chunk ended past the guessed boundary, which was
+        // therefore quoted or escaped. Its last row may even have covered
+        // this chunk entirely.
+        nReparsed++;
+        if (pExpectedStart < pChunk->pLimit) {
+            parseChunk(*pChunk, pExpectedStart);
+        } else {
+            pChunk->clear();
+            pChunk->pStart = pChunk->pEnd = pExpectedStart;
+        }
+    }
+    pExpectedStart = pChunk->pEnd;
+
+    // release the chunk's slot in the array, so that its rows are freed
+    // once the next chunk is read
+    if (ordered) {
+        chunks[iNextChunk].reset();
+    } else {
+        std::replace(
+            chunks.begin(),
+            chunks.begin() + iNextSubmit,
+            pChunk,
+            SharedFlatFileChunk());
+    }
+    iNextChunk++;
+    pCurrentChunk = pChunk;
+    return pChunk.get();
+}
+
+void FlatFileParallelScan::close()
+{
+    {
+        StrictMutexGuard guard(mutex);
+        cancelled = true;
+    }
+    threadPool.stop();
+    chunks.clear();
+    parsedChunks.clear();
+    pCurrentChunk.reset();
+    iNextSubmit = iNextChunk = nInFlight = 0;
+
+#ifdef HAVE_MMAP
+    for (uint i = 0; i < files.size(); i++) {
+        if (files[i].pData) {
+            ::munmap(files[i].pData, files[i].cbData);
+        }
+    }
+#endif
+    files.clear();
+}
+
+FENNEL_END_CPPFILE("$Id$");
+
+// End FlatFileParallelScan.cpp
@@ -0,0 +1,384 @@
+/*
+// $Id$
+// Fennel is a library of data storage and processing components.
+// Copyright (C) 2005 The Eigenbase Project
+// Copyright (C) 2009 SQLstream, Inc.
+// Copyright (C) 2004 Dynamo BI Corporation
+// Portions Copyright (C) 2004 John V. Sichi
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+#ifndef Fennel_FlatFileParallelScan_Included
+#define Fennel_FlatFileParallelScan_Included
+
+#include "fennel/flatfile/FlatFileParser.h"
+#include "fennel/synch/SynchObj.h"
+#include "fennel/synch/ThreadPool.h"
+
+#include <deque>
+
+FENNEL_BEGIN_NAMESPACE
+
+class FlatFileParallelScan;
+
+/**
+ * The size of the chunks into which a parallel scan splits a file
+ */
+const uint FLAT_FILE_PARALLEL_CHUNK_SIZE = 4 * 1024 * 1024;
+
+/**
+ * FlatFileChunkRow describes a row parsed from a FlatFileChunk.
+ */
+struct FENNEL_FLATFILE_EXPORT FlatFileChunkRow
+{
+    /**
+     * Status of the row. Columns are only kept for rows without errors.
+     */
+    FlatFileRowParseResult::RowStatus status;
+
+    /**
+     * Beginning of the row text, in the mapped file
+     */
+    char *current;
+
+    /**
+     * Beginning of the following row, in the mapped file
+     */
+    char *next;
+
+    /**
+     * Index of the row's first column in the chunk's column arrays
+     */
+    uint iFirstColumn;
+
+    /**
+     * Number of columns of the row
+     */
+    uint nColumns;
+};
+
+/**
+ * FlatFileMappedFile describes a data file read by a FlatFileParallelScan.
+ */
+struct FENNEL_FLATFILE_EXPORT FlatFileMappedFile
+{
+    std::string path;
+
+    /**
+     * Offset of the first row, after any header
+     */
+    FileSize offset;
+
+    /**
+     * Descriptor of the rows, which may map the file's columns according
+     * to its own header
+     */
+    FlatFileRowDescriptor rowDesc;
+
+    /**
+     * Contents of the file, mapped read-only
+     */
+    char *pData;
+
+    FileSize cbData;
+};
+
+/**
+ * FlatFileChunk holds the rows parsed from a chunk of a memory mapped flat
+ * file. The chunk covers the rows which begin at or after its start and
+ * before the start of the next chunk; its last row may extend beyond that.
+ * Column values are copied into a private arena, where their quoting is
+ * stripped, so that the mapped file is never modified.
+ */
+class FENNEL_FLATFILE_EXPORT FlatFileChunk
+{
+public:
+    /**
+     * File to which the chunk belongs
+     */
+    FlatFileMappedFile *pFile;
+
+    /**
+     * Whether this is the first chunk of its file, whose start is known
+     */
+    bool first;
+
+    /**
+     * Start of the first row of the chunk
+     */
+    char *pStart;
+
+    /**
+     * Start of the next chunk. Rows are parsed while they begin before it.
+     */
+    char *pLimit;
+
+    /**
+     * End of the last row parsed, which is where the next chunk actually
+     * begins
+     */
+    char *pEnd;
+
+    std::vector<FlatFileChunkRow> rows;
+
+    /**
+     * Offsets of the column values into the arena, or MAXU for nulls
+     */
+    VectorOfUint columnOffsets;
+
+    /**
+     * Sizes of the column values, after their quoting is stripped
+     */
+    VectorOfUint columnSizes;
+
+    std::vector<char> arena;
+
+    /**
+     * Index of the next row to be returned by the scan
+     */
+    uint iNextRow;
+
+    /**
+     * Whether the chunk has been parsed, guarded by the scan's mutex
+     */
+    bool parsed;
+
+    /**
+     * Error which prevented the chunk from being parsed, if any
+     */
+    std::string error;
+
+    explicit FlatFileChunk(
+        FlatFileMappedFile *pFileInit,
+        bool firstInit,
+        char *pStartInit,
+        char *pLimitInit);
+
+    /**
+     * Discards the rows parsed, so that the chunk can be parsed again
+     */
+    void clear();
+};
+
+typedef boost::shared_ptr<FlatFileChunk> SharedFlatFileChunk;
+
+/**
+ * FlatFileChunkTask is the task entry with which a chunk is submitted to
+ * the thread pool of a FlatFileParallelScan.
+ */
+class FENNEL_FLATFILE_EXPORT FlatFileChunkTask
+{
+    FlatFileParallelScan &scan;
+    SharedFlatFileChunk pChunk;
+
+public:
+    explicit FlatFileChunkTask(
+        FlatFileParallelScan &scanInit,
+        SharedFlatFileChunk pChunkInit)
+        : scan(scanInit),
+          pChunk(pChunkInit)
+    {
+    }
+
+    /**
+     * Parses the chunk; this satisfies the ThreadPool Task signature.
+     */
+    void execute();
+};
+
+/**
+ * FlatFileParallelScan parses flat files on several threads. The files are
+ * memory mapped and split into chunks of about FLAT_FILE_PARALLEL_CHUNK_SIZE
+ * bytes, so that several small files, as well as parts of a large one, are
+ * parsed at the same time. The boundary between two chunks of a file is
+ * placed just after a row delimiter, which is only a guess at the start of a
+ * row, because the delimiter may be quoted or escaped. The chunks are parsed
+ * concurrently, each from its guessed start, but they are returned in file
+ * order, and a chunk is only accepted if the rows of the preceding chunk
+ * ended where it begins. Otherwise it is parsed again from the actual end of the previous
+ * chunk. A file without quote and escape characters has no ambiguous
+ * boundaries, so its chunks may be returned as soon as they are parsed,
+ * when row order need not be preserved.
+ *
+ * <p>
+ *
+ * Parsing does not log errors; the rows with errors are returned with
+ * their status, so that the caller can log them in file order from its
+ * own thread.
+ *
+ * @version $Id$
+ */
+class FENNEL_FLATFILE_EXPORT FlatFileParallelScan
+{
+    friend class FlatFileChunkTask;
+
+    SharedFlatFileParser pParser;
+    bool trim;
+    uint parallelism;
+    bool preserveOrder;
+
+    /**
+     * Whether chunks are returned in file order, which is required unless
+     * the file is unquoted
+     */
+    bool ordered;
+    uint maxRowSize;
+
+    std::vector<FlatFileMappedFile> files;
+
+    std::vector<SharedFlatFileChunk> chunks;
+    uint iNextSubmit, iNextChunk, nInFlight;
+    char *pExpectedStart;
+    SharedFlatFileChunk pCurrentChunk;
+    uint nReparsed;
+
+    ThreadPool<FlatFileChunkTask> threadPool;
+
+    /**
+     * Guards the parsed flag of the chunks, the parsed queue and the
+     * cancelled flag
+     */
+    StrictMutex mutex;
+
+    /**
+     * Signaled when a chunk has been parsed
+     */
+    LocalCondition chunkParsed;
+
+    /**
+     * Chunks parsed but not yet returned, in the order they were parsed;
+     * only used when the row order need not be preserved
+     */
+    std::deque<SharedFlatFileChunk> parsedChunks;
+
+    bool cancelled;
+
+    /**
+     * Maps a file into memory.
+     */
+    void mapFile(FlatFileMappedFile &file);
+
+    /**
+     * Splits a mapped file into chunks, by guessing the start of a row
+     * after each multiple of the chunk size.
+     */
+    void splitFile(FlatFileMappedFile &file);
+
+    /**
+     * Submits chunks to the thread pool until the maximum number of chunks
+     * are either being parsed or waiting to be returned.
+     */
+    void submitChunks();
+
+    /**
+     * Parses the rows of a chunk, starting from a given row.
+     *
+     * @param chunk chunk to be parsed
+     *
+     * @param pStart start of the first row
+     */
+    void parseChunk(FlatFileChunk &chunk, char *pStart);
+
+    /**
+     * Parses a chunk on behalf of a task, and records its completion.
+     */
+    void executeTask(SharedFlatFileChunk pChunk);
+
+    /**
+     * Waits for a chunk to be parsed.
+     *
+     * @param pChunk the chunk, or NULL to wait for any chunk
+     *
+     * @return the chunk parsed
+     */
+    SharedFlatFileChunk waitForChunk(SharedFlatFileChunk pChunk);
+
+public:
+    /**
+     * Constructs a scan.
+     *
+     * @param pParser parser shared by the threads, which only use its
+     * stateless scanning methods
+     *
+     * @param trim whether column values are trimmed
+     *
+     * @param parallelism number of threads to parse the file with
+     *
+     * @param preserveOrder whether rows must be returned in file order
+     */
+    explicit FlatFileParallelScan(
+        SharedFlatFileParser pParser,
+        bool trim,
+        uint parallelism,
+        bool preserveOrder);
+
+    virtual ~FlatFileParallelScan();
+
+    /**
+     * Returns whether files can be memory mapped on this platform.
+     */
+    static bool isSupported();
+
+    /**
+     * Adds a file to be read once the scan is opened.
+     *
+     * @param path location of flat file to be read
+     *
+     * @param offset offset of the first row, after any header
+     *
+     * @param rowDesc descriptor of the rows, which is copied
+     */
+    void addFile(
+        const std::string &path,
+        FileSize offset,
+        const FlatFileRowDescriptor &rowDesc);
+
+    /**
+     * Maps the files added and starts parsing them.
+     *
+     * @param maxRowSize size beyond which a row is considered too large,
+     * as it would be when the file is read sequentially
+     */
+    void open(uint maxRowSize);
+
+    /**
+     * Returns the next chunk of rows. The chunk returned previously is
+     * released.
+     *
+     * @return the chunk, or NULL when the whole file has been returned
+     */
+    FlatFileChunk *readChunk();
+
+    /**
+     * Stops parsing, unmaps the files, and forgets them.
+     */
+    void close();
+
+    /**
+     * Returns the number of chunks which had to be parsed again because
+     * their guessed start was not the start of a row.
+     */
+    uint getReparsedCount() const
+    {
+        return nReparsed;
+    }
+};
+
+FENNEL_END_NAMESPACE
+
+#endif
+
+// End FlatFileParallelScan.h
@@ -233,6 +233,13 @@ const char *FlatFileParser::scanRowDelim(
     return read;
 }
 
+const char *FlatFileParser::findRowStart(const char *buffer, int size)
+{
+    const char *end = buffer + size;
+    const char *read = scanRowDelim(buffer, size, true);
+    return scanRowDelim(read, end - read, false);
+}
+
 bool FlatFileParser::isRowDelim(char c)
 {
     assert(rowDelim != '\r');
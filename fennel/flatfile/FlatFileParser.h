@@ -534,6 +534,28 @@ public:
         uint maxLength,
         FlatFileColumnParseResult &result);
 
+    /**
+     * Finds the first row which begins after a row delimiter, skipping any
+     * further row delimiters. The position found is only a guess at the
+     * start of a row, since the delimiter may have been quoted or escaped.
+     *
+     * @param buffer buffer to search
+     *
+     * @param size size of the buffer
+     *
+     * @return start of the row, or end of the buffer if there is none
+     */
+    const char *findRowStart(const char *buffer, int size);
+
+    /**
+     * Returns whether neither quote nor escape characters are recognized,
+     * in which case every row delimiter ends a row.
+     */
+    bool isUnquoted() const
+    {
+        return quote == 0 && escape == 0;
+    }
+
     /**
      * Remove quoting and escape characters from a row result, saving the
      * results into the row result.
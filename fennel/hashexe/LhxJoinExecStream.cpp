@@ -26,6 +26,8 @@
 #include "fennel/exec/ExecStreamBufAccessor.h"
 #include "fennel/tuple/StandardTypeDescriptor.h"
 
+#include <algorithm>
+
 using namespace std;
 
 FENNEL_BEGIN_CPPFILE("$Id$");
@@ -57,6 +59,20 @@ void LhxJoinExecStream::prepare(
     forcePartitionLevel = params.forcePartitionLevel;
     enableSubPartStat = params.enableSubPartStat;
 
+    /*
+     * A runtime filter may only drop probe rows that cannot match, so it is
+     * not built if non-matching probe rows are returned, or if nulls match.
+     */
+    runtimeFilterParamId = params.runtimeFilterParamId;
+    if (returnProbeOuter() || !regularJoin) {
+        runtimeFilterParamId = DynamicParamId(0);
+    }
+    if (opaqueToInt(runtimeFilterParamId) > 0) {
+        runtimeFilter.init(
+            inAccessors[DefaultBuildInputIndex]->getTupleDesc(),
+            params.rightKeyProj);
+    }
+
     /*
      * NOTE: currently anti joins that need to remove duplicates can not
      * switch join sides(join then
@@ -235,6 +251,23 @@ void LhxJoinExecStream::open(bool restart)
 
     joinState = (forcePartitionLevel > 0) ? ForcePartitionBuild : Build;
     nextState.clear();
+
+    /*
+     * Until the build input has been read, the probe side sees a NULL
+     * filter and returns all of its rows.
+     */
+    runtimeFilterHashes.clear();
+    runtimeFilterPending =
+        (opaqueToInt(runtimeFilterParamId) > 0)
+        && (curPlan->getBuildInput() == DefaultBuildInputIndex);
+    if (opaqueToInt(runtimeFilterParamId) > 0) {
+        pDynamicParamManager->createParam(
+            runtimeFilterParamId,
+            LhxRuntimeFilter::getParamDesc(),
+            false);
+        TupleDatum nullDatum;
+        pDynamicParamManager->writeParam(runtimeFilterParamId, nullDatum);
+    }
 }
 
 ExecStreamResult LhxJoinExecStream::execute(ExecStreamQuantum const &quantum)
@@ -255,6 +288,9 @@ ExecStreamResult LhxJoinExecStream::execute(ExecStreamQuantum const &quantum)
                              * break out of this loop, and start probing.
                              */
                             buildReader.close();
+                            if (isTopPlan) {
+                                publishRuntimeFilter();
+                            }
                             probeReader.open(
                                 curPlan->getProbePartition(),
                                 hashInfo);
@@ -320,6 +356,9 @@ ExecStreamResult LhxJoinExecStream::execute(ExecStreamQuantum const &quantum)
                              * break out of this loop, and start probing.
                              */
                             buildReader.close();
+                            if (isTopPlan) {
+                                publishRuntimeFilter();
+                            }
                             probeReader.open(
                                 curPlan->getProbePartition(),
                                 hashInfo);
@@ -355,6 +394,14 @@ ExecStreamResult LhxJoinExecStream::execute(ExecStreamQuantum const &quantum)
                          *
                          * First, partition the right(build input).
                          */
+                        if (isTopPlan) {
+                            /*
+                             * The build keys no longer fit in memory, so the
+                             * probe side keeps its NULL filter.
+                             */
+                            runtimeFilterPending = false;
+                            runtimeFilterHashes.clear();
+                        }
                         partInfo.open(
                             &hashTableReader, &buildReader, buildTuple,
                             curPlan->getProbePartition(),
@@ -362,6 +409,9 @@ ExecStreamResult LhxJoinExecStream::execute(ExecStreamQuantum const &quantum)
                         joinState = Partition;
                         break;
                     }
+                    if (runtimeFilterPending && isTopPlan) {
+                        addRuntimeFilterKey(buildTuple);
+                    }
                     buildReader.consumeTuple();
                 }
                 break;
@@ -723,6 +773,49 @@ ExecStreamResult LhxJoinExecStream::execute(ExecStreamQuantum const &quantum)
     assert(false);
 }
 
+void LhxJoinExecStream::addRuntimeFilterKey(TupleData const &buildTuple)
+{
+    runtimeFilterHashes.push_back(runtimeFilter.hash(buildTuple));
+
+    uint maxKeys = LhxRuntimeFilter::getMaxKeys();
+    if (runtimeFilterHashes.size() >= 2 * maxKeys) {
+        /*
+         * Drop duplicate keys; if there are still too many, give up rather
+         * than publish a filter that would pass nearly every row.
+         */
+        std::sort(runtimeFilterHashes.begin(), runtimeFilterHashes.end());
+        runtimeFilterHashes.erase(
+            std::unique(runtimeFilterHashes.begin(), runtimeFilterHashes.end()),
+            runtimeFilterHashes.end());
+        if (runtimeFilterHashes.size() > maxKeys) {
+            FENNEL_TRACE(
+                TRACE_FINE,
+                "runtime filter dropped: more than " << maxKeys
+                << " distinct build keys");
+            runtimeFilterPending = false;
+            vector<uint>().swap(runtimeFilterHashes);
+        }
+    }
+}
+
+void LhxJoinExecStream::publishRuntimeFilter()
+{
+    if (!runtimeFilterPending) {
+        return;
+    }
+    runtimeFilterPending = false;
+
+    if (runtimeFilter.build(runtimeFilterHashes)) {
+        FENNEL_TRACE(
+            TRACE_FINE,
+            "runtime filter published: " << runtimeFilterHashes.size()
+            << " distinct build keys in " << runtimeFilter.getByteCount()
+            << " bytes");
+        runtimeFilter.write(*pDynamicParamManager, runtimeFilterParamId);
+    }
+    vector<uint>().swap(runtimeFilterHashes);
+}
+
 void LhxJoinExecStream::closeImpl()
 {
     hashTable.releaseResources();
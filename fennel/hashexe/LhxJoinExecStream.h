@@ -27,6 +27,7 @@
 #include "fennel/hashexe/LhxHashBase.h"
 #include "fennel/hashexe/LhxHashTable.h"
 #include "fennel/hashexe/LhxPartition.h"
+#include "fennel/hashexe/LhxRuntimeFilter.h"
 
 using namespace boost;
 
@@ -134,6 +135,19 @@ struct LhxJoinExecStreamParams : public ConfluenceExecStreamParams
      * Whether to use swing based on input sizes.
      */
     bool enableSwing;
+
+    /**
+     * Dynamic parameter through which a bloom filter over the build keys is
+     * published once the build input fits in memory, so that the scan
+     * producing the probe input can skip rows that cannot match; 0 if no
+     * filter is wanted.  See LhxRuntimeFilter.
+     */
+    DynamicParamId runtimeFilterParamId;
+
+    explicit LhxJoinExecStreamParams()
+    {
+        runtimeFilterParamId = DynamicParamId(0);
+    }
 };
 
 class FENNEL_HASHEXE_EXPORT LhxJoinExecStream
@@ -257,6 +271,38 @@ class FENNEL_HASHEXE_EXPORT LhxJoinExecStream
     bool setopDistinct;
     bool setopAll;
 
+    /**
+     * Parameter to publish the runtime filter through, or 0.
+     */
+    DynamicParamId runtimeFilterParamId;
+
+    /**
+     * Runtime filter over the build keys.
+     */
+    LhxRuntimeFilter runtimeFilter;
+
+    /**
+     * Hash values of the build keys seen so far; only collected while the
+     * top level plan is building.
+     */
+    vector<uint> runtimeFilterHashes;
+
+    /**
+     * Whether the runtime filter is still to be published for the current
+     * execution.
+     */
+    bool runtimeFilterPending;
+
+    /**
+     * Records the hash of a build key added to the top level hash table.
+     */
+    void addRuntimeFilterKey(TupleData const &buildTuple);
+
+    /**
+     * Builds the runtime filter and publishes it, unless it was given up on.
+     */
+    void publishRuntimeFilter();
+
     /**
      * implement ExecStream
      */
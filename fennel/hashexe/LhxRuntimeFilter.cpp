@@ -0,0 +1,152 @@
+/*
+// $Id$
+// Fennel is a library of data storage and processing components.
+// Copyright (C) 2006 The Eigenbase Project
+// Copyright (C) 2009 SQLstream, Inc.
+// Copyright (C) 2006 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+#include "fennel/common/CommonPreamble.h"
+#include "fennel/hashexe/LhxRuntimeFilter.h"
+#include "fennel/tuple/StandardTypeDescriptor.h"
+
+#include <algorithm>
+
+FENNEL_BEGIN_CPPFILE("$Id$");
+
+LhxRuntimeFilter::LhxRuntimeFilter()
+{
+    nBytesAllocated = 0;
+    nBytes = 0;
+}
+
+TupleAttributeDescriptor LhxRuntimeFilter::getParamDesc()
+{
+    StandardTypeDescriptorFactory stdTypeFactory;
+    return TupleAttributeDescriptor(
+        stdTypeFactory.newDataType(STANDARD_TYPE_VARBINARY),
+        true,
+        MAX_BYTES);
+}
+
+uint LhxRuntimeFilter::getMaxKeys()
+{
+    return MAX_BYTES * 8 / BITS_PER_KEY;
+}
+
+void LhxRuntimeFilter::init(
+    TupleDescriptor const &tupleDesc,
+    TupleProjection const &keyProjInit)
+{
+    keyProj = keyProjInit;
+    keyTrims.clear();
+
+    /*
+     * Trim keys exactly as LhxJoinExecStream does, so that keys which match
+     * in the hash table also hash to the same filter bits.
+     */
+    for (uint i = 0; i < keyProj.size(); i++) {
+        StoredTypeDescriptor::Ordinal ordinal =
+            tupleDesc[keyProj[i]].pTypeDescriptor->getOrdinal();
+        if (ordinal == STANDARD_TYPE_VARCHAR) {
+            keyTrims.push_back(HASH_TRIM_VARCHAR);
+        } else if (ordinal == STANDARD_TYPE_UNICODE_VARCHAR) {
+            keyTrims.push_back(HASH_TRIM_UNICODE_VARCHAR);
+        } else {
+            keyTrims.push_back(HASH_TRIM_NONE);
+        }
+    }
+
+    hashGen.init(0);
+    reset();
+}
+
+bool LhxRuntimeFilter::build(vector<uint> &hashValues)
+{
+    reset();
+
+    std::sort(hashValues.begin(), hashValues.end());
+    hashValues.erase(
+        std::unique(hashValues.begin(), hashValues.end()),
+        hashValues.end());
+    if (hashValues.size() > getMaxKeys()) {
+        return false;
+    }
+
+    uint nBytesNeeded = (hashValues.size() * BITS_PER_KEY + 7) / 8;
+    uint nBytesBuilt = MIN_BYTES;
+    while (nBytesBuilt < nBytesNeeded) {
+        nBytesBuilt <<= 1;
+    }
+    assert(nBytesBuilt <= MAX_BYTES);
+
+    if (nBytesAllocated < nBytesBuilt) {
+        pBits.reset(new FixedBuffer[nBytesBuilt]);
+        nBytesAllocated = nBytesBuilt;
+    }
+    memset(pBits.get(), 0, nBytesBuilt);
+    nBytes = nBytesBuilt;
+
+    for (uint i = 0; i < hashValues.size(); i++) {
+        for (uint j = 0; j < NUM_PROBES; j++) {
+            uint bitPos = getBitPos(hashValues[i], j);
+            pBits[bitPos >> 3] |= (1 << (bitPos & 7));
+        }
+    }
+    return true;
+}
+
+void LhxRuntimeFilter::write(
+    DynamicParamManager &paramManager,
+    DynamicParamId paramId)
+{
+    assert(isLoaded());
+    TupleDatum datum;
+    datum.pData = pBits.get();
+    datum.cbData = nBytes;
+    paramManager.writeParam(paramId, datum);
+}
+
+bool LhxRuntimeFilter::read(
+    DynamicParamManager &paramManager,
+    DynamicParamId paramId)
+{
+    if (nBytesAllocated < MAX_BYTES) {
+        pBits.reset(new FixedBuffer[MAX_BYTES]);
+        nBytesAllocated = MAX_BYTES;
+    }
+    TupleDatum datum;
+    datum.pData = pBits.get();
+    paramManager.readParam(paramId, datum);
+    if (datum.pData == NULL) {
+        nBytes = 0;
+        return false;
+    }
+    assert(datum.cbData >= MIN_BYTES);
+    assert((datum.cbData & (datum.cbData - 1)) == 0);
+    nBytes = datum.cbData;
+    return true;
+}
+
+void LhxRuntimeFilter::reset()
+{
+    nBytes = 0;
+}
+
+FENNEL_END_CPPFILE("$Id$");
+
+// End LhxRuntimeFilter.cpp
@@ -0,0 +1,243 @@
+/*
+// $Id$
+// Fennel is a library of data storage and processing components.
+// Copyright (C) 2006 The Eigenbase Project
+// Copyright (C) 2009 SQLstream, Inc.
+// Copyright (C) 2006 Dynamo BI Corporation
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+#ifndef Fennel_LhxRuntimeFilter_Included
+#define Fennel_LhxRuntimeFilter_Included
+
+#include "fennel/tuple/TupleData.h"
+#include "fennel/tuple/TupleDescriptor.h"
+#include "fennel/exec/DynamicParam.h"
+#include "fennel/hashexe/LhxHashBase.h"
+#include "fennel/hashexe/LhxHashGenerator.h"
+
+#include <boost/scoped_array.hpp>
+
+using namespace std;
+
+FENNEL_BEGIN_NAMESPACE
+
+/**
+ * LhxRuntimeFilter is a bloom filter over the join keys of the build input of
+ * a hash join.  LhxJoinExecStream builds it once the build input has been
+ * read into memory, and publishes it through a dynamic parameter.  A scan
+ * feeding the probe input of the same join can then read the parameter and
+ * discard rows whose keys cannot match before it assembles the rest of the
+ * row.
+ *
+ * The filter is only a hint.  A row that passes may still not join, and a
+ * consumer that never sees the filter (for example because the join had to
+ * partition its build input) simply returns all of its rows.
+ *
+ * Both sides compute the key hash with a level 0 LhxHashGenerator, so the keys
+ * on the two sides must have identical types.
+ *
+ * @version $Id$
+ */
+class FENNEL_HASHEXE_EXPORT LhxRuntimeFilter
+{
+public:
+    /**
+     * Largest filter published, in bytes.  A build input with more distinct
+     * keys than fit at BITS_PER_KEY gets no filter.
+     */
+    static const uint MAX_BYTES = 256 * 1024;
+
+    /**
+     * Smallest filter published, in bytes.
+     */
+    static const uint MIN_BYTES = 64;
+
+    /**
+     * Bits set aside per distinct key; with NUM_PROBES this gives a false
+     * positive rate of about 1%.
+     */
+    static const uint BITS_PER_KEY = 10;
+
+    /**
+     * Number of bits set and tested per key.
+     */
+    static const uint NUM_PROBES = 4;
+
+private:
+    /**
+     * Hash generator shared by both sides of the join.
+     */
+    LhxHashGenerator hashGen;
+
+    /**
+     * Key columns within the tuples being hashed.
+     */
+    TupleProjection keyProj;
+
+    /**
+     * Whether trailing blanks are trimmed from each key column.
+     */
+    vector<LhxHashTrim> keyTrims;
+
+    /**
+     * Filter bits, of which the first nBytes are in use.
+     */
+    boost::scoped_array<FixedBuffer> pBits;
+
+    /**
+     * Number of bytes allocated for pBits.
+     */
+    uint nBytesAllocated;
+
+    /**
+     * Number of bytes in the filter; a power of 2, or 0 if no filter has been
+     * built or loaded.
+     */
+    uint nBytes;
+
+    inline uint getBitPos(uint hashValue, uint probe) const;
+
+public:
+    explicit LhxRuntimeFilter();
+
+    /**
+     * @return descriptor for the dynamic parameter through which the filter
+     * is published; the parameter is NULL until a filter is written to it
+     */
+    static TupleAttributeDescriptor getParamDesc();
+
+    /**
+     * @return largest number of distinct keys a filter can be built from
+     */
+    static uint getMaxKeys();
+
+    /**
+     * Prepares the filter to hash keys.
+     *
+     * @param tupleDesc descriptor of the tuples to be hashed
+     *
+     * @param keyProjInit key columns within those tuples
+     */
+    void init(
+        TupleDescriptor const &tupleDesc,
+        TupleProjection const &keyProjInit);
+
+    /**
+     * Computes the hash value of the keys of a tuple.
+     *
+     * @param tuple tuple whose keys are to be hashed
+     *
+     * @return the hash value
+     */
+    uint hash(TupleData const &tuple);
+
+    /**
+     * Builds the filter from key hash values.
+     *
+     * @param hashValues hash values of the build keys, as returned by
+     * hash(); sorted and deduplicated in place
+     *
+     * @return false if there were too many distinct keys to build a filter
+     */
+    bool build(vector<uint> &hashValues);
+
+    /**
+     * Writes the filter to a dynamic parameter.
+     *
+     * @param paramManager manager of the parameter
+     *
+     * @param paramId parameter created with getParamDesc()
+     */
+    void write(DynamicParamManager &paramManager, DynamicParamId paramId);
+
+    /**
+     * Loads the filter from a dynamic parameter.
+     *
+     * @param paramManager manager of the parameter
+     *
+     * @param paramId parameter created with getParamDesc()
+     *
+     * @return true if the producer had written a filter to the parameter
+     */
+    bool read(DynamicParamManager &paramManager, DynamicParamId paramId);
+
+    /**
+     * Discards the filter.
+     */
+    void reset();
+
+    /**
+     * @return true if a filter has been built or loaded
+     */
+    bool isLoaded() const;
+
+    /**
+     * @return size of the filter in bytes
+     */
+    uint getByteCount() const;
+
+    /**
+     * Tests a hash value against the filter.
+     *
+     * @param hashValue value returned by hash()
+     *
+     * @return false if no build key can have this hash value
+     */
+    bool test(uint hashValue) const;
+};
+
+inline uint LhxRuntimeFilter::getBitPos(uint hashValue, uint probe) const
+{
+    // double hashing; the second hash is odd, so the probes never repeat
+    // within a power of 2 sized filter
+    uint h1 = hashValue * 0x9E3779B1U;
+    uint h2 = ((hashValue >> 16) | (hashValue << 16)) | 1;
+    return (h1 + probe * h2) & (nBytes * 8 - 1);
+}
+
+inline bool LhxRuntimeFilter::isLoaded() const
+{
+    return nBytes > 0;
+}
+
+inline uint LhxRuntimeFilter::getByteCount() const
+{
+    return nBytes;
+}
+
+inline uint LhxRuntimeFilter::hash(TupleData const &tuple)
+{
+    return hashGen.hash(tuple, keyProj, keyTrims);
+}
+
+inline bool LhxRuntimeFilter::test(uint hashValue) const
+{
+    assert(isLoaded());
+    for (uint i = 0; i < NUM_PROBES; i++) {
+        uint bitPos = getBitPos(hashValue, i);
+        if (!(pBits[bitPos >> 3] & (1 << (bitPos & 7)))) {
+            return false;
+        }
+    }
+    return true;
+}
+
+FENNEL_END_NAMESPACE
+
+#endif
+
+// End LhxRuntimeFilter.h
@@ -26,11 +26,25 @@
 #include "fennel/exec/ExecStreamBufAccessor.h"
 #include "fennel/common/SearchEndpoint.h"
 #include <math.h>
+#include <algorithm>
 
 FENNEL_BEGIN_CPPFILE("$Id$");
 
 int32_t LcsRowScanExecStreamParams::defaultSystemSamplingClumps = 10;
 
+/**
+ * Number of rows tested against a runtime filter before deciding whether it
+ * is worth keeping.
+ */
+static const RecordNum RUNTIME_FILTER_SAMPLE_ROWS = 10000;
+
+/**
+ * Smallest percentage of the sampled rows a runtime filter must eliminate
+ * to be kept; below that, hashing each row's keys costs more than the
+ * columns it saves reading.
+ */
+static const RecordNum RUNTIME_FILTER_MIN_PERCENT_ELIMINATED = 10;
+
 LcsRowScanExecStream::LcsRowScanExecStream()
 :
     LcsRowScanBaseExecStream(),
@@ -38,6 +52,11 @@ LcsRowScanExecStream::LcsRowScanExecStream()
 {
     ridRuns.resize(4000);
     isCountAgg = false;
+    runtimeFilterParamId = DynamicParamId(0);
+    runtimeFilterEnabled = false;
+    nRuntimeFilterRowsTested = 0;
+    nRuntimeFilterRowsEliminated = 0;
+    nRuntimeFilterClustersSkipped = 0;
 }
 
 void LcsRowScanExecStream::prepareResidualFilters(
@@ -125,12 +144,44 @@ void LcsRowScanExecStream::prepareResidualFilters(
     }
 }
 
+void LcsRowScanExecStream::prepareRuntimeFilter(
+    LcsRowScanExecStreamParams const &params)
+{
+    /*
+     * Find the last cluster holding a key column; clusters fill consecutive
+     * entries of projMap, after the non-cluster columns.
+     */
+    runtimeFilterCluster = 0;
+    for (uint i = 0; i < params.runtimeFilterKeyProj.size(); i++) {
+        uint k;
+        for (k = 0; k < projMap.size(); k++) {
+            if (projMap[k] == params.runtimeFilterKeyProj[i]) {
+                break;
+            }
+        }
+        assert(k < projMap.size());
+        assert(k >= nonClusterCols.size());
+
+        uint clusterEnd = nonClusterCols.size();
+        for (uint iClu = 0; iClu < nClusters; iClu++) {
+            clusterEnd += pClusters[iClu]->nColsToRead;
+            if (k < clusterEnd) {
+                runtimeFilterCluster = std::max(runtimeFilterCluster, iClu);
+                break;
+            }
+        }
+    }
+
+    runtimeFilter.init(projDescriptor, params.runtimeFilterKeyProj);
+}
+
 void LcsRowScanExecStream::prepare(LcsRowScanExecStreamParams const &params)
 {
     LcsRowScanBaseExecStream::prepare(params);
 
     isFullScan = params.isFullScan;
     hasExtraFilter = params.hasExtraFilter;
+    startRid = params.startRid;
 
     // Set up rid bitmap input stream
     ridTupleData.compute(inAccessors[0]->getTupleDesc());
@@ -173,6 +224,11 @@ void LcsRowScanExecStream::prepare(LcsRowScanExecStreamParams const &params)
         attrAccessors[i].compute(projDescriptor[i]);
     }
 
+    runtimeFilterParamId = params.runtimeFilterParamId;
+    if (opaqueToInt(runtimeFilterParamId) > 0) {
+        prepareRuntimeFilter(params);
+    }
+
     /* configure sampling */
     samplingMode = params.samplingMode;
 
@@ -188,6 +244,7 @@ void LcsRowScanExecStream::prepare(LcsRowScanExecStreamParams const &params)
             samplingRng.reset(new BernoulliRng(samplingRate));
         } else {
             assert(isFullScan);
+            assert(startRid == LcsRid(0));
 
             samplingClumps = params.samplingClumps;
             assert(samplingClumps > 0);
@@ -215,13 +272,29 @@ void LcsRowScanExecStream::open(bool restart)
     ridRunIter.reset();
 
     if (isFullScan) {
-        inputRid = LcsRid(0);
+        inputRid = startRid;
         readDeletedRid = true;
         deletedRidEos = false;
     }
     nextRid = LcsRid(0);
     ridReader.init(inAccessors[0], ridTupleData);
 
+    /*
+     * The join may be opened after this stream, so create the runtime filter
+     * parameter here too; it stays NULL until the join publishes a filter.
+     */
+    runtimeFilterEnabled = (opaqueToInt(runtimeFilterParamId) > 0);
+    if (runtimeFilterEnabled) {
+        pDynamicParamManager->createParam(
+            runtimeFilterParamId,
+            LhxRuntimeFilter::getParamDesc(),
+            false);
+        runtimeFilter.reset();
+        nRuntimeFilterRowsTested = 0;
+        nRuntimeFilterRowsEliminated = 0;
+        nRuntimeFilterClustersSkipped = 0;
+    }
+
     /*
      * Read from the 1st input, but only if we're not doing a restart.
      * Restarts can reuse the structures set up on the initial open
@@ -407,6 +480,11 @@ ExecStreamResult LcsRowScanExecStream::execute(ExecStreamQuantum const &quantum)
         return EXECRC_BUF_UNDERFLOW;
     }
 
+    // Pick up the runtime filter as soon as the join has published it
+    if (runtimeFilterEnabled && !runtimeFilter.isLoaded()) {
+        runtimeFilter.read(*pDynamicParamManager, runtimeFilterParamId);
+    }
+
     for (uint i = 0; i < quantum.nTuplesMax; i++) {
         uint iClu;
         bool passedFilter;
@@ -490,6 +568,16 @@ ExecStreamResult LcsRowScanExecStream::execute(ExecStreamQuantum const &quantum)
                     break;
                 }
                 prevClusterEnd += pScan->nColsToRead;
+
+                // Once the join keys have been read, skip rows that cannot
+                // join before reading the remaining clusters
+                if (iClu == runtimeFilterCluster && runtimeFilter.isLoaded()) {
+                    passedFilter = testRuntimeFilter();
+                    if (!passedFilter) {
+                        nRuntimeFilterClustersSkipped += nClusters - 1 - iClu;
+                        break;
+                    }
+                }
             }
 
             if (!passedFilter) {
@@ -563,7 +651,11 @@ ExecStreamResult LcsRowScanExecStream::fillRidRunBuffer()
                     readDeletedRid = false;
                 }
             }
-            // skip over deleted rids
+            // skip over deleted rids, and those before the start rid
+            if (!deletedRidEos && deletedRid < inputRid) {
+                readDeletedRid = true;
+                continue;
+            }
             if (!deletedRidEos && inputRid == deletedRid) {
                 inputRid++;
                 readDeletedRid = true;
@@ -679,8 +771,41 @@ ExecStreamResult LcsRowScanExecStream::fillRidRunBuffer()
     return EXECRC_YIELD;
 }
 
+bool LcsRowScanExecStream::testRuntimeFilter()
+{
+    bool passed = runtimeFilter.test(runtimeFilter.hash(outputTupleData));
+    nRuntimeFilterRowsTested++;
+    if (!passed) {
+        nRuntimeFilterRowsEliminated++;
+    }
+
+    if (nRuntimeFilterRowsTested == RUNTIME_FILTER_SAMPLE_ROWS
+        && nRuntimeFilterRowsEliminated * 100
+        < nRuntimeFilterRowsTested * RUNTIME_FILTER_MIN_PERCENT_ELIMINATED)
+    {
+        FENNEL_TRACE(
+            TRACE_FINE,
+            "runtime filter " << opaqueToInt(runtimeFilterParamId)
+            << " dropped: eliminated " << nRuntimeFilterRowsEliminated
+            << " of " << nRuntimeFilterRowsTested << " rows");
+        runtimeFilterEnabled = false;
+        runtimeFilter.reset();
+    }
+    return passed;
+}
+
 void LcsRowScanExecStream::closeImpl()
 {
+    if (opaqueToInt(runtimeFilterParamId) > 0) {
+        FENNEL_TRACE(
+            TRACE_FINE,
+            "runtime filter " << opaqueToInt(runtimeFilterParamId)
+            << ": eliminated " << nRuntimeFilterRowsEliminated
+            << " of " << nRuntimeFilterRowsTested << " rows, skipped "
+            << nRuntimeFilterClustersSkipped << " cluster reads"
+            << (runtimeFilterEnabled ? "" : " (dropped)"));
+    }
+
     LcsRowScanBaseExecStream::closeImpl();
 
     for (uint i = 0; i < nFilters; i++) {
@@ -722,6 +847,21 @@ RecordNum LcsRowScanExecStream::getRowCount() const
     return nRidsRead;
 }
 
+RecordNum LcsRowScanExecStream::getRuntimeFilterRowsTested() const
+{
+    return nRuntimeFilterRowsTested;
+}
+
+RecordNum LcsRowScanExecStream::getRuntimeFilterRowsEliminated() const
+{
+    return nRuntimeFilterRowsEliminated;
+}
+
+RecordNum LcsRowScanExecStream::getRuntimeFilterClustersSkipped() const
+{
+    return nRuntimeFilterClustersSkipped;
+}
+
 TupleData &LcsRowScanExecStream::getProjOutputTupleData()
 {
     return projOutputTupleData;
@@ -31,6 +31,7 @@
 #include "fennel/lcs/LcsResidualColumnFilters.h"
 #include "fennel/common/BernoulliRng.h"
 #include "fennel/common/FemEnums.h"
+#include "fennel/hashexe/LhxRuntimeFilter.h"
 
 FENNEL_BEGIN_NAMESPACE
 
@@ -101,6 +102,31 @@ struct FENNEL_LCS_EXPORT LcsRowScanExecStreamParams
      * specific to sampling.
      */
     int64_t samplingRowCount;
+
+    /**
+     * Dynamic parameter through which a hash join consuming this scan as its
+     * probe input publishes a bloom filter over its build keys, or 0 if
+     * there is none.  Rows whose keys fail the filter are skipped.
+     */
+    DynamicParamId runtimeFilterParamId;
+
+    /**
+     * Output columns holding the keys tested against the runtime filter, in
+     * the order of the build keys of the join.
+     */
+    TupleProjection runtimeFilterKeyProj;
+
+    /**
+     * For a full table scan, the first rid to read; rows with lesser rids
+     * are skipped without being read.
+     */
+    LcsRid startRid;
+
+    explicit LcsRowScanExecStreamParams()
+    {
+        runtimeFilterParamId = DynamicParamId(0);
+        startRid = LcsRid(0);
+    }
 };
 
 /**
@@ -189,6 +215,11 @@ class FENNEL_LCS_EXPORT LcsRowScanExecStream
      */
     bool isFullScan;
 
+    /**
+     * First rid read by a full table scan
+     */
+    LcsRid startRid;
+
     /**
      * true if only returning row count
      */
@@ -298,6 +329,44 @@ class FENNEL_LCS_EXPORT LcsRowScanExecStream
      */
     CircularBufferIter<LcsRidRun> ridRunIter;
 
+    /**
+     * Dynamic parameter the runtime filter is read from, or 0.
+     */
+    DynamicParamId runtimeFilterParamId;
+
+    /**
+     * Runtime filter published by the hash join; only loaded while it is
+     * being applied.
+     */
+    LhxRuntimeFilter runtimeFilter;
+
+    /**
+     * False once the runtime filter has been dropped for eliminating too few
+     * rows.
+     */
+    bool runtimeFilterEnabled;
+
+    /**
+     * Index of the cluster after which all of the runtime filter keys have
+     * been read.
+     */
+    uint runtimeFilterCluster;
+
+    /**
+     * Number of rows tested against the runtime filter.
+     */
+    RecordNum nRuntimeFilterRowsTested;
+
+    /**
+     * Number of rows the runtime filter has eliminated.
+     */
+    RecordNum nRuntimeFilterRowsEliminated;
+
+    /**
+     * Number of cluster reads saved by rows the runtime filter eliminated.
+     */
+    RecordNum nRuntimeFilterClustersSkipped;
+
     /**
      * Builds outputProj from params.
      *
@@ -324,6 +393,21 @@ class FENNEL_LCS_EXPORT LcsRowScanExecStream
      */
     void prepareResidualFilters(LcsRowScanExecStreamParams const &params);
 
+    /**
+     * Sets up the runtime filter during prepare time.
+     *
+     * @param params the LcsRowScanExecStreamParams
+     */
+    void prepareRuntimeFilter(LcsRowScanExecStreamParams const &params);
+
+    /**
+     * Tests the current row against the runtime filter, dropping the filter
+     * if it has been eliminating too few rows to pay for itself.
+     *
+     * @return false if the row cannot join and should be skipped
+     */
+    bool testRuntimeFilter();
+
     /**
      * Initializes the system sampling data structures during open time.
      */
@@ -361,6 +445,24 @@ public:
         ExecStreamResourceQuantity &minQuantity,
         ExecStreamResourceQuantity &optQuantity);
     virtual void closeImpl();
+
+    /**
+     * @return number of rows tested against the runtime filter since the
+     * stream was last opened
+     */
+    RecordNum getRuntimeFilterRowsTested() const;
+
+    /**
+     * @return number of rows the runtime filter has eliminated since the
+     * stream was last opened
+     */
+    RecordNum getRuntimeFilterRowsEliminated() const;
+
+    /**
+     * @return number of cluster reads saved by rows the runtime filter has
+     * eliminated since the stream was last opened
+     */
+    RecordNum getRuntimeFilterClustersSkipped() const;
 };
 
 FENNEL_END_NAMESPACE
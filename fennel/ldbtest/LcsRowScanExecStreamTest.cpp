@@ -38,6 +38,7 @@
 #include "fennel/exec/ValuesExecStream.h"
 #include "fennel/exec/ExecStreamEmbryo.h"
 #include "fennel/exec/DynamicParam.h"
+#include "fennel/hashexe/LhxRuntimeFilter.h"
 #include "fennel/cache/Cache.h"
 #include <stdarg.h>
 
@@ -45,6 +46,31 @@
 
 using namespace fennel;
 
+/**
+ * Generates the rows expected from a scan of clusters loaded by
+ * LcsRowScanExecStreamTest::loadClusters when only some rows are returned:
+ * output row i is table row rowIds[i], whose value in table column c is
+ * rowIds[i] + c.
+ */
+class SelectedRowsExecStreamGenerator : public MockProducerExecStreamGenerator
+{
+    vector<int64_t> rowIds;
+    TupleProjection proj;
+
+public:
+    explicit SelectedRowsExecStreamGenerator(
+        vector<int64_t> const &rowIdsInit,
+        TupleProjection const &projInit)
+        : rowIds(rowIdsInit), proj(projInit)
+    {
+    }
+
+    virtual int64_t generateValue(uint iRow, uint iCol)
+    {
+        return rowIds[iRow] + proj[iCol];
+    }
+};
+
 /**
  * Testcase for scanning multiple clusters.  Note that
  * LcsClusterAppendExecStreamTest also has some tests for scans, but those
@@ -219,6 +245,29 @@ protected:
         LbmEntry &lbmEntry, TupleAccessor &bitmapTupleAccessor, PBuffer pBuf,
         int &bufSize);
 
+    /**
+     * Does a full scan of all columns of the clusters, applying a runtime
+     * filter built from a set of values of the first column.  Assumes
+     * clusters have been loaded by loadClusters/loadOneCluster.
+     *
+     * @param nRows total number of rows in the clusters
+     *
+     * @param nCols number of columns in each cluster
+     *
+     * @param nClusters number of clusters
+     *
+     * @param keys values of the first column the filter is built from
+     *
+     * @param expectDropped whether the filter is expected to be dropped
+     * for eliminating too few of the first RUNTIME_FILTER_SAMPLE_ROWS rows
+     */
+    void testRuntimeFilterScan(
+        uint nRows,
+        uint nCols,
+        uint nClusters,
+        vector<int64_t> const &keys,
+        bool expectDropped);
+
 public:
     explicit LcsRowScanExecStreamTest()
     {
@@ -231,6 +280,7 @@ public:
         FENNEL_UNIT_TEST_CASE(LcsRowScanExecStreamTest, testBernoulliSampling);
         FENNEL_UNIT_TEST_CASE(LcsRowScanExecStreamTest, testSystemSampling);
         FENNEL_UNIT_TEST_CASE(LcsRowScanExecStreamTest, testCount);
+        FENNEL_UNIT_TEST_CASE(LcsRowScanExecStreamTest, testRuntimeFilter);
     }
 
     void testCaseSetUp();
@@ -243,6 +293,7 @@ public:
     void testBernoulliSampling();
     void testSystemSampling();
     void testCount();
+    void testRuntimeFilter();
 };
 
 void LcsRowScanExecStreamTest::loadClusters(
@@ -1137,6 +1188,168 @@ void LcsRowScanExecStreamTest::testSampleScanCols(
     }
 }
 
+/**
+ * Applies a runtime filter which eliminates most rows, and one which
+ * eliminates too few and so is dropped once the sample has been tested.
+ */
+void LcsRowScanExecStreamTest::testRuntimeFilter()
+{
+    uint nRows = 50000;
+    uint nCols = 4;
+    uint nClusters = 3;
+
+    loadClusters(nRows, nCols, nClusters, false);
+
+    // every 10th row can join
+    vector<int64_t> keys;
+    for (uint i = 0; i < nRows; i += 10) {
+        keys.push_back(i);
+    }
+    testRuntimeFilterScan(nRows, nCols, nClusters, keys, false);
+    resetExecStreamTest();
+
+    // all but every 20th row can join
+    keys.clear();
+    for (uint i = 0; i < nRows; i++) {
+        if (i % 20 != 0) {
+            keys.push_back(i);
+        }
+    }
+    testRuntimeFilterScan(nRows, nCols, nClusters, keys, true);
+}
+
+void LcsRowScanExecStreamTest::testRuntimeFilterScan(
+    uint nRows,
+    uint nCols,
+    uint nClusters,
+    vector<int64_t> const &keys,
+    bool expectDropped)
+{
+    // number of rows LcsRowScanExecStream tests before deciding whether to
+    // keep the filter
+    const uint sampleRows = 10000;
+
+    // build the filter the hash join would publish
+    TupleDescriptor keyDesc;
+    keyDesc.push_back(attrDesc_int64);
+    TupleProjection keyProj;
+    keyProj.push_back(0);
+    LhxRuntimeFilter filter;
+    filter.init(keyDesc, keyProj);
+
+    TupleData keyData(keyDesc);
+    vector<uint> hashValues;
+    for (uint i = 0; i < keys.size(); i++) {
+        keyData[0].pData = reinterpret_cast<PConstBuffer>(&keys[i]);
+        hashValues.push_back(filter.hash(keyData));
+    }
+    BOOST_REQUIRE(filter.build(hashValues));
+
+    // work out which rows the scan should return
+    vector<int64_t> expectedRows;
+    uint nTested = expectDropped ? sampleRows : nRows;
+    uint nEliminated = 0;
+    vector<int64_t>::const_iterator pKey = keys.begin();
+    for (uint i = 0; i < nRows; i++) {
+        int64_t value = i;
+        bool isKey = (pKey != keys.end() && *pKey == value);
+        if (isKey) {
+            ++pKey;
+        }
+        if (i >= nTested) {
+            expectedRows.push_back(value);
+            continue;
+        }
+        keyData[0].pData = reinterpret_cast<PConstBuffer>(&value);
+        if (filter.test(filter.hash(keyData))) {
+            expectedRows.push_back(value);
+        } else {
+            // a bloom filter never rejects a build key
+            BOOST_REQUIRE(!isKey);
+            nEliminated++;
+        }
+    }
+
+    // full scan, with nothing to read from the deletion index
+    ValuesExecStreamParams valuesParams;
+    valuesParams.outputTupleDesc.push_back(attrDesc_int64);
+    valuesParams.outputTupleDesc.push_back(attrDesc_bitmap);
+    valuesParams.outputTupleDesc.push_back(attrDesc_bitmap);
+    boost::shared_array<FixedBuffer> pBuffer(new FixedBuffer[16]);
+    valuesParams.pTupleBuffer = pBuffer;
+    valuesParams.bufSize = 0;
+    ExecStreamEmbryo valuesStreamEmbryo;
+    valuesStreamEmbryo.init(new ValuesExecStream(), valuesParams);
+    valuesStreamEmbryo.getStream()->setName("ValuesExecStream");
+
+    LcsRowScanExecStreamParams scanParams;
+    scanParams.hasExtraFilter = false;
+    scanParams.samplingMode = SAMPLING_OFF;
+    scanParams.isFullScan = true;
+
+    for (uint i = 0; i < nClusters; i++) {
+        struct LcsClusterScanDef clusterScanDef;
+
+        for (uint j = 0; j < nCols; j++) {
+            clusterScanDef.clusterTupleDesc.push_back(attrDesc_int64);
+        }
+
+        clusterScanDef.pSegment = bTreeClusters[i]->segmentAccessor.pSegment;
+        clusterScanDef.pCacheAccessor =
+            bTreeClusters[i]->segmentAccessor.pCacheAccessor;
+        clusterScanDef.tupleDesc = bTreeClusters[i]->tupleDescriptor;
+        clusterScanDef.keyProj = bTreeClusters[i]->keyProjection;
+        clusterScanDef.rootPageId = bTreeClusters[i]->rootPageId;
+        clusterScanDef.segmentId = bTreeClusters[i]->segmentId;
+        clusterScanDef.pageOwnerId = bTreeClusters[i]->pageOwnerId;
+
+        scanParams.lcsClusterScanDefs.push_back(clusterScanDef);
+    }
+
+    // project every column; the key is the first column of the first
+    // cluster, so the other clusters can be skipped for eliminated rows
+    TupleProjection proj;
+    for (uint i = 0; i < nCols * nClusters; i++) {
+        proj.push_back(i);
+        scanParams.outputTupleDesc.push_back(attrDesc_int64);
+    }
+    scanParams.outputProj = proj;
+    scanParams.runtimeFilterParamId = DynamicParamId(1);
+    scanParams.runtimeFilterKeyProj = keyProj;
+
+    LcsRowScanExecStream *pScanStream = new LcsRowScanExecStream();
+    ExecStreamEmbryo scanStreamEmbryo;
+    scanStreamEmbryo.init(pScanStream, scanParams);
+    scanStreamEmbryo.getStream()->setName("RowScanExecStream");
+
+    SharedExecStream pOutputStream =
+        prepareTransformGraph(valuesStreamEmbryo, scanStreamEmbryo);
+
+    // publish the filter as the join would before the scan starts
+    SharedDynamicParamManager pDynamicParamManager =
+        pGraph->getDynamicParamManager();
+    pDynamicParamManager->createParam(
+        scanParams.runtimeFilterParamId,
+        LhxRuntimeFilter::getParamDesc(),
+        false);
+    filter.write(*pDynamicParamManager, scanParams.runtimeFilterParamId);
+
+    SelectedRowsExecStreamGenerator resultGenerator(expectedRows, proj);
+    verifyOutput(*pOutputStream, expectedRows.size(), resultGenerator);
+
+    BOOST_CHECK_EQUAL(nTested, pScanStream->getRuntimeFilterRowsTested());
+    BOOST_CHECK_EQUAL(
+        nEliminated, pScanStream->getRuntimeFilterRowsEliminated());
+    BOOST_CHECK_EQUAL(
+        nEliminated * (nClusters - 1),
+        pScanStream->getRuntimeFilterClustersSkipped());
+    if (expectDropped) {
+        BOOST_CHECK(nEliminated * 10 < sampleRows);
+    } else {
+        BOOST_CHECK(nEliminated * 10 >= nRows * 8);
+    }
+}
+
 void LcsRowScanExecStreamTest::testCaseSetUp()
 {
     ExecStreamUnitTestBase::testCaseSetUp();
@@ -107,17 +107,26 @@ class FlatFileExecStreamTest : public ExecStreamUnitTestBase
         uint nRowsExpected,
         StringExecStreamGenerator &generator);
 
+    /**
+     * Reads a file several times over, as a list of data files.
+     */
+    void testStream(uint nFiles, uint parallelism);
+
 public:
     explicit FlatFileExecStreamTest()
     {
         FENNEL_UNIT_TEST_CASE(FlatFileExecStreamTest, testBuffer);
         FENNEL_UNIT_TEST_CASE(FlatFileExecStreamTest, testParser);
         FENNEL_UNIT_TEST_CASE(FlatFileExecStreamTest, testStream);
+        FENNEL_UNIT_TEST_CASE(FlatFileExecStreamTest, testMultipleFiles);
+        FENNEL_UNIT_TEST_CASE(FlatFileExecStreamTest, testParallelStream);
     }
 
     void testBuffer();
     void testParser();
     void testStream();
+    void testMultipleFiles();
+    void testParallelStream();
 };
 
 void FlatFileExecStreamTest::testBuffer()
@@ -249,6 +258,21 @@ void FlatFileExecStreamTest::checkColumnScan(
 }
 
 void FlatFileExecStreamTest::testStream()
+{
+    testStream(1, 1);
+}
+
+void FlatFileExecStreamTest::testMultipleFiles()
+{
+    testStream(3, 1);
+}
+
+void FlatFileExecStreamTest::testParallelStream()
+{
+    testStream(3, 2);
+}
+
+void FlatFileExecStreamTest::testStream(uint nFiles, uint parallelism)
 {
     StandardTypeDescriptorFactory stdTypeFactory;
     TupleAttributeDescriptor attrDesc(
@@ -261,12 +285,16 @@ void FlatFileExecStreamTest::testStream()
         pSegmentFactory->newScratchSegment(pCache, 1);
      flatfileParams.outputTupleDesc.push_back(attrDesc);
     flatfileParams.outputTupleDesc.push_back(attrDesc);
-    flatfileParams.dataFilePath = "flatfile/stream";
+    for (uint i = 0; i < nFiles; i++) {
+        flatfileParams.dataFilePaths.push_back("flatfile/stream");
+    }
     flatfileParams.fieldDelim = ',';
     flatfileParams.rowDelim = '\n';
     flatfileParams.quoteChar = '"';
     flatfileParams.escapeChar = '\\';
     flatfileParams.header = false;
+    flatfileParams.parallelism = parallelism;
+    flatfileParams.preserveOrder = true;
 
     ExecStreamEmbryo flatfileStreamEmbryo;
     flatfileStreamEmbryo.init(
@@ -275,13 +303,15 @@ void FlatFileExecStreamTest::testStream()
 
     SharedExecStream pOutputStream = prepareSourceGraph(flatfileStreamEmbryo);
     StringExecStreamGeneratorImpl verifier;
-    verifier.insert("[ 'No one', 'travels' ]");
-    verifier.insert("[ 'Along this way', 'but I,' ]");
-    verifier.insert("[ 'This', 'autumn evening.' ]");
+    for (uint i = 0; i < nFiles; i++) {
+        verifier.insert("[ 'No one', 'travels' ]");
+        verifier.insert("[ 'Along this way', 'but I,' ]");
+        verifier.insert("[ 'This', 'autumn evening.' ]");
+    }
 
     verifyOutput(
         *pOutputStream,
-        3,
+        3 * nFiles,
         verifier);
 }
 
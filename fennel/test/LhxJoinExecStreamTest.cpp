@@ -23,6 +23,7 @@
 #include "fennel/common/CommonPreamble.h"
 #include "fennel/test/ExecStreamUnitTestBase.h"
 #include "fennel/hashexe/LhxJoinExecStream.h"
+#include "fennel/hashexe/LhxRuntimeFilter.h"
 #include "fennel/sorter/ExternalSortExecStream.h"
 #include "fennel/tuple/StandardTypeDescriptor.h"
 #include "fennel/exec/MockProducerExecStream.h"
@@ -37,6 +38,14 @@ using namespace fennel;
 
 class LhxJoinExecStreamTest : public ExecStreamUnitTestBase
 {
+    /**
+     * Parameter through which the join under test publishes its runtime
+     * filter, or 0 for none.
+     */
+    DynamicParamId runtimeFilterParamId;
+
+    void checkRuntimeFilter(TupleDescriptor &inputDesc, uint cndKeys);
+
     void testSequentialImpl(
         uint numRows,
         uint forcePartitionLevel,
@@ -73,6 +82,8 @@ class LhxJoinExecStreamTest : public ExecStreamUnitTestBase
 public:
     explicit LhxJoinExecStreamTest()
     {
+        runtimeFilterParamId = DynamicParamId(0);
+
         FENNEL_UNIT_TEST_CASE(LhxJoinExecStreamTest, testSequential);
         FENNEL_UNIT_TEST_CASE(LhxJoinExecStreamTest, testDup1);
         FENNEL_UNIT_TEST_CASE(LhxJoinExecStreamTest, testDup2);
@@ -130,6 +141,7 @@ public:
             testConstPartitionFilterStat);
 
         FENNEL_UNIT_TEST_CASE(LhxJoinExecStreamTest, testConstCleanup);
+        FENNEL_UNIT_TEST_CASE(LhxJoinExecStreamTest, testRuntimeFilter);
     }
 
     /*
@@ -182,6 +194,12 @@ public:
     void testConstPartitionStat();
     void testConstPartitionFilterStat();
     void testConstCleanup();
+
+    /*
+     * Same as testConst, but also publishes a runtime filter over the build
+     * keys, and checks that it passes every build key and few others.
+     */
+    void testRuntimeFilter();
 };
 
 void LhxJoinExecStreamTest::testSequential()
@@ -287,6 +305,13 @@ void  LhxJoinExecStreamTest::testConstCleanup()
     testDupImpl(960,  1, 60, 2, false, false, false, true);
 }
 
+void LhxJoinExecStreamTest::testRuntimeFilter()
+{
+    runtimeFilterParamId = DynamicParamId(1);
+    testDupImpl(960,  1, 60, 0, false, false, false, false);
+    runtimeFilterParamId = DynamicParamId(0);
+}
+
 void LhxJoinExecStreamTest::testSequentialImpl(
     uint numRows,
     uint forcePartitionLevel,
@@ -514,6 +539,8 @@ void LhxJoinExecStreamTest::testImpl(
         joinParams.rightKeyProj.push_back(i);
     }
 
+    joinParams.runtimeFilterParamId = runtimeFilterParamId;
+
     /*
      * Fields in SingleOutputExecStreamParams
      */
@@ -568,6 +595,10 @@ void LhxJoinExecStreamTest::testImpl(
         verifier,
         fakeInterrupt);
 
+    if (opaqueToInt(runtimeFilterParamId) > 0) {
+        checkRuntimeFilter(inputDesc, cndKeys);
+    }
+
     if (fakeInterrupt) {
         // simulate error cleanup
         pScheduler->stop();
@@ -577,6 +608,38 @@ void LhxJoinExecStreamTest::testImpl(
     BOOST_CHECK_EQUAL(0, pRandomSegment->getAllocatedSizeInPages());
 }
 
+void LhxJoinExecStreamTest::checkRuntimeFilter(
+    TupleDescriptor &inputDesc,
+    uint cndKeys)
+{
+    TupleProjection keyProj;
+    keyProj.push_back(0);
+
+    LhxRuntimeFilter filter;
+    filter.init(inputDesc, keyProj);
+    BOOST_REQUIRE(
+        filter.read(*(pGraph->getDynamicParamManager()), runtimeFilterParamId));
+
+    TupleData tuple(inputDesc);
+    int64_t key;
+    tuple[0].pData = reinterpret_cast<PConstBuffer>(&key);
+
+    /*
+     * The build input holds keys 0 through cndKeys - 1; all of them must pass,
+     * and few of the next 1000 keys should.
+     */
+    for (key = 0; key < cndKeys; key++) {
+        BOOST_CHECK(filter.test(filter.hash(tuple)));
+    }
+    uint nFalsePositives = 0;
+    for (key = cndKeys; key < cndKeys + 1000; key++) {
+        if (filter.test(filter.hash(tuple))) {
+            nFalsePositives++;
+        }
+    }
+    BOOST_CHECK(nFalsePositives < 50);
+}
+
 FENNEL_UNIT_TEST_SUITE(LhxJoinExecStreamTest);
 
 // End LhxJoinExecStreamTest.cpp
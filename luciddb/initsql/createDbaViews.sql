@@ -1342,3 +1342,47 @@ no sql
 external name
 'class net.sf.farrago.syslib.FarragoDdlViewUDR.generateForLabel';
 grant execute on specific function generate_ddl_for_label to dba;
+
+-- Create a materialized aggregate view over a single table and load it
+create or replace procedure create_materialized_view(
+  schema_name varchar(128),
+  view_name varchar(128),
+  query varchar(65535))
+language java
+parameter style java
+modifies sql data
+external name
+'class org.luciddb.lcs.LcsMaterializedViewUDR.createMaterializedView';
+grant execute on specific procedure create_materialized_view to public;
+
+-- Bring a materialized view up to date with its base table
+create or replace procedure refresh_materialized_view(
+  schema_name varchar(128),
+  view_name varchar(128))
+language java
+parameter style java
+modifies sql data
+external name
+'class org.luciddb.lcs.LcsMaterializedViewUDR.refreshMaterializedView';
+grant execute on specific procedure refresh_materialized_view to public;
+
+-- Materialized views with their state and usage counters
+create or replace function materialized_views()
+returns table(
+  catalog_name varchar(128),
+  schema_name varchar(128),
+  view_name varchar(128),
+  base_table_name varchar(65535),
+  state varchar(128),
+  row_count bigint,
+  rewrite_count bigint,
+  stale_skip_count bigint,
+  stale_count bigint,
+  incremental_refresh_count bigint,
+  full_refresh_count bigint)
+language java
+parameter style system defined java
+no sql
+external name
+'class org.luciddb.lcs.LcsMaterializedViewUDR.materializedViews';
+grant execute on specific function materialized_views to dba;
@@ -1146,6 +1146,20 @@ parameter style system defined java
 deterministic
 no sql
 external name 'applib.applibJar:org.eigenbase.applib.impexp.WriteRowsToFileUDX.execute';
+
+-- FORMAT is 'SERIALIZED' (as above) or 'COLUMNAR'
+create or replace function APPLIB.WRITE_ROWS_TO_FILE(
+IN_CURSOR cursor, 
+URL varchar(65535), 
+IS_COMPRESSED boolean,
+FORMAT varchar(128))
+returns table(status int, message varchar(6000))
+language java
+parameter style system defined java
+specific write_rows_to_file_format
+deterministic
+no sql
+external name 'applib.applibJar:org.eigenbase.applib.impexp.WriteRowsToFileUDX.execute';
  
 create or replace function APPLIB.READ_ROWS_FROM_FILE(
 IN_CURSOR cursor, 
@@ -1166,6 +1180,15 @@ deterministic
 no sql
 external name 'applib.applibJar:org.eigenbase.applib.impexp.RemoteRowsUDX.execute';
 
+create or replace function APPLIB.REMOTE_ROWS(IN_CURSOR cursor, PORT int, IS_COMPRESSED boolean, SENDERS int)
+returns table (IN_CURSOR.*)
+language java
+parameter style system defined java
+deterministic
+no sql
+specific remote_rows_senders
+external name 'applib.applibJar:org.eigenbase.applib.impexp.RemoteRowsUDX.execute';
+
 create or replace procedure applib.create_table_from_source_table(
 in sourceTable varchar(1024),
 in schemaName varchar(128),
@@ -0,0 +1,92 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2006-2007 LucidEra, Inc.
+// Copyright (C) 2006-2007 The Eigenbase Project
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.lucidera.luciddb.test.udr;
+
+import java.io.*;
+
+import java.util.*;
+
+import junit.framework.*;
+
+
+/**
+ * Compares the size of the files written by WRITE_ROWS_TO_FILE, and the
+ * speed at which they are written and read, in the serialized and columnar
+ * formats. Sizes and rates are written to the test trace; the benchmark only
+ * fails if rows are not read back intact. It is not part of the impexp
+ * suite, and is run by hand.
+ *
+ * @version $Id$
+ */
+public class BenchmarkColumnarRowsUDX
+    extends TestColumnarRowsUDX
+{
+    //~ Constructors -----------------------------------------------------------
+
+    public BenchmarkColumnarRowsUDX(String testname)
+        throws Exception
+    {
+        super(testname);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    public static Test suite()
+        throws Exception
+    {
+        TestSuite suite = new TestSuite();
+        suite.addTest(new BenchmarkColumnarRowsUDX("testBenchmark"));
+        return wrappedSuite(suite);
+    }
+
+    public void testBenchmark()
+        throws Exception
+    {
+        List<String> expected = queryRows("select * from s.t order by id");
+        for (String format : new String[] { "SERIALIZED", "COLUMNAR" }) {
+            for (boolean compressed : new boolean[] { false, true }) {
+                long start = System.nanoTime();
+                String url = write(format, compressed);
+                long written = System.nanoTime();
+                List<String> actual =
+                    queryRows(
+                        "select * from " + read(TEMPLATE, url, compressed)
+                        + " order by id");
+                long read = System.nanoTime();
+                assertEquals(expected, actual);
+                tracer.info(
+                    format + (compressed ? " compressed: " : ": ")
+                    + new File(getPath(format, compressed)).length()
+                    + " bytes, written at "
+                    + rate(expected.size(), written - start)
+                    + " rows/sec, read at "
+                    + rate(expected.size(), read - written) + " rows/sec");
+            }
+        }
+    }
+
+    private static long rate(int rowCount, long nanos)
+    {
+        return (rowCount * 1000000000L) / Math.max(nanos, 1);
+    }
+}
+
+// End BenchmarkColumnarRowsUDX.java
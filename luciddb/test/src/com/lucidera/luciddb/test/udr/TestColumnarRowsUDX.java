@@ -0,0 +1,254 @@
+/*
+// $Id$
+// Farrago is an extensible data management system.
+// Copyright (C) 2006-2007 LucidEra, Inc.
+// Copyright (C) 2006-2007 The Eigenbase Project
+//
+// This program is free software; you can redistribute it and/or modify it
+// under the terms of the GNU General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version approved by The Eigenbase Project.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.lucidera.luciddb.test.udr;
+
+import java.io.*;
+
+import java.sql.*;
+
+import java.util.*;
+
+import org.luciddb.test.*;
+
+
+/**
+ * Tests the columnar format of WRITE_ROWS_TO_FILE and READ_ROWS_FROM_FILE.
+ * {@link BenchmarkColumnarRowsUDX} compares its size and speed with those of
+ * serialized rows.
+ *
+ * @version $Id$
+ */
+public class TestColumnarRowsUDX
+    extends LucidDbTestCase
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final String DIRECTORY = "testlog/columnar_rows/";
+
+    /**
+     * Query producing 100,000 rows, of which a tenth have a null name.
+     */
+    private static final String ROWS =
+        "select n as id, "
+        + "case when mod(n, 10) = 0 then null "
+        + "else 'customer ' || cast(mod(n, 1000) as varchar(10)) end as name, "
+        + "cast(mod(n, 977) as decimal(10, 2)) / 4 as amount, "
+        + "applib.add_days(date '2010-01-01', n / 1000) as day, "
+        + "mod(n, 3) = 0 as flag "
+        + "from (select a.d * 10000 + b.d * 1000 + c.d * 100 + e.d * 10 "
+        + "+ f.d as n from s.digits a, s.digits b, s.digits c, s.digits e, "
+        + "s.digits f)";
+
+    protected static final String TEMPLATE =
+        "select * from s.t where false";
+
+    //~ Constructors -----------------------------------------------------------
+
+    public TestColumnarRowsUDX(String testname)
+        throws Exception
+    {
+        super(testname);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // override LucidDbTestCase
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        new File(DIRECTORY).mkdirs();
+        stmt.execute("create schema s");
+        createDigits(stmt, "s.digits");
+        stmt.execute(
+            "create table s.t(id int, name varchar(100), "
+            + "amount decimal(12, 4), day date, flag boolean)");
+        stmt.executeUpdate("insert into s.t " + ROWS);
+    }
+
+    // override LucidDbTestCase
+    protected void tearDown()
+        throws Exception
+    {
+        try {
+            stmt.execute("drop schema s cascade");
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    /**
+     * Tests that rows written in the columnar format are read back intact,
+     * compressed or not.
+     */
+    public void testRoundTrip()
+        throws Exception
+    {
+        List<String> expected = queryRows("select * from s.t order by id");
+        for (boolean compressed : new boolean[] { false, true }) {
+            String url = write("COLUMNAR", compressed);
+            assertEquals(
+                expected,
+                queryRows(
+                    "select * from " + read(TEMPLATE, url, compressed)
+                    + " order by id"));
+        }
+    }
+
+    /**
+     * Tests that a subset of the columns, in another order, can be read.
+     */
+    public void testProjection()
+        throws Exception
+    {
+        String url = write("COLUMNAR", true);
+        assertEquals(
+            queryRows("select name, id from s.t order by id"),
+            queryRows(
+                "select * from "
+                + read("select name, id from s.t where false", url, true)
+                + " order by id"));
+    }
+
+    /**
+     * Tests that when the cursor's column names do not match those of the
+     * file, but there are as many columns, the columns are matched by
+     * position.
+     */
+    public void testPositionalMatch()
+        throws Exception
+    {
+        String url = write("COLUMNAR", true);
+        assertEquals(
+            queryRows("select * from s.t order by id"),
+            queryRows(
+                "select * from "
+                + read(
+                    "select id as a, name as b, amount as c, day as d, "
+                    + "flag as e from s.t where false",
+                    url,
+                    true)
+                + " order by a"));
+    }
+
+    /**
+     * Tests that a cursor naming a column missing from the file, with fewer
+     * columns than the file, is rejected.
+     */
+    public void testHeaderMismatch()
+        throws Exception
+    {
+        String url = write("COLUMNAR", true);
+        try {
+            queryRows(
+                "select * from "
+                + read("select id, name as b from s.t where false", url, true));
+            fail("expected header mismatch");
+        } catch (SQLException ex) {
+            String messages = getMessages(ex);
+            assertTrue(
+                messages,
+                messages.indexOf(
+                    "Header Info was unmatched! Column B was not found")
+                >= 0);
+        }
+    }
+
+    /**
+     * @return messages of an exception, the exceptions chained to it, and
+     * their causes, one per line
+     */
+    private static String getMessages(SQLException ex)
+    {
+        StringBuilder buf = new StringBuilder();
+        for (SQLException next = ex; next != null;
+            next = next.getNextException())
+        {
+            for (Throwable t = next; t != null; t = t.getCause()) {
+                buf.append(t.getMessage()).append('\n');
+            }
+        }
+        return buf.toString();
+    }
+
+    protected static String getPath(String format, boolean compressed)
+    {
+        return new File(
+            DIRECTORY + format.toLowerCase()
+            + (compressed ? ".gz.dat" : ".dat")).getAbsolutePath();
+    }
+
+    /**
+     * Writes the rows of the test table to a file.
+     *
+     * @return URL of the file
+     */
+    protected String write(String format, boolean compressed)
+        throws Exception
+    {
+        String url = "file://" + getPath(format, compressed);
+        List<String> status =
+            queryRows(
+                "select status from table(applib.write_rows_to_file("
+                + "cursor(select * from s.t), '" + url + "', "
+                + compressed + ", '" + format + "'))");
+        assertEquals(Collections.singletonList("0;"), status);
+        return url;
+    }
+
+    protected static String read(
+        String template,
+        String url,
+        boolean compressed)
+    {
+        return "table(applib.read_rows_from_file(cursor(" + template + "), '"
+            + url + "', " + compressed + "))";
+    }
+
+    /**
+     * Executes a query.
+     *
+     * @return the values of each row, as strings followed by semicolons
+     */
+    protected List<String> queryRows(String sql)
+        throws Exception
+    {
+        resultSet = stmt.executeQuery(sql);
+        try {
+            List<String> rows = new ArrayList<String>();
+            int columnCount = resultSet.getMetaData().getColumnCount();
+            while (resultSet.next()) {
+                StringBuilder buf = new StringBuilder();
+                for (int i = 1; i <= columnCount; i++) {
+                    buf.append(resultSet.getString(i)).append(';');
+                }
+                rows.add(buf.toString());
+            }
+            return rows;
+        } finally {
+            resultSet.close();
+            resultSet = null;
+        }
+    }
+}
+
+// End TestColumnarRowsUDX.java
@@ -24,8 +24,10 @@ import java.io.ObjectOutputStream;
 import java.net.Socket;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
 import java.util.zip.GZIPOutputStream;
@@ -34,10 +36,6 @@ import org.luciddb.test.*;
 import net.sf.farrago.catalog.*;
 import net.sf.farrago.jdbc.*;
 import net.sf.farrago.test.*;
-import net.sf.farrago.util.*;
-
-import org.eigenbase.util.property.*;
-
 import com.lucidera.luciddb.test.udr.SQLRunner;
 
 
@@ -48,7 +46,7 @@ import com.lucidera.luciddb.test.udr.SQLRunner;
  * 
  */
 public class TestRemoteRowsUDX
-    extends FarragoTestCase
+    extends LucidDbTestCase
 {
     //~ Constructors -----------------------------------------------------------
 
@@ -59,61 +57,7 @@ public class TestRemoteRowsUDX
     }
 
     //~ Methods ----------------------------------------------------------------
-    
-    public void setUp()
-        throws Exception
-    {
-        // TODO jvs 12-Jun-2010:  factor out common test harness code
-        // from wherever this was copied from.
-        
-        // Set the properties so the LucidDB session factory and LucidDB data
-        // files are used.  The LucidDB data files need to be used; otherwise,
-        // we won't use versioned data segment pages.
-        //
-        // REVIEW zfong 7/11/08 - Is there a better way of doing this?
-        FarragoProperties farragoPropInstance = FarragoProperties.instance();
-        StringProperty sessionFactory =
-            farragoPropInstance.defaultSessionFactoryLibraryName;
-        System.setProperty(
-            sessionFactory.getPath(),
-            "class:org.luciddb.session.LucidDbSessionFactory");
-        String homeDirString = farragoPropInstance.homeDir.get(true);
-        String catalogDir = homeDirString + "/../luciddb/catalog";
-        farragoPropInstance.catalogDir.set(catalogDir);
-        
-        // Create a new connection so we're sure we have the right session
-        // factory and db
-        if (connection != null) {
-            connection.close();
-        }
-        
-        connection = newConnection();
-        repos = getSession().getRepos();
-        saveParameters();
-        
-        runCleanup();
-        super.setUp();
-    }
-    
-    public static void runCleanup()
-        throws Exception
-    {
-        // Use the special LucidDB cleanup factory to avoid dropping schemas
-        // like APPLIB
-        FarragoTestCase.CleanupFactory.setFactory(new LucidDbCleanupFactory());
-        FarragoTestCase.runCleanup();
-    }
-    
-    public void tearDown()
-        throws Exception
-    {
-        // Close the connection created by this test.
-        if (connection != null) {
-            connection.close();
-            connection = null;
-        }
-    }
-    
+
     public void testRemoteRowsUDX()
         throws Exception
     {
@@ -306,6 +250,205 @@ public class TestRemoteRowsUDX
    
     }
     
+    /**
+     * Tests receiving rows from several senders at once, merged into one
+     * insert.
+     */
+    public void testMultipleSenders()
+        throws Exception
+    {
+        final String driverURI = "jdbc:luciddb:";
+        FarragoAbstractJdbcDriver driver =
+            FarragoTestCase.newJdbcEngineDriver();
+        Properties props = newProperties();
+
+        Connection conn = driver.connect(driverURI, props);
+        Statement stmt = conn.createStatement();
+        stmt.executeUpdate("create schema s2");
+        stmt.executeUpdate("set schema 's2'");
+        stmt.executeUpdate("create table t(id int, name varchar(255))");
+        stmt.close();
+        conn.close();
+
+        conn = driver.connect(driverURI, props);
+        PreparedStatement ps = conn.prepareStatement(
+            "insert into s2.t "
+            + "select * from table( "
+            + "APPLIB.REMOTE_ROWS(cursor( "
+            + "select cast(null as int) as id, "
+            + "cast(null as varchar(255)) as name "
+            + "from (values(0)) "
+            + "),7779,FALSE,3) " + ")");
+        SQLRunner runner = new SQLRunner(ps);
+        runner.start();
+        Thread.sleep(5000);
+
+        // the senders connect and send concurrently
+        final int rowsPerSender = 5000;
+        List<Thread> senders = new ArrayList<Thread>();
+        final List<Exception> errors =
+            Collections.synchronizedList(new ArrayList<Exception>());
+        for (int i = 0; i < 3; i++) {
+            final int sender = i;
+            Thread thread = new Thread() {
+                public void run()
+                {
+                    try {
+                        sendRows(7779, sender, rowsPerSender);
+                    } catch (Exception ex) {
+                        errors.add(ex);
+                    }
+                }
+            };
+            thread.start();
+            senders.add(thread);
+        }
+        for (Thread thread : senders) {
+            thread.join();
+        }
+        runner.join();
+        ps.close();
+
+        assertTrue("sender failed: " + errors, errors.isEmpty());
+        assertNull(runner.getErrorMsg());
+
+        stmt = conn.createStatement();
+        ResultSet rs =
+            stmt.executeQuery(
+                "select count(*), count(distinct id) from s2.t");
+        assertTrue(rs.next());
+        assertEquals(3 * rowsPerSender, rs.getInt(1));
+        assertEquals(3 * rowsPerSender, rs.getInt(2));
+        rs.close();
+        stmt.close();
+        conn.close();
+    }
+
+    /**
+     * Tests that the insert fails, rather than waiting forever, when one
+     * sender disconnects in the middle of its stream while the others are
+     * still sending and the receiver's queue is full.
+     */
+    public void testSenderDisconnect()
+        throws Exception
+    {
+        final String driverURI = "jdbc:luciddb:";
+        FarragoAbstractJdbcDriver driver =
+            FarragoTestCase.newJdbcEngineDriver();
+        Properties props = newProperties();
+
+        Connection conn = driver.connect(driverURI, props);
+        Statement stmt = conn.createStatement();
+        stmt.executeUpdate("create schema s3");
+        stmt.executeUpdate("set schema 's3'");
+        stmt.executeUpdate("create table t(id int, name varchar(255))");
+        stmt.close();
+        conn.close();
+
+        conn = driver.connect(driverURI, props);
+        PreparedStatement ps = conn.prepareStatement(
+            "insert into s3.t "
+            + "select * from table( "
+            + "APPLIB.REMOTE_ROWS(cursor( "
+            + "select cast(null as int) as id, "
+            + "cast(null as varchar(255)) as name "
+            + "from (values(0)) "
+            + "),7780,FALSE,3) " + ")");
+        SQLRunner runner = new SQLRunner(ps);
+        runner.start();
+        Thread.sleep(5000);
+
+        // two senders send far more rows than the queue holds; they fail
+        // once the receiver gives up, so their errors are expected
+        final int rowsPerSender = 500000;
+        List<Thread> senders = new ArrayList<Thread>();
+        for (int i = 0; i < 2; i++) {
+            final int sender = i;
+            Thread thread = new Thread() {
+                public void run()
+                {
+                    try {
+                        sendRows(7780, sender, rowsPerSender);
+                    } catch (Exception ex) {
+                        // expected
+                    }
+                }
+            };
+            thread.setDaemon(true);
+            thread.start();
+            senders.add(thread);
+        }
+
+        // the third sends part of its rows, and resets the connection
+        Thread.sleep(1000);
+        Socket client = new Socket("localhost", 7780);
+        ObjectOutputStream objOut =
+            new ObjectOutputStream(client.getOutputStream());
+        List<Object> header = new ArrayList<Object>();
+        header.add("1");
+        List<String> format = new ArrayList<String>();
+        format.add("INTEGER");
+        format.add("STRING");
+        header.add(format);
+        objOut.writeObject(header);
+        for (int i = 0; i < 1000; i++) {
+            List<Object> row = new ArrayList<Object>();
+            row.add(-i);
+            row.add("partial " + i);
+            objOut.writeObject(row);
+            objOut.reset();
+        }
+        objOut.flush();
+        client.setSoLinger(true, 0);
+        client.close();
+
+        runner.join(120000);
+        boolean finished = !runner.isAlive();
+        if (!finished) {
+            // unblock the insert, so that the test can clean up
+            ps.cancel();
+            runner.join();
+        }
+        ps.close();
+        conn.close();
+        for (Thread thread : senders) {
+            thread.join(120000);
+        }
+
+        assertTrue("insert still waiting after a sender failed", finished);
+        assertNotNull(
+            "insert succeeded although a sender failed",
+            runner.getErrorMsg());
+    }
+
+    private static void sendRows(int port, int sender, int rowCount)
+        throws Exception
+    {
+        Socket client = new Socket("localhost", port);
+        try {
+            ObjectOutputStream objOut =
+                new ObjectOutputStream(client.getOutputStream());
+            List<Object> header = new ArrayList<Object>();
+            header.add("1");
+            List<String> format = new ArrayList<String>();
+            format.add("INTEGER");
+            format.add("STRING");
+            header.add(format);
+            objOut.writeObject(header);
+            for (int i = 0; i < rowCount; i++) {
+                int id = (sender * rowCount) + i;
+                List<Object> row = new ArrayList<Object>();
+                row.add(id);
+                row.add("row " + id);
+                objOut.writeObject(row);
+                objOut.reset();
+            }
+            objOut.close();
+        } finally {
+            client.close();
+        }
+    }
+
     /**
      * Creates test connection properties.
      */
@@ -316,19 +459,6 @@ public class TestRemoteRowsUDX
         props.put("password", "");
         return props;
     }
-    
-    /**
-     * Cleanup factory that uses LucidDbTestCleanup
-     */
-    private static class LucidDbCleanupFactory
-        extends FarragoTestCase.CleanupFactory
-    {
-        public Cleanup newCleanup(String name)
-            throws Exception
-        {
-            return new LucidDbTestCleanup(connection);
-        }
-    }
 }
 
 // End LucidDbJdbcLabelTest.java